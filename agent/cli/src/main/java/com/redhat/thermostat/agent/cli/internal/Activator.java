@@ -42,12 +42,14 @@ import org.osgi.framework.ServiceReference;
 import org.osgi.util.tracker.ServiceTracker;
 import org.osgi.util.tracker.ServiceTrackerCustomizer;
 
+import com.redhat.thermostat.agent.ipc.server.AgentIPCService;
 import com.redhat.thermostat.common.ExitStatus;
 import com.redhat.thermostat.common.MultipleServiceTracker;
 import com.redhat.thermostat.common.MultipleServiceTracker.Action;
 import com.redhat.thermostat.common.MultipleServiceTracker.DependencyProvider;
 import com.redhat.thermostat.common.cli.CommandRegistry;
 import com.redhat.thermostat.common.cli.CommandRegistryImpl;
+import com.redhat.thermostat.shared.config.CommonPaths;
 import com.redhat.thermostat.shared.config.SSLConfiguration;
 import com.redhat.thermostat.storage.core.StorageCredentials;
 import com.redhat.thermostat.storage.core.WriterID;
@@ -58,6 +60,8 @@ public class Activator implements BundleActivator {
     private AgentApplication agentApplication;
     private MultipleServiceTracker tracker;
     private ServiceTracker<StorageCredentials, StorageCredentials> credsTracker;
+    private MultipleServiceTracker daemonTracker;
+    private LauncherDaemonCommand launcherDaemon;
 
     @Override
     public void start(final BundleContext context) throws Exception {
@@ -112,8 +116,31 @@ public class Activator implements BundleActivator {
             }
             
         });
+        Class<?>[] daemonDeps = new Class<?>[] {
+                AgentIPCService.class,
+                CommonPaths.class,
+                ExitStatus.class,
+        };
+        daemonTracker = new MultipleServiceTracker(context, daemonDeps, new Action() {
+
+            @Override
+            public void dependenciesAvailable(DependencyProvider services) {
+                AgentIPCService ipcService = services.get(AgentIPCService.class);
+                CommonPaths paths = services.get(CommonPaths.class);
+                ExitStatus exitStatus = services.get(ExitStatus.class);
+                launcherDaemon = new LauncherDaemonCommand(context, ipcService, paths, exitStatus);
+                reg.registerCommand("launcher-daemon", launcherDaemon);
+            }
+
+            @Override
+            public void dependenciesUnavailable() {
+                launcherDaemon.shutdown();
+                reg.unregisterCommand("launcher-daemon");
+            }
+        });
         tracker.open();
         credsTracker.open();
+        daemonTracker.open();
     }
 
     @Override
@@ -123,9 +150,13 @@ public class Activator implements BundleActivator {
             // app is set.
             agentApplication.shutdown(ExitStatus.EXIT_SUCCESS);
         }
+        if (launcherDaemon != null) {
+            launcherDaemon.shutdown();
+        }
         reg.unregisterCommands();
         credsTracker.close();
         tracker.close();
+        daemonTracker.close();
     }
 }
 
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.agent.cli.internal;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceReference;
+
+import com.redhat.thermostat.agent.cli.internal.locale.LocaleResources;
+import com.redhat.thermostat.agent.ipc.server.AgentIPCService;
+import com.redhat.thermostat.common.ExitStatus;
+import com.redhat.thermostat.common.cli.AbstractCommand;
+import com.redhat.thermostat.common.cli.CommandContext;
+import com.redhat.thermostat.common.cli.CommandException;
+import com.redhat.thermostat.common.utils.LoggingUtils;
+import com.redhat.thermostat.launcher.Launcher;
+import com.redhat.thermostat.launcher.ResidentLauncherProtocol;
+import com.redhat.thermostat.shared.config.CommonPaths;
+import com.redhat.thermostat.shared.locale.Translate;
+
+/**
+ * Keeps this launcher, and with it the OSGi framework and whatever bundles
+ * commands have loaded so far, resident. While it runs, {@code thermostat}
+ * forwards command lines to it over IPC instead of booting a framework of
+ * its own.
+ */
+public class LauncherDaemonCommand extends AbstractCommand {
+
+    private static final Translate<LocaleResources> translator = LocaleResources.createLocalizer();
+    private static final Logger logger = LoggingUtils.getLogger(LauncherDaemonCommand.class);
+
+    private final BundleContext context;
+    private final AgentIPCService ipcService;
+    private final CommonPaths paths;
+    private final ExitStatus exitStatus;
+    private final CountDownLatch shutdownLatch = new CountDownLatch(1);
+
+    public LauncherDaemonCommand(BundleContext context, AgentIPCService ipcService, CommonPaths paths, ExitStatus exitStatus) {
+        this.context = context;
+        this.ipcService = ipcService;
+        this.paths = paths;
+        this.exitStatus = exitStatus;
+    }
+
+    @Override
+    public void run(CommandContext ctx) throws CommandException {
+        ServiceReference launcherRef = context.getServiceReference(Launcher.class);
+        requireNonNull(launcherRef, translator.localize(LocaleResources.LAUNCHER_UNAVAILABLE));
+        Launcher launcher = (Launcher) context.getService(launcherRef);
+
+        File marker = new File(paths.getUserRuntimeDataDirectory(), ResidentLauncherProtocol.MARKER_FILE_NAME);
+        try {
+            startServer(launcher, marker);
+        } catch (IOException e) {
+            context.ungetService(launcherRef);
+            throw new CommandException(translator.localize(
+                    LocaleResources.LAUNCHER_DAEMON_FAILED_TO_START, e.getMessage()), e);
+        }
+        ctx.getConsole().getOutput().println(translator.localize(LocaleResources.LAUNCHER_DAEMON_STARTED).getContents());
+
+        try {
+            shutdownLatch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            stopServer(marker);
+            context.ungetService(launcherRef);
+        }
+    }
+
+    private void startServer(Launcher launcher, File marker) throws IOException, CommandException {
+        String name = ResidentLauncherProtocol.SERVER_NAME;
+        if (ipcService.serverExists(name)) {
+            if (marker.exists()) {
+                throw new CommandException(translator.localize(
+                        LocaleResources.LAUNCHER_DAEMON_ALREADY_RUNNING, marker.getAbsolutePath()));
+            }
+            // Left behind by a resident launcher which did not shut down cleanly
+            ipcService.destroyServer(name);
+        }
+        ipcService.createServer(name, new ResidentLauncherServer(launcher, exitStatus));
+        // Also covers termination by signal, where run() never returns
+        marker.deleteOnExit();
+        writeMarker(marker, ipcService.getConfigurationFile());
+    }
+
+    private void writeMarker(File marker, File ipcConfig) throws IOException {
+        File dir = marker.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create " + dir);
+        }
+        Properties props = new Properties();
+        props.setProperty(ResidentLauncherProtocol.MARKER_IPC_CONFIG_KEY, ipcConfig.getAbsolutePath());
+        try (OutputStream out = new FileOutputStream(marker)) {
+            props.store(out, "Thermostat resident launcher");
+        }
+    }
+
+    private void stopServer(File marker) {
+        if (!marker.delete() && marker.exists()) {
+            logger.warning("Unable to delete " + marker);
+        }
+        try {
+            ipcService.destroyServer(ResidentLauncherProtocol.SERVER_NAME);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to destroy resident launcher IPC server", e);
+        }
+    }
+
+    public void shutdown() {
+        shutdownLatch.countDown();
+    }
+
+    @Override
+    public boolean isStorageRequired() {
+        return false;
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.agent.cli.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.redhat.thermostat.agent.ipc.server.IPCMessage;
+import com.redhat.thermostat.agent.ipc.server.ThermostatIPCCallbacks;
+import com.redhat.thermostat.common.ExitStatus;
+import com.redhat.thermostat.common.utils.LoggingUtils;
+import com.redhat.thermostat.launcher.Launcher;
+import com.redhat.thermostat.launcher.ResidentLauncherProtocol;
+import com.redhat.thermostat.launcher.ResidentLauncherProtocol.Output;
+import com.redhat.thermostat.launcher.ResidentLauncherProtocol.Request;
+import com.redhat.thermostat.launcher.ResidentLauncherProtocol.Response;
+
+/**
+ * Runs command lines forwarded by thin clients in this (already booted)
+ * launcher, capturing what they print so that it can be sent back.
+ * <p>
+ * Commands run one at a time since their output is captured by swapping
+ * {@link System#out} and {@link System#err}. Output is only sent back once a
+ * command finished and stdin is not forwarded: commands see an empty
+ * {@link System#in}, so that prompts fail rather than wait for input no one
+ * can give. Commands which keep printing until told to stop are rejected.
+ */
+class ResidentLauncherServer implements ThermostatIPCCallbacks {
+
+    private static final Logger logger = LoggingUtils.getLogger(ResidentLauncherServer.class);
+
+    /*
+     * Commands which are interactive, long-running or which (re)configure
+     * the installation. Clients boot a launcher of their own for these.
+     */
+    static final Set<String> REJECTED_COMMANDS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "agent",
+            "gui",
+            "launcher-daemon",
+            "local",
+            "service",
+            "setup",
+            "shell",
+            "storage",
+            "web-storage-service"
+    )));
+
+    /*
+     * Options and subcommands which make a command print continuously until
+     * a key is pressed, by command name.
+     */
+    static final Map<String, Set<String>> CONTINUOUS_ARGUMENTS;
+    static {
+        Map<String, Set<String>> continuous = new HashMap<>();
+        continuous.put("vm-stat", new HashSet<>(Arrays.asList("-c", "--continuous")));
+        continuous.put("notifications", new HashSet<>(Arrays.asList("follow", "-f", "--follow")));
+        CONTINUOUS_ARGUMENTS = Collections.unmodifiableMap(continuous);
+    }
+
+    // Bounds what is kept around for clients which went away mid-transfer
+    static final int MAX_PENDING_RESULTS = 16;
+
+    private final Launcher launcher;
+    private final ExitStatus exitStatus;
+    private final Object runLock = new Object();
+    private final Map<Long, CapturedOutput> results;
+    private long nextResultId = 0;
+
+    ResidentLauncherServer(Launcher launcher, ExitStatus exitStatus) {
+        this.launcher = launcher;
+        this.exitStatus = exitStatus;
+        this.results = new LinkedHashMap<Long, CapturedOutput>() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, CapturedOutput> eldest) {
+                return size() > MAX_PENDING_RESULTS;
+            }
+        };
+    }
+
+    @Override
+    public void messageReceived(IPCMessage message) {
+        Response response;
+        try {
+            Request request = ResidentLauncherProtocol.decodeRequest(message.get());
+            response = handle(request);
+        } catch (IOException e) {
+            // Let the client fall back to a launcher of its own
+            logger.log(Level.WARNING, "Malformed resident launcher request", e);
+            response = Response.rejected();
+        }
+        try {
+            message.reply(ResidentLauncherProtocol.encode(response));
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to reply to resident launcher client", e);
+        }
+    }
+
+    Response handle(Request request) {
+        switch (request.getType()) {
+        case RUN:
+            return run(request.getArguments());
+        case FETCH:
+            return fetch(request.getResultId(), request.getOutput(), request.getOffset());
+        default:
+            throw new AssertionError("Unknown request type: " + request.getType());
+        }
+    }
+
+    private Response run(String[] args) {
+        if (args.length > 0 && (REJECTED_COMMANDS.contains(args[0]) || isContinuous(args))) {
+            logger.fine("Not running '" + args[0] + "' in the resident launcher");
+            return Response.rejected();
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        synchronized (runLock) {
+            PrintStream originalOut = System.out;
+            PrintStream originalErr = System.err;
+            InputStream originalIn = System.in;
+            exitStatus.setExitStatus(ExitStatus.EXIT_SUCCESS);
+            System.setOut(new PrintStream(out, true));
+            System.setErr(new PrintStream(err, true));
+            System.setIn(new ByteArrayInputStream(new byte[0]));
+            try {
+                launcher.run(args, false);
+            } catch (RuntimeException e) {
+                // LauncherImpl has already printed the trace to (captured) stderr
+                exitStatus.setExitStatus(ExitStatus.EXIT_ERROR);
+            } finally {
+                System.out.flush();
+                System.err.flush();
+                System.setOut(originalOut);
+                System.setErr(originalErr);
+                System.setIn(originalIn);
+            }
+            int status = exitStatus.getExitStatus();
+            CapturedOutput output = new CapturedOutput(out.toByteArray(), err.toByteArray());
+            long resultId;
+            synchronized (results) {
+                resultId = nextResultId++;
+                results.put(resultId, output);
+            }
+            return Response.accepted(resultId, status, output.out.length, output.err.length);
+        }
+    }
+
+    private static boolean isContinuous(String[] args) {
+        Set<String> continuous = CONTINUOUS_ARGUMENTS.get(args[0]);
+        if (continuous == null) {
+            return false;
+        }
+        for (int i = 1; i < args.length; i++) {
+            if (continuous.contains(args[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Response fetch(long resultId, Output which, int offset) {
+        synchronized (results) {
+            CapturedOutput output = results.get(resultId);
+            if (output == null) {
+                return Response.unknownResult();
+            }
+            byte[] bytes = (which == Output.OUT) ? output.out : output.err;
+            int start = Math.min(offset, bytes.length);
+            int end = start + Math.min(bytes.length - start, ResidentLauncherProtocol.MAX_CHUNK_SIZE);
+            if (which == Output.ERR && end == bytes.length) {
+                // stderr is fetched last, so the client is done with this result
+                results.remove(resultId);
+            }
+            return Response.data(Arrays.copyOfRange(bytes, start, end));
+        }
+    }
+
+    // For testing purposes only
+    int getPendingResultCount() {
+        synchronized (results) {
+            return results.size();
+        }
+    }
+
+    private static class CapturedOutput {
+
+        private final byte[] out;
+        private final byte[] err;
+
+        CapturedOutput(byte[] out, byte[] err) {
+            this.out = out;
+            this.err = err;
+        }
+    }
+}
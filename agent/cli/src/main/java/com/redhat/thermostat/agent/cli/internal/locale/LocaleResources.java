@@ -44,6 +44,9 @@ public enum LocaleResources {
     LAUNCHER_UNAVAILABLE,
     UNEXPECTED_RESULT_STORAGE,
     STARTING_AGENT_FAILED,
+    LAUNCHER_DAEMON_STARTED,
+    LAUNCHER_DAEMON_ALREADY_RUNNING,
+    LAUNCHER_DAEMON_FAILED_TO_START,
     ;
 
     static final String RESOURCE_BUNDLE = "com.redhat.thermostat.agent.cli.internal.strings";
@@ -42,7 +42,9 @@ import static org.mockito.Mockito.mock;
 
 import org.junit.Test;
 
+import com.redhat.thermostat.agent.ipc.server.AgentIPCService;
 import com.redhat.thermostat.common.ExitStatus;
+import com.redhat.thermostat.shared.config.CommonPaths;
 import com.redhat.thermostat.shared.config.SSLConfiguration;
 import com.redhat.thermostat.storage.core.WriterID;
 import com.redhat.thermostat.testutils.StubBundleContext;
@@ -65,7 +67,7 @@ public class ActivatorTest {
         
         activator.start(bundleContext);
         
-        assertEquals(4, bundleContext.getServiceListeners().size());
+        assertEquals(7, bundleContext.getServiceListeners().size());
         
         assertCommandIsRegistered(bundleContext, "agent", AgentApplication.class);
         assertCommandIsRegistered(bundleContext, "service", ServiceCommand.class);
@@ -75,5 +77,22 @@ public class ActivatorTest {
         assertEquals(0, bundleContext.getServiceListeners().size());
         assertEquals(3, bundleContext.getAllServices().size());
     }
-}
 
+    @Test
+    public void verifyActivatorRegistersLauncherDaemonCommand() throws Exception {
+        StubBundleContext bundleContext = new StubBundleContext();
+
+        bundleContext.registerService(AgentIPCService.class, mock(AgentIPCService.class), null);
+        bundleContext.registerService(CommonPaths.class, mock(CommonPaths.class), null);
+        bundleContext.registerService(ExitStatus.class, mock(ExitStatus.class), null);
+
+        Activator activator = new Activator();
+        activator.start(bundleContext);
+
+        assertCommandIsRegistered(bundleContext, "launcher-daemon", LauncherDaemonCommand.class);
+
+        activator.stop(bundleContext);
+
+        assertEquals(0, bundleContext.getServiceListeners().size());
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.agent.cli.internal;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.redhat.thermostat.agent.ipc.server.IPCMessage;
+import com.redhat.thermostat.common.ActionListener;
+import com.redhat.thermostat.common.ExitStatus;
+import com.redhat.thermostat.common.tools.ApplicationState;
+import com.redhat.thermostat.launcher.Launcher;
+import com.redhat.thermostat.launcher.ResidentLauncherProtocol;
+import com.redhat.thermostat.launcher.ResidentLauncherProtocol.Output;
+import com.redhat.thermostat.launcher.ResidentLauncherProtocol.Request;
+import com.redhat.thermostat.launcher.ResidentLauncherProtocol.Response;
+import com.redhat.thermostat.launcher.ResidentLauncherProtocol.ResponseType;
+
+public class ResidentLauncherServerTest {
+
+    private StubExitStatus exitStatus;
+    private StubLauncher launcher;
+    private ResidentLauncherServer server;
+
+    @Before
+    public void setUp() {
+        exitStatus = new StubExitStatus();
+        launcher = new StubLauncher(exitStatus);
+        server = new ResidentLauncherServer(launcher, exitStatus);
+    }
+
+    @Test
+    public void testRunCapturesOutputAndExitStatus() throws IOException {
+        PrintStream originalOut = System.out;
+        PrintStream originalErr = System.err;
+        launcher.out = "hello";
+        launcher.err = "oops";
+        launcher.status = 3;
+
+        Response result = send(Request.run(new String[] { "list-vms", "-a", "foo" }));
+
+        assertArrayEquals(new String[] { "list-vms", "-a", "foo" }, launcher.lastArgs);
+        assertFalse(launcher.lastInShell);
+        assertSame(originalOut, System.out);
+        assertSame(originalErr, System.err);
+        assertEquals(ResponseType.ACCEPTED, result.getType());
+        assertEquals(3, result.getExitStatus());
+        String nl = System.lineSeparator();
+        assertEquals(("hello" + nl).length(), result.getLength(Output.OUT));
+        assertEquals(("oops" + nl).length(), result.getLength(Output.ERR));
+
+        Response out = send(Request.fetch(result.getResultId(), Output.OUT, 0));
+        assertEquals("hello" + nl, new String(out.getData(), "UTF-8"));
+        Response err = send(Request.fetch(result.getResultId(), Output.ERR, 0));
+        assertEquals("oops" + nl, new String(err.getData(), "UTF-8"));
+
+        // Fetching the end of stderr releases the result
+        assertEquals(0, server.getPendingResultCount());
+        assertEquals(ResponseType.UNKNOWN_RESULT, send(Request.fetch(result.getResultId(), Output.OUT, 0)).getType());
+    }
+
+    @Test
+    public void testExitStatusIsResetBetweenCommands() throws IOException {
+        launcher.status = 1;
+        assertEquals(1, send(Request.run(new String[] { "vm-info" })).getExitStatus());
+
+        launcher.status = -1;
+        assertEquals(ExitStatus.EXIT_SUCCESS, send(Request.run(new String[] { "list-vms" })).getExitStatus());
+    }
+
+    @Test
+    public void testLargeOutputIsChunked() throws IOException {
+        char[] line = new char[ResidentLauncherProtocol.MAX_CHUNK_SIZE];
+        Arrays.fill(line, 'x');
+        launcher.out = new String(line);
+
+        Response result = send(Request.run(new String[] { "list-vms" }));
+        int length = result.getLength(Output.OUT);
+        assertEquals(line.length + System.lineSeparator().length(), length);
+
+        Response first = send(Request.fetch(result.getResultId(), Output.OUT, 0));
+        assertEquals(ResidentLauncherProtocol.MAX_CHUNK_SIZE, first.getData().length);
+        Response second = send(Request.fetch(result.getResultId(), Output.OUT, first.getData().length));
+        assertEquals(length - first.getData().length, second.getData().length);
+    }
+
+    @Test
+    public void testInteractiveCommandsAreRejected() throws IOException {
+        for (String command : ResidentLauncherServer.REJECTED_COMMANDS) {
+            Response response = send(Request.run(new String[] { command }));
+            assertEquals(ResponseType.REJECTED, response.getType());
+        }
+        assertNull(launcher.lastArgs);
+    }
+
+    @Test
+    public void testContinuousInvocationsAreRejected() throws IOException {
+        String[][] invocations = {
+                { "vm-stat", "-v", "foo", "-c" },
+                { "vm-stat", "--continuous", "--vmId", "foo" },
+                { "notifications", "follow", "-v", "foo" },
+                { "notifications", "enable", "--follow", "-v", "foo" },
+        };
+        for (String[] args : invocations) {
+            Response response = send(Request.run(args));
+            assertEquals(ResponseType.REJECTED, response.getType());
+        }
+        assertNull(launcher.lastArgs);
+
+        assertEquals(ResponseType.ACCEPTED, send(Request.run(new String[] { "vm-stat", "-v", "foo" })).getType());
+        assertEquals(ResponseType.ACCEPTED, send(Request.run(new String[] { "notifications", "show", "-v", "foo" })).getType());
+    }
+
+    @Test
+    public void testCommandsSeeEmptyInput() throws IOException {
+        InputStream originalIn = System.in;
+
+        send(Request.run(new String[] { "list-vms" }));
+
+        assertEquals(-1, launcher.lastInputRead);
+        assertSame(originalIn, System.in);
+    }
+
+    @Test
+    public void testAbandonedResultsAreBounded() throws IOException {
+        for (int i = 0; i < ResidentLauncherServer.MAX_PENDING_RESULTS * 2; i++) {
+            send(Request.run(new String[] { "list-vms" }));
+        }
+        assertEquals(ResidentLauncherServer.MAX_PENDING_RESULTS, server.getPendingResultCount());
+    }
+
+    @Test
+    public void testMalformedRequestIsRejected() throws IOException {
+        StubMessage message = new StubMessage(ByteBuffer.wrap(new byte[] { 1 }));
+        server.messageReceived(message);
+
+        assertEquals(ResponseType.REJECTED, ResidentLauncherProtocol.decodeResponse(message.reply).getType());
+    }
+
+    private Response send(Request request) throws IOException {
+        StubMessage message = new StubMessage(ResidentLauncherProtocol.encode(request));
+        server.messageReceived(message);
+        return ResidentLauncherProtocol.decodeResponse(message.reply);
+    }
+
+    private static class StubMessage implements IPCMessage {
+
+        private final ByteBuffer request;
+        private ByteBuffer reply;
+
+        StubMessage(ByteBuffer request) {
+            this.request = request;
+        }
+
+        @Override
+        public ByteBuffer get() {
+            return request;
+        }
+
+        @Override
+        public void reply(ByteBuffer message) throws IOException {
+            this.reply = message;
+        }
+    }
+
+    private static class StubLauncher implements Launcher {
+
+        private final ExitStatus exitStatus;
+        private String out;
+        private String err;
+        private int status = -1;
+        private String[] lastArgs;
+        private boolean lastInShell;
+        private int lastInputRead;
+
+        StubLauncher(ExitStatus exitStatus) {
+            this.exitStatus = exitStatus;
+        }
+
+        @Override
+        public void run(String[] args, boolean inShell) {
+            run(args, null, inShell);
+        }
+
+        @Override
+        public void run(String[] args, Collection<ActionListener<ApplicationState>> listeners, boolean inShell) {
+            lastArgs = args;
+            lastInShell = inShell;
+            try {
+                lastInputRead = System.in.read();
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+            if (out != null) {
+                System.out.println(out);
+            }
+            if (err != null) {
+                System.err.println(err);
+            }
+            if (status >= 0) {
+                exitStatus.setExitStatus(status);
+            }
+        }
+    }
+
+    private static class StubExitStatus implements ExitStatus {
+
+        private int status = ExitStatus.EXIT_SUCCESS;
+
+        @Override
+        public void setExitStatus(int newExitStatus) {
+            status = newExitStatus;
+        }
+
+        @Override
+        public int getExitStatus() {
+            return status;
+        }
+    }
+}
@@ -108,7 +108,7 @@ class CommandChannelRequestDecoder extends ByteToMessageDecoder {
         InetSocketAddress addr = (InetSocketAddress)ctx.channel().remoteAddress();
         Request request = new Request(RequestType.valueOf(typeAsString), addr);
         int remainingLength = buf.readableBytes() - stringDecCtx.getBytesRead();
-        ByteBuf adjustedBuffer = buf.slice(stringDecCtx.getBytesRead(), remainingLength);
+        ByteBuf adjustedBuffer = buf.slice(buf.readerIndex() + stringDecCtx.getBytesRead(), remainingLength);
         ParameterDecodingContext paramCtx = DecodingHelper.decodeParameters(adjustedBuffer);
         if (paramCtx.getState() != ParameterDecodingState.ALL_PARAMETERS_READ) {
             // insufficient data
@@ -46,6 +46,7 @@ import com.redhat.thermostat.common.command.noapi.MessageEncoder;
 import com.redhat.thermostat.common.utils.LoggingUtils;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 
 
 class ResponseEncoder extends MessageEncoder {
@@ -67,7 +68,11 @@ class ResponseEncoder extends MessageEncoder {
         String responseType = EncodingHelper.trimType(response.getType().toString());
         ByteBuf typeBuffer = EncodingHelper.encode(responseType);
 
-        return typeBuffer;
+        String requestId = response.getRequestId();
+        if (requestId == null) {
+            return typeBuffer;
+        }
+        return Unpooled.wrappedBuffer(typeBuffer, EncodingHelper.encode(requestId));
     }
 
 }
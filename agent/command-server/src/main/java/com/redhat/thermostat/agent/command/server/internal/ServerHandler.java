@@ -96,6 +96,8 @@ class ServerHandler extends SimpleChannelInboundHandler<Request> {
      * 3. Wait on agent for response (maybe add timeout here)
      * 4. Read JSON-encoded response from agent
      * 5. Write response to command channel
+     * 6. Close the channel, unless the client identified the request. Such
+     *    clients keep the connection open for further requests.
      */
     @Override
     protected void channelRead0(ChannelHandlerContext ctx, Request request)
@@ -124,10 +126,17 @@ class ServerHandler extends SimpleChannelInboundHandler<Request> {
             }
         }
         
+        String requestId = request.getParameter(Request.REQUEST_ID);
+        if (requestId != null) {
+            response = new Response(response.getType(), requestId);
+        }
+
         Channel channel = ctx.channel();
         logger.info("Sending response: " + response.getType().toString());
         channel.pipeline().writeAndFlush(response);
-        ctx.close();
+        if (requestId == null) {
+            ctx.close();
+        }
     }
 
     @Override
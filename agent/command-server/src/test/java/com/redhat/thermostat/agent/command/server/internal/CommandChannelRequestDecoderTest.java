@@ -484,6 +484,37 @@ public class CommandChannelRequestDecoderTest {
         assertEquals(LONG_PARAM_VALUE, decodedValue);
     }
     
+    /*
+     * Clients send several requests over the same connection, so more than
+     * one request may be in the buffer at once.
+     */
+    @Test
+    public void testDecodeConsecutiveRequests() throws Exception {
+        ByteBuf buffer = Unpooled.buffer();
+        for (String requestId : new String[] { "1", "2" }) {
+            buffer.writeInt(TYPE.length);
+            buffer.writeBytes(TYPE);
+            buffer.writeInt(1);
+            buffer.writeInt(Request.REQUEST_ID.getBytes().length);
+            buffer.writeInt(requestId.getBytes().length);
+            buffer.writeBytes(Request.REQUEST_ID.getBytes());
+            buffer.writeBytes(requestId.getBytes());
+        }
+        // as if the first bytes had been consumed already
+        ByteBuf offsetBuffer = Unpooled.buffer();
+        offsetBuffer.writeInt(0xcafe);
+        offsetBuffer.writeBytes(buffer);
+        offsetBuffer.readInt();
+
+        List<Object> resultList = new ArrayList<>();
+        decoder.decode(ctx, offsetBuffer, resultList);
+        decoder.decode(ctx, offsetBuffer, resultList);
+        assertEquals(2, resultList.size());
+        assertEquals("1", ((Request) resultList.get(0)).getParameter(Request.REQUEST_ID));
+        assertEquals("2", ((Request) resultList.get(1)).getParameter(Request.REQUEST_ID));
+        assertEquals(0, offsetBuffer.readableBytes());
+    }
+
     @Test
     public void testDecodeWithParametersFromBytesArray() throws Exception {
         ByteBuf buffer = Unpooled.copiedBuffer(ENCODED_REQUEST_WITH_PARAMS);
@@ -70,6 +70,22 @@ public class ResponseEncoderTest {
         assertEquals(0, ByteBufUtil.compare(expected, actual));
     }
     
+    @Test
+    public void testEncodeWithRequestId() throws Exception {
+        ResponseEncoder encoder = new ResponseEncoder();
+        ByteBuf expected = Unpooled.buffer();
+        expected.writeInt(2);
+        expected.writeBytes("OK".getBytes());
+        expected.writeInt(2);
+        expected.writeBytes("42".getBytes());
+        Response ok = new Response(ResponseType.OK, "42");
+        ByteBuf actual = (ByteBuf)encoder.encode(ok);
+        if (DEBUG) {
+            printBuffers(actual, expected);
+        }
+        assertEquals(0, ByteBufUtil.compare(expected, actual));
+    }
+
     private void printBuffers(ByteBuf actual, ByteBuf expected) {
         System.out.println("hexdump expected\n-------------------------------------");
         System.out.println(ByteBufUtil.hexDump(expected));
@@ -134,6 +134,24 @@ public class ServerHandlerTest {
         
         verify(requestEncoder).encodeRequestAndSend(agentChannel, request);
         verify(pipeline).writeAndFlush(response);
+        verify(ctx).close();
+    }
+
+    @Test
+    public void testIdentifiedRequestKeepsChannelOpen() throws Exception {
+        Request request = new Request(RequestType.RESPONSE_EXPECTED, new InetSocketAddress("127.0.0.1", 123));
+        request.setReceiver("com.example.MyReceiver");
+        request.setParameter(Request.REQUEST_ID, "3");
+
+        when(responseParser.parseResponse(agentChannel)).thenReturn(new Response(ResponseType.OK));
+
+        handler.channelRead0(ctx, request);
+
+        ArgumentCaptor<Response> responseCaptor = ArgumentCaptor.forClass(Response.class);
+        verify(pipeline).writeAndFlush(responseCaptor.capture());
+        assertEquals(ResponseType.OK, responseCaptor.getValue().getType());
+        assertEquals("3", responseCaptor.getValue().getRequestId());
+        verify(ctx, never()).close();
     }
     
     @Test
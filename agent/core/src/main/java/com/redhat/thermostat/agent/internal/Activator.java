@@ -50,6 +50,7 @@ import com.redhat.thermostat.agent.VmBlacklist;
 import com.redhat.thermostat.agent.config.AgentConfigsUtils;
 import com.redhat.thermostat.agent.ipc.server.AgentIPCService;
 import com.redhat.thermostat.agent.utils.management.MXBeanConnectionPool;
+import com.redhat.thermostat.backend.internal.VmAttachmentService;
 import com.redhat.thermostat.common.portability.UserNameUtil;
 import com.redhat.thermostat.common.MultipleServiceTracker;
 import com.redhat.thermostat.common.MultipleServiceTracker.Action;
@@ -140,6 +141,7 @@ public class Activator implements BundleActivator {
     public void stop(BundleContext context) throws Exception {
         commonPathsTracker.close();
         agentIPCTracker.close();
+        VmAttachmentService.shutdownInstance();
     }
 
     // Testing hook.
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.backend;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.redhat.thermostat.common.utils.LoggingUtils;
+
+/**
+ * Resolves performance counters of a {@link VmUpdate} into
+ * {@link LongCounterHandle}s.
+ */
+public final class LongCounterHandles {
+
+    private static final Logger logger = LoggingUtils.getLogger(LongCounterHandles.class);
+
+    private LongCounterHandles() {
+        // static methods only
+    }
+
+    /**
+     * Resolves the specified JVM performance counter with a Long data type
+     * into a handle. If the update is a {@link LongCounterHandleResolver},
+     * the handle reads the counter directly. Otherwise, the handle queries
+     * the counter by name via
+     * {@link VmUpdate#getPerformanceCounterLong(String)} whenever it is read.
+     * @param update - The update to resolve the counter from
+     * @param name - The name of the performance counter
+     * @return A handle to the requested counter, or null if no such counter
+     * exists
+     * @throws VmUpdateException if there is a problem communicating with
+     * the JVM
+     * @throws ClassCastException if the counter does not have a Long data type
+     * @see LongCounterHandleResolver#getLongCounterHandle(String)
+     */
+    public static LongCounterHandle resolve(VmUpdate update, String name) throws VmUpdateException {
+        if (update instanceof LongCounterHandleResolver) {
+            return ((LongCounterHandleResolver) update).getLongCounterHandle(name);
+        }
+        Long value = update.getPerformanceCounterLong(name);
+        if (value == null) {
+            return null;
+        }
+        return new ByNameHandle(update, name, value);
+    }
+
+    /*
+     * Reads the counter by name. Keeps returning the last value read if
+     * the counter can no longer be read.
+     */
+    private static class ByNameHandle implements LongCounterHandle {
+
+        private final VmUpdate update;
+        private final String name;
+        private long lastValue;
+
+        private ByNameHandle(VmUpdate update, String name, long value) {
+            this.update = update;
+            this.name = name;
+            this.lastValue = value;
+        }
+
+        @Override
+        public long getValue() {
+            try {
+                Long value = update.getPerformanceCounterLong(name);
+                if (value != null) {
+                    lastValue = value;
+                }
+            } catch (VmUpdateException e) {
+                logger.log(Level.FINE, "Unable to read counter " + name, e);
+            }
+            return lastValue;
+        }
+
+    }
+
+}
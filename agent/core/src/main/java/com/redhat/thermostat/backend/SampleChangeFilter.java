@@ -0,0 +1,191 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+
+package com.redhat.thermostat.backend;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.redhat.thermostat.storage.core.Category;
+import com.redhat.thermostat.storage.core.WriteOnChange;
+
+/**
+ * Decides whether a periodically collected sample needs to be written to
+ * storage. Unless enabled, every sample is written. Once enabled for a
+ * {@link Category}, a sample is only written if its values differ from the
+ * last written sample of the same series, or if the last written sample is
+ * older than the heartbeat interval. Readers treat the values of a sample as
+ * valid until the next sample of the series.
+ * <p>
+ * Write-on-change is enabled per category by setting the system property
+ * {@link #HEARTBEAT_PROPERTY_PREFIX}<code>&lt;category name&gt;</code> to
+ * the heartbeat interval in seconds.
+ * <p>
+ * Values are passed one by one, so that checking a sample allocates nothing:
+ * <pre>
+ * if (filter.sample(key, timeStamp).add(a).add(b).shouldWrite()) {
+ *     // write the sample
+ * }
+ * </pre>
+ * Instances are not thread-safe. They are meant to be used by a single
+ * {@link VmUpdateListener}.
+ */
+public class SampleChangeFilter<K> {
+
+    public static final String HEARTBEAT_PROPERTY_PREFIX = WriteOnChange.HEARTBEAT_PROPERTY_PREFIX;
+
+    private final long heartbeatMillis;
+    private final Map<K, LastSample> lastWritten = new HashMap<>();
+    // Reused for every sample
+    private final Sample sample = new Sample();
+
+    /**
+     * @param heartbeatMillis the maximum time between two written samples
+     *        of the same series, or zero or less to write every sample
+     */
+    public SampleChangeFilter(long heartbeatMillis) {
+        this.heartbeatMillis = heartbeatMillis;
+    }
+
+    /**
+     * Creates a filter configured by the system property for the given
+     * category. The filter writes every sample if the property is not set.
+     */
+    public static <K> SampleChangeFilter<K> forCategory(Category<?> category) {
+        return new SampleChangeFilter<>(WriteOnChange.getHeartbeatMillis(category));
+    }
+
+    public boolean isEnabled() {
+        return heartbeatMillis > 0;
+    }
+
+    /**
+     * Starts checking a sample. Its values need to be passed to
+     * {@link Sample#add(long)} in the same order for every sample of the
+     * series, followed by a call to {@link Sample#shouldWrite()}.
+     * <p>
+     * The returned sample is reused by the next call of this method.
+     *
+     * @param key identifies the series the sample belongs to
+     * @param timeStamp the time stamp of the sample
+     */
+    public Sample sample(K key, long timeStamp) {
+        LastSample last = null;
+        if (isEnabled()) {
+            last = lastWritten.get(key);
+            if (last == null) {
+                last = new LastSample();
+                lastWritten.put(key, last);
+            }
+        }
+        sample.start(last, timeStamp);
+        return sample;
+    }
+
+    /**
+     * The values of a sample, excluding its time stamp.
+     */
+    public final class Sample {
+
+        private LastSample last;
+        private long timeStamp;
+        private long[] values = new long[16];
+        private int count;
+
+        private Sample() {
+            // created by the filter only
+        }
+
+        private void start(LastSample last, long timeStamp) {
+            this.last = last;
+            this.timeStamp = timeStamp;
+            this.count = 0;
+        }
+
+        public Sample add(long value) {
+            if (last == null) {
+                // every sample gets written anyway
+                return this;
+            }
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+            }
+            values[count++] = value;
+            return this;
+        }
+
+        /**
+         * @return true if the sample should be written
+         */
+        public boolean shouldWrite() {
+            if (last == null) {
+                return true;
+            }
+            if (last.values != null && timeStamp - last.timeStamp < heartbeatMillis && isUnchanged()) {
+                return false;
+            }
+            last.timeStamp = timeStamp;
+            if (last.values == null || last.values.length != count) {
+                last.values = new long[count];
+            }
+            System.arraycopy(values, 0, last.values, 0, count);
+            return true;
+        }
+
+        private boolean isUnchanged() {
+            if (last.values.length != count) {
+                return false;
+            }
+            for (int i = 0; i < count; i++) {
+                if (values[i] != last.values[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static class LastSample {
+
+        private long timeStamp;
+        // null until a sample of the series has been written
+        private long[] values;
+    }
+
+}
+
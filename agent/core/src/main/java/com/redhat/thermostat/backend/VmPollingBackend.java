@@ -36,6 +36,7 @@
 
 package com.redhat.thermostat.backend;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -63,6 +64,7 @@ public abstract class VmPollingBackend extends PollingBackend implements VmStatu
     private final Set<VmPollingAction> actions;
     private final Map<String, Pair<Integer, VmPollingAction>> badActions;
     private final Map<Integer, String> pidsToMonitor = new ConcurrentHashMap<>();
+    private final Set<Integer> monitoredPids = Collections.unmodifiableSet(pidsToMonitor.keySet());
     private final VmStatusListenerRegistrar registrar;
     private static final Logger logger = LoggingUtils.getLogger(VmPollingBackend.class);
     private static final int EXCEPTIONS_THRESHOLD = 10;
@@ -88,6 +90,7 @@ public abstract class VmPollingBackend extends PollingBackend implements VmStatu
 
     @Override
     final void doScheduledActions() {
+        preScheduledActions(monitoredPids);
         for (Entry<Integer, String> entry : pidsToMonitor.entrySet()) {
             int pid = entry.getKey();
             String vmId = entry.getValue();
@@ -101,6 +104,17 @@ public abstract class VmPollingBackend extends PollingBackend implements VmStatu
         }
     }
 
+    /**
+     * Called once per polling interval, before the registered actions are
+     * performed for each monitored JVM. Subclasses can override this to
+     * collect data about all monitored JVM processes in a single pass.
+     * Does nothing by default.
+     *
+     * @param pids a read-only view of the process IDs of all monitored JVMs
+     */
+    protected void preScheduledActions(Set<Integer> pids) {
+    }
+
     private synchronized void handleActionException(VmPollingAction action, String vmId) {
         final String actionName = action.getClass().getName();
         final String actionKey = actionName + vmId;
@@ -40,6 +40,7 @@ package com.redhat.thermostat.backend;
  * This interface can be used to query the performance counters
  * of a monitored JVM when they are updated.
  * @see VmUpdateListener#countersUpdated(VmUpdate)
+ * @see LongCounterHandles#resolve(VmUpdate, String)
  */
 public interface VmUpdate {
 
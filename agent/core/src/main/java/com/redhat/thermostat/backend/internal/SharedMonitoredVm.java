@@ -0,0 +1,126 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+
+package com.redhat.thermostat.backend.internal;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import sun.jvmstat.monitor.MonitoredVm;
+import sun.jvmstat.monitor.event.MonitorStatusChangeEvent;
+import sun.jvmstat.monitor.event.VmEvent;
+import sun.jvmstat.monitor.event.VmListener;
+
+/**
+ * A jvmstat attachment to a single JVM which is shared by all
+ * {@link VmListenerWrapper}s interested in that JVM. It is the only
+ * {@link VmListener} registered with the underlying {@link MonitoredVm} and
+ * forwards every event to the wrappers added to it.
+ *
+ * @see VmAttachmentService
+ */
+public class SharedMonitoredVm implements VmListener {
+
+    private final int pid;
+    private final MonitoredVm vm;
+    private final List<VmListenerWrapper> listeners = new CopyOnWriteArrayList<>();
+    // Number of wrappers attached through VmAttachmentService. Guarded by the
+    // service. Bad listeners removed from the listener list still count.
+    private int references;
+
+    SharedMonitoredVm(int pid, MonitoredVm vm) {
+        this.pid = pid;
+        this.vm = vm;
+    }
+
+    public int getPid() {
+        return pid;
+    }
+
+    public MonitoredVm getMonitoredVm() {
+        return vm;
+    }
+
+    void addListener(VmListenerWrapper listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Stops forwarding events to the given listener.
+     */
+    public void removeListener(VmListenerWrapper listener) {
+        listeners.remove(listener);
+    }
+
+    int incrementReferences() {
+        return ++references;
+    }
+
+    int decrementReferences() {
+        return --references;
+    }
+
+    @Override
+    public void monitorsUpdated(VmEvent event) {
+        for (VmListenerWrapper listener : listeners) {
+            listener.monitorsUpdated(event);
+        }
+    }
+
+    @Override
+    public void monitorStatusChanged(MonitorStatusChangeEvent event) {
+        for (VmListenerWrapper listener : listeners) {
+            listener.monitorStatusChanged(event);
+        }
+    }
+
+    @Override
+    public void disconnected(VmEvent event) {
+        for (VmListenerWrapper listener : listeners) {
+            listener.disconnected(event);
+        }
+    }
+
+    /*
+     * For testing purposes only.
+     */
+    List<VmListenerWrapper> getListeners() {
+        return listeners;
+    }
+
+}
+
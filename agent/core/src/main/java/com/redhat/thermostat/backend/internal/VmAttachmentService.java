@@ -0,0 +1,245 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+
+package com.redhat.thermostat.backend.internal;
+
+import java.net.URISyntaxException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import sun.jvmstat.monitor.HostIdentifier;
+import sun.jvmstat.monitor.MonitorException;
+import sun.jvmstat.monitor.MonitoredHost;
+import sun.jvmstat.monitor.MonitoredVm;
+import sun.jvmstat.monitor.VmIdentifier;
+
+import com.redhat.thermostat.backend.VmUpdateListener;
+import com.redhat.thermostat.common.utils.LoggingUtils;
+
+/**
+ * Attaches jvmstat to each monitored JVM at most once per agent, no matter
+ * how many backends listen to it. Every {@link VmMonitor} attaches its
+ * {@link VmUpdateListener}s through the shared instance of this class, which
+ * maps the hsperfdata of a JVM once and lets a single polling task notify all
+ * listeners. The JVM is detached when the last listener is detached.
+ * <p>
+ * The sampling interval of all JVMs can be set with the
+ * {@link #SAMPLING_INTERVAL} system property and be overridden per JVM with
+ * {@link #setSamplingInterval(int, int)}.
+ */
+public class VmAttachmentService {
+
+    /**
+     * System property for the default interval, in milliseconds, at which
+     * jvmstat counters of attached JVMs are sampled. The jvmstat default is
+     * used if unset.
+     */
+    public static final String SAMPLING_INTERVAL = "com.redhat.thermostat.backend.vmSamplingInterval";
+
+    private static final Logger logger = LoggingUtils.getLogger(VmAttachmentService.class);
+
+    private static VmAttachmentService instance;
+
+    private final MonitoredHost host;
+    private final int defaultInterval;
+    private final Map<Integer, SharedMonitoredVm> pidToVm = new HashMap<>();
+    private final Map<Integer, Integer> pidToInterval = new HashMap<>();
+
+    VmAttachmentService(MonitoredHost host) {
+        this(host, getDefaultInterval());
+    }
+
+    VmAttachmentService(MonitoredHost host, int defaultInterval) {
+        this.host = host;
+        this.defaultInterval = defaultInterval;
+    }
+
+    /**
+     * @return the attachment service shared by all backends of this agent
+     * @throws BackendException if jvmstat can't connect to the local host
+     */
+    public static synchronized VmAttachmentService getInstance() throws BackendException {
+        if (instance == null) {
+            instance = new VmAttachmentService(createLocalHost());
+        }
+        return instance;
+    }
+
+    /**
+     * Detaches the shared instance from all JVMs still attached, which stops
+     * jvmstat from polling them, and discards it. Called when the agent
+     * bundle stops.
+     */
+    public static synchronized void shutdownInstance() {
+        if (instance != null) {
+            instance.detachAll();
+            instance = null;
+        }
+    }
+
+    private static MonitoredHost createLocalHost() throws BackendException {
+        try {
+            HostIdentifier hostId = new HostIdentifier((String) null);
+            return MonitoredHost.getMonitoredHost(hostId);
+        } catch (MonitorException me) {
+            throw new BackendException("Problems with connecting jvmstat to local machine", me);
+        } catch (URISyntaxException use) {
+            throw new BackendException("Failed to create host identifier", use);
+        }
+    }
+
+    private static int getDefaultInterval() {
+        Integer interval = Integer.getInteger(SAMPLING_INTERVAL);
+        if (interval == null) {
+            return 0;
+        }
+        if (interval <= 0) {
+            logger.warning("Ignoring invalid " + SAMPLING_INTERVAL + " of " + interval + "ms");
+            return 0;
+        }
+        return interval;
+    }
+
+    /**
+     * Registers a listener for counter updates of the given JVM, attaching to
+     * the JVM first if no other listener is attached to it yet.
+     *
+     * @return the wrapper which needs to be passed to {@link #detach(VmListenerWrapper)}
+     *         once the listener is no longer interested in the JVM
+     */
+    public synchronized VmListenerWrapper attach(VmUpdateListener listener, int pid) throws MonitorException, URISyntaxException {
+        SharedMonitoredVm sharedVm = pidToVm.get(pid);
+        if (sharedVm == null) {
+            MonitoredVm vm = host.getMonitoredVm(host.getHostIdentifier().resolve(new VmIdentifier(String.valueOf(pid))));
+            int interval = getSamplingInterval(pid);
+            if (interval > 0) {
+                vm.setInterval(interval);
+            }
+            sharedVm = new SharedMonitoredVm(pid, vm);
+            try {
+                vm.addVmListener(sharedVm);
+            } catch (MonitorException e) {
+                vm.detach();
+                throw e;
+            }
+            pidToVm.put(pid, sharedVm);
+            logger.finer("Attached to VM: " + pid);
+        }
+        VmListenerWrapper wrapper = new VmListenerWrapper(listener, sharedVm);
+        sharedVm.addListener(wrapper);
+        sharedVm.incrementReferences();
+        return wrapper;
+    }
+
+    /**
+     * Stops notifying the wrapped listener and detaches from its JVM if
+     * no other listener remains.
+     */
+    public synchronized void detach(VmListenerWrapper wrapper) {
+        SharedMonitoredVm sharedVm = wrapper.getSharedMonitoredVm();
+        sharedVm.removeListener(wrapper);
+        if (pidToVm.get(sharedVm.getPid()) != sharedVm || sharedVm.decrementReferences() > 0) {
+            return;
+        }
+        pidToVm.remove(sharedVm.getPid());
+        pidToInterval.remove(sharedVm.getPid());
+        detachVm(sharedVm);
+    }
+
+    /**
+     * Detaches from every attached JVM, regardless of the listeners still
+     * registered for it.
+     */
+    synchronized void detachAll() {
+        for (SharedMonitoredVm sharedVm : pidToVm.values()) {
+            detachVm(sharedVm);
+        }
+        pidToVm.clear();
+        pidToInterval.clear();
+    }
+
+    private void detachVm(SharedMonitoredVm sharedVm) {
+        MonitoredVm vm = sharedVm.getMonitoredVm();
+        try {
+            vm.removeVmListener(sharedVm);
+        } catch (MonitorException e) {
+            logger.log(Level.WARNING, "can't remove vm listener", e);
+        }
+        vm.detach();
+        logger.finer("Detached from VM: " + sharedVm.getPid());
+    }
+
+    /**
+     * Sets the interval at which counters of the given JVM are sampled. Takes
+     * effect immediately if the JVM is already attached.
+     *
+     * @param intervalMillis the interval in milliseconds, or zero or less to
+     *        revert to the default interval
+     */
+    public synchronized void setSamplingInterval(int pid, int intervalMillis) {
+        if (intervalMillis > 0) {
+            pidToInterval.put(pid, intervalMillis);
+        } else {
+            pidToInterval.remove(pid);
+        }
+        SharedMonitoredVm sharedVm = pidToVm.get(pid);
+        if (sharedVm != null) {
+            int interval = getSamplingInterval(pid);
+            sharedVm.getMonitoredVm().setInterval(interval > 0 ? interval : host.getInterval());
+        }
+    }
+
+    /**
+     * @return the sampling interval in milliseconds configured for the given
+     *         JVM, or zero if the jvmstat default applies
+     */
+    public synchronized int getSamplingInterval(int pid) {
+        Integer interval = pidToInterval.get(pid);
+        return interval != null ? interval : defaultInterval;
+    }
+
+    /*
+     * For testing purposes only.
+     */
+    synchronized Map<Integer, SharedMonitoredVm> getPidToVmMap() {
+        return pidToVm;
+    }
+
+}
+
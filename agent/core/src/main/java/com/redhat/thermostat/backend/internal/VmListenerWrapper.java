@@ -46,7 +46,6 @@ import com.redhat.thermostat.common.utils.LoggingUtils;
 
 import sun.jvmstat.monitor.Monitor;
 import sun.jvmstat.monitor.MonitorException;
-import sun.jvmstat.monitor.MonitoredVm;
 import sun.jvmstat.monitor.event.MonitorStatusChangeEvent;
 import sun.jvmstat.monitor.event.VmEvent;
 import sun.jvmstat.monitor.event.VmListener;
@@ -58,11 +57,11 @@ public class VmListenerWrapper implements VmListener {
     // exceptions on countersUpdated()
     private static final int EXCEPTION_THRESHOLD = 10;
     private final VmUpdateListener listener;
-    private final MonitoredVm vm;
+    private final SharedMonitoredVm vm;
     private final VmUpdate update;
     private int exceptionCount;
 
-    public VmListenerWrapper(VmUpdateListener listener, MonitoredVm vm) {
+    public VmListenerWrapper(VmUpdateListener listener, SharedMonitoredVm vm) {
         this.listener = listener;
         this.vm = vm;
         this.update = new VmUpdateImpl(this);
@@ -70,7 +69,7 @@ public class VmListenerWrapper implements VmListener {
 
     @Override
     public void monitorsUpdated(VmEvent event) {
-        if (!vm.equals(event.getMonitoredVm())) {
+        if (!vm.getMonitoredVm().equals(event.getMonitoredVm())) {
             throw new AssertionError("Received change event for wrong VM");
         }
         try {
@@ -87,11 +86,7 @@ public class VmListenerWrapper implements VmListener {
             exceptionCount++;
         } else {
             logger.fine("Removing bad listener " + listenerName + " due to too many repeated exceptions.");
-            try {
-                vm.removeVmListener(this);
-            } catch (MonitorException e) {
-                // ignore remove failures for bad listeners
-            }
+            vm.removeListener(this);
         }
     }
 
@@ -108,13 +103,17 @@ public class VmListenerWrapper implements VmListener {
     public Monitor getMonitor(String name) throws VmUpdateException {
         Monitor result;
         try {
-            result = vm.findByName(name);
+            result = vm.getMonitoredVm().findByName(name);
         } catch (MonitorException e) {
             throw new VmUpdateException("Error communicating with monitored VM", e);
         }
         return result;
     }
     
+    SharedMonitoredVm getSharedMonitoredVm() {
+        return vm;
+    }
+    
     /*
      * For testing purposes only.
      */
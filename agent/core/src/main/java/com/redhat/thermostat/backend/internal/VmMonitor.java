@@ -42,48 +42,41 @@ import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import sun.jvmstat.monitor.HostIdentifier;
 import sun.jvmstat.monitor.MonitorException;
-import sun.jvmstat.monitor.MonitoredHost;
-import sun.jvmstat.monitor.MonitoredVm;
-import sun.jvmstat.monitor.VmIdentifier;
 
 import com.redhat.thermostat.common.portability.ProcessChecker;
 import com.redhat.thermostat.backend.VmUpdateListener;
-import com.redhat.thermostat.common.Pair;
 import com.redhat.thermostat.common.utils.LoggingUtils;
 
+/**
+ * Keeps track of the {@link VmUpdateListener}s of one backend. The JVMs
+ * themselves are attached through the {@link VmAttachmentService} shared by
+ * all backends.
+ */
 public class VmMonitor {
     
     private final Logger logger = LoggingUtils.getLogger(VmMonitor.class);
 
     private final ProcessChecker processChecker;
-    private MonitoredHost host;
-    private Map<Integer, Pair<MonitoredVm, VmListenerWrapper>> pidToData = new HashMap<>();
+    private final VmAttachmentService attachService;
+    private Map<Integer, VmListenerWrapper> pidToData = new HashMap<>();
     
     public VmMonitor() throws BackendException {
-        this(new ProcessChecker());
+        this(new ProcessChecker(), VmAttachmentService.getInstance());
     }
 
-    public VmMonitor(ProcessChecker processChecker) throws BackendException {
+    public VmMonitor(ProcessChecker processChecker, VmAttachmentService attachService) {
         this.processChecker = processChecker;
-        try {
-            HostIdentifier hostId = new HostIdentifier((String) null);
-            host = MonitoredHost.getMonitoredHost(hostId);
-        } catch (MonitorException me) {
-            throw new BackendException("Problems with connecting jvmstat to local machine", me);
-        } catch (URISyntaxException use) {
-            throw new BackendException("Failed to create host identifier", use);
-        }
+        this.attachService = attachService;
     }
     
     public void handleNewVm(VmUpdateListener listener, int pid) {
         try {
-            MonitoredVm vm = host.getMonitoredVm(host.getHostIdentifier().resolve(new VmIdentifier(String.valueOf(pid))));
-            VmListenerWrapper wrapper = new VmListenerWrapper(listener, vm);
-            vm.addVmListener(wrapper);
-
-            pidToData.put(pid, new Pair<>(vm, wrapper));
+            VmListenerWrapper wrapper = attachService.attach(listener, pid);
+            VmListenerWrapper previous = pidToData.put(pid, wrapper);
+            if (previous != null) {
+                attachService.detach(previous);
+            }
             logger.finer("Attached " + listener.getClass().getName() + " for VM: " + pid);
         } catch (MonitorException e) {
             logMsg(pid, e);
@@ -102,31 +95,17 @@ public class VmMonitor {
     }
 
     public void handleStoppedVm(int pid) {
-        Pair<MonitoredVm, VmListenerWrapper> data = pidToData.remove(pid);
+        VmListenerWrapper wrapper = pidToData.remove(pid);
         // we were not monitoring pid at all, so nothing to do
-        if (data == null) {
+        if (wrapper == null) {
             return;
         }
-    
-        MonitoredVm vm = data.getFirst();
-        VmListenerWrapper listener = data.getSecond();
-        try {
-            vm.removeVmListener(listener);
-        } catch (MonitorException e) {
-            logger.log(Level.WARNING, "can't remove vm listener", e);
-        }
-        vm.detach();
+        attachService.detach(wrapper);
     }
 
     public void removeVmListeners() {
-        for (Pair<MonitoredVm, VmListenerWrapper> data : pidToData.values()) {
-            MonitoredVm vm = data.getFirst();
-            VmListenerWrapper listener = data.getSecond();
-            try {
-                vm.removeVmListener(listener);
-            } catch (MonitorException e) {
-                logger.log(Level.WARNING, "can't remove vm listener", e);
-            }
+        for (VmListenerWrapper wrapper : pidToData.values()) {
+            attachService.detach(wrapper);
         }
         pidToData.clear();
     }
@@ -134,14 +113,7 @@ public class VmMonitor {
     /*
      * For testing purposes only.
      */
-    void setHost(MonitoredHost host) {
-        this.host = host;
-    }
-    
-    /*
-     * For testing purposes only.
-     */
-    Map<Integer, Pair<MonitoredVm, VmListenerWrapper>> getPidToDataMap() {
+    Map<Integer, VmListenerWrapper> getPidToDataMap() {
         return pidToData;
     }
 
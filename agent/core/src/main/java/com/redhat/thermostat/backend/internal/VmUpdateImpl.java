@@ -36,13 +36,16 @@
 
 package com.redhat.thermostat.backend.internal;
 
+import sun.jvmstat.monitor.LongMonitor;
 import sun.jvmstat.monitor.Monitor;
 
+import com.redhat.thermostat.backend.LongCounterHandle;
+import com.redhat.thermostat.backend.LongCounterHandleResolver;
 import com.redhat.thermostat.backend.VmUpdate;
 import com.redhat.thermostat.backend.VmUpdateException;
 
 
-public class VmUpdateImpl implements VmUpdate {
+public class VmUpdateImpl implements VmUpdate, LongCounterHandleResolver {
     
     private VmListenerWrapper wrapper;
 
@@ -61,6 +64,15 @@ public class VmUpdateImpl implements VmUpdate {
         return (String) getPerformanceCounter(name);
     }
     
+    @Override
+    public LongCounterHandle getLongCounterHandle(String name) throws VmUpdateException {
+        Monitor monitor = wrapper.getMonitor(name);
+        if (monitor == null) {
+            return null;
+        }
+        return new LongMonitorHandle((LongMonitor) monitor);
+    }
+    
     private Object getPerformanceCounter(String name) throws VmUpdateException {
         Object result = null;
         Monitor monitor = wrapper.getMonitor(name);
@@ -77,5 +89,20 @@ public class VmUpdateImpl implements VmUpdate {
         return wrapper;
     }
 
+    private static class LongMonitorHandle implements LongCounterHandle {
+
+        private final LongMonitor monitor;
+
+        private LongMonitorHandle(LongMonitor monitor) {
+            this.monitor = monitor;
+        }
+
+        @Override
+        public long getValue() {
+            return monitor.longValue();
+        }
+
+    }
+
 }
 
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.backend;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.junit.Test;
+
+public class LongCounterHandlesTest {
+
+    private static final String COUNTER = "myCounter";
+
+    private interface ResolvingVmUpdate extends VmUpdate, LongCounterHandleResolver {
+    }
+
+    @Test
+    public void testResolveUsesResolver() throws VmUpdateException {
+        ResolvingVmUpdate update = mock(ResolvingVmUpdate.class);
+        LongCounterHandle handle = mock(LongCounterHandle.class);
+        when(update.getLongCounterHandle(COUNTER)).thenReturn(handle);
+
+        assertSame(handle, LongCounterHandles.resolve(update, COUNTER));
+    }
+
+    @Test
+    public void testResolveByNameNoCounter() throws VmUpdateException {
+        VmUpdate update = mock(VmUpdate.class);
+        when(update.getPerformanceCounterLong(COUNTER)).thenReturn(null);
+
+        assertNull(LongCounterHandles.resolve(update, COUNTER));
+    }
+
+    @Test
+    public void testResolveByName() throws VmUpdateException {
+        VmUpdate update = mock(VmUpdate.class);
+        when(update.getPerformanceCounterLong(COUNTER)).thenReturn(1L).thenReturn(2L).thenReturn(null);
+
+        LongCounterHandle handle = LongCounterHandles.resolve(update, COUNTER);
+        assertEquals(2L, handle.getValue());
+        // the counter can no longer be read
+        assertEquals(2L, handle.getValue());
+    }
+
+    @Test
+    public void testResolveByNameKeepsLastValueOnError() throws VmUpdateException {
+        VmUpdate update = mock(VmUpdate.class);
+        when(update.getPerformanceCounterLong(COUNTER)).thenReturn(1L).thenThrow(new VmUpdateException());
+
+        LongCounterHandle handle = LongCounterHandles.resolve(update, COUNTER);
+        assertEquals(1L, handle.getValue());
+    }
+
+}
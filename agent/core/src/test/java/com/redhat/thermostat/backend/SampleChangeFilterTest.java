@@ -0,0 +1,144 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+
+package com.redhat.thermostat.backend;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.redhat.thermostat.storage.core.Category;
+import com.redhat.thermostat.storage.model.Pojo;
+
+public class SampleChangeFilterTest {
+
+    private static final String CATEGORY_NAME = "sample-change-filter-test";
+    private static final String PROPERTY = SampleChangeFilter.HEARTBEAT_PROPERTY_PREFIX + CATEGORY_NAME;
+    // Make this one static so we don't get IllegalStateException from trying
+    // to make category of same name while running tests in same classloader.
+    private static final Category<Pojo> cat = new Category<>(CATEGORY_NAME, Pojo.class);
+
+    @After
+    public void tearDown() {
+        System.clearProperty(PROPERTY);
+    }
+
+    @Test
+    public void testDisabledWritesEverySample() {
+        SampleChangeFilter<String> filter = new SampleChangeFilter<>(0);
+        assertFalse(filter.isEnabled());
+        assertTrue(shouldWrite(filter, "a", 1000, 1));
+        assertTrue(shouldWrite(filter, "a", 2000, 1));
+    }
+
+    @Test
+    public void testUnchangedSampleIsSuppressedUntilHeartbeat() {
+        SampleChangeFilter<String> filter = new SampleChangeFilter<>(10000);
+        assertTrue(filter.isEnabled());
+        assertTrue(shouldWrite(filter, "a", 1000, 1, 2));
+        assertFalse(shouldWrite(filter, "a", 2000, 1, 2));
+        assertFalse(shouldWrite(filter, "a", 10999, 1, 2));
+        assertTrue(shouldWrite(filter, "a", 11000, 1, 2));
+        assertFalse(shouldWrite(filter, "a", 12000, 1, 2));
+    }
+
+    @Test
+    public void testChangedSampleIsWritten() {
+        SampleChangeFilter<String> filter = new SampleChangeFilter<>(10000);
+        assertTrue(shouldWrite(filter, "a", 1000, 1, 2));
+        assertTrue(shouldWrite(filter, "a", 2000, 1, 3));
+        assertFalse(shouldWrite(filter, "a", 3000, 1, 3));
+    }
+
+    @Test
+    public void testChangedNumberOfValuesIsWritten() {
+        SampleChangeFilter<String> filter = new SampleChangeFilter<>(10000);
+        assertTrue(shouldWrite(filter, "a", 1000, 1, 2));
+        assertTrue(shouldWrite(filter, "a", 2000, 1, 2, 0));
+        assertTrue(shouldWrite(filter, "a", 3000, 1, 2));
+        assertFalse(shouldWrite(filter, "a", 4000, 1, 2));
+    }
+
+    @Test
+    public void testManyValues() {
+        SampleChangeFilter<String> filter = new SampleChangeFilter<>(10000);
+        long[] values = new long[100];
+        assertTrue(shouldWrite(filter, "a", 1000, values));
+        assertFalse(shouldWrite(filter, "a", 2000, values));
+        values[99] = 1;
+        assertTrue(shouldWrite(filter, "a", 3000, values));
+    }
+
+    @Test
+    public void testUncheckedSampleIsNotRemembered() {
+        SampleChangeFilter<String> filter = new SampleChangeFilter<>(10000);
+        filter.sample("a", 1000).add(1);
+        assertTrue(shouldWrite(filter, "a", 2000, 1));
+    }
+
+    @Test
+    public void testSeriesAreIndependent() {
+        SampleChangeFilter<String> filter = new SampleChangeFilter<>(10000);
+        assertTrue(shouldWrite(filter, "a", 1000, 1));
+        assertTrue(shouldWrite(filter, "b", 1000, 1));
+        assertFalse(shouldWrite(filter, "a", 2000, 1));
+        assertFalse(shouldWrite(filter, "b", 2000, 1));
+    }
+
+    @Test
+    public void testForCategory() {
+        assertFalse(SampleChangeFilter.forCategory(cat).isEnabled());
+
+        System.setProperty(PROPERTY, "30");
+        assertTrue(SampleChangeFilter.forCategory(cat).isEnabled());
+
+        System.setProperty(PROPERTY, "-1");
+        assertFalse(SampleChangeFilter.forCategory(cat).isEnabled());
+    }
+
+    private static boolean shouldWrite(SampleChangeFilter<String> filter, String key, long timeStamp, long... values) {
+        SampleChangeFilter<String>.Sample sample = filter.sample(key, timeStamp);
+        for (long value : values) {
+            sample.add(value);
+        }
+        return sample.shouldWrite();
+    }
+
+}
+
@@ -36,8 +36,11 @@
 
 package com.redhat.thermostat.backend;
 
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ScheduledExecutorService;
 
 import org.junit.Before;
@@ -171,6 +174,30 @@ public class VmPollingBackendTest {
         verify(action).run(eq(vmId2), eq(pid2));
     }
 
+    @Test
+    public void verifyPreScheduledActionsSeesAllMonitoredPids() {
+        final Set<Integer> seenPids = new HashSet<>();
+        Version mockVersion = mock(Version.class);
+        backend = new VmPollingBackend("backend-name", "backend-description",
+                "backend-vendor", mockVersion, mockExecutor, mockRegistrar) {
+            @Override
+            public int getOrderValue() {
+                return 0;
+            }
+
+            @Override
+            protected void preScheduledActions(Set<Integer> pids) {
+                seenPids.addAll(pids);
+            }
+        };
+        backend.setObserveNewJvm(true);
+        backend.vmStatusChanged(Status.VM_ACTIVE, "test-vm-id1", 123);
+        backend.vmStatusChanged(Status.VM_ACTIVE, "test-vm-id2", 456);
+        backend.doScheduledActions();
+
+        assertEquals(new HashSet<>(Arrays.asList(123, 456)), seenPids);
+    }
+
     @Test
     public void verifyMultipleRegisteredActionsPerformedOnMultipleVms() {
         String vmId1 = "test-vm-id1", vmId2 = "test-vm-id2";
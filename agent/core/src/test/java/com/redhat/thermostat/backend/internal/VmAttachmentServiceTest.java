@@ -0,0 +1,242 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+
+package com.redhat.thermostat.backend.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.isA;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import sun.jvmstat.monitor.HostIdentifier;
+import sun.jvmstat.monitor.MonitorException;
+import sun.jvmstat.monitor.MonitoredHost;
+import sun.jvmstat.monitor.MonitoredVm;
+import sun.jvmstat.monitor.VmIdentifier;
+import sun.jvmstat.monitor.event.VmEvent;
+import sun.jvmstat.monitor.event.VmListener;
+
+import com.redhat.thermostat.backend.VmUpdate;
+import com.redhat.thermostat.backend.VmUpdateListener;
+
+public class VmAttachmentServiceTest {
+
+    private static final int VM_PID = 1;
+
+    private MonitoredHost host;
+    private MonitoredVm monitoredVm;
+
+    @Before
+    public void setUp() throws Exception {
+        HostIdentifier hostIdentifier = mock(HostIdentifier.class);
+        when(hostIdentifier.resolve(isA(VmIdentifier.class))).then(new Answer<VmIdentifier>() {
+            @Override
+            public VmIdentifier answer(InvocationOnMock invocation) throws Throwable {
+                return (VmIdentifier) invocation.getArguments()[0];
+            }
+        });
+        host = mock(MonitoredHost.class);
+        when(host.getHostIdentifier()).thenReturn(hostIdentifier);
+        when(host.getInterval()).thenReturn(1000);
+
+        monitoredVm = mock(MonitoredVm.class);
+        when(host.getMonitoredVm(new VmIdentifier(String.valueOf(VM_PID)))).thenReturn(monitoredVm);
+    }
+
+    @Test
+    public void testAttachesOncePerPid() throws Exception {
+        VmAttachmentService service = new VmAttachmentService(host, 0);
+        VmListenerWrapper wrapper1 = service.attach(mock(VmUpdateListener.class), VM_PID);
+        VmListenerWrapper wrapper2 = service.attach(mock(VmUpdateListener.class), VM_PID);
+
+        verify(host, times(1)).getMonitoredVm(isA(VmIdentifier.class));
+        verify(monitoredVm, times(1)).addVmListener(isA(SharedMonitoredVm.class));
+        SharedMonitoredVm sharedVm = service.getPidToVmMap().get(VM_PID);
+        assertSame(sharedVm, wrapper1.getSharedMonitoredVm());
+        assertSame(sharedVm, wrapper2.getSharedMonitoredVm());
+        assertEquals(2, sharedVm.getListeners().size());
+    }
+
+    @Test
+    public void testCountersUpdatedReachesAllListeners() throws Exception {
+        VmAttachmentService service = new VmAttachmentService(host, 0);
+        VmUpdateListener listener1 = mock(VmUpdateListener.class);
+        VmUpdateListener listener2 = mock(VmUpdateListener.class);
+        service.attach(listener1, VM_PID);
+        service.attach(listener2, VM_PID);
+
+        VmEvent event = mock(VmEvent.class);
+        when(event.getMonitoredVm()).thenReturn(monitoredVm);
+        service.getPidToVmMap().get(VM_PID).monitorsUpdated(event);
+
+        verify(listener1).countersUpdated(isA(VmUpdate.class));
+        verify(listener2).countersUpdated(isA(VmUpdate.class));
+    }
+
+    @Test
+    public void testDetachesWithLastListener() throws Exception {
+        VmAttachmentService service = new VmAttachmentService(host, 0);
+        VmListenerWrapper wrapper1 = service.attach(mock(VmUpdateListener.class), VM_PID);
+        VmListenerWrapper wrapper2 = service.attach(mock(VmUpdateListener.class), VM_PID);
+        SharedMonitoredVm sharedVm = service.getPidToVmMap().get(VM_PID);
+
+        service.detach(wrapper1);
+        verify(monitoredVm, never()).removeVmListener(isA(VmListener.class));
+        verify(monitoredVm, never()).detach();
+        assertEquals(1, sharedVm.getListeners().size());
+
+        service.detach(wrapper2);
+        verify(monitoredVm).removeVmListener(sharedVm);
+        verify(monitoredVm).detach();
+        assertFalse(service.getPidToVmMap().containsKey(VM_PID));
+    }
+
+    @Test
+    public void testDetachesRemovedBadListener() throws Exception {
+        VmAttachmentService service = new VmAttachmentService(host, 0);
+        VmListenerWrapper wrapper = service.attach(mock(VmUpdateListener.class), VM_PID);
+        wrapper.getSharedMonitoredVm().removeListener(wrapper);
+
+        service.detach(wrapper);
+        verify(monitoredVm).detach();
+        assertFalse(service.getPidToVmMap().containsKey(VM_PID));
+    }
+
+    @Test
+    public void testAttachFailureDetachesVm() throws Exception {
+        VmAttachmentService service = new VmAttachmentService(host, 0);
+        MonitorException exception = new MonitorException();
+        doThrow(exception).when(monitoredVm).addVmListener(isA(VmListener.class));
+
+        try {
+            service.attach(mock(VmUpdateListener.class), VM_PID);
+            fail("expected MonitorException");
+        } catch (MonitorException e) {
+            assertSame(exception, e);
+        }
+        verify(monitoredVm).detach();
+        assertTrue(service.getPidToVmMap().isEmpty());
+    }
+
+    @Test
+    public void testJvmstatDefaultIntervalIsKeptIfUnset() throws Exception {
+        VmAttachmentService service = new VmAttachmentService(host, 0);
+        service.attach(mock(VmUpdateListener.class), VM_PID);
+
+        verify(monitoredVm, never()).setInterval(anyInt());
+        assertEquals(0, service.getSamplingInterval(VM_PID));
+    }
+
+    @Test
+    public void testDefaultIntervalIsApplied() throws Exception {
+        VmAttachmentService service = new VmAttachmentService(host, 500);
+        service.attach(mock(VmUpdateListener.class), VM_PID);
+
+        verify(monitoredVm).setInterval(500);
+        assertEquals(500, service.getSamplingInterval(VM_PID));
+    }
+
+    @Test
+    public void testSetSamplingIntervalBeforeAttach() throws Exception {
+        VmAttachmentService service = new VmAttachmentService(host, 500);
+        service.setSamplingInterval(VM_PID, 250);
+        service.attach(mock(VmUpdateListener.class), VM_PID);
+
+        verify(monitoredVm).setInterval(250);
+        assertEquals(500, service.getSamplingInterval(VM_PID + 1));
+    }
+
+    @Test
+    public void testSetSamplingIntervalOfAttachedVm() throws Exception {
+        VmAttachmentService service = new VmAttachmentService(host, 0);
+        service.attach(mock(VmUpdateListener.class), VM_PID);
+
+        service.setSamplingInterval(VM_PID, 250);
+        verify(monitoredVm).setInterval(250);
+        assertEquals(250, service.getSamplingInterval(VM_PID));
+
+        // revert to the jvmstat default
+        service.setSamplingInterval(VM_PID, 0);
+        verify(monitoredVm).setInterval(1000);
+        assertEquals(0, service.getSamplingInterval(VM_PID));
+    }
+
+    @Test
+    public void testSamplingIntervalIsForgottenOnDetach() throws Exception {
+        VmAttachmentService service = new VmAttachmentService(host, 0);
+        VmListenerWrapper wrapper = service.attach(mock(VmUpdateListener.class), VM_PID);
+        service.setSamplingInterval(VM_PID, 250);
+
+        service.detach(wrapper);
+        assertEquals(0, service.getSamplingInterval(VM_PID));
+    }
+
+    @Test
+    public void testDetachAllDetachesAttachedVms() throws Exception {
+        VmAttachmentService service = new VmAttachmentService(host, 0);
+        VmListenerWrapper wrapper = service.attach(mock(VmUpdateListener.class), VM_PID);
+        service.attach(mock(VmUpdateListener.class), VM_PID);
+        service.setSamplingInterval(VM_PID, 250);
+        SharedMonitoredVm sharedVm = service.getPidToVmMap().get(VM_PID);
+
+        service.detachAll();
+        verify(monitoredVm).removeVmListener(sharedVm);
+        verify(monitoredVm).detach();
+        assertTrue(service.getPidToVmMap().isEmpty());
+        assertEquals(0, service.getSamplingInterval(VM_PID));
+
+        // listeners detaching later must not detach the vm again
+        service.detach(wrapper);
+        verify(monitoredVm, times(1)).detach();
+    }
+
+}
+
@@ -37,9 +37,9 @@
 package com.redhat.thermostat.backend.internal;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -61,18 +61,20 @@ public class VmListenerWrapperTest {
 
     private VmListenerWrapper wrapper;
     private MonitoredVm monitoredVm;
+    private SharedMonitoredVm sharedVm;
     private VmUpdateListener listener;
 
     @Before
     public void setUp() throws Exception {
         listener = mock(VmUpdateListener.class);
         monitoredVm = mock(MonitoredVm.class);
-        wrapper = new VmListenerWrapper(listener, monitoredVm);
+        sharedVm = new SharedMonitoredVm(1, monitoredVm);
+        wrapper = new VmListenerWrapper(listener, sharedVm);
     }
     
     /**
      * Verify that a bad listener which throws exceptions gets removed
-     * from the JVM beyond a threshold.
+     * from the shared JVM attachment beyond a threshold.
      * @throws MonitorException 
      */
     @Bug(id = "3242",
@@ -87,15 +89,16 @@ public class VmListenerWrapperTest {
                 throw new RuntimeException("countersUpdated() testing!");
             }
         };
-        VmListenerWrapper vmListenerWrapper = new VmListenerWrapper(badListener, monitoredVm);
+        VmListenerWrapper vmListenerWrapper = new VmListenerWrapper(badListener, sharedVm);
+        sharedVm.addListener(vmListenerWrapper);
         VmEvent event = mock(VmEvent.class);
         for (int i = 0; i < beyondThresholdLimit; i++) {
             when(event.getMonitoredVm()).thenReturn(monitoredVm);
             
-            vmListenerWrapper.monitorsUpdated(event);
+            sharedVm.monitorsUpdated(event);
             
         }
-        verify(monitoredVm, times(1)).removeVmListener(vmListenerWrapper);
+        assertFalse(sharedVm.getListeners().contains(vmListenerWrapper));
     }
 
     @Test
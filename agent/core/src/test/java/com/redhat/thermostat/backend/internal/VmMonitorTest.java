@@ -109,8 +109,7 @@ public class VmMonitorTest {
 
         monitoredVm = mock(MonitoredVm.class);
 
-        monitor = new VmMonitor(checker);
-        monitor.setHost(host);
+        monitor = new VmMonitor(checker, new VmAttachmentService(host, 0));
     }
     
     private Level setupTestLoggerAndReturnOriginalLevel() {
@@ -131,15 +130,16 @@ public class VmMonitorTest {
         VmUpdateListener listener = mock(VmUpdateListener.class);
         monitor.handleNewVm(listener, VM_PID);
         
-        // Check listener registered
-        ArgumentCaptor<VmListenerWrapper> captor = ArgumentCaptor.forClass(VmListenerWrapper.class);
-        verify(monitoredVm).addVmListener(captor.capture());
-        VmListenerWrapper wrapper = captor.getValue();
-        assertEquals(listener, wrapper.getVmUpdateListener());
-        
         // Check pid map
         assertTrue(monitor.getPidToDataMap().containsKey(VM_PID));
-        assertEquals(wrapper, monitor.getPidToDataMap().get(VM_PID).getSecond());
+        VmListenerWrapper wrapper = monitor.getPidToDataMap().get(VM_PID);
+        assertEquals(listener, wrapper.getVmUpdateListener());
+        
+        // Check listener registered
+        ArgumentCaptor<SharedMonitoredVm> captor = ArgumentCaptor.forClass(SharedMonitoredVm.class);
+        verify(monitoredVm).addVmListener(captor.capture());
+        SharedMonitoredVm sharedVm = captor.getValue();
+        assertTrue(sharedVm.getListeners().contains(wrapper));
     }
     
     /*
@@ -213,11 +213,12 @@ public class VmMonitorTest {
         monitor.handleNewVm(listener, VM_PID);
         monitor.handleStoppedVm(VM_PID);
 
-        // Check listener unregistered
-        ArgumentCaptor<VmListenerWrapper> captor = ArgumentCaptor.forClass(VmListenerWrapper.class);
+        // Check listener unregistered and VM detached
+        ArgumentCaptor<SharedMonitoredVm> captor = ArgumentCaptor.forClass(SharedMonitoredVm.class);
         verify(monitoredVm).removeVmListener(captor.capture());
-        VmListenerWrapper wrapper = captor.getValue();
-        assertEquals(listener, wrapper.getVmUpdateListener());
+        SharedMonitoredVm sharedVm = captor.getValue();
+        assertTrue(sharedVm.getListeners().isEmpty());
+        verify(monitoredVm).detach();
         
         assertFalse(monitor.getPidToDataMap().containsKey(VM_PID));
     }
@@ -268,15 +269,15 @@ public class VmMonitorTest {
         
         monitor.removeVmListeners();
         
-        ArgumentCaptor<VmListenerWrapper> captor1 = ArgumentCaptor.forClass(VmListenerWrapper.class);
+        ArgumentCaptor<SharedMonitoredVm> captor1 = ArgumentCaptor.forClass(SharedMonitoredVm.class);
         verify(monitoredVm).removeVmListener(captor1.capture());
-        VmListenerWrapper wrapper1 = captor1.getValue();
-        assertEquals(listener1, wrapper1.getVmUpdateListener());
+        assertEquals(VM_PID1, captor1.getValue().getPid());
+        verify(monitoredVm).detach();
         
-        ArgumentCaptor<VmListenerWrapper> captor2 = ArgumentCaptor.forClass(VmListenerWrapper.class);
+        ArgumentCaptor<SharedMonitoredVm> captor2 = ArgumentCaptor.forClass(SharedMonitoredVm.class);
         verify(monitoredVm2).removeVmListener(captor2.capture());
-        VmListenerWrapper wrapper2 = captor2.getValue();
-        assertEquals(listener2, wrapper2.getVmUpdateListener());
+        assertEquals(VM_PID2, captor2.getValue().getPid());
+        verify(monitoredVm2).detach();
         
         assertEquals(0, monitor.getPidToDataMap().size());
     }
@@ -42,8 +42,10 @@ import static org.mockito.Mockito.*;
 import org.junit.Before;
 import org.junit.Test;
 
+import sun.jvmstat.monitor.LongMonitor;
 import sun.jvmstat.monitor.Monitor;
 
+import com.redhat.thermostat.backend.LongCounterHandle;
 import com.redhat.thermostat.backend.VmUpdateException;
 
 public class VmUpdateImplTest {
@@ -121,5 +123,34 @@ public class VmUpdateImplTest {
         assertNull(result);
     }
 
-}
+    @Test
+    public void testGetLongCounterHandle() throws VmUpdateException {
+        final String counter = "myCounter";
+        LongMonitor monitor = mock(LongMonitor.class);
+        when(monitor.longValue()).thenReturn(9001L).thenReturn(9002L);
+        when(wrapper.getMonitor(counter)).thenReturn(monitor);
+        
+        LongCounterHandle handle = update.getLongCounterHandle(counter);
+        assertEquals(9001L, handle.getValue());
+        assertEquals(9002L, handle.getValue());
+        verify(wrapper, times(1)).getMonitor(counter);
+    }
+    
+    @Test(expected=ClassCastException.class)
+    public void testGetLongCounterHandleBadType() throws VmUpdateException {
+        final String counter = "myCounter";
+        Monitor monitor = mock(Monitor.class);
+        when(wrapper.getMonitor(counter)).thenReturn(monitor);
+        
+        update.getLongCounterHandle(counter);
+    }
+    
+    @Test
+    public void testGetLongCounterHandleNoCounter() throws VmUpdateException {
+        final String counter = "myCounter";
+        when(wrapper.getMonitor(counter)).thenReturn(null);
+        
+        assertNull(update.getLongCounterHandle(counter));
+    }
 
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+
+package com.redhat.thermostat.client.command.internal;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.redhat.thermostat.common.command.Request;
+import com.redhat.thermostat.common.command.RequestResponseListener;
+import com.redhat.thermostat.common.command.Response;
+import com.redhat.thermostat.common.command.Response.ResponseType;
+import com.redhat.thermostat.common.utils.LoggingUtils;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.util.concurrent.DefaultPromise;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.GenericFutureListener;
+import io.netty.util.concurrent.Promise;
+
+/**
+ * A long-lived command channel connection to one agent. Requests carry a
+ * {@link Request#REQUEST_ID} which the agent echoes in its response, so
+ * several requests can be in flight on the connection at the same time.
+ * <p>
+ * Requests sent before the connection is established (and, if enabled,
+ * the SSL handshake is done) are written once it is ready. If the
+ * connection fails or closes, all requests in flight get an
+ * {@link ResponseType#ERROR} response.
+ *
+ * @see ConnectionPool
+ */
+class AgentConnection {
+
+    private static final Logger logger = LoggingUtils.getLogger(AgentConnection.class);
+
+    private final InetSocketAddress target;
+    private final ConnectionPool pool;
+    private final ConfigurationRequestContext ctx;
+    private final Promise<Channel> ready;
+    private final ConcurrentMap<String, Request> inFlight = new ConcurrentHashMap<>();
+    private volatile Channel channel;
+    private volatile boolean closed;
+
+    AgentConnection(InetSocketAddress target, ConnectionPool pool, ConfigurationRequestContext ctx, EventExecutor executor) {
+        this.target = target;
+        this.pool = pool;
+        this.ctx = ctx;
+        this.ready = new DefaultPromise<>(executor);
+    }
+
+    InetSocketAddress getTarget() {
+        return target;
+    }
+
+    void connect() {
+        ChannelFuture connectFuture = ctx.getBootstrap().connect(target);
+        connectFuture.addListener(new ChannelFutureListener() {
+
+            @Override
+            public void operationComplete(ChannelFuture future) throws Exception {
+                if (!future.isSuccess()) {
+                    logger.log(Level.WARNING, "Failed to connect to " + target, future.cause());
+                    fail(future.cause());
+                    return;
+                }
+                channelConnected(future.channel());
+            }
+        });
+    }
+
+    private void channelConnected(Channel connected) {
+        channel = connected;
+        if (closed) {
+            // closed while connecting
+            connected.close();
+            return;
+        }
+        ChannelPipeline pipeline = connected.pipeline();
+        pipeline.addLast("responseHandler", new ResponseHandler(this));
+        if (ctx.getSSLConfiguration().enableForCmdChannel()) {
+            doSSLHandShake(pipeline);
+        } else {
+            ready.trySuccess(connected);
+        }
+    }
+
+    private void doSSLHandShake(ChannelPipeline pipeline) {
+        // Get the SslHandler from the pipeline
+        // which was added in ConfigurationRequestContext$ClientPipelineInitializer
+        SslHandler sslHandler = pipeline.get(SslHandler.class);
+
+        logger.log(Level.FINE, "Starting SSL handshake");
+        Future<Channel> handshakeDoneFuture = sslHandler.handshakeFuture();
+
+        // Requests are only written once the handshake and the (optional)
+        // host name verification succeeded.
+        boolean performHostnameCheck = !ctx.getSSLConfiguration().disableHostnameVerification();
+        handshakeDoneFuture.addListener(new SSLHandshakeFinishedListener(this, performHostnameCheck, sslHandler));
+    }
+
+    /**
+     * Registers the request as in flight on this connection. Called with
+     * the pool's lock held, so the connection is not closed as idle before
+     * the request is written.
+     */
+    void register(Request request) {
+        inFlight.put(request.getParameter(Request.REQUEST_ID), request);
+    }
+
+    /**
+     * Writes a previously registered request once the connection is ready.
+     */
+    void write(final Request request) {
+        final String requestId = request.getParameter(Request.REQUEST_ID);
+        if (closed) {
+            complete(requestId, new Response(ResponseType.ERROR));
+            return;
+        }
+        ready.addListener(new GenericFutureListener<Future<Channel>>() {
+
+            @Override
+            public void operationComplete(Future<Channel> future) throws Exception {
+                if (!future.isSuccess()) {
+                    complete(requestId, new Response(ResponseType.ERROR));
+                    return;
+                }
+                future.getNow().writeAndFlush(request).addListener(new ChannelFutureListener() {
+
+                    @Override
+                    public void operationComplete(ChannelFuture writeFuture) throws Exception {
+                        if (!writeFuture.isSuccess()) {
+                            logger.log(Level.WARNING, "Failed to send request to " + target, writeFuture.cause());
+                            complete(requestId, new Response(ResponseType.ERROR));
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    /**
+     * Called once the SSL handshake and host name verification succeeded.
+     */
+    void ready() {
+        ready.trySuccess(channel);
+    }
+
+    /**
+     * Called if the connection could not be established. Fails all requests
+     * in flight.
+     */
+    void fail(Throwable cause) {
+        ready.tryFailure(cause);
+        if (channel != null) {
+            channel.close();
+        }
+        closed();
+    }
+
+    void responseReceived(Response response) {
+        String requestId = response.getRequestId();
+        if (requestId == null) {
+            // Agents not supporting request ids answer a single request and
+            // close the connection.
+            if (inFlight.size() == 1) {
+                requestId = inFlight.keySet().iterator().next();
+            } else {
+                logger.warning("Received response without request id from " + target);
+                return;
+            }
+        }
+        complete(requestId, response);
+    }
+
+    /**
+     * Called once the channel is closed. Fails all requests in flight.
+     */
+    void closed() {
+        closed = true;
+        pool.remove(this);
+        for (String requestId : inFlight.keySet()) {
+            complete(requestId, new Response(ResponseType.ERROR));
+        }
+    }
+
+    void close() {
+        closed = true;
+        if (channel != null) {
+            channel.close();
+        } else {
+            ready.tryFailure(new IllegalStateException("Connection closed"));
+        }
+    }
+
+    void closeIfIdle() {
+        pool.closeIfIdle(this);
+    }
+
+    private void complete(String requestId, Response response) {
+        Request request = inFlight.remove(requestId);
+        if (request == null) {
+            return;
+        }
+        for (RequestResponseListener listener : request.getListeners()) {
+            listener.fireComplete(request, response);
+        }
+    }
+
+}
+
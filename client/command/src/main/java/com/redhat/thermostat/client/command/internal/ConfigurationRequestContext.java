@@ -57,6 +57,7 @@ import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.timeout.IdleStateHandler;
 
 public class ConfigurationRequestContext implements ConfigurationCommandContext {
     
@@ -99,6 +100,10 @@ public class ConfigurationRequestContext implements ConfigurationCommandContext
 
     static class ClientPipelineInitializer extends ChannelInitializer<SocketChannel> {
 
+        // Connections are kept open for further requests. Close them once
+        // they have not been used for this long.
+        static final int IDLE_CONNECTION_TIMEOUT_SECONDS = 60;
+
         private final SSLConfiguration sslConf;
         
         ClientPipelineInitializer(SSLConfiguration sslConf) {
@@ -121,6 +126,7 @@ public class ConfigurationRequestContext implements ConfigurationCommandContext
             }
             pipeline.addLast("decoder", new ResponseDecoder());
             pipeline.addLast("encoder", new RequestEncoder());
+            pipeline.addLast("idle", new IdleStateHandler(0, 0, IDLE_CONNECTION_TIMEOUT_SECONDS));
         }
         
     }
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+
+package com.redhat.thermostat.client.command.internal;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.redhat.thermostat.common.command.Request;
+
+/**
+ * Keeps command channel connections to agents open so that requests do not
+ * pay for connection setup and SSL handshakes each time. Requests to the
+ * same agent share a connection; another one (up to
+ * {@link #MAX_CONNECTIONS_PER_TARGET}) is only opened while all existing
+ * ones have requests in flight.
+ */
+class ConnectionPool {
+
+    static final int MAX_CONNECTIONS_PER_TARGET = 2;
+
+    private final ConfigurationRequestContext ctx;
+    private final Map<InetSocketAddress, List<AgentConnection>> connections = new HashMap<>();
+    private final AtomicLong requestIds = new AtomicLong();
+
+    ConnectionPool(ConfigurationRequestContext ctx) {
+        this.ctx = ctx;
+    }
+
+    /**
+     * Sends the request to its target. Does not block; the request's
+     * listeners are notified once the response arrives or the request
+     * failed.
+     */
+    void send(Request request) {
+        request.setParameter(Request.REQUEST_ID, Long.toString(requestIds.incrementAndGet()));
+        AgentConnection connection;
+        synchronized (this) {
+            connection = getConnection(request.getTarget());
+            connection.register(request);
+        }
+        connection.write(request);
+    }
+
+    private AgentConnection getConnection(InetSocketAddress target) {
+        List<AgentConnection> targetConnections = connections.get(target);
+        if (targetConnections == null) {
+            targetConnections = new ArrayList<>(MAX_CONNECTIONS_PER_TARGET);
+            connections.put(target, targetConnections);
+        }
+        AgentConnection leastBusy = null;
+        for (AgentConnection connection : targetConnections) {
+            if (leastBusy == null || connection.getInFlightCount() < leastBusy.getInFlightCount()) {
+                leastBusy = connection;
+            }
+        }
+        if (leastBusy != null && (leastBusy.getInFlightCount() == 0
+                || targetConnections.size() == MAX_CONNECTIONS_PER_TARGET)) {
+            return leastBusy;
+        }
+        AgentConnection connection = createConnection(target);
+        targetConnections.add(connection);
+        connection.connect();
+        return connection;
+    }
+
+    // Testing hook
+    AgentConnection createConnection(InetSocketAddress target) {
+        return new AgentConnection(target, this, ctx, ctx.getBootstrap().group().next());
+    }
+
+    synchronized void remove(AgentConnection connection) {
+        List<AgentConnection> targetConnections = connections.get(connection.getTarget());
+        if (targetConnections == null) {
+            return;
+        }
+        targetConnections.remove(connection);
+        if (targetConnections.isEmpty()) {
+            connections.remove(connection.getTarget());
+        }
+    }
+
+    synchronized void closeIfIdle(AgentConnection connection) {
+        if (connection.getInFlightCount() == 0) {
+            remove(connection);
+            connection.close();
+        }
+    }
+
+    /**
+     * Closes all connections. Requests in flight get an error response.
+     */
+    void close() {
+        List<AgentConnection> toClose = new ArrayList<>();
+        synchronized (this) {
+            for (List<AgentConnection> targetConnections : connections.values()) {
+                toClose.addAll(targetConnections);
+            }
+            connections.clear();
+        }
+        for (AgentConnection connection : toClose) {
+            connection.close();
+        }
+    }
+
+}
+
@@ -57,23 +57,21 @@ import com.redhat.thermostat.storage.core.SecureStorage;
 import com.redhat.thermostat.storage.core.Storage;
 import com.redhat.thermostat.storage.core.StorageException;
 
-import io.netty.channel.Channel;
-import io.netty.channel.ChannelFuture;
-import io.netty.channel.ChannelPipeline;
-import io.netty.handler.ssl.SslHandler;
-import io.netty.util.concurrent.Future;
-
 class RequestQueueImpl implements RequestQueue {
 
     private static final Logger logger = LoggingUtils.getLogger(RequestQueueImpl.class);
     private final BlockingQueue<Request> queue;
-    private final ConfigurationRequestContext ctx;
+    private final ConnectionPool connectionPool;
     private volatile boolean processing;
     private Thread runningThread;
 
     RequestQueueImpl(ConfigurationRequestContext ctx) {
+        this(new ConnectionPool(ctx));
+    }
+
+    RequestQueueImpl(ConnectionPool connectionPool) {
         processing = false;
-        this.ctx = ctx;
+        this.connectionPool = connectionPool;
         queue = new ArrayBlockingQueue<Request>(16, true);
     }
 
@@ -136,6 +134,7 @@ class RequestQueueImpl implements RequestQueue {
             processing = false;
             runningThread.interrupt();
             runningThread = null;
+            connectionPool.close();
         }
     }
 
@@ -162,19 +161,9 @@ class RequestQueueImpl implements RequestQueue {
                     break;
                 }
                 try {
-                    ChannelFuture f = ctx.getBootstrap().connect(request.getTarget()).syncUninterruptibly();
-                    if (f.isSuccess()) {
-                        Channel c = f.channel();
-                        ChannelPipeline pipeline = c.pipeline();
-                        if (ctx.getSSLConfiguration().enableForCmdChannel()) {
-                            doSSLHandShake(pipeline, request);
-                        }
-                        pipeline.addLast("responseHandler", new ResponseHandler(request));
-                        pipeline.writeAndFlush(request);
-                    } else {
-                        Response response = new Response(ResponseType.ERROR);
-                        fireComplete(request, response);
-                    }
+                    // Does not wait for the connection or the response, so
+                    // requests to different agents are processed concurrently.
+                    connectionPool.send(request);
                     // If an exception is thrown it needs to be caught otherwise no
                     // response is ever sent back to the request receiver.
                 } catch (Exception e) {
@@ -194,21 +183,6 @@ class RequestQueueImpl implements RequestQueue {
         }
     }
 
-    private void doSSLHandShake(ChannelPipeline pipeline, Request request) {
-        // Get the SslHandler from the pipeline
-        // which was added in ConfigurationRequestContext$ClientPipelineFactory
-        SslHandler sslHandler = pipeline.get(SslHandler.class);
-        
-        logger.log(Level.FINE, "Starting SSL handshake");
-        // Begin handshake.
-        Future<Channel> handshakeDoneFuture = sslHandler.handshakeFuture();
-        
-        // Register a future listener, since it gives us a way to
-        // report an error on client side and to perform (optional) host name verification.
-        boolean performHostnameCheck = !ctx.getSSLConfiguration().disableHostnameVerification();
-        handshakeDoneFuture.addListener(new SSLHandshakeFinishedListener(request, performHostnameCheck, sslHandler, this));
-    }
-    
     /*
      * For testing purposes only.
      */
@@ -216,4 +190,3 @@ class RequestQueueImpl implements RequestQueue {
         return queue;
     }
 }
-
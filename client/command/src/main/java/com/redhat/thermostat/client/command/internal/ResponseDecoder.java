@@ -58,23 +58,49 @@ class ResponseDecoder extends ByteToMessageDecoder {
     private static final Logger logger = LoggingUtils.getLogger(ResponseDecoder.class);
 
     /*
-     * See javadoc of Response for a description of the encoding.
+     * See javadoc of Response for a description of the encoding. Requests
+     * are always sent with a request id, so the response is expected to be
+     * followed by it.
      */
     @Override
     protected void decode(ChannelHandlerContext ctx, ByteBuf buf, List<Object> out) throws Exception {
+       decode(buf, out, true);
+    }
+
+    /*
+     * Agents not supporting request ids send the response type only and
+     * close the connection.
+     */
+    @Override
+    protected void decodeLast(ChannelHandlerContext ctx, ByteBuf buf, List<Object> out) throws Exception {
+       decode(buf, out, false);
+    }
+
+    private void decode(ByteBuf buf, List<Object> out, boolean requireRequestId) throws InvalidMessageException {
        logger.fine("decoding response");
        StringDecodingContext stringDecCtx = DecodingHelper.decodeString(buf);
        if (stringDecCtx.getState() != StringDecodingState.VALUE_READ) {
            // insufficient data
            return;
        }
-       buf.readerIndex(buf.readerIndex() + stringDecCtx.getBytesRead());
-       buf.discardReadBytes(); // clean up resources
        String typeAsString = stringDecCtx.getValue();
        if (typeAsString == null) {
            throw new InvalidMessageException("Could not decode message: " + ByteBufUtil.hexDump(buf));
        }
-       out.add(new Response(ResponseType.valueOf(typeAsString)));
+       int bytesRead = stringDecCtx.getBytesRead();
+       ByteBuf idBuffer = buf.slice(buf.readerIndex() + bytesRead, buf.readableBytes() - bytesRead);
+       StringDecodingContext idDecCtx = DecodingHelper.decodeString(idBuffer);
+       String requestId = null;
+       if (idDecCtx.getState() == StringDecodingState.VALUE_READ) {
+           requestId = idDecCtx.getValue();
+           bytesRead += idDecCtx.getBytesRead();
+       } else if (requireRequestId || idBuffer.isReadable()) {
+           // insufficient data
+           return;
+       }
+       buf.readerIndex(buf.readerIndex() + bytesRead);
+       buf.discardReadBytes(); // clean up resources
+       out.add(new Response(ResponseType.valueOf(typeAsString), requestId));
     }
 
     @Override
@@ -39,60 +39,54 @@ package com.redhat.thermostat.client.command.internal;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import com.redhat.thermostat.common.command.Request;
-import com.redhat.thermostat.common.command.RequestResponseListener;
 import com.redhat.thermostat.common.command.Response;
-import com.redhat.thermostat.common.command.Response.ResponseType;
 import com.redhat.thermostat.common.utils.LoggingUtils;
 
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
-import io.netty.util.concurrent.Future;
-import io.netty.util.concurrent.GenericFutureListener;
+import io.netty.handler.timeout.IdleStateEvent;
 
 public class ResponseHandler extends SimpleChannelInboundHandler<Response> {
 
     private static final Logger logger = LoggingUtils
             .getLogger(ResponseHandler.class);
 
-    private final Request request;
+    private final AgentConnection connection;
 
-    ResponseHandler(Request request) {
-        this.request = request;
+    ResponseHandler(AgentConnection connection) {
+        this.connection = connection;
     }
 
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
         // TODO when response has support for parameters, provide the exception as well.
         logger.log(Level.WARNING, "exception caught: ", cause);
-        Response response = new Response(ResponseType.ERROR);
-        notifyListeners(response);
-        // Close broken channel. This is important, please keep!
-        Future<Void> future = ctx.channel().close();
-        future.addListener(new GenericFutureListener<Future<? super Void>>() {
-
-            @Override
-            public void operationComplete(Future<? super Void> future)
-                    throws Exception {
-                logger.log(Level.FINEST, "channel closed");
-            }
-        });
+        // Close broken channel. This is important, please keep! Requests in
+        // flight get an error response once the channel is inactive.
         ctx.close();
     }
 
-    private void notifyListeners(Response response) {
-        for (RequestResponseListener listener : request.getListeners()) {
-            listener.fireComplete(request, response);
-        }
-    }
-
     @Override
     protected void channelRead0(ChannelHandlerContext ctx, Response response)
             throws Exception {
-        ctx.pipeline().remove(this);
         logger.info((response).getType().toString());
-        notifyListeners(response);
-        ctx.close();
+        connection.responseReceived(response);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        logger.log(Level.FINEST, "channel closed");
+        connection.closed();
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (evt instanceof IdleStateEvent) {
+            connection.closeIfIdle();
+        } else {
+            super.userEventTriggered(ctx, evt);
+        }
     }
 }
 
@@ -46,9 +46,6 @@ import javax.net.ssl.SSLSession;
 
 import org.apache.http.conn.ssl.BrowserCompatHostnameVerifier;
 
-import com.redhat.thermostat.common.command.Request;
-import com.redhat.thermostat.common.command.Response;
-import com.redhat.thermostat.common.command.Response.ResponseType;
 import com.redhat.thermostat.common.utils.LoggingUtils;
 
 import io.netty.channel.Channel;
@@ -57,25 +54,24 @@ import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.GenericFutureListener;
 
 /**
- * Listener registered for SSL handshakes.
+ * Listener registered for SSL handshakes. Marks the connection ready once
+ * the handshake and the (optional) host name verification succeeded.
  * 
- * @see RequestQueueImpl
+ * @see AgentConnection
  *
  */
 final class SSLHandshakeFinishedListener implements GenericFutureListener<Future<Channel>> {
     
-    private final Request request;
+    private final AgentConnection connection;
     private final boolean performHostNameChecking;
     private final SslHandler handler;
-    private final RequestQueueImpl queueRunner;
     private final Logger logger = LoggingUtils.getLogger(SSLHandshakeFinishedListener.class);
     
-    SSLHandshakeFinishedListener(Request request, boolean performHostNameVerification,
-            SslHandler handler, RequestQueueImpl runner) {
-        this.request = request;
+    SSLHandshakeFinishedListener(AgentConnection connection, boolean performHostNameVerification,
+            SslHandler handler) {
+        this.connection = connection;
         this.performHostNameChecking = performHostNameVerification;
         this.handler = handler;
-        this.queueRunner = runner;
     }
     
     @Override
@@ -84,7 +80,7 @@ final class SSLHandshakeFinishedListener implements GenericFutureListener<Future
             logger.log(Level.WARNING,
                     "SSL handshake failed check agent logs for details!",
                     future.cause());
-            queueRunner.fireComplete(request, new Response(ResponseType.ERROR));
+            connection.fail(future.cause());
         } else {
             if (performHostNameChecking) {
                 try {
@@ -92,9 +88,11 @@ final class SSLHandshakeFinishedListener implements GenericFutureListener<Future
                 } catch (Exception e) {
                     future.removeListener(this);
                     logger.log(Level.SEVERE, "Hostname verification failed!", e);
-                    queueRunner.fireComplete(request, new Response(ResponseType.ERROR));
+                    connection.fail(e);
+                    return;
                 }
             }
+            connection.ready();
         }
     }
     
@@ -107,11 +105,10 @@ final class SSLHandshakeFinishedListener implements GenericFutureListener<Future
         // is well tested and supports domain wild-cards in certs and all these
         // goodies.
         BrowserCompatHostnameVerifier hostnameVerifier = new BrowserCompatHostnameVerifier();
-        InetSocketAddress addr = request.getTarget();
+        InetSocketAddress addr = connection.getTarget();
         // Use getHostString in order to avoid reverse lookup.
         // verify() throws SSLException if we fail to verify
         hostnameVerifier.verify(addr.getHostString(), cert);
     }
 
 }
-
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+
+package com.redhat.thermostat.client.command.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.redhat.thermostat.common.command.Request;
+import com.redhat.thermostat.common.command.Request.RequestType;
+import com.redhat.thermostat.common.command.RequestResponseListener;
+import com.redhat.thermostat.common.command.Response;
+import com.redhat.thermostat.common.command.Response.ResponseType;
+
+import io.netty.util.concurrent.ImmediateEventExecutor;
+
+public class AgentConnectionTest {
+
+    private InetSocketAddress target;
+    private ConnectionPool pool;
+    private AgentConnection connection;
+
+    @Before
+    public void setup() {
+        target = new InetSocketAddress("127.0.0.1", 12000);
+        pool = mock(ConnectionPool.class);
+        connection = new AgentConnection(target, pool, mock(ConfigurationRequestContext.class),
+                ImmediateEventExecutor.INSTANCE);
+    }
+
+    @Test
+    public void testResponseCompletesMatchingRequest() {
+        RequestResponseListener firstListener = mock(RequestResponseListener.class);
+        Request first = createRequest("1", firstListener);
+        RequestResponseListener secondListener = mock(RequestResponseListener.class);
+        Request second = createRequest("2", secondListener);
+        connection.register(first);
+        connection.register(second);
+        assertEquals(2, connection.getInFlightCount());
+
+        Response response = new Response(ResponseType.OK, "2");
+        connection.responseReceived(response);
+
+        verify(secondListener).fireComplete(second, response);
+        verify(firstListener, never()).fireComplete(any(Request.class), any(Response.class));
+        assertEquals(1, connection.getInFlightCount());
+    }
+
+    @Test
+    public void testUnknownResponseIsIgnored() {
+        RequestResponseListener listener = mock(RequestResponseListener.class);
+        connection.register(createRequest("1", listener));
+
+        connection.responseReceived(new Response(ResponseType.OK, "5"));
+
+        verify(listener, never()).fireComplete(any(Request.class), any(Response.class));
+        assertEquals(1, connection.getInFlightCount());
+    }
+
+    @Test
+    public void testResponseWithoutIdCompletesSingleRequest() {
+        RequestResponseListener listener = mock(RequestResponseListener.class);
+        Request request = createRequest("1", listener);
+        connection.register(request);
+
+        Response response = new Response(ResponseType.OK);
+        connection.responseReceived(response);
+
+        verify(listener).fireComplete(request, response);
+        assertEquals(0, connection.getInFlightCount());
+    }
+
+    @Test
+    public void testClosedFailsRequestsInFlight() {
+        RequestResponseListener listener = mock(RequestResponseListener.class);
+        Request first = createRequest("1", listener);
+        Request second = createRequest("2", listener);
+        connection.register(first);
+        connection.register(second);
+
+        connection.closed();
+
+        verify(pool).remove(connection);
+        assertErrorResponse(listener, first);
+        assertErrorResponse(listener, second);
+        assertEquals(0, connection.getInFlightCount());
+    }
+
+    @Test
+    public void testWriteAfterFailureFailsRequest() {
+        connection.fail(new IOException("Connection refused"));
+        verify(pool).remove(connection);
+
+        RequestResponseListener listener = mock(RequestResponseListener.class);
+        Request request = createRequest("1", listener);
+        connection.register(request);
+        connection.write(request);
+
+        assertErrorResponse(listener, request);
+        assertEquals(0, connection.getInFlightCount());
+    }
+
+    private void assertErrorResponse(RequestResponseListener listener, Request request) {
+        ArgumentCaptor<Response> responseCaptor = ArgumentCaptor.forClass(Response.class);
+        verify(listener).fireComplete(eq(request), responseCaptor.capture());
+        assertEquals(ResponseType.ERROR, responseCaptor.getValue().getType());
+    }
+
+    private Request createRequest(String requestId, RequestResponseListener listener) {
+        Request request = new Request(RequestType.RESPONSE_EXPECTED, target);
+        request.setParameter(Request.REQUEST_ID, requestId);
+        request.addListener(listener);
+        return request;
+    }
+}
+
@@ -68,6 +68,7 @@ import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.timeout.IdleStateHandler;
 
 @RunWith(PowerMockRunner.class)
 @PrepareForTest({ SSLConfiguration.class, SSLContextFactory.class,
@@ -115,6 +116,7 @@ public class ConfigurationRequestContextTest {
         inOrder.verify(mockPipeline).addLast(eq("ssl"), isA(SslHandler.class));
         inOrder.verify(mockPipeline).addLast(eq("decoder"), isA(ResponseDecoder.class));
         inOrder.verify(mockPipeline).addLast(eq("encoder"), isA(RequestEncoder.class));
+        inOrder.verify(mockPipeline).addLast(eq("idle"), isA(IdleStateHandler.class));
     }
 
     @Test
@@ -129,6 +131,7 @@ public class ConfigurationRequestContextTest {
         InOrder inOrder = Mockito.inOrder(mockPipeline);
         inOrder.verify(mockPipeline).addLast(eq("decoder"), isA(ResponseDecoder.class));
         inOrder.verify(mockPipeline).addLast(eq("encoder"), isA(RequestEncoder.class));
+        inOrder.verify(mockPipeline).addLast(eq("idle"), isA(IdleStateHandler.class));
     }
     
     static class TestClientPipelineInitializerCreator extends ClientPipelineInitializerCreator {
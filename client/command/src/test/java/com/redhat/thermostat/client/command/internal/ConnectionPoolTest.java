@@ -0,0 +1,175 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+
+package com.redhat.thermostat.client.command.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.redhat.thermostat.common.command.Request;
+import com.redhat.thermostat.common.command.Request.RequestType;
+
+public class ConnectionPoolTest {
+
+    private InetSocketAddress target;
+    private TestConnectionPool pool;
+
+    @Before
+    public void setup() {
+        target = new InetSocketAddress("127.0.0.1", 12000);
+        pool = new TestConnectionPool();
+    }
+
+    @Test
+    public void testSendAssignsRequestIds() {
+        Request first = new Request(RequestType.RESPONSE_EXPECTED, target);
+        Request second = new Request(RequestType.RESPONSE_EXPECTED, target);
+        pool.send(first);
+        pool.send(second);
+
+        assertNotNull(first.getParameter(Request.REQUEST_ID));
+        assertNotNull(second.getParameter(Request.REQUEST_ID));
+        assertFalse(first.getParameter(Request.REQUEST_ID).equals(second.getParameter(Request.REQUEST_ID)));
+    }
+
+    @Test
+    public void testIdleConnectionIsReused() {
+        Request first = new Request(RequestType.RESPONSE_EXPECTED, target);
+        pool.send(first);
+        assertEquals(1, pool.created.size());
+        AgentConnection connection = pool.created.get(0);
+        verify(connection).connect();
+        verify(connection).register(first);
+        verify(connection).write(first);
+
+        Request second = new Request(RequestType.RESPONSE_EXPECTED, target);
+        pool.send(second);
+        assertEquals(1, pool.created.size());
+        verify(connection).write(second);
+    }
+
+    @Test
+    public void testBusyConnectionsAreShared() {
+        for (int i = 0; i < ConnectionPool.MAX_CONNECTIONS_PER_TARGET + 3; i++) {
+            pool.send(new Request(RequestType.RESPONSE_EXPECTED, target));
+            when(pool.created.get(pool.created.size() - 1).getInFlightCount()).thenReturn(1);
+        }
+        assertEquals(ConnectionPool.MAX_CONNECTIONS_PER_TARGET, pool.created.size());
+    }
+
+    @Test
+    public void testConnectionsPerTarget() {
+        InetSocketAddress other = new InetSocketAddress("127.0.0.1", 12001);
+        pool.send(new Request(RequestType.RESPONSE_EXPECTED, target));
+        pool.send(new Request(RequestType.RESPONSE_EXPECTED, other));
+        assertEquals(2, pool.created.size());
+        assertEquals(target, pool.created.get(0).getTarget());
+        assertEquals(other, pool.created.get(1).getTarget());
+    }
+
+    @Test
+    public void testRemovedConnectionIsNotReused() {
+        pool.send(new Request(RequestType.RESPONSE_EXPECTED, target));
+        AgentConnection connection = pool.created.get(0);
+        pool.remove(connection);
+
+        pool.send(new Request(RequestType.RESPONSE_EXPECTED, target));
+        assertEquals(2, pool.created.size());
+        verify(connection, never()).close();
+    }
+
+    @Test
+    public void testCloseIfIdle() {
+        pool.send(new Request(RequestType.RESPONSE_EXPECTED, target));
+        AgentConnection connection = pool.created.get(0);
+        when(connection.getInFlightCount()).thenReturn(1);
+        pool.closeIfIdle(connection);
+        verify(connection, never()).close();
+
+        when(connection.getInFlightCount()).thenReturn(0);
+        pool.closeIfIdle(connection);
+        verify(connection).close();
+
+        pool.send(new Request(RequestType.RESPONSE_EXPECTED, target));
+        assertEquals(2, pool.created.size());
+    }
+
+    @Test
+    public void testCloseClosesAllConnections() {
+        pool.send(new Request(RequestType.RESPONSE_EXPECTED, target));
+        pool.send(new Request(RequestType.RESPONSE_EXPECTED, new InetSocketAddress("127.0.0.1", 12001)));
+
+        pool.close();
+
+        for (AgentConnection connection : pool.created) {
+            verify(connection).close();
+        }
+        pool.send(new Request(RequestType.RESPONSE_EXPECTED, target));
+        assertEquals(3, pool.created.size());
+        assertEquals(target, pool.created.get(2).getTarget());
+    }
+
+    private static class TestConnectionPool extends ConnectionPool {
+
+        private final List<AgentConnection> created = new ArrayList<>();
+
+        TestConnectionPool() {
+            super(mock(ConfigurationRequestContext.class));
+        }
+
+        @Override
+        AgentConnection createConnection(InetSocketAddress target) {
+            AgentConnection connection = mock(AgentConnection.class);
+            when(connection.getTarget()).thenReturn(target);
+            created.add(connection);
+            return connection;
+        }
+    }
+}
+
@@ -42,6 +42,8 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -53,13 +55,13 @@ import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
-import io.netty.bootstrap.Bootstrap;
-import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelException;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.FrameworkUtil;
@@ -191,14 +193,9 @@ public class RequestQueueImplTest {
         List<RequestResponseListener> listeners = new ArrayList<>();
         listeners.add(listener);
         when(req.getListeners()).thenReturn(listeners);
-        ConfigurationRequestContext ctx = mock(ConfigurationRequestContext.class);
-        when(ctx.getBootstrap()).thenReturn(mock(Bootstrap.class));
-        when(ctx.getBootstrap().connect(any(InetSocketAddress.class))).thenReturn(mock(ChannelFuture.class));
-        when(ctx.getBootstrap()
-                .connect(any(InetSocketAddress.class))
-                .syncUninterruptibly())
-                .thenThrow(new ChannelException("Connection Refused"));
-        RequestQueueImpl queue = new RequestQueueImpl(ctx);
+        ConnectionPool pool = mock(ConnectionPool.class);
+        doThrow(new ChannelException("Connection Refused")).when(pool).send(req);
+        RequestQueueImpl queue = new RequestQueueImpl(pool);
         try {
             queue.putRequest(req);
             queue.startProcessingRequests();
@@ -211,6 +208,34 @@ public class RequestQueueImplTest {
         }
     }
 
+    @Test
+    public void testRequestsAreSentThroughConnectionPool() throws InterruptedException {
+        Storage mockStorage = mock(Storage.class);
+        when(mockContext.getService(mockServiceRef)).thenReturn(mockStorage);
+
+        final CountDownLatch sent = new CountDownLatch(2);
+        ConnectionPool pool = mock(ConnectionPool.class);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                sent.countDown();
+                return null;
+            }
+        }).when(pool).send(any(Request.class));
+        RequestQueueImpl queue = new RequestQueueImpl(pool);
+        Request first = createRequest(mock(InetSocketAddress.class), "");
+        Request second = createRequest(mock(InetSocketAddress.class), "");
+        queue.putRequest(first);
+        queue.putRequest(second);
+        queue.startProcessingRequests();
+        assertTrue(sent.await(5, TimeUnit.SECONDS));
+        queue.stopProcessingRequests();
+
+        verify(pool).send(first);
+        verify(pool).send(second);
+        verify(pool).close();
+    }
+
     private class ConnectionFailedListener implements RequestResponseListener {
 
         public boolean called = false;
@@ -37,6 +37,7 @@
 package com.redhat.thermostat.client.command.internal;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 
@@ -59,13 +60,17 @@ public class ResponseDecoderTest {
         0x00, 0x00, 0x00, 0x02, 0x4f, 0x4b  
     };
     
+    private static final byte[] ENCODED_OK_RESP_WITH_ID = new byte[] {
+        0x00, 0x00, 0x00, 0x02, 0x4f, 0x4b, 0x00, 0x00, 0x00, 0x02, 0x34, 0x32
+    };
+
     private static final byte[] GARBAGE_AS_RESPONSE = new byte[] {
         0x0d, 0x0b, 0x0e, 0x0e, 0x0f  
     };
     
     @Test
     public void testDecode() throws Exception {
-        ByteBuf buffer = Unpooled.copiedBuffer(ENCODED_OK_RESP);
+        ByteBuf buffer = Unpooled.copiedBuffer(ENCODED_OK_RESP_WITH_ID);
         Response expected = new Response(ResponseType.OK);
         ResponseDecoder decoder = new ResponseDecoder();
         List<Object> out = new ArrayList<>();
@@ -73,6 +78,35 @@ public class ResponseDecoderTest {
         assertEquals(1, out.size());
         Response actual = (Response)out.get(0);
         assertTrue(Messages.equal(expected, (Response)actual));
+        assertEquals("42", actual.getRequestId());
+        assertEquals(0, buffer.readableBytes());
+    }
+
+    @Test
+    public void testDecodeWaitsForRequestId() throws Exception {
+        ByteBuf buffer = Unpooled.copiedBuffer(ENCODED_OK_RESP);
+        ResponseDecoder decoder = new ResponseDecoder();
+        List<Object> out = new ArrayList<>();
+        decoder.decode(mock(ChannelHandlerContext.class), buffer, out);
+        assertEquals(0, out.size());
+        assertEquals(ENCODED_OK_RESP.length, buffer.readableBytes());
+    }
+
+    /*
+     * Older agents do not send a request id, but close the connection after
+     * the response.
+     */
+    @Test
+    public void testDecodeLastWithoutRequestId() throws Exception {
+        ByteBuf buffer = Unpooled.copiedBuffer(ENCODED_OK_RESP);
+        Response expected = new Response(ResponseType.OK);
+        ResponseDecoder decoder = new ResponseDecoder();
+        List<Object> out = new ArrayList<>();
+        decoder.decodeLast(mock(ChannelHandlerContext.class), buffer, out);
+        assertEquals(1, out.size());
+        Response actual = (Response)out.get(0);
+        assertTrue(Messages.equal(expected, (Response)actual));
+        assertNull(actual.getRequestId());
     }
     
     @Test
@@ -36,76 +36,59 @@
 
 package com.redhat.thermostat.client.command.internal;
 
-import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
-import java.util.ArrayList;
-import java.util.List;
-
+import org.junit.Before;
 import org.junit.Test;
 
-import com.redhat.thermostat.common.command.Request;
-import com.redhat.thermostat.common.command.RequestResponseListener;
 import com.redhat.thermostat.common.command.Response;
 import com.redhat.thermostat.common.command.Response.ResponseType;
 
-import io.netty.channel.Channel;
-import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.channel.ChannelPipeline;
+import io.netty.handler.timeout.IdleStateEvent;
 
 public class ResponseHandlerTest {
 
+    private AgentConnection connection;
+    private ChannelHandlerContext ctx;
+    private ResponseHandler handler;
+
+    @Before
+    public void setup() {
+        connection = mock(AgentConnection.class);
+        ctx = mock(ChannelHandlerContext.class);
+        handler = new ResponseHandler(connection);
+    }
+
     @Test
-    public void messageReceivedCallsFireComplete() throws Exception {
-        Request req = mock(Request.class);
-        List<RequestResponseListener> listeners = new ArrayList<>();
-        ResponseListenerFixture fixture = new ResponseListenerFixture();
-        listeners.add(fixture);
-        when(req.getListeners()).thenReturn(listeners);
-        ResponseHandler handler = new ResponseHandler(req);
+    public void messageReceivedCompletesRequest() throws Exception {
         Response response = mock(Response.class);
         when(response.getType()).thenReturn(ResponseType.OK);
-        
-        ChannelHandlerContext ctx = mock(ChannelHandlerContext.class);
-        when(ctx.pipeline()).thenReturn(mock(ChannelPipeline.class));
+
         handler.channelRead0(ctx, response);
-        assertTrue(fixture.isCalled());
+
+        verify(connection).responseReceived(response);
+        verify(ctx, never()).close();
     }
     
     @Test
-    public void exceptionCaughtCallsFireCompleteAndClosesChannel() throws Exception {
-        Request req = mock(Request.class);
-        List<RequestResponseListener> listeners = new ArrayList<>();
-        ResponseListenerFixture fixture = new ResponseListenerFixture();
-        listeners.add(fixture);
-        when(req.getListeners()).thenReturn(listeners);
-        ResponseHandler handler = new ResponseHandler(req);
-        Channel chan = mock(Channel.class);
-        when(chan.close()).thenReturn(mock(ChannelFuture.class));
-        ChannelHandlerContext ctx = mock(ChannelHandlerContext.class);
-        when(ctx.channel()).thenReturn(chan);
-        when(ctx.pipeline()).thenReturn(mock(ChannelPipeline.class));
+    public void exceptionCaughtClosesChannel() throws Exception {
         handler.exceptionCaught(ctx, new Exception("Test me!"));
-        assertTrue(fixture.isCalled());
-        verify(chan).close();
+        verify(ctx).close();
     }
-    
-    private class ResponseListenerFixture implements RequestResponseListener {
 
-        public boolean called = false;
-        
-        public boolean isCalled() {
-            return called;
-        }
+    @Test
+    public void channelInactiveFailsRequestsInFlight() throws Exception {
+        handler.channelInactive(ctx);
+        verify(connection).closed();
+    }
 
-        @Override
-        public void fireComplete(Request request, Response response) {
-            called = true;
-        }
-        
+    @Test
+    public void idleChannelIsClosed() throws Exception {
+        handler.userEventTriggered(ctx, IdleStateEvent.ALL_IDLE_STATE_EVENT);
+        verify(connection).closeIfIdle();
     }
 }
-
@@ -63,6 +63,13 @@ public class Request implements Message {
     public static final String CLIENT_TOKEN = "client-token";
     public static final String AUTH_TOKEN = "auth-token";
     public static final String ACTION = "action-name";
+    /**
+     * Identifies a request among the requests in flight on one command
+     * channel connection. Set by the client before the request is sent;
+     * the agent echoes it in the {@link Response} and keeps the connection
+     * open for further requests.
+     */
+    public static final String REQUEST_ID = "request-id";
     public static final String UNKNOWN_HOSTNAME = "";
 
     private static final String FILTERED_PARAM_VALUE = "<filtered>";
@@ -54,6 +54,17 @@ package com.redhat.thermostat.common.command;
  * A is an 32 bit integer representing the length - in bytes - of TYPE. TYPE
  * is a byte array representing the string of the response type (e.g.
  * "OK").
+ * <p>
+ * Responses to requests carrying a {@link Request#REQUEST_ID} parameter
+ * are followed by that id, so that several requests can be in flight on
+ * the same connection:
+ * <pre>
+ * -----------------------------
+ * | A | TYPE | B | REQUEST_ID |
+ * -----------------------------
+ * </pre>
+ * B is an 32 bit integer representing the length - in bytes - of
+ * REQUEST_ID.
  */
 public class Response implements Message {
 
@@ -83,9 +94,19 @@ public class Response implements Message {
     }
 
     private ResponseType type;
+    private final String requestId;
 
     public Response (ResponseType type) {
+        this(type, null);
+    }
+
+    /**
+     * @param requestId the {@link Request#REQUEST_ID} of the request this
+     *        is a response to, may be {@code null}.
+     */
+    public Response (ResponseType type, String requestId) {
         this.type = type;
+        this.requestId = requestId;
     }
 
     @Override
@@ -93,5 +114,13 @@ public class Response implements Message {
         return type;
     }
 
+    /**
+     * @return the {@link Request#REQUEST_ID} of the request this is a
+     *         response to or {@code null} if the request had none.
+     */
+    public String getRequestId() {
+        return requestId;
+    }
+
 }
 
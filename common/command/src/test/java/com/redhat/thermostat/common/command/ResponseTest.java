@@ -37,6 +37,7 @@
 package com.redhat.thermostat.common.command;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 import org.junit.Test;
 
@@ -51,5 +52,11 @@ public class ResponseTest {
         r = new Response(ResponseType.ERROR);
         assertEquals(ResponseType.ERROR, r.getType());
     }
+
+    @Test
+    public void testGetRequestId() {
+        assertNull(new Response(ResponseType.OK).getRequestId());
+        assertEquals("7", new Response(ResponseType.OK, "7").getRequestId());
+    }
 }
 
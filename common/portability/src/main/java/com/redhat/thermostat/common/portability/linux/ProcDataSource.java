@@ -36,8 +36,10 @@
 
 package com.redhat.thermostat.common.portability.linux;
 
+import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
 
 /**
@@ -125,6 +127,13 @@ public class ProcDataSource {
         return new FileReader(getPidFile(PID_NUMA_MAPS_FILE, pid));
     }
 
+    /**
+     * Returns an unbuffered stream of the bytes of /proc/$PID/numa_maps
+     */
+    public InputStream getNumaMapsInputStream(int pid) throws IOException {
+        return new FileInputStream(getPidFile(PID_NUMA_MAPS_FILE, pid));
+    }
+
     private String getPidFile(String fileName, int pid) {
         return fileName.replace("${pid}", Integer.toString(pid));
     }
@@ -0,0 +1,500 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+
+package com.redhat.thermostat.common.portability.linux;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.redhat.thermostat.common.utils.LoggingUtils;
+
+/**
+ * Reads numeric fields from files under {@code /proc/} without creating
+ * readers or Strings. See proc(5) for details about the file formats.
+ * <p>
+ * Unlike {@link ProcDataSource}, files are opened once and kept open. Every
+ * read starts at offset 0 of the open file, which makes procfs generate the
+ * file content afresh, into a direct buffer which is reused by all reads.
+ * The results are stored in caller supplied holders so that periodic sampling
+ * doesn't allocate. Files of a process are closed by {@link #release(int)},
+ * or automatically when reading them fails, which happens once the process
+ * has exited. The files of a new process which reuses the process id are
+ * opened by the next read.
+ * <p>
+ * Instances are not thread-safe.
+ */
+public class ProcReader implements Closeable {
+
+    public static final long UNKNOWN_VALUE = -1;
+
+    private static final Logger logger = LoggingUtils.getLogger(ProcReader.class);
+
+    private static final int INITIAL_BUFFER_SIZE = 8 * 1024;
+
+    private static final String STAT_FILE = "stat";
+    private static final String IO_FILE = "io";
+
+    private static final byte[][] IO_KEYS = toBytes("rchar", "wchar", "syscr", "syscw",
+            "read_bytes", "write_bytes", "cancelled_write_bytes");
+    private static final byte[] CPU = toBytes("cpu")[0];
+
+    private final Path procRoot;
+    private final Map<Integer, PidFiles> pidFiles = new HashMap<>();
+    private final long[] keyedValues = new long[IO_KEYS.length];
+
+    private FileChannel statChannel;
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(INITIAL_BUFFER_SIZE);
+    // parse position in buffer
+    private int pos;
+
+    public ProcReader() {
+        this(Paths.get("/proc"));
+    }
+
+    // package private for testing
+    ProcReader(Path procRoot) {
+        this.procRoot = procRoot;
+    }
+
+    /**
+     * Reads {@code /proc/$PID/stat}.
+     *
+     * @return false if the file could not be read, in which case the contents
+     *         of {@code stat} are unspecified
+     */
+    public boolean readStat(int pid, PidStat stat) {
+        PidFiles files = getPidFiles(pid);
+        try {
+            if (files.stat == null) {
+                files.stat = open(files.dir.resolve(STAT_FILE));
+            }
+            fill(files.stat);
+        } catch (IOException e) {
+            logger.log(Level.FINE, "Unable to read stat info for: " + pid);
+            release(pid);
+            return false;
+        }
+
+        /* be prepared for process names like '1 ) 2 3 4 foo 5' */
+        pos = 0;
+        stat.pid = (int) nextLong();
+        int endOfName = lastIndexOf((byte) ')');
+        if (endOfName < 0) {
+            return false;
+        }
+        pos = endOfName + 1;
+        // fields as numbered in proc(5), starting after the name
+        skipFields(3, 13);
+        stat.userTime = nextLong();
+        stat.kernelTime = nextLong();
+        skipFields(16, 19);
+        stat.numThreads = nextLong();
+        skipFields(21, 21);
+        stat.startTime = nextLong();
+        stat.virtualSize = nextLong();
+        stat.residentPages = nextLong();
+        return true;
+    }
+
+    /**
+     * Reads {@code /proc/$PID/io}. Fields missing from the file are set to
+     * {@link #UNKNOWN_VALUE}.
+     *
+     * @return false if the file could not be read, in which case the contents
+     *         of {@code io} are unspecified
+     */
+    public boolean readIo(int pid, PidIo io) {
+        PidFiles files = getPidFiles(pid);
+        try {
+            if (files.io == null) {
+                files.io = open(files.dir.resolve(IO_FILE));
+            }
+            fill(files.io);
+        } catch (IOException e) {
+            logger.log(Level.FINE, "Unable to read io info for: " + pid);
+            release(pid);
+            return false;
+        }
+
+        parseKeyedValues(IO_KEYS);
+        io.charactersRead = keyedValues[0];
+        io.charactersWritten = keyedValues[1];
+        io.readSyscalls = keyedValues[2];
+        io.writeSyscalls = keyedValues[3];
+        io.readBytes = keyedValues[4];
+        io.writeBytes = keyedValues[5];
+        io.cancelledWriteBytes = keyedValues[6];
+        return true;
+    }
+
+    /**
+     * Reads the time spent in user, nice and system mode by every cpu from
+     * {@code /proc/stat}.
+     *
+     * @param ticks receives the sum of those times, in ticks, indexed by cpu.
+     *        Cpus which don't fit into the array are skipped.
+     * @return the number of cpus, which may be larger than the length of
+     *         {@code ticks}, or -1 if the file could not be read
+     */
+    public int readCpuTicks(long[] ticks) {
+        try {
+            if (statChannel == null) {
+                statChannel = open(procRoot.resolve(STAT_FILE));
+            }
+            fill(statChannel);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "error reading stat file", e);
+            closeQuietly(statChannel);
+            statChannel = null;
+            return -1;
+        }
+
+        int cpuCount = 0;
+        pos = 0;
+        int limit = buffer.limit();
+        while (pos < limit) {
+            // skip the aggregate "cpu " line and anything which isn't a cpu
+            if (startsWith(CPU) && pos + CPU.length < limit && isDigit(buffer.get(pos + CPU.length))) {
+                pos += CPU.length;
+                int cpu = (int) nextLong();
+                long sum = nextLong() + nextLong() + nextLong();
+                if (cpu < ticks.length) {
+                    ticks[cpu] = sum;
+                }
+                cpuCount = Math.max(cpuCount, cpu + 1);
+            }
+            skipLine();
+        }
+        return cpuCount;
+    }
+
+    /**
+     * Closes the files of the given process. Reading them again reopens them.
+     */
+    public void release(int pid) {
+        PidFiles files = pidFiles.remove(pid);
+        if (files != null) {
+            files.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        Iterator<PidFiles> iter = pidFiles.values().iterator();
+        while (iter.hasNext()) {
+            iter.next().close();
+            iter.remove();
+        }
+        closeQuietly(statChannel);
+        statChannel = null;
+    }
+
+    private PidFiles getPidFiles(int pid) {
+        PidFiles files = pidFiles.get(pid);
+        if (files == null) {
+            files = new PidFiles(procRoot.resolve(Integer.toString(pid)));
+            pidFiles.put(pid, files);
+        }
+        return files;
+    }
+
+    private static FileChannel open(Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.READ);
+    }
+
+    /*
+     * Reads the complete file into the buffer, growing it if the file doesn't
+     * fit, and flips the buffer for parsing.
+     */
+    private void fill(FileChannel channel) throws IOException {
+        buffer.clear();
+        long position = 0;
+        int read;
+        while ((read = channel.read(buffer, position)) > 0) {
+            position += read;
+            if (!buffer.hasRemaining()) {
+                ByteBuffer larger = ByteBuffer.allocateDirect(buffer.capacity() * 2);
+                buffer.flip();
+                larger.put(buffer);
+                buffer = larger;
+            }
+        }
+        buffer.flip();
+    }
+
+    /*
+     * Parses lines of the form "key: value ..." and stores the first number
+     * of the value of every line whose key is one of the given keys.
+     */
+    private void parseKeyedValues(byte[][] keys) {
+        for (int i = 0; i < keys.length; i++) {
+            keyedValues[i] = UNKNOWN_VALUE;
+        }
+        pos = 0;
+        int limit = buffer.limit();
+        while (pos < limit) {
+            for (int i = 0; i < keys.length; i++) {
+                byte[] key = keys[i];
+                if (startsWith(key) && pos + key.length < limit && buffer.get(pos + key.length) == ':') {
+                    pos += key.length + 1;
+                    keyedValues[i] = nextLong();
+                    break;
+                }
+            }
+            skipLine();
+        }
+    }
+
+    private boolean startsWith(byte[] prefix) {
+        if (pos + prefix.length > buffer.limit()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer.get(pos + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int lastIndexOf(byte b) {
+        for (int i = buffer.limit() - 1; i >= 0; i--) {
+            if (buffer.get(i) == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void skipLine() {
+        int limit = buffer.limit();
+        while (pos < limit && buffer.get(pos) != '\n') {
+            pos++;
+        }
+        pos++;
+    }
+
+    /*
+     * Skips the space separated fields numbered first to last, inclusive.
+     */
+    private void skipFields(int first, int last) {
+        int limit = buffer.limit();
+        for (int field = first; field <= last; field++) {
+            while (pos < limit && isBlank(buffer.get(pos))) {
+                pos++;
+            }
+            while (pos < limit && !isBlank(buffer.get(pos))) {
+                pos++;
+            }
+        }
+    }
+
+    /*
+     * Parses the next, possibly negative, decimal number on the current line.
+     * Returns UNKNOWN_VALUE if there is none.
+     */
+    private long nextLong() {
+        int limit = buffer.limit();
+        while (pos < limit && isBlank(buffer.get(pos))) {
+            pos++;
+        }
+        boolean negative = false;
+        if (pos < limit && buffer.get(pos) == '-') {
+            negative = true;
+            pos++;
+        }
+        if (pos >= limit || !isDigit(buffer.get(pos))) {
+            return UNKNOWN_VALUE;
+        }
+        long value = 0;
+        byte b;
+        while (pos < limit && isDigit(b = buffer.get(pos))) {
+            value = value * 10 + (b - '0');
+            pos++;
+        }
+        return negative ? -value : value;
+    }
+
+    private static boolean isBlank(byte b) {
+        return b == ' ' || b == '\t';
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static byte[][] toBytes(String... keys) {
+        byte[][] bytes = new byte[keys.length][];
+        for (int i = 0; i < keys.length; i++) {
+            bytes[i] = keys[i].getBytes(StandardCharsets.US_ASCII);
+        }
+        return bytes;
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // nothing to do
+            }
+        }
+    }
+
+    private static class PidFiles {
+
+        private final Path dir;
+        private FileChannel stat;
+        private FileChannel io;
+
+        private PidFiles(Path dir) {
+            this.dir = dir;
+        }
+
+        private void close() {
+            closeQuietly(stat);
+            closeQuietly(io);
+        }
+    }
+
+    /**
+     * Fields of {@code /proc/$PID/stat}. Times are measured in clock ticks.
+     */
+    public static final class PidStat {
+
+        private int pid;
+        private long userTime;
+        private long kernelTime;
+        private long numThreads;
+        private long startTime;
+        private long virtualSize;
+        private long residentPages;
+
+        public int getPid() {
+            return pid;
+        }
+
+        public long getUserTime() {
+            return userTime;
+        }
+
+        public long getKernelTime() {
+            return kernelTime;
+        }
+
+        public long getNumThreads() {
+            return numThreads;
+        }
+
+        /**
+         * @return the time the process started after system boot, in clock
+         *         ticks
+         */
+        public long getStartTime() {
+            return startTime;
+        }
+
+        /**
+         * @return the virtual memory size in bytes
+         */
+        public long getVirtualSize() {
+            return virtualSize;
+        }
+
+        /**
+         * @return the resident set size in pages
+         */
+        public long getResidentPages() {
+            return residentPages;
+        }
+    }
+
+    /**
+     * Fields of {@code /proc/$PID/io}.
+     */
+    public static final class PidIo {
+
+        private long charactersRead;
+        private long charactersWritten;
+        private long readSyscalls;
+        private long writeSyscalls;
+        private long readBytes;
+        private long writeBytes;
+        private long cancelledWriteBytes;
+
+        public long getCharactersRead() {
+            return charactersRead;
+        }
+
+        public long getCharactersWritten() {
+            return charactersWritten;
+        }
+
+        public long getReadSyscalls() {
+            return readSyscalls;
+        }
+
+        public long getWriteSyscalls() {
+            return writeSyscalls;
+        }
+
+        public long getReadBytes() {
+            return readBytes;
+        }
+
+        public long getWriteBytes() {
+            return writeBytes;
+        }
+
+        public long getCancelledWriteBytes() {
+            return cancelledWriteBytes;
+        }
+    }
+
+}
+
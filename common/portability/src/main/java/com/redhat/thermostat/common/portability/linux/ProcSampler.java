@@ -0,0 +1,132 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+
+package com.redhat.thermostat.common.portability.linux;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import com.redhat.thermostat.common.portability.linux.ProcReader.PidStat;
+
+/**
+ * Samples {@code /proc/$PID/stat} of a set of processes in one pass per
+ * tick. Meant to be driven by a polling backend once per polling interval,
+ * after which the per-process actions look up the samples of this tick.
+ * <p>
+ * Holders of processes which remain monitored are reused from tick to tick.
+ * Files of processes which are no longer monitored are released.
+ */
+public class ProcSampler {
+
+    private static final int[] NO_PIDS = new int[0];
+
+    private final ProcReader reader;
+
+    // sorted, parallel to the arrays below
+    private int[] pids = NO_PIDS;
+    private PidStat[] stats = new PidStat[0];
+    private boolean[] statValid = new boolean[0];
+
+    public ProcSampler(ProcReader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Samples all given processes.
+     */
+    public synchronized void sample(Collection<Integer> monitoredPids) {
+        if (!isSameSet(monitoredPids)) {
+            updatePids(monitoredPids);
+        }
+        for (int i = 0; i < pids.length; i++) {
+            statValid[i] = reader.readStat(pids[i], stats[i]);
+        }
+    }
+
+    /**
+     * @return the stat of the process as of the last call to
+     *         {@link #sample(Collection)}, or null if the process was not
+     *         sampled or its stat could not be read
+     */
+    public synchronized PidStat getStat(int pid) {
+        int index = Arrays.binarySearch(pids, pid);
+        return index >= 0 && statValid[index] ? stats[index] : null;
+    }
+
+    private boolean isSameSet(Collection<Integer> monitoredPids) {
+        if (monitoredPids.size() != pids.length) {
+            return false;
+        }
+        for (int pid : monitoredPids) {
+            if (Arrays.binarySearch(pids, pid) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void updatePids(Collection<Integer> monitoredPids) {
+        int[] newPids = new int[monitoredPids.size()];
+        int count = 0;
+        for (int pid : monitoredPids) {
+            // the collection may have grown concurrently
+            if (count == newPids.length) {
+                newPids = Arrays.copyOf(newPids, count * 2 + 1);
+            }
+            newPids[count++] = pid;
+        }
+        newPids = Arrays.copyOf(newPids, count);
+        Arrays.sort(newPids);
+
+        PidStat[] newStats = new PidStat[count];
+        for (int i = 0; i < count; i++) {
+            int old = Arrays.binarySearch(pids, newPids[i]);
+            newStats[i] = old >= 0 ? stats[old] : new PidStat();
+        }
+        for (int pid : pids) {
+            if (Arrays.binarySearch(newPids, pid) < 0) {
+                reader.release(pid);
+            }
+        }
+
+        pids = newPids;
+        stats = newStats;
+        statValid = new boolean[count];
+    }
+
+}
+
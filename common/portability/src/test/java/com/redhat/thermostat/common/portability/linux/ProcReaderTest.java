@@ -0,0 +1,210 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+
+package com.redhat.thermostat.common.portability.linux;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.redhat.thermostat.common.portability.linux.ProcReader.PidIo;
+import com.redhat.thermostat.common.portability.linux.ProcReader.PidStat;
+import com.redhat.thermostat.shared.config.OS;
+import com.redhat.thermostat.testutils.TestUtils;
+
+public class ProcReaderTest {
+
+    private static final int PID = 10363;
+
+    private static final String STAT_CONTENTS = "10363 (jav) a) S 1737 10363 1737 0 -1 4202496 " +
+            "5396 0 0 0 9 2 0 0 20 0 13 0 5742564 2998005760 20352 18446744073709551615 " +
+            "4194304 4196468 140736637464000 140736637457272 271103104219 0 0 0 16800975 " +
+            "18446744073709551615 0 0 17 2 0 0 0 0 0\n";
+
+    private static final String IO_CONTENTS = "rchar: 1\n" +
+            "wchar: 2\n" +
+            "syscr: 3\n" +
+            "syscw: 4\n" +
+            "read_bytes: 5\n" +
+            "write_bytes: 6\n" +
+            "cancelled_write_bytes: 7\n";
+
+    private static final String CPU_STAT_CONTENTS = "cpu  110 80 10 2000 2000\n" +
+            "cpu0 100 0 0 1000 1000\n" +
+            "cpu1 10 80 10 1000 1000\n" +
+            "intr 1 2 3 4\n" +
+            "ctxt 1234\n";
+
+    private Path procRoot;
+    private ProcReader reader;
+
+    @Before
+    public void setUp() throws IOException {
+        procRoot = Files.createTempDirectory("proc-reader-test");
+        Files.createDirectory(procRoot.resolve(Integer.toString(PID)));
+        reader = new ProcReader(procRoot);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        reader.close();
+        Path pidDir = procRoot.resolve(Integer.toString(PID));
+        Files.deleteIfExists(pidDir.resolve("stat"));
+        Files.deleteIfExists(pidDir.resolve("io"));
+        Files.deleteIfExists(pidDir);
+        Files.deleteIfExists(procRoot.resolve("stat"));
+        Files.delete(procRoot);
+    }
+
+    private void write(String file, String contents) throws IOException {
+        Files.write(procRoot.resolve(file), contents.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void testReadStat() throws IOException {
+        write(PID + "/stat", STAT_CONTENTS);
+
+        PidStat stat = new PidStat();
+        assertTrue(reader.readStat(PID, stat));
+
+        assertEquals(PID, stat.getPid());
+        assertEquals(9, stat.getUserTime());
+        assertEquals(2, stat.getKernelTime());
+        assertEquals(13, stat.getNumThreads());
+        assertEquals(5742564, stat.getStartTime());
+        assertEquals(2998005760l, stat.getVirtualSize());
+        assertEquals(20352, stat.getResidentPages());
+    }
+
+    @Test
+    public void testReadStatRereadsOpenFile() throws IOException {
+        write(PID + "/stat", STAT_CONTENTS);
+        PidStat stat = new PidStat();
+        assertTrue(reader.readStat(PID, stat));
+
+        write(PID + "/stat", STAT_CONTENTS.replace(" 9 2 ", " 19 12 "));
+        assertTrue(reader.readStat(PID, stat));
+
+        assertEquals(19, stat.getUserTime());
+        assertEquals(12, stat.getKernelTime());
+    }
+
+    @Test
+    public void testReadStatOfMissingProcess() {
+        assertFalse(reader.readStat(PID + 1, new PidStat()));
+    }
+
+    @Test
+    public void testReadIo() throws IOException {
+        write(PID + "/io", IO_CONTENTS);
+
+        PidIo io = new PidIo();
+        assertTrue(reader.readIo(PID, io));
+
+        assertEquals(1, io.getCharactersRead());
+        assertEquals(2, io.getCharactersWritten());
+        assertEquals(3, io.getReadSyscalls());
+        assertEquals(4, io.getWriteSyscalls());
+        assertEquals(5, io.getReadBytes());
+        assertEquals(6, io.getWriteBytes());
+        assertEquals(7, io.getCancelledWriteBytes());
+    }
+
+    @Test
+    public void testReadIoWithMissingFields() throws IOException {
+        write(PID + "/io", "rchar: 1\nsyscw: 4\n");
+
+        PidIo io = new PidIo();
+        assertTrue(reader.readIo(PID, io));
+
+        assertEquals(1, io.getCharactersRead());
+        assertEquals(ProcReader.UNKNOWN_VALUE, io.getCharactersWritten());
+        assertEquals(4, io.getWriteSyscalls());
+    }
+
+    @Test
+    public void testReadCpuTicks() throws IOException {
+        write("stat", CPU_STAT_CONTENTS);
+
+        long[] ticks = new long[2];
+        assertEquals(2, reader.readCpuTicks(ticks));
+        assertArrayEquals(new long[] { 100, 100 }, ticks);
+
+        long[] tooSmall = new long[1];
+        assertEquals(2, reader.readCpuTicks(tooSmall));
+        assertArrayEquals(new long[] { 100 }, tooSmall);
+    }
+
+    @Test
+    public void testReadLargeFile() throws IOException {
+        StringBuilder contents = new StringBuilder(CPU_STAT_CONTENTS);
+        for (int i = 0; i < 10000; i++) {
+            contents.append("intr 1 2 3 4 5 6 7 8 9\n");
+        }
+        contents.append("cpu2 1 2 3 4 5\n");
+        write("stat", contents.toString());
+
+        long[] ticks = new long[3];
+        assertEquals(3, reader.readCpuTicks(ticks));
+        assertArrayEquals(new long[] { 100, 100, 6 }, ticks);
+    }
+
+    @Test
+    public void testReadRealProcFiles() {
+        Assume.assumeTrue(OS.IS_LINUX);
+        int pid = TestUtils.getProcessId();
+        try (ProcReader procReader = new ProcReader()) {
+            PidStat stat = new PidStat();
+            assertTrue(procReader.readStat(pid, stat));
+            assertEquals(pid, stat.getPid());
+            assertTrue(procReader.readCpuTicks(new long[0]) > 0);
+        }
+    }
+
+}
+
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+
+package com.redhat.thermostat.common.portability.linux;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.redhat.thermostat.common.portability.linux.ProcReader.PidStat;
+
+public class ProcSamplerTest {
+
+    private ProcReader reader;
+
+    @Before
+    public void setUp() {
+        reader = mock(ProcReader.class);
+        when(reader.readStat(anyInt(), any(PidStat.class))).thenReturn(true);
+    }
+
+    @Test
+    public void testSampleReadsAllPids() {
+        ProcSampler sampler = new ProcSampler(reader);
+        sampler.sample(new HashSet<>(Arrays.asList(3, 1, 2)));
+
+        for (int pid = 1; pid <= 3; pid++) {
+            verify(reader).readStat(eq(pid), any(PidStat.class));
+            assertNotNull(sampler.getStat(pid));
+        }
+        assertNull(sampler.getStat(4));
+    }
+
+    @Test
+    public void testFailedReadIsNotReturned() {
+        when(reader.readStat(eq(2), any(PidStat.class))).thenReturn(false);
+        ProcSampler sampler = new ProcSampler(reader);
+        sampler.sample(new HashSet<>(Arrays.asList(1, 2)));
+
+        assertNotNull(sampler.getStat(1));
+        assertNull(sampler.getStat(2));
+    }
+
+    @Test
+    public void testHoldersAreReusedAndStoppedPidsReleased() {
+        ProcSampler sampler = new ProcSampler(reader);
+        sampler.sample(new HashSet<>(Arrays.asList(1, 2)));
+        PidStat stat = sampler.getStat(2);
+
+        sampler.sample(new HashSet<>(Arrays.asList(2, 3)));
+
+        assertSame(stat, sampler.getStat(2));
+        assertNull(sampler.getStat(1));
+        verify(reader).release(1);
+        verify(reader, never()).release(2);
+    }
+
+}
+
@@ -0,0 +1,268 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.storage.mongodb.internal;
+
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.redhat.thermostat.storage.core.Persist;
+import com.redhat.thermostat.storage.model.BasePojo;
+import com.redhat.thermostat.storage.model.Pojo;
+import com.redhat.thermostat.storage.model.TimeStampedPojo;
+
+/**
+ * Compares the reflective pojo conversion (as used before per-class codecs
+ * were introduced) with {@link MongoPojoConverter} for a pojo shaped like
+ * a VM memory sample: a few scalar properties plus nested pojo arrays.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MongoPojoConverterBenchmark {
+
+    private LegacyMongoPojoConverter legacy;
+    private MongoPojoConverter codec;
+    private MemorySample pojo;
+    private Document document;
+
+    @Setup
+    public void setup() {
+        legacy = new LegacyMongoPojoConverter();
+        codec = new MongoPojoConverter();
+        pojo = MemorySample.create();
+        document = codec.convertPojoToMongo(pojo);
+    }
+
+    @Benchmark
+    public Document legacyPojoToMongo() {
+        return legacy.convertPojoToMongo(pojo);
+    }
+
+    @Benchmark
+    public Document codecPojoToMongo() {
+        return codec.convertPojoToMongo(pojo);
+    }
+
+    @Benchmark
+    public MemorySample legacyMongoToPojo() {
+        return legacy.convertMongoToPojo(document, MemorySample.class);
+    }
+
+    @Benchmark
+    public MemorySample codecMongoToPojo() {
+        return codec.convertMongoToPojo(document, MemorySample.class);
+    }
+
+    public static class MemorySample extends BasePojo implements TimeStampedPojo {
+
+        private long timeStamp;
+        private String vmId;
+        private long metaspaceUsed;
+        private Generation[] generations;
+
+        public MemorySample() {
+            super(null);
+        }
+
+        static MemorySample create() {
+            MemorySample sample = new MemorySample();
+            sample.setAgentId("agent-id");
+            sample.setVmId("vm-id");
+            sample.setTimeStamp(1000L);
+            sample.setMetaspaceUsed(4096L);
+            Generation[] gens = new Generation[2];
+            for (int i = 0; i < gens.length; i++) {
+                Generation gen = new Generation();
+                gen.setName("gen-" + i);
+                gen.setCapacity(1024L * i);
+                Space[] spaces = new Space[3];
+                for (int j = 0; j < spaces.length; j++) {
+                    Space space = new Space();
+                    space.setName("space-" + j);
+                    space.setIndex(j);
+                    space.setUsed(10L * j);
+                    space.setCapacity(100L * j);
+                    spaces[j] = space;
+                }
+                gen.setSpaces(spaces);
+                gens[i] = gen;
+            }
+            sample.setGenerations(gens);
+            return sample;
+        }
+
+        @Persist
+        @Override
+        public long getTimeStamp() {
+            return timeStamp;
+        }
+
+        @Persist
+        public void setTimeStamp(long timeStamp) {
+            this.timeStamp = timeStamp;
+        }
+
+        @Persist
+        public String getVmId() {
+            return vmId;
+        }
+
+        @Persist
+        public void setVmId(String vmId) {
+            this.vmId = vmId;
+        }
+
+        @Persist
+        public long getMetaspaceUsed() {
+            return metaspaceUsed;
+        }
+
+        @Persist
+        public void setMetaspaceUsed(long metaspaceUsed) {
+            this.metaspaceUsed = metaspaceUsed;
+        }
+
+        @Persist
+        public Generation[] getGenerations() {
+            return generations;
+        }
+
+        @Persist
+        public void setGenerations(Generation[] generations) {
+            this.generations = generations;
+        }
+    }
+
+    public static class Generation implements Pojo {
+
+        private String name;
+        private long capacity;
+        private Space[] spaces;
+
+        @Persist
+        public String getName() {
+            return name;
+        }
+
+        @Persist
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        @Persist
+        public long getCapacity() {
+            return capacity;
+        }
+
+        @Persist
+        public void setCapacity(long capacity) {
+            this.capacity = capacity;
+        }
+
+        @Persist
+        public Space[] getSpaces() {
+            return spaces;
+        }
+
+        @Persist
+        public void setSpaces(Space[] spaces) {
+            this.spaces = spaces;
+        }
+    }
+
+    public static class Space implements Pojo {
+
+        private String name;
+        private int index;
+        private long used;
+        private long capacity;
+
+        @Persist
+        public String getName() {
+            return name;
+        }
+
+        @Persist
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        @Persist
+        public int getIndex() {
+            return index;
+        }
+
+        @Persist
+        public void setIndex(int index) {
+            this.index = index;
+        }
+
+        @Persist
+        public long getUsed() {
+            return used;
+        }
+
+        @Persist
+        public void setUsed(long used) {
+            this.used = used;
+        }
+
+        @Persist
+        public long getCapacity() {
+            return capacity;
+        }
+
+        @Persist
+        public void setCapacity(long capacity) {
+            this.capacity = capacity;
+        }
+    }
+}
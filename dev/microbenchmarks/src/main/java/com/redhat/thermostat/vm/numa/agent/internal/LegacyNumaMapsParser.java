@@ -0,0 +1,139 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+
+package com.redhat.thermostat.vm.numa.agent.internal;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.redhat.thermostat.vm.numa.agent.internal.VmNumaCollector.Category;
+import com.redhat.thermostat.vm.numa.common.VmNumaNodeStat;
+
+/**
+ * Verbatim copy of the regular expression based numa_maps parsing
+ * {@link VmNumaCollector} performed before {@link NumaMapsParser}. Kept as
+ * the baseline for {@link NumaMapsParserBenchmark}.
+ */
+class LegacyNumaMapsParser {
+
+    private static final int KILOBYTE = 1024;
+    private static final int MEGABYTE = 1024 * KILOBYTE;
+
+    private static final Pattern NODE_PATTERN = Pattern.compile("N([0-9]+)=([0-9]+)");
+    private static final Pattern WHITESPACE_PATTERN = Pattern.compile("[\\s]+");
+
+    private final PageSizeProvider pageSizeProvider;
+
+    LegacyNumaMapsParser(PageSizeProvider pageSizeProvider) {
+        this.pageSizeProvider = pageSizeProvider;
+    }
+
+    VmNumaNodeStat[] collect(BufferedReader br) throws IOException {
+        Map<Integer, VmNumaNodeStat> statsMap = new TreeMap<>(); // need sorted keys for converting values to array in order later
+        for (String line = br.readLine(); line != null; line = br.readLine()) {
+            processLine(statsMap, WHITESPACE_PATTERN.split(line));
+        }
+        return statsMap.values().toArray(new VmNumaNodeStat[statsMap.size()]);
+    }
+
+    private void processLine(Map<Integer, VmNumaNodeStat> map, String[] tokens) {
+        for (String tok : tokens) {
+            Matcher matcher = NODE_PATTERN.matcher(tok);
+            if (matcher.matches()) {
+                int nodeNumber = Integer.parseInt(matcher.group(1));
+                if (!map.containsKey(nodeNumber)) {
+                    VmNumaNodeStat stat = new VmNumaNodeStat();
+                    stat.setNode(nodeNumber);
+                    map.put(nodeNumber, stat);
+                }
+
+                Category category = selectCategory(tokens);
+                double value = Double.parseDouble(matcher.group(2));
+                value *= getMultiplier(category);
+                value /= (double) MEGABYTE;
+
+                VmNumaNodeStat stat = map.get(nodeNumber);
+                updateStat(stat, category, value);
+            }
+        }
+    }
+
+    private Category selectCategory(String[] tokens) {
+        for (String tok : tokens) {
+            for (Category c : Category.values()) {
+                if (tok.startsWith(c.getToken())) {
+                    return c;
+                }
+            }
+        }
+        return Category.PRIVATE;
+    }
+
+    private long getMultiplier(Category category) {
+        switch (category) {
+            case HUGE:
+                return pageSizeProvider.getHugePageSize();
+            default:
+                return pageSizeProvider.getPageSize();
+        }
+    }
+
+    private void updateStat(VmNumaNodeStat stat, Category category, double value) {
+        switch (category) {
+            case PRIVATE:
+                stat.setPrivateMemory(stat.getPrivateMemory() + value);
+                break;
+            case HEAP:
+                stat.setHeapMemory(stat.getHeapMemory() + value);
+                break;
+            case STACK:
+                stat.setStackMemory(stat.getStackMemory() + value);
+                break;
+            case HUGE:
+                stat.setHugeMemory(stat.getHugeMemory() + value);
+                break;
+            default:
+                throw new IllegalStateException("Invalid category: " + category);
+        }
+    }
+
+}
+
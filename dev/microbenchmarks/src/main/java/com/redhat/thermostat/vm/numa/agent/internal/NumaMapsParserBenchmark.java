@@ -0,0 +1,147 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+
+package com.redhat.thermostat.vm.numa.agent.internal;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.redhat.thermostat.common.SystemClock;
+import com.redhat.thermostat.vm.numa.common.VmNumaNodeStat;
+import com.redhat.thermostat.vm.numa.common.VmNumaStat;
+
+/**
+ * Compares the regular expression based parsing of numa_maps (as performed
+ * before {@link NumaMapsParser} was introduced) with {@link VmNumaCollector}.
+ * The input is a numa_maps file recorded from a JVM on a two node machine,
+ * repeated until it has the requested number of lines.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NumaMapsParserBenchmark {
+
+    private static final String FIXTURE = "/numa_maps/jvm-2-nodes";
+
+    @Param({"1000", "50000"})
+    private int lines;
+
+    private byte[] numaMaps;
+    private LegacyNumaMapsParser legacy;
+    private VmNumaCollector collector;
+
+    @Setup
+    public void setup() throws IOException {
+        numaMaps = repeat(readFixture(), lines);
+        PageSizeProvider pageSizeProvider = new PageSizeProvider() {
+            @Override
+            public long getPageSize() {
+                return 4096;
+            }
+            @Override
+            public long getHugePageSize() {
+                return 2 * 1024 * 1024;
+            }
+        };
+        legacy = new LegacyNumaMapsParser(pageSizeProvider);
+        NumaMapsReaderProvider readerProvider = new NumaMapsReaderProvider() {
+            @Override
+            public InputStream createInputStream(int forPid) {
+                return new ByteArrayInputStream(numaMaps);
+            }
+        };
+        collector = new VmNumaCollector(0, new SystemClock(), readerProvider, pageSizeProvider);
+    }
+
+    @Benchmark
+    public VmNumaNodeStat[] legacyRegex() throws IOException {
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(
+                new ByteArrayInputStream(numaMaps), StandardCharsets.US_ASCII))) {
+            return legacy.collect(br);
+        }
+    }
+
+    @Benchmark
+    public VmNumaStat byteParser() throws IOException {
+        return collector.collect();
+    }
+
+    private static String[] readFixture() throws IOException {
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(
+                NumaMapsParserBenchmark.class.getResourceAsStream(FIXTURE), StandardCharsets.US_ASCII))) {
+            List<String> fixtureLines = new ArrayList<>();
+            for (String line = br.readLine(); line != null; line = br.readLine()) {
+                fixtureLines.add(line);
+            }
+            return fixtureLines.toArray(new String[fixtureLines.size()]);
+        }
+    }
+
+    private static byte[] repeat(String[] fixtureLines, int count) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < count; i++) {
+            byte[] line = (fixtureLines[i % fixtureLines.length] + "\n").getBytes(StandardCharsets.US_ASCII);
+            out.write(line, 0, line.length);
+        }
+        return out.toByteArray();
+    }
+
+}
+
@@ -0,0 +1,230 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.web.common.binary;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.redhat.thermostat.storage.core.Entity;
+import com.redhat.thermostat.storage.core.Persist;
+import com.redhat.thermostat.storage.model.BasePojo;
+import com.redhat.thermostat.storage.model.TimeStampedPojo;
+import com.redhat.thermostat.web.common.WebQueryResponse;
+import com.redhat.thermostat.web.common.typeadapters.PojoTypeAdapterFactory;
+import com.redhat.thermostat.web.common.typeadapters.WebQueryResponseTypeAdapterFactory;
+
+/**
+ * Compares encoding and decoding a batch of query results as JSON and in
+ * the binary encoding, each with and without gzip compression. The encoded
+ * sizes get printed at the end of each trial.
+ * <p>
+ * The payload is a synthesized batch of CPU-usage-like samples as returned
+ * by a typical time range query.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WireFormatBenchmark {
+
+    @Param({ "false", "true" })
+    public boolean gzip;
+    
+    @Param({ "100", "1000" })
+    public int batchSize;
+    
+    private Gson gson;
+    private Type responseType;
+    private BinaryWebQueryResponseCodec codec;
+    private WebQueryResponse<CpuSample> response;
+    private byte[] json;
+    private byte[] binary;
+
+    @Setup
+    public void setup() throws IOException {
+        gson = new GsonBuilder()
+                .registerTypeAdapterFactory(new PojoTypeAdapterFactory())
+                .registerTypeAdapterFactory(new WebQueryResponseTypeAdapterFactory())
+                .create();
+        codec = new BinaryWebQueryResponseCodec(gson);
+        response = new WebQueryResponse<>();
+        responseType = response.getRuntimeParametrizedType(CpuSample.class);
+        CpuSample[] samples = new CpuSample[batchSize];
+        long timeStamp = 1450000000000L;
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = new CpuSample();
+            samples[i].setAgentId("3a4c1d7e-5b2f-4e8a-9c6d-0f1e2d3c4b5a");
+            samples[i].setVmId("8b7a6c5d-4e3f-4a1b-8c2d-3e4f5a6b7c8d");
+            samples[i].setTimeStamp(timeStamp + i * 1000L);
+            samples[i].setCpuLoad((i % 100) / 3.0);
+            samples[i].setThreadCount(20 + i % 7);
+        }
+        response.setResultList(samples);
+        response.setCursorId(1);
+        response.setHasMoreBatches(true);
+        json = encodeJson();
+        binary = encodeBinary();
+    }
+    
+    @TearDown(Level.Trial)
+    public void printSizes() {
+        System.out.println();
+        System.out.println("Encoded sizes (gzip=" + gzip + ", batchSize=" + batchSize + "): JSON "
+                + json.length + " bytes, binary " + binary.length + " bytes");
+    }
+
+    @Benchmark
+    public byte[] encodeJson() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = wrap(bytes)) {
+            out.write(gson.toJson(response, WebQueryResponse.class).getBytes("UTF-8"));
+        }
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] encodeBinary() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = wrap(bytes)) {
+            codec.write(response, out);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public WebQueryResponse<CpuSample> decodeJson() throws IOException {
+        try (InputStreamReader reader = new InputStreamReader(unwrap(json), "UTF-8")) {
+            return gson.fromJson(reader, responseType);
+        }
+    }
+
+    @Benchmark
+    public WebQueryResponse<CpuSample> decodeBinary() throws IOException {
+        try (InputStream in = unwrap(binary)) {
+            return codec.read(in, CpuSample.class);
+        }
+    }
+    
+    private OutputStream wrap(OutputStream out) throws IOException {
+        return gzip ? new GZIPOutputStream(out) : out;
+    }
+    
+    private InputStream unwrap(byte[] bytes) throws IOException {
+        InputStream in = new ByteArrayInputStream(bytes);
+        return gzip ? new GZIPInputStream(in) : in;
+    }
+
+    @Entity
+    public static class CpuSample extends BasePojo implements TimeStampedPojo {
+
+        private long timeStamp;
+        private String vmId;
+        private double cpuLoad;
+        private int threadCount;
+
+        public CpuSample() {
+            super(null);
+        }
+
+        @Persist
+        @Override
+        public long getTimeStamp() {
+            return timeStamp;
+        }
+
+        @Persist
+        public void setTimeStamp(long timeStamp) {
+            this.timeStamp = timeStamp;
+        }
+
+        @Persist
+        public String getVmId() {
+            return vmId;
+        }
+
+        @Persist
+        public void setVmId(String vmId) {
+            this.vmId = vmId;
+        }
+
+        @Persist
+        public double getCpuLoad() {
+            return cpuLoad;
+        }
+
+        @Persist
+        public void setCpuLoad(double cpuLoad) {
+            this.cpuLoad = cpuLoad;
+        }
+
+        @Persist
+        public int getThreadCount() {
+            return threadCount;
+        }
+
+        @Persist
+        public void setThreadCount(int threadCount) {
+            this.threadCount = threadCount;
+        }
+    }
+}
@@ -36,23 +36,15 @@
 
 package com.redhat.thermostat.host.cpu.agent.internal;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.util.logging.Level;
-import java.util.logging.Logger;
-
-import com.redhat.thermostat.common.portability.linux.ProcDataSource;
+import com.redhat.thermostat.common.portability.linux.ProcReader;
 import com.redhat.thermostat.common.Clock;
-import com.redhat.thermostat.common.utils.LoggingUtils;
 import com.redhat.thermostat.host.cpu.common.model.CpuStat;
 import com.redhat.thermostat.shared.config.OS;
 import com.redhat.thermostat.storage.core.WriterID;
 
 public class CpuStatBuilder {
 
-    private static final Logger logger = LoggingUtils.getLogger(CpuStatBuilder.class);
-
-    private final ProcDataSource dataSource;
+    private final ProcReader procReader;
     private final Clock clock;
     private final long ticksPerSecond;
     private final WriterID writerId;
@@ -60,11 +52,13 @@ public class CpuStatBuilder {
     private boolean initialized = false;
 
     private long[] previousCpuTicks;
+    // the array of the sample before the previous one, reused for the next sample
+    private long[] spareCpuTicks = new long[0];
     private long previousTime;
 
-    public CpuStatBuilder(Clock clock, ProcDataSource dataSource, long ticksPerSecond, WriterID writerId) {
+    public CpuStatBuilder(Clock clock, ProcReader procReader, long ticksPerSecond, WriterID writerId) {
         this.writerId = writerId;
-        this.dataSource = dataSource;
+        this.procReader = procReader;
         this.clock = clock;
         this.ticksPerSecond = ticksPerSecond;
     }
@@ -75,7 +69,7 @@ public class CpuStatBuilder {
         }
 
         previousTime = clock.getMonotonicTimeNanos();
-        previousCpuTicks = OS.IS_LINUX ? getCurrentCpuTicksLinux() : getCurrentCpuTicks();
+        previousCpuTicks = OS.IS_LINUX ? getCurrentCpuTicksLinux(spareCpuTicks) : getCurrentCpuTicks();
         initialized = true;
     }
 
@@ -86,7 +80,7 @@ public class CpuStatBuilder {
 
         long currentRealTime = clock.getRealTimeMillis();
         long currentTime = clock.getMonotonicTimeNanos();
-        long[] currentValues = OS.IS_LINUX ? getCurrentCpuTicksLinux() : getCurrentCpuTicks();
+        long[] currentValues = OS.IS_LINUX ? getCurrentCpuTicksLinux(spareCpuTicks) : getCurrentCpuTicks();
 
         double[] cpuUsage = new double[currentValues.length];
 
@@ -97,39 +91,25 @@ public class CpuStatBuilder {
             cpuUsage[i] = cpuTicksDelta * (100.0 / timeDelta / ticksPerSecond);
         }
         previousTime = currentTime;
+        spareCpuTicks = previousCpuTicks;
         previousCpuTicks = currentValues;
         String wId = writerId.getWriterID();
 
         return new CpuStat(wId, currentRealTime, cpuUsage);
     }
 
-    private long[] getCurrentCpuTicksLinux() {
-        int maxIndex = 0;
-        long[] values = new long[1];
-        try (BufferedReader reader = new BufferedReader(dataSource.getStatReader())) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (!line.startsWith("cpu")) {
-                    continue;
-                }
-                String[] parts = line.split("\\s");
-                if (!parts[0].matches("cpu\\d+")) {
-                    continue;
-                }
-
-                int cpuIndex = Integer.valueOf(parts[0].substring("cpu".length()));
-                if (cpuIndex > maxIndex) {
-                    long[] newValues = new long[cpuIndex+1];
-                    System.arraycopy(values, 0, newValues, 0, cpuIndex);
-                    values = newValues;
-                    maxIndex = cpuIndex;
-                }
-                values[cpuIndex] = Long.valueOf(parts[1]) + Long.valueOf(parts[2]) + Long.valueOf(parts[3]);
-            }
-        } catch (IOException e) {
-            logger.log(Level.WARNING, "error reading stat file", e);
+    private long[] getCurrentCpuTicksLinux(long[] reuse) {
+        long[] values = reuse;
+        int cpuCount = procReader.readCpuTicks(values);
+        if (cpuCount > 0 && cpuCount != values.length) {
+            // the number of cpus changed, or there was no array to reuse
+            values = new long[cpuCount];
+            cpuCount = procReader.readCpuTicks(values);
+        }
+        if (cpuCount != values.length) {
+            // the stat file could not be read
+            return new long[1];
         }
-
         return values;
     }
 
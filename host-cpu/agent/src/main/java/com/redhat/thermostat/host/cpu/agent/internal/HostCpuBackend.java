@@ -38,7 +38,7 @@ package com.redhat.thermostat.host.cpu.agent.internal;
 
 import java.util.concurrent.ScheduledExecutorService;
 
-import com.redhat.thermostat.common.portability.linux.ProcDataSource;
+import com.redhat.thermostat.common.portability.linux.ProcReader;
 import com.redhat.thermostat.common.portability.SysConf;
 import com.redhat.thermostat.backend.HostPollingAction;
 import com.redhat.thermostat.backend.HostPollingBackend;
@@ -67,8 +67,7 @@ public class HostCpuBackend extends HostPollingBackend {
         CpuProcBackendAction(final WriterID id, CpuStatDAO dao) {
             Clock clock = new SystemClock();
             long ticksPerSecond = SysConf.getClockTicksPerSecond();
-            ProcDataSource source = new ProcDataSource();
-            builder = new CpuStatBuilder(clock, source, ticksPerSecond, id);
+            builder = new CpuStatBuilder(clock, new ProcReader(), ticksPerSecond, id);
             this.dao = dao;
         }
 
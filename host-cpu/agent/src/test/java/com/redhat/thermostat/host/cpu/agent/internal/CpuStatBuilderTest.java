@@ -38,30 +38,31 @@ package com.redhat.thermostat.host.cpu.agent.internal;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.StringReader;
-
+import org.junit.Assume;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
-import com.redhat.thermostat.common.portability.linux.ProcDataSource;
+import com.redhat.thermostat.common.portability.linux.ProcReader;
 import com.redhat.thermostat.common.Clock;
 import com.redhat.thermostat.common.SystemClock;
 import com.redhat.thermostat.host.cpu.common.model.CpuStat;
+import com.redhat.thermostat.shared.config.OS;
 import com.redhat.thermostat.storage.core.WriterID;
 
 public class CpuStatBuilderTest {
 
     @Test
     public void testSimpleBuild() {
-        ProcDataSource dataSource = new ProcDataSource();
+        ProcReader procReader = new ProcReader();
         WriterID writerId = mock(WriterID.class);
-        CpuStatBuilder builder= new CpuStatBuilder(new SystemClock(), dataSource, 100l, writerId);
+        CpuStatBuilder builder= new CpuStatBuilder(new SystemClock(), procReader, 100l, writerId);
         builder.initialize();
         CpuStat stat = builder.build();
         assertNotNull(stat);
@@ -70,46 +71,77 @@ public class CpuStatBuilderTest {
     @Test (expected=IllegalStateException.class)
     public void buildWithoutInitializeThrowsException() {
         Clock clock = mock(Clock.class);
-        ProcDataSource dataSource = mock(ProcDataSource.class);
+        ProcReader procReader = mock(ProcReader.class);
         long ticksPerSecond = 1;
-        CpuStatBuilder builder = new CpuStatBuilder(clock, dataSource, ticksPerSecond, null);
+        CpuStatBuilder builder = new CpuStatBuilder(clock, procReader, ticksPerSecond, null);
         builder.build();
     }
 
     @Test
-    public void testBuildCpuStatFromFile() throws IOException {
+    public void testBuildCpuStatFromFile() {
         long CLOCK1 = 1000;
         long CLOCK2 = 2000;
 
-        String firstReadContents =
-            "cpu 100 0 0 1000 1000\n" +
-            "cpu0 100 0 0 1000 1000\n" +
-            "cpu1 10 80 10 1000 1000\n";
-        BufferedReader reader1 = new BufferedReader(new StringReader(firstReadContents));
-
-        String secondReadContents =
-            "cpu 400 0 0 1000 1000\n" +
-            "cpu0 200 0 0 1000 1000\n" +
-            "cpu1 30 50 120 1000 1000\n";
-        BufferedReader reader2 = new BufferedReader(new StringReader(secondReadContents));
+        // user + nice + system of cpu0 and cpu1, as read from
+        // "cpu0 100 0 0 1000 1000" and "cpu1 10 80 10 1000 1000"
+        final long[] firstReadTicks = new long[] { 100, 100 };
+        // "cpu0 200 0 0 1000 1000" and "cpu1 30 50 120 1000 1000"
+        final long[] secondReadTicks = new long[] { 200, 200 };
 
         long ticksPerSecond = 100;
         Clock clock = mock(Clock.class);
         when(clock.getRealTimeMillis()).thenReturn(CLOCK2);
         when(clock.getMonotonicTimeNanos()).thenReturn((long)(CLOCK1 * 1E6)).thenReturn((long)(CLOCK2 * 1E6));
 
-        ProcDataSource dataSource = mock(ProcDataSource.class);
-        when(dataSource.getStatReader()).thenReturn(reader1).thenReturn(reader2);
+        // the first read of each sample sizes the array
+        ProcReader procReader = mock(ProcReader.class);
+        when(procReader.readCpuTicks(any(long[].class)))
+                .thenAnswer(new CpuTicksAnswer(firstReadTicks))
+                .thenAnswer(new CpuTicksAnswer(firstReadTicks))
+                .thenAnswer(new CpuTicksAnswer(secondReadTicks));
         WriterID writerId = mock(WriterID.class);
-        CpuStatBuilder builder = new CpuStatBuilder(clock, dataSource, ticksPerSecond, writerId);
+        CpuStatBuilder builder = new CpuStatBuilder(clock, procReader, ticksPerSecond, writerId);
 
         builder.initialize();
 
         CpuStat stat = builder.build();
 
-        verify(dataSource, times(2)).getStatReader();
         assertArrayEquals(new double[] {100, 100}, stat.getPerProcessorUsage(), 0.01);
     }
 
+    @Test
+    public void testBuildReusesTickArrays() {
+        Assume.assumeTrue(OS.IS_LINUX);
+        Clock clock = mock(Clock.class);
+        when(clock.getMonotonicTimeNanos()).thenReturn(0l).thenReturn(1000000000l).thenReturn(2000000000l);
+        ProcReader procReader = mock(ProcReader.class);
+        when(procReader.readCpuTicks(any(long[].class))).thenAnswer(new CpuTicksAnswer(new long[] { 0, 0 }));
+        CpuStatBuilder builder = new CpuStatBuilder(clock, procReader, 100, mock(WriterID.class));
+
+        builder.initialize();
+        builder.build();
+        builder.build();
+
+        // sizing the arrays on initialize and on the first build takes one
+        // extra read each, later builds reuse the arrays
+        verify(procReader, times(5)).readCpuTicks(any(long[].class));
+    }
+
+    private static class CpuTicksAnswer implements Answer<Integer> {
+
+        private final long[] ticks;
+
+        private CpuTicksAnswer(long[] ticks) {
+            this.ticks = ticks;
+        }
+
+        @Override
+        public Integer answer(InvocationOnMock invocation) throws Throwable {
+            long[] into = (long[]) invocation.getArguments()[0];
+            System.arraycopy(ticks, 0, into, 0, Math.min(ticks.length, into.length));
+            return ticks.length;
+        }
+    }
+
 }
 
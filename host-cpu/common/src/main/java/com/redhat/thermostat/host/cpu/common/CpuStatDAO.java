@@ -44,6 +44,7 @@ import com.redhat.thermostat.host.cpu.common.model.CpuStat;
 import com.redhat.thermostat.storage.core.HostRef;
 import com.redhat.thermostat.storage.core.Category;
 import com.redhat.thermostat.storage.core.HostTimeIntervalPojoListGetter;
+import com.redhat.thermostat.storage.core.DataRollup;
 import com.redhat.thermostat.storage.core.Key;
 
 @Service
@@ -52,7 +53,8 @@ public interface CpuStatDAO {
     static Key<List<Double>> cpuLoadKey = new Key<>("perProcessorUsage");
 
     static final Category<CpuStat> cpuStatCategory = new Category<>("cpu-stats", CpuStat.class,
-            Arrays.<Key<?>>asList(Key.AGENT_ID, Key.TIMESTAMP, cpuLoadKey), Arrays.<Key<?>>asList(Key.TIMESTAMP));
+            Arrays.<Key<?>>asList(Key.AGENT_ID, Key.TIMESTAMP, cpuLoadKey), Arrays.<Key<?>>asList(Key.TIMESTAMP),
+            null, DataRollup.of(Key.AGENT_ID));
 
     List<CpuStat> getLatestCpuStats(HostRef ref, long since);
 
@@ -0,0 +1,339 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.launcher;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Message format spoken between the resident launcher (the
+ * {@code launcher-daemon} command) and the thin client used by
+ * {@code thermostat} when a resident launcher is running.
+ * <p>
+ * A client sends a {@link RequestType#RUN} request carrying the command line.
+ * The daemon either rejects it, in which case the client boots the OSGi
+ * framework as usual, or runs it and replies with the exit status and the
+ * sizes of the captured standard output and standard error. The captured
+ * bytes are then pulled with {@link RequestType#FETCH} requests of at most
+ * {@link #MAX_CHUNK_SIZE} bytes each, since IPC messages are size-limited.
+ * Fetching the end of {@link Output#ERR} releases the result on the daemon
+ * side, so clients always fetch standard error last and at least once.
+ */
+public final class ResidentLauncherProtocol {
+
+    /** Name of the IPC server created by the resident launcher. */
+    public static final String SERVER_NAME = "launcher-daemon";
+
+    /**
+     * Properties file in the user runtime data directory that exists while a
+     * resident launcher is running.
+     */
+    public static final String MARKER_FILE_NAME = "launcher-daemon.properties";
+
+    /** Key in the marker file pointing to the IPC configuration in use. */
+    public static final String MARKER_IPC_CONFIG_KEY = "ipc.config";
+
+    /** Largest payload returned for a single fetch. */
+    public static final int MAX_CHUNK_SIZE = 0x10000; // 64 KiB
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    public enum RequestType {
+        RUN,
+        FETCH,
+    }
+
+    public enum ResponseType {
+        ACCEPTED,
+        REJECTED,
+        DATA,
+        UNKNOWN_RESULT,
+    }
+
+    public enum Output {
+        OUT,
+        ERR,
+    }
+
+    public static final class Request {
+
+        private final RequestType type;
+        private final String[] arguments;
+        private final long resultId;
+        private final Output output;
+        private final int offset;
+
+        private Request(RequestType type, String[] arguments, long resultId, Output output, int offset) {
+            this.type = type;
+            this.arguments = arguments;
+            this.resultId = resultId;
+            this.output = output;
+            this.offset = offset;
+        }
+
+        public static Request run(String[] arguments) {
+            return new Request(RequestType.RUN, Objects.requireNonNull(arguments), -1, null, 0);
+        }
+
+        public static Request fetch(long resultId, Output output, int offset) {
+            return new Request(RequestType.FETCH, null, resultId, Objects.requireNonNull(output), offset);
+        }
+
+        public RequestType getType() {
+            return type;
+        }
+
+        /** Command line of a {@link RequestType#RUN} request. */
+        public String[] getArguments() {
+            return arguments;
+        }
+
+        public long getResultId() {
+            return resultId;
+        }
+
+        public Output getOutput() {
+            return output;
+        }
+
+        public int getOffset() {
+            return offset;
+        }
+
+        @Override
+        public String toString() {
+            if (type == RequestType.RUN) {
+                return type + Arrays.toString(arguments);
+            }
+            return type + "[" + resultId + ", " + output + ", " + offset + "]";
+        }
+    }
+
+    public static final class Response {
+
+        private final ResponseType type;
+        private final long resultId;
+        private final int exitStatus;
+        private final int outLength;
+        private final int errLength;
+        private final byte[] data;
+
+        private Response(ResponseType type, long resultId, int exitStatus, int outLength, int errLength, byte[] data) {
+            this.type = type;
+            this.resultId = resultId;
+            this.exitStatus = exitStatus;
+            this.outLength = outLength;
+            this.errLength = errLength;
+            this.data = data;
+        }
+
+        public static Response accepted(long resultId, int exitStatus, int outLength, int errLength) {
+            return new Response(ResponseType.ACCEPTED, resultId, exitStatus, outLength, errLength, null);
+        }
+
+        public static Response rejected() {
+            return new Response(ResponseType.REJECTED, -1, 0, 0, 0, null);
+        }
+
+        public static Response data(byte[] data) {
+            return new Response(ResponseType.DATA, -1, 0, 0, 0, Objects.requireNonNull(data));
+        }
+
+        public static Response unknownResult() {
+            return new Response(ResponseType.UNKNOWN_RESULT, -1, 0, 0, 0, null);
+        }
+
+        public ResponseType getType() {
+            return type;
+        }
+
+        public long getResultId() {
+            return resultId;
+        }
+
+        public int getExitStatus() {
+            return exitStatus;
+        }
+
+        public int getLength(Output output) {
+            return output == Output.OUT ? outLength : errLength;
+        }
+
+        /** Payload of a {@link ResponseType#DATA} response. */
+        public byte[] getData() {
+            return data;
+        }
+    }
+
+    private ResidentLauncherProtocol() {
+        // static utility class
+    }
+
+    public static ByteBuffer encode(Request request) {
+        switch (request.type) {
+        case RUN:
+            byte[][] encodedArgs = new byte[request.arguments.length][];
+            int size = 8;
+            for (int i = 0; i < encodedArgs.length; i++) {
+                encodedArgs[i] = request.arguments[i].getBytes(UTF_8);
+                size += 4 + encodedArgs[i].length;
+            }
+            ByteBuffer run = ByteBuffer.allocate(size);
+            run.putInt(RequestType.RUN.ordinal());
+            run.putInt(encodedArgs.length);
+            for (byte[] arg : encodedArgs) {
+                run.putInt(arg.length);
+                run.put(arg);
+            }
+            run.flip();
+            return run;
+        case FETCH:
+            ByteBuffer fetch = ByteBuffer.allocate(20);
+            fetch.putInt(RequestType.FETCH.ordinal());
+            fetch.putLong(request.resultId);
+            fetch.putInt(request.output.ordinal());
+            fetch.putInt(request.offset);
+            fetch.flip();
+            return fetch;
+        default:
+            throw new AssertionError("Unknown request type: " + request.type);
+        }
+    }
+
+    public static Request decodeRequest(ByteBuffer buf) throws IOException {
+        try {
+            RequestType type = valueOf(RequestType.values(), buf.getInt());
+            switch (type) {
+            case RUN:
+                int argc = checkLength(buf.getInt(), buf);
+                String[] args = new String[argc];
+                for (int i = 0; i < argc; i++) {
+                    byte[] arg = new byte[checkLength(buf.getInt(), buf)];
+                    buf.get(arg);
+                    args[i] = new String(arg, UTF_8);
+                }
+                return Request.run(args);
+            case FETCH:
+                long resultId = buf.getLong();
+                Output output = valueOf(Output.values(), buf.getInt());
+                int offset = checkLength(buf.getInt(), null);
+                return Request.fetch(resultId, output, offset);
+            default:
+                throw new AssertionError("Unknown request type: " + type);
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated request", e);
+        }
+    }
+
+    public static ByteBuffer encode(Response response) {
+        ByteBuffer buf;
+        switch (response.type) {
+        case ACCEPTED:
+            buf = ByteBuffer.allocate(24);
+            buf.putInt(ResponseType.ACCEPTED.ordinal());
+            buf.putLong(response.resultId);
+            buf.putInt(response.exitStatus);
+            buf.putInt(response.outLength);
+            buf.putInt(response.errLength);
+            break;
+        case DATA:
+            buf = ByteBuffer.allocate(8 + response.data.length);
+            buf.putInt(ResponseType.DATA.ordinal());
+            buf.putInt(response.data.length);
+            buf.put(response.data);
+            break;
+        case REJECTED:
+        case UNKNOWN_RESULT:
+            buf = ByteBuffer.allocate(4);
+            buf.putInt(response.type.ordinal());
+            break;
+        default:
+            throw new AssertionError("Unknown response type: " + response.type);
+        }
+        buf.flip();
+        return buf;
+    }
+
+    public static Response decodeResponse(ByteBuffer buf) throws IOException {
+        try {
+            ResponseType type = valueOf(ResponseType.values(), buf.getInt());
+            switch (type) {
+            case ACCEPTED:
+                long resultId = buf.getLong();
+                int exitStatus = buf.getInt();
+                int outLength = checkLength(buf.getInt(), null);
+                int errLength = checkLength(buf.getInt(), null);
+                return Response.accepted(resultId, exitStatus, outLength, errLength);
+            case DATA:
+                byte[] data = new byte[checkLength(buf.getInt(), buf)];
+                buf.get(data);
+                return Response.data(data);
+            case REJECTED:
+                return Response.rejected();
+            case UNKNOWN_RESULT:
+                return Response.unknownResult();
+            default:
+                throw new AssertionError("Unknown response type: " + type);
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated response", e);
+        }
+    }
+
+    private static <T extends Enum<T>> T valueOf(T[] values, int ordinal) throws IOException {
+        if (ordinal < 0 || ordinal >= values.length) {
+            throw new IOException("Unknown " + values.getClass().getComponentType().getSimpleName() + ": " + ordinal);
+        }
+        return values[ordinal];
+    }
+
+    /*
+     * Rejects negative lengths, and lengths that cannot possibly fit in the
+     * remaining message, before anything gets allocated for them.
+     */
+    private static int checkLength(int length, ByteBuffer buf) throws IOException {
+        if (length < 0 || (buf != null && length > buf.remaining())) {
+            throw new IOException("Invalid length: " + length);
+        }
+        return length;
+    }
+}
@@ -44,6 +44,7 @@ import com.redhat.thermostat.common.MultipleServiceTracker.Action;
 import com.redhat.thermostat.common.MultipleServiceTracker.DependencyProvider;
 import com.redhat.thermostat.common.NotImplementedException;
 import com.redhat.thermostat.common.ThermostatExtensionRegistry;
+import com.redhat.thermostat.common.Version;
 import com.redhat.thermostat.common.cli.CommandContextFactory;
 import com.redhat.thermostat.common.cli.CommandRegistry;
 import com.redhat.thermostat.common.cli.CommandRegistryImpl;
@@ -95,6 +96,7 @@ public class Activator implements BundleActivator {
             ClientPreferences prefs = new ClientPreferences(paths);
             SSLConfiguration sslConf = services.get(SSLConfiguration.class);
 
+            String thermostatVersion = new Version().getVersionNumber();
             String commandsDir = new File(paths.getSystemConfigurationDirectory(), "commands").toString();
             CommandInfoSource builtInCommandSource =
                     new BuiltInCommandInfoSource(commandsDir, paths.getSystemLibRoot().toString());
@@ -103,7 +105,9 @@ public class Activator implements BundleActivator {
                             paths.getSystemPluginRoot().toString(),
                             paths.getUserPluginRoot().toString(),
                             paths.getSystemPluginConfigurationDirectory().toString(),
-                            paths.getUserPluginConfigurationDirectory().toString());
+                            paths.getUserPluginConfigurationDirectory().toString(),
+                            paths.getUserCacheDirectory().toString(),
+                            thermostatVersion);
 
             ConfigurationInfoSource configurations = pluginSource;
             pluginConfReg = context.registerService(ConfigurationInfoSource.class, configurations, null);
@@ -115,7 +119,7 @@ public class Activator implements BundleActivator {
 
             BundleManager bundleService = null;
             try {
-                bundleService = new BundleManagerImpl(paths);
+                bundleService = new BundleManagerImpl(paths, thermostatVersion);
             } catch (IOException e) {
                 throw new RuntimeException("Could not initialize launcher.", e);
             }
@@ -72,6 +72,7 @@ import com.redhat.thermostat.shared.config.CommonPaths;
 public class BundleManagerImpl extends BundleManager {
 
     private static final Logger logger = LoggingUtils.getLogger(BundleManagerImpl.class);
+    private static final String METADATA_CACHE_FILE = "bundle-metadata.properties";
     private final String SYSTEM_BSN = getFramework(BundleManagerImpl.class).getSymbolicName();
 
     // Bundle Name and version -> path (with symlinks resolved)
@@ -85,19 +86,30 @@ public class BundleManagerImpl extends BundleManager {
     private boolean ignoreBundleVersions = false;
     private BundleLoader loader;
 
-    BundleManagerImpl(CommonPaths paths) throws FileNotFoundException, IOException {
+    /**
+     * @param thermostatVersion the running version of Thermostat; bundle
+     * metadata cached by other versions is scanned again
+     */
+    BundleManagerImpl(CommonPaths paths, String thermostatVersion) throws FileNotFoundException, IOException {
         known = new HashMap<>();
 
         this.paths = paths;
         loader = new BundleLoader();
 
-        scanForBundles(paths, known);
+        FileMetadataCache cache = new FileMetadataCache(getMetadataCacheFile(paths), thermostatVersion);
+        scanForBundles(paths, known, cache);
+        cache.save();
+    }
+
+    private static File getMetadataCacheFile(CommonPaths paths) {
+        File cacheDir = paths.getUserCacheDirectory();
+        return cacheDir == null ? null : new File(cacheDir, METADATA_CACHE_FILE);
     }
 
-    private static void scanForBundles(CommonPaths paths, Map<BundleInformation, Path> known) {
+    private static void scanForBundles(CommonPaths paths, Map<BundleInformation, Path> known, FileMetadataCache cache) {
         long t1 = System.nanoTime();
 
-        final FileInspector inspector = new FileInspector(known);
+        final FileInspector inspector = new FileInspector(known, cache);
         try {
             // Don't scan libs folder recursively. We only do that for the
             // plugins folders
@@ -243,9 +255,15 @@ public class BundleManagerImpl extends BundleManager {
     static class FileInspector {
         
         private Map<BundleInformation, Path> knownFiles;
+        private FileMetadataCache cache;
         
         FileInspector(Map<BundleInformation, Path> known) {
+            this(known, new FileMetadataCache());
+        }
+
+        FileInspector(Map<BundleInformation, Path> known, FileMetadataCache cache) {
             knownFiles = known;
+            this.cache = cache;
         }
         
         /**
@@ -256,14 +274,17 @@ public class BundleManagerImpl extends BundleManager {
          */
         void inspectFile(File file) {
             if (file.getName().endsWith(".jar")) {
-                try (JarFile jf = new JarFile(file)) {
-                    Manifest mf = jf.getManifest();
-                    String name = mf.getMainAttributes().getValue(Constants.BUNDLE_SYMBOLICNAME);
-                    String version = mf.getMainAttributes().getValue(Constants.BUNDLE_VERSION);
-                    if (name == null || version == null) {
+                try {
+                    // name and version, or nothing for jars that are not bundles
+                    String[] metadata = cache.get(file);
+                    if (metadata == null) {
+                        metadata = readBundleMetadata(file);
+                        cache.put(file, metadata);
+                    }
+                    if (metadata.length != 2) {
                         logger.finer("file " + file.toString() + " is missing osgi metadata; wont be usable for dependencies");
                     } else {
-                        BundleInformation info = new BundleInformation(name, version);
+                        BundleInformation info = new BundleInformation(metadata[0], metadata[1]);
                         Path old = knownFiles.get(info);
                         // Path is completely resolved. First one wins.
                         if (old == null) {
@@ -280,6 +301,21 @@ public class BundleManagerImpl extends BundleManager {
                 }
             }
         }
+
+        private static String[] readBundleMetadata(File file) throws IOException {
+            try (JarFile jf = new JarFile(file)) {
+                Manifest mf = jf.getManifest();
+                if (mf == null) {
+                    return new String[0];
+                }
+                String name = mf.getMainAttributes().getValue(Constants.BUNDLE_SYMBOLICNAME);
+                String version = mf.getMainAttributes().getValue(Constants.BUNDLE_VERSION);
+                if (name == null || version == null) {
+                    return new String[0];
+                }
+                return new String[] { name, version };
+            }
+        }
     }
 }
 
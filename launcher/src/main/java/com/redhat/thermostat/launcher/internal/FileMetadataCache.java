@@ -0,0 +1,222 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.launcher.internal;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+import com.redhat.thermostat.common.utils.LoggingUtils;
+
+/**
+ * Remembers values derived from the contents of files across launcher
+ * invocations.
+ * <p>
+ * Values are keyed by the absolute path of the file and are only returned
+ * while the size and modification time of the file are those recorded when
+ * the values were stored. Entries not looked up or stored since the cache
+ * was loaded are dropped when it is saved.
+ * <p>
+ * A cache file is ignored unless it was written by the same version of
+ * Thermostat, since how values are derived may change between releases.
+ * A cache created without a backing file only lives in memory.
+ * <p>
+ * This class is not thread-safe.
+ */
+class FileMetadataCache {
+
+    private static final Logger logger = LoggingUtils.getLogger(FileMetadataCache.class);
+
+    /* Bump when the meaning of stored values changes */
+    private static final String FORMAT_VERSION = "1";
+    private static final String FORMAT_VERSION_KEY = "#format";
+    private static final String THERMOSTAT_VERSION_KEY = "#version";
+    private static final String SEPARATOR = "\t";
+    private static final Pattern SEPARATOR_PATTERN = Pattern.compile(SEPARATOR);
+
+    private final File cacheFile;
+    private final String thermostatVersion;
+    private final Map<String, Entry> loaded = new HashMap<>();
+    private final Map<String, Entry> current = new HashMap<>();
+    private boolean changed = false;
+
+    FileMetadataCache() {
+        this(null, null);
+    }
+
+    /**
+     * @param thermostatVersion the version of Thermostat using the cache;
+     * entries saved by any other version are not loaded
+     */
+    FileMetadataCache(File cacheFile, String thermostatVersion) {
+        this.cacheFile = cacheFile;
+        this.thermostatVersion = thermostatVersion;
+        if (cacheFile != null && cacheFile.isFile()) {
+            load();
+        }
+    }
+
+    /**
+     * @return the values stored for this file, or {@code null} if there are
+     * none or the file changed since they were stored.
+     */
+    String[] get(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        String key = file.getAbsolutePath();
+        Entry entry = current.get(key);
+        if (entry == null) {
+            entry = loaded.get(key);
+        }
+        if (entry == null || entry.size != file.length() || entry.lastModified != file.lastModified()) {
+            return null;
+        }
+        current.put(key, entry);
+        return entry.values.clone();
+    }
+
+    void put(File file, String... values) {
+        for (String value : values) {
+            if (value.contains(SEPARATOR) || value.contains("\n")) {
+                throw new IllegalArgumentException("unsupported value: " + value);
+            }
+        }
+        current.put(file.getAbsolutePath(), new Entry(file.length(), file.lastModified(), values.clone()));
+        changed = true;
+    }
+
+    /**
+     * Writes the cache back to its file, if anything changed. Failures are
+     * logged: the cache is only an optimization.
+     */
+    void save() {
+        if (cacheFile == null || (!changed && current.keySet().equals(loaded.keySet()))) {
+            return;
+        }
+        Properties properties = new Properties();
+        properties.setProperty(FORMAT_VERSION_KEY, FORMAT_VERSION);
+        properties.setProperty(THERMOSTAT_VERSION_KEY, thermostatVersion);
+        for (Map.Entry<String, Entry> entry : current.entrySet()) {
+            properties.setProperty(entry.getKey(), entry.getValue().toString());
+        }
+        File parent = cacheFile.getAbsoluteFile().getParentFile();
+        try {
+            Files.createDirectories(parent.toPath());
+            // write and rename so that concurrent launchers never see a partial file
+            File temp = File.createTempFile(cacheFile.getName(), ".tmp", parent);
+            try (OutputStream out = new FileOutputStream(temp)) {
+                properties.store(out, null);
+            }
+            Files.move(temp.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.log(Level.FINE, "unable to save " + cacheFile, e);
+        }
+    }
+
+    private void load() {
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(cacheFile)) {
+            properties.load(in);
+        } catch (IOException | IllegalArgumentException e) {
+            logger.log(Level.FINE, "ignoring unreadable " + cacheFile, e);
+            return;
+        }
+        if (!FORMAT_VERSION.equals(properties.getProperty(FORMAT_VERSION_KEY))
+                || !thermostatVersion.equals(properties.getProperty(THERMOSTAT_VERSION_KEY))) {
+            return;
+        }
+        for (String key : properties.stringPropertyNames()) {
+            if (key.equals(FORMAT_VERSION_KEY) || key.equals(THERMOSTAT_VERSION_KEY)) {
+                continue;
+            }
+            Entry entry = Entry.parse(properties.getProperty(key));
+            if (entry != null) {
+                loaded.put(key, entry);
+            }
+        }
+    }
+
+    private static class Entry {
+        private final long size;
+        private final long lastModified;
+        private final String[] values;
+
+        Entry(long size, long lastModified, String[] values) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.values = values;
+        }
+
+        static Entry parse(String text) {
+            String[] parts = SEPARATOR_PATTERN.split(text, -1);
+            if (parts.length < 2) {
+                return null;
+            }
+            try {
+                long size = Long.parseLong(parts[0]);
+                long lastModified = Long.parseLong(parts[1]);
+                String[] values = Arrays.copyOfRange(parts, 2, parts.length);
+                return new Entry(size, lastModified, values);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder result = new StringBuilder();
+            result.append(size).append(SEPARATOR).append(lastModified);
+            for (String value : values) {
+                result.append(SEPARATOR).append(value);
+            }
+            return result.toString();
+        }
+    }
+}
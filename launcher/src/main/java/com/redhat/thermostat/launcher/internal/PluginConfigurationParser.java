@@ -212,6 +212,15 @@ public class PluginConfigurationParser {
     public PluginConfiguration parse(File configurationFile) throws FileNotFoundException, PluginConfigurationValidatorException {
         PluginValidator validator = new PluginValidator();
         validator.validate(configurationFile);
+        return parseWithoutValidation(configurationFile);
+    }
+
+    /**
+     * Parses a configuration file that is known to be valid already, such as
+     * one that passed validation during an earlier launch and has not
+     * changed since.
+     */
+    PluginConfiguration parseWithoutValidation(File configurationFile) throws FileNotFoundException {
         PluginConfiguration config = null;
         try (FileInputStream fis = new FileInputStream(configurationFile)) {
             config = parse(configurationFile.getParentFile().getName(), fis);
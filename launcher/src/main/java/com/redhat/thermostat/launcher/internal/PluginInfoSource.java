@@ -80,6 +80,7 @@ import com.redhat.thermostat.plugin.validator.ValidationErrorsFormatter;
 public class PluginInfoSource implements CommandInfoSource, ConfigurationInfoSource, CommandGroupMetadataSource {
 
     private static final String PLUGIN_CONFIG_FILE = "thermostat-plugin.xml";
+    private static final String METADATA_CACHE_FILE = "plugin-metadata.properties";
 
     private static final Logger logger = LoggingUtils.getLogger(PluginInfoSource.class);
 
@@ -97,12 +98,34 @@ public class PluginInfoSource implements CommandInfoSource, ConfigurationInfoSou
     public PluginInfoSource(String internalJarRoot, String systemPluginRootDir, String userPluginRootDir, String sysConfRootDir, String userConfRootDir) {
         this(new File(internalJarRoot), new File(systemPluginRootDir), new File(userPluginRootDir),
                 new File(sysConfRootDir), new File(userConfRootDir),
-                new PluginConfigurationParser(), new UsageStringBuilder());
+                new PluginConfigurationParser(), new UsageStringBuilder(), new FileMetadataCache());
+    }
+
+    /**
+     * @param userCacheDir where to remember which plugin configuration files
+     * have been validated already, so that unchanged files are not validated
+     * again on the next launch
+     * @param thermostatVersion the running version of Thermostat; validations
+     * remembered by other versions are not trusted
+     */
+    public PluginInfoSource(String internalJarRoot, String systemPluginRootDir, String userPluginRootDir, String sysConfRootDir, String userConfRootDir, String userCacheDir, String thermostatVersion) {
+        this(new File(internalJarRoot), new File(systemPluginRootDir), new File(userPluginRootDir),
+                new File(sysConfRootDir), new File(userConfRootDir),
+                new PluginConfigurationParser(), new UsageStringBuilder(),
+                new FileMetadataCache(new File(userCacheDir, METADATA_CACHE_FILE), thermostatVersion));
     }
 
     PluginInfoSource(File internalJarRoot, File systemPluginRootDir, File userPluginRootDir,
             File sysConfRootDir, File userConfRootDir,
             PluginConfigurationParser parser, UsageStringBuilder usageBuilder) {
+        this(internalJarRoot, systemPluginRootDir, userPluginRootDir, sysConfRootDir, userConfRootDir,
+                parser, usageBuilder, new FileMetadataCache());
+    }
+
+    PluginInfoSource(File internalJarRoot, File systemPluginRootDir, File userPluginRootDir,
+            File sysConfRootDir, File userConfRootDir,
+            PluginConfigurationParser parser, UsageStringBuilder usageBuilder,
+            FileMetadataCache validatedFiles) {
         this.usageBuilder = usageBuilder;
         this.userConfRootdir = userConfRootDir;
         this.sysConfRootDir = sysConfRootDir;
@@ -115,7 +138,13 @@ public class PluginInfoSource implements CommandInfoSource, ConfigurationInfoSou
         for (File pluginDir : pluginDirectories) {
             try {
                 File configurationFile = new File(pluginDir, PLUGIN_CONFIG_FILE);
-                PluginConfiguration pluginConfig = parser.parse(configurationFile);
+                PluginConfiguration pluginConfig;
+                if (validatedFiles.get(configurationFile) != null) {
+                    pluginConfig = parser.parseWithoutValidation(configurationFile);
+                } else {
+                    pluginConfig = parser.parse(configurationFile);
+                    validatedFiles.put(configurationFile);
+                }
                 loadNewAndExtendedCommands(internalJarRoot, pluginDir, pluginConfig);
                 processCommandGroupMetadata(pluginConfig, pluginDir);
                 if (allConfigs.containsKey(pluginConfig.getPluginID())) {
@@ -136,6 +165,7 @@ public class PluginInfoSource implements CommandInfoSource, ConfigurationInfoSou
                 logger.log(Level.INFO, "file not found", exception);
             }
         }
+        validatedFiles.save();
         combineCommands();
         validateCommandGroupMetadataSources();
     }
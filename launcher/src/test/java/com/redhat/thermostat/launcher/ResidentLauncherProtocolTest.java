@@ -0,0 +1,136 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.launcher;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import com.redhat.thermostat.launcher.ResidentLauncherProtocol.Output;
+import com.redhat.thermostat.launcher.ResidentLauncherProtocol.Request;
+import com.redhat.thermostat.launcher.ResidentLauncherProtocol.RequestType;
+import com.redhat.thermostat.launcher.ResidentLauncherProtocol.Response;
+import com.redhat.thermostat.launcher.ResidentLauncherProtocol.ResponseType;
+
+public class ResidentLauncherProtocolTest {
+
+    @Test
+    public void testRunRequestRoundTrip() throws IOException {
+        String[] args = { "vm-info", "--vmId", "\u00fcn\u00efc\u00f6d\u00e9", "" };
+        ByteBuffer buf = ResidentLauncherProtocol.encode(Request.run(args));
+
+        Request request = ResidentLauncherProtocol.decodeRequest(buf);
+
+        assertEquals(RequestType.RUN, request.getType());
+        assertArrayEquals(args, request.getArguments());
+    }
+
+    @Test
+    public void testFetchRequestRoundTrip() throws IOException {
+        ByteBuffer buf = ResidentLauncherProtocol.encode(Request.fetch(42L, Output.ERR, 1234));
+
+        Request request = ResidentLauncherProtocol.decodeRequest(buf);
+
+        assertEquals(RequestType.FETCH, request.getType());
+        assertEquals(42L, request.getResultId());
+        assertEquals(Output.ERR, request.getOutput());
+        assertEquals(1234, request.getOffset());
+    }
+
+    @Test
+    public void testAcceptedResponseRoundTrip() throws IOException {
+        ByteBuffer buf = ResidentLauncherProtocol.encode(Response.accepted(7L, 2, 100, 5));
+
+        Response response = ResidentLauncherProtocol.decodeResponse(buf);
+
+        assertEquals(ResponseType.ACCEPTED, response.getType());
+        assertEquals(7L, response.getResultId());
+        assertEquals(2, response.getExitStatus());
+        assertEquals(100, response.getLength(Output.OUT));
+        assertEquals(5, response.getLength(Output.ERR));
+    }
+
+    @Test
+    public void testDataResponseRoundTrip() throws IOException {
+        byte[] data = { 1, 2, 3 };
+        ByteBuffer buf = ResidentLauncherProtocol.encode(Response.data(data));
+
+        Response response = ResidentLauncherProtocol.decodeResponse(buf);
+
+        assertEquals(ResponseType.DATA, response.getType());
+        assertArrayEquals(data, response.getData());
+    }
+
+    @Test
+    public void testRejectedResponseRoundTrip() throws IOException {
+        ByteBuffer buf = ResidentLauncherProtocol.encode(Response.rejected());
+
+        assertEquals(ResponseType.REJECTED, ResidentLauncherProtocol.decodeResponse(buf).getType());
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncatedRequest() throws IOException {
+        ByteBuffer buf = ResidentLauncherProtocol.encode(Request.run(new String[] { "list-vms" }));
+        buf.limit(buf.limit() - 1);
+
+        ResidentLauncherProtocol.decodeRequest(buf);
+    }
+
+    @Test(expected = IOException.class)
+    public void testBogusArgumentLength() throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(12);
+        buf.putInt(RequestType.RUN.ordinal());
+        buf.putInt(1);
+        buf.putInt(Integer.MAX_VALUE);
+        buf.flip();
+
+        ResidentLauncherProtocol.decodeRequest(buf);
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnknownResponseType() throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(4);
+        buf.putInt(ResponseType.values().length);
+        buf.flip();
+
+        ResidentLauncherProtocol.decodeResponse(buf);
+    }
+}
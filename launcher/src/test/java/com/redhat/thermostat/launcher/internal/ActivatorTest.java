@@ -40,6 +40,7 @@ import com.redhat.thermostat.common.ExitStatus;
 import com.redhat.thermostat.common.MultipleServiceTracker;
 import com.redhat.thermostat.common.MultipleServiceTracker.Action;
 import com.redhat.thermostat.common.MultipleServiceTracker.DependencyProvider;
+import com.redhat.thermostat.common.Version;
 import com.redhat.thermostat.common.cli.Command;
 import com.redhat.thermostat.common.config.experimental.ConfigurationInfoSource;
 import com.redhat.thermostat.launcher.BundleManager;
@@ -65,6 +66,7 @@ import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
@@ -124,8 +126,8 @@ public class ActivatorTest {
         PluginInfoSource source2 = mock(PluginInfoSource.class);
         when(source2.getCommandInfos()).thenReturn(new ArrayList<CommandInfo>());
         whenNew(PluginInfoSource.class)
-                .withParameterTypes(String.class, String.class, String.class, String.class, String.class)
-                .withArguments(anyString(), anyString(), anyString(), anyString(), anyString())
+                .withParameterTypes(String.class, String.class, String.class, String.class, String.class, String.class, String.class)
+                .withArguments(anyString(), anyString(), anyString(), anyString(), anyString(), anyString(), anyString())
                 .thenReturn(source2);
 
         CompoundCommandInfoSource commands = mock(CompoundCommandInfoSource.class);
@@ -226,6 +228,7 @@ public class ActivatorTest {
         when(paths.getUserClientConfigurationFile()).thenReturn(new File(""));
         when(paths.getSystemPluginConfigurationDirectory()).thenReturn(new File(""));
         when(paths.getUserPluginConfigurationDirectory()).thenReturn(new File(""));
+        when(paths.getUserCacheDirectory()).thenReturn(createUserCacheDir());
         @SuppressWarnings("rawtypes")
         ServiceRegistration keyringReg = context.registerService(Keyring.class, keyringService, null);
         @SuppressWarnings("rawtypes")
@@ -306,6 +309,7 @@ public class ActivatorTest {
         when(paths.getUserClientConfigurationFile()).thenReturn(new File(""));
         when(paths.getSystemPluginConfigurationDirectory()).thenReturn(new File(""));
         when(paths.getUserPluginConfigurationDirectory()).thenReturn(new File(""));
+        when(paths.getUserCacheDirectory()).thenReturn(createUserCacheDir());
         @SuppressWarnings("rawtypes")
         ServiceRegistration pathsReg = context.registerService(CommonPaths.class, paths, null);
         Map<String, Object> services = new HashMap<>();
@@ -346,12 +350,23 @@ public class ActivatorTest {
         return tempDir;
     }
 
+    private File createUserCacheDir() throws IOException {
+        File cacheDir = Files.createTempDirectory("test").toFile();
+        cacheDir.deleteOnExit();
+        new File(cacheDir, "bundle-metadata.properties").deleteOnExit();
+        new File(cacheDir, "plugin-metadata.properties").deleteOnExit();
+        return cacheDir;
+    }
+
     private void setupOsgiRegistryImplMock() throws InvalidSyntaxException {
         PowerMockito.mockStatic(FrameworkUtil.class);
         when(FrameworkUtil.createFilter(anyString())).thenCallRealMethod();
         Bundle mockBundle = mock(Bundle.class);
         when(FrameworkUtil.getBundle(BundleManagerImpl.class)).thenReturn(mockBundle);
         when(mockBundle.getBundleContext()).thenReturn(context);
+        Bundle coreBundle = mock(Bundle.class);
+        when(FrameworkUtil.getBundle(Version.class)).thenReturn(coreBundle);
+        when(coreBundle.getVersion()).thenReturn(new org.osgi.framework.Version(1, 2, 3));
         Bundle mockFramework = mock(Framework.class);
         context.setBundle(0, mockFramework);
         when(mockFramework.getBundleContext()).thenReturn(context);
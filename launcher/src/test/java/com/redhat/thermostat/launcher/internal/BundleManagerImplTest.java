@@ -83,6 +83,7 @@ public class BundleManagerImplTest {
     private static final String jar1Name = "/one.jar";
     private static final String jar2Name = "/two.jar";
     private static final String jar3Name = "/three.jar";
+    private static final String THERMOSTAT_VERSION = "1.2.3";
 
     private Bundle b1, b2, b3;
     private List<String> bundleLocs;
@@ -163,7 +164,7 @@ public class BundleManagerImplTest {
 
         when(FrameworkUtil.getBundle(any(Class.class))).thenReturn(theBundle);
 
-        BundleManagerImpl registry = new BundleManagerImpl(paths);
+        BundleManagerImpl registry = new BundleManagerImpl(paths, THERMOSTAT_VERSION);
         registry.loadBundlesByPath(bundleLocs);
         verify(loader).installAndStartBundles(any(Framework.class), eq(bundleLocs));
     }
@@ -178,7 +179,7 @@ public class BundleManagerImplTest {
 
         when(FrameworkUtil.getBundle(any(Class.class))).thenReturn(theBundle);
 
-        BundleManagerImpl registry = new BundleManagerImpl(paths);
+        BundleManagerImpl registry = new BundleManagerImpl(paths, THERMOSTAT_VERSION);
         Map<BundleInformation, Path> bundleToPath = new HashMap<>();
 
         registry.setKnownBundles(bundleToPath);
@@ -199,7 +200,7 @@ public class BundleManagerImplTest {
 
         when(FrameworkUtil.getBundle(any(Class.class))).thenReturn(theBundle);
 
-        BundleManagerImpl registry = new BundleManagerImpl(paths);
+        BundleManagerImpl registry = new BundleManagerImpl(paths, THERMOSTAT_VERSION);
         Map<BundleInformation, Path> bundleToPath = new HashMap<>();
         bundleToPath.put(new BundleInformation("foo", "1.0"), Paths.get(jar1Name));
         registry.setKnownBundles(bundleToPath);
@@ -220,7 +221,7 @@ public class BundleManagerImplTest {
 
         when(FrameworkUtil.getBundle(any(Class.class))).thenReturn(theBundle);
 
-        BundleManagerImpl registry = new BundleManagerImpl(paths);
+        BundleManagerImpl registry = new BundleManagerImpl(paths, THERMOSTAT_VERSION);
         registry.setIgnoreBundleVersions(true);
         Map<BundleInformation, Path> bundleToPath = new HashMap<>();
         bundleToPath.put(new BundleInformation("foo", "1.0"), Paths.get(jar1Name));
@@ -244,7 +245,7 @@ public class BundleManagerImplTest {
 
         when(FrameworkUtil.getBundle(any(Class.class))).thenReturn(theBundle);
 
-        BundleManagerImpl registry = new BundleManagerImpl(paths);
+        BundleManagerImpl registry = new BundleManagerImpl(paths, THERMOSTAT_VERSION);
         Map<BundleInformation, Path> bundleToPath = new HashMap<>();
         bundleToPath.put(new BundleInformation("foo", "1.0"), Paths.get(jar1Name));
         bundleToPath.put(new BundleInformation("foo", "2.0"), Paths.get(jar2Name));
@@ -268,7 +269,7 @@ public class BundleManagerImplTest {
         mockStatic(FrameworkUtil.class);
         when(FrameworkUtil.getBundle(any(Class.class))).thenReturn(theBundle);
 
-        BundleManagerImpl registry = new BundleManagerImpl(paths);
+        BundleManagerImpl registry = new BundleManagerImpl(paths, THERMOSTAT_VERSION);
         registry.loadBundlesByPath(bundleLocs);
         verify(loader).installAndStartBundles(theFramework, Arrays.asList(jar3Name));
     }
@@ -287,7 +288,7 @@ public class BundleManagerImplTest {
         mockStatic(FrameworkUtil.class);
         when(FrameworkUtil.getBundle(any(Class.class))).thenReturn(theBundle);
 
-        Object registry = new BundleManagerImpl(paths);
+        Object registry = new BundleManagerImpl(paths, THERMOSTAT_VERSION);
         Class<?> clazz = registry.getClass();
         Method m = clazz.getMethod("setPrintOSGiInfo", Boolean.TYPE);
         m.invoke(registry, true); // If this fails, then API has changed in ways that break FrameworkProvider.
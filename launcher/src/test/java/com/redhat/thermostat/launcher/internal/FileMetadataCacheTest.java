@@ -0,0 +1,172 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.launcher.internal;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FileMetadataCacheTest {
+
+    private static final String VERSION = "1.2.3";
+
+    private File testRoot;
+    private File cacheFile;
+    private File dataFile;
+
+    @Before
+    public void setUp() throws IOException {
+        testRoot = Files.createTempDirectory("thermostat").toFile();
+        cacheFile = new File(testRoot, "cache.properties");
+        dataFile = new File(testRoot, "data.jar");
+        Files.write(dataFile.toPath(), "data".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : testRoot.listFiles()) {
+            file.delete();
+        }
+        testRoot.delete();
+    }
+
+    @Test
+    public void testUnknownFile() {
+        FileMetadataCache cache = new FileMetadataCache(cacheFile, VERSION);
+        assertNull(cache.get(dataFile));
+    }
+
+    @Test
+    public void testValuesSurviveSave() {
+        FileMetadataCache cache = new FileMetadataCache(cacheFile, VERSION);
+        cache.put(dataFile, "foo", "1.0");
+        cache.save();
+
+        assertTrue(cacheFile.isFile());
+        cache = new FileMetadataCache(cacheFile, VERSION);
+        assertArrayEquals(new String[] { "foo", "1.0" }, cache.get(dataFile));
+    }
+
+    @Test
+    public void testEmptyValuesSurviveSave() {
+        FileMetadataCache cache = new FileMetadataCache(cacheFile, VERSION);
+        cache.put(dataFile);
+        cache.save();
+
+        cache = new FileMetadataCache(cacheFile, VERSION);
+        assertArrayEquals(new String[0], cache.get(dataFile));
+    }
+
+    @Test
+    public void testModifiedFileIsNotReturned() throws IOException {
+        FileMetadataCache cache = new FileMetadataCache(cacheFile, VERSION);
+        cache.put(dataFile, "foo", "1.0");
+        cache.save();
+
+        Files.write(dataFile.toPath(), "more data".getBytes(StandardCharsets.UTF_8));
+
+        cache = new FileMetadataCache(cacheFile, VERSION);
+        assertNull(cache.get(dataFile));
+    }
+
+    @Test
+    public void testDeletedFileIsNotReturned() {
+        FileMetadataCache cache = new FileMetadataCache(cacheFile, VERSION);
+        cache.put(dataFile, "foo", "1.0");
+        dataFile.delete();
+
+        assertNull(cache.get(dataFile));
+    }
+
+    @Test
+    public void testUnusedEntriesAreDropped() {
+        FileMetadataCache cache = new FileMetadataCache(cacheFile, VERSION);
+        cache.put(dataFile, "foo", "1.0");
+        cache.save();
+
+        new FileMetadataCache(cacheFile, VERSION).save();
+
+        // the entry was loaded, but not used, before the last save
+        cache = new FileMetadataCache(cacheFile, VERSION);
+        assertNull(cache.get(dataFile));
+    }
+
+    @Test
+    public void testCacheOfOtherVersionIsIgnored() {
+        FileMetadataCache cache = new FileMetadataCache(cacheFile, "0.9.0");
+        cache.put(dataFile, "foo", "1.0");
+        cache.save();
+
+        cache = new FileMetadataCache(cacheFile, VERSION);
+        assertNull(cache.get(dataFile));
+    }
+
+    @Test
+    public void testUnchangedCacheIsNotWritten() {
+        FileMetadataCache cache = new FileMetadataCache(cacheFile, VERSION);
+        cache.save();
+        assertFalse(cacheFile.exists());
+    }
+
+    @Test
+    public void testCorruptCacheIsIgnored() throws IOException {
+        String contents = "#format=1\n#version=" + VERSION + "\n/some/file=bogus\n";
+        Files.write(cacheFile.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+
+        FileMetadataCache cache = new FileMetadataCache(cacheFile, VERSION);
+        assertNull(cache.get(new File("/some/file")));
+    }
+
+    @Test
+    public void testInMemoryCache() {
+        FileMetadataCache cache = new FileMetadataCache();
+        cache.put(dataFile, "foo");
+        cache.save();
+
+        assertArrayEquals(new String[] { "foo" }, cache.get(dataFile));
+    }
+}
@@ -155,6 +155,26 @@ public class PluginInfoSourceTest {
         }
     }
 
+    @Test
+    public void verifyUnchangedConfigurationFilesAreNotValidatedAgain() throws IOException, PluginConfigurationValidatorException {
+        when(parser.parseWithoutValidation(isA(File.class))).thenReturn(parserResult);
+        Path pluginDir = sysPluginRootDir.resolve("plugin1");
+        Files.createDirectory(pluginDir);
+        File configFile = pluginDir.resolve("thermostat-plugin.xml").toFile();
+        Files.write(configFile.toPath(), "<plugin/>".getBytes("UTF-8"));
+        FileMetadataCache cache = new FileMetadataCache();
+
+        new PluginInfoSource(jarRootDir.toFile(), sysPluginRootDir.toFile(),
+                userPluginRootDir.toFile(), sysConfRootDir.toFile(), userConfRootDir.toFile(),
+                parser, usageBuilder, cache);
+        new PluginInfoSource(jarRootDir.toFile(), sysPluginRootDir.toFile(),
+                userPluginRootDir.toFile(), sysConfRootDir.toFile(), userConfRootDir.toFile(),
+                parser, usageBuilder, cache);
+
+        verify(parser).parse(configFile);
+        verify(parser).parseWithoutValidation(configFile);
+    }
+
     @Test
     public void verifyMissingConfigurationFileIsHandledCorrectly() throws FileNotFoundException, PluginConfigurationValidatorException {
         when(parser.parse(isA(File.class))).thenThrow(new FileNotFoundException("test"));
@@ -38,6 +38,7 @@ package com.redhat.thermostat.main;
 
 import com.redhat.thermostat.main.internal.FrameworkOptionsProcessor;
 import com.redhat.thermostat.main.internal.FrameworkProvider;
+import com.redhat.thermostat.main.internal.ResidentLauncherClient;
 import com.redhat.thermostat.shared.config.CommonPaths;
 import com.redhat.thermostat.shared.config.internal.CommonPathsImpl;
 
@@ -56,6 +57,16 @@ public class Thermostat {
     public void start(CommonPaths paths, String[] args) {
         FrameworkOptionsProcessor frameworkOptions = new FrameworkOptionsProcessor(args);
 
+        // Framework options only make sense for a framework of our own
+        boolean hasFrameworkOptions = frameworkOptions.getOtherOptions().length != args.length;
+        if (!hasFrameworkOptions) {
+            int exitStatus = createResidentLauncherClient(paths).run(args);
+            if (exitStatus != ResidentLauncherClient.NOT_RUN) {
+                exit(exitStatus);
+                return;
+            }
+        }
+
         FrameworkProvider frameworkProvider = createFrameworkProvider(paths, frameworkOptions);
         frameworkProvider.start(frameworkOptions.getOtherOptions());
     }
@@ -64,5 +75,15 @@ public class Thermostat {
     protected FrameworkProvider createFrameworkProvider(CommonPaths paths, FrameworkOptionsProcessor options) {
         return new FrameworkProvider(paths, options);
     }
+
+    /* allow overriding for unit testing */
+    protected ResidentLauncherClient createResidentLauncherClient(CommonPaths paths) {
+        return new ResidentLauncherClient(paths);
+    }
+
+    /* allow overriding for unit testing */
+    protected void exit(int exitStatus) {
+        System.exit(exitStatus);
+    }
 }
 
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.main.internal;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.redhat.thermostat.agent.ipc.client.ClientIPCServiceFactory;
+import com.redhat.thermostat.agent.ipc.client.IPCMessageChannel;
+import com.redhat.thermostat.launcher.ResidentLauncherProtocol;
+import com.redhat.thermostat.launcher.ResidentLauncherProtocol.Output;
+import com.redhat.thermostat.launcher.ResidentLauncherProtocol.Request;
+import com.redhat.thermostat.launcher.ResidentLauncherProtocol.Response;
+import com.redhat.thermostat.launcher.ResidentLauncherProtocol.ResponseType;
+import com.redhat.thermostat.shared.config.CommonPaths;
+import com.redhat.thermostat.shared.config.InvalidConfigurationException;
+
+/**
+ * Forwards a command line to a resident launcher (started with the
+ * {@code launcher-daemon} command), if one is running, so that the command
+ * does not have to boot an OSGi framework of its own.
+ */
+public class ResidentLauncherClient {
+
+    /**
+     * Returned by {@link #run(String[])} if the command was not run and
+     * should be run by booting a framework as usual.
+     */
+    public static final int NOT_RUN = -1;
+
+    // Exit status used if the connection is lost after the command ran
+    static final int EXIT_ERROR = 1;
+
+    private static final Logger logger = Logger.getLogger(ResidentLauncherClient.class.getName());
+
+    private final CommonPaths paths;
+    private final ChannelConnector connector;
+    private final PrintStream out;
+    private final PrintStream err;
+
+    public ResidentLauncherClient(CommonPaths paths) {
+        this(paths, new IPCChannelConnector(), System.out, System.err);
+    }
+
+    ResidentLauncherClient(CommonPaths paths, ChannelConnector connector, PrintStream out, PrintStream err) {
+        this.paths = paths;
+        this.connector = connector;
+        this.out = out;
+        this.err = err;
+    }
+
+    /**
+     * @return the exit status of the command, or {@link #NOT_RUN}
+     */
+    public int run(String[] args) {
+        File ipcConfig = findIPCConfiguration();
+        if (ipcConfig == null) {
+            return NOT_RUN;
+        }
+
+        IPCMessageChannel channel;
+        Response result;
+        try {
+            channel = connector.connect(ipcConfig);
+        } catch (IOException | NoClassDefFoundError e) {
+            // Stale marker, or IPC client libraries missing from the boot
+            // class path: nothing ran, so boot a framework instead
+            logger.log(Level.FINE, "Unable to connect to resident launcher", e);
+            return NOT_RUN;
+        }
+        try {
+            try {
+                result = exchange(channel, Request.run(args));
+            } catch (IOException e) {
+                logger.log(Level.FINE, "Unable to use resident launcher", e);
+                return NOT_RUN;
+            }
+            if (result.getType() != ResponseType.ACCEPTED) {
+                return NOT_RUN;
+            }
+            try {
+                copyOutput(channel, result, Output.OUT, out);
+                copyOutput(channel, result, Output.ERR, err);
+            } catch (IOException e) {
+                // The command did run; running it a second time is not an option
+                err.println("Lost connection to resident launcher: " + e.getMessage());
+                return EXIT_ERROR;
+            }
+            return result.getExitStatus();
+        } finally {
+            closeQuietly(channel);
+        }
+    }
+
+    private void closeQuietly(IPCMessageChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.log(Level.FINE, "Failed to close resident launcher channel", e);
+        }
+    }
+
+    private File findIPCConfiguration() {
+        File marker;
+        try {
+            marker = new File(paths.getUserRuntimeDataDirectory(), ResidentLauncherProtocol.MARKER_FILE_NAME);
+        } catch (InvalidConfigurationException e) {
+            return null;
+        }
+        if (!marker.isFile()) {
+            return null;
+        }
+        Properties props = new Properties();
+        try (InputStream in = new FileInputStream(marker)) {
+            props.load(in);
+        } catch (IOException e) {
+            logger.log(Level.FINE, "Unable to read " + marker, e);
+            return null;
+        }
+        String ipcConfig = props.getProperty(ResidentLauncherProtocol.MARKER_IPC_CONFIG_KEY);
+        return ipcConfig == null ? null : new File(ipcConfig);
+    }
+
+    private void copyOutput(IPCMessageChannel channel, Response result, Output which, PrintStream target) throws IOException {
+        int length = result.getLength(which);
+        int offset = 0;
+        // Fetch at least once, even if empty: the last fetch releases the result
+        do {
+            Response chunk = exchange(channel, Request.fetch(result.getResultId(), which, offset));
+            if (chunk.getType() != ResponseType.DATA) {
+                throw new IOException("Output no longer available");
+            }
+            byte[] data = chunk.getData();
+            if (data.length == 0 && offset < length) {
+                throw new IOException("Output truncated");
+            }
+            target.write(data, 0, data.length);
+            offset += data.length;
+        } while (offset < length);
+        target.flush();
+    }
+
+    private Response exchange(IPCMessageChannel channel, Request request) throws IOException {
+        channel.writeMessage(ResidentLauncherProtocol.encode(request));
+        return ResidentLauncherProtocol.decodeResponse(channel.readMessage());
+    }
+
+    interface ChannelConnector {
+        IPCMessageChannel connect(File ipcConfig) throws IOException;
+    }
+
+    private static class IPCChannelConnector implements ChannelConnector {
+        @Override
+        public IPCMessageChannel connect(File ipcConfig) throws IOException {
+            return ClientIPCServiceFactory.getIPCService(ipcConfig).connectToServer(ResidentLauncherProtocol.SERVER_NAME);
+        }
+    }
+}
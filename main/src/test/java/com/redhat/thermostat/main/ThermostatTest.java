@@ -39,9 +39,11 @@ package com.redhat.thermostat.main;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doCallRealMethod;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -51,11 +53,13 @@ import org.mockito.ArgumentCaptor;
 
 import com.redhat.thermostat.main.internal.FrameworkOptionsProcessor;
 import com.redhat.thermostat.main.internal.FrameworkProvider;
+import com.redhat.thermostat.main.internal.ResidentLauncherClient;
 import com.redhat.thermostat.shared.config.CommonPaths;
 
 public class ThermostatTest {
 
     private FrameworkProvider provider;
+    private ResidentLauncherClient residentClient;
     private CommonPaths paths;
     private ArgumentCaptor<FrameworkOptionsProcessor> optsCaptor;
     private Thermostat thermostat;
@@ -64,7 +68,8 @@ public class ThermostatTest {
     public void setUp() {
         provider = mock(FrameworkProvider.class);
         paths = mock(CommonPaths.class);
-        
+        residentClient = mock(ResidentLauncherClient.class);
+        when(residentClient.run(any(String[].class))).thenReturn(ResidentLauncherClient.NOT_RUN);
 
         optsCaptor = ArgumentCaptor.forClass(FrameworkOptionsProcessor.class);
 
@@ -74,6 +79,7 @@ public class ThermostatTest {
                 .createFrameworkProvider(eq(paths),
                         optsCaptor.capture()))
                 .thenReturn(provider);
+        when(thermostat.createResidentLauncherClient(paths)).thenReturn(residentClient);
         doCallRealMethod().when(thermostat).start(eq(paths), any(String[].class));
     }
 
@@ -142,5 +148,36 @@ public class ThermostatTest {
 
         verify(provider).start(eq(args));
     }
-}
 
+    @Test
+    public void verifyCommandIsForwardedToResidentLauncher() {
+        String[] args = {"list-vms"};
+        when(residentClient.run(args)).thenReturn(3);
+
+        thermostat.start(paths, args);
+
+        verify(thermostat).exit(3);
+        verify(provider, never()).start(any(String[].class));
+    }
+
+    @Test
+    public void verifyFrameworkIsStartedIfResidentLauncherDoesNotRunCommand() {
+        String[] args = {"list-vms"};
+
+        thermostat.start(paths, args);
+
+        verify(residentClient).run(args);
+        verify(provider).start(eq(args));
+        verify(thermostat, never()).exit(anyInt());
+    }
+
+    @Test
+    public void verifyFrameworkOptionsBypassResidentLauncher() {
+        String[] args = {"--print-osgi-info", "list-vms"};
+
+        thermostat.start(paths, args);
+
+        verify(residentClient, never()).run(any(String[].class));
+        verify(provider).start(eq(new String[]{"list-vms"}));
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.main.internal;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.redhat.thermostat.agent.ipc.client.IPCMessageChannel;
+import com.redhat.thermostat.launcher.ResidentLauncherProtocol;
+import com.redhat.thermostat.launcher.ResidentLauncherProtocol.Output;
+import com.redhat.thermostat.launcher.ResidentLauncherProtocol.Request;
+import com.redhat.thermostat.launcher.ResidentLauncherProtocol.RequestType;
+import com.redhat.thermostat.launcher.ResidentLauncherProtocol.Response;
+import com.redhat.thermostat.main.internal.ResidentLauncherClient.ChannelConnector;
+import com.redhat.thermostat.shared.config.CommonPaths;
+
+public class ResidentLauncherClientTest {
+
+    private File runtimeDir;
+    private CommonPaths paths;
+    private ByteArrayOutputStream out;
+    private ByteArrayOutputStream err;
+
+    @Before
+    public void setUp() throws IOException {
+        runtimeDir = Files.createTempDirectory("resident-launcher-client-test").toFile();
+        paths = mock(CommonPaths.class);
+        when(paths.getUserRuntimeDataDirectory()).thenReturn(runtimeDir);
+        out = new ByteArrayOutputStream();
+        err = new ByteArrayOutputStream();
+    }
+
+    @After
+    public void tearDown() {
+        File marker = new File(runtimeDir, ResidentLauncherProtocol.MARKER_FILE_NAME);
+        marker.delete();
+        runtimeDir.delete();
+    }
+
+    @Test
+    public void testNotRunWithoutMarker() {
+        FakeConnector connector = new FakeConnector();
+        ResidentLauncherClient client = createClient(connector);
+
+        assertEquals(ResidentLauncherClient.NOT_RUN, client.run(new String[] { "list-vms" }));
+        assertFalse(connector.connected);
+    }
+
+    @Test
+    public void testNotRunIfConnectFails() throws IOException {
+        writeMarker();
+        FakeConnector connector = new FakeConnector();
+        connector.failConnect = true;
+        ResidentLauncherClient client = createClient(connector);
+
+        assertEquals(ResidentLauncherClient.NOT_RUN, client.run(new String[] { "list-vms" }));
+    }
+
+    @Test
+    public void testNotRunIfRejected() throws IOException {
+        writeMarker();
+        FakeConnector connector = new FakeConnector();
+        connector.channel.responses.add(Response.rejected());
+        ResidentLauncherClient client = createClient(connector);
+
+        assertEquals(ResidentLauncherClient.NOT_RUN, client.run(new String[] { "shell" }));
+        assertTrue(connector.channel.closed);
+    }
+
+    @Test
+    public void testRunCopiesOutputAndReturnsExitStatus() throws IOException {
+        writeMarker();
+        byte[] first = new byte[ResidentLauncherProtocol.MAX_CHUNK_SIZE];
+        Arrays.fill(first, (byte) 'a');
+        byte[] second = "tail\n".getBytes("UTF-8");
+        byte[] error = "oops\n".getBytes("UTF-8");
+
+        FakeConnector connector = new FakeConnector();
+        List<Response> responses = connector.channel.responses;
+        responses.add(Response.accepted(3L, 2, first.length + second.length, error.length));
+        responses.add(Response.data(first));
+        responses.add(Response.data(second));
+        responses.add(Response.data(error));
+        ResidentLauncherClient client = createClient(connector);
+
+        String[] args = { "vm-info", "--vmId", "foo" };
+        assertEquals(2, client.run(args));
+
+        List<Request> requests = connector.channel.requests;
+        assertEquals(4, requests.size());
+        assertEquals(RequestType.RUN, requests.get(0).getType());
+        assertArrayEquals(args, requests.get(0).getArguments());
+        assertFetch(requests.get(1), 3L, Output.OUT, 0);
+        assertFetch(requests.get(2), 3L, Output.OUT, first.length);
+        assertFetch(requests.get(3), 3L, Output.ERR, 0);
+
+        assertEquals(first.length + second.length, out.size());
+        assertEquals("oops\n", err.toString("UTF-8"));
+        assertTrue(connector.channel.closed);
+    }
+
+    @Test
+    public void testEmptyOutputIsStillFetched() throws IOException {
+        writeMarker();
+        FakeConnector connector = new FakeConnector();
+        List<Response> responses = connector.channel.responses;
+        responses.add(Response.accepted(0L, 0, 0, 0));
+        responses.add(Response.data(new byte[0]));
+        responses.add(Response.data(new byte[0]));
+        ResidentLauncherClient client = createClient(connector);
+
+        assertEquals(0, client.run(new String[] { "list-agents" }));
+
+        List<Request> requests = connector.channel.requests;
+        assertEquals(3, requests.size());
+        assertFetch(requests.get(2), 0L, Output.ERR, 0);
+    }
+
+    @Test
+    public void testLostOutputIsAnErrorNotARerun() throws IOException {
+        writeMarker();
+        FakeConnector connector = new FakeConnector();
+        List<Response> responses = connector.channel.responses;
+        responses.add(Response.accepted(0L, 0, 10, 0));
+        responses.add(Response.unknownResult());
+        ResidentLauncherClient client = createClient(connector);
+
+        assertEquals(ResidentLauncherClient.EXIT_ERROR, client.run(new String[] { "list-vms" }));
+        assertTrue(err.size() > 0);
+    }
+
+    private void assertFetch(Request request, long resultId, Output output, int offset) {
+        assertEquals(RequestType.FETCH, request.getType());
+        assertEquals(resultId, request.getResultId());
+        assertEquals(output, request.getOutput());
+        assertEquals(offset, request.getOffset());
+    }
+
+    private ResidentLauncherClient createClient(ChannelConnector connector) {
+        return new ResidentLauncherClient(paths, connector, new PrintStream(out), new PrintStream(err));
+    }
+
+    private void writeMarker() throws IOException {
+        Properties props = new Properties();
+        props.setProperty(ResidentLauncherProtocol.MARKER_IPC_CONFIG_KEY, "/fake/ipc.properties");
+        try (OutputStream stream = new FileOutputStream(new File(runtimeDir, ResidentLauncherProtocol.MARKER_FILE_NAME))) {
+            props.store(stream, null);
+        }
+    }
+
+    private static class FakeConnector implements ChannelConnector {
+
+        private final FakeChannel channel = new FakeChannel();
+        private boolean failConnect;
+        private boolean connected;
+
+        @Override
+        public IPCMessageChannel connect(File ipcConfig) throws IOException {
+            assertEquals(new File("/fake/ipc.properties"), ipcConfig);
+            if (failConnect) {
+                throw new IOException("no server");
+            }
+            connected = true;
+            return channel;
+        }
+    }
+
+    private static class FakeChannel implements IPCMessageChannel {
+
+        private final List<Request> requests = new ArrayList<>();
+        private final List<Response> responses = new ArrayList<>();
+        private boolean closed;
+
+        @Override
+        public void writeMessage(ByteBuffer message) throws IOException {
+            requests.add(ResidentLauncherProtocol.decodeRequest(message));
+        }
+
+        @Override
+        public ByteBuffer readMessage() throws IOException {
+            if (responses.isEmpty()) {
+                throw new IOException("no more responses");
+            }
+            return ResidentLauncherProtocol.encode(responses.remove(0));
+        }
+
+        @Override
+        public boolean isOpen() {
+            return !closed;
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+        }
+    }
+}
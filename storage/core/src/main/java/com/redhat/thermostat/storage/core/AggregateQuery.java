@@ -55,12 +55,30 @@ public abstract class AggregateQuery<T extends Pojo> implements Query<T> {
          * Find distinct values for a {@link Key}
          */
         DISTINCT,
+        /**
+         * Find the smallest value of a {@link Key} per time bucket.
+         */
+        MIN,
+        /**
+         * Find the largest value of a {@link Key} per time bucket.
+         */
+        MAX,
+        /**
+         * Average the values of a {@link Key} per time bucket.
+         */
+        AVG,
+        /**
+         * Find the newest record per time bucket.
+         */
+        LAST,
     }
     
     protected final Query<T> queryToAggregate;
     private final AggregateFunction function;
     // optional Key to aggregate values for
     private Key<?> aggregateKey;
+    // optional width of time buckets, 0 meaning a single bucket
+    private long bucketWidth;
     
     public AggregateQuery(AggregateFunction function, Query<T> queryToAggregate) {
         this.function = function;
@@ -113,6 +131,31 @@ public abstract class AggregateQuery<T extends Pojo> implements Query<T> {
     public void setAggregateKey(Key<?> aggregateKey) {
         this.aggregateKey = Objects.requireNonNull(aggregateKey);
     }
+
+    /**
+     * 
+     * @return The width of the {@link Key#TIMESTAMP} intervals records are
+     *         bucketed by for {@link AggregateFunction#MIN},
+     *         {@link AggregateFunction#MAX}, {@link AggregateFunction#AVG} and
+     *         {@link AggregateFunction#LAST}. {@code 0} if all records are
+     *         aggregated into a single bucket.
+     */
+    public long getBucketWidth() {
+        return bucketWidth;
+    }
+
+    /**
+     * Sets the width of the {@link Key#TIMESTAMP} intervals to bucket records
+     * by. Buckets start at multiples of the width.
+     * @param bucketWidth The width in milliseconds. {@code 0} for a single
+     *                    bucket.
+     * @throws IllegalArgumentException If the width was negative.
+     */
+    public void setBucketWidth(long bucketWidth) {
+        if (bucketWidth < 0) {
+            throw new IllegalArgumentException("Bucket width must not be negative: " + bucketWidth);
+        }
+        this.bucketWidth = bucketWidth;
+    }
     
 }
-
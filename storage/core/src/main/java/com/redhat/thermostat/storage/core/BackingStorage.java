@@ -59,6 +59,8 @@ public interface BackingStorage extends Storage {
     
     <T extends Pojo> Replace<T> createReplace(Category<T> category);
     
+    <T extends Pojo> BulkWrite<T> createBulkWrite(Category<T> category);
+    
     <T extends Pojo> Update<T> createUpdate(Category<T> category);
     
     <T extends Pojo> Remove<T> createRemove(Category<T> category);
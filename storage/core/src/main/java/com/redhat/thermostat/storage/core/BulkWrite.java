@@ -0,0 +1,82 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.storage.core;
+
+import com.redhat.thermostat.storage.model.Pojo;
+
+/**
+ * Write operation which applies several {@link Add} and {@link Replace}
+ * operations for the same {@link Category} at once. Backing storages are
+ * expected to apply all appended writes in a single round trip.
+ * <p>
+ * Appended writes are applied unordered. That is, if two appended writes
+ * affect the same record the outcome is undefined. A failure of one write
+ * does not prevent the others from being applied.
+ *
+ * @see Add
+ * @see Replace
+ * @see BackingStorage#createBulkWrite(Category)
+ */
+public interface BulkWrite<T extends Pojo> extends DataModifyingStatement<T> {
+
+    /**
+     * Appends a write to this bulk operation.
+     * 
+     * @param write
+     *            An {@link Add} or {@link Replace} created by the same backing
+     *            storage for the same category as this bulk write.
+     *            {@link Replace}s need to have their {@code where} expression
+     *            set.
+     * @throws IllegalArgumentException
+     *             If the given write cannot be part of this bulk operation.
+     */
+    void append(DataModifyingStatement<T> write);
+
+    /**
+     * @return The number of writes appended so far.
+     */
+    int size();
+
+    /**
+     * Applies all appended writes to storage.
+     * 
+     * @return The number of records inserted or modified.
+     * @throws StorageException
+     *             If the operation fails.
+     */
+    int apply();
+}
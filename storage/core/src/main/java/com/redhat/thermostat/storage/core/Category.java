@@ -36,6 +36,7 @@
 
 package com.redhat.thermostat.storage.core;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -82,6 +83,24 @@ public class Category<T extends Pojo> {
      */
     protected List<Key<?>> indexedKeys;
 
+    /*
+     * A de-facto immutable field describing how long data of this category is
+     * kept, or null if it is kept forever. Set via the constructor.
+     * Exceptions are AdaptedCategory and JSON serialization.
+     *
+     * This field gets serialized via JSON.
+     */
+    protected DataRetention retention;
+
+    /*
+     * A de-facto immutable field describing the coarser companion categories
+     * maintained for this category, or null if there are none. Set via the
+     * constructor. Exceptions are AdaptedCategory and JSON serialization.
+     *
+     * This field gets serialized via JSON.
+     */
+    protected DataRollup rollup;
+
     /*
      * A de-facto immutable field, set via setDataClass() called by the
      * constructor. If null dataClassName must be set. This is to make Category
@@ -142,12 +161,85 @@ public class Category<T extends Pojo> {
      *             before
      */
     public Category(String name, Class<T> dataClass, List<Key<?>> keys, List<Key<?>> indexedKeys) {
+        this(name, dataClass, keys, indexedKeys, null);
+    }
+
+    /**
+     * Creates a new Category instance with the specified name, whose data
+     * need not be kept forever.
+     *
+     * @param name
+     *            the name of the category
+     * @param dataClass
+     *            the Class object representing the data
+     * @param indexedKeys
+     *            the keys that will be used for sorting and should be indexed
+     *            (or otherwise optimized) by the storage
+     * @param keys
+     *            an array of Key object which represent the data for this category
+     * @param retention
+     *            how long data should be kept, or {@code null} to keep it
+     *            forever
+     *
+     * @throws IllegalArgumentException
+     *             if a Category is created with a name that has been used
+     *             before, or if the retention's time key is not one of keys
+     */
+    public Category(String name, Class<T> dataClass, List<Key<?>> keys, List<Key<?>> indexedKeys,
+            DataRetention retention) {
+        this(name, dataClass, keys, indexedKeys, retention, null);
+    }
+
+    /**
+     * Creates a new Category instance with the specified name, whose data
+     * is additionally rolled up into coarser companion categories.
+     *
+     * @param name
+     *            the name of the category
+     * @param dataClass
+     *            the Class object representing the data
+     * @param indexedKeys
+     *            the keys that will be used for sorting and should be indexed
+     *            (or otherwise optimized) by the storage
+     * @param keys
+     *            an array of Key object which represent the data for this category
+     * @param retention
+     *            how long data should be kept, or {@code null} to keep it
+     *            forever
+     * @param rollup
+     *            the companion categories to maintain, or {@code null} for
+     *            none
+     *
+     * @throws IllegalArgumentException
+     *             if a Category is created with a name that has been used
+     *             before, or if the retention's time key, the
+     *             {@link Key#TIMESTAMP} or a series key of the rollup is not
+     *             one of keys
+     */
+    public Category(String name, Class<T> dataClass, List<Key<?>> keys, List<Key<?>> indexedKeys,
+            DataRetention retention, DataRollup rollup) {
+        if (rollup != null) {
+            List<Key<?>> required = new ArrayList<>(rollup.getSeriesKeys());
+            required.add(Key.TIMESTAMP);
+            for (Key<?> key : required) {
+                if (!keys.contains(key)) {
+                    throw new IllegalArgumentException("Rollup key " + key.getName()
+                            + " is not a key of category " + name);
+                }
+            }
+        }
+        if (retention != null && !keys.contains(retention.getTimeKey())) {
+            throw new IllegalArgumentException("Retention time key " + retention.getTimeKey().getName()
+                    + " is not a key of category " + name);
+        }
         Map<String, Key<?>> keysMap = new HashMap<String, Key<?>>();
         for (Key<?> key : keys) {
             keysMap.put(key.getName(), key);
         }
         this.keys = Collections.unmodifiableMap(keysMap);
         this.indexedKeys = Collections.unmodifiableList(indexedKeys);
+        this.retention = retention;
+        this.rollup = rollup;
         setName(name);
         setDataClass(dataClass);
     }
@@ -225,6 +317,48 @@ public class Category<T extends Pojo> {
     	return indexedKeys;
     }
 
+    /**
+     * @return how long data of this category should be kept, or {@code null}
+     *         if it should be kept forever
+     */
+    public DataRetention getRetention() {
+        return retention;
+    }
+
+    /**
+     * @return the coarser companion categories maintained for this category,
+     *         or {@code null} if there are none
+     */
+    public DataRollup getRollup() {
+        return rollup;
+    }
+
+    /**
+     * Gets the companion category holding the given rollup tier of this
+     * category's data. It has the keys, indexed keys and data class of this
+     * category and the retention of the tier. Like any other category, it
+     * needs to be registered with the storage before use.
+     *
+     * @throws IllegalArgumentException
+     *             if the tier is not one of this category's rollup
+     */
+    @SuppressWarnings("unchecked")
+    public Category<T> getRollupCategory(DataRollup.Tier tier) {
+        if (rollup == null || !rollup.getTiers().contains(tier)) {
+            throw new IllegalArgumentException("Category " + name + " has no rollup tier " + tier);
+        }
+        String tierName = DataRollup.getTierCategoryName(name, tier);
+        // Created on first use, check and create under the registry's lock
+        synchronized (Categories.class) {
+            Category<?> existing = Categories.getByName(tierName);
+            if (existing != null) {
+                return (Category<T>) existing;
+            }
+            return new Category<>(tierName, getDataClass(), new ArrayList<>(getKeys()), indexedKeys,
+                    tier.getRetention());
+        }
+    }
+
     @Override
     public String toString() {
         return getName() + "|" + getDataClass().getName() + "|" + keys;
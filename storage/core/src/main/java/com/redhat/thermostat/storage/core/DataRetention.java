@@ -0,0 +1,114 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.storage.core;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Describes how long data of a {@link Category} is worth keeping. Records
+ * whose time key is older than the maximum age may be deleted by the storage
+ * backend at any time.
+ * <p>
+ * Declared by passing it to the {@link Category} constructor. Deployments may
+ * override it per category; see the backing storage implementation for
+ * details.
+ */
+public final class DataRetention {
+
+    private Key<Long> timeKey;
+    private long maxAgeMillis;
+
+    /* No-arg constructor used only in de-serialization, e.g. using Gson */
+    DataRetention() {
+        // empty
+    }
+
+    /**
+     * @param timeKey
+     *            the key holding the time (in milliseconds since the epoch)
+     *            that the age of a record is based on
+     * @param maxAge
+     *            the maximum age, must be positive
+     * @param unit
+     *            the unit of {@code maxAge}
+     * @throws IllegalArgumentException
+     *             if maxAge is not positive
+     */
+    public DataRetention(Key<Long> timeKey, long maxAge, TimeUnit unit) {
+        if (maxAge <= 0) {
+            throw new IllegalArgumentException("Maximum age must be positive: " + maxAge);
+        }
+        this.timeKey = Objects.requireNonNull(timeKey);
+        this.maxAgeMillis = unit.toMillis(maxAge);
+    }
+
+    /**
+     * @return a retention keeping records for the given time based on their
+     *         {@link Key#TIMESTAMP}
+     */
+    public static DataRetention maxAge(long maxAge, TimeUnit unit) {
+        return new DataRetention(Key.TIMESTAMP, maxAge, unit);
+    }
+
+    public Key<Long> getTimeKey() {
+        return timeKey;
+    }
+
+    public long getMaxAgeMillis() {
+        return maxAgeMillis;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof DataRetention)) {
+            return false;
+        }
+        DataRetention other = (DataRetention) o;
+        return Objects.equals(timeKey, other.timeKey) && maxAgeMillis == other.maxAgeMillis;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(timeKey, maxAgeMillis);
+    }
+
+    @Override
+    public String toString() {
+        return "DataRetention: " + timeKey.getName() + " within " + maxAgeMillis + "ms";
+    }
+}
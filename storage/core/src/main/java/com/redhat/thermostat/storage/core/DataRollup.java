@@ -0,0 +1,225 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.storage.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Describes coarser copies of a time series {@link Category}, so that long
+ * time ranges can be read without going through every sample.
+ * <p>
+ * Each {@link Tier} is a companion category holding, per series and per
+ * interval of the tier's width, the newest record of that interval. Tiers
+ * are kept for longer than the raw data typically is. The storage backend
+ * maintains them in the background; readers pick the coarsest tier which is
+ * fine enough, see {@link VmTimeIntervalPojoListGetter}.
+ * <p>
+ * Declared by passing it to the {@link Category} constructor.
+ */
+public final class DataRollup {
+
+    /**
+     * One minute, ten minute and one hour tiers, kept for 30 days, half a
+     * year and two years, respectively.
+     */
+    public static final List<Tier> DEFAULT_TIERS = Collections.unmodifiableList(Arrays.asList(
+            new Tier("1m", 1, TimeUnit.MINUTES, 30, TimeUnit.DAYS),
+            new Tier("10m", 10, TimeUnit.MINUTES, 180, TimeUnit.DAYS),
+            new Tier("1h", 1, TimeUnit.HOURS, 730, TimeUnit.DAYS)));
+
+    private static final String TIER_CATEGORY_INFIX = "-rollup-";
+
+    private List<Key<?>> seriesKeys;
+    private List<Tier> tiers;
+
+    /* No-arg constructor used only in de-serialization, e.g. using Gson */
+    DataRollup() {
+        // empty
+    }
+
+    /**
+     * @param seriesKeys
+     *            the keys which together identify one time series in the
+     *            category, e.g. agent and VM id
+     * @param tiers
+     *            the tiers to maintain, finest first. Each tier's width must
+     *            be a multiple of the width of the tier before it.
+     * @throws IllegalArgumentException
+     *             if there are no tiers or their widths don't line up
+     */
+    public DataRollup(List<Key<?>> seriesKeys, List<Tier> tiers) {
+        if (tiers.isEmpty()) {
+            throw new IllegalArgumentException("At least one rollup tier is required");
+        }
+        for (int i = 1; i < tiers.size(); i++) {
+            long finer = tiers.get(i - 1).getWidthMillis();
+            long coarser = tiers.get(i).getWidthMillis();
+            if (coarser <= finer || coarser % finer != 0) {
+                throw new IllegalArgumentException("Width of tier " + tiers.get(i).getName()
+                        + " is not a multiple of the width of tier " + tiers.get(i - 1).getName());
+            }
+        }
+        this.seriesKeys = Collections.unmodifiableList(new ArrayList<>(seriesKeys));
+        this.tiers = Collections.unmodifiableList(new ArrayList<>(tiers));
+    }
+
+    /**
+     * @return a rollup into the {@link #DEFAULT_TIERS}
+     */
+    public static DataRollup of(Key<?>... seriesKeys) {
+        return new DataRollup(Arrays.asList(seriesKeys), DEFAULT_TIERS);
+    }
+
+    /**
+     * @return the name of the companion category of the given tier
+     */
+    public static String getTierCategoryName(String categoryName, Tier tier) {
+        return categoryName + TIER_CATEGORY_INFIX + tier.getName();
+    }
+
+    public List<Key<?>> getSeriesKeys() {
+        return seriesKeys;
+    }
+
+    /**
+     * @return the tiers, finest first
+     */
+    public List<Tier> getTiers() {
+        return tiers;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof DataRollup)) {
+            return false;
+        }
+        DataRollup other = (DataRollup) o;
+        return Objects.equals(seriesKeys, other.seriesKeys) && Objects.equals(tiers, other.tiers);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(seriesKeys, tiers);
+    }
+
+    @Override
+    public String toString() {
+        return "DataRollup: " + seriesKeys + " into " + tiers;
+    }
+
+    /**
+     * A resolution data is rolled up into, and how long it is kept for.
+     */
+    public static final class Tier {
+
+        private String name;
+        private long widthMillis;
+        private long maxAgeMillis;
+
+        /* No-arg constructor used only in de-serialization, e.g. using Gson */
+        Tier() {
+            // empty
+        }
+
+        /**
+         * @param name
+         *            a short name, unique within a rollup, such as "1m"
+         * @param width
+         *            the length of the intervals to keep one record of, must
+         *            be positive
+         * @param widthUnit
+         *            the unit of {@code width}
+         * @param maxAge
+         *            how long to keep records of this tier, must be positive
+         * @param maxAgeUnit
+         *            the unit of {@code maxAge}
+         * @throws IllegalArgumentException
+         *             if width or maxAge are not positive
+         */
+        public Tier(String name, long width, TimeUnit widthUnit, long maxAge, TimeUnit maxAgeUnit) {
+            if (width <= 0) {
+                throw new IllegalArgumentException("Tier width must be positive: " + width);
+            }
+            if (maxAge <= 0) {
+                throw new IllegalArgumentException("Maximum age must be positive: " + maxAge);
+            }
+            this.name = Objects.requireNonNull(name);
+            this.widthMillis = widthUnit.toMillis(width);
+            this.maxAgeMillis = maxAgeUnit.toMillis(maxAge);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getWidthMillis() {
+            return widthMillis;
+        }
+
+        /**
+         * @return the retention of this tier's companion category
+         */
+        public DataRetention getRetention() {
+            return DataRetention.maxAge(maxAgeMillis, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Tier)) {
+                return false;
+            }
+            Tier other = (Tier) o;
+            return Objects.equals(name, other.name) && widthMillis == other.widthMillis
+                    && maxAgeMillis == other.maxAgeMillis;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(name, widthMillis, maxAgeMillis);
+        }
+
+        @Override
+        public String toString() {
+            return name + " (" + widthMillis + "ms, kept " + maxAgeMillis + "ms)";
+        }
+    }
+}
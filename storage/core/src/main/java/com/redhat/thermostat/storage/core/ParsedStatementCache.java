@@ -0,0 +1,157 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.storage.core;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.redhat.thermostat.storage.internal.statement.PreparedStatementImpl;
+import com.redhat.thermostat.storage.model.Pojo;
+
+/**
+ * A bounded cache of {@link ParsedStatement}s for one {@link BackingStorage}.
+ * Entries are keyed by {@link StatementDescriptor}, i.e. by descriptor string
+ * and {@link Category}. Least recently used entries get evicted once the
+ * maximum size is reached.
+ * <p>
+ * Parsed statements embed statements created by the backing storage for a
+ * specific category. Storage implementations should therefore call
+ * {@link #invalidate(Category)} whenever a category gets (re-)registered.
+ * <p>
+ * Instances are thread-safe. Descriptors are parsed without holding any lock.
+ * 
+ * @see PreparedStatementFactory#getInstance(ParsedStatementCache, StatementDescriptor)
+ */
+public final class ParsedStatementCache {
+
+    public static final int DEFAULT_MAX_SIZE = 1000;
+
+    private final BackingStorage storage;
+    private final Map<StatementDescriptor<?>, ParsedStatement<?>> cache;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    // Guarded by cache. Bumped on every invalidation so that statements
+    // parsed concurrently against stale categories don't get cached.
+    private long generation;
+
+    public ParsedStatementCache(BackingStorage storage) {
+        this(storage, DEFAULT_MAX_SIZE);
+    }
+
+    public ParsedStatementCache(BackingStorage storage, final int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be > 0, was " + maxSize);
+        }
+        this.storage = Objects.requireNonNull(storage);
+        this.cache = new LinkedHashMap<StatementDescriptor<?>, ParsedStatement<?>>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<StatementDescriptor<?>, ParsedStatement<?>> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Looks up the parsed form of the given descriptor, parsing and caching
+     * it if it's not yet known.
+     * 
+     * @param desc
+     *            The descriptor to look up.
+     * @return The parsed statement for {@code desc}.
+     * @throws DescriptorParsingException
+     *             If {@code desc} is not cached and fails to parse. Failed
+     *             descriptors are not cached.
+     */
+    @SuppressWarnings("unchecked") // we are the only ones adding them
+    public <T extends Pojo> ParsedStatement<T> get(StatementDescriptor<T> desc) throws DescriptorParsingException {
+        long parseGeneration;
+        synchronized (cache) {
+            ParsedStatement<T> parsed = (ParsedStatement<T>) cache.get(desc);
+            if (parsed != null) {
+                hits.incrementAndGet();
+                return parsed;
+            }
+            parseGeneration = generation;
+        }
+        misses.incrementAndGet();
+        ParsedStatement<T> parsed = PreparedStatementImpl.parse(storage, desc);
+        synchronized (cache) {
+            if (parseGeneration == generation) {
+                cache.put(desc, parsed);
+            }
+        }
+        return parsed;
+    }
+
+    /**
+     * Removes all cached statements for categories with the same name as the
+     * given category.
+     */
+    public void invalidate(Category<?> category) {
+        String name = category.getName();
+        synchronized (cache) {
+            generation++;
+            Iterator<StatementDescriptor<?>> iter = cache.keySet().iterator();
+            while (iter.hasNext()) {
+                if (iter.next().getCategory().getName().equals(name)) {
+                    iter.remove();
+                }
+            }
+        }
+    }
+
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+}
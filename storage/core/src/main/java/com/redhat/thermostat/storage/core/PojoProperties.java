@@ -0,0 +1,294 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.storage.core;
+
+import java.beans.BeanInfo;
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.redhat.thermostat.storage.model.Pojo;
+
+/**
+ * Precompiled accessors for the {@link Persist} properties of a {@link Pojo}
+ * class, for use by storage implementations which convert pojos to their
+ * wire or database format. Annotation scanning and method lookups happen
+ * once per class, when the properties are first requested via
+ * {@link #forClass(Class)}. Accessing instances thereafter only invokes
+ * pre-built {@link MethodHandle}s.
+ * <p>
+ * A property is {@link Property#isReadable() readable} if its getter is
+ * annotated with {@link Persist} and {@link Property#isWritable() writable}
+ * if its setter is. Callers decide which of the two they require.
+ */
+public final class PojoProperties {
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+    private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+
+    /*
+     * ClassValue ties the lifetime of the accessors to their pojo class. This
+     * is important in OSGi, where plugin bundles and, thus, their pojo
+     * classes may get unloaded.
+     */
+    private static final ClassValue<PojoProperties> CACHE = new ClassValue<PojoProperties>() {
+
+        @Override
+        protected PojoProperties computeValue(Class<?> type) {
+            return new PojoProperties(type);
+        }
+
+    };
+
+    /**
+     * A single persisted property.
+     */
+    public static final class Property {
+
+        private final String name;
+        private final Class<?> type;
+        private final Type genericType;
+        private final boolean isArray;
+        // null if not readable or writable, respectively
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+
+        private Property(String name, Class<?> type, Type genericType, MethodHandle getter, MethodHandle setter) {
+            this.name = name;
+            this.type = type;
+            this.genericType = genericType;
+            this.isArray = type.isArray();
+            this.getter = getter;
+            this.setter = setter;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Class<?> getType() {
+            return type;
+        }
+
+        public Type getGenericType() {
+            return genericType;
+        }
+
+        public boolean isArray() {
+            return isArray;
+        }
+
+        /**
+         * @return true if the getter of this property is annotated with
+         *         {@link Persist}
+         */
+        public boolean isReadable() {
+            return getter != null;
+        }
+
+        /**
+         * @return true if the setter of this property is annotated with
+         *         {@link Persist}
+         */
+        public boolean isWritable() {
+            return setter != null;
+        }
+
+        /**
+         * @throws StorageException if this property is not readable
+         */
+        public Object get(Object pojo) {
+            if (getter == null) {
+                throw new StorageException("Property '" + name + "' is not readable");
+            }
+            try {
+                return (Object)getter.invokeExact(pojo);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new StorageException(t);
+            }
+        }
+
+        /**
+         * @throws StorageException if this property is not writable
+         */
+        public void set(Object pojo, Object value) {
+            if (setter == null) {
+                throw new StorageException("Property '" + name + "' is not writable");
+            }
+            try {
+                setter.invokeExact(pojo, value);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new StorageException(t);
+            }
+        }
+    }
+
+    private final Class<?> pojoClass;
+    private final List<Property> properties;
+    private final List<Property> readableProperties;
+    private final Map<String, Property> propertiesByName;
+    // null if the class can't be instantiated
+    private final MethodHandle constructor;
+
+    private PojoProperties(Class<?> pojoClass) {
+        this.pojoClass = pojoClass;
+        List<Property> props = new ArrayList<>();
+        List<Property> readable = new ArrayList<>();
+        Map<String, Property> byName = new HashMap<>();
+        for (PropertyDescriptor desc : getPropertyDescriptors(pojoClass)) {
+            Method readMethod = persisted(desc.getReadMethod());
+            Method writeMethod = persisted(desc.getWriteMethod());
+            if (readMethod == null && writeMethod == null) {
+                continue;
+            }
+            Type genericType = writeMethod != null ? writeMethod.getGenericParameterTypes()[0]
+                                                   : readMethod.getGenericReturnType();
+            Property prop = new Property(desc.getName(), desc.getPropertyType(), genericType,
+                    unreflect(readMethod, GETTER_TYPE),
+                    unreflect(writeMethod, SETTER_TYPE));
+            props.add(prop);
+            if (prop.isReadable()) {
+                readable.add(prop);
+            }
+            byName.put(prop.getName(), prop);
+        }
+        this.properties = Collections.unmodifiableList(props);
+        this.readableProperties = Collections.unmodifiableList(readable);
+        this.propertiesByName = byName;
+        this.constructor = findConstructor(pojoClass);
+    }
+
+    public static PojoProperties forClass(Class<?> pojoClass) {
+        return CACHE.get(pojoClass);
+    }
+
+    /**
+     * @return All properties with a {@link Persist} annotated getter or
+     *         setter, in the order returned by bean introspection.
+     */
+    public List<Property> getProperties() {
+        return properties;
+    }
+
+    /**
+     * @return The {@link Property#isReadable() readable} properties, in the
+     *         order returned by bean introspection.
+     */
+    public List<Property> getReadableProperties() {
+        return readableProperties;
+    }
+
+    /**
+     * @return The property with the given name or {@code null} if there is
+     *         no such property with a {@link Persist} annotated getter or
+     *         setter.
+     */
+    public Property getProperty(String name) {
+        return propertiesByName.get(name);
+    }
+
+    /**
+     * @throws StorageException if the class has no no-arg constructor or
+     *         the constructor fails
+     */
+    public Object newInstance() {
+        if (constructor == null) {
+            throw new StorageException("Unable to instantiate " + pojoClass.getName()
+                    + ". No accessible no-arg constructor.");
+        }
+        try {
+            return (Object)constructor.invokeExact();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new StorageException(t);
+        }
+    }
+
+    private static PropertyDescriptor[] getPropertyDescriptors(Class<?> pojoClass) {
+        try {
+            BeanInfo info = Introspector.getBeanInfo(pojoClass);
+            return info.getPropertyDescriptors();
+        } catch (IntrospectionException e) {
+            throw new StorageException(e);
+        }
+    }
+
+    private static Method persisted(Method method) {
+        return method != null && method.isAnnotationPresent(Persist.class) ? method : null;
+    }
+
+    private static MethodHandle unreflect(Method method, MethodType type) {
+        if (method == null) {
+            return null;
+        }
+        try {
+            // Pojo classes may be non-public nested classes with public
+            // accessors. Lookups would fail for those otherwise.
+            method.setAccessible(true);
+            return MethodHandles.lookup().unreflect(method).asType(type);
+        } catch (IllegalAccessException | SecurityException e) {
+            throw new StorageException(e);
+        }
+    }
+
+    private static MethodHandle findConstructor(Class<?> pojoClass) {
+        try {
+            Constructor<?> ctor = pojoClass.getDeclaredConstructor();
+            ctor.setAccessible(true);
+            return MethodHandles.lookup().unreflectConstructor(ctor).asType(CONSTRUCTOR_TYPE);
+        } catch (NoSuchMethodException | IllegalAccessException | SecurityException e) {
+            return null;
+        }
+    }
+}
@@ -52,4 +52,13 @@ public class PreparedStatementFactory {
         // factory.
         return new PreparedStatementImpl<>(storage, desc);
     }
+
+    /**
+     * Creates a {@link PreparedStatement} using the parsed form of
+     * {@code desc} from the given cache.
+     */
+    public static <T extends Pojo> PreparedStatement<T> getInstance(ParsedStatementCache cache,
+            StatementDescriptor<T> desc) throws DescriptorParsingException {
+        return new PreparedStatementImpl<>(desc, cache.get(desc));
+    }
 }
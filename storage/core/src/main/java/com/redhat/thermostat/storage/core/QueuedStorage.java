@@ -38,9 +38,12 @@
 package com.redhat.thermostat.storage.core;
 
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -51,6 +54,9 @@ import com.redhat.thermostat.shared.perflog.PerformanceLogFormatter;
 import com.redhat.thermostat.shared.perflog.PerformanceLogFormatter.LogTag;
 import com.redhat.thermostat.storage.internal.CountingDecorator;
 import com.redhat.thermostat.storage.internal.ThreadPoolSizeRetriever;
+import com.redhat.thermostat.storage.internal.WriteBatchSettingsRetriever;
+import com.redhat.thermostat.storage.internal.WriteBatcher;
+import com.redhat.thermostat.storage.internal.statement.PreparedStatementImpl;
 import com.redhat.thermostat.storage.model.Pojo;
 import com.redhat.thermostat.storage.query.Expression;
 
@@ -58,6 +64,7 @@ public class QueuedStorage implements Storage {
     
     private static final Logger logger = LoggingUtils.getLogger(QueuedStorage.class);
     private static final int SHUTDOWN_TIMEOUT_SECONDS = 3;
+    private static final String ADD_STATEMENT_PREFIX = "ADD ";
 
     /*
      * True if and only if the delegate is a backing storage (such as mongodb)
@@ -73,6 +80,9 @@ public class QueuedStorage implements Storage {
     protected final Storage delegate;
     protected final ExecutorService executor;
     protected final ExecutorService fileExecutor;
+    // Batches ADD statements per category. null if batching is disabled.
+    protected final WriteBatcher<PendingWrite> writeBatcher;
+    private final ScheduledExecutorService batchTimer;
     
     private abstract static class SettingDecorator<T extends Pojo> implements PreparedStatementSetter, PreparedStatement<T> {
         
@@ -194,14 +204,22 @@ public class QueuedStorage implements Storage {
     class QueuedWrite<T extends Pojo> extends QueuedStatementDecorator<T> implements DataModifyingStatement<T> {
 
         protected final DataModifyingStatement<T> write;
+        // may be null if unknown
+        protected final Category<T> category;
         
-        private QueuedWrite(DataModifyingStatement<T> delegate) {
+        private QueuedWrite(DataModifyingStatement<T> delegate, Category<T> category) {
             super(delegate);
             this.write = delegate;
+            this.category = category;
         }
         
         @Override
         public int apply() {
+            if (isBatched()) {
+                writeBatcher.enqueue(category, new RawWrite(write));
+                return DataModifyingStatement.DEFAULT_STATUS_SUCCESS;
+            }
+            flushPendingBatch(category);
             executor.execute(new Runnable() {
                 
                 @Override
@@ -217,6 +235,10 @@ public class QueuedStorage implements Storage {
             return write.apply();
         }
         
+        boolean isBatched() {
+            return writeBatcher != null && category != null && write instanceof Add;
+        }
+        
     }
     
     abstract class QueuedParsedStatementDecorator<T extends Pojo> implements ParsedStatement<T> {
@@ -239,8 +261,11 @@ public class QueuedStorage implements Storage {
     
     class QueuedParsedStatement<T extends Pojo> extends QueuedParsedStatementDecorator<T> {
         
-        private QueuedParsedStatement(ParsedStatement<T> delegate) {
+        private final Category<T> category;
+        
+        private QueuedParsedStatement(ParsedStatement<T> delegate, Category<T> category) {
             super(delegate);
+            this.category = category;
         }
 
         @Override
@@ -249,7 +274,7 @@ public class QueuedStorage implements Storage {
             Statement<T> stmt = parsedDelegate.patchStatement(params);
             if (stmt instanceof DataModifyingStatement) {
                 DataModifyingStatement<T> target = (DataModifyingStatement<T>)stmt;
-                return new QueuedWrite<>(target);
+                return new QueuedWrite<>(target, category);
             } else if (stmt instanceof Query) {
                 // Queries are not queued
                 return stmt;
@@ -300,7 +325,7 @@ public class QueuedStorage implements Storage {
         private final String descriptor;
         
         private TimedWrite(QueuedWrite<T> delegate, PerformanceLogFormatter perfLogFormatter, String descriptor) {
-            super(delegate);
+            super(delegate, delegate.category);
             this.write = delegate;
             this.perfLogFormatter = perfLogFormatter;
             this.descriptor = descriptor;
@@ -308,6 +333,11 @@ public class QueuedStorage implements Storage {
 
         @Override
         public int apply() {
+            if (write.isBatched()) {
+                // Batch flushes get timed by the batcher
+                return write.apply();
+            }
+            flushPendingBatch(category);
             executor.execute(new Runnable() {
                 
                 @Override
@@ -385,13 +415,18 @@ public class QueuedStorage implements Storage {
         
         @Override
         public int execute() throws StatementExecutionException {
+            final QueuedPreparedStatement<T> d = (QueuedPreparedStatement<T>)stmtDelegate;
+            if (d.isBatched()) {
+                // Batch flushes get timed by the batcher
+                return d.execute();
+            }
+            d.flushPendingBatch();
             executor.execute(new Runnable() {
                 
                 @Override
                 public void run() {
                     try {
                         long start = System.nanoTime();
-                        QueuedPreparedStatement<T> d = (QueuedPreparedStatement<T>)stmtDelegate;
                         int retval = d.doExecute();
                         long end = System.nanoTime();
                         String msg = String.format(DB_WRITE_FORMAT, retval, descriptor);
@@ -431,8 +466,13 @@ public class QueuedStorage implements Storage {
      */
     class QueuedPreparedStatement<T extends Pojo> extends SettingDecorator<T> implements PreparedStatement<T> {
         
-        private QueuedPreparedStatement(PreparedStatement<T> delegate) {
+        private final StatementDescriptor<T> desc;
+        private final boolean isAdd;
+        
+        private QueuedPreparedStatement(PreparedStatement<T> delegate, StatementDescriptor<T> desc) {
             super(Objects.requireNonNull(delegate));
+            this.desc = Objects.requireNonNull(desc);
+            this.isAdd = desc.getDescriptor().trim().startsWith(ADD_STATEMENT_PREFIX);
         }
 
         @Override
@@ -441,6 +481,11 @@ public class QueuedStorage implements Storage {
                 String msg = "Did not expect to get called for backing storage in proxied setup.";
                 throw new AssertionError(msg);
             }
+            if (isBatched()) {
+                writeBatcher.enqueue(desc.getCategory(), new PreparedWrite<>(this));
+                return DataModifyingStatement.DEFAULT_STATUS_SUCCESS;
+            }
+            flushPendingBatch();
             executor.execute(new Runnable() {
                 
                 @Override
@@ -477,7 +522,7 @@ public class QueuedStorage implements Storage {
         public ParsedStatement<T> getParsedStatement() {
             if (isBackingStorageInProxy) {
                 ParsedStatement<T> target = stmtDelegate.getParsedStatement();
-                return new QueuedParsedStatement<>(target);
+                return new QueuedParsedStatement<>(target, desc.getCategory());
             } else {
                 return stmtDelegate.getParsedStatement();
             }
@@ -488,6 +533,170 @@ public class QueuedStorage implements Storage {
             return stmtDelegate.execute();
         }
         
+        boolean isBatched() {
+            return writeBatcher != null && isAdd;
+        }
+        
+        /*
+         * The patched ADD if this statement came from a backing storage,
+         * null otherwise.
+         */
+        private DataModifyingStatement<T> getAdd() throws StatementExecutionException {
+            if (!(stmtDelegate instanceof PreparedStatementImpl)) {
+                return null;
+            }
+            return ((PreparedStatementImpl<T>) stmtDelegate).patchWrite();
+        }
+        
+        /*
+         * Writes other than ADDs are not batched. Flush pending ADDs of the
+         * same category first so as to not reorder them.
+         */
+        private void flushPendingBatch() {
+            QueuedStorage.this.flushPendingBatch(desc.getCategory());
+        }
+        
+    }
+    
+    /*
+     * An ADD kept in a pending batch. Deliberately not a Statement: the
+     * batch flusher only ever applies it.
+     */
+    interface PendingWrite {
+        
+        int apply();
+        
+        /*
+         * This write as an ADD which may be appended to a bulk write, or
+         * null if it needs to be applied on its own.
+         */
+        DataModifyingStatement<?> getAdd() throws StatementExecutionException;
+        
+    }
+    
+    /*
+     * A pending raw ADD statement, as written by a backing storage in a
+     * proxied setup. Those may be applied as part of a bulk write.
+     */
+    private static class RawWrite implements PendingWrite {
+        
+        private final DataModifyingStatement<?> write;
+        
+        private RawWrite(DataModifyingStatement<?> write) {
+            this.write = write;
+        }
+        
+        @Override
+        public int apply() {
+            return write.apply();
+        }
+        
+        @Override
+        public DataModifyingStatement<?> getAdd() {
+            return (write instanceof Add) ? write : null;
+        }
+        
+    }
+    
+    /*
+     * A pending prepared ADD statement.
+     */
+    private class PreparedWrite<T extends Pojo> implements PendingWrite {
+        
+        private final QueuedPreparedStatement<T> stmt;
+        
+        private PreparedWrite(QueuedPreparedStatement<T> stmt) {
+            this.stmt = stmt;
+        }
+
+        @Override
+        public int apply() {
+            try {
+                return stmt.doExecute();
+            } catch (StatementExecutionException e) {
+                // There isn't much we can do in case of invalid
+                // patch or the likes. Log it and move on.
+                logger.log(Level.WARNING, "Failed to execute statement", e);
+                return DataModifyingStatement.DEFAULT_STATUS_FAILURE;
+            }
+        }
+        
+        @Override
+        public DataModifyingStatement<?> getAdd() throws StatementExecutionException {
+            return stmt.getAdd();
+        }
+        
+    }
+    
+    /*
+     * Applies a batch of pending ADD statements of one category in a single
+     * executor task. If we decorate a backing storage, be it directly or in a
+     * proxied setup, the writes get applied as one bulk write. Otherwise they
+     * get applied one after another.
+     */
+    private class BatchFlusher implements WriteBatcher.Flusher<PendingWrite> {
+
+        @Override
+        public void flush(Category<?> category, List<PendingWrite> batch) {
+            List<DataModifyingStatement<?>> adds = getBulkWritableAdds(batch);
+            if (adds != null) {
+                if (adds.isEmpty()) {
+                    return;
+                }
+                try {
+                    applyBulk((BackingStorage)delegate, category, adds);
+                } catch (StorageException e) {
+                    logger.log(Level.WARNING, "Failed to apply bulk write of " + adds.size()
+                            + " records to " + category.getName(), e);
+                }
+                return;
+            }
+            for (PendingWrite write : batch) {
+                try {
+                    write.apply();
+                } catch (StorageException e) {
+                    // Don't let one failing write drop the rest of the batch.
+                    logger.log(Level.WARNING, "Failed to apply batched write to " + category.getName(), e);
+                }
+            }
+        }
+        
+        /*
+         * The ADDs of the batch or null if the batch cannot be applied as one
+         * bulk write.
+         */
+        private List<DataModifyingStatement<?>> getBulkWritableAdds(List<PendingWrite> batch) {
+            if (!(delegate instanceof BackingStorage) || batch.size() < 2) {
+                return null;
+            }
+            List<DataModifyingStatement<?>> adds = new ArrayList<>(batch.size());
+            for (PendingWrite write : batch) {
+                DataModifyingStatement<?> add;
+                try {
+                    add = write.getAdd();
+                } catch (StatementExecutionException e) {
+                    // Same as for writes applied on their own: log it and
+                    // move on.
+                    logger.log(Level.WARNING, "Failed to execute statement", e);
+                    continue;
+                }
+                if (add == null) {
+                    return null;
+                }
+                adds.add(add);
+            }
+            return adds;
+        }
+        
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        private void applyBulk(BackingStorage storage, Category category, List<DataModifyingStatement<?>> adds) {
+            BulkWrite bulk = storage.createBulkWrite(category);
+            for (DataModifyingStatement<?> add : adds) {
+                bulk.append(add);
+            }
+            bulk.apply();
+        }
+        
     }
     
     public QueuedStorage(Storage delegate) {
@@ -499,7 +708,12 @@ public class QueuedStorage implements Storage {
     }
     
     QueuedStorage(Storage delegate, PerformanceLogFormatter perflogFormatter, int poolSize) {
-        this(delegate, Executors.newFixedThreadPool(poolSize), Executors.newFixedThreadPool(poolSize), perflogFormatter);
+        this(delegate, perflogFormatter, poolSize, new WriteBatchSettingsRetriever());
+    }
+    
+    private QueuedStorage(Storage delegate, PerformanceLogFormatter perflogFormatter, int poolSize, WriteBatchSettingsRetriever batchSettings) {
+        this(delegate, Executors.newFixedThreadPool(poolSize), Executors.newFixedThreadPool(poolSize), perflogFormatter,
+                createBatchTimer(batchSettings), batchSettings);
     }
 
     QueuedStorage(Storage delegate, ExecutorService executor, ExecutorService fileExecutor) {
@@ -507,18 +721,42 @@ public class QueuedStorage implements Storage {
     }
     
     QueuedStorage(Storage delegate, ExecutorService executor, ExecutorService fileExecutor, PerformanceLogFormatter perfLogFormatter) {
+        this(delegate, executor, fileExecutor, perfLogFormatter, null, null);
+    }
+    
+    /*
+     * Batching of ADD statements is enabled if and only if batchTimer is
+     * non-null.
+     */
+    QueuedStorage(Storage delegate, ExecutorService executor, ExecutorService fileExecutor, PerformanceLogFormatter perfLogFormatter,
+            ScheduledExecutorService batchTimer, WriteBatchSettingsRetriever batchSettings) {
         this.delegate = delegate;
         this.fileExecutor = fileExecutor;
         this.isBackingStorageInProxy = !(delegate instanceof SecureStorage) && Boolean.getBoolean(Constants.IS_PROXIED_STORAGE);
         this.isTimedStatements = LoggingUtils.getEffectiveLogLevel(logger).intValue() <= LoggingUtils.LogLevel.PERFLOG.getLevel().intValue();
+        LogTag logTag = (isBackingStorageInProxy ? LogTag.STORAGE_BACKING_PROXIED : LogTag.STORAGE_FRONT_END);
         // set up queue counting executor if so requested
         if (isTimedStatements) {
-            LogTag logTag = (isBackingStorageInProxy ? LogTag.STORAGE_BACKING_PROXIED : LogTag.STORAGE_FRONT_END);
             this.executor = new CountingDecorator(executor, perfLogFormatter, logTag);
         } else {
             this.executor = executor;
         }
         this.perfLogFormatter = perfLogFormatter;
+        this.batchTimer = batchTimer;
+        if (batchTimer != null) {
+            PerformanceLogFormatter batchLogFormatter = (isTimedStatements ? perfLogFormatter : null);
+            this.writeBatcher = new WriteBatcher<>(this.executor, batchTimer, new BatchFlusher(),
+                    batchSettings.getBatchSize(), batchSettings.getMaxLatency(), batchLogFormatter, logTag);
+        } else {
+            this.writeBatcher = null;
+        }
+    }
+    
+    private static ScheduledExecutorService createBatchTimer(WriteBatchSettingsRetriever batchSettings) {
+        if (batchSettings.isBatchingEnabled()) {
+            return Executors.newSingleThreadScheduledExecutor();
+        }
+        return null;
     }
 
     ExecutorService getExecutor() {
@@ -528,6 +766,12 @@ public class QueuedStorage implements Storage {
     ExecutorService getFileExecutor() {
         return fileExecutor;
     }
+    
+    private void flushPendingBatch(Category<?> category) {
+        if (writeBatcher != null && category != null) {
+            writeBatcher.flush(category);
+        }
+    }
 
     @Override
     public void purge(final String agentId) {
@@ -567,7 +811,7 @@ public class QueuedStorage implements Storage {
     public <T extends Pojo> PreparedStatement<T> prepareStatement(final StatementDescriptor<T> desc)
             throws DescriptorParsingException {
         PreparedStatement<T> decoratee = delegate.prepareStatement(desc);
-        QueuedPreparedStatement<T> queuedPreparedStatement = new QueuedPreparedStatement<>(decoratee);
+        QueuedPreparedStatement<T> queuedPreparedStatement = new QueuedPreparedStatement<>(decoratee, desc);
         return decorateWithTimingLoggerIfNecessary(queuedPreparedStatement, desc);
     }
     
@@ -588,8 +832,13 @@ public class QueuedStorage implements Storage {
         /*
          * First shut down executors. This may trigger some pushes to the
          * storage implementation (a.k.a. delegate). Hence, this should get
-         * shut down last as this closes the connection etc.
+         * shut down last as this closes the connection etc. Pending batches
+         * need to get handed off to the executor before that.
          */
+        if (writeBatcher != null) {
+            writeBatcher.flushAll();
+            batchTimer.shutdownNow();
+        }
         try {
             executor.shutdown();
             executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
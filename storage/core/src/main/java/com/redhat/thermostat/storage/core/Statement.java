@@ -53,7 +53,9 @@ public interface Statement<T extends Pojo> {
 
     /**
      * Produces a copy of this statement as if it was just created with the
-     * corresponding factory method in {@link BackingStorage}.
+     * corresponding factory method in {@link BackingStorage}. The copy must
+     * not share any modifiable state with this statement, since copies get
+     * patched and executed concurrently.
      * 
      * @return A new raw instance of this statement.
      */
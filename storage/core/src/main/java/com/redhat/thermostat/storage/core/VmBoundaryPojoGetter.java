@@ -65,18 +65,32 @@ public class VmBoundaryPojoGetter<T extends TimeStampedPojo> extends AbstractDao
             "SORT '" + Key.TIMESTAMP.getName() + "' ASC " +
             "LIMIT 1";
 
+    // QUERY %s WHERE 'agentId' = ?s AND \
+    //                        'vmId' = ?s AND \
+    //                        'timeStamp' <= ?l \
+    //                        SORT 'timeStamp' DSC  \
+    //                        LIMIT 1
+    public static final String DESC_NEWEST_VM_STAT_UNTIL = "QUERY %s " +
+            "WHERE '" + Key.AGENT_ID.getName() + "' = ?s " +
+            "AND '" + Key.VM_ID.getName() + "' = ?s " +
+            "AND '" + Key.TIMESTAMP.getName() + "' <= ?l " +
+            "SORT '" + Key.TIMESTAMP.getName() + "' DSC " +
+            "LIMIT 1";
+
     private static final Logger logger = LoggingUtils.getLogger(VmBoundaryPojoGetter.class);
 
     private final Storage storage;
     private final Category<T> cat;
     private final String queryNewest;
     private final String queryOldest;
+    private final String queryNewestUntil;
 
     public VmBoundaryPojoGetter(Storage storage, Category<T> cat) {
         this.storage = storage;
         this.cat = cat;
         this.queryNewest = String.format(DESC_NEWEST_VM_STAT, cat.getName());
         this.queryOldest = String.format(DESC_OLDEST_VM_STAT, cat.getName());
+        this.queryNewestUntil = String.format(DESC_NEWEST_VM_STAT_UNTIL, cat.getName());
     }
 
     /**
@@ -103,6 +117,22 @@ public class VmBoundaryPojoGetter<T extends TimeStampedPojo> extends AbstractDao
         return runAgentAndVmIdQuery(vmId.get(), agentId.get(), queryOldest);
     }
 
+    /**
+     * @return the newest stat with a time stamp not after the given time
+     *         stamp, or null if there is none
+     */
+    public T getNewestStatUntil(final VmId vmId, final AgentId agentId, final long timeStamp) {
+        return executeQuery(new AbstractDaoQuery<T>(storage, cat, queryNewestUntil) {
+            @Override
+            public PreparedStatement<T> customize(PreparedStatement<T> preparedStatement) {
+                preparedStatement.setString(0, agentId.get());
+                preparedStatement.setString(1, vmId.get());
+                preparedStatement.setLong(2, timeStamp);
+                return preparedStatement;
+            }
+        }).head();
+    }
+
     private T runAgentAndVmIdQuery(final String vmId, final String agentId, final String descriptor) {
         return executeQuery(new AbstractDaoQuery<T>(storage, cat, descriptor) {
             @Override
@@ -124,6 +154,11 @@ public class VmBoundaryPojoGetter<T extends TimeStampedPojo> extends AbstractDao
         return queryOldest;
     }
 
+    //Package private for testing
+    String getNewestUntilQueryDesc() {
+        return queryNewestUntil;
+    }
+
     @Override
     protected Logger getLogger() {
         return logger;
@@ -36,6 +36,7 @@
 
 package com.redhat.thermostat.storage.core;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Logger;
 
@@ -46,6 +47,16 @@ import com.redhat.thermostat.storage.model.TimeStampedPojo;
 
 /**
  * Get a {@link List} of {@link TimeStampedPojo}s newer than a given time stamp.
+ * <p>
+ * Categories which are written on change only, with a heartbeat, have no
+ * samples for stretches of time in which the values didn't change. Getters
+ * created with <code>fillImpliedSamples</code> set additionally return the
+ * newest sample before the given time stamp, whose values are still in effect
+ * at that time, unless there is a sample at exactly the given time stamp.
+ * Callers which pass the time stamp of the newest sample they have seen so
+ * far therefore don't get any sample twice. Those getters need the
+ * {@link VmBoundaryPojoGetter#DESC_NEWEST_VM_STAT_UNTIL} descriptor of the
+ * category to be registered.
  *
  * @see VmTimeIntervalPojoListGetter
  */
@@ -61,11 +72,17 @@ public class VmLatestPojoListGetter<T extends TimeStampedPojo> extends AbstractD
     private final Storage storage;
     private final Category<T> cat;
     private final String queryLatest;
+    private final VmBoundaryPojoGetter<T> boundaryGetter;
 
     public VmLatestPojoListGetter(Storage storage, Category<T> cat) {
+        this(storage, cat, false);
+    }
+
+    public VmLatestPojoListGetter(Storage storage, Category<T> cat, boolean fillImpliedSamples) {
         this.storage = storage;
         this.cat = cat;
         this.queryLatest = String.format(VM_LATEST_QUERY_FORMAT, cat.getName());
+        this.boundaryGetter = fillImpliedSamples ? new VmBoundaryPojoGetter<>(storage, cat) : null;
     }
 
     /**
@@ -77,7 +94,7 @@ public class VmLatestPojoListGetter<T extends TimeStampedPojo> extends AbstractD
     }
 
     public List<T> getLatest(final AgentId agentId, final VmId vmId, final long since) {
-        return executeQuery(new AbstractDaoQuery<T>(storage, cat, queryLatest) {
+        List<T> result = executeQuery(new AbstractDaoQuery<T>(storage, cat, queryLatest) {
             @Override
             public PreparedStatement<T> customize(PreparedStatement<T> preparedStatement) {
                 preparedStatement.setString(0, agentId.get());
@@ -86,6 +103,15 @@ public class VmLatestPojoListGetter<T extends TimeStampedPojo> extends AbstractD
                 return preparedStatement;
             }
         }).asList();
+        if (boundaryGetter != null) {
+            T preceding = boundaryGetter.getNewestStatUntil(vmId, agentId, since);
+            if (preceding != null && preceding.getTimeStamp() < since) {
+                result = new ArrayList<>(result);
+                // sorted newest first
+                result.add(preceding);
+            }
+        }
+        return result;
     }
 
     // package private for tests
@@ -36,6 +36,7 @@
 
 package com.redhat.thermostat.storage.core;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Logger;
 
@@ -47,6 +48,25 @@ import com.redhat.thermostat.storage.model.TimeStampedPojo;
 /**
  * Get a {@link List} of {@link TimeStampedPojo}s in a given time interval
  * range.
+ * <p>
+ * Categories which are written on change only, with a heartbeat, have no
+ * samples for stretches of time in which the values didn't change. Getters
+ * created with <code>fillImpliedSamples</code> set additionally return the
+ * newest sample before the start of the interval, whose values are still in
+ * effect at the start of the interval. Those getters need the
+ * {@link VmBoundaryPojoGetter#DESC_NEWEST_VM_STAT_UNTIL} descriptor of the
+ * category to be registered.
+ * <p>
+ * Long intervals can be downsampled by the storage to a given resolution, so
+ * that a chart doesn't fetch many more samples than it can show. Callers
+ * doing so need the {@link #VM_INTERVAL_BUCKETED_QUERY_FORMAT} descriptor of
+ * the category to be registered.
+ * <p>
+ * If the category has a {@link DataRollup}, downsampled reads use the
+ * coarsest rollup tier which is fine enough and fill in the most recent,
+ * not yet rolled up, part of the interval from the category itself. Callers
+ * need to register the tier categories as well as the
+ * {@link #VM_INTERVAL_BUCKETED_QUERY_FORMAT} descriptor of each.
  *
  * @see VmLatestPojoListGetter
  */
@@ -63,16 +83,33 @@ public class VmTimeIntervalPojoListGetter<T extends TimeStampedPojo> extends Abs
             + Key.TIMESTAMP.getName() + "' < ?l SORT '"
             + Key.TIMESTAMP.getName() + "' DSC";
 
+    // Same as above, but only returns the newest record of each bucket of
+    // records whose time stamps are in the same multiple of the bucket width.
+    public static final String VM_INTERVAL_BUCKETED_QUERY_FORMAT = "QUERY-LAST %s WHERE '"
+            + Key.AGENT_ID.getName() + "' = ?s AND '"
+            + Key.VM_ID.getName() + "' = ?s AND '"
+            + Key.TIMESTAMP.getName() + "' >= ?l AND '"
+            + Key.TIMESTAMP.getName() + "' < ?l BUCKET ?l SORT '"
+            + Key.TIMESTAMP.getName() + "' DSC";
+
     private static final Logger logger = LoggingUtils.getLogger(VmTimeIntervalPojoListGetter.class);
 
     private final Storage storage;
     private final Category<T> cat;
     private final String query;
+    private final String bucketedQuery;
+    private final VmBoundaryPojoGetter<T> boundaryGetter;
 
     public VmTimeIntervalPojoListGetter(Storage storage, Category<T> cat) {
+        this(storage, cat, false);
+    }
+
+    public VmTimeIntervalPojoListGetter(Storage storage, Category<T> cat, boolean fillImpliedSamples) {
         this.storage = storage;
         this.cat = cat;
         this.query = String.format(VM_INTERVAL_QUERY_FORMAT, cat.getName());
+        this.bucketedQuery = String.format(VM_INTERVAL_BUCKETED_QUERY_FORMAT, cat.getName());
+        this.boundaryGetter = fillImpliedSamples ? new VmBoundaryPojoGetter<>(storage, cat) : null;
     }
 
     /**
@@ -84,7 +121,7 @@ public class VmTimeIntervalPojoListGetter<T extends TimeStampedPojo> extends Abs
     }
 
     public List<T> getLatest(final AgentId agentId, final VmId vmId, final long since, final long to) {
-        return executeQuery(new AbstractDaoQuery<T>(storage, cat, query) {
+        List<T> result = executeQuery(new AbstractDaoQuery<T>(storage, cat, query) {
             @Override
             public PreparedStatement<T> customize(PreparedStatement<T> preparedStatement) {
                 preparedStatement.setString(0, agentId.get());
@@ -94,6 +131,128 @@ public class VmTimeIntervalPojoListGetter<T extends TimeStampedPojo> extends Abs
                 return preparedStatement;
             }
         }).asList();
+        return fillImpliedSample(agentId, vmId, since, to, result);
+    }
+
+    /**
+     * Gets the samples in the given interval, downsampled to about
+     * <code>resolution</code> samples: the interval is split into buckets of
+     * equal width and only the newest sample of each bucket is returned.
+     *
+     * @param resolution
+     *            the number of samples wanted, typically the number of pixels
+     *            the interval takes up on a chart. All samples are returned if
+     *            this is not positive or the interval is short enough.
+     */
+    public List<T> getLatest(final AgentId agentId, final VmId vmId, final long since, final long to, int resolution) {
+        final long bucketWidth = getBucketWidth(since, to, resolution);
+        if (bucketWidth <= 1) {
+            return getLatest(agentId, vmId, since, to);
+        }
+        DataRollup.Tier tier = selectTier(cat.getRollup(), bucketWidth);
+        if (tier == null) {
+            List<T> result = getBucketed(cat, bucketedQuery, agentId, vmId, since, to, bucketWidth);
+            return fillImpliedSample(agentId, vmId, since, to, result);
+        }
+        Category<T> tierCat = cat.getRollupCategory(tier);
+        String tierQuery = String.format(VM_INTERVAL_BUCKETED_QUERY_FORMAT, tierCat.getName());
+        List<T> rolledUp = getBucketed(tierCat, tierQuery, agentId, vmId, since, to, bucketWidth);
+        // Rollups lag behind by at least one tier width. Read whatever
+        // follows the newest rolled up interval from the raw data.
+        long rolledUpUntil = since;
+        if (!rolledUp.isEmpty()) {
+            long newest = rolledUp.get(0).getTimeStamp();
+            rolledUpUntil = newest - newest % tier.getWidthMillis() + tier.getWidthMillis();
+        }
+        List<T> result = rolledUp;
+        if (rolledUpUntil < to) {
+            result = appendRaw(agentId, vmId, Math.max(since, alignDown(rolledUpUntil, bucketWidth)), to,
+                    bucketWidth, rolledUp);
+        }
+        return fillImpliedSample(agentId, vmId, since, to, result);
+    }
+
+    /*
+     * Buckets are multiples of the bucket width, while rolledUpUntil is a
+     * multiple of the tier width. The raw data is therefore read from the
+     * start of the bucket which rolledUpUntil falls into, so that bucket is
+     * returned only once. If the raw data has a sample in that bucket, it
+     * is the newer one and replaces the rolled up sample.
+     */
+    private List<T> appendRaw(AgentId agentId, VmId vmId, long rawSince, long to, long bucketWidth,
+            List<T> rolledUp) {
+        // sorted newest first
+        List<T> raw = getBucketed(cat, bucketedQuery, agentId, vmId, rawSince, to, bucketWidth);
+        boolean rawHasFirstBucket = !raw.isEmpty()
+                && raw.get(raw.size() - 1).getTimeStamp() < alignDown(rawSince, bucketWidth) + bucketWidth;
+        List<T> result = new ArrayList<>(raw);
+        for (T sample : rolledUp) {
+            if (!rawHasFirstBucket || sample.getTimeStamp() < rawSince) {
+                result.add(sample);
+            }
+        }
+        return result;
+    }
+
+    private static long alignDown(long timeStamp, long width) {
+        return timeStamp - timeStamp % width;
+    }
+
+    private List<T> getBucketed(Category<T> category, String descriptor, final AgentId agentId, final VmId vmId,
+            final long since, final long to, final long bucketWidth) {
+        return executeQuery(new AbstractDaoQuery<T>(storage, category, descriptor) {
+            @Override
+            public PreparedStatement<T> customize(PreparedStatement<T> preparedStatement) {
+                preparedStatement.setString(0, agentId.get());
+                preparedStatement.setString(1, vmId.get());
+                preparedStatement.setLong(2, since);
+                preparedStatement.setLong(3, to);
+                preparedStatement.setLong(4, bucketWidth);
+                return preparedStatement;
+            }
+        }).asList();
+    }
+
+    /*
+     * The coarsest tier keeping at least one record per bucket, or null if
+     * even the finest tier is too coarse. Package private for tests.
+     */
+    static DataRollup.Tier selectTier(DataRollup rollup, long bucketWidth) {
+        if (rollup == null) {
+            return null;
+        }
+        DataRollup.Tier selected = null;
+        for (DataRollup.Tier tier : rollup.getTiers()) {
+            if (tier.getWidthMillis() <= bucketWidth) {
+                selected = tier;
+            }
+        }
+        return selected;
+    }
+
+    // package private for tests
+    static long getBucketWidth(long since, long to, int resolution) {
+        if (resolution <= 0 || to <= since) {
+            return 0;
+        }
+        // round up, so that there are no more buckets than asked for
+        long interval = to - since;
+        return interval / resolution + (interval % resolution == 0 ? 0 : 1);
+    }
+
+    private List<T> fillImpliedSample(AgentId agentId, VmId vmId, long since, long to, List<T> result) {
+        if (boundaryGetter != null) {
+            // sorted newest first
+            boolean startsAtSince = !result.isEmpty() && result.get(result.size() - 1).getTimeStamp() == since;
+            if (!startsAtSince && since < to) {
+                T preceding = boundaryGetter.getNewestStatUntil(vmId, agentId, since);
+                if (preceding != null) {
+                    result = new ArrayList<>(result);
+                    result.add(preceding);
+                }
+            }
+        }
+        return result;
     }
 
     // package private for tests
@@ -101,6 +260,11 @@ public class VmTimeIntervalPojoListGetter<T extends TimeStampedPojo> extends Abs
         return query;
     }
 
+    // package private for tests
+    String getQueryBucketedDesc() {
+        return bucketedQuery;
+    }
+
     @Override
     protected Logger getLogger() {
         return logger;
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.storage.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import com.redhat.thermostat.common.utils.LoggingUtils;
+
+/**
+ * Tells whether samples of a {@link Category} are written on change only.
+ * Such categories have no samples for stretches of time in which the values
+ * didn't change, but at least one sample per heartbeat interval.
+ * <p>
+ * Write-on-change is enabled per category by setting the system property
+ * {@link #HEARTBEAT_PROPERTY_PREFIX}<code>&lt;category name&gt;</code> to
+ * the heartbeat interval in seconds. Writers use it to skip samples and
+ * readers to fill in the samples which have been skipped.
+ */
+public final class WriteOnChange {
+
+    public static final String HEARTBEAT_PROPERTY_PREFIX = "com.redhat.thermostat.backend.writeOnChange.";
+
+    private static final Logger logger = LoggingUtils.getLogger(WriteOnChange.class);
+
+    private WriteOnChange() {
+        // static helpers only
+    }
+
+    /**
+     * @return the heartbeat interval of the given category in milliseconds,
+     *         or zero if every sample gets written
+     */
+    public static long getHeartbeatMillis(Category<?> category) {
+        String property = HEARTBEAT_PROPERTY_PREFIX + category.getName();
+        Long heartbeatSeconds = Long.getLong(property);
+        if (heartbeatSeconds == null) {
+            return 0;
+        }
+        if (heartbeatSeconds <= 0) {
+            logger.warning("Ignoring invalid " + property + " of " + heartbeatSeconds + "s");
+            return 0;
+        }
+        return TimeUnit.SECONDS.toMillis(heartbeatSeconds);
+    }
+
+    public static boolean isEnabled(Category<?> category) {
+        return getHeartbeatMillis(category) > 0;
+    }
+
+}
@@ -47,4 +47,10 @@ import java.lang.annotation.RetentionPolicy;
 @Retention(RetentionPolicy.RUNTIME)
 public @interface Category {
     String value();
+
+    /**
+     * Number of days records are kept, based on their {@code timeStamp}
+     * property. Zero (the default) keeps them forever.
+     */
+    long retentionDays() default 0;
 }
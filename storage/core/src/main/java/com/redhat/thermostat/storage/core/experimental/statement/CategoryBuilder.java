@@ -37,6 +37,7 @@
 package com.redhat.thermostat.storage.core.experimental.statement;
 
 import com.redhat.thermostat.storage.core.Category;
+import com.redhat.thermostat.storage.core.DataRetention;
 import com.redhat.thermostat.storage.core.Key;
 import com.redhat.thermostat.storage.model.Pojo;
 import java.lang.reflect.Constructor;
@@ -44,6 +45,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  *
@@ -102,11 +104,16 @@ public class CategoryBuilder<T extends Pojo> {
             argumentObjects.add(bean);
             argumentObjects.add(keys);
 
-            // indexed keys are optional
-            if (!indexed.isEmpty()) {
+            // indexed keys and retention are optional
+            long retentionDays = StatementUtils.getRetentionDays(bean);
+            if (!indexed.isEmpty() || retentionDays > 0) {
                 argumentClasses.add(List.class);
                 argumentObjects.add(indexed);
             }
+            if (retentionDays > 0) {
+                argumentClasses.add(DataRetention.class);
+                argumentObjects.add(DataRetention.maxAge(retentionDays, TimeUnit.DAYS));
+            }
 
             Class<?>[] classes = argumentClasses.toArray(new Class[argumentClasses.size()]);
             Object[] objects = argumentObjects.toArray();
@@ -120,9 +127,12 @@ public class CategoryBuilder<T extends Pojo> {
 
     private Category<T> create(Class[] classes, Object[] objects) {
 
-        // we are using this constructor:
+        // we are using one of these constructors:
         // Category(String name, Class<T> dataClass,
         //          List<Key<?>> keys, List<Key<?>> indexedKeys)
+        // Category(String name, Class<T> dataClass,
+        //          List<Key<?>> keys, List<Key<?>> indexedKeys,
+        //          DataRetention retention)
 
         try {
             Constructor<Category> constructor =
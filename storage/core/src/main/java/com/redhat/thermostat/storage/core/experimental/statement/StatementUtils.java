@@ -73,6 +73,14 @@ public class StatementUtils {
         return pojoClass.getAnnotation(Category.class).value();
     }
 
+    static <T extends Pojo> long getRetentionDays(Class<T> pojoClass) {
+        if (!pojoClass.isAnnotationPresent(Category.class)) {
+            return 0;
+        }
+
+        return pojoClass.getAnnotation(Category.class).retentionDays();
+    }
+
     static boolean hasAnnotation(PropertyDescriptor desc,
                                  Class<? extends Annotation> annotation)
     {
@@ -124,7 +124,7 @@ public class Activator implements BundleActivator {
             
                 ApplicationService appService = services.get(ApplicationService.class);
                 TimerFactory timers = appService.getTimerFactory();
-                NetworkMonitor networkMonitor = new NetworkMonitorImpl(timers, hostInfoDao);
+                NetworkMonitor networkMonitor = new NetworkMonitorImpl(timers, hostInfoDao, agentInfoDao);
                 reg = context.registerService(NetworkMonitor.class.getName(), networkMonitor, null);
                 regs.add(reg);
                                 
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.storage.internal;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.redhat.thermostat.common.utils.LoggingUtils;
+import com.redhat.thermostat.shared.config.InvalidConfigurationException;
+
+/**
+ * Retrieves the settings for batched writes of {@code ADD} statements in
+ * queued storage.
+ */
+public class WriteBatchSettingsRetriever {
+    
+    private static final Logger logger = LoggingUtils.getLogger(WriteBatchSettingsRetriever.class);
+    
+    /*
+     * Integer. The number of pending ADD statements of a single category which
+     * triggers a flush of the batch. Batching is disabled if unset.
+     */
+    static final String BATCH_SIZE = "com.redhat.thermostat.storage.queue.batchSize";
+    
+    /*
+     * Long. The maximum amount of time in milliseconds an ADD statement may
+     * be held back in a pending batch before that batch gets flushed.
+     */
+    static final String BATCH_MAX_LATENCY = "com.redhat.thermostat.storage.queue.batchMaxLatency";
+    
+    /*
+     * The default latency deadline if batching is enabled but no deadline
+     * has been set explicitly.
+     */
+    static final long DEFAULT_BATCH_MAX_LATENCY = 1000;
+
+    /**
+     * @return true if and only if a batch size has been configured.
+     */
+    public boolean isBatchingEnabled() {
+        return Integer.getInteger(BATCH_SIZE) != null;
+    }
+    
+    public int getBatchSize() {
+        Integer candidate = Integer.getInteger(BATCH_SIZE);
+        if (candidate == null) {
+            throw new IllegalStateException(BATCH_SIZE + " unset. Batching disabled.");
+        }
+        if (candidate <= 0) {
+            throw new InvalidConfigurationException("Value of property " +
+                    BATCH_SIZE + ": " + candidate + " <= 0");
+        }
+        logger.log(Level.CONFIG, "Using a batch size of " + candidate + " for QueuedStorage");
+        return candidate;
+    }
+    
+    public long getMaxLatency() {
+        Long candidate = Long.getLong(BATCH_MAX_LATENCY);
+        if (candidate == null) {
+            logger.log(Level.CONFIG, BATCH_MAX_LATENCY + " system property unset."
+                    + " Using default: " + DEFAULT_BATCH_MAX_LATENCY);
+            return DEFAULT_BATCH_MAX_LATENCY;
+        }
+        if (candidate <= 0) {
+            throw new InvalidConfigurationException("Value of property " +
+                    BATCH_MAX_LATENCY + ": " + candidate + " <= 0");
+        }
+        return candidate;
+    }
+}
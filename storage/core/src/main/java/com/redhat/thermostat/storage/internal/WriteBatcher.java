@@ -0,0 +1,260 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.storage.internal;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import com.redhat.thermostat.common.utils.LoggingUtils;
+import com.redhat.thermostat.shared.perflog.PerformanceLogFormatter;
+import com.redhat.thermostat.shared.perflog.PerformanceLogFormatter.LogTag;
+import com.redhat.thermostat.storage.core.Category;
+import com.redhat.thermostat.storage.core.QueuedStorage;
+
+/**
+ * Groups pending writes by {@link Category} and hands them off to a
+ * {@link Flusher} in batches. A batch gets flushed once it reaches the
+ * configured size or once its oldest write has been pending for longer
+ * than the configured maximum latency, whichever comes first.
+ * <p>
+ * Flushes are run on the given executor. One flush corresponds to one task
+ * submitted to that executor.
+ *
+ * @see QueuedStorage
+ */
+public class WriteBatcher<E> {
+
+    /**
+     * Writes out a batch of pending writes. Called from the executor
+     * thread which got the flush task assigned.
+     */
+    public interface Flusher<E> {
+        
+        void flush(Category<?> category, List<E> batch);
+    }
+    
+    private static final String QUEUE_SIZE_PREFIX = "BATCH_Q_SIZE";
+    private static final String QUEUE_SIZE_FORMAT = QUEUE_SIZE_PREFIX + " %s";
+    private static final String FLUSH_PREFIX = "BATCH_FLUSH";
+    private static final String FLUSH_FORMAT = FLUSH_PREFIX + "(%s) %s";
+    private static final Logger logger = LoggingUtils.getLogger(WriteBatcher.class);
+    
+    private final Object lock = new Object();
+    private final Map<Category<?>, Batch> pending = new HashMap<>();
+    private final ExecutorService executor;
+    private final ScheduledExecutorService timer;
+    private final Flusher<E> flusher;
+    private final int batchSize;
+    private final long maxLatencyMillis;
+    // performance logger. may be null
+    private final PerformanceLogFormatter perfLogFormatter;
+    private final LogTag logTag;
+    private long pendingCount;
+    
+    private class Batch {
+        
+        private final Category<?> category;
+        private final List<E> writes;
+        private ScheduledFuture<?> deadline;
+        
+        private Batch(Category<?> category) {
+            this.category = category;
+            this.writes = new ArrayList<>(batchSize);
+        }
+    }
+    
+    /**
+     * 
+     * @param executor
+     *            The executor to submit flush tasks to.
+     * @param timer
+     *            The scheduler used for max-latency deadlines.
+     * @param flusher
+     *            The flusher writing out batches.
+     * @param batchSize
+     *            The number of pending writes of a category triggering a
+     *            flush.
+     * @param maxLatencyMillis
+     *            The maximum time a write may stay pending.
+     * @param perfLogFormatter
+     *            The formatter for performance log messages. May be null.
+     * @param logTag
+     *            The log tag to use when logging performance messages.
+     */
+    public WriteBatcher(ExecutorService executor, ScheduledExecutorService timer, Flusher<E> flusher,
+            int batchSize, long maxLatencyMillis, PerformanceLogFormatter perfLogFormatter, LogTag logTag) {
+        if (batchSize <= 0 || maxLatencyMillis <= 0) {
+            throw new IllegalArgumentException("batch size and latency must be > 0");
+        }
+        this.executor = Objects.requireNonNull(executor);
+        this.timer = Objects.requireNonNull(timer);
+        this.flusher = Objects.requireNonNull(flusher);
+        this.batchSize = batchSize;
+        this.maxLatencyMillis = maxLatencyMillis;
+        this.perfLogFormatter = perfLogFormatter;
+        this.logTag = logTag;
+    }
+    
+    /**
+     * Adds a write to the pending batch of the given category. Might trigger
+     * a flush of that batch.
+     */
+    public void enqueue(final Category<?> category, E write) {
+        Batch full = null;
+        long queueDepth;
+        synchronized (lock) {
+            Batch batch = pending.get(category);
+            if (batch == null) {
+                final Batch newBatch = new Batch(category);
+                newBatch.deadline = timer.schedule(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        flushIfPending(newBatch);
+                    }
+                    
+                }, maxLatencyMillis, TimeUnit.MILLISECONDS);
+                pending.put(category, newBatch);
+                batch = newBatch;
+            }
+            batch.writes.add(write);
+            pendingCount++;
+            if (batch.writes.size() >= batchSize) {
+                full = takeLocked(batch);
+            }
+            queueDepth = pendingCount;
+        }
+        logQueueDepth(queueDepth);
+        if (full != null) {
+            submit(full);
+        }
+    }
+    
+    /**
+     * Flushes the pending batch of the given category, if any. Useful in order
+     * to keep writes of the same category in order.
+     */
+    public void flush(Category<?> category) {
+        Batch batch;
+        synchronized (lock) {
+            batch = pending.get(category);
+            if (batch == null) {
+                return;
+            }
+            batch = takeLocked(batch);
+        }
+        submit(batch);
+    }
+    
+    /**
+     * Flushes all pending batches. Note that flushes are only submitted to
+     * the executor and not yet applied when this method returns.
+     */
+    public void flushAll() {
+        List<Batch> batches;
+        synchronized (lock) {
+            batches = new ArrayList<>(pending.values());
+            for (Batch b : batches) {
+                takeLocked(b);
+            }
+        }
+        for (Batch b : batches) {
+            submit(b);
+        }
+    }
+    
+    /**
+     * @return The number of writes which have not yet been handed off to the
+     *         executor.
+     */
+    public long getPendingCount() {
+        synchronized (lock) {
+            return pendingCount;
+        }
+    }
+    
+    private void flushIfPending(Batch batch) {
+        synchronized (lock) {
+            if (pending.get(batch.category) != batch) {
+                // already flushed
+                return;
+            }
+            takeLocked(batch);
+        }
+        submit(batch);
+    }
+    
+    // Must hold lock
+    private Batch takeLocked(Batch batch) {
+        pending.remove(batch.category);
+        pendingCount -= batch.writes.size();
+        batch.deadline.cancel(false);
+        return batch;
+    }
+    
+    private void submit(final Batch batch) {
+        executor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                long start = System.nanoTime();
+                flusher.flush(batch.category, batch.writes);
+                long end = System.nanoTime();
+                if (perfLogFormatter != null) {
+                    String msg = String.format(FLUSH_FORMAT, batch.writes.size(), batch.category.getName());
+                    logger.log(LoggingUtils.LogLevel.PERFLOG.getLevel(), perfLogFormatter.format(logTag, msg, (end - start)));
+                }
+            }
+            
+        });
+    }
+    
+    private void logQueueDepth(long queueDepth) {
+        if (perfLogFormatter != null) {
+            String msg = String.format(QUEUE_SIZE_FORMAT, queueDepth);
+            logger.log(LoggingUtils.LogLevel.PERFLOG.getLevel(), perfLogFormatter.format(logTag, msg));
+        }
+    }
+}
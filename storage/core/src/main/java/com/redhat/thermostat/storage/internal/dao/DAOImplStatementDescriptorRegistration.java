@@ -76,6 +76,7 @@ public class DAOImplStatementDescriptorRegistration implements
         daoDescs.add(VmInfoDAOImpl.DESC_ADD_VM_INFO);
         daoDescs.add(VmInfoDAOImpl.DESC_UPDATE_VM_STOP_TIME);
         daoDescs.add(VmInfoDAOImpl.QUERY_VM_FROM_ID);
+        daoDescs.add(VmInfoDAOImpl.QUERY_VMS_FOR_AGENT_CHANGED_SINCE);
         daoDescs.add(SchemaInfoDAOImpl.QUERY_ALL_COLLECTIONS);
 
         return daoDescs;
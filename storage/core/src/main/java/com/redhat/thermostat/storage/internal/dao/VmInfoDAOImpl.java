@@ -73,6 +73,14 @@ public class VmInfoDAOImpl extends BaseCountable implements VmInfoDAO {
             + vmInfoCategory.getName() + " WHERE '" 
             + Key.AGENT_ID.getName() + "' = ?s";
 
+    // AND binds tighter than OR; descriptors have no parentheses.
+    static final String QUERY_VMS_FOR_AGENT_CHANGED_SINCE = "QUERY "
+            + vmInfoCategory.getName() + " WHERE '"
+            + Key.AGENT_ID.getName() + "' = ?s AND '"
+            + startTimeKey.getName() + "' >= ?l OR '"
+            + Key.AGENT_ID.getName() + "' = ?s AND '"
+            + stopTimeKey.getName() + "' >= ?l";
+
     static final String QUERY_VM_FROM_ID = "QUERY "
             + vmInfoCategory.getName() + " WHERE '"
             + Key.VM_ID.getName() + "' = ?s";
@@ -218,6 +226,28 @@ public class VmInfoDAOImpl extends BaseCountable implements VmInfoDAO {
                 }).asList();
     }
 
+    /**
+     * Not part of {@link VmInfoDAO}, so that its other implementations need
+     * not provide it.
+     *
+     * @param since a time stamp, as recorded by the agent
+     * @return information on VMs monitored by the given agent which started
+     *         or stopped at or after {@code since}.
+     */
+    public List<VmInfo> getVmInfosChangedSince(final AgentId agentId, final long since) {
+        return executeQuery(
+                new AbstractDaoQuery<VmInfo>(storage, vmInfoCategory, QUERY_VMS_FOR_AGENT_CHANGED_SINCE) {
+                    @Override
+                    public PreparedStatement<VmInfo> customize(PreparedStatement<VmInfo> preparedStatement) {
+                        preparedStatement.setString(0, agentId.get());
+                        preparedStatement.setLong(1, since);
+                        preparedStatement.setString(2, agentId.get());
+                        preparedStatement.setLong(3, since);
+                        return preparedStatement;
+                    }
+                }).asList();
+    }
+
     @Override
     public long getCount() {
         return getCount(storage, aggregateCategory, AGGREGATE_COUNT_ALL_VMS);
@@ -71,6 +71,8 @@ import com.redhat.thermostat.storage.query.BinaryLogicalOperator;
  * <ul>
  * <li>QUERY (read)</li>
  * <li>QUERY-COUNT (read)</li>
+ * <li>QUERY-DISTINCT (read)</li>
+ * <li>QUERY-MIN, QUERY-MAX, QUERY-AVG, QUERY-LAST (read)</li>
  * <li>ADD (write)</li>
  * <li>UPDATE (write)</li>
  * <li>REPLACE (write)</li>
@@ -80,18 +82,25 @@ import com.redhat.thermostat.storage.query.BinaryLogicalOperator;
  * <p><strong>Grammar:</strong></p>
  * <pre>
  * statementDesc := statementType category setList suffix
- * statementType := 'QUERY' | 'QUERY-COUNT' |
+ * statementType := 'QUERY' | 'QUERY-COUNT' | aggregateType |
  *                  'ADD' | 'REPLACE' | 'UPDATE' |
  *                  'REMOVE'
+ * aggregateType := aggregateFunc aggregateKey
+ * aggregateFunc := 'QUERY-COUNT' | 'QUERY-DISTINCT' | 'QUERY-MIN' |
+ *                  'QUERY-MAX' | 'QUERY-AVG' | 'QUERY-LAST'
+ * aggregateKey  := '(' string ')' | \empty
  * category      := string
  * setList       := 'SET' setValues | \empty
  * setValues     := valuePair valueList
  * valuePair     := term '=' term
  * valueList     := ',' setValues | \empty
  * suffix        := 'WHERE' where |
+ *                  'BUCKET' bucketed |
  *                  'SORT' sortCond |
  *                  'LIMIT' term | \empty
- * where         := whereExp sort limit
+ * where         := whereExp bucket sort limit
+ * bucket        := 'BUCKET' bucketed | \empty
+ * bucketed      := term sort limit
  * whereExp      := andCond orCond
  * orCond        := 'OR' whereExp | \empty
  * sort          := 'SORT' sortCond | \empty
@@ -147,10 +156,14 @@ class BasicDescriptorParser<T extends Pojo> implements StatementDescriptorParser
     private static final String QUERY_DISTINCT_REGEXP = "QUERY-DISTINCT" + AGGREGATE_PARAM_REGEXP;
     private static final Pattern QUERY_COUNT_PATTERN = Pattern.compile(QUERY_COUNT_REGEXP);
     private static final Pattern QUERY_DISTINCT_PATTERN = Pattern.compile(QUERY_DISTINCT_REGEXP);
+    // MIN, MAX, AVG and LAST, which aggregate per time bucket
+    private static final String QUERY_BUCKETED_REGEXP = "QUERY-(MIN|MAX|AVG|LAST)" + AGGREGATE_PARAM_REGEXP;
+    private static final Pattern QUERY_BUCKETED_PATTERN = Pattern.compile(QUERY_BUCKETED_REGEXP);
     private static final String SORTLIST_SEP = ",";
     private static final String SETLIST_SEP = SORTLIST_SEP;
     private static final String KEYWORD_SET = "SET";
     private static final String KEYWORD_WHERE = "WHERE";
+    private static final String KEYWORD_BUCKET = "BUCKET";
     private static final String KEYWORD_SORT = "SORT";
     private static final String KEYWORD_LIMIT = "LIMIT";
     private static final String KEYWORD_ASC = "ASC";
@@ -273,6 +286,12 @@ class BasicDescriptorParser<T extends Pojo> implements StatementDescriptorParser
             WhereExpression expn = new WhereExpression();
             tree.setWhereExpn(expn);
             matchWhereExp(expn.getRoot());
+            matchBucket(tree);
+            matchSort(tree);
+            matchLimit(tree);
+        } else if (tokens[currTokenIndex].equals(KEYWORD_BUCKET)) {
+            // BUCKET token eaten up by matchBucket()
+            matchBucket(tree);
             matchSort(tree);
             matchLimit(tree);
         } else if (tokens[currTokenIndex].equals(KEYWORD_SORT)) {
@@ -285,8 +304,20 @@ class BasicDescriptorParser<T extends Pojo> implements StatementDescriptorParser
         } else {
             throw new DescriptorParsingException("Unexpected token: '"
                     + tokens[currTokenIndex] + "'. Expected one of "
-                    + KEYWORD_WHERE + ", " + KEYWORD_SORT + ", " + KEYWORD_LIMIT);
+                    + KEYWORD_WHERE + ", " + KEYWORD_BUCKET + ", "
+                    + KEYWORD_SORT + ", " + KEYWORD_LIMIT);
+        }
+    }
+
+    private void matchBucket(SuffixExpression tree) throws DescriptorParsingException {
+        if (currTokenIndex < tokens.length
+                && tokens[currTokenIndex].equals(KEYWORD_BUCKET)) {
+            BucketExpression node = new BucketExpression();
+            tree.setBucketExpn(node);
+            currTokenIndex++;
+            matchTerm(node);
         }
+        // empty
     }
 
     private void matchLimit(SuffixExpression tree) throws DescriptorParsingException {
@@ -519,6 +550,36 @@ class BasicDescriptorParser<T extends Pojo> implements StatementDescriptorParser
         expn.setValue(limitVal);
     }
     
+    private void matchTerm(BucketExpression expn) throws DescriptorParsingException {
+        String term = getTerm();
+        if (term.charAt(0) == PARAM_PLACEHOLDER) {
+            assert(placeHolderCount > 0);
+            ensureValidType(term, "BUCKET");
+            if (term.charAt(1) != 'l') {
+                String msg = "Bucket parameters only accept long types. Placeholder was: " + term;
+                throw new DescriptorParsingException(msg);
+            }
+            UnfinishedBucketValue bucketValue = new UnfinishedBucketValue();
+            bucketValue.setParameterIndex(placeHolderCount - 1);
+            expn.setValue(bucketValue);
+            return;
+        }
+        String longTerm = term;
+        if (term.endsWith("l") || term.endsWith("L")) {
+            longTerm = term.substring(0, term.length() - 1);
+        }
+        long bucketVal;
+        try {
+            bucketVal = Long.parseLong(longTerm);
+        } catch (NumberFormatException e) {
+            throw new DescriptorParsingException("Invalid bucket expression. '" + term + "' not a long");
+        }
+        if (bucketVal < 0) {
+            throw new DescriptorParsingException("Invalid bucket expression. '" + term + "' is negative");
+        }
+        expn.setValue(bucketVal);
+    }
+    
     /**
      * Calls {@link #matchTerm(TerminalNode, boolean, boolean)} with a
      * {@code false isSetListContext} parameter.
@@ -768,6 +829,7 @@ class BasicDescriptorParser<T extends Pojo> implements StatementDescriptorParser
         final String statementType = tokens[0];
         Matcher queryCountMatcher = QUERY_COUNT_PATTERN.matcher(statementType);
         Matcher queryDistinctMatcher = QUERY_DISTINCT_PATTERN.matcher(statementType);
+        Matcher queryBucketedMatcher = QUERY_BUCKETED_PATTERN.matcher(statementType);
         if (statementType.equals(KNOWN_STATEMENT_TYPES[IDX_QUERY])) {
             // regular query case
             Query<T> query = storage.createQuery(desc.getCategory());
@@ -792,6 +854,9 @@ class BasicDescriptorParser<T extends Pojo> implements StatementDescriptorParser
             this.parsedStatement = createAggregatePreparedStatement(AggregateFunction.COUNT, queryCountMatcher);
         } else if (queryDistinctMatcher.matches()) {
             this.parsedStatement = createAggregatePreparedStatement(AggregateFunction.DISTINCT, queryDistinctMatcher);
+        } else if (queryBucketedMatcher.matches()) {
+            AggregateFunction function = AggregateFunction.valueOf(queryBucketedMatcher.group(1));
+            this.parsedStatement = createAggregatePreparedStatement(function, queryBucketedMatcher);
         } else {
             throw new IllegalStateException("Don't know how to create statement type '" + statementType + "'");
         }
@@ -800,10 +865,10 @@ class BasicDescriptorParser<T extends Pojo> implements StatementDescriptorParser
     private ParsedStatementImpl<T> createAggregatePreparedStatement(final AggregateFunction function, final Matcher matcher) {
         // create aggregate query
         AggregateQuery<T> aggregateQuery = storage.createAggregateQuery(function, desc.getCategory());
-        // We'll always have a match for at least one group. That group
+        // We'll always have a match for at least one group. The last group
         // will be the keyName to use (if any). For old query descriptors
         // the keyName may be null
-        String keyName = matcher.group(1); // groups start at 1
+        String keyName = matcher.group(matcher.groupCount()); // groups start at 1
         if (keyName != null) {
             Key<?> aggKey = new Key<>(keyName);
             aggregateQuery.setAggregateKey(aggKey);
@@ -830,6 +895,7 @@ class BasicDescriptorParser<T extends Pojo> implements StatementDescriptorParser
         final String statementType = tokens[currTokenIndex];
         Matcher queryCountMatcher = QUERY_COUNT_PATTERN.matcher(statementType);
         Matcher queryDistinctMatcher = QUERY_DISTINCT_PATTERN.matcher(statementType);
+        Matcher queryBucketedMatcher = QUERY_BUCKETED_PATTERN.matcher(statementType);
         if (statementType.equals(KNOWN_STATEMENT_TYPES[IDX_QUERY])) {
             // QUERY
             currTokenIndex++;
@@ -851,6 +917,9 @@ class BasicDescriptorParser<T extends Pojo> implements StatementDescriptorParser
         } else if (queryDistinctMatcher.matches()) {
             // QUERY-DISTINCT
             currTokenIndex++;
+        } else if (queryBucketedMatcher.matches()) {
+            // QUERY-MIN, QUERY-MAX, QUERY-AVG or QUERY-LAST
+            currTokenIndex++;
         } else {
             throw new DescriptorParsingException("Unknown statement type: '" + statementType + "'");
         }
@@ -37,6 +37,7 @@
 package com.redhat.thermostat.storage.internal.statement;
 
 import com.redhat.thermostat.storage.core.Add;
+import com.redhat.thermostat.storage.core.AggregateQuery;
 import com.redhat.thermostat.storage.core.IllegalPatchException;
 import com.redhat.thermostat.storage.core.ParsedStatement;
 import com.redhat.thermostat.storage.core.PreparedParameter;
@@ -87,6 +88,7 @@ class ParsedStatementImpl<T extends Pojo> implements ParsedStatement<T> {
         
         patchSetList(stmt, params);
         patchWhere(stmt, params);
+        patchBucket(stmt, params);
         patchSort(stmt, params);
         patchLimit(stmt, params);
         // TODO count actual patches and throw an exception if not all vars
@@ -140,6 +142,28 @@ class ParsedStatementImpl<T extends Pojo> implements ParsedStatement<T> {
         }
     }
 
+    private void patchBucket(Statement<T> stmt, PreparedParameter[] params) throws IllegalPatchException {
+        BucketExpression expn = suffixExpn.getBucketExpn();
+        if (expn == null) {
+            // no bucket expn, nothing to do
+            return;
+        }
+        PatchedBucketExpression patchedExp = expn.patch(params);
+        if (stmt instanceof AggregateQuery) {
+            AggregateQuery<T> query = (AggregateQuery<T>) stmt;
+            try {
+                query.setBucketWidth(patchedExp.getBucketWidth());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalPatchException(e);
+            }
+        } else {
+            String msg = "Patching 'bucket' of non-aggregate types not supported! Class was:"
+                    + stmt.getClass().getName();
+            IllegalStateException invalid = new IllegalStateException(msg);
+            throw new IllegalPatchException(invalid);
+        }
+    }
+
     private void patchSort(Statement<T> stmt, PreparedParameter[] params) throws IllegalPatchException {
         SortExpression expn = suffixExpn.getSortExpn();
         if (expn == null) {
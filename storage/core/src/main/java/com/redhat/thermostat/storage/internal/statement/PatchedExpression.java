@@ -36,6 +36,7 @@
 
 package com.redhat.thermostat.storage.internal.statement;
 
+import com.redhat.thermostat.storage.core.AggregateQuery;
 import com.redhat.thermostat.storage.core.Query;
 import com.redhat.thermostat.storage.query.Expression;
 import com.redhat.thermostat.storage.core.Query.SortDirection;
@@ -98,6 +99,18 @@ interface PatchedLimitExpression extends PatchedExpression {
     
 }
 
+interface PatchedBucketExpression extends PatchedExpression {
+    
+    /**
+     * 
+     * @return The patched bucket width.
+     * 
+     * @see {@link AggregateQuery#setBucketWidth(long)}
+     */
+    long getBucketWidth();
+    
+}
+
 interface PatchedSetListMemberExpression extends PatchedExpression {
     
     /**
@@ -37,6 +37,7 @@
 package com.redhat.thermostat.storage.internal.statement;
 
 import com.redhat.thermostat.storage.core.BackingStorage;
+import com.redhat.thermostat.storage.core.BulkWrite;
 import com.redhat.thermostat.storage.core.Cursor;
 import com.redhat.thermostat.storage.core.DataModifyingStatement;
 import com.redhat.thermostat.storage.core.DescriptorParsingException;
@@ -64,12 +65,26 @@ final public class PreparedStatementImpl<T extends Pojo> implements PreparedStat
     private final ParsedStatementImpl<T> parsedStatement;
     
     public PreparedStatementImpl(BackingStorage storage, StatementDescriptor<T> desc) throws DescriptorParsingException {
+        this(desc, parse(storage, desc));
+    }
+    
+    /**
+     * Creates a prepared statement for an already parsed descriptor.
+     * 
+     * @param desc
+     *            The descriptor which got parsed.
+     * @param parsedStatement
+     *            The result of {@link #parse(BackingStorage, StatementDescriptor)}
+     *            for {@code desc}. Parsed statements are not modified by
+     *            prepared statements and may be shared, since every execution
+     *            patches a raw duplicate of the parsed statement.
+     */
+    public PreparedStatementImpl(StatementDescriptor<T> desc, ParsedStatement<T> parsedStatement) {
         this.desc = desc;
-        StatementDescriptorParser<T> parser = new SemanticsEnabledDescriptorParser<>(storage, desc);
-        this.parsedStatement = (ParsedStatementImpl<T>)parser.parse();
-        int numParams = parsedStatement.getNumParams();
+        this.parsedStatement = (ParsedStatementImpl<T>)parsedStatement;
+        int numParams = this.parsedStatement.getNumParams();
         params = new PreparedParameters(numParams);
-        Statement<T> statement = parsedStatement.getRawStatement();
+        Statement<T> statement = this.parsedStatement.getRawStatement();
         if (statement instanceof DataModifyingStatement) {
             this.dmlStatement = (DataModifyingStatement<T>) statement;
         } else if (statement instanceof Query) {
@@ -77,6 +92,11 @@ final public class PreparedStatementImpl<T extends Pojo> implements PreparedStat
         }
     }
     
+    public static <T extends Pojo> ParsedStatement<T> parse(BackingStorage storage, StatementDescriptor<T> desc) throws DescriptorParsingException {
+        StatementDescriptorParser<T> parser = new SemanticsEnabledDescriptorParser<>(storage, desc);
+        return parser.parse();
+    }
+    
     // used for testing ParsedStatements
     PreparedStatementImpl(int numParams) {
         params = new PreparedParameters(numParams);
@@ -140,17 +160,30 @@ final public class PreparedStatementImpl<T extends Pojo> implements PreparedStat
 
     @Override
     public int execute() throws StatementExecutionException {
+        dmlStatement = patchWrite();
+        return dmlStatement.apply();
+    }
+    
+    /**
+     * Patches the write with the parameters set so far, as {@link #execute()}
+     * does, but leaves applying it to the caller. This allows for applying
+     * several prepared writes as one {@link BulkWrite}.
+     * 
+     * @return The patched write.
+     * @throws StatementExecutionException
+     *             If patching fails.
+     */
+    public DataModifyingStatement<T> patchWrite() throws StatementExecutionException {
         if (dmlStatement == null) {
             throw new IllegalStateException(
                     "Can't execute statement which isn't an instance of "
                             + DataModifyingStatement.class.getName());
         }
         try {
-            dmlStatement = (DataModifyingStatement<T>)parsedStatement.patchStatement(params.getParams());
+            return (DataModifyingStatement<T>)parsedStatement.patchStatement(params.getParams());
         } catch (Exception e) {
             throw new StatementExecutionException(e);
         }
-        return dmlStatement.apply();
     }
 
     @Override
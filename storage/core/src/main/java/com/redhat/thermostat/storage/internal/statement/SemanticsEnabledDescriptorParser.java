@@ -56,6 +56,8 @@ import com.redhat.thermostat.storage.core.Replace;
 import com.redhat.thermostat.storage.core.Statement;
 import com.redhat.thermostat.storage.core.StatementDescriptor;
 import com.redhat.thermostat.storage.core.Update;
+import com.redhat.thermostat.storage.model.AggregateBucket;
+import com.redhat.thermostat.storage.model.AggregateResult;
 import com.redhat.thermostat.storage.model.Pojo;
 
 class SemanticsEnabledDescriptorParser<T extends Pojo> extends
@@ -128,13 +130,40 @@ class SemanticsEnabledDescriptorParser<T extends Pojo> extends
                     // distinct queries must have a known key
                     performKeyParamChecks(aggQuery);
                     break;
+                case MIN:
+                    // fall-through
+                case MAX:
+                    // fall-through
+                case AVG:
+                    // bucket values are aggregated for a known key
+                    performKeyParamChecks(aggQuery);
+                    ensureDataClass(aggQuery, true);
+                    ensureSortedByTimeStampOnly(aggQuery);
+                    break;
+                case LAST:
+                    // last records are returned as a whole
+                    if (aggQuery.getAggregateKey() != null) {
+                        String msg = "Aggregate key not allowed for " + aggQuery.getAggregateFunction();
+                        throw new DescriptorParsingException(msg);
+                    }
+                    ensureDataClass(aggQuery, false);
+                    ensureSortedByTimeStampOnly(aggQuery);
+                    break;
                 default:
                     throw new IllegalStateException("Unknown aggregate function: " + aggQuery.getAggregateFunction());
                 }
             }
+            if (tree.getBucketExpn() != null && !isBucketed(stmt)) {
+                String msg = "BUCKET only allowed for QUERY-MIN/QUERY-MAX/QUERY-AVG/QUERY-LAST";
+                throw new DescriptorParsingException(msg);
+            }
         } else {
             assert(stmt instanceof DataModifyingStatement);
             // only queries can have sort/limit expressions
+            if (this.tree.getBucketExpn() != null) {
+                String msg = "BUCKET only allowed for QUERY-MIN/QUERY-MAX/QUERY-AVG/QUERY-LAST";
+                throw new DescriptorParsingException(msg);
+            }
             if (this.tree.getLimitExpn() != null || this.tree.getSortExpn() != null) {
                 String msg = "LIMIT/SORT only allowed for QUERY/QUERY-COUNT";
                 throw new DescriptorParsingException(msg);
@@ -142,6 +171,55 @@ class SemanticsEnabledDescriptorParser<T extends Pojo> extends
         }
     }
 
+    private boolean isBucketed(Statement<T> stmt) {
+        if (!(stmt instanceof AggregateQuery)) {
+            return false;
+        }
+        switch (((AggregateQuery<T>)stmt).getAggregateFunction()) {
+        case MIN:
+        case MAX:
+        case AVG:
+        case LAST:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /*
+     * MIN, MAX and AVG produce AggregateBuckets, whereas LAST produces records
+     * of the category.
+     */
+    private void ensureDataClass(AggregateQuery<T> aggQuery, boolean expectBuckets) throws DescriptorParsingException {
+        Class<T> dataClass = desc.getCategory().getDataClass();
+        if (expectBuckets && !AggregateBucket.class.isAssignableFrom(dataClass)) {
+            throw new DescriptorParsingException(aggQuery.getAggregateFunction()
+                    + " requires a category adapted to " + AggregateBucket.class.getSimpleName());
+        }
+        if (!expectBuckets && AggregateResult.class.isAssignableFrom(dataClass)) {
+            throw new DescriptorParsingException(aggQuery.getAggregateFunction()
+                    + " requires a non-aggregate category");
+        }
+    }
+
+    /*
+     * Buckets are only ordered in time. Sort keys given as free parameters are
+     * checked by the storage when executing the query.
+     */
+    private void ensureSortedByTimeStampOnly(AggregateQuery<T> aggQuery) throws DescriptorParsingException {
+        SortExpression sortExpn = tree.getSortExpn();
+        if (sortExpn == null) {
+            return;
+        }
+        for (SortMember member : sortExpn.getMembers()) {
+            Object sortKey = member.getSortKey();
+            if (sortKey instanceof String && !Key.TIMESTAMP.getName().equals(sortKey)) {
+                throw new DescriptorParsingException(aggQuery.getAggregateFunction()
+                        + " can only be sorted by '" + Key.TIMESTAMP.getName() + "'");
+            }
+        }
+    }
+
     private void performKeyParamChecksAllowNull(AggregateQuery<T> aggQuery) throws DescriptorParsingException {
         if (aggQuery.getAggregateKey() != null) {
             performKeyParamChecks(aggQuery);
@@ -37,12 +37,13 @@
 package com.redhat.thermostat.storage.internal.statement;
 
 /**
- * Container for where, sort and limit expressions.
+ * Container for where, bucket, sort and limit expressions.
  *
  */
 class SuffixExpression {
 
     private WhereExpression whereExpn;
+    private BucketExpression bucketExpn;
     private SortExpression sortExpn;
     private LimitExpression limitExpn;
 
@@ -54,6 +55,14 @@ class SuffixExpression {
         this.whereExpn = whereExpn;
     }
 
+    public BucketExpression getBucketExpn() {
+        return bucketExpn;
+    }
+
+    public void setBucketExpn(BucketExpression bucketExpn) {
+        this.bucketExpn = bucketExpn;
+    }
+
     public SortExpression getSortExpn() {
         return sortExpn;
     }
@@ -77,6 +86,9 @@ class SuffixExpression {
         if (whereExpn != null) {
             whereExpn.print(0);
         }
+        if (bucketExpn != null) {
+            bucketExpn.print(0);
+        }
         if (sortExpn != null) {
             sortExpn.print(0);
         }
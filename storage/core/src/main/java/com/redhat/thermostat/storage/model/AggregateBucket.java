@@ -0,0 +1,119 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+
+package com.redhat.thermostat.storage.model;
+
+import java.util.Objects;
+
+import com.redhat.thermostat.storage.core.AggregateQuery.AggregateFunction;
+import com.redhat.thermostat.storage.core.Entity;
+import com.redhat.thermostat.storage.core.Persist;
+
+/**
+ * Model class for one time bucket of a {@link AggregateFunction#MIN},
+ * {@link AggregateFunction#MAX} or {@link AggregateFunction#AVG} aggregate.
+ *
+ */
+@Entity
+public class AggregateBucket implements AggregateResult, TimeStampedPojo {
+
+    private long timeStamp;
+    private long count;
+    private double value;
+
+    /**
+     * @return The time stamp of the oldest record in this bucket.
+     */
+    @Persist
+    @Override
+    public long getTimeStamp() {
+        return timeStamp;
+    }
+
+    @Persist
+    public void setTimeStamp(long timeStamp) {
+        this.timeStamp = timeStamp;
+    }
+
+    /**
+     * @return The number of records aggregated into this bucket.
+     */
+    @Persist
+    public long getCount() {
+        return count;
+    }
+
+    @Persist
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    /**
+     * @return The aggregated value of the records in this bucket.
+     */
+    @Persist
+    public double getValue() {
+        return value;
+    }
+
+    @Persist
+    public void setValue(double value) {
+        this.value = value;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof AggregateBucket)) {
+            return false;
+        }
+        AggregateBucket o = (AggregateBucket) other;
+        return this.getTimeStamp() == o.getTimeStamp()
+                && this.getCount() == o.getCount()
+                && Double.compare(this.getValue(), o.getValue()) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(getTimeStamp(), getCount(), getValue());
+    }
+
+    @Override
+    public String toString() {
+        return "AggregateBucket[timeStamp=" + timeStamp + ", count=" + count + ", value=" + value + "]";
+    }
+
+}
@@ -38,21 +38,40 @@ package com.redhat.thermostat.storage.monitor.internal;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import com.redhat.thermostat.common.ActionNotifier;
 import com.redhat.thermostat.storage.core.AgentId;
 import com.redhat.thermostat.storage.core.HostRef;
 import com.redhat.thermostat.storage.core.VmRef;
 import com.redhat.thermostat.storage.dao.VmInfoDAO;
+import com.redhat.thermostat.storage.internal.dao.VmInfoDAOImpl;
 import com.redhat.thermostat.storage.model.VmInfo;
 import com.redhat.thermostat.storage.monitor.HostMonitor;
 import com.redhat.thermostat.storage.monitor.HostMonitor.Action;
 
+/**
+ * Tracks the living VMs of a host incrementally. Instead of loading all
+ * {@link VmInfo}s of the agent on every run, the first run loads them all
+ * and later runs only query the VMs which started or stopped since the last
+ * seen time stamp. {@link VmInfoDAO} implementations other than
+ * {@link VmInfoDAOImpl} can't query those, so all VMs get loaded on every
+ * run for them.
+ */
 class HostMonitorAction extends MonitorAction<VmRef, HostMonitor.Action> {
 
+    /* Tolerates time stamps written slightly out of order */
+    static final long WATERMARK_OVERLAP = 10_000L;
+
     private VmInfoDAO vmsDao;
     private HostRef host;
+    private AgentId agentId;
+
+    private final Map<String, VmRef> livingVMs;
+    private boolean loaded;
+    private long watermark;
         
     public HostMonitorAction(ActionNotifier<Action> notifier, VmInfoDAO vmsDao,
                              HostRef host)
@@ -60,6 +79,9 @@ class HostMonitorAction extends MonitorAction<VmRef, HostMonitor.Action> {
         super(notifier);
         this.host = host;
         this.vmsDao = vmsDao;
+        this.agentId = new AgentId(host.getAgentId());
+        this.livingVMs = new LinkedHashMap<>();
+        this.watermark = Long.MIN_VALUE;
     }
 
     @Override
@@ -74,15 +96,42 @@ class HostMonitorAction extends MonitorAction<VmRef, HostMonitor.Action> {
 
     @Override
     protected Collection<VmRef> getNewReferences() {
-        List<VmInfo> vms = vmsDao.getAllVmInfosForAgent(new AgentId(host.getAgentId()));
-        Collection<VmRef> livingVMS = new ArrayList<>();
+        if (!loaded || !(vmsDao instanceof VmInfoDAOImpl)) {
+            reload();
+        } else {
+            List<VmInfo> changed = ((VmInfoDAOImpl) vmsDao).getVmInfosChangedSince(agentId, getChangedSince());
+            for (VmInfo vmInfo : changed) {
+                update(vmInfo);
+            }
+        }
+        return new ArrayList<>(livingVMs.values());
+    }
+
+    private void reload() {
+        List<VmInfo> vms = vmsDao.getAllVmInfosForAgent(agentId);
+        livingVMs.clear();
         for (VmInfo vmInfo : vms) {
-            if (vmInfo.isAlive()) {
-                VmRef vmRef = new VmRef(host, vmInfo);
-                livingVMS.add(vmRef);
+            update(vmInfo);
+        }
+        loaded = true;
+    }
+
+    private void update(VmInfo vmInfo) {
+        watermark = Math.max(watermark, vmInfo.getStartTimeStamp());
+        if (vmInfo.isAlive()) {
+            if (!livingVMs.containsKey(vmInfo.getVmId())) {
+                livingVMs.put(vmInfo.getVmId(), new VmRef(host, vmInfo));
             }
+        } else {
+            watermark = Math.max(watermark, vmInfo.getStopTimeStamp());
+            livingVMs.remove(vmInfo.getVmId());
         }
-        return livingVMS;
     }
-}
 
+    private long getChangedSince() {
+        if (watermark < Long.MIN_VALUE + WATERMARK_OVERLAP) {
+            return Long.MIN_VALUE;
+        }
+        return watermark - WATERMARK_OVERLAP;
+    }
+}
@@ -36,25 +36,42 @@
 
 package com.redhat.thermostat.storage.monitor.internal;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
 
 import com.redhat.thermostat.common.ActionNotifier;
 
+import com.redhat.thermostat.storage.core.AgentId;
 import com.redhat.thermostat.storage.core.HostRef;
+import com.redhat.thermostat.storage.dao.AgentInfoDAO;
 import com.redhat.thermostat.storage.dao.HostInfoDAO;
+import com.redhat.thermostat.storage.model.HostInfo;
 
 import com.redhat.thermostat.storage.monitor.NetworkMonitor;
 import com.redhat.thermostat.storage.monitor.NetworkMonitor.Action;
 
+/**
+ * Only the ids of the living agents are queried on each run. Host
+ * information never changes for an agent id, so it is only fetched for
+ * agents which were not alive on the previous run.
+ */
 class NetworkMonitorAction extends MonitorAction<HostRef, NetworkMonitor.Action> {
     
     private HostInfoDAO hostDAO;
+    private AgentInfoDAO agentDAO;
+
+    private final Map<AgentId, HostRef> knownHosts;
     
     public NetworkMonitorAction(ActionNotifier<NetworkMonitor.Action> notifier,
-                                HostInfoDAO hostDAO)
+                                HostInfoDAO hostDAO, AgentInfoDAO agentDAO)
     {
         super(notifier);
         this.hostDAO = hostDAO;
+        this.agentDAO = agentDAO;
+        this.knownHosts = new HashMap<>();
     }
 
     @Override
@@ -69,7 +86,24 @@ class NetworkMonitorAction extends MonitorAction<HostRef, NetworkMonitor.Action>
 
     @Override
     protected Collection<HostRef> getNewReferences() {
-        return hostDAO.getAliveHosts();
+        Set<AgentId> aliveAgents = agentDAO.getAliveAgentIds();
+        knownHosts.keySet().retainAll(aliveAgents);
+
+        Collection<HostRef> hosts = new ArrayList<>();
+        for (AgentId agentId : aliveAgents) {
+            HostRef host = knownHosts.get(agentId);
+            if (host == null) {
+                HostInfo hostInfo = hostDAO.getHostInfo(agentId);
+                // getHostInfo may return null if user is not allowed to
+                // see the given host by ACL.
+                if (hostInfo == null) {
+                    continue;
+                }
+                host = new HostRef(hostInfo.getAgentId(), hostInfo.getHostname());
+                knownHosts.put(agentId, host);
+            }
+            hosts.add(host);
+        }
+        return hosts;
     }
 }
-
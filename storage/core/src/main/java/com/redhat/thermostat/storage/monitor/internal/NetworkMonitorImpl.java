@@ -47,6 +47,7 @@ import com.redhat.thermostat.common.Filter;
 import com.redhat.thermostat.common.Timer;
 import com.redhat.thermostat.common.TimerFactory;
 import com.redhat.thermostat.storage.core.HostRef;
+import com.redhat.thermostat.storage.dao.AgentInfoDAO;
 import com.redhat.thermostat.storage.dao.HostInfoDAO;
 import com.redhat.thermostat.storage.monitor.NetworkMonitor;
 
@@ -59,7 +60,8 @@ public class NetworkMonitorImpl implements NetworkMonitor {
     private Timer timer;
     private HostInfoDAO hostDAO;
     
-    public NetworkMonitorImpl(TimerFactory timerFactory, HostInfoDAO hostDAO) {
+    public NetworkMonitorImpl(TimerFactory timerFactory, HostInfoDAO hostDAO,
+                              AgentInfoDAO agentDAO) {
         
         this.hostDAO = hostDAO;
 
@@ -69,7 +71,7 @@ public class NetworkMonitorImpl implements NetworkMonitor {
         timer.setTimeUnit(TimeUnit.SECONDS);
         timer.setDelay(DELAY);
         timer.setSchedulingType(Timer.SchedulingType.FIXED_RATE);
-        timer.setAction(new NetworkMonitorAction(notifier, hostDAO));
+        timer.setAction(new NetworkMonitorAction(notifier, hostDAO, agentDAO));
     }
     
     @Override
@@ -44,10 +44,13 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.lang.reflect.Field;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Test;
 
@@ -184,5 +187,59 @@ public class CategoryTest {
         Key<?> key = cat.getKey("foo-key-not-there");
         assertNull(key);
     }
-}
 
+    @Test
+    public void testRetentionDefaultsToKeepingForever() {
+        Category<TestObj> category = new Category<>("testRetentionDefault", TestObj.class, Key.TIMESTAMP);
+        assertNull(category.getRetention());
+    }
+
+    @Test
+    public void testGetRetention() {
+        DataRetention retention = DataRetention.maxAge(2, TimeUnit.HOURS);
+        Category<TestObj> category = new Category<>("testGetRetention", TestObj.class,
+                Arrays.<Key<?>>asList(Key.AGENT_ID, Key.TIMESTAMP), Collections.<Key<?>>emptyList(), retention);
+        assertEquals(retention, category.getRetention());
+        assertEquals(Key.TIMESTAMP, category.getRetention().getTimeKey());
+        assertEquals(TimeUnit.HOURS.toMillis(2), category.getRetention().getMaxAgeMillis());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRetentionTimeKeyMustBeAKey() {
+        new Category<>("testRetentionTimeKeyMustBeAKey", TestObj.class,
+                Arrays.<Key<?>>asList(Key.AGENT_ID), Collections.<Key<?>>emptyList(),
+                DataRetention.maxAge(1, TimeUnit.DAYS));
+    }
+
+    @Test
+    public void testGetRollupCategory() {
+        Category<TestObj> category = new Category<>("testGetRollupCategory", TestObj.class,
+                Arrays.<Key<?>>asList(Key.AGENT_ID, Key.TIMESTAMP), Arrays.<Key<?>>asList(Key.TIMESTAMP),
+                null, DataRollup.of(Key.AGENT_ID));
+        DataRollup.Tier hourly = DataRollup.DEFAULT_TIERS.get(2);
+        Category<TestObj> tierCategory = category.getRollupCategory(hourly);
+        assertEquals("testGetRollupCategory-rollup-1h", tierCategory.getName());
+        assertEquals(TestObj.class, tierCategory.getDataClass());
+        assertEquals(category.getIndexedKeys(), tierCategory.getIndexedKeys());
+        assertEquals(2, tierCategory.getKeys().size());
+        assertEquals(hourly.getRetention(), tierCategory.getRetention());
+        assertNull(tierCategory.getRollup());
+        // created once only
+        assertTrue(tierCategory == category.getRollupCategory(hourly));
+        assertTrue(tierCategory == Categories.getByName(tierCategory.getName()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRollupSeriesKeyMustBeAKey() {
+        new Category<>("testRollupSeriesKeyMustBeAKey", TestObj.class,
+                Arrays.<Key<?>>asList(Key.AGENT_ID, Key.TIMESTAMP), Collections.<Key<?>>emptyList(),
+                null, DataRollup.of(Key.VM_ID));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRollupTierWidthsMustLineUp() {
+        new DataRollup(Arrays.<Key<?>>asList(Key.AGENT_ID), Arrays.asList(
+                new DataRollup.Tier("1m", 1, TimeUnit.MINUTES, 1, TimeUnit.DAYS),
+                new DataRollup.Tier("90s", 90, TimeUnit.SECONDS, 1, TimeUnit.DAYS)));
+    }
+}
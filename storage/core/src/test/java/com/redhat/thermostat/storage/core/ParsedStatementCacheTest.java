@@ -0,0 +1,144 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.storage.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.redhat.thermostat.storage.model.Pojo;
+
+public class ParsedStatementCacheTest {
+
+    private static final Category<TestPojo> CATEGORY = new Category<>("parsed-statement-cache-test",
+            TestPojo.class, new Key<String>("a"));
+    private static final Category<TestPojo> OTHER_CATEGORY = new Category<>("parsed-statement-cache-test-other",
+            TestPojo.class, new Key<String>("a"));
+    
+    private BackingStorage storage;
+    
+    @SuppressWarnings("unchecked")
+    @Before
+    public void setup() {
+        storage = mock(BackingStorage.class);
+        when(storage.createQuery(any(Category.class))).thenReturn(mock(Query.class));
+    }
+    
+    @Test
+    public void testHitsAndMisses() throws DescriptorParsingException {
+        ParsedStatementCache cache = new ParsedStatementCache(storage);
+        StatementDescriptor<TestPojo> desc = new StatementDescriptor<>(CATEGORY,
+                "QUERY " + CATEGORY.getName() + " WHERE 'a' = ?s");
+        ParsedStatement<TestPojo> first = cache.get(desc);
+        assertEquals(1, first.getNumParams());
+        assertEquals(0, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        
+        // equal descriptor, different instance
+        StatementDescriptor<TestPojo> equalDesc = new StatementDescriptor<>(CATEGORY,
+                "QUERY " + CATEGORY.getName() + " WHERE 'a' = ?s");
+        assertSame(first, cache.get(equalDesc));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.size());
+    }
+    
+    @Test
+    public void testFailedParsesAreNotCached() {
+        ParsedStatementCache cache = new ParsedStatementCache(storage);
+        StatementDescriptor<TestPojo> desc = new StatementDescriptor<>(CATEGORY, "QUERY " + CATEGORY.getName() + " WHERE");
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.get(desc);
+                fail("expected parse failure");
+            } catch (DescriptorParsingException e) {
+                // pass
+            }
+        }
+        assertEquals(2, cache.getMissCount());
+        assertEquals(0, cache.size());
+    }
+    
+    @Test
+    public void testBounded() throws DescriptorParsingException {
+        ParsedStatementCache cache = new ParsedStatementCache(storage, 2);
+        StatementDescriptor<TestPojo> desc1 = new StatementDescriptor<>(CATEGORY, "QUERY " + CATEGORY.getName());
+        StatementDescriptor<TestPojo> desc2 = new StatementDescriptor<>(CATEGORY, "QUERY " + CATEGORY.getName() + " LIMIT 1");
+        StatementDescriptor<TestPojo> desc3 = new StatementDescriptor<>(CATEGORY, "QUERY " + CATEGORY.getName() + " LIMIT 2");
+        ParsedStatement<TestPojo> parsed1 = cache.get(desc1);
+        cache.get(desc2);
+        // make desc1 the most recently used one
+        cache.get(desc1);
+        cache.get(desc3);
+        assertEquals(2, cache.size());
+        assertSame(parsed1, cache.get(desc1));
+        assertEquals(3, cache.getMissCount());
+        cache.get(desc2);
+        assertEquals(4, cache.getMissCount());
+    }
+    
+    @Test
+    public void testInvalidate() throws DescriptorParsingException {
+        ParsedStatementCache cache = new ParsedStatementCache(storage);
+        StatementDescriptor<TestPojo> desc = new StatementDescriptor<>(CATEGORY, "QUERY " + CATEGORY.getName());
+        StatementDescriptor<TestPojo> otherDesc = new StatementDescriptor<>(OTHER_CATEGORY, "QUERY " + OTHER_CATEGORY.getName());
+        ParsedStatement<TestPojo> parsed = cache.get(desc);
+        ParsedStatement<TestPojo> otherParsed = cache.get(otherDesc);
+        
+        cache.invalidate(CATEGORY);
+        
+        assertEquals(1, cache.size());
+        assertSame(otherParsed, cache.get(otherDesc));
+        assertNotSame(parsed, cache.get(desc));
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMaxSize() {
+        new ParsedStatementCache(storage, 0);
+    }
+    
+    public static class TestPojo implements Pojo {
+        // no properties
+    }
+}
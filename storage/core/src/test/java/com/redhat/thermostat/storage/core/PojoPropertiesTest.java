@@ -0,0 +1,196 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.storage.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.ParameterizedType;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.redhat.thermostat.storage.core.PojoProperties.Property;
+import com.redhat.thermostat.storage.model.Pojo;
+
+public class PojoPropertiesTest {
+
+    public static class SimplePojo implements Pojo {
+
+        private String test;
+        private String ignored;
+
+        @Persist
+        public String getTest() {
+            return test;
+        }
+
+        @Persist
+        public void setTest(String test) {
+            this.test = test;
+        }
+
+        public String getIgnored() {
+            return ignored;
+        }
+
+        public void setIgnored(String ignored) {
+            this.ignored = ignored;
+        }
+    }
+
+    public static class IndexedPojo extends SimplePojo {
+
+        private int[] indexed;
+        private List<String> names;
+
+        @Persist
+        public int[] getIndexed() {
+            return indexed;
+        }
+
+        @Persist
+        public void setIndexed(int[] indexed) {
+            this.indexed = indexed;
+        }
+
+        @Persist
+        public void setNames(List<String> names) {
+            this.names = names;
+        }
+
+        public List<String> getNames() {
+            return names;
+        }
+    }
+
+    public static class ReadOnlyPojo implements Pojo {
+
+        @Persist
+        public long getTimeStamp() {
+            return 42;
+        }
+    }
+
+    public static class NoDefaultConstructorPojo implements Pojo {
+
+        public NoDefaultConstructorPojo(String ignored) {
+            // nothing
+        }
+    }
+
+    @Test
+    public void testPropertiesAreCachedPerClass() {
+        PojoProperties properties = PojoProperties.forClass(SimplePojo.class);
+        assertSame(properties, PojoProperties.forClass(SimplePojo.class));
+    }
+
+    @Test
+    public void testOnlyPersistedPropertiesAreMapped() {
+        PojoProperties properties = PojoProperties.forClass(SimplePojo.class);
+        assertEquals(1, properties.getProperties().size());
+        Property test = properties.getProperty("test");
+        assertNotNull(test);
+        assertTrue(test.isReadable());
+        assertTrue(test.isWritable());
+        assertNull(properties.getProperty("ignored"));
+    }
+
+    @Test
+    public void testReadableAndWritableProperties() {
+        PojoProperties properties = PojoProperties.forClass(IndexedPojo.class);
+        assertEquals(3, properties.getProperties().size());
+        assertEquals(2, properties.getReadableProperties().size());
+
+        // setter has @Persist, getter doesn't
+        Property names = properties.getProperty("names");
+        assertFalse(names.isReadable());
+        assertTrue(names.isWritable());
+        assertFalse(properties.getReadableProperties().contains(names));
+
+        Property timeStamp = PojoProperties.forClass(ReadOnlyPojo.class).getProperty("timeStamp");
+        assertTrue(timeStamp.isReadable());
+        assertFalse(timeStamp.isWritable());
+        assertEquals(42L, timeStamp.get(new ReadOnlyPojo()));
+    }
+
+    @Test
+    public void testAccessors() {
+        PojoProperties properties = PojoProperties.forClass(IndexedPojo.class);
+        IndexedPojo pojo = (IndexedPojo) properties.newInstance();
+
+        Property test = properties.getProperty("test");
+        assertFalse(test.isArray());
+        test.set(pojo, "fluff");
+        assertEquals("fluff", pojo.getTest());
+        assertEquals("fluff", test.get(pojo));
+
+        Property indexed = properties.getProperty("indexed");
+        assertTrue(indexed.isArray());
+        assertEquals(int[].class, indexed.getType());
+        int[] values = new int[] { 1, 2 };
+        indexed.set(pojo, values);
+        assertSame(values, indexed.get(pojo));
+    }
+
+    @Test
+    public void testGenericTypeIsThatOfTheSetter() {
+        Property names = PojoProperties.forClass(IndexedPojo.class).getProperty("names");
+        assertEquals(List.class, names.getType());
+        ParameterizedType type = (ParameterizedType) names.getGenericType();
+        assertEquals(String.class, type.getActualTypeArguments()[0]);
+    }
+
+    @Test(expected=StorageException.class)
+    public void testGetOfWriteOnlyProperty() {
+        PojoProperties.forClass(IndexedPojo.class).getProperty("names").get(new IndexedPojo());
+    }
+
+    @Test(expected=StorageException.class)
+    public void testSetOfReadOnlyProperty() {
+        PojoProperties.forClass(ReadOnlyPojo.class).getProperty("timeStamp").set(new ReadOnlyPojo(), 1L);
+    }
+
+    @Test(expected=StorageException.class)
+    public void testNewInstanceWithoutDefaultConstructor() {
+        PojoProperties.forClass(NoDefaultConstructorPojo.class).newInstance();
+    }
+}
@@ -46,6 +46,7 @@ import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isA;
@@ -58,12 +59,15 @@ import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -76,6 +80,8 @@ import com.redhat.thermostat.common.Constants;
 import com.redhat.thermostat.storage.core.QueuedStorage.QueuedParsedStatement;
 import com.redhat.thermostat.storage.core.QueuedStorage.QueuedPreparedStatement;
 import com.redhat.thermostat.storage.core.QueuedStorage.QueuedWrite;
+import com.redhat.thermostat.storage.internal.WriteBatchSettingsRetriever;
+import com.redhat.thermostat.storage.internal.statement.PreparedStatementImpl;
 import com.redhat.thermostat.storage.model.Pojo;
 
 
@@ -186,6 +192,18 @@ public class QueuedStorageTest {
 
     }
     
+    // Remembers all submitted tasks in order
+    private static class QueuedExecutor extends TestExecutor {
+        
+        private final List<Runnable> tasks = new ArrayList<>();
+        
+        @Override
+        public void execute(Runnable task) {
+            super.execute(task);
+            tasks.add(task);
+        }
+    }
+    
     private static class TestShutdownExecutor extends TestExecutor {
         long executorShutDownTime = -1;
         
@@ -518,6 +536,154 @@ public class QueuedStorageTest {
         }
     }
     
+    /*
+     * With batching enabled, prepared ADD statements are held back until the
+     * batch size is reached and then get executed in a single task.
+     */
+    @Test
+    public void testBatchedAddsDirectStorage() throws DescriptorParsingException, StatementExecutionException {
+        assertFalse(delegateStorage instanceof SecureStorage);
+        queuedStorage = createBatchingStorage(2);
+        @SuppressWarnings("unchecked")
+        PreparedStatement<Pojo> first = (PreparedStatement<Pojo>)mock(PreparedStatement.class);
+        @SuppressWarnings("unchecked")
+        PreparedStatement<Pojo> second = (PreparedStatement<Pojo>)mock(PreparedStatement.class);
+        when(delegateStorage.prepareStatement(anyStatementDescriptor())).thenReturn(first).thenReturn(second);
+        
+        StatementDescriptor<FooPojo> desc = new StatementDescriptor<>(TEST_CATEGORY, "ADD foo-table SET 'agentId' = ?s");
+        queuedStorage.prepareStatement(desc).execute();
+        assertNull("first add should be pending", executor.getTask());
+        queuedStorage.prepareStatement(desc).execute();
+        
+        Runnable batch = executor.getTask();
+        assertNotNull(batch);
+        verifyZeroInteractions(first);
+        verifyZeroInteractions(second);
+        batch.run();
+        verify(first).execute();
+        verify(second).execute();
+    }
+    
+    /*
+     * For backing storage in a proxied setup batched ADDs get flushed as one
+     * bulk write.
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testBatchedAddsBackingProxiedUseBulkWrite() throws DescriptorParsingException, IllegalPatchException {
+        System.setProperty(Constants.IS_PROXIED_STORAGE, Boolean.TRUE.toString());
+        BackingStorage backingStorage = mock(BackingStorage.class);
+        delegateStorage = backingStorage;
+        queuedStorage = createBatchingStorage(2);
+        PreparedStatement<FooPojo> statement = (PreparedStatement<FooPojo>)mock(PreparedStatement.class);
+        Mockito.doReturn(statement).when(backingStorage).prepareStatement(anyStatementDescriptor());
+        ParsedStatement<FooPojo> mockParsedStatement = (ParsedStatement<FooPojo>)mock(ParsedStatement.class);
+        when(statement.getParsedStatement()).thenReturn(mockParsedStatement);
+        Add<FooPojo> first = (Add<FooPojo>)mock(Add.class);
+        Add<FooPojo> second = (Add<FooPojo>)mock(Add.class);
+        when(mockParsedStatement.patchStatement(any(PreparedParameter[].class))).thenReturn(first).thenReturn(second);
+        BulkWrite<FooPojo> bulk = (BulkWrite<FooPojo>)mock(BulkWrite.class);
+        when(backingStorage.createBulkWrite(TEST_CATEGORY)).thenReturn(bulk);
+        
+        StatementDescriptor<FooPojo> desc = new StatementDescriptor<>(TEST_CATEGORY, "ADD foo-table SET 'agentId' = ?s");
+        ParsedStatement<FooPojo> parsed = queuedStorage.prepareStatement(desc).getParsedStatement();
+        ((DataModifyingStatement<FooPojo>)parsed.patchStatement(new PreparedParameter[]{})).apply();
+        assertNull(executor.getTask());
+        ((DataModifyingStatement<FooPojo>)parsed.patchStatement(new PreparedParameter[]{})).apply();
+        
+        assertNotNull(executor.getTask());
+        executor.getTask().run();
+        verify(bulk).append(first);
+        verify(bulk).append(second);
+        verify(bulk).apply();
+        verify(first, times(0)).apply();
+        verify(second, times(0)).apply();
+    }
+    
+    /*
+     * For backing storage used directly batched prepared ADDs get patched and
+     * flushed as one bulk write too.
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testBatchedPreparedAddsBackingDirectUseBulkWrite() throws DescriptorParsingException, StatementExecutionException {
+        assertFalse(Boolean.getBoolean(Constants.IS_PROXIED_STORAGE));
+        BackingStorage backingStorage = mock(BackingStorage.class);
+        delegateStorage = backingStorage;
+        queuedStorage = createBatchingStorage(2);
+        Category<FooPojo> category = new Category<>("foo-bulk-table", FooPojo.class, Key.AGENT_ID);
+        StatementDescriptor<FooPojo> desc = new StatementDescriptor<>(category, "ADD foo-bulk-table SET 'agentId' = ?s");
+        Add<FooPojo> rawAdd = (Add<FooPojo>)mock(Add.class);
+        Add<FooPojo> first = (Add<FooPojo>)mock(Add.class);
+        Add<FooPojo> second = (Add<FooPojo>)mock(Add.class);
+        when(backingStorage.createAdd(category)).thenReturn(rawAdd);
+        when(rawAdd.getRawDuplicate()).thenReturn(first).thenReturn(second);
+        Mockito.doReturn(new PreparedStatementImpl<>(backingStorage, desc))
+                .doReturn(new PreparedStatementImpl<>(backingStorage, desc))
+                .when(backingStorage).prepareStatement(anyStatementDescriptor());
+        BulkWrite<FooPojo> bulk = (BulkWrite<FooPojo>)mock(BulkWrite.class);
+        when(backingStorage.createBulkWrite(category)).thenReturn(bulk);
+        
+        PreparedStatement<FooPojo> stmt = queuedStorage.prepareStatement(desc);
+        stmt.setString(0, "first");
+        stmt.execute();
+        assertNull(executor.getTask());
+        stmt = queuedStorage.prepareStatement(desc);
+        stmt.setString(0, "second");
+        stmt.execute();
+        
+        assertNotNull(executor.getTask());
+        executor.getTask().run();
+        verify(first).set(Key.AGENT_ID.getName(), "first");
+        verify(second).set(Key.AGENT_ID.getName(), "second");
+        verify(bulk).append(first);
+        verify(bulk).append(second);
+        verify(bulk).apply();
+        verify(first, times(0)).apply();
+        verify(second, times(0)).apply();
+    }
+    
+    /*
+     * Writes which aren't ADDs are not batched. They flush pending ADDs of
+     * the same category first.
+     */
+    @Test
+    public void testNonAddFlushesPendingBatch() throws DescriptorParsingException, StatementExecutionException {
+        queuedStorage = createBatchingStorage(10);
+        @SuppressWarnings("unchecked")
+        PreparedStatement<Pojo> add = (PreparedStatement<Pojo>)mock(PreparedStatement.class);
+        @SuppressWarnings("unchecked")
+        PreparedStatement<Pojo> update = (PreparedStatement<Pojo>)mock(PreparedStatement.class);
+        when(delegateStorage.prepareStatement(anyStatementDescriptor())).thenReturn(add).thenReturn(update);
+        
+        StatementDescriptor<FooPojo> addDesc = new StatementDescriptor<>(TEST_CATEGORY, "ADD foo-table SET 'agentId' = ?s");
+        StatementDescriptor<FooPojo> updateDesc = new StatementDescriptor<>(TEST_CATEGORY, "UPDATE foo-table SET 'agentId' = ?s WHERE 'foo' = ?s");
+        queuedStorage.prepareStatement(addDesc).execute();
+        assertNull(executor.getTask());
+        
+        queuedStorage.prepareStatement(updateDesc).execute();
+        
+        List<Runnable> tasks = ((QueuedExecutor)executor).tasks;
+        assertEquals("expected flush + update tasks", 2, tasks.size());
+        tasks.get(0).run();
+        verify(add).execute();
+        verifyZeroInteractions(update);
+        tasks.get(1).run();
+        verify(update).execute();
+    }
+    
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private QueuedStorage createBatchingStorage(int batchSize) {
+        executor = new QueuedExecutor();
+        ScheduledExecutorService timer = mock(ScheduledExecutorService.class);
+        when(timer.schedule(any(Runnable.class), anyLong(), any(TimeUnit.class))).thenReturn((ScheduledFuture)mock(ScheduledFuture.class));
+        WriteBatchSettingsRetriever settings = mock(WriteBatchSettingsRetriever.class);
+        when(settings.isBatchingEnabled()).thenReturn(true);
+        when(settings.getBatchSize()).thenReturn(batchSize);
+        when(settings.getMaxLatency()).thenReturn(1000L);
+        return new QueuedStorage(delegateStorage, executor, fileExecutor, null, timer, settings);
+    }
+    
     @SuppressWarnings("unchecked")
     private <T extends Pojo> StatementDescriptor<T> anyStatementDescriptor() {
         return any(StatementDescriptor.class);
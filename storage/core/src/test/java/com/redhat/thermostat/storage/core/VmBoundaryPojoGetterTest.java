@@ -39,6 +39,7 @@ package com.redhat.thermostat.storage.core;
 import static org.junit.Assert.assertEquals;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import org.junit.Before;
@@ -97,6 +98,24 @@ public class VmBoundaryPojoGetterTest {
         assertEquals(oldestExpected, VmBoundaryPojoGetter.DESC_OLDEST_VM_STAT);
     }
 
+    @Test
+    public void verifyNewestUntilQueryDescriptorFormat() {
+        String newestUntilExpected = "QUERY %s WHERE 'agentId' = ?s AND " +
+                "'vmId' = ?s AND 'timeStamp' <= ?l SORT 'timeStamp' DSC LIMIT 1";
+        assertEquals(newestUntilExpected, VmBoundaryPojoGetter.DESC_NEWEST_VM_STAT_UNTIL);
+    }
+
+    @Test
+    public void verifyNewestUntilQueryDescriptorIsSane() {
+        Storage storage = mock(Storage.class);
+        VmBoundaryPojoGetter<TestPojo> getter = new VmBoundaryPojoGetter<>(storage, cat);
+
+        String actualDesc = getter.getNewestUntilQueryDesc();
+        String expected = "QUERY vm-boundary-category WHERE 'agentId' = ?s AND " +
+                "'vmId' = ?s AND 'timeStamp' <= ?l SORT 'timeStamp' DSC LIMIT 1";
+        assertEquals(expected, actualDesc);
+    }
+
     @Test
     public void verifyLatestQueryDescriptorIsSane() {
         Storage storage = mock(Storage.class);
@@ -200,6 +219,29 @@ public class VmBoundaryPojoGetterTest {
         assertEquals(lc2, newest.getData());
     }
 
+    @Test
+    public void testGetNewestUntil() throws DescriptorParsingException, StatementExecutionException {
+        Cursor<TestPojo> cursor = mock(Cursor.class);
+        when(cursor.hasNext()).thenReturn(true).thenReturn(false);
+        when(cursor.next()).thenReturn(result1).thenReturn(null);
+
+        PreparedStatement<TestPojo> query = (PreparedStatement<TestPojo>) mock(PreparedStatement.class);
+        when(query.executeQuery()).thenReturn(cursor);
+
+        Storage storage = mock(Storage.class);
+        when(storage.prepareStatement(anyDescriptor())).thenReturn(query);
+
+        VmBoundaryPojoGetter<TestPojo> getter = new VmBoundaryPojoGetter<>(storage, cat);
+
+        TestPojo newest = getter.getNewestStatUntil(vmId, agentId, t2);
+
+        verify(query).setString(0, AGENT_ID);
+        verify(query).setString(1, VM_ID);
+        verify(query).setLong(2, t2);
+        assertEquals(t1, newest.getTimeStamp());
+        assertEquals(lc1, newest.getData());
+    }
+
     @SuppressWarnings("unchecked")
     private StatementDescriptor<TestPojo> anyDescriptor() {
         return (StatementDescriptor<TestPojo>) any(StatementDescriptor.class);
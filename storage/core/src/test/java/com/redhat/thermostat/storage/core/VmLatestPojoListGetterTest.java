@@ -169,6 +169,64 @@ public class VmLatestPojoListGetterTest {
         assertEquals(lc2, stat2.getData());
     }
 
+    @Test
+    public void testGetLatestFillsImpliedSample() throws DescriptorParsingException, StatementExecutionException {
+        @SuppressWarnings("unchecked")
+        Cursor<TestPojo> cursor = mock(Cursor.class);
+        when(cursor.hasNext()).thenReturn(true).thenReturn(false);
+        when(cursor.next()).thenReturn(result3).thenReturn(null);
+        @SuppressWarnings("unchecked")
+        Cursor<TestPojo> boundaryCursor = mock(Cursor.class);
+        when(boundaryCursor.hasNext()).thenReturn(true).thenReturn(false);
+        when(boundaryCursor.next()).thenReturn(result1).thenReturn(null);
+
+        Storage storage = mock(Storage.class);
+        @SuppressWarnings("unchecked")
+        PreparedStatement<TestPojo> query = (PreparedStatement<TestPojo>) mock(PreparedStatement.class);
+        @SuppressWarnings("unchecked")
+        PreparedStatement<TestPojo> boundaryQuery = (PreparedStatement<TestPojo>) mock(PreparedStatement.class);
+        when(storage.prepareStatement(anyDescriptor())).thenReturn(query).thenReturn(boundaryQuery);
+        when(query.executeQuery()).thenReturn(cursor);
+        when(boundaryQuery.executeQuery()).thenReturn(boundaryCursor);
+
+        VmLatestPojoListGetter<TestPojo> getter = new VmLatestPojoListGetter<>(storage, cat, true);
+        List<TestPojo> stats = getter.getLatest(agentId, vmId, t2);
+
+        verify(storage, times(2)).prepareStatement(anyDescriptor());
+        verify(boundaryQuery).setLong(2, t2);
+
+        assertEquals(2, stats.size());
+        assertEquals(t3, stats.get(0).getTimeStamp());
+        assertEquals(t1, stats.get(1).getTimeStamp());
+    }
+
+    @Test
+    public void testGetLatestDoesNotRepeatSampleAtSince() throws DescriptorParsingException, StatementExecutionException {
+        @SuppressWarnings("unchecked")
+        Cursor<TestPojo> cursor = mock(Cursor.class);
+        when(cursor.hasNext()).thenReturn(true).thenReturn(false);
+        when(cursor.next()).thenReturn(result3).thenReturn(null);
+        @SuppressWarnings("unchecked")
+        Cursor<TestPojo> boundaryCursor = mock(Cursor.class);
+        when(boundaryCursor.hasNext()).thenReturn(true).thenReturn(false);
+        when(boundaryCursor.next()).thenReturn(result2).thenReturn(null);
+
+        Storage storage = mock(Storage.class);
+        @SuppressWarnings("unchecked")
+        PreparedStatement<TestPojo> query = (PreparedStatement<TestPojo>) mock(PreparedStatement.class);
+        @SuppressWarnings("unchecked")
+        PreparedStatement<TestPojo> boundaryQuery = (PreparedStatement<TestPojo>) mock(PreparedStatement.class);
+        when(storage.prepareStatement(anyDescriptor())).thenReturn(query).thenReturn(boundaryQuery);
+        when(query.executeQuery()).thenReturn(cursor);
+        when(boundaryQuery.executeQuery()).thenReturn(boundaryCursor);
+
+        VmLatestPojoListGetter<TestPojo> getter = new VmLatestPojoListGetter<>(storage, cat, true);
+        List<TestPojo> stats = getter.getLatest(agentId, vmId, t2);
+
+        assertEquals(1, stats.size());
+        assertEquals(t3, stats.get(0).getTimeStamp());
+    }
+
     private Pair<Storage, PreparedStatement<TestPojo>> setupGetLatest() throws
             DescriptorParsingException, StatementExecutionException {
 
@@ -38,6 +38,7 @@ package com.redhat.thermostat.storage.core;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
@@ -45,10 +46,14 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.stubbing.OngoingStubbing;
 
 import com.redhat.thermostat.storage.model.TimeStampedPojo;
 
@@ -62,6 +67,9 @@ public class VmTimeIntervalPojoListGetterTest {
     // Make this one static so we don't get IllegalStateException from trying
     // to make category of same name while running tests in same classloader.
     private static final Category<TestPojo> cat = new Category<>(CATEGORY_NAME, TestPojo.class);
+    private static final Category<TestPojo> rolledUpCat = new Category<>(CATEGORY_NAME + "-rolled-up", TestPojo.class,
+            Arrays.<Key<?>>asList(Key.AGENT_ID, Key.VM_ID, Key.TIMESTAMP), Arrays.<Key<?>>asList(Key.TIMESTAMP),
+            null, DataRollup.of(Key.AGENT_ID, Key.VM_ID));
 
     private static long t1 = 1;
     private static long t2 = 5;
@@ -111,6 +119,158 @@ public class VmTimeIntervalPojoListGetterTest {
         assertEquals(expected, actualDesc);
     }
 
+    @Test
+    public void verifyBucketedQueryDescriptorIsSane() {
+        Storage storage = mock(Storage.class);
+        VmTimeIntervalPojoListGetter<TestPojo> getter = new VmTimeIntervalPojoListGetter<>(storage, cat);
+        String actualDesc = getter.getQueryBucketedDesc();
+        String expected = "QUERY-LAST " + CATEGORY_NAME + " WHERE 'agentId' = ?s AND " +
+                "'vmId' = ?s AND 'timeStamp' >= ?l AND 'timeStamp' < ?l BUCKET ?l SORT 'timeStamp' DSC";
+        assertEquals(expected, actualDesc);
+    }
+
+    @Test
+    public void testBucketWidth() {
+        assertEquals(0, VmTimeIntervalPojoListGetter.getBucketWidth(0, 1000, 0));
+        assertEquals(0, VmTimeIntervalPojoListGetter.getBucketWidth(1000, 1000, 10));
+        assertEquals(100, VmTimeIntervalPojoListGetter.getBucketWidth(0, 1000, 10));
+        assertEquals(101, VmTimeIntervalPojoListGetter.getBucketWidth(0, 1001, 10));
+        assertEquals(1, VmTimeIntervalPojoListGetter.getBucketWidth(0, 5, 10));
+    }
+
+    @Test
+    public void testSelectTier() {
+        DataRollup rollup = rolledUpCat.getRollup();
+        long minute = TimeUnit.MINUTES.toMillis(1);
+        assertNull(VmTimeIntervalPojoListGetter.selectTier(null, 10 * minute));
+        assertNull(VmTimeIntervalPojoListGetter.selectTier(rollup, minute - 1));
+        assertEquals(DataRollup.DEFAULT_TIERS.get(0), VmTimeIntervalPojoListGetter.selectTier(rollup, minute));
+        assertEquals(DataRollup.DEFAULT_TIERS.get(1), VmTimeIntervalPojoListGetter.selectTier(rollup, 59 * minute));
+        assertEquals(DataRollup.DEFAULT_TIERS.get(2), VmTimeIntervalPojoListGetter.selectTier(rollup, 600 * minute));
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Test
+    public void testGetDownsampledIntervalFromRollupTier() throws DescriptorParsingException, StatementExecutionException {
+        long hour = TimeUnit.HOURS.toMillis(1);
+        TestPojo rolledUp = mock(TestPojo.class);
+        when(rolledUp.getTimeStamp()).thenReturn(2 * hour + 5);
+        TestPojo recent = mock(TestPojo.class);
+        when(recent.getTimeStamp()).thenReturn(3 * hour - 5);
+
+        @SuppressWarnings("unchecked")
+        Cursor<TestPojo> tierCursor = mock(Cursor.class);
+        when(tierCursor.hasNext()).thenReturn(true).thenReturn(false);
+        when(tierCursor.next()).thenReturn(rolledUp).thenReturn(null);
+        @SuppressWarnings("unchecked")
+        Cursor<TestPojo> rawCursor = mock(Cursor.class);
+        when(rawCursor.hasNext()).thenReturn(true).thenReturn(false);
+        when(rawCursor.next()).thenReturn(recent).thenReturn(null);
+
+        Storage storage = mock(Storage.class);
+        @SuppressWarnings("unchecked")
+        PreparedStatement<TestPojo> query = (PreparedStatement<TestPojo>) mock(PreparedStatement.class);
+        when(storage.prepareStatement(anyDescriptor())).thenReturn(query);
+        when(query.executeQuery()).thenReturn(tierCursor).thenReturn(rawCursor);
+
+        VmTimeIntervalPojoListGetter<TestPojo> getter = new VmTimeIntervalPojoListGetter<>(storage, rolledUpCat);
+
+        // 18 minute buckets, read from the 10 minute tier
+        List<TestPojo> stats = getter.getLatest(agentId, vmId, 0, 3 * hour, 10);
+
+        ArgumentCaptor<StatementDescriptor> descCaptor = ArgumentCaptor.forClass(StatementDescriptor.class);
+        verify(storage, times(2)).prepareStatement(descCaptor.capture());
+        assertEquals("QUERY-LAST " + CATEGORY_NAME + "-rolled-up-rollup-10m WHERE 'agentId' = ?s AND 'vmId' = ?s "
+                + "AND 'timeStamp' >= ?l AND 'timeStamp' < ?l BUCKET ?l SORT 'timeStamp' DSC",
+                descCaptor.getAllValues().get(0).getDescriptor());
+        assertEquals(getter.getQueryBucketedDesc(), descCaptor.getAllValues().get(1).getDescriptor());
+        // the rest of the interval comes from raw data, starting with the
+        // 18 minute bucket which the end of the newest 10 minute tier
+        // interval (2h10m) falls into
+        verify(query).setLong(2, 0);
+        verify(query).setLong(2, TimeUnit.MINUTES.toMillis(126));
+        verify(query, times(2)).setLong(3, 3 * hour);
+
+        assertEquals(2, stats.size());
+        assertEquals(recent, stats.get(0));
+        assertEquals(rolledUp, stats.get(1));
+    }
+
+    @Test
+    public void testGetDownsampledIntervalFromRollupTierReplacesBucketSampledInRawData() throws DescriptorParsingException, StatementExecutionException {
+        long minute = TimeUnit.MINUTES.toMillis(1);
+        // in the same 18 minute bucket [126m, 144m)
+        TestPojo rolledUp = mockPojo(127 * minute);
+        TestPojo recent = mockPojo(132 * minute);
+        TestPojo latest = mockPojo(175 * minute);
+
+        List<TestPojo> stats = getDownsampledFromRollupTier(Arrays.asList(rolledUp), Arrays.asList(latest, recent));
+
+        // one sample per bucket
+        assertEquals(2, stats.size());
+        assertEquals(latest, stats.get(0));
+        assertEquals(recent, stats.get(1));
+    }
+
+    @Test
+    public void testGetDownsampledIntervalFromRollupTierKeepsBucketNotSampledInRawData() throws DescriptorParsingException, StatementExecutionException {
+        long minute = TimeUnit.MINUTES.toMillis(1);
+        TestPojo older = mockPojo(100 * minute);
+        TestPojo rolledUp = mockPojo(127 * minute);
+        TestPojo latest = mockPojo(175 * minute);
+
+        List<TestPojo> stats = getDownsampledFromRollupTier(Arrays.asList(rolledUp, older), Arrays.asList(latest));
+
+        assertEquals(3, stats.size());
+        assertEquals(latest, stats.get(0));
+        assertEquals(rolledUp, stats.get(1));
+        assertEquals(older, stats.get(2));
+    }
+
+    /*
+     * Reads [0, 3h) in 18 minute buckets from the 10 minute tier, followed by
+     * the raw data.
+     */
+    private List<TestPojo> getDownsampledFromRollupTier(List<TestPojo> tierResults, List<TestPojo> rawResults)
+            throws DescriptorParsingException, StatementExecutionException {
+        Cursor<TestPojo> tierCursor = mockCursor(tierResults);
+        Cursor<TestPojo> rawCursor = mockCursor(rawResults);
+
+        Storage storage = mock(Storage.class);
+        @SuppressWarnings("unchecked")
+        PreparedStatement<TestPojo> query = (PreparedStatement<TestPojo>) mock(PreparedStatement.class);
+        when(storage.prepareStatement(anyDescriptor())).thenReturn(query);
+        when(query.executeQuery()).thenReturn(tierCursor).thenReturn(rawCursor);
+
+        VmTimeIntervalPojoListGetter<TestPojo> getter = new VmTimeIntervalPojoListGetter<>(storage, rolledUpCat);
+        List<TestPojo> stats = getter.getLatest(agentId, vmId, 0, TimeUnit.HOURS.toMillis(3), 10);
+
+        verify(query).setLong(2, TimeUnit.MINUTES.toMillis(126));
+        return stats;
+    }
+
+    private static TestPojo mockPojo(long timeStamp) {
+        TestPojo pojo = mock(TestPojo.class);
+        when(pojo.getTimeStamp()).thenReturn(timeStamp);
+        return pojo;
+    }
+
+    private static Cursor<TestPojo> mockCursor(List<TestPojo> results) {
+        @SuppressWarnings("unchecked")
+        Cursor<TestPojo> cursor = mock(Cursor.class);
+        OngoingStubbing<Boolean> hasNext = when(cursor.hasNext());
+        for (int i = 0; i < results.size(); i++) {
+            hasNext = hasNext.thenReturn(true);
+        }
+        hasNext.thenReturn(false);
+        OngoingStubbing<TestPojo> next = when(cursor.next());
+        for (TestPojo result : results) {
+            next = next.thenReturn(result);
+        }
+        next.thenReturn(null);
+        return cursor;
+    }
+
     @SuppressWarnings("unchecked")
     private StatementDescriptor<TestPojo> anyDescriptor() {
         return (StatementDescriptor<TestPojo>) any(StatementDescriptor.class);
@@ -186,6 +346,119 @@ public class VmTimeIntervalPojoListGetterTest {
         assertEquals(lc2, stat2.getData());
     }
 
+    @Test
+    public void testGetIntervalFillsImpliedSample() throws DescriptorParsingException, StatementExecutionException {
+        @SuppressWarnings("unchecked")
+        Cursor<TestPojo> cursor = mock(Cursor.class);
+        when(cursor.hasNext()).thenReturn(true).thenReturn(false);
+        when(cursor.next()).thenReturn(result3).thenReturn(null);
+        @SuppressWarnings("unchecked")
+        Cursor<TestPojo> boundaryCursor = mock(Cursor.class);
+        when(boundaryCursor.hasNext()).thenReturn(true).thenReturn(false);
+        when(boundaryCursor.next()).thenReturn(result1).thenReturn(null);
+
+        Storage storage = mock(Storage.class);
+        @SuppressWarnings("unchecked")
+        PreparedStatement<TestPojo> query = (PreparedStatement<TestPojo>) mock(PreparedStatement.class);
+        @SuppressWarnings("unchecked")
+        PreparedStatement<TestPojo> boundaryQuery = (PreparedStatement<TestPojo>) mock(PreparedStatement.class);
+        when(storage.prepareStatement(anyDescriptor())).thenReturn(query).thenReturn(boundaryQuery);
+        when(query.executeQuery()).thenReturn(cursor);
+        when(boundaryQuery.executeQuery()).thenReturn(boundaryCursor);
+
+        VmTimeIntervalPojoListGetter<TestPojo> getter = new VmTimeIntervalPojoListGetter<>(storage, cat, true);
+
+        List<TestPojo> stats = getter.getLatest(agentId, vmId, t2, t3 + 1);
+
+        verify(storage, times(2)).prepareStatement(anyDescriptor());
+        verify(boundaryQuery).setString(0, AGENT_ID);
+        verify(boundaryQuery).setString(1, VM_ID);
+        verify(boundaryQuery).setLong(2, t2);
+
+        assertEquals(2, stats.size());
+        assertEquals(t3, stats.get(0).getTimeStamp());
+        assertEquals(t1, stats.get(1).getTimeStamp());
+        assertEquals(lc1, stats.get(1).getData());
+    }
+
+    @Test
+    public void testGetIntervalDoesNotFillWhenStartSampled() throws DescriptorParsingException, StatementExecutionException {
+        @SuppressWarnings("unchecked")
+        Cursor<TestPojo> cursor = mock(Cursor.class);
+        when(cursor.hasNext()).thenReturn(true).thenReturn(true).thenReturn(false);
+        when(cursor.next()).thenReturn(result3).thenReturn(result2).thenReturn(null);
+
+        Storage storage = mock(Storage.class);
+        @SuppressWarnings("unchecked")
+        PreparedStatement<TestPojo> query = (PreparedStatement<TestPojo>) mock(PreparedStatement.class);
+        when(storage.prepareStatement(anyDescriptor())).thenReturn(query);
+        when(query.executeQuery()).thenReturn(cursor);
+
+        VmTimeIntervalPojoListGetter<TestPojo> getter = new VmTimeIntervalPojoListGetter<>(storage, cat, true);
+
+        List<TestPojo> stats = getter.getLatest(agentId, vmId, t2, t3 + 1);
+
+        verify(storage).prepareStatement(anyDescriptor());
+        assertEquals(2, stats.size());
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Test
+    public void testGetDownsampledInterval() throws DescriptorParsingException, StatementExecutionException {
+        @SuppressWarnings("unchecked")
+        Cursor<TestPojo> cursor = mock(Cursor.class);
+        when(cursor.hasNext()).thenReturn(true).thenReturn(false);
+        when(cursor.next()).thenReturn(result2).thenReturn(null);
+
+        Storage storage = mock(Storage.class);
+        @SuppressWarnings("unchecked")
+        PreparedStatement<TestPojo> query = (PreparedStatement<TestPojo>) mock(PreparedStatement.class);
+        when(storage.prepareStatement(anyDescriptor())).thenReturn(query);
+        when(query.executeQuery()).thenReturn(cursor);
+
+        VmTimeIntervalPojoListGetter<TestPojo> getter = new VmTimeIntervalPojoListGetter<>(storage, cat);
+
+        List<TestPojo> stats = getter.getLatest(agentId, vmId, 0, 1000, 10);
+
+        ArgumentCaptor<StatementDescriptor> descCaptor = ArgumentCaptor.forClass(StatementDescriptor.class);
+        verify(storage).prepareStatement(descCaptor.capture());
+        assertEquals(getter.getQueryBucketedDesc(), descCaptor.getValue().getDescriptor());
+        verify(query).setString(0, AGENT_ID);
+        verify(query).setString(1, VM_ID);
+        verify(query).setLong(2, 0);
+        verify(query).setLong(3, 1000);
+        verify(query).setLong(4, 100);
+        verify(query).executeQuery();
+        verifyNoMoreInteractions(query);
+
+        assertEquals(1, stats.size());
+        assertEquals(t2, stats.get(0).getTimeStamp());
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Test
+    public void testGetDownsampledIntervalReturnsAllSamplesOfShortIntervals() throws DescriptorParsingException, StatementExecutionException {
+        @SuppressWarnings("unchecked")
+        Cursor<TestPojo> cursor = mock(Cursor.class);
+        when(cursor.hasNext()).thenReturn(true).thenReturn(true).thenReturn(false);
+        when(cursor.next()).thenReturn(result1).thenReturn(result2).thenReturn(null);
+
+        Storage storage = mock(Storage.class);
+        @SuppressWarnings("unchecked")
+        PreparedStatement<TestPojo> query = (PreparedStatement<TestPojo>) mock(PreparedStatement.class);
+        when(storage.prepareStatement(anyDescriptor())).thenReturn(query);
+        when(query.executeQuery()).thenReturn(cursor);
+
+        VmTimeIntervalPojoListGetter<TestPojo> getter = new VmTimeIntervalPojoListGetter<>(storage, cat);
+
+        List<TestPojo> stats = getter.getLatest(agentId, vmId, t1, t2, 100);
+
+        ArgumentCaptor<StatementDescriptor> descCaptor = ArgumentCaptor.forClass(StatementDescriptor.class);
+        verify(storage).prepareStatement(descCaptor.capture());
+        assertEquals(getter.getQueryLatestDesc(), descCaptor.getValue().getDescriptor());
+        assertEquals(2, stats.size());
+    }
+
     private static interface TestPojo extends TimeStampedPojo {
         long getData();
     }
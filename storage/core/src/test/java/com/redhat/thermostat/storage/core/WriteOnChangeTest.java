@@ -0,0 +1,82 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.storage.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.redhat.thermostat.storage.model.Pojo;
+
+public class WriteOnChangeTest {
+
+    private static final String CATEGORY_NAME = "write-on-change-test";
+    private static final String PROPERTY = WriteOnChange.HEARTBEAT_PROPERTY_PREFIX + CATEGORY_NAME;
+    // Static so that the category doesn't get registered twice when running
+    // tests in the same classloader.
+    private static final Category<Pojo> cat = new Category<>(CATEGORY_NAME, Pojo.class);
+
+    @After
+    public void tearDown() {
+        System.clearProperty(PROPERTY);
+    }
+
+    @Test
+    public void testDisabledUnlessSet() {
+        assertEquals(0, WriteOnChange.getHeartbeatMillis(cat));
+        assertFalse(WriteOnChange.isEnabled(cat));
+    }
+
+    @Test
+    public void testHeartbeatIsInSeconds() {
+        System.setProperty(PROPERTY, "30");
+        assertEquals(30000, WriteOnChange.getHeartbeatMillis(cat));
+        assertTrue(WriteOnChange.isEnabled(cat));
+    }
+
+    @Test
+    public void testInvalidHeartbeatIsIgnored() {
+        System.setProperty(PROPERTY, "0");
+        assertFalse(WriteOnChange.isEnabled(cat));
+        System.setProperty(PROPERTY, "-1");
+        assertFalse(WriteOnChange.isEnabled(cat));
+    }
+
+}
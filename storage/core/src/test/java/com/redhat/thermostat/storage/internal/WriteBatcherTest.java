@@ -0,0 +1,210 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.storage.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.redhat.thermostat.storage.core.Category;
+import com.redhat.thermostat.storage.internal.WriteBatcher.Flusher;
+import com.redhat.thermostat.storage.model.Pojo;
+
+public class WriteBatcherTest {
+    
+    private static final Category<FooPojo> FOO_CATEGORY = new Category<>("write-batcher-foo", FooPojo.class);
+    private static final Category<FooPojo> BAR_CATEGORY = new Category<>("write-batcher-bar", FooPojo.class);
+    
+    private ExecutorService executor;
+    private ScheduledExecutorService timer;
+    private ScheduledFuture<?> deadline;
+    private RecordingFlusher flusher;
+    private WriteBatcher<String> batcher;
+    
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    @Before
+    public void setup() {
+        executor = mock(ExecutorService.class);
+        // Run flush tasks synchronously
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                ((Runnable)invocation.getArguments()[0]).run();
+                return null;
+            }
+            
+        }).when(executor).execute(any(Runnable.class));
+        timer = mock(ScheduledExecutorService.class);
+        deadline = mock(ScheduledFuture.class);
+        when(timer.schedule(any(Runnable.class), anyLong(), any(TimeUnit.class))).thenReturn((ScheduledFuture)deadline);
+        flusher = new RecordingFlusher();
+        batcher = new WriteBatcher<>(executor, timer, flusher, 3, 500, null, null);
+    }
+    
+    @Test
+    public void flushesWhenBatchSizeReached() {
+        batcher.enqueue(FOO_CATEGORY, "a");
+        batcher.enqueue(FOO_CATEGORY, "b");
+        assertTrue(flusher.batches.isEmpty());
+        assertEquals(2, batcher.getPendingCount());
+        batcher.enqueue(FOO_CATEGORY, "c");
+        
+        assertEquals(1, flusher.batches.size());
+        assertEquals(Arrays.asList("a", "b", "c"), flusher.batches.get(0));
+        assertEquals(FOO_CATEGORY, flusher.categories.get(0));
+        assertEquals(0, batcher.getPendingCount());
+        // deadline no longer needed
+        verify(deadline).cancel(false);
+    }
+    
+    @Test
+    public void batchesArePerCategory() {
+        batcher.enqueue(FOO_CATEGORY, "a");
+        batcher.enqueue(BAR_CATEGORY, "x");
+        batcher.enqueue(FOO_CATEGORY, "b");
+        batcher.enqueue(BAR_CATEGORY, "y");
+        assertTrue(flusher.batches.isEmpty());
+        batcher.enqueue(BAR_CATEGORY, "z");
+        
+        assertEquals(1, flusher.batches.size());
+        assertEquals(BAR_CATEGORY, flusher.categories.get(0));
+        assertEquals(Arrays.asList("x", "y", "z"), flusher.batches.get(0));
+        assertEquals(2, batcher.getPendingCount());
+    }
+    
+    @Test
+    public void flushesOnDeadline() {
+        batcher.enqueue(FOO_CATEGORY, "a");
+        ArgumentCaptor<Runnable> deadlineTask = ArgumentCaptor.forClass(Runnable.class);
+        verify(timer).schedule(deadlineTask.capture(), eq(500L), eq(TimeUnit.MILLISECONDS));
+        batcher.enqueue(FOO_CATEGORY, "b");
+        assertTrue(flusher.batches.isEmpty());
+        
+        deadlineTask.getValue().run();
+        
+        assertEquals(1, flusher.batches.size());
+        assertEquals(Arrays.asList("a", "b"), flusher.batches.get(0));
+        assertEquals(0, batcher.getPendingCount());
+    }
+    
+    @Test
+    public void staleDeadlineDoesNotFlushNewBatch() {
+        batcher.enqueue(FOO_CATEGORY, "a");
+        ArgumentCaptor<Runnable> deadlineTask = ArgumentCaptor.forClass(Runnable.class);
+        verify(timer).schedule(deadlineTask.capture(), eq(500L), eq(TimeUnit.MILLISECONDS));
+        batcher.enqueue(FOO_CATEGORY, "b");
+        batcher.enqueue(FOO_CATEGORY, "c");
+        assertEquals(1, flusher.batches.size());
+        batcher.enqueue(FOO_CATEGORY, "d");
+        
+        // first deadline fires late, it must not touch the second batch
+        deadlineTask.getValue().run();
+        
+        assertEquals(1, flusher.batches.size());
+        assertEquals(1, batcher.getPendingCount());
+    }
+    
+    @Test
+    public void canFlushSingleCategory() {
+        batcher.enqueue(FOO_CATEGORY, "a");
+        batcher.enqueue(BAR_CATEGORY, "x");
+        
+        batcher.flush(FOO_CATEGORY);
+        
+        assertEquals(1, flusher.batches.size());
+        assertEquals(Arrays.asList("a"), flusher.batches.get(0));
+        assertEquals(1, batcher.getPendingCount());
+        
+        // nothing pending, no-op
+        batcher.flush(FOO_CATEGORY);
+        assertEquals(1, flusher.batches.size());
+    }
+    
+    @Test
+    public void canFlushAll() {
+        batcher.enqueue(FOO_CATEGORY, "a");
+        batcher.enqueue(BAR_CATEGORY, "x");
+        
+        batcher.flushAll();
+        
+        assertEquals(2, flusher.batches.size());
+        assertEquals(0, batcher.getPendingCount());
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidBatchSize() {
+        new WriteBatcher<>(executor, timer, flusher, 0, 500, null, null);
+    }
+    
+    private static class RecordingFlusher implements Flusher<String> {
+        
+        private final List<Category<?>> categories = new ArrayList<>();
+        private final List<List<String>> batches = new ArrayList<>();
+
+        @Override
+        public void flush(Category<?> category, List<String> batch) {
+            categories.add(category);
+            batches.add(batch);
+        }
+        
+    }
+    
+    private static class FooPojo implements Pojo {
+        // Dummy class for testing
+    }
+}
@@ -45,6 +45,7 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -124,6 +125,9 @@ public class VmInfoDAOTest {
         assertEquals(expectedAllVms, VmInfoDAOImpl.QUERY_ALL_VMS);
         String aggregateAllVms = "QUERY-COUNT vm-info";
         assertEquals(aggregateAllVms, VmInfoDAOImpl.AGGREGATE_COUNT_ALL_VMS);
+        String changedSince = "QUERY vm-info WHERE 'agentId' = ?s AND 'startTimeStamp' >= ?l OR "
+                + "'agentId' = ?s AND 'stopTimeStamp' >= ?l";
+        assertEquals(changedSince, VmInfoDAOImpl.QUERY_VMS_FOR_AGENT_CHANGED_SINCE);
         String addVmInfo = "ADD vm-info SET 'agentId' = ?s , " +
                                             "'vmId' = ?s , " +
                                             "'vmPid' = ?i , " +
@@ -406,6 +410,32 @@ public class VmInfoDAOTest {
         assertEquals(2, dao.getCount());
     }
 
+    @Test
+    public void testGetVmInfosChangedSince() throws DescriptorParsingException, StatementExecutionException {
+        VmInfo vm = new VmInfo();
+        vm.setVmId("vmId1");
+
+        @SuppressWarnings("unchecked")
+        Cursor<VmInfo> cursor = (Cursor<VmInfo>) mock(Cursor.class);
+        when(cursor.hasNext()).thenReturn(true).thenReturn(false);
+        when(cursor.next()).thenReturn(vm).thenThrow(new NoSuchElementException());
+
+        Storage storage = mock(Storage.class);
+        @SuppressWarnings("unchecked")
+        PreparedStatement<VmInfo> stmt = (PreparedStatement<VmInfo>) mock(PreparedStatement.class);
+        when(storage.prepareStatement(anyDescriptor())).thenReturn(stmt);
+        when(stmt.executeQuery()).thenReturn(cursor);
+        VmInfoDAOImpl dao = new VmInfoDAOImpl(storage);
+
+        List<VmInfo> vmInfos = dao.getVmInfosChangedSince(new AgentId("456"), 1000L);
+
+        assertEquals(Arrays.asList(vm), vmInfos);
+        verify(stmt).setString(0, "456");
+        verify(stmt).setLong(1, 1000L);
+        verify(stmt).setString(2, "456");
+        verify(stmt).setLong(3, 1000L);
+    }
+
     @SuppressWarnings("unchecked")
     @Test
     public void testPutVmInfo() throws DescriptorParsingException, StatementExecutionException {
@@ -73,6 +73,7 @@ import com.redhat.thermostat.storage.core.StatementDescriptor;
 import com.redhat.thermostat.storage.core.Update;
 import com.redhat.thermostat.storage.dao.AgentInfoDAO;
 import com.redhat.thermostat.storage.model.AgentInformation;
+import com.redhat.thermostat.storage.model.AggregateBucket;
 import com.redhat.thermostat.storage.model.AggregateCount;
 import com.redhat.thermostat.storage.model.Pojo;
 import com.redhat.thermostat.storage.query.BinaryComparisonOperator;
@@ -218,6 +219,67 @@ public class BasicDescriptorParserTest {
         assertNull(expn.getLimitExpn());
     }
     
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testParseAggregateLastWithBucketParam() throws DescriptorParsingException {
+        AggregateQuery<AgentInformation> query = mock(AggregateQuery.class);
+        when(storage.createAggregateQuery(eq(AggregateFunction.LAST), eq(AgentInfoDAO.CATEGORY))).thenReturn(query);
+        String descrString = "QUERY-LAST " + AgentInfoDAO.CATEGORY.getName()
+                + " WHERE 'a' = ?s BUCKET ?l SORT 'timeStamp' DSC LIMIT 3";
+        StatementDescriptor<AgentInformation> desc = new StatementDescriptor<>(AgentInfoDAO.CATEGORY, descrString);
+        parser = new BasicDescriptorParser<>(storage, desc);
+        ParsedStatementImpl<AgentInformation> statement = (ParsedStatementImpl<AgentInformation>)parser.parse();
+        assertEquals(2, statement.getNumParams());
+        assertTrue(statement.getRawStatement() instanceof AggregateQuery);
+        SuffixExpression expn = statement.getSuffixExpression();
+        assertNotNull(expn.getWhereExpn());
+        BucketExpression bucket = expn.getBucketExpn();
+        assertNotNull(bucket);
+        UnfinishedBucketValue expected = new UnfinishedBucketValue();
+        expected.setParameterIndex(1);
+        assertEquals(expected, bucket.getValue());
+        assertNotNull(expn.getSortExpn());
+        assertEquals(3, expn.getLimitExpn().getValue());
+    }
+    
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    @Test
+    public void testParseAggregateMaxWithBucketLiteral() throws DescriptorParsingException {
+        AggregateQuery<AggregateBucket> query = mock(AggregateQuery.class);
+        ArgumentCaptor<Category> captor = ArgumentCaptor.forClass(Category.class);
+        when(storage.createAggregateQuery(eq(AggregateFunction.MAX), captor.capture())).thenReturn(query);
+        CategoryAdapter<AgentInformation, AggregateBucket> adapter = new CategoryAdapter<>(AgentInfoDAO.CATEGORY);
+        Category<AggregateBucket> aggregateCategory = adapter.getAdapted(AggregateBucket.class);
+        String descrString = "QUERY-MAX(a) " + aggregateCategory.getName() + " BUCKET 60000L";
+        StatementDescriptor<AggregateBucket> desc = new StatementDescriptor<>(aggregateCategory, descrString);
+        BasicDescriptorParser<AggregateBucket> parser = new BasicDescriptorParser<>(storage, desc);
+        ParsedStatementImpl<AggregateBucket> statement = (ParsedStatementImpl<AggregateBucket>)parser.parse();
+        assertEquals(0, statement.getNumParams());
+        assertEquals(aggregateCategory, captor.getValue());
+        verify(query).setAggregateKey(new Key<>("a"));
+        SuffixExpression expn = statement.getSuffixExpression();
+        assertNull(expn.getWhereExpn());
+        assertEquals(60000L, expn.getBucketExpn().getValue());
+        assertNull(expn.getSortExpn());
+        assertNull(expn.getLimitExpn());
+    }
+    
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testParseAggregateBucketRejectsNonLongParam() {
+        AggregateQuery<AgentInformation> query = mock(AggregateQuery.class);
+        when(storage.createAggregateQuery(eq(AggregateFunction.AVG), eq(AgentInfoDAO.CATEGORY))).thenReturn(query);
+        String descrString = "QUERY-AVG(a) " + AgentInfoDAO.CATEGORY.getName() + " BUCKET ?i";
+        StatementDescriptor<AgentInformation> desc = new StatementDescriptor<>(AgentInfoDAO.CATEGORY, descrString);
+        parser = new BasicDescriptorParser<>(storage, desc);
+        try {
+            parser.parse();
+            fail("BUCKET should only accept long parameters");
+        } catch (DescriptorParsingException e) {
+            assertEquals("Bucket parameters only accept long types. Placeholder was: ?i", e.getMessage());
+        }
+    }
+    
     @Test
     public void testParseQueryCountWithAssertedParamValue() throws DescriptorParsingException {
         String formatedDesc = "QUERY-COUNT(a) %s";
@@ -56,6 +56,8 @@ import org.junit.Test;
 
 import com.redhat.thermostat.common.Pair;
 import com.redhat.thermostat.storage.core.Add;
+import com.redhat.thermostat.storage.core.AggregateQuery;
+import com.redhat.thermostat.storage.core.AggregateQuery.AggregateFunction;
 import com.redhat.thermostat.storage.core.Cursor;
 import com.redhat.thermostat.storage.core.DataModifyingStatement;
 import com.redhat.thermostat.storage.core.IllegalPatchException;
@@ -341,6 +343,46 @@ public class ParsedStatementImplTest {
         assertEquals(3, q.limitVal);
     }
     
+    @Test
+    public void canPatchBasicBucket() throws IllegalPatchException {
+        AggregateQuery<Pojo> aggQuery = new TestAggregateQuery(AggregateFunction.LAST, statement);
+        ParsedStatementImpl<Pojo> parsedStmt = new ParsedStatementImpl<>(aggQuery);
+        parsedStmt.setSetList(new SetList());
+        SuffixExpression suffixExpn = new SuffixExpression();
+        BucketExpression bucketExpnToPatch = new BucketExpression();
+        UnfinishedBucketValue unfinished = new UnfinishedBucketValue();
+        unfinished.setParameterIndex(0);
+        bucketExpnToPatch.setValue(unfinished);
+        suffixExpn.setBucketExpn(bucketExpnToPatch);
+        parsedStmt.setSuffixExpression(suffixExpn);
+        // set the value for the one unfinished param
+        PreparedStatementImpl<Pojo> preparedStatement = new PreparedStatementImpl<>(1);
+        preparedStatement.setLong(0, 60000L);
+        PreparedParameter[] params = preparedStatement.getParams();
+        // finally test the patching
+        Statement<Pojo> patched = parsedStmt.patchStatement(params);
+        assertTrue(patched instanceof TestAggregateQuery);
+        assertEquals(60000L, ((TestAggregateQuery)patched).getBucketWidth());
+        assertEquals("Raw statement should stay unpatched", 0L, aggQuery.getBucketWidth());
+    }
+    
+    @Test
+    public void rejectPatchingBucketOfNonAggregates() {
+        ParsedStatementImpl<Pojo> parsedStmt = new ParsedStatementImpl<>(statement);
+        parsedStmt.setSetList(new SetList());
+        SuffixExpression suffixExpn = new SuffixExpression();
+        BucketExpression bucketExpn = new BucketExpression();
+        bucketExpn.setValue(1000L);
+        suffixExpn.setBucketExpn(bucketExpn);
+        parsedStmt.setSuffixExpression(suffixExpn);
+        try {
+            parsedStmt.patchStatement(new PreparedParameter[] {});
+            fail("BUCKET should only be patchable for aggregate queries");
+        } catch (IllegalPatchException e) {
+            assertTrue(e.getCause().getMessage().contains("'bucket' of non-aggregate types"));
+        }
+    }
+    
     private SetList buildSetList() {
         // Build this set list, which corresponds to the TestPojo below
         // SET 'writerId' = ?s , 'fooTimeStamp' = ?l
@@ -849,6 +891,25 @@ public class ParsedStatementImplTest {
         
     }
     
+    private static class TestAggregateQuery extends AggregateQuery<Pojo> {
+
+        private TestAggregateQuery(AggregateFunction function, Query<Pojo> queryToAggregate) {
+            super(function, queryToAggregate);
+        }
+
+        @Override
+        public Cursor<Pojo> execute() {
+            // Not implemented
+            throw new AssertionError();
+        }
+
+        @Override
+        public Statement<Pojo> getRawDuplicate() {
+            return new TestAggregateQuery(getAggregateFunction(), queryToAggregate);
+        }
+
+    }
+    
     private static class TestAdd<T extends Pojo> implements Add<T> {
         
         private Map<String, Object> values = new HashMap<>();
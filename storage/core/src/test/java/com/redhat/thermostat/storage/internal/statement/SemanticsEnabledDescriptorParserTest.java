@@ -52,6 +52,8 @@ import com.redhat.thermostat.storage.core.Add;
 import com.redhat.thermostat.storage.core.AggregateQuery;
 import com.redhat.thermostat.storage.core.AggregateQuery.AggregateFunction;
 import com.redhat.thermostat.storage.core.BackingStorage;
+import com.redhat.thermostat.storage.core.Category;
+import com.redhat.thermostat.storage.core.CategoryAdapter;
 import com.redhat.thermostat.storage.core.DescriptorParsingException;
 import com.redhat.thermostat.storage.core.Key;
 import com.redhat.thermostat.storage.core.ParsedStatement;
@@ -62,6 +64,7 @@ import com.redhat.thermostat.storage.core.StatementDescriptor;
 import com.redhat.thermostat.storage.core.Update;
 import com.redhat.thermostat.storage.dao.AgentInfoDAO;
 import com.redhat.thermostat.storage.model.AgentInformation;
+import com.redhat.thermostat.storage.model.AggregateBucket;
 
 public class SemanticsEnabledDescriptorParserTest {
     
@@ -144,6 +147,81 @@ public class SemanticsEnabledDescriptorParserTest {
         doSemanticsBasicParseTest(descString);
     }
     
+    @Test
+    public void canParseQueryLastWithBucket() throws DescriptorParsingException {
+        when(storage.createAggregateQuery(eq(AggregateFunction.LAST), (eq(AgentInfoDAO.CATEGORY)))).thenReturn(aggQuery);
+        when(aggQuery.getAggregateFunction()).thenReturn(AggregateFunction.LAST);
+        String descString = "QUERY-LAST " + AgentInfoDAO.CATEGORY.getName()
+                + " WHERE '" + Key.AGENT_ID.getName() + "' = ?s BUCKET ?l SORT '"
+                + Key.TIMESTAMP.getName() + "' DSC";
+        doSemanticsBasicParseTest(descString);
+    }
+    
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    @Test
+    public void canParseQueryAvgWithBucketOnAdaptedCategory() throws DescriptorParsingException {
+        CategoryAdapter<AgentInformation, AggregateBucket> adapter = new CategoryAdapter<>(AgentInfoDAO.CATEGORY);
+        Category<AggregateBucket> aggregateCategory = adapter.getAdapted(AggregateBucket.class);
+        AggregateQuery<AggregateBucket> bucketQuery = mock(AggregateQuery.class);
+        when(storage.createAggregateQuery(eq(AggregateFunction.AVG), eq(aggregateCategory))).thenReturn(bucketQuery);
+        when(bucketQuery.getAggregateFunction()).thenReturn(AggregateFunction.AVG);
+        when(bucketQuery.getAggregateKey()).thenReturn((Key)AgentInfoDAO.START_TIME_KEY);
+        String descString = "QUERY-AVG(" + AgentInfoDAO.START_TIME_KEY.getName() + ") "
+                + aggregateCategory.getName() + " BUCKET 1000";
+        StatementDescriptor<AggregateBucket> desc = new StatementDescriptor<>(aggregateCategory, descString);
+        SemanticsEnabledDescriptorParser<AggregateBucket> bucketParser = new SemanticsEnabledDescriptorParser<>(storage, desc);
+        assertNotNull(bucketParser.parse());
+    }
+    
+    /*
+     * MIN, MAX and AVG produce AggregateBuckets, not records of the category.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    @Test
+    public void rejectQueryMaxOnNonAdaptedCategory() throws DescriptorParsingException {
+        when(storage.createAggregateQuery(eq(AggregateFunction.MAX), (eq(AgentInfoDAO.CATEGORY)))).thenReturn(aggQuery);
+        when(aggQuery.getAggregateFunction()).thenReturn(AggregateFunction.MAX);
+        when(aggQuery.getAggregateKey()).thenReturn((Key)AgentInfoDAO.START_TIME_KEY);
+        String descString = "QUERY-MAX(" + AgentInfoDAO.START_TIME_KEY.getName() + ") "
+                + AgentInfoDAO.CATEGORY.getName() + " BUCKET 1000";
+        StatementDescriptor<AgentInformation> desc = new StatementDescriptor<>(AgentInfoDAO.CATEGORY, descString);
+        parser = new SemanticsEnabledDescriptorParser<>(storage, desc);
+        try {
+            parser.parse();
+            fail("QUERY-MAX should require an adapted category");
+        } catch (DescriptorParsingException e) {
+            assertEquals("MAX requires a category adapted to AggregateBucket", e.getMessage());
+        }
+    }
+    
+    @Test
+    public void rejectQueryLastSortedByOtherKey() throws DescriptorParsingException {
+        when(storage.createAggregateQuery(eq(AggregateFunction.LAST), (eq(AgentInfoDAO.CATEGORY)))).thenReturn(aggQuery);
+        when(aggQuery.getAggregateFunction()).thenReturn(AggregateFunction.LAST);
+        String descString = "QUERY-LAST " + AgentInfoDAO.CATEGORY.getName() + " BUCKET 1000 SORT 'foo' DSC";
+        StatementDescriptor<AgentInformation> desc = new StatementDescriptor<>(AgentInfoDAO.CATEGORY, descString);
+        parser = new SemanticsEnabledDescriptorParser<>(storage, desc);
+        try {
+            parser.parse();
+            fail("Buckets should only be sortable by time stamp");
+        } catch (DescriptorParsingException e) {
+            assertEquals("LAST can only be sorted by '" + Key.TIMESTAMP.getName() + "'", e.getMessage());
+        }
+    }
+    
+    @Test
+    public void rejectBucketForNonBucketedQueries() throws DescriptorParsingException {
+        String descString = "QUERY " + AgentInfoDAO.CATEGORY.getName() + " BUCKET 1000";
+        StatementDescriptor<AgentInformation> desc = new StatementDescriptor<>(AgentInfoDAO.CATEGORY, descString);
+        parser = new SemanticsEnabledDescriptorParser<>(storage, desc);
+        try {
+            parser.parse();
+            fail("BUCKET should not be allowed for plain queries");
+        } catch (DescriptorParsingException e) {
+            assertEquals("BUCKET only allowed for QUERY-MIN/QUERY-MAX/QUERY-AVG/QUERY-LAST", e.getMessage());
+        }
+    }
+    
     @Test
     public void canParseQueryWithSort() throws DescriptorParsingException {
         String descString = "QUERY " + AgentInfoDAO.CATEGORY.getName() + " SORT 'foo' DSC";
@@ -40,11 +40,13 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyLong;
 import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
 import java.util.List;
 
 import com.redhat.thermostat.storage.core.AgentId;
@@ -55,6 +57,7 @@ import com.redhat.thermostat.common.ActionNotifier;
 import com.redhat.thermostat.storage.core.HostRef;
 import com.redhat.thermostat.storage.core.VmRef;
 import com.redhat.thermostat.storage.dao.VmInfoDAO;
+import com.redhat.thermostat.storage.internal.dao.VmInfoDAOImpl;
 import com.redhat.thermostat.storage.model.VmInfo;
 import com.redhat.thermostat.storage.monitor.HostMonitor;
 import com.redhat.thermostat.storage.monitor.HostMonitor.Action;
@@ -144,5 +147,67 @@ public class HostMonitorActionTest {
         verify(notifier, times(5)).fireAction(eq(Action.VM_ADDED), any(VmRef.class));
         verify(notifier, times(3)).fireAction(eq(Action.VM_REMOVED), any(VmRef.class));
     }
-}
 
+    @Test
+    public void testOnlyChangedVmsAreQueriedAfterFirstRun() {
+        HostRef host = new HostRef("01", "01");
+        VmInfoDAOImpl dao = mock(VmInfoDAOImpl.class);
+
+        VmInfo info_a = createVmInfo("0", 10L);
+        VmInfo info_b = createVmInfo("1", 20L);
+
+        when(dao.getAllVmInfosForAgent(any(AgentId.class))).thenReturn(Arrays.asList(info_a, info_b));
+
+        HostMonitorAction action = new HostMonitorAction(notifier, dao, host);
+        action.run();
+
+        verify(notifier, times(2)).fireAction(eq(Action.VM_ADDED), any(VmRef.class));
+
+        // nothing changed
+        action.run();
+
+        verify(dao, times(1)).getAllVmInfosForAgent(any(AgentId.class));
+        verify(dao).getVmInfosChangedSince(any(AgentId.class), eq(20L - HostMonitorAction.WATERMARK_OVERLAP));
+        verify(notifier, never()).fireAction(eq(Action.VM_REMOVED), any(VmRef.class));
+
+        // one VM stopped, another one started
+        when(info_b.isAlive()).thenReturn(false);
+        when(info_b.getStopTimeStamp()).thenReturn(30L);
+        VmInfo info_c = createVmInfo("2", 25L);
+        when(dao.getVmInfosChangedSince(any(AgentId.class), anyLong())).thenReturn(Arrays.asList(info_b, info_c));
+
+        action.run();
+
+        verify(dao, times(1)).getAllVmInfosForAgent(any(AgentId.class));
+        verify(notifier).fireAction(Action.VM_REMOVED, new VmRef(host, info_b));
+        verify(notifier).fireAction(Action.VM_ADDED, new VmRef(host, info_c));
+        verify(notifier, times(3)).fireAction(eq(Action.VM_ADDED), any(VmRef.class));
+
+        // VMs seen again within the overlap don't cause notifications
+        action.run();
+
+        verify(dao).getVmInfosChangedSince(any(AgentId.class), eq(30L - HostMonitorAction.WATERMARK_OVERLAP));
+        verify(notifier, times(3)).fireAction(eq(Action.VM_ADDED), any(VmRef.class));
+        verify(notifier, times(1)).fireAction(eq(Action.VM_REMOVED), any(VmRef.class));
+    }
+
+    @Test
+    public void testOtherDaosAreReloadedOnEveryRun() {
+        HostRef host = new HostRef("01", "01");
+
+        HostMonitorAction action = new HostMonitorAction(notifier, vmsDAO, host);
+        action.run();
+        action.run();
+
+        verify(vmsDAO, times(2)).getAllVmInfosForAgent(any(AgentId.class));
+    }
+
+    private VmInfo createVmInfo(String vmId, long startTime) {
+        VmInfo info = mock(VmInfo.class);
+        when(info.isAlive()).thenReturn(true);
+        when(info.getVmId()).thenReturn(vmId);
+        when(info.getVmName()).thenReturn(vmId);
+        when(info.getStartTimeStamp()).thenReturn(startTime);
+        return info;
+    }
+}
@@ -43,21 +43,25 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
-import java.util.ArrayList;
-import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
 
 import org.junit.Before;
 import org.junit.Test;
 
 import com.redhat.thermostat.common.ActionNotifier;
+import com.redhat.thermostat.storage.core.AgentId;
 import com.redhat.thermostat.storage.core.HostRef;
+import com.redhat.thermostat.storage.dao.AgentInfoDAO;
 import com.redhat.thermostat.storage.dao.HostInfoDAO;
+import com.redhat.thermostat.storage.model.HostInfo;
 import com.redhat.thermostat.storage.monitor.NetworkMonitor;
 import com.redhat.thermostat.storage.monitor.NetworkMonitor.Action;
 
 public class NetworkMonitorActionTest {
 
     private HostInfoDAO hostDAO;
+    private AgentInfoDAO agentDAO;
     
     private ActionNotifier<NetworkMonitor.Action> notifier;
     
@@ -65,27 +69,38 @@ public class NetworkMonitorActionTest {
     @Before
     public void setup() {
         hostDAO = mock(HostInfoDAO.class);
+        agentDAO = mock(AgentInfoDAO.class);
         notifier = mock(ActionNotifier.class);
     }
+
+    private AgentId addHost(String agentId, String hostName) {
+        AgentId id = new AgentId(agentId);
+        HostInfo info = new HostInfo();
+        info.setAgentId(agentId);
+        info.setHostname(hostName);
+        when(hostDAO.getHostInfo(id)).thenReturn(info);
+        return id;
+    }
     
     @Test
     public void testAddRemoveHost() {
         
-        Collection<HostRef> currentHosts = new ArrayList<>();
+        Set<AgentId> aliveAgents = new HashSet<>();
         HostRef a = new HostRef("0", "a");
         HostRef b = new HostRef("1", "b");
         HostRef c = new HostRef("2", "c");
         HostRef d = new HostRef("3", "d");
         
-        currentHosts.add(a);
-        currentHosts.add(b);
-        currentHosts.add(c);
-        currentHosts.add(d);
+        AgentId idA = addHost("0", "a");
+        aliveAgents.add(idA);
+        aliveAgents.add(addHost("1", "b"));
+        aliveAgents.add(addHost("2", "c"));
+        aliveAgents.add(addHost("3", "d"));
         
-        when(hostDAO.getAliveHosts()).thenReturn(currentHosts);
+        when(agentDAO.getAliveAgentIds()).thenReturn(aliveAgents);
         
         // the first result is to be notified of all those hosts
-        NetworkMonitorAction action = new NetworkMonitorAction(notifier, hostDAO);
+        NetworkMonitorAction action = new NetworkMonitorAction(notifier, hostDAO, agentDAO);
         action.run();
         
         verify(notifier).fireAction(Action.HOST_ADDED, a);
@@ -93,12 +108,12 @@ public class NetworkMonitorActionTest {
         verify(notifier).fireAction(Action.HOST_ADDED, c);
         verify(notifier).fireAction(Action.HOST_ADDED, d);
         
-        verify(notifier, times(0)).fireAction(Action.HOST_REMOVED, eq(any(HostRef.class)));
+        verify(notifier, times(0)).fireAction(eq(Action.HOST_REMOVED), any(HostRef.class));
 
         // now remove a from the series, add e
         HostRef e = new HostRef("4", "e");
-        currentHosts.add(e);
-        currentHosts.remove(a);
+        aliveAgents.add(addHost("4", "e"));
+        aliveAgents.remove(idA);
         
         action.run();
         
@@ -107,20 +122,53 @@ public class NetworkMonitorActionTest {
         
         // now add f from the series, no host removal
         HostRef f = new HostRef("5", "f");
-        currentHosts.add(f);
+        AgentId idF = addHost("5", "f");
+        aliveAgents.add(idF);
 
         action.run();
         
         verify(notifier).fireAction(Action.HOST_ADDED, f);
-        verify(notifier, times(0)).fireAction(Action.HOST_REMOVED, eq(any(HostRef.class)));
+        verify(notifier, times(1)).fireAction(eq(Action.HOST_REMOVED), any(HostRef.class));
         
         // now only remove f from the series, no other changes
-        currentHosts.remove(f);
+        aliveAgents.remove(idF);
         
         action.run();
 
         verify(notifier).fireAction(Action.HOST_REMOVED, f);
-        verify(notifier, times(0)).fireAction(Action.HOST_ADDED, eq(any(HostRef.class)));
+        verify(notifier, times(6)).fireAction(eq(Action.HOST_ADDED), any(HostRef.class));
     }
-}
 
+    @Test
+    public void testHostInfoIsOnlyFetchedForNewAgents() {
+        Set<AgentId> aliveAgents = new HashSet<>();
+        AgentId idA = addHost("0", "a");
+        aliveAgents.add(idA);
+        when(agentDAO.getAliveAgentIds()).thenReturn(aliveAgents);
+
+        NetworkMonitorAction action = new NetworkMonitorAction(notifier, hostDAO, agentDAO);
+        action.run();
+        action.run();
+        action.run();
+
+        verify(hostDAO, times(1)).getHostInfo(idA);
+        verify(agentDAO, times(3)).getAliveAgentIds();
+        verify(notifier, times(1)).fireAction(Action.HOST_ADDED, new HostRef("0", "a"));
+    }
+
+    @Test
+    public void testHostHiddenByAclIsSkipped() {
+        Set<AgentId> aliveAgents = new HashSet<>();
+        AgentId idA = addHost("0", "a");
+        AgentId hidden = new AgentId("1");
+        aliveAgents.add(idA);
+        aliveAgents.add(hidden);
+        when(agentDAO.getAliveAgentIds()).thenReturn(aliveAgents);
+
+        NetworkMonitorAction action = new NetworkMonitorAction(notifier, hostDAO, agentDAO);
+        action.run();
+
+        verify(notifier, times(1)).fireAction(eq(Action.HOST_ADDED), any(HostRef.class));
+        verify(notifier).fireAction(Action.HOST_ADDED, new HostRef("0", "a"));
+    }
+}
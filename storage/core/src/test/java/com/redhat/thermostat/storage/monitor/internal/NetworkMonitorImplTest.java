@@ -56,6 +56,7 @@ import com.redhat.thermostat.common.Filter;
 import com.redhat.thermostat.common.Timer;
 import com.redhat.thermostat.common.TimerFactory;
 import com.redhat.thermostat.storage.core.HostRef;
+import com.redhat.thermostat.storage.dao.AgentInfoDAO;
 import com.redhat.thermostat.storage.dao.HostInfoDAO;
 import com.redhat.thermostat.storage.monitor.NetworkMonitor;
 import com.redhat.thermostat.storage.monitor.NetworkMonitor.Action;
@@ -63,12 +64,14 @@ import com.redhat.thermostat.storage.monitor.NetworkMonitor.Action;
 public class NetworkMonitorImplTest {
 
     private HostInfoDAO hostDao;
+    private AgentInfoDAO agentDao;
     private TimerFactory timerFactory;
     private Timer timer;
 
     @Before
     public void setup() {
         hostDao = mock(HostInfoDAO.class);
+        agentDao = mock(AgentInfoDAO.class);
         timerFactory = mock(TimerFactory.class);
         timer = mock(Timer.class);
         when(timerFactory.createTimer()).thenReturn(timer);
@@ -93,7 +96,7 @@ public class NetworkMonitorImplTest {
         
         when(hostDao.getHosts()).thenReturn(testData);
         
-        NetworkMonitor monitor = new NetworkMonitorImpl(timerFactory, hostDao);
+        NetworkMonitor monitor = new NetworkMonitorImpl(timerFactory, hostDao, agentDao);
         List<HostRef> hosts = monitor.getHosts(new AllPassFilter<HostRef>());
         assertEquals(testData.size(), hosts.size());
         
@@ -125,7 +128,7 @@ public class NetworkMonitorImplTest {
         ActionListener<Action> listener1 = mock(ActionListener.class);
         ActionListener<Action> listener2 = mock(ActionListener.class);
         
-        NetworkMonitor monitor = new NetworkMonitorImpl(timerFactory, hostDao);
+        NetworkMonitor monitor = new NetworkMonitorImpl(timerFactory, hostDao, agentDao);
         monitor.addNetworkChangeListener(listener1);
         
         verify(timer).setTimeUnit(TimeUnit.SECONDS);
@@ -41,19 +41,21 @@ import java.util.NoSuchElementException;
 import org.bson.Document;
 
 import com.mongodb.MongoException;
-import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoIterable;
 import com.redhat.thermostat.storage.core.BasicBatchCursor;
 import com.redhat.thermostat.storage.core.StorageException;
 import com.redhat.thermostat.storage.model.Pojo;
 
 class MongoCursor<T extends Pojo> extends BasicBatchCursor<T> {
 
-    private final FindIterable<Document> findIterable;
+    private static final MongoPojoConverter CONVERTER = new MongoPojoConverter();
+    
+    private final MongoIterable<Document> iterable;
     private final Class<T> resultClass;
     private final com.mongodb.client.MongoCursor<Document> cursor;
 
-    MongoCursor(FindIterable<Document> iterable, Class<T> resultClass) {
-        this.findIterable = iterable;
+    MongoCursor(MongoIterable<Document> iterable, Class<T> resultClass) {
+        this.iterable = iterable;
         this.resultClass = resultClass;
         this.cursor = iterable.iterator();
     }
@@ -74,8 +76,7 @@ class MongoCursor<T extends Pojo> extends BasicBatchCursor<T> {
             if (next == null) {
                 throw new NoSuchElementException();
             }
-            MongoPojoConverter converter = new MongoPojoConverter();
-            return converter.convertMongoToPojo(next, resultClass);
+            return convert(next, resultClass);
         } catch (MongoException me) {
             throw new StorageException(me);
         }
@@ -84,7 +85,15 @@ class MongoCursor<T extends Pojo> extends BasicBatchCursor<T> {
     @Override
     public void setBatchSize(int n) throws IllegalArgumentException {
         super.setBatchSize(n); // validates input
-        findIterable.batchSize(n);
+        iterable.batchSize(n);
+    }
+
+    /**
+     * Converts a document of the underlying iterable to a result. Documents
+     * are stored pojos unless overridden.
+     */
+    T convert(Document document, Class<T> resultClass) {
+        return CONVERTER.convertMongoToPojo(document, resultClass);
     }
     
 }
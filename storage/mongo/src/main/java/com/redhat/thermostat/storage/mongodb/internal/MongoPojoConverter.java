@@ -33,25 +33,27 @@
  * library, but you are not obligated to do so.  If you do not wish
  * to do so, delete this exception statement from your version.
  */
-
-
 package com.redhat.thermostat.storage.mongodb.internal;
 
-import java.beans.PropertyDescriptor;
 import java.lang.reflect.Array;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 
-import org.apache.commons.beanutils.PropertyUtils;
 import org.bson.Document;
 
-import com.redhat.thermostat.storage.core.Persist;
+import com.redhat.thermostat.storage.core.PojoProperties;
+import com.redhat.thermostat.storage.core.PojoProperties.Property;
 import com.redhat.thermostat.storage.core.StorageException;
 import com.redhat.thermostat.storage.model.Pojo;
 
+/**
+ * Converts {@link Pojo}s to mongodb {@link Document}s and vice versa. Per
+ * class property metadata is looked up once and cached by
+ * {@link PojoProperties}. Only properties whose getter and setter are both
+ * annotated with {@link com.redhat.thermostat.storage.core.Persist} are
+ * mapped. Instances are stateless and may be shared.
+ */
 // We have to use raw types and unchecked casts, since we don't have
 // the relevant generic type info in this class. Suppress warnings
 // in this class.
@@ -59,37 +61,32 @@ import com.redhat.thermostat.storage.model.Pojo;
 class MongoPojoConverter {
 
     public Document convertPojoToMongo(Pojo obj) {
-        try {
-            return convertPojoToMongoImpl(obj);
-        } catch (IllegalAccessException | InvocationTargetException | NoSuchMethodException ex) {
-            throw new StorageException(ex);
-        }
+        return convertPojoToMongoImpl(obj);
     }
 
-    private Document convertPojoToMongoImpl(Pojo obj) throws IllegalAccessException, InvocationTargetException, NoSuchMethodException {
+    private Document convertPojoToMongoImpl(Pojo obj) {
         Document dbObj = new Document();
-        PropertyDescriptor[] descs = PropertyUtils.getPropertyDescriptors(obj);
-        for (PropertyDescriptor desc : descs) {
-            storePropertyToDBObject(obj, dbObj, desc);
+        PojoProperties properties = PojoProperties.forClass(obj.getClass());
+        for (Property prop : properties.getProperties()) {
+            if (isMapped(prop)) {
+                storePropertyToDBObject(obj, dbObj, prop);
+            }
         }
         return dbObj;
     }
 
-    private void storePropertyToDBObject(Pojo obj, Document dbObj, PropertyDescriptor desc) throws IllegalAccessException, InvocationTargetException, NoSuchMethodException {
-        if (hasPersistentAnnotation(desc)) {
-            String name = desc.getName();
-            Object value = PropertyUtils.getProperty(obj, name);
-            if (desc.getPropertyType().isArray()) {
-                value = convertIndexedProperty(value);
-            }
-            if (value instanceof Pojo) {
-                value = convertPojoToMongoImpl((Pojo) value);
-            }
-            dbObj.put(name, value);
+    private void storePropertyToDBObject(Pojo obj, Document dbObj, Property prop) {
+        Object value = prop.get(obj);
+        if (prop.isArray() && value != null) {
+            value = convertIndexedProperty(value);
+        }
+        if (value instanceof Pojo) {
+            value = convertPojoToMongoImpl((Pojo) value);
         }
+        dbObj.put(prop.getName(), value);
     }
 
-    private Object convertIndexedProperty(Object values) throws IllegalAccessException, InvocationTargetException, NoSuchMethodException {
+    private Object convertIndexedProperty(Object values) {
         int length = Array.getLength(values);
         List list = new ArrayList(length);
         for (int i = 0; i < length; i++) {
@@ -103,47 +100,40 @@ class MongoPojoConverter {
     }
 
     public <T extends Pojo> T convertMongoToPojo(Document dbObj, Class<T> pojoClass) {
-        try {
-            return convertMongoToPojoImpl(dbObj, pojoClass);
-        } catch (IllegalAccessException | InstantiationException | InvocationTargetException | NoSuchMethodException ex) {
-            throw new StorageException(ex);
-        }
+        return convertMongoToPojoImpl(dbObj, pojoClass);
     }
 
-    private <T extends Pojo> T convertMongoToPojoImpl(Document dbObj, Class pojoClass) throws InstantiationException, IllegalAccessException, InvocationTargetException, NoSuchMethodException {
+    private <T extends Pojo> T convertMongoToPojoImpl(Document dbObj, Class pojoClass) {
         if (dbObj == null) {
             return null;
         }
-        T pojo = (T) pojoClass.newInstance();
-        Set<String> keys = dbObj.keySet();
-        for (String name : keys) {
+        PojoProperties properties = PojoProperties.forClass(pojoClass);
+        T pojo = (T) properties.newInstance();
+        for (Map.Entry<String, Object> entry : dbObj.entrySet()) {
+            String name = entry.getKey();
             if (! name.equals("_id")) {
-                storePropertyToPojo(dbObj, pojo, name);
+                storePropertyToPojo(properties, pojo, name, entry.getValue());
             }
         }
         return pojo;
     }
 
-    private <T extends Pojo> void storePropertyToPojo(Document dbObj, T pojo, String name)
-            throws IllegalAccessException, InvocationTargetException, NoSuchMethodException, InstantiationException {
-
-        PropertyDescriptor desc = PropertyUtils.getPropertyDescriptor(pojo, name);
-        if (hasPersistentAnnotation(desc)) {
-            Object value = dbObj.get(name);
-            if (desc.getPropertyType().isArray()) {
-                value = convertIndexedPropertyFromMongo(desc, (List) value);
-            }
-            if (value instanceof Document) {
-                value = convertMongoToPojoImpl((Document) value, desc.getPropertyType());
-            }
-            PropertyUtils.setProperty(pojo, name, value);
-        } else {
+    private <T extends Pojo> void storePropertyToPojo(PojoProperties properties, T pojo, String name, Object value) {
+        Property prop = properties.getProperty(name);
+        if (prop == null || !isMapped(prop)) {
             throw new StorageException("no available mapping for extra property: '" + name + "' in " + pojo.getClass().getName());
         }
+        if (prop.isArray() && value != null) {
+            value = convertIndexedPropertyFromMongo(prop, (List) value);
+        }
+        if (value instanceof Document) {
+            value = convertMongoToPojoImpl((Document) value, prop.getType());
+        }
+        prop.set(pojo, value);
     }
 
-    private Object convertIndexedPropertyFromMongo(PropertyDescriptor desc, List values) throws InstantiationException, IllegalAccessException, InvocationTargetException, NoSuchMethodException {
-        Class componentType = desc.getPropertyType().getComponentType();
+    private Object convertIndexedPropertyFromMongo(Property prop, List values) {
+        Class componentType = prop.getType().getComponentType();
         Object array = Array.newInstance(componentType, values.size());
         int i = 0;
         for (Object value : values) {
@@ -156,15 +146,8 @@ class MongoPojoConverter {
         return array;
     }
 
-    private boolean hasPersistentAnnotation(PropertyDescriptor desc) {
-        if (desc == null) {
-            return false;
-        }
-        Method writeMethod = desc.getWriteMethod();
-        Method readMethod = desc.getReadMethod();
-        return writeMethod != null && writeMethod.isAnnotationPresent(Persist.class)
-               && readMethod != null && readMethod.isAnnotationPresent(Persist.class);
+    private static boolean isMapped(Property prop) {
+        return prop.isReadable() && prop.isWritable();
     }
 
 }
-
@@ -38,6 +38,7 @@ package com.redhat.thermostat.storage.mongodb.internal;
 
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -49,6 +50,8 @@ import java.util.logging.Logger;
 import org.bson.Document;
 
 import com.mongodb.MongoException;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.AggregateIterable;
 import com.mongodb.client.DistinctIterable;
 import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoCollection;
@@ -56,8 +59,13 @@ import com.mongodb.client.MongoDatabase;
 import com.mongodb.client.gridfs.GridFSBucket;
 import com.mongodb.client.gridfs.GridFSBuckets;
 import com.mongodb.client.gridfs.GridFSDownloadStream;
+import com.mongodb.client.model.BulkWriteOptions;
 import com.mongodb.client.model.CreateCollectionOptions;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.ReplaceOneModel;
 import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
 import com.mongodb.client.result.DeleteResult;
 import com.mongodb.client.result.UpdateResult;
 import com.redhat.thermostat.common.utils.LoggingUtils;
@@ -67,16 +75,22 @@ import com.redhat.thermostat.storage.core.Add;
 import com.redhat.thermostat.storage.core.AggregateQuery;
 import com.redhat.thermostat.storage.core.AggregateQuery.AggregateFunction;
 import com.redhat.thermostat.storage.core.BackingStorage;
+import com.redhat.thermostat.storage.core.BulkWrite;
 import com.redhat.thermostat.storage.core.Category;
 import com.redhat.thermostat.storage.core.Connection;
 import com.redhat.thermostat.storage.core.Connection.ConnectionListener;
 import com.redhat.thermostat.storage.core.Connection.ConnectionStatus;
 import com.redhat.thermostat.storage.core.Cursor;
+import com.redhat.thermostat.storage.core.DataRetention;
+import com.redhat.thermostat.storage.core.DataRollup;
+import com.redhat.thermostat.storage.core.DataModifyingStatement;
 import com.redhat.thermostat.storage.core.DescriptorParsingException;
 import com.redhat.thermostat.storage.core.Key;
+import com.redhat.thermostat.storage.core.ParsedStatementCache;
 import com.redhat.thermostat.storage.core.PreparedStatement;
 import com.redhat.thermostat.storage.core.PreparedStatementFactory;
 import com.redhat.thermostat.storage.core.Query;
+import com.redhat.thermostat.storage.core.Query.SortDirection;
 import com.redhat.thermostat.storage.core.Remove;
 import com.redhat.thermostat.storage.core.Replace;
 import com.redhat.thermostat.storage.core.SaveFileListener;
@@ -88,6 +102,7 @@ import com.redhat.thermostat.storage.core.StatementDescriptor;
 import com.redhat.thermostat.storage.core.StorageCredentials;
 import com.redhat.thermostat.storage.core.StorageException;
 import com.redhat.thermostat.storage.core.Update;
+import com.redhat.thermostat.storage.model.AggregateBucket;
 import com.redhat.thermostat.storage.model.AggregateCount;
 import com.redhat.thermostat.storage.model.AggregateResult;
 import com.redhat.thermostat.storage.model.DistinctResult;
@@ -102,6 +117,10 @@ import com.redhat.thermostat.storage.query.Expression;
 public class MongoStorage implements BackingStorage, SchemaInfoInserter {
     
     private static final Logger logger = LoggingUtils.getLogger(MongoStorage.class);
+    // fields of the documents aggregated by time bucket
+    private static final String BUCKET_RECORD = "record";
+    private static final String BUCKET_COUNT = "count";
+    private static final String BUCKET_VALUE = "value";
     
     private class MongoDistinctQuery<T extends Pojo> extends AggregateQuery<T> {
 
@@ -119,7 +138,9 @@ public class MongoStorage implements BackingStorage, SchemaInfoInserter {
 
         @Override
         public Statement<T> getRawDuplicate() {
-            MongoQuery<T> query = (MongoQuery<T>) this.queryToAggregate;
+            // The where clause gets patched onto the query, so each
+            // duplicate needs a query of its own.
+            MongoQuery<T> query = (MongoQuery<T>) this.queryToAggregate.getRawDuplicate();
             MongoDistinctQuery<T> aggQuery = new MongoDistinctQuery<>(query, category);
             // Distinct queries require this param. It's static so pass this
             // on to duplicates.
@@ -145,7 +166,9 @@ public class MongoStorage implements BackingStorage, SchemaInfoInserter {
 
         @Override
         public Statement<T> getRawDuplicate() {
-            MongoQuery<T> query = (MongoQuery<T>) this.queryToAggregate;
+            // The where clause gets patched onto the query, so each
+            // duplicate needs a query of its own.
+            MongoQuery<T> query = (MongoQuery<T>) this.queryToAggregate.getRawDuplicate();
             MongoCountQuery<T> dupe = new MongoCountQuery<>(query, category);
             // Count aggregates have an optional key to aggregate. Optional for
             // backwards compat reasons. Be sure to copy it over if it was set.
@@ -156,8 +179,39 @@ public class MongoStorage implements BackingStorage, SchemaInfoInserter {
         }
     }
     
+    private class MongoBucketQuery<T extends Pojo> extends AggregateQuery<T> {
+
+        private final Category<T> category;
+
+        private MongoBucketQuery(AggregateFunction function, MongoQuery<T> queryToAggregate, Category<T> category) {
+            super(function, queryToAggregate);
+            this.category = category;
+        }
+
+        @Override
+        public Cursor<T> execute() {
+            return executeBucketQuery(this, category, (MongoQuery<T>)queryToAggregate);
+        }
+
+        @Override
+        public Statement<T> getRawDuplicate() {
+            // The where clause and sort get patched onto the query, so each
+            // duplicate needs a query of its own.
+            MongoQuery<T> query = (MongoQuery<T>) this.queryToAggregate.getRawDuplicate();
+            MongoBucketQuery<T> dupe = new MongoBucketQuery<>(getAggregateFunction(), query, category);
+            // The aggregate key is static, the bucket width gets patched.
+            if (getAggregateKey() != null) {
+                dupe.setAggregateKey(getAggregateKey());
+            }
+            dupe.setBucketWidth(getBucketWidth());
+            return dupe;
+        }
+    }
+    
     private static abstract class MongoSetter<T extends Pojo> {
         
+        private static final MongoPojoConverter CONVERTER = new MongoPojoConverter();
+        
         protected final Document values;
         protected final Category<T> category;
         
@@ -170,14 +224,12 @@ public class MongoStorage implements BackingStorage, SchemaInfoInserter {
             // convert pojo values to mongo DB objects if need be
             if (value instanceof Pojo) {
                 Pojo pojo = (Pojo)value;
-                MongoPojoConverter converter = new MongoPojoConverter();
-                value = converter.convertPojoToMongo(pojo);
+                value = CONVERTER.convertPojoToMongo(pojo);
             } else if (value instanceof Pojo[]) {
                 List<Document> pojos = new ArrayList<>();
-                MongoPojoConverter converter = new MongoPojoConverter();
                 Pojo[] list = (Pojo[])value;
                 for (Pojo p: list) {
-                    Document converted = converter.convertPojoToMongo(p);
+                    Document converted = CONVERTER.convertPojoToMongo(p);
                     pojos.add(converted);
                 }
                 value = pojos;
@@ -255,6 +307,59 @@ public class MongoStorage implements BackingStorage, SchemaInfoInserter {
         
     }
     
+    private class MongoBulkWrite<T extends Pojo> implements BulkWrite<T> {
+        
+        private final Category<T> category;
+        private final List<WriteModel<Document>> writes;
+        
+        private MongoBulkWrite(Category<T> category) {
+            this.category = category;
+            this.writes = new ArrayList<>();
+        }
+
+        @Override
+        public void append(DataModifyingStatement<T> write) {
+            if (write instanceof MongoAdd) {
+                MongoAdd<T> add = (MongoAdd<T>)write;
+                assertSameCategory(add.category);
+                writes.add(new InsertOneModel<>(add.values));
+            } else if (write instanceof MongoReplace) {
+                MongoReplace<T> replace = (MongoReplace<T>)write;
+                assertSameCategory(replace.category);
+                if (replace.query == null) {
+                    String msg = "where expression must be set. " +
+                                 "Please call where() before append().";
+                    throw new IllegalArgumentException(msg);
+                }
+                writes.add(new ReplaceOneModel<>(replace.query, replace.values, new UpdateOptions().upsert(true)));
+            } else {
+                throw new IllegalArgumentException("Unsupported bulk write: " + write);
+            }
+        }
+        
+        private void assertSameCategory(Category<T> other) {
+            if (!category.equals(other)) {
+                throw new IllegalArgumentException("Category mismatch: " + other + " != " + category);
+            }
+        }
+
+        @Override
+        public int size() {
+            return writes.size();
+        }
+
+        @Override
+        public int apply() {
+            return (int)bulkWriteImpl(category, writes);
+        }
+
+        @Override
+        public Statement<T> getRawDuplicate() {
+            return new MongoBulkWrite<>(category);
+        }
+        
+    }
+    
     private class MongoUpdate<T extends Pojo> extends MongoSetter<T>
             implements Update<T> {
 
@@ -328,18 +433,42 @@ public class MongoStorage implements BackingStorage, SchemaInfoInserter {
     private final MongoConnection conn;
     private final Map<String, MongoCollection<Document>> collectionCache = new HashMap<>();
     private final CountDownLatch connectedLatch;
+    private final ParsedStatementCache statementCache = new ParsedStatementCache(this);
+    private final RetentionSettingsRetriever retentionSettings;
+    private final RetentionEnforcer retentionEnforcer;
+    private final RollupCompactor rollupCompactor;
     private volatile MongoDatabase db = null;
 
     // For testing only
     MongoStorage(MongoDatabase db, CountDownLatch latch) {
+        this(db, latch, new RetentionSettingsRetriever(), null, null);
+    }
+
+    // For testing only
+    MongoStorage(MongoDatabase db, CountDownLatch latch, RetentionSettingsRetriever retentionSettings,
+            RetentionEnforcer retentionEnforcer, RollupCompactor rollupCompactor) {
         this.db = db;
         this.connectedLatch = latch;
         this.conn = null;
+        this.retentionSettings = retentionSettings;
+        this.retentionEnforcer = retentionEnforcer;
+        this.rollupCompactor = rollupCompactor;
     }
     
     MongoStorage(MongoConnection connection) {
         this.conn = connection;
         connectedLatch = new CountDownLatch(1);
+        retentionSettings = new RetentionSettingsRetriever();
+        // Only the designated process deletes expired data and rolls up
+        // data, so that processes sharing the database don't run maintenance
+        // loops of their own.
+        if (retentionSettings.isMaintenanceEnabled()) {
+            retentionEnforcer = new RetentionEnforcer(retentionSettings);
+            rollupCompactor = new RollupCompactor(retentionSettings);
+        } else {
+            retentionEnforcer = null;
+            rollupCompactor = null;
+        }
         
         // We register a connection listener in order for the mongo-java-driver
         // DB object to be valid once it's first used (that's usually in
@@ -394,6 +523,11 @@ public class MongoStorage implements BackingStorage, SchemaInfoInserter {
         return replace;
     }
 
+    @Override
+    public <T extends Pojo> BulkWrite<T> createBulkWrite(Category<T> category) {
+        return new MongoBulkWrite<>(category);
+    }
+
     private <T extends Pojo> Cursor<T> executeGetCount(Category<T> category, MongoQuery<T> queryToAggregate) {
         try {
             MongoCollection<Document> coll = getCachedCollection(category);
@@ -432,6 +566,85 @@ public class MongoStorage implements BackingStorage, SchemaInfoInserter {
         }
     }
     
+    /*
+     * Groups matching records by time bucket using the aggregation pipeline:
+     * $match, $sort by time stamp, $group by bucket, $sort and $limit. Buckets
+     * of LAST carry the newest record of the bucket, those of MIN/MAX/AVG the
+     * fields of AggregateBucket.
+     */
+    private <T extends Pojo> Cursor<T> executeBucketQuery(MongoBucketQuery<T> aggQuery, Category<T> category, MongoQuery<T> queryToAggregate) {
+        try {
+            MongoCollection<Document> coll = getCachedCollection(category);
+            final String timeStampName = Key.TIMESTAMP.getName();
+            String timeStampField = "$" + timeStampName;
+            List<Document> pipeline = new ArrayList<>();
+            if (queryToAggregate.hasClauses()) {
+                pipeline.add(new Document("$match", queryToAggregate.getGeneratedQuery()));
+            }
+            // oldest first, so that $first and $last refer to time
+            pipeline.add(new Document("$sort", new Document(timeStampName, 1)));
+
+            Object bucketId = null; // a single bucket
+            long bucketWidth = aggQuery.getBucketWidth();
+            if (bucketWidth > 0) {
+                Document offset = new Document("$mod", Arrays.<Object>asList(timeStampField, bucketWidth));
+                bucketId = new Document("$subtract", Arrays.<Object>asList(timeStampField, offset));
+            }
+            Document group = new Document("_id", bucketId);
+            AggregateFunction function = aggQuery.getAggregateFunction();
+            if (function == AggregateFunction.LAST) {
+                group.append(BUCKET_RECORD, new Document("$last", "$$ROOT"));
+            } else {
+                String accumulator = "$" + function.name().toLowerCase();
+                group.append(timeStampName, new Document("$first", timeStampField));
+                group.append(BUCKET_COUNT, new Document("$sum", 1));
+                group.append(BUCKET_VALUE, new Document(accumulator, "$" + aggQuery.getAggregateKey().getName()));
+            }
+            pipeline.add(new Document("$group", group));
+
+            // buckets are ordered by time, oldest first unless asked otherwise
+            int direction = SortDirection.ASCENDING.getValue();
+            for (Sort sort : queryToAggregate.getSorts()) {
+                if (!sort.getKey().equals(Key.TIMESTAMP)) {
+                    throw new IllegalArgumentException(function + " can only be sorted by '"
+                            + timeStampName + "', not '" + sort.getKey().getName() + "'");
+                }
+                direction = sort.getDirection().getValue();
+            }
+            pipeline.add(new Document("$sort", new Document("_id", direction)));
+            int limit = queryToAggregate.getLimit();
+            if (limit > 0) {
+                pipeline.add(new Document("$limit", limit));
+            }
+            logger.fine("generated pipeline is: " + pipeline);
+
+            AggregateIterable<Document> iterable = coll.aggregate(pipeline).allowDiskUse(true);
+            iterable.batchSize(Cursor.DEFAULT_BATCH_SIZE);
+            if (function == AggregateFunction.LAST) {
+                return new MongoCursor<T>(iterable, category.getDataClass()) {
+                    @Override
+                    T convert(Document document, Class<T> resultClass) {
+                        return super.convert(document.get(BUCKET_RECORD, Document.class), resultClass);
+                    }
+                };
+            }
+            return new MongoCursor<T>(iterable, category.getDataClass()) {
+                @Override
+                T convert(Document document, Class<T> resultClass) {
+                    AggregateBucket bucket = new AggregateBucket();
+                    bucket.setTimeStamp(((Number) document.get(timeStampName)).longValue());
+                    bucket.setCount(((Number) document.get(BUCKET_COUNT)).longValue());
+                    // values of records missing the key are ignored
+                    Object value = document.get(BUCKET_VALUE);
+                    bucket.setValue(value instanceof Number ? ((Number) value).doubleValue() : Double.NaN);
+                    return resultClass.cast(bucket);
+                }
+            };
+        } catch (MongoException me) {
+            throw new StorageException(me);
+        }
+    }
+
     private String[] convertToStringList(Iterable<String> iterable, String keyName) {
         List<String> stringList = new ArrayList<>();
         Iterator<String> iter = iterable.iterator();
@@ -467,6 +680,35 @@ public class MongoStorage implements BackingStorage, SchemaInfoInserter {
         }
     }
 
+    private <T extends Pojo> long bulkWriteImpl(final Category<T> cat, final List<WriteModel<Document>> writes) {
+        if (writes.isEmpty()) {
+            return 0;
+        }
+        try {
+            MongoCollection<Document> coll = getCachedCollection(cat);
+            for (WriteModel<Document> write : writes) {
+                if (write instanceof InsertOneModel) {
+                    assertContainsWriterID(((InsertOneModel<Document>)write).getDocument());
+                } else {
+                    assertContainsWriterID(((ReplaceOneModel<Document>)write).getReplacement());
+                }
+            }
+            // Unordered: mongodb may apply writes in parallel and does not
+            // stop on the first failing write.
+            BulkWriteResult result = coll.bulkWrite(writes, new BulkWriteOptions().ordered(false));
+            if (!result.wasAcknowledged()) {
+                return writes.size();
+            }
+            long count = result.getInsertedCount() + result.getUpserts().size();
+            if (result.isModifiedCountAvailable()) {
+                count += result.getModifiedCount();
+            }
+            return count;
+        } catch (MongoException me) {
+            throw new StorageException(me);
+        }
+    }
+
     private void assertContainsWriterID(final Document values) {
         if (values.get(Key.AGENT_ID.getName()) == null) {
             throw new AssertionError("agentId must be set");
@@ -538,6 +780,9 @@ public class MongoStorage implements BackingStorage, SchemaInfoInserter {
                 // adapted aggregate category, no need to actually register
                 return;
             }
+            // Cached statements may refer to a previous incarnation of
+            // this category.
+            statementCache.invalidate(category);
             String name = category.getName();
             if (collectionCache.containsKey(name)) {
                 throw new IllegalStateException("Category may only be associated with one backend.");
@@ -577,12 +822,45 @@ public class MongoStorage implements BackingStorage, SchemaInfoInserter {
             collectionCache.put(name, coll);
             if(!isSchemaInfo) {
                 insertSchemaInfo(category);
+                enforceRetention(name, coll, retentionSettings.getRetention(category));
+                maintainRollup(name, coll, category);
             }
         } catch (MongoException me) {
             throw new StorageException(me);
         }
     }
 
+    private void enforceRetention(String name, MongoCollection<Document> coll, DataRetention retention) {
+        if (retention == null || retentionEnforcer == null) {
+            return;
+        }
+        // Expired data is looked up by time alone. This is a no-op if the
+        // index already exists; otherwise build it without blocking writers.
+        Document timeIndex = new Document(retention.getTimeKey().getName(), 1);
+        coll.createIndex(timeIndex, new IndexOptions().background(true));
+        retentionEnforcer.register(name, coll, retention);
+    }
+
+    private void maintainRollup(String name, MongoCollection<Document> coll, Category<?> category) {
+        DataRollup rollup = category.getRollup();
+        if (rollup == null || rollupCompactor == null) {
+            return;
+        }
+        // Tiers are maintained whether or not their categories are ever
+        // registered, so set them up here just like registered ones.
+        Document timeIndex = new Document(Key.TIMESTAMP.getName(), 1);
+        coll.createIndex(timeIndex, new IndexOptions().background(true));
+        List<MongoCollection<Document>> tierColls = new ArrayList<>();
+        for (DataRollup.Tier tier : rollup.getTiers()) {
+            String tierName = DataRollup.getTierCategoryName(name, tier);
+            MongoCollection<Document> tierColl = db.getCollection(tierName);
+            tierColl.createIndex(timeIndex, new IndexOptions().background(true));
+            enforceRetention(tierName, tierColl, retentionSettings.getRetention(tierName, tier.getRetention()));
+            tierColls.add(tierColl);
+        }
+        rollupCompactor.register(name, coll, rollup, tierColls);
+    }
+
     @Override
     public <T extends Pojo> Query<T> createQuery(Category<T> category) {
         return new MongoQuery<T>(this, category);
@@ -661,7 +939,14 @@ public class MongoStorage implements BackingStorage, SchemaInfoInserter {
     }
 
     @Override
-    public void shutdown() {}
+    public void shutdown() {
+        if (retentionEnforcer != null) {
+            retentionEnforcer.shutdown();
+        }
+        if (rollupCompactor != null) {
+            rollupCompactor.shutdown();
+        }
+    }
 
     /*
      *  QueuedStorage decorator uses this method and "wraps" the returned
@@ -670,10 +955,11 @@ public class MongoStorage implements BackingStorage, SchemaInfoInserter {
     @Override
     public <T extends Pojo> PreparedStatement<T> prepareStatement(StatementDescriptor<T> statementDesc)
             throws DescriptorParsingException {
-        // FIXME: Use some kind of cache in order to avoid parsing of
-        // descriptors each time this is called. At least if the descriptor
-        // class is the same we should be able to do something here.
-        return PreparedStatementFactory.getInstance(this, statementDesc);
+        return PreparedStatementFactory.getInstance(statementCache, statementDesc);
+    }
+
+    ParsedStatementCache getStatementCache() {
+        return statementCache;
     }
 
     @Override
@@ -685,6 +971,14 @@ public class MongoStorage implements BackingStorage, SchemaInfoInserter {
             return new MongoCountQuery<>(query, category);
         case DISTINCT:
             return new MongoDistinctQuery<>(query, category); 
+        case MIN:
+            // fall-through
+        case MAX:
+            // fall-through
+        case AVG:
+            // fall-through
+        case LAST:
+            return new MongoBucketQuery<>(function, query, category);
         default:
             throw new IllegalStateException("function not supported: "
                     + function);
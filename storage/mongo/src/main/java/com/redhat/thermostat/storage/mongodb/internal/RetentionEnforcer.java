@@ -0,0 +1,182 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.storage.mongodb.internal;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.bson.Document;
+
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoCollection;
+import com.redhat.thermostat.common.Clock;
+import com.redhat.thermostat.common.SystemClock;
+import com.redhat.thermostat.common.utils.LoggingUtils;
+import com.redhat.thermostat.storage.core.DataRetention;
+import com.redhat.thermostat.storage.core.Key;
+
+/**
+ * Periodically deletes data which has outlived its category's
+ * {@link DataRetention}.
+ * <p>
+ * MongoDB's TTL indexes only expire documents by BSON dates, while our time
+ * stamps are plain numbers, so expired documents are deleted explicitly. This
+ * is done in chunks of ids, so that no single delete holds on to a collection
+ * for long.
+ */
+class RetentionEnforcer {
+
+    private static final Logger logger = LoggingUtils.getLogger(RetentionEnforcer.class);
+
+    private final ScheduledExecutorService executor;
+    private final Clock clock;
+    private final long interval;
+    private final int chunkSize;
+    // Access/modification of these fields should be synchronized on targets
+    private final Map<String, Target> targets = new LinkedHashMap<>();
+    private boolean scheduled = false;
+
+    RetentionEnforcer(RetentionSettingsRetriever settings) {
+        this(Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "thermostat-storage-retention");
+                thread.setDaemon(true);
+                return thread;
+            }
+        }), new SystemClock(), settings.getInterval(), settings.getChunkSize());
+    }
+
+    // For testing only
+    RetentionEnforcer(ScheduledExecutorService executor, Clock clock, long interval, int chunkSize) {
+        this.executor = executor;
+        this.clock = clock;
+        this.interval = interval;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Starts expiring data of the given collection. Replaces any retention
+     * previously registered for the same collection.
+     */
+    void register(String name, MongoCollection<Document> collection, DataRetention retention) {
+        synchronized (targets) {
+            targets.put(name, new Target(collection, retention));
+            if (!scheduled) {
+                executor.scheduleWithFixedDelay(new Runnable() {
+                    @Override
+                    public void run() {
+                        enforceAll();
+                    }
+                }, interval, interval, TimeUnit.MILLISECONDS);
+                scheduled = true;
+            }
+        }
+    }
+
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    void enforceAll() {
+        List<Map.Entry<String, Target>> toEnforce;
+        synchronized (targets) {
+            toEnforce = new ArrayList<>(targets.entrySet());
+        }
+        for (Map.Entry<String, Target> entry : toEnforce) {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            Target target = entry.getValue();
+            try {
+                long deleted = enforce(target.collection, target.retention);
+                if (deleted > 0) {
+                    logger.log(Level.FINE, "Deleted " + deleted + " expired records of " + entry.getKey());
+                }
+            } catch (MongoException e) {
+                // Try again next time around
+                logger.log(Level.WARNING, "Failed to delete expired records of " + entry.getKey(), e);
+            }
+        }
+    }
+
+    /**
+     * Deletes all records older than the retention allows.
+     *
+     * @return the number of records deleted
+     */
+    long enforce(MongoCollection<Document> collection, DataRetention retention) {
+        long cutoff = clock.getRealTimeMillis() - retention.getMaxAgeMillis();
+        Document expired = new Document(retention.getTimeKey().getName(), new Document("$lt", cutoff));
+        Document idOnly = new Document(Key.ID.getName(), 1);
+        long deleted = 0;
+        while (!Thread.currentThread().isInterrupted()) {
+            List<Object> ids = new ArrayList<>(chunkSize);
+            for (Document doc : collection.find(expired).projection(idOnly).limit(chunkSize)) {
+                ids.add(doc.get(Key.ID.getName()));
+            }
+            if (ids.isEmpty()) {
+                break;
+            }
+            Document query = new Document(Key.ID.getName(), new Document("$in", ids));
+            deleted += collection.deleteMany(query).getDeletedCount();
+            if (ids.size() < chunkSize) {
+                break;
+            }
+        }
+        return deleted;
+    }
+
+    private static class Target {
+
+        private final MongoCollection<Document> collection;
+        private final DataRetention retention;
+
+        Target(MongoCollection<Document> collection, DataRetention retention) {
+            this.collection = collection;
+            this.retention = retention;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.storage.mongodb.internal;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.redhat.thermostat.common.utils.LoggingUtils;
+import com.redhat.thermostat.shared.config.InvalidConfigurationException;
+import com.redhat.thermostat.storage.core.Category;
+import com.redhat.thermostat.storage.core.DataRetention;
+import com.redhat.thermostat.storage.core.Key;
+
+/**
+ * Retrieves the deployment's data retention settings, which override the
+ * {@link DataRetention} categories and their rollup tiers declare.
+ */
+class RetentionSettingsRetriever {
+
+    private static final Logger logger = LoggingUtils.getLogger(RetentionSettingsRetriever.class);
+
+    /*
+     * Boolean. Whether this process maintains stored data, i.e. deletes data
+     * past its retention and rolls up data into tiers. Enable it in exactly one of the processes connected
+     * to the database, usually the web endpoint. Disabled by default, in
+     * which case stored data is left alone.
+     */
+    static final String MAINTENANCE = "com.redhat.thermostat.storage.maintenance";
+
+    /*
+     * Prefix of per category overrides, followed by the category name. Values
+     * are a duration such as "36h" or "30d" (units: ms, s, m, h, d; plain
+     * numbers are milliseconds), or "0" to keep data of the category forever.
+     * For example:
+     * -Dcom.redhat.thermostat.storage.retention.category.vm-memory-stats=30d
+     */
+    static final String CATEGORY_PREFIX = "com.redhat.thermostat.storage.retention.category.";
+
+    /*
+     * Long. Milliseconds between two runs deleting expired data.
+     */
+    static final String INTERVAL = "com.redhat.thermostat.storage.retention.interval";
+
+    /*
+     * Integer. The number of records deleted at a time, so that no single
+     * delete holds on to the database for long.
+     */
+    static final String CHUNK_SIZE = "com.redhat.thermostat.storage.retention.chunkSize";
+
+    /*
+     * Long. Milliseconds between two runs rolling up new data into the tiers
+     * of categories with a DataRollup. Tiers are companion categories, so
+     * their retention is overridden by the category prefix above, e.g.
+     * -Dcom.redhat.thermostat.storage.retention.category.vm-memory-stats-rollup-1h=5000d
+     */
+    static final String ROLLUP_INTERVAL = "com.redhat.thermostat.storage.rollup.interval";
+
+    /*
+     * Long. Milliseconds samples may arrive after their time stamp, e.g.
+     * because writers batch them. Intervals which ended within this time are
+     * rolled up again on every run, so that late samples make it into the
+     * tiers.
+     */
+    static final String ROLLUP_SETTLE_TIME = "com.redhat.thermostat.storage.rollup.settleTime";
+
+    static final long DEFAULT_INTERVAL = TimeUnit.MINUTES.toMillis(10);
+    static final int DEFAULT_CHUNK_SIZE = 1000;
+    static final long DEFAULT_ROLLUP_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+    static final long DEFAULT_ROLLUP_SETTLE_TIME = TimeUnit.MINUTES.toMillis(10);
+
+    private static final Pattern DURATION = Pattern.compile("(\\d+)\\s*(ms|s|m|h|d)?");
+
+    /**
+     * @return the retention in effect for the given category, or null if its
+     *         data is kept forever
+     */
+    DataRetention getRetention(Category<?> category) {
+        DataRetention retention = getRetention(category.getName(), category.getRetention());
+        if (retention != null && category.getKey(retention.getTimeKey().getName()) == null) {
+            throw new InvalidConfigurationException("Value of property " + CATEGORY_PREFIX + category.getName()
+                    + ": category has no " + retention.getTimeKey().getName() + " to expire data by");
+        }
+        return retention;
+    }
+
+    /**
+     * @param declared
+     *            the retention declared for the category, or null if it
+     *            declares none. Overrides then expire data by
+     *            {@link Key#TIMESTAMP}.
+     * @return the retention in effect for the category of the given name, or
+     *         null if its data is kept forever
+     */
+    DataRetention getRetention(String categoryName, DataRetention declared) {
+        String property = CATEGORY_PREFIX + categoryName;
+        String value = System.getProperty(property);
+        if (value == null) {
+            return declared;
+        }
+        long maxAge = parseDuration(property, value.trim());
+        if (maxAge == 0) {
+            logger.log(Level.CONFIG, "Keeping data of " + categoryName + " forever");
+            return null;
+        }
+        Key<Long> timeKey = declared != null ? declared.getTimeKey() : Key.TIMESTAMP;
+        DataRetention retention = new DataRetention(timeKey, maxAge, TimeUnit.MILLISECONDS);
+        logger.log(Level.CONFIG, "Using " + retention + " for " + categoryName);
+        return retention;
+    }
+
+    boolean isMaintenanceEnabled() {
+        return Boolean.getBoolean(MAINTENANCE);
+    }
+
+    long getInterval() {
+        return getPositiveLong(INTERVAL, DEFAULT_INTERVAL);
+    }
+
+    long getRollupInterval() {
+        return getPositiveLong(ROLLUP_INTERVAL, DEFAULT_ROLLUP_INTERVAL);
+    }
+
+    long getRollupSettleTime() {
+        return getPositiveLong(ROLLUP_SETTLE_TIME, DEFAULT_ROLLUP_SETTLE_TIME);
+    }
+
+    private static long getPositiveLong(String property, long defaultValue) {
+        Long candidate = Long.getLong(property);
+        if (candidate == null) {
+            return defaultValue;
+        }
+        if (candidate <= 0) {
+            throw new InvalidConfigurationException("Value of property " +
+                    property + ": " + candidate + " <= 0");
+        }
+        return candidate;
+    }
+
+    int getChunkSize() {
+        Integer candidate = Integer.getInteger(CHUNK_SIZE);
+        if (candidate == null) {
+            return DEFAULT_CHUNK_SIZE;
+        }
+        if (candidate <= 0) {
+            throw new InvalidConfigurationException("Value of property " +
+                    CHUNK_SIZE + ": " + candidate + " <= 0");
+        }
+        return candidate;
+    }
+
+    private static long parseDuration(String property, String value) {
+        Matcher matcher = DURATION.matcher(value);
+        if (!matcher.matches()) {
+            throw new InvalidConfigurationException("Value of property " +
+                    property + " is not a duration: '" + value + "'");
+        }
+        long amount;
+        try {
+            amount = Long.parseLong(matcher.group(1));
+        } catch (NumberFormatException e) {
+            throw new InvalidConfigurationException("Value of property " +
+                    property + " is out of range: '" + value + "'");
+        }
+        String unit = matcher.group(2);
+        if (unit == null || unit.equals("ms")) {
+            return amount;
+        }
+        switch (unit) {
+        case "s":
+            return TimeUnit.SECONDS.toMillis(amount);
+        case "m":
+            return TimeUnit.MINUTES.toMillis(amount);
+        case "h":
+            return TimeUnit.HOURS.toMillis(amount);
+        case "d":
+            return TimeUnit.DAYS.toMillis(amount);
+        default:
+            throw new AssertionError("Unhandled unit: " + unit);
+        }
+    }
+}
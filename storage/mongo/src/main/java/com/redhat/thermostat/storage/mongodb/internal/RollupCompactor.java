@@ -0,0 +1,278 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.storage.mongodb.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.bson.Document;
+
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+import com.redhat.thermostat.common.Clock;
+import com.redhat.thermostat.common.SystemClock;
+import com.redhat.thermostat.common.utils.LoggingUtils;
+import com.redhat.thermostat.storage.core.DataRollup;
+import com.redhat.thermostat.storage.core.Key;
+
+/**
+ * Periodically rolls up new data of categories with a {@link DataRollup}
+ * into the collections of their tiers.
+ * <p>
+ * Intervals are rolled up once they have ended. Writers may hold samples
+ * back for a while, e.g. to batch them, so intervals which ended within the
+ * settle time are rolled up again on every run, picking up samples which
+ * arrived late. The first tier is computed from the raw data, every further
+ * tier from the tier before it. Records are keyed by series and interval,
+ * so rolling up an interval again replaces its record.
+ */
+class RollupCompactor {
+
+    private static final Logger logger = LoggingUtils.getLogger(RollupCompactor.class);
+
+    // The number of intervals per series aggregated at a time
+    static final int INTERVALS_PER_CHUNK = 120;
+
+    private static final String INTERVAL = "interval";
+    private static final String RECORD = "record";
+    private static final long UNKNOWN = Long.MIN_VALUE;
+
+    private final ScheduledExecutorService executor;
+    private final Clock clock;
+    private final long interval;
+    private final long settleTime;
+    // Access/modification of these fields should be synchronized on targets
+    private final Map<String, Target> targets = new LinkedHashMap<>();
+    private boolean scheduled = false;
+
+    RollupCompactor(RetentionSettingsRetriever settings) {
+        this(Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "thermostat-storage-rollup");
+                thread.setDaemon(true);
+                return thread;
+            }
+        }), new SystemClock(), settings.getRollupInterval(), settings.getRollupSettleTime());
+    }
+
+    // For testing only
+    RollupCompactor(ScheduledExecutorService executor, Clock clock, long interval, long settleTime) {
+        this.executor = executor;
+        this.clock = clock;
+        this.interval = interval;
+        this.settleTime = settleTime;
+    }
+
+    /**
+     * Starts rolling up data of the given collection. Replaces any rollup
+     * previously registered for the same collection.
+     *
+     * @param tierCollections
+     *            the collections of the tiers of the rollup, in the same
+     *            order
+     */
+    void register(String name, MongoCollection<Document> collection, DataRollup rollup,
+            List<MongoCollection<Document>> tierCollections) {
+        synchronized (targets) {
+            targets.put(name, new Target(collection, rollup, tierCollections));
+            if (!scheduled) {
+                executor.scheduleWithFixedDelay(new Runnable() {
+                    @Override
+                    public void run() {
+                        compactAll();
+                    }
+                }, interval, interval, TimeUnit.MILLISECONDS);
+                scheduled = true;
+            }
+        }
+    }
+
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    void compactAll() {
+        List<Map.Entry<String, Target>> toCompact;
+        synchronized (targets) {
+            toCompact = new ArrayList<>(targets.entrySet());
+        }
+        for (Map.Entry<String, Target> entry : toCompact) {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            try {
+                long written = compact(entry.getValue());
+                if (written > 0) {
+                    logger.log(Level.FINE, "Rolled up " + written + " records of " + entry.getKey());
+                }
+            } catch (MongoException e) {
+                // Try again next time around
+                logger.log(Level.WARNING, "Failed to roll up records of " + entry.getKey(), e);
+            }
+        }
+    }
+
+    /**
+     * Rolls up all ended intervals not rolled up yet, and those which may
+     * have received late samples since the last run, tier by tier.
+     *
+     * @return the number of records written
+     */
+    long compact(Target target) {
+        List<DataRollup.Tier> tiers = target.rollup.getTiers();
+        MongoCollection<Document> source = target.collection;
+        long now = clock.getRealTimeMillis();
+        // Samples written since the last run are no older than this. Tier
+        // records keep the time stamp of their sample, so the same holds for
+        // records of coarser tiers' sources.
+        long unsettled = (target.lastRun == UNKNOWN ? now : target.lastRun) - settleTime;
+        long ended = now;
+        long written = 0;
+        for (int i = 0; i < tiers.size(); i++) {
+            long width = tiers.get(i).getWidthMillis();
+            MongoCollection<Document> destination = target.tierCollections.get(i);
+            // Coarser tiers only read complete intervals of the tier before
+            long end = floor(ended, width);
+            long start = target.nextStart[i];
+            if (start == UNKNOWN) {
+                start = findStart(source, destination, width);
+            }
+            if (start != UNKNOWN) {
+                start = Math.min(start, floor(unsettled, width));
+            }
+            while (start != UNKNOWN && start < end && !Thread.currentThread().isInterrupted()) {
+                long chunkEnd = Math.min(end, start + width * INTERVALS_PER_CHUNK);
+                written += rollUp(source, destination, target.rollup.getSeriesKeys(), width, start, chunkEnd);
+                start = chunkEnd;
+            }
+            target.nextStart[i] = start;
+            source = destination;
+            ended = end;
+        }
+        target.lastRun = now;
+        return written;
+    }
+
+    /*
+     * Continues after the newest interval rolled up before, if any. Otherwise
+     * starts at the oldest source record, or returns UNKNOWN if there is none.
+     */
+    private long findStart(MongoCollection<Document> source, MongoCollection<Document> destination, long width) {
+        String timeStamp = Key.TIMESTAMP.getName();
+        Document newest = destination.find().sort(new Document(timeStamp, -1)).limit(1).first();
+        if (newest != null) {
+            return floor(getTimeStamp(newest), width) + width;
+        }
+        Document oldest = source.find().sort(new Document(timeStamp, 1)).limit(1).first();
+        if (oldest != null) {
+            return floor(getTimeStamp(oldest), width);
+        }
+        return UNKNOWN;
+    }
+
+    private long rollUp(MongoCollection<Document> source, MongoCollection<Document> destination,
+            List<Key<?>> seriesKeys, long width, long start, long end) {
+        String timeStamp = "$" + Key.TIMESTAMP.getName();
+        Document groupId = new Document();
+        for (Key<?> key : seriesKeys) {
+            groupId.append(key.getName(), "$" + key.getName());
+        }
+        groupId.append(INTERVAL, new Document("$subtract", Arrays.<Object>asList(timeStamp,
+                new Document("$mod", Arrays.<Object>asList(timeStamp, width)))));
+        List<Document> pipeline = Arrays.asList(
+                new Document("$match", new Document(Key.TIMESTAMP.getName(),
+                        new Document("$gte", start).append("$lt", end))),
+                new Document("$sort", new Document(Key.TIMESTAMP.getName(), 1)),
+                new Document("$group", new Document(Key.ID.getName(), groupId)
+                        .append(RECORD, new Document("$last", "$$ROOT"))));
+        List<WriteModel<Document>> writes = new ArrayList<>();
+        UpdateOptions upsert = new UpdateOptions().upsert(true);
+        for (Document result : source.aggregate(pipeline).allowDiskUse(true)) {
+            Object id = result.get(Key.ID.getName());
+            Document record = (Document) result.get(RECORD);
+            record.put(Key.ID.getName(), id);
+            writes.add(new ReplaceOneModel<>(new Document(Key.ID.getName(), id), record, upsert));
+        }
+        if (writes.isEmpty()) {
+            return 0;
+        }
+        destination.bulkWrite(writes, new BulkWriteOptions().ordered(false));
+        return writes.size();
+    }
+
+    private static long getTimeStamp(Document document) {
+        return ((Number) document.get(Key.TIMESTAMP.getName())).longValue();
+    }
+
+    private static long floor(long time, long width) {
+        return time - time % width;
+    }
+
+    static class Target {
+
+        private final MongoCollection<Document> collection;
+        private final DataRollup rollup;
+        private final List<MongoCollection<Document>> tierCollections;
+        // Start of the next interval to roll up, per tier
+        private final long[] nextStart;
+        // When the last complete run started
+        private long lastRun = UNKNOWN;
+
+        Target(MongoCollection<Document> collection, DataRollup rollup,
+                List<MongoCollection<Document>> tierCollections) {
+            this.collection = collection;
+            this.rollup = rollup;
+            this.tierCollections = tierCollections;
+            this.nextStart = new long[tierCollections.size()];
+            Arrays.fill(nextStart, UNKNOWN);
+        }
+    }
+}
@@ -49,10 +49,15 @@ import static org.mockito.Matchers.same;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.concurrent.CountDownLatch;
@@ -71,21 +76,29 @@ import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
 import com.mongodb.MongoClient;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.AggregateIterable;
 import com.mongodb.client.DistinctIterable;
 import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoDatabase;
 import com.mongodb.client.MongoIterable;
 import com.mongodb.client.gridfs.GridFSBucket;
+import com.mongodb.client.model.BulkWriteOptions;
 import com.mongodb.client.model.CreateCollectionOptions;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.ReplaceOneModel;
 import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
 import com.mongodb.client.result.DeleteResult;
 import com.mongodb.client.result.UpdateResult;
 import com.redhat.thermostat.shared.config.SSLConfiguration;
 import com.redhat.thermostat.storage.core.Add;
+import com.redhat.thermostat.storage.core.AbstractQuery.Sort;
 import com.redhat.thermostat.storage.core.AggregateQuery;
 import com.redhat.thermostat.storage.core.AggregateQuery.AggregateFunction;
 import com.redhat.thermostat.storage.core.BackingStorage;
+import com.redhat.thermostat.storage.core.BulkWrite;
 import com.redhat.thermostat.storage.core.Category;
 import com.redhat.thermostat.storage.core.CategoryAdapter;
 import com.redhat.thermostat.storage.core.Connection.ConnectionListener;
@@ -93,7 +106,9 @@ import com.redhat.thermostat.storage.core.Connection.ConnectionStatus;
 import com.redhat.thermostat.storage.core.Cursor;
 import com.redhat.thermostat.storage.core.Entity;
 import com.redhat.thermostat.storage.core.Key;
+import com.redhat.thermostat.storage.core.ParsedStatement;
 import com.redhat.thermostat.storage.core.Persist;
+import com.redhat.thermostat.storage.core.PreparedParameters;
 import com.redhat.thermostat.storage.core.Query;
 import com.redhat.thermostat.storage.core.Remove;
 import com.redhat.thermostat.storage.core.Replace;
@@ -101,9 +116,12 @@ import com.redhat.thermostat.storage.core.SaveFileListener;
 import com.redhat.thermostat.storage.core.SaveFileListener.EventType;
 import com.redhat.thermostat.storage.core.SchemaInfo;
 import com.redhat.thermostat.storage.core.Statement;
+import com.redhat.thermostat.storage.core.StatementDescriptor;
 import com.redhat.thermostat.storage.core.StorageCredentials;
 import com.redhat.thermostat.storage.core.Update;
+import com.redhat.thermostat.storage.core.VmTimeIntervalPojoListGetter;
 import com.redhat.thermostat.storage.dao.HostInfoDAO;
+import com.redhat.thermostat.storage.model.AggregateBucket;
 import com.redhat.thermostat.storage.model.AggregateCount;
 import com.redhat.thermostat.storage.model.BasePojo;
 import com.redhat.thermostat.storage.model.DistinctResult;
@@ -657,6 +675,11 @@ public class MongoStorageTest {
         Statement<DistinctResult> stmt = aggQuery.getRawDuplicate();
         AggregateQuery<DistinctResult> rawCopy = (AggregateQuery<DistinctResult>) stmt;
         assertEquals("Expected key to be copied for dupe", key1, rawCopy.getAggregateKey());
+        
+        // The where clause is patched onto duplicates, so they must not share it
+        rawCopy.where(factory.equalTo(key2, "bar"));
+        assertNull(aggQuery.getWhereExpression());
+        assertNull(((AggregateQuery<DistinctResult>) aggQuery.getRawDuplicate()).getWhereExpression());
     }
     
     /*
@@ -683,8 +706,176 @@ public class MongoStorageTest {
         assertTrue(stmt instanceof AggregateQuery);
         rawCopy = (AggregateQuery<AggregateCount>) stmt;
         assertEquals("Expected key to be copied for dupe", key1, rawCopy.getAggregateKey());
+        
+        // The where clause is patched onto duplicates, so they must not share it
+        rawCopy.where(factory.equalTo(key2, "bar"));
+        assertNull(aggQuery.getWhereExpression());
+        assertNull(((AggregateQuery<AggregateCount>) aggQuery.getRawDuplicate()).getWhereExpression());
     }
     
+    @SuppressWarnings("unchecked")
+    @Test
+    public void verifyAggregateMaxPerBucket() throws Exception {
+        Document bucket1 = new Document("_id", 1000L)
+                .append(Key.TIMESTAMP.getName(), 1100L)
+                .append("count", 3)
+                .append("value", 42L);
+        Document bucket2 = new Document("_id", 2000L)
+                .append(Key.TIMESTAMP.getName(), 2000L)
+                .append("count", 1)
+                .append("value", 7.5d);
+        AggregateIterable<Document> iterable = mockAggregateIterable(bucket1, bucket2);
+        ArgumentCaptor<List> pipelineCaptor = ArgumentCaptor.forClass(List.class);
+        when(testCollection.aggregate(pipelineCaptor.capture())).thenReturn(iterable);
+
+        MongoStorage storage = makeStorage();
+        CategoryAdapter<TestClass, AggregateBucket> adapter = new CategoryAdapter<>(testCategory);
+        Category<AggregateBucket> adaptedCategory = adapter.getAdapted(AggregateBucket.class);
+        AggregateQuery<AggregateBucket> aggQuery = storage.createAggregateQuery(AggregateFunction.MAX, adaptedCategory);
+        aggQuery.setAggregateKey(key1);
+        aggQuery.setBucketWidth(1000L);
+        aggQuery.sort(Key.TIMESTAMP, Query.SortDirection.DESCENDING);
+        aggQuery.limit(5);
+        Cursor<AggregateBucket> cursor = aggQuery.execute();
+
+        assertTrue(cursor.hasNext());
+        AggregateBucket r = cursor.next();
+        assertEquals(1100L, r.getTimeStamp());
+        assertEquals(3L, r.getCount());
+        assertEquals(42d, r.getValue(), 0);
+        assertTrue(cursor.hasNext());
+        r = cursor.next();
+        assertEquals(2000L, r.getTimeStamp());
+        assertEquals(7.5d, r.getValue(), 0);
+        assertFalse(cursor.hasNext());
+
+        List<Document> pipeline = pipelineCaptor.getValue();
+        assertEquals(4, pipeline.size());
+        assertEquals(new Document("$sort", new Document(Key.TIMESTAMP.getName(), 1)), pipeline.get(0));
+        Document group = (Document) pipeline.get(1).get("$group");
+        assertEquals(new Document("$max", "$" + key1.getName()), group.get("value"));
+        assertEquals(new Document("$sum", 1), group.get("count"));
+        assertNotNull(group.get("_id"));
+        assertEquals(new Document("$sort", new Document("_id", -1)), pipeline.get(2));
+        assertEquals(new Document("$limit", 5), pipeline.get(3));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void verifyAggregateLastPerBucket() throws Exception {
+        Document record = new Document("key1", "newest").append("key2", "bar");
+        AggregateIterable<Document> iterable = mockAggregateIterable(new Document("_id", 0L).append("record", record));
+        ArgumentCaptor<List> pipelineCaptor = ArgumentCaptor.forClass(List.class);
+        when(testCollection.aggregate(pipelineCaptor.capture())).thenReturn(iterable);
+
+        MongoStorage storage = makeStorage();
+        AggregateQuery<TestClass> aggQuery = storage.createAggregateQuery(AggregateFunction.LAST, testCategory);
+        aggQuery.setBucketWidth(60000L);
+        Expression expr = factory.equalTo(key2, "bar");
+        aggQuery.where(expr);
+        Cursor<TestClass> cursor = aggQuery.execute();
+
+        assertTrue(cursor.hasNext());
+        TestClass r = cursor.next();
+        assertEquals("newest", r.getKey1());
+        assertEquals("bar", r.getKey2());
+        assertFalse(cursor.hasNext());
+
+        List<Document> pipeline = pipelineCaptor.getValue();
+        assertEquals(new Document("$match", new Document(key2.getName(), "bar")), pipeline.get(0));
+        Document group = (Document) pipeline.get(2).get("$group");
+        assertEquals(new Document("$last", "$$ROOT"), group.get("record"));
+        assertEquals(new Document("$sort", new Document("_id", 1)), pipeline.get(3));
+    }
+
+    @Test
+    public void canDuplicateAggregateBucketWithKey() throws Exception {
+        MongoStorage storage = makeStorage();
+        CategoryAdapter<TestClass, AggregateBucket> adapter = new CategoryAdapter<>(testCategory);
+        Category<AggregateBucket> adaptedCategory = adapter.getAdapted(AggregateBucket.class);
+        AggregateQuery<AggregateBucket> aggQuery = storage.createAggregateQuery(AggregateFunction.AVG, adaptedCategory);
+        aggQuery.setAggregateKey(key1);
+
+        Statement<AggregateBucket> stmt = aggQuery.getRawDuplicate();
+        AggregateQuery<AggregateBucket> rawCopy = (AggregateQuery<AggregateBucket>) stmt;
+        assertEquals(AggregateFunction.AVG, rawCopy.getAggregateFunction());
+        assertEquals("Expected key to be copied for dupe", key1, rawCopy.getAggregateKey());
+    }
+
+    /*
+     * Parsed statements are cached and patched for every execution, possibly
+     * concurrently. Each patched bucket query must get a query of its own to
+     * put the where clause and sort on.
+     */
+    @Test
+    public void patchedBucketQueriesDoNotShareTheirQuery() throws Exception {
+        MongoStorage storage = makeStorage();
+        String desc = String.format(VmTimeIntervalPojoListGetter.VM_INTERVAL_BUCKETED_QUERY_FORMAT,
+                testCategory.getName());
+        final ParsedStatement<TestClass> parsed = storage.getStatementCache().get(
+                new StatementDescriptor<>(testCategory, desc));
+        final List<Sort> expectedSorts = Arrays.asList(new Sort(Key.TIMESTAMP, Query.SortDirection.DESCENDING));
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final String agentId = "agent-" + t;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < 100; i++) {
+                            PreparedParameters params = new PreparedParameters(5);
+                            params.setString(0, agentId);
+                            params.setString(1, "vm");
+                            params.setLong(2, 0L);
+                            params.setLong(3, 1000L);
+                            params.setLong(4, 100L);
+                            AggregateQuery<TestClass> query = (AggregateQuery<TestClass>) parsed.patchStatement(params.getParams());
+                            MongoQuery<TestClass> inner = getQueryToAggregate(query);
+                            Thread.yield();
+                            assertEquals(expectedSorts, inner.getSorts());
+                            assertTrue(inner.getGeneratedQuery().toJson().contains("\"" + agentId + "\""));
+                        }
+                    } catch (Throwable e) {
+                        failures.add(e);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue("Failures: " + failures, failures.isEmpty());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Pojo> MongoQuery<T> getQueryToAggregate(AggregateQuery<T> query) throws Exception {
+        Field field = AggregateQuery.class.getDeclaredField("queryToAggregate");
+        field.setAccessible(true);
+        return (MongoQuery<T>) field.get(query);
+    }
+
+    @SuppressWarnings("unchecked")
+    private AggregateIterable<Document> mockAggregateIterable(Document first, Document... rest) {
+        AggregateIterable<Document> iterable = mock(AggregateIterable.class);
+        com.mongodb.client.MongoCursor<Document> mockCursor = mock(com.mongodb.client.MongoCursor.class);
+        when(iterable.allowDiskUse(true)).thenReturn(iterable);
+        when(iterable.iterator()).thenReturn(mockCursor);
+        Boolean[] more = new Boolean[rest.length + 1];
+        for (int i = 0; i < rest.length; i++) {
+            more[i] = true;
+        }
+        more[rest.length] = false;
+        when(mockCursor.hasNext()).thenReturn(true, more);
+        when(mockCursor.next()).thenReturn(first, rest);
+        return iterable;
+    }
+
     private static void assertArrayEquals(String[] expected, String[] actual) {
         assertEquals(expected.length, actual.length);
         for (int i = 0; i < expected.length; i++) {
@@ -834,6 +1025,75 @@ public class MongoStorageTest {
         assertEquals("123", value.get("agentId"));
     }
 
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    @Test
+    public void verifyBulkWrite() {
+        MongoStorage storage = makeStorage();
+        BulkWriteResult result = mock(BulkWriteResult.class);
+        when(result.wasAcknowledged()).thenReturn(true);
+        when(result.getInsertedCount()).thenReturn(2);
+        when(result.isModifiedCountAvailable()).thenReturn(true);
+        when(result.getModifiedCount()).thenReturn(1);
+        when(testCollection.bulkWrite(any(List.class), any(BulkWriteOptions.class))).thenReturn(result);
+        
+        BulkWrite<TestClass> bulk = storage.createBulkWrite(testCategory);
+        Add<TestClass> add1 = storage.createAdd(testCategory);
+        add1.set(Key.AGENT_ID.getName(), "123");
+        add1.set("key1", "foo");
+        Add<TestClass> add2 = storage.createAdd(testCategory);
+        add2.set(Key.AGENT_ID.getName(), "123");
+        add2.set("key1", "bar");
+        Replace<TestClass> replace = storage.createReplace(testCategory);
+        replace.where(factory.equalTo(key2, "baz"));
+        replace.set(Key.AGENT_ID.getName(), "123");
+        replace.set("key2", "baz");
+        bulk.append(add1);
+        bulk.append(add2);
+        bulk.append(replace);
+        assertEquals(3, bulk.size());
+        
+        int count = bulk.apply();
+        
+        assertEquals(3, count);
+        ArgumentCaptor<List> writesCaptor = ArgumentCaptor.forClass(List.class);
+        ArgumentCaptor<BulkWriteOptions> optionsCaptor = ArgumentCaptor.forClass(BulkWriteOptions.class);
+        verify(testCollection).bulkWrite(writesCaptor.capture(), optionsCaptor.capture());
+        verify(testCollection, times(0)).insertOne(any(Document.class));
+        assertFalse("expected unordered bulk write", optionsCaptor.getValue().isOrdered());
+        List<WriteModel<Document>> writes = writesCaptor.getValue();
+        assertEquals(3, writes.size());
+        assertEquals("foo", ((InsertOneModel<Document>)writes.get(0)).getDocument().get("key1"));
+        assertEquals("bar", ((InsertOneModel<Document>)writes.get(1)).getDocument().get("key1"));
+        ReplaceOneModel<Document> replaceModel = (ReplaceOneModel<Document>)writes.get(2);
+        assertTrue(replaceModel.getOptions().isUpsert());
+        assertEquals("baz", replaceModel.getReplacement().get("key2"));
+    }
+    
+    @Test
+    public void verifyEmptyBulkWriteIsNoOp() {
+        MongoStorage storage = makeStorage();
+        BulkWrite<TestClass> bulk = storage.createBulkWrite(testCategory);
+        assertEquals(0, bulk.apply());
+        verifyZeroInteractions(testCollection);
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void bulkWriteRejectsReplaceWithoutWhere() {
+        MongoStorage storage = makeStorage();
+        BulkWrite<TestClass> bulk = storage.createBulkWrite(testCategory);
+        Replace<TestClass> replace = storage.createReplace(testCategory);
+        replace.set(Key.AGENT_ID.getName(), "123");
+        bulk.append(replace);
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void bulkWriteRejectsOtherCategories() {
+        MongoStorage storage = makeStorage();
+        BulkWrite<TestClass> bulk = storage.createBulkWrite(testCategory);
+        Add<TestClass> add = storage.createAdd(emptyTestCategory);
+        bulk.append(add);
+    }
+    
     @Test
     public void verifyRemove() {
         MongoStorage storage = makeStorage();
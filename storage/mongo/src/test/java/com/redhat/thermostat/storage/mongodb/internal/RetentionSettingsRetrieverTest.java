@@ -0,0 +1,162 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+
+package com.redhat.thermostat.storage.mongodb.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.redhat.thermostat.shared.config.InvalidConfigurationException;
+import com.redhat.thermostat.storage.core.Category;
+import com.redhat.thermostat.storage.core.DataRetention;
+import com.redhat.thermostat.storage.core.Key;
+import com.redhat.thermostat.storage.model.Pojo;
+
+public class RetentionSettingsRetrieverTest {
+
+    private static final Category<TestPojo> EXPIRING = new Category<>("retention-test-expiring",
+            TestPojo.class, Arrays.<Key<?>>asList(Key.AGENT_ID, Key.TIMESTAMP),
+            Collections.<Key<?>>emptyList(), DataRetention.maxAge(7, TimeUnit.DAYS));
+    private static final Category<TestPojo> KEPT = new Category<>("retention-test-kept",
+            TestPojo.class, Key.AGENT_ID, Key.TIMESTAMP);
+    private static final Category<TestPojo> UNTIMED = new Category<>("retention-test-untimed",
+            TestPojo.class, Key.AGENT_ID);
+
+    private final RetentionSettingsRetriever retriever = new RetentionSettingsRetriever();
+
+    @After
+    public void tearDown() {
+        System.clearProperty(RetentionSettingsRetriever.CATEGORY_PREFIX + EXPIRING.getName());
+        System.clearProperty(RetentionSettingsRetriever.CATEGORY_PREFIX + KEPT.getName());
+        System.clearProperty(RetentionSettingsRetriever.CATEGORY_PREFIX + UNTIMED.getName());
+        System.clearProperty(RetentionSettingsRetriever.MAINTENANCE);
+        System.clearProperty(RetentionSettingsRetriever.INTERVAL);
+        System.clearProperty(RetentionSettingsRetriever.CHUNK_SIZE);
+        System.clearProperty(RetentionSettingsRetriever.ROLLUP_INTERVAL);
+        System.clearProperty(RetentionSettingsRetriever.ROLLUP_SETTLE_TIME);
+        System.clearProperty(RetentionSettingsRetriever.CATEGORY_PREFIX + "retention-test-tier");
+    }
+
+    @Test
+    public void testDefaults() {
+        assertEquals(EXPIRING.getRetention(), retriever.getRetention(EXPIRING));
+        assertNull(retriever.getRetention(KEPT));
+        assertFalse(retriever.isMaintenanceEnabled());
+        assertEquals(RetentionSettingsRetriever.DEFAULT_INTERVAL, retriever.getInterval());
+        assertEquals(RetentionSettingsRetriever.DEFAULT_CHUNK_SIZE, retriever.getChunkSize());
+        assertEquals(RetentionSettingsRetriever.DEFAULT_ROLLUP_INTERVAL, retriever.getRollupInterval());
+        assertEquals(RetentionSettingsRetriever.DEFAULT_ROLLUP_SETTLE_TIME, retriever.getRollupSettleTime());
+    }
+
+    @Test
+    public void testOverrideRetentionByName() {
+        DataRetention declared = DataRetention.maxAge(30, TimeUnit.DAYS);
+        assertEquals(declared, retriever.getRetention("retention-test-tier", declared));
+        System.setProperty(RetentionSettingsRetriever.CATEGORY_PREFIX + "retention-test-tier", "90d");
+        assertEquals(DataRetention.maxAge(90, TimeUnit.DAYS), retriever.getRetention("retention-test-tier", declared));
+    }
+
+    @Test
+    public void testOverrideRetention() {
+        System.setProperty(RetentionSettingsRetriever.CATEGORY_PREFIX + EXPIRING.getName(), "36h");
+        System.setProperty(RetentionSettingsRetriever.CATEGORY_PREFIX + KEPT.getName(), "1500");
+        assertEquals(new DataRetention(Key.TIMESTAMP, 36, TimeUnit.HOURS), retriever.getRetention(EXPIRING));
+        assertEquals(new DataRetention(Key.TIMESTAMP, 1500, TimeUnit.MILLISECONDS), retriever.getRetention(KEPT));
+    }
+
+    @Test
+    public void testZeroKeepsForever() {
+        System.setProperty(RetentionSettingsRetriever.CATEGORY_PREFIX + EXPIRING.getName(), "0");
+        assertNull(retriever.getRetention(EXPIRING));
+    }
+
+    @Test(expected = InvalidConfigurationException.class)
+    public void testInvalidDuration() {
+        System.setProperty(RetentionSettingsRetriever.CATEGORY_PREFIX + EXPIRING.getName(), "7 weeks");
+        retriever.getRetention(EXPIRING);
+    }
+
+    @Test(expected = InvalidConfigurationException.class)
+    public void testCategoryWithoutTimeStamp() {
+        System.setProperty(RetentionSettingsRetriever.CATEGORY_PREFIX + UNTIMED.getName(), "1d");
+        retriever.getRetention(UNTIMED);
+    }
+
+    @Test
+    public void testMaintenanceEnabled() {
+        System.setProperty(RetentionSettingsRetriever.MAINTENANCE, "true");
+        assertTrue(retriever.isMaintenanceEnabled());
+    }
+
+    @Test
+    public void testIntervalAndChunkSize() {
+        System.setProperty(RetentionSettingsRetriever.INTERVAL, "60000");
+        System.setProperty(RetentionSettingsRetriever.CHUNK_SIZE, "50");
+        assertEquals(60000, retriever.getInterval());
+        assertEquals(50, retriever.getChunkSize());
+    }
+
+    @Test(expected = InvalidConfigurationException.class)
+    public void testInvalidRollupInterval() {
+        System.setProperty(RetentionSettingsRetriever.ROLLUP_INTERVAL, "-1");
+        retriever.getRollupInterval();
+    }
+
+    @Test(expected = InvalidConfigurationException.class)
+    public void testInvalidRollupSettleTime() {
+        System.setProperty(RetentionSettingsRetriever.ROLLUP_SETTLE_TIME, "0");
+        retriever.getRollupSettleTime();
+    }
+
+    @Test(expected = InvalidConfigurationException.class)
+    public void testInvalidChunkSize() {
+        System.setProperty(RetentionSettingsRetriever.CHUNK_SIZE, "0");
+        retriever.getChunkSize();
+    }
+
+    public static class TestPojo implements Pojo {
+    }
+}
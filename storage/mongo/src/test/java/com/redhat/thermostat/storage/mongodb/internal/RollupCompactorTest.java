@@ -0,0 +1,187 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.storage.mongodb.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.mongodb.client.AggregateIterable;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.WriteModel;
+import com.redhat.thermostat.common.Clock;
+import com.redhat.thermostat.storage.core.DataRollup;
+import com.redhat.thermostat.storage.core.Key;
+
+public class RollupCompactorTest {
+
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+    private static final long SETTLE_TIME = 5 * MINUTE;
+    private static final DataRollup ROLLUP = new DataRollup(Arrays.<Key<?>>asList(Key.AGENT_ID),
+            Arrays.asList(new DataRollup.Tier("1m", 1, TimeUnit.MINUTES, 1, TimeUnit.DAYS)));
+
+    private MongoCollection<Document> source;
+    private MongoCollection<Document> destination;
+    private Clock clock;
+    private RollupCompactor compactor;
+    private RollupCompactor.Target target;
+
+    @SuppressWarnings("unchecked")
+    @Before
+    public void setUp() {
+        source = mock(MongoCollection.class);
+        destination = mock(MongoCollection.class);
+        clock = mock(Clock.class);
+        // one hour worth of ended intervals, the current one still open
+        when(clock.getRealTimeMillis()).thenReturn(60 * MINUTE + 30000);
+        compactor = new RollupCompactor(mock(ScheduledExecutorService.class), clock, MINUTE, SETTLE_TIME);
+        target = new RollupCompactor.Target(source, ROLLUP, Arrays.asList(destination));
+    }
+
+    @Test
+    public void testNothingToRollUp() {
+        FindIterable<Document> empty = mockFind(null);
+        when(destination.find()).thenReturn(empty);
+        when(source.find()).thenReturn(empty);
+
+        assertEquals(0, compactor.compact(target));
+        verify(source, never()).aggregate(anyListOf(Bson.class));
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    @Test
+    public void testRollsUpEndedIntervalsAndThoseWithinSettleTime() {
+        FindIterable<Document> newest = mockFind(new Document(Key.TIMESTAMP.getName(), 58 * MINUTE + 10000));
+        when(destination.find()).thenReturn(newest);
+        Document id = new Document(Key.AGENT_ID.getName(), "agent").append("interval", 59 * MINUTE);
+        Document record = new Document(Key.AGENT_ID.getName(), "agent")
+                .append(Key.TIMESTAMP.getName(), 59 * MINUTE + 50000);
+        AggregateIterable<Document> results = mockAggregateIterable(
+                new Document(Key.ID.getName(), id).append("record", record));
+        when(source.aggregate(anyListOf(Bson.class))).thenReturn(results);
+
+        assertEquals(1, compactor.compact(target));
+
+        ArgumentCaptor<List> pipeline = ArgumentCaptor.forClass(List.class);
+        verify(source).aggregate(pipeline.capture());
+        Document match = (Document) ((Document) pipeline.getValue().get(0)).get("$match");
+        Document range = (Document) match.get(Key.TIMESTAMP.getName());
+        // 59m follows the newest rolled up interval, the ones before may
+        // still receive late samples
+        assertEquals(55 * MINUTE, range.get("$gte"));
+        assertEquals(60 * MINUTE, range.get("$lt"));
+
+        ArgumentCaptor<List> writes = ArgumentCaptor.forClass(List.class);
+        verify(destination).bulkWrite(writes.capture(), any(BulkWriteOptions.class));
+        List<WriteModel<Document>> models = writes.getValue();
+        assertEquals(1, models.size());
+        Document written = ((ReplaceOneModel<Document>) models.get(0)).getReplacement();
+        assertEquals(id, written.get(Key.ID.getName()));
+        assertEquals(59 * MINUTE + 50000, written.get(Key.TIMESTAMP.getName()));
+
+        // The next interval has not ended yet, intervals within the settle
+        // time are rolled up again
+        assertEquals(0, compactor.compact(target));
+        verify(source, times(2)).aggregate(anyListOf(Bson.class));
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    @Test
+    public void testRollsUpIntervalsAgainWhichMayHaveReceivedLateSamples() {
+        when(clock.getRealTimeMillis()).thenReturn(60 * MINUTE + 30000, 62 * MINUTE + 30000);
+        FindIterable<Document> newest = mockFind(new Document(Key.TIMESTAMP.getName(), 58 * MINUTE + 10000));
+        when(destination.find()).thenReturn(newest);
+        Document id = new Document(Key.AGENT_ID.getName(), "agent").append("interval", 59 * MINUTE);
+        Document record = new Document(Key.AGENT_ID.getName(), "agent")
+                .append(Key.TIMESTAMP.getName(), 59 * MINUTE + 50000);
+        AggregateIterable<Document> results = mockAggregateIterable(
+                new Document(Key.ID.getName(), id).append("record", record));
+        when(source.aggregate(anyListOf(Bson.class))).thenReturn(results);
+
+        compactor.compact(target);
+        compactor.compact(target);
+
+        ArgumentCaptor<List> pipeline = ArgumentCaptor.forClass(List.class);
+        verify(source, times(2)).aggregate(pipeline.capture());
+        Document match = (Document) ((Document) pipeline.getAllValues().get(1).get(0)).get("$match");
+        Document range = (Document) match.get(Key.TIMESTAMP.getName());
+        // samples written since the first run are no older than 60m30s
+        // less the settle time
+        assertEquals(55 * MINUTE, range.get("$gte"));
+        assertEquals(62 * MINUTE, range.get("$lt"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private FindIterable<Document> mockFind(Document first) {
+        FindIterable<Document> iterable = mock(FindIterable.class);
+        when(iterable.sort(any(Bson.class))).thenReturn(iterable);
+        when(iterable.limit(1)).thenReturn(iterable);
+        when(iterable.first()).thenReturn(first);
+        return iterable;
+    }
+
+    @SuppressWarnings("unchecked")
+    private AggregateIterable<Document> mockAggregateIterable(Document result) {
+        AggregateIterable<Document> iterable = mock(AggregateIterable.class);
+        MongoCursor<Document> cursor = mock(MongoCursor.class);
+        when(iterable.allowDiskUse(true)).thenReturn(iterable);
+        when(iterable.iterator()).thenReturn(cursor);
+        when(cursor.hasNext()).thenReturn(true, false);
+        when(cursor.next()).thenReturn(result);
+        return iterable;
+    }
+}
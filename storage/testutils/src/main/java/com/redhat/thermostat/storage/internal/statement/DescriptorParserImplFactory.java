@@ -40,11 +40,15 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 import com.redhat.thermostat.storage.core.Add;
 import com.redhat.thermostat.storage.core.AggregateQuery;
 import com.redhat.thermostat.storage.core.AggregateQuery.AggregateFunction;
 import com.redhat.thermostat.storage.core.BackingStorage;
 import com.redhat.thermostat.storage.core.Category;
+import com.redhat.thermostat.storage.core.Key;
 import com.redhat.thermostat.storage.core.Query;
 import com.redhat.thermostat.storage.core.Remove;
 import com.redhat.thermostat.storage.core.Replace;
@@ -55,6 +59,10 @@ import com.redhat.thermostat.storage.testutils.ParserType;
 
 class DescriptorParserImplFactory {
     
+    // aggregate function and optional key of aggregate statement types
+    private static final Pattern AGGREGATE_PATTERN = Pattern.compile(
+            "QUERY-(COUNT|DISTINCT|MIN|MAX|AVG|LAST)(?:\\(([a-zA-Z_]+)\\))?\\s");
+    
     <T extends Pojo> StatementDescriptorParser<T> getParser(ParserType type, StatementDescriptor<T> desc) {
         switch (type) {
         case BASIC:
@@ -80,10 +88,12 @@ class DescriptorParserImplFactory {
         when(storage.createQuery(any(Category.class))).thenReturn(mock(Query.class));
 
         AggregateQuery aggregateQuery = mock(AggregateQuery.class);
-        if (desc.contains("QUERY-COUNT")) {
-            when(aggregateQuery.getAggregateFunction()).thenReturn(AggregateFunction.COUNT);
-        } else {
-            when(aggregateQuery.getAggregateFunction()).thenReturn(AggregateFunction.DISTINCT);
+        Matcher aggregateMatcher = AGGREGATE_PATTERN.matcher(desc);
+        if (aggregateMatcher.lookingAt()) {
+            when(aggregateQuery.getAggregateFunction()).thenReturn(AggregateFunction.valueOf(aggregateMatcher.group(1)));
+            if (aggregateMatcher.group(2) != null) {
+                when(aggregateQuery.getAggregateKey()).thenReturn(new Key<>(aggregateMatcher.group(2)));
+            }
         }
         when(storage.createAggregateQuery(any(AggregateFunction.class), any(Category.class))).thenReturn(aggregateQuery);
         return storage;
@@ -47,7 +47,7 @@ import com.redhat.thermostat.thread.dao.internal.ThreadDaoCategories;
 /**
  * Represents a single delta variation of a Thread state.
  */
-@Category(ThreadDaoCategories.Categories.STATE)
+@Category(value = ThreadDaoCategories.Categories.STATE)
 @Entity
 public class ThreadState extends BasePojo implements TimeStampedPojo {
 
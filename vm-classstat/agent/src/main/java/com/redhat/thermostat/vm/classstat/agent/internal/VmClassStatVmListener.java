@@ -39,6 +39,7 @@ package com.redhat.thermostat.vm.classstat.agent.internal;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.redhat.thermostat.backend.SampleChangeFilter;
 import com.redhat.thermostat.backend.VmUpdate;
 import com.redhat.thermostat.backend.VmUpdateException;
 import com.redhat.thermostat.backend.VmUpdateListener;
@@ -53,10 +54,16 @@ class VmClassStatVmListener implements VmUpdateListener {
     private final VmClassStatDAO dao;
     private final String vmId;
     private final String writerId;
+    private final SampleChangeFilter<String> changeFilter;
     
     private boolean error;
 
     VmClassStatVmListener(String writerId, VmClassStatDAO dao, String vmId) {
+        this(writerId, dao, vmId, SampleChangeFilter.<String>forCategory(VmClassStatDAO.vmClassStatsCategory));
+    }
+
+    VmClassStatVmListener(String writerId, VmClassStatDAO dao, String vmId, SampleChangeFilter<String> changeFilter) {
+        this.changeFilter = changeFilter;
         this.dao = dao;
         this.vmId = vmId;
         this.writerId = writerId;
@@ -73,12 +80,19 @@ class VmClassStatVmListener implements VmUpdateListener {
             long classLoadTime = valueOrUnknown(extractor.getClassLoadTime(), "class load time", vmId);
 
             long timestamp = System.currentTimeMillis();
-            VmClassStat stat = new VmClassStat(writerId, vmId, timestamp,
-                    loadedClasses, loadedBytes,
-                    unloadedClasses, unloadedBytes,
-                    classLoadTime);
+            boolean write = changeFilter.sample(vmId, timestamp)
+                    .add(loadedClasses).add(loadedBytes)
+                    .add(unloadedClasses).add(unloadedBytes)
+                    .add(classLoadTime)
+                    .shouldWrite();
+            if (write) {
+                VmClassStat stat = new VmClassStat(writerId, vmId, timestamp,
+                        loadedClasses, loadedBytes,
+                        unloadedClasses, unloadedBytes,
+                        classLoadTime);
 
-            dao.putVmClassStat(stat);
+                dao.putVmClassStat(stat);
+            }
 
         } catch (VmUpdateException e) {
             logger.log(Level.WARNING, "Error gathering class info for VM " + vmId, e);
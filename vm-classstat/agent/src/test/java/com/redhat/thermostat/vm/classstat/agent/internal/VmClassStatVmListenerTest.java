@@ -42,14 +42,18 @@ import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
+import java.util.concurrent.TimeUnit;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 
+import com.redhat.thermostat.backend.SampleChangeFilter;
 import com.redhat.thermostat.backend.VmUpdate;
 import com.redhat.thermostat.backend.VmUpdateException;
 import com.redhat.thermostat.vm.classstat.common.VmClassStatDAO;
@@ -121,6 +125,19 @@ public class VmClassStatVmListenerTest {
         // created a new one on each call, thus violating the unique guarantee of Category.
     }
 
+    @Test
+    public void testMonitorUpdatedClassStatOnlyOnChange() throws Exception {
+        listener = new VmClassStatVmListener("foo-agent", dao, VM_ID,
+                new SampleChangeFilter<String>(TimeUnit.HOURS.toMillis(1)));
+        listener.countersUpdated(update);
+        listener.countersUpdated(update);
+        verify(dao).putVmClassStat(any(VmClassStat.class));
+
+        when(update.getPerformanceCounterLong("java.cls.loadedClasses")).thenReturn(LOADED_CLASSES_NON_SHARED + 1);
+        listener.countersUpdated(update);
+        verify(dao, times(2)).putVmClassStat(any(VmClassStat.class));
+    }
+
     @Test
     public void testMonitorUpdateFails() throws VmUpdateException {
         when(update.getPerformanceCounterLong(anyString())).thenThrow(new VmUpdateException());
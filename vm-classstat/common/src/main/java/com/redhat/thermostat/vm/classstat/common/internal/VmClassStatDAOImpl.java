@@ -47,6 +47,7 @@ import com.redhat.thermostat.storage.core.VmBoundaryPojoGetter;
 import com.redhat.thermostat.storage.core.VmLatestPojoListGetter;
 import com.redhat.thermostat.storage.core.VmRef;
 import com.redhat.thermostat.storage.core.VmTimeIntervalPojoListGetter;
+import com.redhat.thermostat.storage.core.WriteOnChange;
 import com.redhat.thermostat.storage.dao.AbstractDao;
 import com.redhat.thermostat.storage.dao.AbstractDaoStatement;
 import com.redhat.thermostat.vm.classstat.common.VmClassStatDAO;
@@ -82,7 +83,8 @@ class VmClassStatDAOImpl extends AbstractDao implements VmClassStatDAO {
         this.storage = storage;
         storage.registerCategory(vmClassStatsCategory);
         this.latestGetter = new VmLatestPojoListGetter<>(storage, vmClassStatsCategory);
-        this.intervalGetter = new VmTimeIntervalPojoListGetter<>(storage, vmClassStatsCategory);
+        this.intervalGetter = new VmTimeIntervalPojoListGetter<>(storage, vmClassStatsCategory,
+                WriteOnChange.isEnabled(vmClassStatsCategory));
         this.boundaryGetter = new VmBoundaryPojoGetter<>(storage, vmClassStatsCategory);
     }
 
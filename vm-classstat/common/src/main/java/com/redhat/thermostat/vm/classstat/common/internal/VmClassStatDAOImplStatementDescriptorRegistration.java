@@ -61,6 +61,8 @@ public class VmClassStatDAOImplStatementDescriptorRegistration implements
             VmClassStatDAO.vmClassStatsCategory.getName());
     static final String OLDEST_STAT = String.format(VmBoundaryPojoGetter.DESC_OLDEST_VM_STAT,
             VmClassStatDAO.vmClassStatsCategory.getName());
+    static final String NEWEST_STAT_UNTIL = String.format(VmBoundaryPojoGetter.DESC_NEWEST_VM_STAT_UNTIL,
+            VmClassStatDAO.vmClassStatsCategory.getName());
 
     @Override
     public Set<String> getStatementDescriptors() {
@@ -69,6 +71,7 @@ public class VmClassStatDAOImplStatementDescriptorRegistration implements
         descs.add(RANGE);
         descs.add(LATEST_STAT);
         descs.add(OLDEST_STAT);
+        descs.add(NEWEST_STAT_UNTIL);
         descs.add(VmClassStatDAOImpl.DESC_ADD_VM_CLASS_STAT);
         return descs;
     }
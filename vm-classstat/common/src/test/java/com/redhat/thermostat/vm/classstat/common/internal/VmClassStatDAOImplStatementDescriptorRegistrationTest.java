@@ -56,7 +56,7 @@ public class VmClassStatDAOImplStatementDescriptorRegistrationTest extends Servi
     public void registersAllDescriptors() {
         VmClassStatDAOImplStatementDescriptorRegistration reg = new VmClassStatDAOImplStatementDescriptorRegistration();
         Set<String> descriptors = reg.getStatementDescriptors();
-        assertEquals(5, descriptors.size());
+        assertEquals(6, descriptors.size());
         assertFalse("null descriptor not allowed", descriptors.contains(null));
     }
 
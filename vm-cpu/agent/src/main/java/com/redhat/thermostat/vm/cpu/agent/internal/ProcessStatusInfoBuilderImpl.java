@@ -38,17 +38,37 @@ package com.redhat.thermostat.vm.cpu.agent.internal;
 
 import com.redhat.thermostat.common.portability.PortableProcessImpl;
 import com.redhat.thermostat.common.portability.PortableProcessStat;
+import com.redhat.thermostat.common.portability.linux.ProcReader.PidStat;
+import com.redhat.thermostat.common.portability.linux.ProcSampler;
 
 /**
  * Extract status information about the process
  */
 public class ProcessStatusInfoBuilderImpl implements ProcessStatusInfoBuilder {
 
+    private final ProcSampler sampler;
+
     ProcessStatusInfoBuilderImpl() {
+        this(null);
+    }
+
+    /**
+     * @param sampler if not null, the samples of the current polling
+     *        interval are used for all processes it has sampled
+     */
+    ProcessStatusInfoBuilderImpl(ProcSampler sampler) {
+        this.sampler = sampler;
     }
 
     public ProcessStatusInfo build(int pid) {
 
+        if (sampler != null) {
+            PidStat stat = sampler.getStat(pid);
+            if (stat != null) {
+                return new ProcessStatusInfo(pid, stat.getUserTime(), stat.getKernelTime());
+            }
+        }
+
         final PortableProcessStat info =  PortableProcessImpl.getInstance().getProcessStat(pid);
 
         return info != null ? new ProcessStatusInfo(pid, info.getUserTime(), info.getKernelTime()) : null;
@@ -38,12 +38,15 @@ package com.redhat.thermostat.vm.cpu.agent.internal;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.util.Set;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import com.redhat.thermostat.agent.VmStatusListenerRegistrar;
 import com.redhat.thermostat.common.portability.linux.ProcDataSource;
+import com.redhat.thermostat.common.portability.linux.ProcReader;
+import com.redhat.thermostat.common.portability.linux.ProcSampler;
 import com.redhat.thermostat.common.portability.SysConf;
 import com.redhat.thermostat.backend.VmPollingAction;
 import com.redhat.thermostat.backend.VmPollingBackend;
@@ -84,13 +87,16 @@ public class VmCpuBackend extends VmPollingBackend {
 
         private VmCpuStatBuilder builder;
         private VmCpuStatDAO dao;
+        // reads the stat of all monitored processes once per interval
+        private final ProcSampler sampler;
 
         private VmCpuBackendAction(final WriterID id, VmCpuStatDAO dao) {
             Clock clock = new SystemClock();
             long ticksPerSecond = SysConf.getClockTicksPerSecond();
             ProcDataSource source = new ProcDataSource();
             int numCpus = getCpuCount(source);
-            ProcessStatusInfoBuilder PSIBuilder = new ProcessStatusInfoBuilderImpl();
+            sampler = OS.IS_LINUX ? new ProcSampler(new ProcReader()) : null;
+            ProcessStatusInfoBuilder PSIBuilder = new ProcessStatusInfoBuilderImpl(sampler);
             builder = new VmCpuStatBuilder(clock, numCpus, ticksPerSecond, PSIBuilder, id);
             this.dao = dao;
         }
@@ -133,6 +139,13 @@ public class VmCpuBackend extends VmPollingBackend {
         }
     }
 
+    @Override
+    protected void preScheduledActions(Set<Integer> pids) {
+        if (action.sampler != null) {
+            action.sampler.sample(pids);
+        }
+    }
+
     @Override
     public void vmStatusChanged(Status newStatus, String vmId, int pid) {
         super.vmStatusChanged(newStatus, vmId, pid);
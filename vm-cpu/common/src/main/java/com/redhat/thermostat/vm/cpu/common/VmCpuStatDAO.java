@@ -42,6 +42,7 @@ import java.util.List;
 import com.redhat.thermostat.annotations.Service;
 import com.redhat.thermostat.storage.core.AgentId;
 import com.redhat.thermostat.storage.core.Category;
+import com.redhat.thermostat.storage.core.DataRollup;
 import com.redhat.thermostat.storage.core.Key;
 import com.redhat.thermostat.storage.core.VmId;
 import com.redhat.thermostat.storage.core.VmRef;
@@ -53,7 +54,9 @@ public interface VmCpuStatDAO {
     static final Key<Double> vmCpuLoadKey = new Key<>("cpuLoad");
 
     static final Category<VmCpuStat> vmCpuStatCategory = new Category<>("vm-cpu-stats", VmCpuStat.class,
-            Arrays.<Key<?>>asList(Key.AGENT_ID, Key.VM_ID, Key.TIMESTAMP, vmCpuLoadKey), Arrays.<Key<?>>asList(Key.TIMESTAMP));
+            Arrays.<Key<?>>asList(Key.AGENT_ID, Key.VM_ID, Key.TIMESTAMP, vmCpuLoadKey), Arrays.<Key<?>>asList(Key.TIMESTAMP),
+            null,
+            DataRollup.of(Key.AGENT_ID, Key.VM_ID));
 
     public abstract VmCpuStat getOldest(VmRef ref);
 
@@ -36,6 +36,8 @@
 
 package com.redhat.thermostat.vm.gc.agent.internal;
 
+import com.redhat.thermostat.backend.LongCounterHandle;
+import com.redhat.thermostat.backend.LongCounterHandles;
 import com.redhat.thermostat.backend.VmUpdate;
 import com.redhat.thermostat.backend.VmUpdateException;
 
@@ -48,41 +50,75 @@ import com.redhat.thermostat.backend.VmUpdateException;
  * provides is merely an abstraction over this (possibly always up-to-date)
  * ByteBuffer. So the data this class extracts is as current as possible, and
  * does not correspond to when the jvmstat update events fired.
+ * <p>
+ * The counters are resolved into {@link LongCounterHandle}s on first use
+ * after the vm has published its collectors.
+ * The number of collectors and their names don't change over the lifetime of
+ * a vm, so an extractor should be kept for all updates of the same vm.
  */
 public class VmGcDataExtractor {
 
-    /*
-     * Note, there may be a performance issue to consider here. We have a lot of
-     * string constants. When we start adding some of the more heavyweight
-     * features, and running into CPU issues this may need to be reconsidered in
-     * order to avoid the String pool overhead. See also:
-     * http://docs.oracle.com/javase/6/docs/api/java/lang/String.html#intern()
-     */
-
     private final VmUpdate update;
 
+    private boolean resolved;
+    private Long totalCollectors;
+    private LongCounterHandle frequency;
+    private String[] collectorNames;
+    private LongCounterHandle[] collectorTimes;
+    private LongCounterHandle[] collectorInvocations;
+
     public VmGcDataExtractor(VmUpdate update) {
         this.update = update;
     }
 
+    private void resolveCounters() throws VmUpdateException {
+        if (resolved) {
+            return;
+        }
+        LongCounterHandle total = LongCounterHandles.resolve(update, "sun.gc.policy.collectors");
+        int collectors = total != null ? (int) total.getValue() : 0;
+        String[] names = new String[collectors];
+        LongCounterHandle[] times = new LongCounterHandle[collectors];
+        LongCounterHandle[] invocations = new LongCounterHandle[collectors];
+        for (int i = 0; i < collectors; i++) {
+            String prefix = "sun.gc.collector." + i;
+            names[i] = update.getPerformanceCounterString(prefix + ".name");
+            times[i] = LongCounterHandles.resolve(update, prefix + ".time");
+            invocations[i] = LongCounterHandles.resolve(update, prefix + ".invocations");
+        }
+        frequency = LongCounterHandles.resolve(update, "sun.os.hrt.frequency");
+        totalCollectors = total != null ? Long.valueOf(collectors) : null;
+        collectorNames = names;
+        collectorTimes = times;
+        collectorInvocations = invocations;
+        // A vm which is still starting up may not have published its
+        // collectors yet. Try again on the next update.
+        resolved = total != null;
+    }
+
     public Long getTotalCollectors() throws VmUpdateException {
-        return update.getPerformanceCounterLong("sun.gc.policy.collectors");
+        resolveCounters();
+        return totalCollectors;
     }
 
-    public String getCollectorName(long collector) throws VmUpdateException {
-        return update.getPerformanceCounterString("sun.gc.collector." + collector + ".name");
+    public String getCollectorName(int collector) throws VmUpdateException {
+        resolveCounters();
+        return collector < collectorNames.length ? collectorNames[collector] : null;
     }
 
-    public Long getCollectorTime(long collector) throws VmUpdateException {
-        return update.getPerformanceCounterLong("sun.gc.collector." + collector + ".time");
+    public LongCounterHandle getCollectorTime(int collector) throws VmUpdateException {
+        resolveCounters();
+        return collector < collectorTimes.length ? collectorTimes[collector] : null;
     }
 
-    public Long getCollectorInvocations(long collector) throws VmUpdateException {
-        return update.getPerformanceCounterLong("sun.gc.collector." + collector + ".invocations");
+    public LongCounterHandle getCollectorInvocations(int collector) throws VmUpdateException {
+        resolveCounters();
+        return collector < collectorInvocations.length ? collectorInvocations[collector] : null;
     }
 
-    public Long getFrequency() throws VmUpdateException {
-        return update.getPerformanceCounterLong("sun.os.hrt.frequency");
+    public LongCounterHandle getFrequency() throws VmUpdateException {
+        resolveCounters();
+        return frequency;
     }
 
 }
@@ -39,6 +39,8 @@ package com.redhat.thermostat.vm.gc.agent.internal;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.redhat.thermostat.backend.LongCounterHandle;
+import com.redhat.thermostat.backend.SampleChangeFilter;
 import com.redhat.thermostat.backend.VmUpdate;
 import com.redhat.thermostat.backend.VmUpdateException;
 import com.redhat.thermostat.backend.VmUpdateListener;
@@ -53,18 +55,29 @@ public class VmGcVmListener implements VmUpdateListener {
     private final String vmId;
     private final VmGcStatDAO gcDAO;
     private final String writerId;
+    private final SampleChangeFilter<String> changeFilter;
     
+    private VmGcDataExtractor extractor;
     private boolean error;
 
     public VmGcVmListener(String writerId, VmGcStatDAO vmGcStatDao, String vmId) {
+        this(writerId, vmGcStatDao, vmId, SampleChangeFilter.<String>forCategory(VmGcStatDAO.vmGcStatCategory));
+    }
+
+    VmGcVmListener(String writerId, VmGcStatDAO vmGcStatDao, String vmId, SampleChangeFilter<String> changeFilter) {
         gcDAO = vmGcStatDao;
         this.vmId = vmId;
         this.writerId = writerId;
+        this.changeFilter = changeFilter;
     }
 
     @Override
     public void countersUpdated(VmUpdate update) {
-        VmGcDataExtractor extractor = new VmGcDataExtractor(update);
+        // the same update is passed for every change of the vm, so the
+        // counters only need to be resolved once
+        if (extractor == null) {
+            extractor = new VmGcDataExtractor(update);
+        }
         recordGcStat(extractor);
     }
 
@@ -76,16 +89,20 @@ public class VmGcVmListener implements VmUpdateListener {
                     long timestamp = System.currentTimeMillis();
                     String name = extractor.getCollectorName(i);
                     if (name != null) {
-                        Long invocations = extractor.getCollectorInvocations(i);
+                        LongCounterHandle invocations = extractor.getCollectorInvocations(i);
                         if (invocations != null) {
-                            Long time = extractor.getCollectorTime(i);
-                            Long frequency = extractor.getFrequency();
+                            LongCounterHandle time = extractor.getCollectorTime(i);
+                            LongCounterHandle frequency = extractor.getFrequency();
                             if (time != null && frequency!= null) {
                                 // TODO check for overflow
-                                long wallTimeInMicros = ((long) (1.0E6 * time / frequency));
-                                VmGcStat stat = new VmGcStat(writerId, vmId, timestamp,
-                                        name, invocations, wallTimeInMicros);
-                                gcDAO.putVmGcStat(stat);
+                                long wallTimeInMicros = ((long) (1.0E6 * time.getValue() / frequency.getValue()));
+                                long runCount = invocations.getValue();
+                                // collectors are idle most of the time
+                                if (changeFilter.sample(name, timestamp).add(runCount).add(wallTimeInMicros).shouldWrite()) {
+                                    VmGcStat stat = new VmGcStat(writerId, vmId, timestamp,
+                                            name, runCount, wallTimeInMicros);
+                                    gcDAO.putVmGcStat(stat);
+                                }
                             }
                             else {
                                 logWarningOnce("Unable to determine time spent by collector " 
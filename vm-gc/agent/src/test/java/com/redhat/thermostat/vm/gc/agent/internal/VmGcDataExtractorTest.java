@@ -37,38 +37,78 @@
 package com.redhat.thermostat.vm.gc.agent.internal;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import org.junit.Before;
 import org.junit.Test;
 
+import com.redhat.thermostat.backend.LongCounterHandle;
+import com.redhat.thermostat.backend.LongCounterHandleResolver;
 import com.redhat.thermostat.backend.VmUpdate;
 import com.redhat.thermostat.backend.VmUpdateException;
 
 public class VmGcDataExtractorTest {
 
     private VmGcDataExtractor extractor;
-    private VmUpdate update;
+    private interface ResolvingVmUpdate extends VmUpdate, LongCounterHandleResolver {
+    }
+
+    private ResolvingVmUpdate update;
 
     @Before
-    public void setup() {
-        update = mock(VmUpdate.class);
+    public void setup() throws VmUpdateException {
+        update = mock(ResolvingVmUpdate.class);
+        LongCounterHandle collectors = mockHandle(1L);
+        when(update.getLongCounterHandle(eq("sun.gc.policy.collectors"))).thenReturn(collectors);
         extractor = new VmGcDataExtractor(update);
     }
+
+    private static LongCounterHandle mockHandle(long value) {
+        LongCounterHandle handle = mock(LongCounterHandle.class);
+        when(handle.getValue()).thenReturn(value);
+        return handle;
+    }
     
     @Test
     public void testTotalCollectors() throws VmUpdateException {
         final String MONITOR_NAME = "sun.gc.policy.collectors";
         final Long MONITOR_VALUE = 9l;
+        LongCounterHandle handle = mockHandle(MONITOR_VALUE);
 
-        when(update.getPerformanceCounterLong(eq(MONITOR_NAME))).thenReturn(MONITOR_VALUE);
+        when(update.getLongCounterHandle(eq(MONITOR_NAME))).thenReturn(handle);
         
         Long returned = extractor.getTotalCollectors();
         assertEquals(MONITOR_VALUE, returned);
     }
 
+    @Test
+    public void testNoTotalCollectors() throws VmUpdateException {
+        when(update.getLongCounterHandle(eq("sun.gc.policy.collectors"))).thenReturn(null);
+        
+        assertNull(extractor.getTotalCollectors());
+        assertNull(extractor.getCollectorName(0));
+    }
+
+    @Test
+    public void testCollectorsPublishedAfterFirstUpdate() throws VmUpdateException {
+        LongCounterHandle collectors = mockHandle(1L);
+        LongCounterHandle time = mockHandle(42L);
+        when(update.getLongCounterHandle(eq("sun.gc.policy.collectors"))).thenReturn(null).thenReturn(collectors);
+        when(update.getLongCounterHandle(eq("sun.gc.collector.0.time"))).thenReturn(time);
+
+        assertNull(extractor.getTotalCollectors());
+        assertNull(extractor.getCollectorTime(0));
+
+        assertEquals(Long.valueOf(1L), extractor.getTotalCollectors());
+        assertEquals(42L, extractor.getCollectorTime(0).getValue());
+    }
+
     @Test
     public void testCollectorName() throws VmUpdateException {
         final String MONITOR_NAME = "sun.gc.collector.0.name";
@@ -83,23 +123,48 @@ public class VmGcDataExtractorTest {
     @Test
     public void testCollectorTime() throws VmUpdateException {
         final String MONITOR_NAME = "sun.gc.collector.0.time";
-        final Long COLLECTOR_TIME = 99l;
+        LongCounterHandle handle = mockHandle(99l);
 
-        when(update.getPerformanceCounterLong(eq(MONITOR_NAME))).thenReturn(COLLECTOR_TIME);
+        when(update.getLongCounterHandle(eq(MONITOR_NAME))).thenReturn(handle);
 
-        Long returned = extractor.getCollectorTime(0);
-        assertEquals(COLLECTOR_TIME, returned);
+        LongCounterHandle returned = extractor.getCollectorTime(0);
+        assertEquals(99l, returned.getValue());
     }
 
     @Test
     public void testCollectorInvocations() throws VmUpdateException {
         final String MONITOR_NAME = "sun.gc.collector.0.invocations";
-        final Long COLLECTOR_INVOCATIONS = 99l;
+        LongCounterHandle handle = mockHandle(99l);
+
+        when(update.getLongCounterHandle(eq(MONITOR_NAME))).thenReturn(handle);
+
+        LongCounterHandle returned = extractor.getCollectorInvocations(0);
+        assertEquals(99l, returned.getValue());
+    }
 
-        when(update.getPerformanceCounterLong(eq(MONITOR_NAME))).thenReturn(COLLECTOR_INVOCATIONS);
+    @Test
+    public void testFrequency() throws VmUpdateException {
+        final String MONITOR_NAME = "sun.os.hrt.frequency";
+        LongCounterHandle handle = mockHandle(1000l);
+
+        when(update.getLongCounterHandle(eq(MONITOR_NAME))).thenReturn(handle);
 
-        Long returned = extractor.getCollectorInvocations(0);
-        assertEquals(COLLECTOR_INVOCATIONS, returned);
+        LongCounterHandle returned = extractor.getFrequency();
+        assertEquals(1000l, returned.getValue());
+    }
+
+    @Test
+    public void testCountersAreResolvedOnce() throws VmUpdateException {
+        extractor.getTotalCollectors();
+        extractor.getCollectorName(0);
+        extractor.getCollectorTime(0);
+        extractor.getCollectorInvocations(0);
+        extractor.getFrequency();
+        extractor.getCollectorTime(0);
+
+        // policy.collectors, collector.0.time, collector.0.invocations and frequency
+        verify(update, times(4)).getLongCounterHandle(anyString());
+        verify(update, times(1)).getPerformanceCounterString(anyString());
     }
 
 }
@@ -51,6 +51,8 @@ import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 
+import com.redhat.thermostat.backend.LongCounterHandle;
+import com.redhat.thermostat.backend.SampleChangeFilter;
 import com.redhat.thermostat.backend.VmUpdateException;
 import com.redhat.thermostat.vm.gc.common.VmGcStatDAO;
 import com.redhat.thermostat.vm.gc.common.model.VmGcStat;
@@ -81,20 +83,29 @@ public class VmGcVmListenerTest {
             mockCollectorTime(i);
         }
         
-        when(extractor.getFrequency()).thenReturn(OS_TICKS_PER_SECOND);
+        LongCounterHandle frequency = mockHandle(OS_TICKS_PER_SECOND);
+        when(extractor.getFrequency()).thenReturn(frequency);
         when(extractor.getTotalCollectors()).thenReturn((long) GC_NAMES.length);
     }
 
+    private static LongCounterHandle mockHandle(long value) {
+        LongCounterHandle handle = mock(LongCounterHandle.class);
+        when(handle.getValue()).thenReturn(value);
+        return handle;
+    }
+
     private void mockCollectorName(int gc) throws VmUpdateException {
         when(extractor.getCollectorName(gc)).thenReturn(GC_NAMES[gc]);
     }
     
     private void mockCollectorInvocations(int gc) throws VmUpdateException {
-        when(extractor.getCollectorInvocations(gc)).thenReturn(GC_INVOCS[gc]);
+        LongCounterHandle handle = mockHandle(GC_INVOCS[gc]);
+        when(extractor.getCollectorInvocations(gc)).thenReturn(handle);
     }
 
     private void mockCollectorTime(int gc) throws VmUpdateException {
-        when(extractor.getCollectorTime(gc)).thenReturn(GC_TIMES[gc]);
+        LongCounterHandle handle = mockHandle(GC_TIMES[gc]);
+        when(extractor.getCollectorTime(gc)).thenReturn(handle);
     }
     
     @Test
@@ -113,6 +124,24 @@ public class VmGcVmListenerTest {
         }
     }
     
+    @Test
+    public void testRecordMemoryStatOnlyOnChange() throws VmUpdateException {
+        vmListener = new VmGcVmListener("foo-agent", vmGcStatDAO, "vmId",
+                new SampleChangeFilter<String>(TimeUnit.HOURS.toMillis(1)));
+        vmListener.recordGcStat(extractor);
+        verify(vmGcStatDAO, times(2)).putVmGcStat(any(VmGcStat.class));
+
+        // only the second collector ran since the last sample
+        LongCounterHandle invocations = mockHandle(GC_INVOCS[1] + 1);
+        when(extractor.getCollectorInvocations(1)).thenReturn(invocations);
+        vmListener.recordGcStat(extractor);
+        ArgumentCaptor<VmGcStat> captor = ArgumentCaptor.forClass(VmGcStat.class);
+        verify(vmGcStatDAO, times(3)).putVmGcStat(captor.capture());
+        VmGcStat stat = captor.getAllValues().get(2);
+        assertEquals(GC_NAMES[1], stat.getCollectorName());
+        assertEquals(GC_INVOCS[1] + 1, stat.getRunCount());
+    }
+
     @Test
     public void testRecordMemoryStatNoName() throws VmUpdateException {
         when(extractor.getCollectorName(1)).thenReturn(null);
@@ -174,7 +203,8 @@ public class VmGcVmListenerTest {
     @Test
     public void testRecordMemoryFrequencyMismatch() throws VmUpdateException {
         final long SOME_FREQUENCY = 100l;
-        when(extractor.getFrequency()).thenReturn(SOME_FREQUENCY);
+        LongCounterHandle frequency = mockHandle(SOME_FREQUENCY);
+        when(extractor.getFrequency()).thenReturn(frequency);
         vmListener.recordGcStat(extractor);
         ArgumentCaptor<VmGcStat> captor = ArgumentCaptor.forClass(VmGcStat.class);
         verify(vmGcStatDAO, times(2)).putVmGcStat(captor.capture());
@@ -43,6 +43,7 @@ import java.util.Set;
 import com.redhat.thermostat.annotations.Service;
 import com.redhat.thermostat.storage.core.AgentId;
 import com.redhat.thermostat.storage.core.Category;
+import com.redhat.thermostat.storage.core.DataRollup;
 import com.redhat.thermostat.storage.core.Key;
 import com.redhat.thermostat.storage.core.VmId;
 import com.redhat.thermostat.storage.core.VmRef;
@@ -58,7 +59,9 @@ public interface VmGcStatDAO {
 
     static final Category<VmGcStat> vmGcStatCategory = new Category<>("vm-gc-stats", VmGcStat.class,
             Arrays.<Key<?>>asList(Key.AGENT_ID, Key.VM_ID, Key.TIMESTAMP, collectorKey, runCountKey, wallTimeKey),
-            Arrays.<Key<?>>asList(Key.TIMESTAMP));
+            Arrays.<Key<?>>asList(Key.TIMESTAMP),
+            null,
+            DataRollup.of(Key.AGENT_ID, Key.VM_ID, collectorKey));
 
     @Deprecated
     public List<VmGcStat> getLatestVmGcStats(VmRef ref, long since);
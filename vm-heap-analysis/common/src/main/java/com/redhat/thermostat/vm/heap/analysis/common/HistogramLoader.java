@@ -38,33 +38,25 @@ package com.redhat.thermostat.vm.heap.analysis.common;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Enumeration;
 
-import com.redhat.thermostat.vm.heap.analysis.hat.hprof.model.JavaHeapObject;
-import com.redhat.thermostat.vm.heap.analysis.hat.hprof.model.Snapshot;
-import com.redhat.thermostat.vm.heap.analysis.hat.hprof.parser.Reader;
+import com.redhat.thermostat.vm.heap.analysis.hat.hprof.parser.HistogramReader;
+import com.redhat.thermostat.vm.heap.analysis.hat.hprof.parser.HistogramReader.ClassStatisticsVisitor;
 
+/**
+ * Computes an {@link ObjectHistogram} from a heap dump file without loading
+ * the objects in it into memory.
+ */
 public class HistogramLoader {
 
     public ObjectHistogram load(String filename) throws IOException {
-        Snapshot snapshot = loadHeapdump(filename);
-        return computeHistogram(snapshot);
-    }
-
-    private Snapshot loadHeapdump(String filename) throws IOException {
         File heapdump = new File(filename);
-        Snapshot snapshot = Reader.readFile(heapdump.getAbsolutePath(), true, 0);
-        snapshot.resolve(true);
-        return snapshot;
-    }
-
-    private ObjectHistogram computeHistogram(Snapshot snapshot) {
-        Enumeration<JavaHeapObject> thingos = snapshot.getThings();
-        ObjectHistogram histogram = new ObjectHistogram();
-        while (thingos.hasMoreElements()) {
-            JavaHeapObject thingo = thingos.nextElement();
-            histogram.addThing(thingo);
-        }
+        final ObjectHistogram histogram = new ObjectHistogram();
+        HistogramReader.readFile(heapdump.getAbsolutePath(), new ClassStatisticsVisitor() {
+            @Override
+            public void visit(String className, long instanceCount, long totalSize) {
+                histogram.addRecord(className, instanceCount, totalSize);
+            }
+        });
         return histogram;
     }
 
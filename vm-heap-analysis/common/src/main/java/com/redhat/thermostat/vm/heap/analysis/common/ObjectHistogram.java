@@ -62,6 +62,16 @@ public class ObjectHistogram implements Serializable {
         record.totalSize += thing.getSize();
     }
 
+    public void addRecord(String className, long numberOf, long totalSize) {
+        HistogramRecord record = histogram.get(className);
+        if (record == null) {
+            record = new HistogramRecord(className);
+            histogram.put(className, record);
+        }
+        record.numberOf += numberOf;
+        record.totalSize += totalSize;
+    }
+
     public Collection<HistogramRecord> getHistogram() {
         return histogram.values();
     }
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.vm.heap.analysis.hat.hprof.model;
+
+import java.util.Enumeration;
+import java.util.NoSuchElementException;
+
+/**
+ * Maps object ids to heap objects without boxing the ids.
+ * <p>
+ * The objects are kept in a compact array, in the order they were first
+ * added, and an open-addressing table maps ids to positions in that array.
+ * The position of an object can be used to mark it in a {@link java.util.BitSet}
+ * instead of keeping a set of the objects themselves.
+ * <p>
+ * This class is not thread-safe. A {@link Snapshot} only modifies its index
+ * while the heap dump is read and resolved.
+ */
+final class HeapObjectIndex {
+
+    static final int NOT_FOUND = -1;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private long[] keys;
+    /** position + 1 of the object in {@link #objects}, 0 for free slots */
+    private int[] positions;
+    private JavaHeapObject[] objects;
+    private int size;
+
+    HeapObjectIndex() {
+        keys = new long[INITIAL_CAPACITY];
+        positions = new int[INITIAL_CAPACITY];
+        objects = new JavaHeapObject[INITIAL_CAPACITY / 2];
+    }
+
+    /**
+     * Adds an object, replacing any object previously added with the same id
+     * at the same position.
+     */
+    void put(long id, JavaHeapObject obj) {
+        int slot = findSlot(keys, positions, id);
+        if (positions[slot] != 0) {
+            objects[positions[slot] - 1] = obj;
+            return;
+        }
+        if (size == objects.length) {
+            grow();
+            slot = findSlot(keys, positions, id);
+        }
+        keys[slot] = id;
+        objects[size] = obj;
+        size++;
+        positions[slot] = size;
+    }
+
+    void putAll(HeapObjectIndex other) {
+        for (int slot = 0; slot < other.keys.length; slot++) {
+            if (other.positions[slot] != 0) {
+                put(other.keys[slot], other.objects[other.positions[slot] - 1]);
+            }
+        }
+    }
+
+    JavaHeapObject get(long id) {
+        int position = positionOf(id);
+        return position == NOT_FOUND ? null : objects[position];
+    }
+
+    /**
+     * @return the position of the object with the given id or
+     * {@link #NOT_FOUND}
+     */
+    int positionOf(long id) {
+        int slot = findSlot(keys, positions, id);
+        return positions[slot] - 1;
+    }
+
+    JavaHeapObject getAt(int position) {
+        return objects[position];
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        keys = new long[INITIAL_CAPACITY];
+        positions = new int[INITIAL_CAPACITY];
+        objects = new JavaHeapObject[INITIAL_CAPACITY / 2];
+        size = 0;
+    }
+
+    Enumeration<JavaHeapObject> elements() {
+        return new Enumeration<JavaHeapObject>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasMoreElements() {
+                return next < size;
+            }
+
+            @Override
+            public JavaHeapObject nextElement() {
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                return objects[next++];
+            }
+        };
+    }
+
+    private void grow() {
+        int capacity = keys.length * 2;
+        long[] newKeys = new long[capacity];
+        int[] newPositions = new int[capacity];
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (positions[slot] != 0) {
+                int newSlot = findSlot(newKeys, newPositions, keys[slot]);
+                newKeys[newSlot] = keys[slot];
+                newPositions[newSlot] = positions[slot];
+            }
+        }
+        JavaHeapObject[] newObjects = new JavaHeapObject[capacity / 2];
+        System.arraycopy(objects, 0, newObjects, 0, size);
+        keys = newKeys;
+        positions = newPositions;
+        objects = newObjects;
+    }
+
+    private static int findSlot(long[] keys, int[] positions, long id) {
+        int mask = keys.length - 1;
+        int slot = hash(id) & mask;
+        while (positions[slot] != 0 && keys[slot] != id) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    static int hash(long id) {
+        // object ids are addresses; mix the (mostly zero) low bits with the rest
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -58,11 +58,9 @@ public class Snapshot implements AutoCloseable {
     private static final JavaStatic[] EMPTY_STATIC_ARRAY = new JavaStatic[0];
 
     // all heap objects
-    private Hashtable<Number, JavaHeapObject> heapObjects =
-                 new Hashtable<Number, JavaHeapObject>();
+    private HeapObjectIndex heapObjects = new HeapObjectIndex();
 
-    private Hashtable<Number, JavaClass> fakeClasses =
-                 new Hashtable<Number, JavaClass>();
+    private HeapObjectIndex fakeClasses = new HeapObjectIndex();
 
     // all Roots in this Snapshot
     private Vector<Root> roots = new Vector<Root>();
@@ -164,7 +162,7 @@ public class Snapshot implements AutoCloseable {
     }
 
     public void addHeapObject(long id, JavaHeapObject ho) {
-        heapObjects.put(makeId(id), ho);
+        heapObjects.put(makeKey(id), ho);
     }
 
     public void addRoot(Root r) {
@@ -200,7 +198,7 @@ public class Snapshot implements AutoCloseable {
         JavaClass c = new JavaClass(name, 0, 0, 0, 0, fields,
                                  EMPTY_STATIC_ARRAY, instSize);
         // Add the class
-        addFakeClass(makeId(classID), c);
+        addFakeClass(makeKey(classID), c);
         return c;
     }
 
@@ -254,14 +252,16 @@ public class Snapshot implements AutoCloseable {
             addFakeClass(javaLangClassLoader);
         }
 
-        for (JavaHeapObject t : heapObjects.values()) {
+        for (int i = 0; i < heapObjects.size(); i++) {
+            JavaHeapObject t = heapObjects.getAt(i);
             if (t instanceof JavaClass) {
                 t.resolve(this);
             }
         }
 
         // Now, resolve everything else.
-        for (JavaHeapObject t : heapObjects.values()) {
+        for (int i = 0; i < heapObjects.size(); i++) {
+            JavaHeapObject t = heapObjects.getAt(i);
             if (!(t instanceof JavaClass)) {
                 t.resolve(this);
             }
@@ -285,10 +285,8 @@ public class Snapshot implements AutoCloseable {
         if (calculateRefs) {
             calculateReferencesToObjects();
         }
-        int count = 0;
-        for (JavaHeapObject t : heapObjects.values()) {
-            t.setupReferers();
-            ++count;
+        for (int i = 0; i < heapObjects.size(); i++) {
+            heapObjects.getAt(i).setupReferers();
         }
 
         // to ensure that Iterator.remove() on getClasses()
@@ -297,13 +295,12 @@ public class Snapshot implements AutoCloseable {
     }
 
     private void calculateReferencesToObjects() {
-        int count = 0;
         MyVisitor visitor = new MyVisitor();
-        for (JavaHeapObject t : heapObjects.values()) {
+        for (int i = 0; i < heapObjects.size(); i++) {
+            JavaHeapObject t = heapObjects.getAt(i);
             visitor.t = t;
             // call addReferenceFrom(t) on all objects t references:
             t.visitReferencedObjects(visitor);
-            ++count;
         }
         for (Root r : roots) {
             r.resolve(this);
@@ -316,7 +313,8 @@ public class Snapshot implements AutoCloseable {
 
     public void markNewRelativeTo(Snapshot baseline) {
         hasNewSet = true;
-        for (JavaHeapObject t : heapObjects.values()) {
+        for (int i = 0; i < heapObjects.size(); i++) {
+            JavaHeapObject t = heapObjects.getAt(i);
             boolean isNew;
             long thingID = t.getId();
             if (thingID == 0L || thingID == -1L) {
@@ -339,9 +337,9 @@ public class Snapshot implements AutoCloseable {
 
 
     public JavaHeapObject findThing(long id) {
-        Number idObj = makeId(id);
-        JavaHeapObject jho = heapObjects.get(idObj);
-        return jho != null? jho : fakeClasses.get(idObj);
+        long key = makeKey(id);
+        JavaHeapObject jho = heapObjects.get(key);
+        return jho != null? jho : fakeClasses.get(key);
     }
 
     public JavaHeapObject findThing(String id) {
@@ -414,17 +412,16 @@ public class Snapshot implements AutoCloseable {
 
     public ReferenceChain[]
     rootsetReferencesTo(JavaHeapObject target, boolean includeWeak) {
-        Vector<ReferenceChain> fifo = new Vector<ReferenceChain>();  // This is slow... A real fifo would help
+        ArrayDeque<ReferenceChain> fifo = new ArrayDeque<ReferenceChain>();
             // Must be a fifo to go breadth-first
-        Hashtable<JavaHeapObject, JavaHeapObject> visited = new Hashtable<JavaHeapObject, JavaHeapObject>();
+        Visited visited = new Visited();
         // Objects are added here right after being added to fifo.
         Vector<ReferenceChain> result = new Vector<ReferenceChain>();
-        visited.put(target, target);
-        fifo.addElement(new ReferenceChain(target, null));
+        visited.add(target);
+        fifo.addLast(new ReferenceChain(target, null));
 
-        while (fifo.size() > 0) {
-            ReferenceChain chain = fifo.elementAt(0);
-            fifo.removeElementAt(0);
+        while (!fifo.isEmpty()) {
+            ReferenceChain chain = fifo.removeFirst();
             JavaHeapObject curr = chain.getObj();
             if (curr.getRoot() != null) {
                 result.addElement(chain);
@@ -434,10 +431,10 @@ public class Snapshot implements AutoCloseable {
             Enumeration<JavaThing> referers = curr.getReferers();
             while (referers.hasMoreElements()) {
                 JavaHeapObject t = (JavaHeapObject) referers.nextElement();
-                if (t != null && !visited.containsKey(t)) {
+                if (t != null && !visited.contains(t)) {
                     if (includeWeak || !t.refersOnlyWeaklyTo(this, curr)) {
-                        visited.put(t, t);
-                        fifo.addElement(new ReferenceChain(t, chain));
+                        visited.add(t);
+                        fifo.addLast(new ReferenceChain(t, chain));
                     }
                 }
             }
@@ -555,14 +552,52 @@ public class Snapshot implements AutoCloseable {
     }
 
     // Internals only below this point
-    private Number makeId(long id) {
+    private long makeKey(long id) {
         if (identifierSize == 4) {
-            return (int)id;
+            return id & SMALL_ID_MASK;
         } else {
             return id;
         }
     }
 
+    /**
+     * Set of heap objects, marked by their position in heapObjects. Objects
+     * not in heapObjects (such as some fake classes) are kept in a fallback
+     * identity set.
+     */
+    private class Visited {
+        private final BitSet marked = new BitSet(heapObjects.size());
+        private Set<JavaHeapObject> others;
+
+        void add(JavaHeapObject obj) {
+            int position = positionOf(obj);
+            if (position != HeapObjectIndex.NOT_FOUND) {
+                marked.set(position);
+            } else {
+                if (others == null) {
+                    others = Collections.newSetFromMap(new IdentityHashMap<JavaHeapObject, Boolean>());
+                }
+                others.add(obj);
+            }
+        }
+
+        boolean contains(JavaHeapObject obj) {
+            int position = positionOf(obj);
+            if (position != HeapObjectIndex.NOT_FOUND) {
+                return marked.get(position);
+            }
+            return others != null && others.contains(obj);
+        }
+
+        private int positionOf(JavaHeapObject obj) {
+            int position = heapObjects.positionOf(makeKey(obj.getId()));
+            if (position != HeapObjectIndex.NOT_FOUND && heapObjects.getAt(position) != obj) {
+                return HeapObjectIndex.NOT_FOUND;
+            }
+            return position;
+        }
+    }
+
     private void putInClassesMap(JavaClass c) {
         String name = c.getName();
         if (classes.containsKey(name)) {
@@ -579,7 +614,7 @@ public class Snapshot implements AutoCloseable {
         c.resolve(this);
     }
 
-    private void addFakeClass(Number id, JavaClass c) {
+    private void addFakeClass(long id, JavaClass c) {
         fakeClasses.put(id, c);
         addFakeClass(c);
     }
@@ -0,0 +1,559 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.vm.heap.analysis.hat.hprof.parser;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.redhat.thermostat.vm.heap.analysis.hat.hprof.model.ArrayTypeCodes;
+import com.redhat.thermostat.vm.heap.analysis.hat.hprof.util.Misc;
+
+/**
+ * Computes the number and total size of the objects of every class in a hprof
+ * file in a single, streaming, pass.
+ * <p>
+ * Unlike {@link HprofReader}, this does not build a
+ * {@link com.redhat.thermostat.vm.heap.analysis.hat.hprof.model.Snapshot
+ * Snapshot}: objects are only counted, keyed by the id of their class, so the
+ * memory needed is proportional to the number of classes, not the number of
+ * objects. Class names and object sizes are the same as those of the
+ * resolved {@code Snapshot}.
+ * <p>
+ * Only the first heap dump in the file is read.
+ */
+public class HistogramReader implements ArrayTypeCodes {
+
+    /** Receives the statistics of one class */
+    public interface ClassStatisticsVisitor {
+        void visit(String className, long instanceCount, long totalSize);
+    }
+
+    private static final String JAVA_LANG_CLASS = "java.lang.Class";
+    private static final String OTHER_ARRAY_TYPE = "[<other>";
+
+    private final PositionDataInputStream in;
+
+    private int version;
+    private int identifierSize;
+
+    private final Map<Long, String> names = new HashMap<>();
+    private final Map<Long, String> classNameFromObjectID = new HashMap<>();
+    /** classes with a HPROF_GC_CLASS_DUMP record, by object id */
+    private final Map<Long, String> dumpedClasses = new HashMap<>();
+    private int javaLangClassInstanceSize = 0;
+
+    private final LongStatistics instancesByClass = new LongStatistics();
+    private final LongStatistics objectArraysByClass = new LongStatistics();
+    /** indexed by the primitive array type code */
+    private final long[] primitiveArrayCounts = new long[T_LONG + 1];
+    private final long[] primitiveArraySizes = new long[T_LONG + 1];
+
+    /**
+     * @param in positioned right after the magic number
+     */
+    public HistogramReader(PositionDataInputStream in) {
+        this.in = in;
+    }
+
+    public static void readFile(String heapFile, ClassStatisticsVisitor visitor) throws IOException {
+        try (PositionDataInputStream in = new PositionDataInputStream(
+                new BufferedInputStream(new FileInputStream(heapFile)))) {
+            int magic = in.readInt();
+            if (magic != HprofReader.MAGIC_NUMBER) {
+                throw new IOException("Unrecognized magic number: " + magic);
+            }
+            new HistogramReader(in).read(visitor);
+        }
+    }
+
+    public void read(ClassStatisticsVisitor visitor) throws IOException {
+        version = HprofReader.readVersionHeader(in);
+        identifierSize = in.readInt();
+        if (identifierSize != 4 && identifierSize != 8) {
+            throw new IOException("I'm sorry, but I can't deal with an identifier size of " + identifierSize + ".  I can only deal with 4 or 8.");
+        }
+        /* long creationDateTimeStampInMillis = */ in.readLong();
+
+        try {
+            readRecords();
+        } catch (EOFException e) {
+            warn("Unexpected EOF. Will miss information...");
+        }
+        report(visitor);
+    }
+
+    private void readRecords() throws IOException {
+        for (;;) {
+            int type;
+            try {
+                type = in.readUnsignedByte();
+            } catch (EOFException ignored) {
+                return;
+            }
+            in.readInt();       // Timestamp of this record
+            long length = in.readInt() & 0xffffffffL;
+            switch (type) {
+                case HprofReader.HPROF_UTF8: {
+                    long id = readID();
+                    byte[] chars = new byte[(int) length - identifierSize];
+                    in.readFully(chars);
+                    names.put(id, new String(chars));
+                    break;
+                }
+                case HprofReader.HPROF_LOAD_CLASS: {
+                    in.readInt();       // serial number
+                    long classID = readID();
+                    in.readInt();       // stack trace serial number
+                    long classNameID = readID();
+                    classNameFromObjectID.put(classID, getNameFromID(classNameID).replace('/', '.'));
+                    break;
+                }
+                case HprofReader.HPROF_HEAP_DUMP: {
+                    readHeapDump(length);
+                    return;
+                }
+                case HprofReader.HPROF_HEAP_DUMP_SEGMENT: {
+                    if (version >= HprofReader.VERSION_JDK6) {
+                        readHeapDump(length);
+                    } else {
+                        skipBytes(length);
+                    }
+                    break;
+                }
+                case HprofReader.HPROF_HEAP_DUMP_END: {
+                    if (version >= HprofReader.VERSION_JDK6) {
+                        return;
+                    }
+                    skipBytes(length);
+                    break;
+                }
+                default: {
+                    skipBytes(length);
+                }
+            }
+        }
+    }
+
+    private void readHeapDump(long bytesLeft) throws IOException {
+        while (bytesLeft > 0) {
+            int type = in.readUnsignedByte();
+            bytesLeft--;
+            switch (type) {
+                case HprofReader.HPROF_GC_ROOT_UNKNOWN:
+                case HprofReader.HPROF_GC_ROOT_STICKY_CLASS:
+                case HprofReader.HPROF_GC_ROOT_MONITOR_USED:
+                    bytesLeft -= skipBytes(identifierSize);
+                    break;
+                case HprofReader.HPROF_GC_ROOT_JNI_GLOBAL:
+                    bytesLeft -= skipBytes(2 * identifierSize);
+                    break;
+                case HprofReader.HPROF_GC_ROOT_NATIVE_STACK:
+                case HprofReader.HPROF_GC_ROOT_THREAD_BLOCK:
+                    bytesLeft -= skipBytes(identifierSize + 4);
+                    break;
+                case HprofReader.HPROF_GC_ROOT_THREAD_OBJ:
+                case HprofReader.HPROF_GC_ROOT_JNI_LOCAL:
+                case HprofReader.HPROF_GC_ROOT_JAVA_FRAME:
+                    bytesLeft -= skipBytes(identifierSize + 8);
+                    break;
+                case HprofReader.HPROF_GC_CLASS_DUMP:
+                    bytesLeft -= readClass();
+                    break;
+                case HprofReader.HPROF_GC_INSTANCE_DUMP:
+                    bytesLeft -= readInstance();
+                    break;
+                case HprofReader.HPROF_GC_OBJ_ARRAY_DUMP:
+                    bytesLeft -= readArray(false);
+                    break;
+                case HprofReader.HPROF_GC_PRIM_ARRAY_DUMP:
+                    bytesLeft -= readArray(true);
+                    break;
+                default:
+                    throw new IOException("Unrecognized heap dump sub-record type:  " + type);
+            }
+        }
+        if (bytesLeft != 0) {
+            warn("Error reading heap dump or heap dump segment:  Byte count is " + bytesLeft + " instead of 0");
+            skipBytes(bytesLeft);
+        }
+    }
+
+    private long readClass() throws IOException {
+        long id = readID();
+        in.readInt();           // stack trace serial number
+        skipBytes(6 * identifierSize);  // super, loader, signers, protection domain, reserved
+        int instanceSize = in.readInt();
+        long bytesRead = 7 * identifierSize + 8;
+
+        int numConstPoolEntries = in.readUnsignedShort();
+        bytesRead += 2;
+        for (int i = 0; i < numConstPoolEntries; i++) {
+            in.readUnsignedShort();     // index
+            byte type = in.readByte();
+            bytesRead += 3 + skipBytes(valueSize(type));
+        }
+
+        int numStatics = in.readUnsignedShort();
+        bytesRead += 2;
+        for (int i = 0; i < numStatics; i++) {
+            skipBytes(identifierSize);  // name
+            byte type = in.readByte();
+            bytesRead += identifierSize + 1 + skipBytes(valueSize(type));
+        }
+
+        int numFields = in.readUnsignedShort();
+        bytesRead += 2;
+        bytesRead += skipBytes(numFields * (identifierSize + 1L));
+
+        String name = classNameFromObjectID.get(id);
+        if (name == null) {
+            warn("Class name not found for " + Misc.toHex(id));
+            name = "unknown-name@" + Misc.toHex(id);
+        }
+        dumpedClasses.put(id, name);
+        if (JAVA_LANG_CLASS.equals(name)) {
+            javaLangClassInstanceSize = instanceSize;
+        }
+        return bytesRead;
+    }
+
+    private long readInstance() throws IOException {
+        readID();               // object id
+        in.readInt();           // stack trace serial number
+        long classID = readID();
+        int bytesFollowing = in.readInt();
+        skipBytes(bytesFollowing);
+        instancesByClass.add(classID, bytesFollowing + getMinimumObjectSize());
+        return 2 * identifierSize + 8 + bytesFollowing;
+    }
+
+    private long readArray(boolean isPrimitive) throws IOException {
+        readID();               // object id
+        in.readInt();           // stack trace serial number
+        int num = in.readInt();
+        long bytesRead = identifierSize + 8;
+        long elementClassID;
+        if (isPrimitive) {
+            elementClassID = in.readByte();
+            bytesRead++;
+        } else {
+            elementClassID = readID();
+            bytesRead += identifierSize;
+        }
+
+        int elementSize = 0;
+        if (isPrimitive || version < HprofReader.VERSION_JDK12BETA4) {
+            elementSize = primitiveElementSize(elementClassID);
+            if (version >= HprofReader.VERSION_JDK12BETA4 && elementSize == 0) {
+                throw new IOException("Unrecognized typecode:  " + elementClassID);
+            }
+        }
+        if (elementSize != 0) {
+            long size = (long) elementSize * num;
+            skipBytes(size);
+            primitiveArrayCounts[(int) elementClassID]++;
+            primitiveArraySizes[(int) elementClassID] += size + getMinimumObjectSize();
+            return bytesRead + size;
+        } else {
+            long size = (long) identifierSize * num;
+            skipBytes(size);
+            objectArraysByClass.add(elementClassID, size + getMinimumObjectSize());
+            return bytesRead + size;
+        }
+    }
+
+    /** Names classes the same way {@code Snapshot.resolve()} does */
+    private void report(ClassStatisticsVisitor visitor) {
+        Set<String> classNames = new HashSet<>(dumpedClasses.values());
+        long classObjects = dumpedClasses.size();
+
+        for (int i = 0; i < instancesByClass.size(); i++) {
+            long classID = instancesByClass.keyAt(i);
+            String name = dumpedClasses.get(classID);
+            if (name == null) {
+                warn("Class " + Long.toHexString(classID) + " not found, adding fake class!");
+                name = "unknown-class<@" + Misc.toHex(classID) + ">";
+                classObjects++;
+            }
+            visitor.visit(name, instancesByClass.countAt(i), instancesByClass.sizeAt(i));
+        }
+
+        for (int i = 0; i < objectArraysByClass.size(); i++) {
+            long classID = objectArraysByClass.keyAt(i);
+            String className = dumpedClasses.get(classID);
+            String name;
+            if (className == null) {
+                name = OTHER_ARRAY_TYPE;
+            } else if (version >= HprofReader.VERSION_JDK12BETA4) {
+                // the id is that of the array class itself
+                name = className;
+            } else {
+                // the id is that of the element class
+                name = className.startsWith("[") ? "[" + className : "[L" + className + ";";
+            }
+            visitor.visit(name, objectArraysByClass.countAt(i), objectArraysByClass.sizeAt(i));
+        }
+
+        for (int type = 0; type < primitiveArrayCounts.length; type++) {
+            if (primitiveArrayCounts[type] == 0) {
+                continue;
+            }
+            String name = primitiveArrayName(type);
+            if (!classNames.contains(name)) {
+                name = "[" + primitiveSignature(type);
+            }
+            visitor.visit(name, primitiveArrayCounts[type], primitiveArraySizes[type]);
+        }
+
+        if (classObjects > 0) {
+            visitor.visit(JAVA_LANG_CLASS, classObjects,
+                    classObjects * (javaLangClassInstanceSize + getMinimumObjectSize()));
+        }
+    }
+
+    private int getMinimumObjectSize() {
+        return 2 * identifierSize;
+    }
+
+    private long readID() throws IOException {
+        return (identifierSize == 4) ? (0xffffffffL & in.readInt()) : in.readLong();
+    }
+
+    private long skipBytes(long length) throws IOException {
+        long left = length;
+        while (left > 0) {
+            int skipped = in.skipBytes((int) Math.min(left, Integer.MAX_VALUE));
+            if (skipped <= 0) {
+                // skipBytes does not distinguish EOF from a stream that is just slow
+                in.readByte();
+                skipped = 1;
+            }
+            left -= skipped;
+        }
+        return length;
+    }
+
+    private String getNameFromID(long id) {
+        if (id == 0L) {
+            return "";
+        }
+        String result = names.get(id);
+        if (result == null) {
+            warn("Name not found at " + Misc.toHex(id));
+            return "unresolved name " + Misc.toHex(id);
+        }
+        return result;
+    }
+
+    /** @return the size of a value of the given basic type in a class dump */
+    private int valueSize(byte type) throws IOException {
+        if (version >= HprofReader.VERSION_JDK12BETA4) {
+            if (type == HprofReader.T_CLASS) {
+                return identifierSize;
+            }
+            int size = primitiveElementSize(type);
+            if (size == 0) {
+                throw new IOException("Invalid type id of " + type);
+            }
+            return size;
+        }
+        switch (type) {
+            case '[':
+            case 'L':
+                return identifierSize;
+            case 'Z':
+            case 'B':
+                return 1;
+            case 'S':
+            case 'C':
+                return 2;
+            case 'I':
+            case 'F':
+                return 4;
+            case 'J':
+            case 'D':
+                return 8;
+            default:
+                throw new IOException("Bad value signature:  " + type);
+        }
+    }
+
+    /** @return the element size or 0 if this is not a primitive type code */
+    private static int primitiveElementSize(long typeCode) {
+        switch ((int) typeCode) {
+            case T_BOOLEAN:
+            case T_BYTE:
+                return 1;
+            case T_CHAR:
+            case T_SHORT:
+                return 2;
+            case T_FLOAT:
+            case T_INT:
+                return 4;
+            case T_DOUBLE:
+            case T_LONG:
+                return 8;
+            default:
+                return 0;
+        }
+    }
+
+    private static char primitiveSignature(int typeCode) {
+        switch (typeCode) {
+            case T_BOOLEAN: return 'Z';
+            case T_CHAR: return 'C';
+            case T_FLOAT: return 'F';
+            case T_DOUBLE: return 'D';
+            case T_BYTE: return 'B';
+            case T_SHORT: return 'S';
+            case T_INT: return 'I';
+            case T_LONG: return 'J';
+            default: throw new IllegalArgumentException("Not a primitive type: " + typeCode);
+        }
+    }
+
+    private static String primitiveArrayName(int typeCode) {
+        switch (typeCode) {
+            case T_BOOLEAN: return "boolean[]";
+            case T_CHAR: return "char[]";
+            case T_FLOAT: return "float[]";
+            case T_DOUBLE: return "double[]";
+            case T_BYTE: return "byte[]";
+            case T_SHORT: return "short[]";
+            case T_INT: return "int[]";
+            case T_LONG: return "long[]";
+            default: throw new IllegalArgumentException("Not a primitive type: " + typeCode);
+        }
+    }
+
+    private void warn(String msg) {
+        System.out.println("WARNING: " + msg);
+    }
+
+    /**
+     * An open-addressing hash table of object counts and total sizes, keyed by
+     * a class id. Entries are never removed.
+     */
+    static class LongStatistics {
+
+        private static final int INITIAL_CAPACITY = 1024;
+
+        private long[] keys = new long[INITIAL_CAPACITY];
+        private long[] counts = new long[INITIAL_CAPACITY];
+        private long[] sizes = new long[INITIAL_CAPACITY];
+        private boolean[] used = new boolean[INITIAL_CAPACITY];
+        private int size = 0;
+
+        /** Indexes of the used slots, in insertion order */
+        private int[] order = new int[INITIAL_CAPACITY];
+
+        void add(long key, long objectSize) {
+            int slot = findSlot(keys, used, key);
+            if (!used[slot]) {
+                if ((size + 1) * 2 > keys.length) {
+                    grow();
+                    slot = findSlot(keys, used, key);
+                }
+                used[slot] = true;
+                keys[slot] = key;
+                order[size] = slot;
+                size++;
+            }
+            counts[slot]++;
+            sizes[slot] += objectSize;
+        }
+
+        int size() {
+            return size;
+        }
+
+        long keyAt(int index) {
+            return keys[order[index]];
+        }
+
+        long countAt(int index) {
+            return counts[order[index]];
+        }
+
+        long sizeAt(int index) {
+            return sizes[order[index]];
+        }
+
+        private static int findSlot(long[] keys, boolean[] used, long key) {
+            int mask = keys.length - 1;
+            int slot = hash(key) & mask;
+            while (used[slot] && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private static int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+
+        private void grow() {
+            int capacity = keys.length * 2;
+            long[] newKeys = new long[capacity];
+            long[] newCounts = new long[capacity];
+            long[] newSizes = new long[capacity];
+            boolean[] newUsed = new boolean[capacity];
+            int[] newOrder = new int[capacity];
+            for (int i = 0; i < size; i++) {
+                int oldSlot = order[i];
+                int slot = findSlot(newKeys, newUsed, keys[oldSlot]);
+                newUsed[slot] = true;
+                newKeys[slot] = keys[oldSlot];
+                newCounts[slot] = counts[oldSlot];
+                newSizes[slot] = sizes[oldSlot];
+                newOrder[i] = slot;
+            }
+            keys = newKeys;
+            counts = newCounts;
+            sizes = newSizes;
+            used = newUsed;
+            order = newOrder;
+        }
+    }
+}
@@ -54,9 +54,9 @@ public class HprofReader extends Reader /* imports */ implements ArrayTypeCodes
             " PROFILE 1.0.2\0",
     };
 
-    private final static int VERSION_JDK12BETA3 = 0;
-    private final static int VERSION_JDK12BETA4 = 1;
-    private final static int VERSION_JDK6       = 2;
+    final static int VERSION_JDK12BETA3 = 0;
+    final static int VERSION_JDK12BETA4 = 1;
+    final static int VERSION_JDK6       = 2;
     // These version numbers are indices into VERSIONS.  The instance data
     // member version is set to one of these, and it drives decisions when
     // reading the file.
@@ -115,7 +115,7 @@ public class HprofReader extends Reader /* imports */ implements ArrayTypeCodes
     static final int HPROF_HEAP_DUMP_SEGMENT     = 0x1c;
     static final int HPROF_HEAP_DUMP_END         = 0x2c;
 
-    private final static int T_CLASS = 2;
+    final static int T_CLASS = 2;
 
     private int version;        // The version of .hprof being read
 
@@ -358,6 +358,12 @@ public class HprofReader extends Reader /* imports */ implements ArrayTypeCodes
     }
 
     private int readVersionHeader() throws IOException {
+        int result = readVersionHeader(in);
+        currPos += VERSIONS[result].length();
+        return result;
+    }
+
+    static int readVersionHeader(DataInputStream in) throws IOException {
         int candidatesLeft = VERSIONS.length;
         boolean[] matched = new boolean[VERSIONS.length];
         for (int i = 0; i < candidatesLeft; i++) {
@@ -367,7 +373,6 @@ public class HprofReader extends Reader /* imports */ implements ArrayTypeCodes
         int pos = 0;
         while (candidatesLeft > 0) {
             char c = (char) in.readByte();
-            currPos++;
             for (int i = 0; i < VERSIONS.length; i++) {
                 if (matched[i]) {
                     if (c != VERSIONS[i].charAt(pos)) {   // Not matched
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.vm.heap.analysis.hat.hprof.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Enumeration;
+import java.util.NoSuchElementException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class HeapObjectIndexTest {
+
+    private HeapObjectIndex index;
+
+    @Before
+    public void setUp() {
+        index = new HeapObjectIndex();
+    }
+
+    @Test
+    public void testEmptyIndex() {
+        assertEquals(0, index.size());
+        assertNull(index.get(0x1000L));
+        assertEquals(HeapObjectIndex.NOT_FOUND, index.positionOf(0x1000L));
+        assertFalse(index.elements().hasMoreElements());
+    }
+
+    @Test
+    public void testPutAndGet() {
+        JavaHeapObject first = newObject();
+        JavaHeapObject second = newObject();
+        index.put(0x1000L, first);
+        index.put(0x1008L, second);
+
+        assertEquals(2, index.size());
+        assertSame(first, index.get(0x1000L));
+        assertSame(second, index.get(0x1008L));
+        assertEquals(0, index.positionOf(0x1000L));
+        assertEquals(1, index.positionOf(0x1008L));
+        assertSame(second, index.getAt(1));
+    }
+
+    @Test
+    public void testAbsentKeys() {
+        index.put(0x1000L, newObject());
+
+        assertNull(index.get(0x1008L));
+        assertEquals(HeapObjectIndex.NOT_FOUND, index.positionOf(0x1008L));
+        assertNull(index.get(0L));
+        assertEquals(HeapObjectIndex.NOT_FOUND, index.positionOf(0L));
+    }
+
+    @Test
+    public void testZeroAndNegativeIds() {
+        JavaHeapObject zero = newObject();
+        JavaHeapObject minusOne = newObject();
+        JavaHeapObject min = newObject();
+        index.put(0L, zero);
+        index.put(-1L, minusOne);
+        index.put(Long.MIN_VALUE, min);
+
+        assertEquals(3, index.size());
+        assertSame(zero, index.get(0L));
+        assertSame(minusOne, index.get(-1L));
+        assertSame(min, index.get(Long.MIN_VALUE));
+        assertEquals(0, index.positionOf(0L));
+        assertEquals(1, index.positionOf(-1L));
+        assertEquals(2, index.positionOf(Long.MIN_VALUE));
+        assertNull(index.get(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testPutReplacesInPlace() {
+        JavaHeapObject original = newObject();
+        JavaHeapObject replacement = newObject();
+        index.put(0x1000L, original);
+        index.put(0x1008L, newObject());
+        index.put(0x1000L, replacement);
+
+        assertEquals(2, index.size());
+        assertSame(replacement, index.get(0x1000L));
+        assertEquals(0, index.positionOf(0x1000L));
+    }
+
+    @Test
+    public void testCollidingIds() {
+        long[] ids = findCollidingIds(1024, 4);
+        JavaHeapObject[] objects = new JavaHeapObject[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            objects[i] = newObject();
+            index.put(ids[i], objects[i]);
+        }
+
+        assertEquals(ids.length, index.size());
+        for (int i = 0; i < ids.length; i++) {
+            assertSame(objects[i], index.get(ids[i]));
+            assertEquals(i, index.positionOf(ids[i]));
+        }
+        // an absent id in the same bucket has to probe past all of them
+        long absent = findCollidingIds(1024, 5)[4];
+        assertNull(index.get(absent));
+        assertEquals(HeapObjectIndex.NOT_FOUND, index.positionOf(absent));
+    }
+
+    @Test
+    public void testResizeKeepsPositionsAndOrder() {
+        int count = 5000;
+        JavaHeapObject[] objects = new JavaHeapObject[count];
+        for (int i = 0; i < count; i++) {
+            objects[i] = newObject();
+            index.put(idOf(i), objects[i]);
+        }
+
+        assertEquals(count, index.size());
+        for (int i = 0; i < count; i++) {
+            assertSame(objects[i], index.get(idOf(i)));
+            assertEquals(i, index.positionOf(idOf(i)));
+            assertSame(objects[i], index.getAt(i));
+        }
+        assertNull(index.get(idOf(count)));
+
+        Enumeration<JavaHeapObject> elements = index.elements();
+        for (int i = 0; i < count; i++) {
+            assertTrue(elements.hasMoreElements());
+            assertSame(objects[i], elements.nextElement());
+        }
+        assertFalse(elements.hasMoreElements());
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void testElementsPastEnd() {
+        index.put(0x1000L, newObject());
+        Enumeration<JavaHeapObject> elements = index.elements();
+        elements.nextElement();
+        elements.nextElement();
+    }
+
+    @Test
+    public void testPutAll() {
+        JavaHeapObject shared = newObject();
+        JavaHeapObject replaced = newObject();
+        JavaHeapObject added = newObject();
+        index.put(0x1000L, replaced);
+
+        HeapObjectIndex other = new HeapObjectIndex();
+        other.put(0x1000L, shared);
+        other.put(0x1008L, added);
+        index.putAll(other);
+
+        assertEquals(2, index.size());
+        assertSame(shared, index.get(0x1000L));
+        assertEquals(0, index.positionOf(0x1000L));
+        assertSame(added, index.get(0x1008L));
+        assertEquals(1, index.positionOf(0x1008L));
+    }
+
+    @Test
+    public void testClear() {
+        for (int i = 0; i < 2000; i++) {
+            index.put(idOf(i), newObject());
+        }
+        index.clear();
+
+        assertEquals(0, index.size());
+        assertNull(index.get(idOf(0)));
+        assertFalse(index.elements().hasMoreElements());
+
+        JavaHeapObject obj = newObject();
+        index.put(idOf(1), obj);
+        assertEquals(0, index.positionOf(idOf(1)));
+    }
+
+    private static long idOf(int i) {
+        // object ids are aligned addresses
+        return 0x7f0000000000L + i * 8L;
+    }
+
+    private static long[] findCollidingIds(int tableSize, int count) {
+        long[] ids = new long[count];
+        int bucket = HeapObjectIndex.hash(idOf(0)) & (tableSize - 1);
+        int found = 0;
+        for (int i = 0; found < count; i++) {
+            if ((HeapObjectIndex.hash(idOf(i)) & (tableSize - 1)) == bucket) {
+                ids[found++] = idOf(i);
+            }
+        }
+        return ids;
+    }
+
+    private static JavaHeapObject newObject() {
+        return new JavaObject(0L, 0L);
+    }
+}
@@ -77,6 +77,14 @@ public class VmIoBackend extends VmListenerBackend {
         return new VmIoBackendListener(vmIoStatDAO, builder, vmId, pid);
     }
 
+    @Override
+    public void vmStatusChanged(Status newStatus, String vmId, int pid) {
+        super.vmStatusChanged(newStatus, vmId, pid);
+        if (Status.VM_STOPPED.equals(newStatus)) {
+            builder.release(pid);
+        }
+    }
+
     private static class VmIoBackendListener implements VmUpdateListener {
         private VmIoStatDAO vmIoStatDAO;
         private VmIoStatBuilder builder;
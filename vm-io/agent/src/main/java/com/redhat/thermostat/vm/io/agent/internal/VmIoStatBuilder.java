@@ -40,4 +40,10 @@ import com.redhat.thermostat.vm.io.common.VmIoStat;
 
 public interface VmIoStatBuilder {
     VmIoStat build(String vmId, Integer pid);
+
+    /**
+     * Drops any per-process state, such as open handles, kept for
+     * {@code pid}. Called once the vm has stopped.
+     */
+    void release(int pid);
 }
@@ -38,6 +38,9 @@ package com.redhat.thermostat.vm.io.agent.internal;
 
 import com.redhat.thermostat.common.Clock;
 import com.redhat.thermostat.common.portability.PortableVmIoStat;
+import com.redhat.thermostat.common.portability.linux.ProcReader;
+import com.redhat.thermostat.common.portability.linux.ProcReader.PidIo;
+import com.redhat.thermostat.shared.config.OS;
 import com.redhat.thermostat.storage.core.WriterID;
 import com.redhat.thermostat.vm.io.common.VmIoStat;
 
@@ -45,16 +48,38 @@ public class VmIoStatBuilderImpl implements VmIoStatBuilder {
 
     private final Clock clock;
     private final String writerId;
+    // on linux, /proc/$PID/io is read directly into a reused holder
+    private final ProcReader procReader;
+    private final PidIo io = new PidIo();
 
     VmIoStatBuilderImpl(Clock clock, WriterID writerId) {
+        this(clock, writerId, OS.IS_LINUX ? new ProcReader() : null);
+    }
+
+    VmIoStatBuilderImpl(Clock clock, WriterID writerId, ProcReader procReader) {
         this.clock = clock;
         this.writerId = writerId.getWriterID();
+        this.procReader = procReader;
     }
 
     public synchronized VmIoStat build(String vmId, Integer pid) {
 
+        if (procReader != null) {
+            if (!procReader.readIo(pid, io)) {
+                return null;
+            }
+            return new VmIoStat(writerId, vmId, clock.getRealTimeMillis(), io.getCharactersRead(), io.getCharactersWritten(), io.getReadSyscalls(), io.getWriteSyscalls());
+        }
+
         PortableVmIoStat data = PortableVmIoStat.build(clock, pid);
         return (data != null) ? new VmIoStat(writerId, vmId, data.getTimeStamp(), data.getCharactersRead(), data.getCharactersWritten(), data.getReadSyscalls(), data.getWriteSyscalls()) : null;
     }
 
+    @Override
+    public synchronized void release(int pid) {
+        if (procReader != null) {
+            procReader.release(pid);
+        }
+    }
+
 }
@@ -47,6 +47,7 @@ import static org.mockito.Mockito.when;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.redhat.thermostat.agent.VmStatusListener.Status;
 import com.redhat.thermostat.agent.VmStatusListenerRegistrar;
 import com.redhat.thermostat.common.Ordered;
 import com.redhat.thermostat.common.Version;
@@ -112,6 +113,14 @@ public class VmIoBackendTest {
         assertFalse(backend.isActive());
     }
 
+    @Test
+    public void testStoppedVmIsReleased() {
+        backend.activate();
+        backend.vmStatusChanged(Status.VM_STOPPED, "vmId", 42);
+
+        verify(ioStatBuilder).release(42);
+    }
+
     @Test
     public void testOrderValue() {
         int orderValue = backend.getOrderValue();
@@ -37,6 +37,7 @@
 package com.redhat.thermostat.vm.io.agent.internal;
 
 import com.redhat.thermostat.common.Clock;
+import com.redhat.thermostat.common.portability.linux.ProcReader;
 import com.redhat.thermostat.storage.core.WriterID;
 import com.redhat.thermostat.vm.io.common.VmIoStat;
 import org.junit.Assume;
@@ -45,6 +46,7 @@ import org.junit.Test;
 
 import static org.junit.Assert.assertNull;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 
 public class VmIoStatBuilderTest {
 
@@ -63,5 +65,14 @@ public class VmIoStatBuilderTest {
         assertNull(result);
     }
 
+    @Test
+    public void testReleaseClosesProcHandle() {
+        Clock clock = mock(Clock.class);
+        ProcReader procReader = mock(ProcReader.class);
+        VmIoStatBuilder builder = new VmIoStatBuilderImpl(clock, writerID, procReader);
+        builder.release(42);
+        verify(procReader).release(42);
+    }
+
 }
 
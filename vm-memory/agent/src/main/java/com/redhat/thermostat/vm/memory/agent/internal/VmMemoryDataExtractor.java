@@ -36,6 +36,8 @@
 
 package com.redhat.thermostat.vm.memory.agent.internal;
 
+import com.redhat.thermostat.backend.LongCounterHandle;
+import com.redhat.thermostat.backend.LongCounterHandles;
 import com.redhat.thermostat.backend.VmUpdate;
 import com.redhat.thermostat.backend.VmUpdateException;
 import com.redhat.thermostat.vm.memory.common.model.VmMemoryStat.Generation;
@@ -49,146 +51,266 @@ import com.redhat.thermostat.vm.memory.common.model.VmMemoryStat.Generation;
  * provides is merely an abstraction over this (possibly always up-to-date)
  * ByteBuffer. So the data this class extracts is as current as possible, and
  * does not correspond to when the jvmstat update events fired.
+ * <p>
+ * The counters are resolved into {@link LongCounterHandle}s on first use.
+ * The layout of generations and spaces doesn't change over the lifetime of a
+ * vm, so an extractor should be kept for all updates of the same vm.
  */
 public class VmMemoryDataExtractor {
 
-    /*
-     * Note, there may be a performance issue to consider here. We have a lot of
-     * string constants. When we start adding some of the more heavyweight
-     * features, and running into CPU issues this may need to be reconsidered in
-     * order to avoid the String pool overhead. See also:
-     * http://docs.oracle.com/javase/6/docs/api/java/lang/String.html#intern()
-     */
+    // Indexes into FIXED_COUNTERS
+    private static final int METASPACE_MAX_CAPACITY = 0;
+    private static final int METASPACE_MIN_CAPACITY = 1;
+    private static final int METASPACE_CAPACITY = 2;
+    private static final int METASPACE_USED = 3;
+    // See https://blogs.oracle.com/jonthecollector/entry/the_real_thing
+    private static final int TLAB_ALLOC_THREADS = 4;
+    private static final int TLAB_ALLOC = 5;
+    private static final int TLAB_FILLS = 6;
+    private static final int TLAB_MAX_FILLS = 7;
+    private static final int TLAB_SLOW_ALLOC = 8;
+    private static final int TLAB_MAX_SLOW_ALLOC = 9;
+    private static final int TLAB_GC_WASTE = 10;
+    private static final int TLAB_MAX_GC_WASTE = 11;
+    private static final int TLAB_SLOW_WASTE = 12;
+    private static final int TLAB_MAX_SLOW_WASTE = 13;
+    private static final int TLAB_FAST_WASTE = 14;
+    private static final int TLAB_MAX_FAST_WASTE = 15;
+
+    private static final String[] FIXED_COUNTERS = {
+        "sun.gc.metaspace.maxCapacity",
+        "sun.gc.metaspace.minCapacity",
+        "sun.gc.metaspace.capacity",
+        "sun.gc.metaspace.used",
+        "sun.gc.tlab.allocThreads",
+        "sun.gc.tlab.alloc",
+        "sun.gc.tlab.fills",
+        "sun.gc.tlab.maxFills",
+        "sun.gc.tlab.slowAlloc",
+        "sun.gc.tlab.maxSlowAlloc",
+        "sun.gc.tlab.gcWaste",
+        "sun.gc.tlab.maxGcWaste",
+        "sun.gc.tlab.slowWaste",
+        "sun.gc.tlab.maxSlowWaste",
+        "sun.gc.tlab.fastWaste",
+        "sun.gc.tlab.maxFastWaste",
+    };
 
     private final VmUpdate update;
 
+    private boolean resolved;
+    private LongCounterHandle[] fixedCounters;
+    private Long totalGenerations;
+    private GenerationCounters[] generations;
+
     public VmMemoryDataExtractor(VmUpdate update) {
         this.update = update;
     }
-    
+
+    private void resolveCounters() throws VmUpdateException {
+        if (resolved) {
+            return;
+        }
+        LongCounterHandle[] fixed = new LongCounterHandle[FIXED_COUNTERS.length];
+        for (int i = 0; i < FIXED_COUNTERS.length; i++) {
+            fixed[i] = LongCounterHandles.resolve(update, FIXED_COUNTERS[i]);
+        }
+        LongCounterHandle total = LongCounterHandles.resolve(update, "sun.gc.policy.generations");
+        int count = total != null ? (int) total.getValue() : 0;
+        GenerationCounters[] gens = new GenerationCounters[count];
+        for (int i = 0; i < count; i++) {
+            gens[i] = new GenerationCounters(update, i);
+        }
+        fixedCounters = fixed;
+        totalGenerations = total != null ? Long.valueOf(count) : null;
+        generations = gens;
+        resolved = true;
+    }
+
+    private GenerationCounters getGeneration(int generation) throws VmUpdateException {
+        resolveCounters();
+        return generation < generations.length ? generations[generation] : null;
+    }
+
+    private SpaceCounters getSpace(int generation, int space) throws VmUpdateException {
+        GenerationCounters gen = getGeneration(generation);
+        if (gen == null || space >= gen.spaces.length) {
+            return null;
+        }
+        return gen.spaces[space];
+    }
+
     public Long getTotalGcGenerations() throws VmUpdateException {
-        return update.getPerformanceCounterLong("sun.gc.policy.generations");
+        resolveCounters();
+        return totalGenerations;
     }
 
-    public String getGenerationName(long generation) throws VmUpdateException {
-        return update.getPerformanceCounterString("sun.gc.generation." + generation + ".name");
+    public String getGenerationName(int generation) throws VmUpdateException {
+        GenerationCounters gen = getGeneration(generation);
+        return gen != null ? gen.name : null;
     }
 
-    public Long getGenerationCapacity(long generation) throws VmUpdateException {
-        return update.getPerformanceCounterLong("sun.gc.generation." + generation + ".capacity");
+    public LongCounterHandle getGenerationCapacity(int generation) throws VmUpdateException {
+        GenerationCounters gen = getGeneration(generation);
+        return gen != null ? gen.capacity : null;
     }
 
-    public Long getGenerationMaxCapacity(long generation) throws VmUpdateException {
-        return update.getPerformanceCounterLong("sun.gc.generation." + generation + ".maxCapacity");
+    public LongCounterHandle getGenerationMaxCapacity(int generation) throws VmUpdateException {
+        GenerationCounters gen = getGeneration(generation);
+        return gen != null ? gen.maxCapacity : null;
     }
 
-    public String getGenerationCollector(long generation) throws VmUpdateException {
-        // this is just re-implementing getCollectorName()
-        // TODO check generation number and collector number are always associated
-        String collector = update.getPerformanceCounterString("sun.gc.collector." + generation + ".name");
-        if (collector == null) {
-            collector = Generation.COLLECTOR_NONE;
-        }
-        return collector;
+    public String getGenerationCollector(int generation) throws VmUpdateException {
+        GenerationCounters gen = getGeneration(generation);
+        return gen != null ? gen.collector : null;
     }
 
-    public Long getTotalSpaces(long generation) throws VmUpdateException {
-        return update.getPerformanceCounterLong("sun.gc.generation." + generation + ".spaces");
+    public Long getTotalSpaces(int generation) throws VmUpdateException {
+        GenerationCounters gen = getGeneration(generation);
+        return gen != null ? gen.totalSpaces : null;
     }
 
-    public String getSpaceName(long generation, long space) throws VmUpdateException {
-        return update.getPerformanceCounterString("sun.gc.generation." + generation + ".space." + space + ".name");
+    public String getSpaceName(int generation, int space) throws VmUpdateException {
+        SpaceCounters s = getSpace(generation, space);
+        return s != null ? s.name : null;
     }
 
-    public Long getSpaceCapacity(long generation, long space) throws VmUpdateException {
-        return update.getPerformanceCounterLong("sun.gc.generation." + generation + ".space." + space + ".capacity");
+    public LongCounterHandle getSpaceCapacity(int generation, int space) throws VmUpdateException {
+        SpaceCounters s = getSpace(generation, space);
+        return s != null ? s.capacity : null;
     }
 
-    public Long getSpaceMaxCapacity(long generation, long space) throws VmUpdateException {
-        return update.getPerformanceCounterLong("sun.gc.generation." + generation + ".space." + space + ".maxCapacity");
+    public LongCounterHandle getSpaceMaxCapacity(int generation, int space) throws VmUpdateException {
+        SpaceCounters s = getSpace(generation, space);
+        return s != null ? s.maxCapacity : null;
     }
 
-    public Long getSpaceUsed(long generation, long space) throws VmUpdateException {
-        return update.getPerformanceCounterLong("sun.gc.generation." + generation + ".space." + space + ".used");
+    public LongCounterHandle getSpaceUsed(int generation, int space) throws VmUpdateException {
+        SpaceCounters s = getSpace(generation, space);
+        return s != null ? s.used : null;
     }
 
     public long getMetaspaceMaxCapacity(long defaultValue) {
-        return getLongValueOrDefault("sun.gc.metaspace.maxCapacity", defaultValue);
+        return getLongValueOrDefault(METASPACE_MAX_CAPACITY, defaultValue);
     }
 
     public long getMetaspaceMinCapacity(long defaultValue) {
-        return getLongValueOrDefault("sun.gc.metaspace.minCapacity", defaultValue);
+        return getLongValueOrDefault(METASPACE_MIN_CAPACITY, defaultValue);
     }
 
     public long getMetaspaceCapacity(long defaultValue) {
-        return getLongValueOrDefault("sun.gc.metaspace.capacity", defaultValue);
+        return getLongValueOrDefault(METASPACE_CAPACITY, defaultValue);
     }
 
     public long getMetaspaceUsed(long defaultValue) {
-        return getLongValueOrDefault("sun.gc.metaspace.used", defaultValue);
+        return getLongValueOrDefault(METASPACE_USED, defaultValue);
     }
 
-    // See https://blogs.oracle.com/jonthecollector/entry/the_real_thing
-
     public long getTlabTotalAllocatingThreads(long defaultValue) {
-        return getLongValueOrDefault("sun.gc.tlab.allocThreads", defaultValue);
+        return getLongValueOrDefault(TLAB_ALLOC_THREADS, defaultValue);
     }
 
     public long getTlabTotalAllocations(long defaultValue) {
-        return getLongValueOrDefault("sun.gc.tlab.alloc", defaultValue);
+        return getLongValueOrDefault(TLAB_ALLOC, defaultValue);
     }
 
     public long getTlabTotalRefills(long defaultValue) {
-        return getLongValueOrDefault("sun.gc.tlab.fills", defaultValue);
+        return getLongValueOrDefault(TLAB_FILLS, defaultValue);
     }
 
     public long getTlabMaxRefills(long defaultValue) {
-        return getLongValueOrDefault("sun.gc.tlab.maxFills", defaultValue);
+        return getLongValueOrDefault(TLAB_MAX_FILLS, defaultValue);
     }
 
     public long getTlabTotalSlowAllocs(long defaultValue) {
-        return getLongValueOrDefault("sun.gc.tlab.slowAlloc", defaultValue);
+        return getLongValueOrDefault(TLAB_SLOW_ALLOC, defaultValue);
     }
 
     public long getTlabMaxSlowAllocs(long defaultValue) {
-        return getLongValueOrDefault("sun.gc.tlab.maxSlowAlloc", defaultValue);
+        return getLongValueOrDefault(TLAB_MAX_SLOW_ALLOC, defaultValue);
     }
 
     public long getTlabTotalGcWaste(long defaultValue) {
-        return getLongValueOrDefault("sun.gc.tlab.gcWaste", defaultValue);
+        return getLongValueOrDefault(TLAB_GC_WASTE, defaultValue);
     }
 
     public long getTlabMaxGcWaste(long defaultValue) {
-        return getLongValueOrDefault("sun.gc.tlab.maxGcWaste", defaultValue);
+        return getLongValueOrDefault(TLAB_MAX_GC_WASTE, defaultValue);
     }
 
     public long getTlabTotalSlowWaste(long defaultValue) {
-        return getLongValueOrDefault("sun.gc.tlab.slowWaste", defaultValue);
+        return getLongValueOrDefault(TLAB_SLOW_WASTE, defaultValue);
     }
 
     public long getTlabMaxSlowWaste(long defaultValue) {
-        return getLongValueOrDefault("sun.gc.tlab.maxSlowWaste", defaultValue);
+        return getLongValueOrDefault(TLAB_MAX_SLOW_WASTE, defaultValue);
     }
 
     public long getTlabTotalFastWaste(long defaultValue) {
-        return getLongValueOrDefault("sun.gc.tlab.fastWaste", defaultValue);
+        return getLongValueOrDefault(TLAB_FAST_WASTE, defaultValue);
     }
 
     public long getTlabMaxFastWaste(long defaultValue) {
-        return getLongValueOrDefault("sun.gc.tlab.maxFastWaste", defaultValue);
+        return getLongValueOrDefault(TLAB_MAX_FAST_WASTE, defaultValue);
     }
 
-    /** package private for testing */
-    long getLongValueOrDefault(String name, long defaultValue) {
+    private long getLongValueOrDefault(int counter, long defaultValue) {
         try {
-            Long value = update.getPerformanceCounterLong(name);
-            if (value == null) {
-                return defaultValue;
-            }
-            return value.longValue();
+            resolveCounters();
         } catch (VmUpdateException e) {
             return defaultValue;
         }
+        LongCounterHandle handle = fixedCounters[counter];
+        if (handle == null) {
+            return defaultValue;
+        }
+        return handle.getValue();
+    }
+
+    private static class GenerationCounters {
+
+        private final String name;
+        private final LongCounterHandle capacity;
+        private final LongCounterHandle maxCapacity;
+        private final String collector;
+        private final Long totalSpaces;
+        private final SpaceCounters[] spaces;
+
+        private GenerationCounters(VmUpdate update, int generation) throws VmUpdateException {
+            String prefix = "sun.gc.generation." + generation;
+            name = update.getPerformanceCounterString(prefix + ".name");
+            capacity = LongCounterHandles.resolve(update, prefix + ".capacity");
+            maxCapacity = LongCounterHandles.resolve(update, prefix + ".maxCapacity");
+            // this is just re-implementing getCollectorName()
+            // TODO check generation number and collector number are always associated
+            String collectorName = update.getPerformanceCounterString("sun.gc.collector." + generation + ".name");
+            collector = collectorName != null ? collectorName : Generation.COLLECTOR_NONE;
+
+            LongCounterHandle total = LongCounterHandles.resolve(update, prefix + ".spaces");
+            int count = total != null ? (int) total.getValue() : 0;
+            spaces = new SpaceCounters[count];
+            for (int i = 0; i < count; i++) {
+                spaces[i] = new SpaceCounters(update, prefix + ".space." + i);
+            }
+            totalSpaces = total != null ? Long.valueOf(count) : null;
+        }
+
+    }
+
+    private static class SpaceCounters {
+
+        private final String name;
+        private final LongCounterHandle capacity;
+        private final LongCounterHandle maxCapacity;
+        private final LongCounterHandle used;
+
+        private SpaceCounters(VmUpdate update, String prefix) throws VmUpdateException {
+            name = update.getPerformanceCounterString(prefix + ".name");
+            capacity = LongCounterHandles.resolve(update, prefix + ".capacity");
+            maxCapacity = LongCounterHandles.resolve(update, prefix + ".maxCapacity");
+            used = LongCounterHandles.resolve(update, prefix + ".used");
+        }
+
     }
 
 }
@@ -41,6 +41,8 @@ import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.redhat.thermostat.backend.LongCounterHandle;
+import com.redhat.thermostat.backend.SampleChangeFilter;
 import com.redhat.thermostat.backend.VmUpdate;
 import com.redhat.thermostat.backend.VmUpdateException;
 import com.redhat.thermostat.backend.VmUpdateListener;
@@ -63,7 +65,10 @@ public class VmMemoryVmListener implements VmUpdateListener {
     private final VmTlabStatDAO tlabDAO;
     private final String writerId;
     private final Clock clock;
+    private final SampleChangeFilter<String> memoryChangeFilter;
+    private final SampleChangeFilter<String> tlabChangeFilter;
     
+    private VmMemoryDataExtractor extractor;
     private boolean error;
 
     public VmMemoryVmListener(String writerId, VmMemoryStatDAO vmMemoryStatDao, VmTlabStatDAO vmTlabStatDao, String vmId) {
@@ -71,6 +76,15 @@ public class VmMemoryVmListener implements VmUpdateListener {
     }
 
     public VmMemoryVmListener(String writerId, VmMemoryStatDAO vmMemoryStatDao, VmTlabStatDAO vmTlabStatDao, Clock clock, String vmId) {
+        this(writerId, vmMemoryStatDao, vmTlabStatDao, clock, vmId,
+                SampleChangeFilter.<String>forCategory(VmMemoryStatDAO.vmMemoryStatsCategory),
+                SampleChangeFilter.<String>forCategory(VmTlabStatDAO.vmTlabStatsCategory));
+    }
+
+    VmMemoryVmListener(String writerId, VmMemoryStatDAO vmMemoryStatDao, VmTlabStatDAO vmTlabStatDao, Clock clock, String vmId,
+            SampleChangeFilter<String> memoryChangeFilter, SampleChangeFilter<String> tlabChangeFilter) {
+        this.memoryChangeFilter = memoryChangeFilter;
+        this.tlabChangeFilter = tlabChangeFilter;
         this.memDAO = vmMemoryStatDao;
         this.tlabDAO = vmTlabStatDao;
         this.clock = clock;
@@ -80,7 +94,11 @@ public class VmMemoryVmListener implements VmUpdateListener {
 
     @Override
     public void countersUpdated(VmUpdate update) {
-        VmMemoryDataExtractor extractor = new VmMemoryDataExtractor(update);
+        // the same update is passed for every change of the vm, so the
+        // counters only need to be resolved once
+        if (extractor == null) {
+            extractor = new VmMemoryDataExtractor(update);
+        }
         recordMemoryStat(extractor);
         recordTlabStat(extractor);
     }
@@ -122,7 +140,9 @@ public class VmMemoryVmListener implements VmUpdateListener {
                 VmMemoryStat stat = new VmMemoryStat(writerId, timestamp, vmId, 
                         generations.toArray(new Generation[generations.size()]),
                         metaspaceMaxCapacity, metaspaceMinCapacity, metaspaceCapacity, metaspaceUsed);
-                memDAO.putVmMemoryStat(stat);
+                if (addValues(memoryChangeFilter.sample(vmId, timestamp), stat).shouldWrite()) {
+                    memDAO.putVmMemoryStat(stat);
+                }
             }
             else {
                 logWarningOnce("Unable to determine number of generations for VM " + vmId);
@@ -132,6 +152,20 @@ public class VmMemoryVmListener implements VmUpdateListener {
         }
     }
 
+    private static SampleChangeFilter<String>.Sample addValues(SampleChangeFilter<String>.Sample sample, VmMemoryStat stat) {
+        sample.add(stat.getMetaspaceMaxCapacity())
+                .add(stat.getMetaspaceMinCapacity())
+                .add(stat.getMetaspaceCapacity())
+                .add(stat.getMetaspaceUsed());
+        for (Generation g : stat.getGenerations()) {
+            sample.add(g.getCapacity()).add(g.getMaxCapacity());
+            for (Space s : g.getSpaces()) {
+                sample.add(s.getCapacity()).add(s.getMaxCapacity()).add(s.getUsed());
+            }
+        }
+        return sample;
+    }
+
     private Generation createGeneration(VmMemoryDataExtractor extractor,
             int generation) throws VmUpdateException {
         String name = extractor.getGenerationName(generation);
@@ -140,13 +174,13 @@ public class VmMemoryVmListener implements VmUpdateListener {
                     + generation + " for VM " + vmId);
             return null;
         }
-        Long capacity = extractor.getGenerationCapacity(generation);
+        LongCounterHandle capacity = extractor.getGenerationCapacity(generation);
         if (capacity == null) {
             logWarningOnce("Unable to determine capacity of generation " 
                     + generation + " for VM " + vmId);
             return null;
         }
-        Long maxCapacity = extractor.getGenerationMaxCapacity(generation);
+        LongCounterHandle maxCapacity = extractor.getGenerationMaxCapacity(generation);
         if (maxCapacity == null) {
             logWarningOnce("Unable to determine max capacity of generation " 
                     + generation + " for VM " + vmId);
@@ -161,8 +195,8 @@ public class VmMemoryVmListener implements VmUpdateListener {
         
         Generation g = new Generation();
         g.setName(name);
-        g.setCapacity(capacity);
-        g.setMaxCapacity(maxCapacity);
+        g.setCapacity(capacity.getValue());
+        g.setMaxCapacity(maxCapacity.getValue());
         g.setCollector(collector);
         return g;
     }
@@ -175,19 +209,19 @@ public class VmMemoryVmListener implements VmUpdateListener {
                     + " in generation " + generation + " for VM " + vmId);
             return null;
         }
-        Long capacity = extractor.getSpaceCapacity(generation, space);
+        LongCounterHandle capacity = extractor.getSpaceCapacity(generation, space);
         if (capacity == null) {
             logWarningOnce("Unable to determine capacity of space " + space 
                     + " in generation " + generation + " for VM " + vmId);
             return null;
         }
-        Long maxCapacity = extractor.getSpaceMaxCapacity(generation, space);
+        LongCounterHandle maxCapacity = extractor.getSpaceMaxCapacity(generation, space);
         if (maxCapacity == null) {
             logWarningOnce("Unable to determine max capacity of space " + space 
                     + " in generation " + generation + " for VM " + vmId);
             return null;
         }
-        Long used = extractor.getSpaceUsed(generation, space);
+        LongCounterHandle used = extractor.getSpaceUsed(generation, space);
         if (used == null) {
             logWarningOnce("Unable to determine used memory of space " + space 
                     + " in generation " + generation + " for VM " + vmId);
@@ -197,9 +231,9 @@ public class VmMemoryVmListener implements VmUpdateListener {
         Space s = new Space();
         s.setIndex(space);
         s.setName(name);
-        s.setCapacity(capacity);
-        s.setMaxCapacity(maxCapacity);
-        s.setUsed(used);
+        s.setCapacity(capacity.getValue());
+        s.setMaxCapacity(maxCapacity.getValue());
+        s.setUsed(used.getValue());
         return s;
     }
 
@@ -227,7 +261,17 @@ public class VmMemoryVmListener implements VmUpdateListener {
                 slowWaste, maxSlowWaste,
                 fastWaste, maxFastWaste);
 
-        tlabDAO.putStat(stat);
+        boolean write = tlabChangeFilter.sample(vmId, timestamp)
+                .add(allocatingThreads).add(totalAllocations)
+                .add(refills).add(maxRefills)
+                .add(slowAllocs).add(maxSlowAllocs)
+                .add(gcWaste).add(maxGcWaste)
+                .add(slowWaste).add(maxSlowWaste)
+                .add(fastWaste).add(maxFastWaste)
+                .shouldWrite();
+        if (write) {
+            tlabDAO.putStat(stat);
+        }
     }
 
     private void logWarningOnce(String message) {
@@ -37,34 +37,54 @@
 package com.redhat.thermostat.vm.memory.agent.internal;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import org.junit.Before;
 import org.junit.Test;
 
+import com.redhat.thermostat.backend.LongCounterHandle;
+import com.redhat.thermostat.backend.LongCounterHandleResolver;
 import com.redhat.thermostat.backend.VmUpdate;
 import com.redhat.thermostat.backend.VmUpdateException;
 import com.redhat.thermostat.vm.memory.common.model.VmMemoryStat.Generation;
 
 public class VmMemoryDataExtractorTest {
 
-    private VmUpdate update;
+    private interface ResolvingVmUpdate extends VmUpdate, LongCounterHandleResolver {
+    }
+
+    private ResolvingVmUpdate update;
     private VmMemoryDataExtractor extractor;
 
     @Before
-    public void setup() {
-        update = mock(VmUpdate.class);
+    public void setup() throws VmUpdateException {
+        update = mock(ResolvingVmUpdate.class);
+        LongCounterHandle generations = mockHandle(1l);
+        when(update.getLongCounterHandle(eq("sun.gc.policy.generations"))).thenReturn(generations);
+        LongCounterHandle spaces = mockHandle(1l);
+        when(update.getLongCounterHandle(eq("sun.gc.generation.0.spaces"))).thenReturn(spaces);
         extractor = new VmMemoryDataExtractor(update);
     }
+
+    private static LongCounterHandle mockHandle(long value) {
+        LongCounterHandle handle = mock(LongCounterHandle.class);
+        when(handle.getValue()).thenReturn(value);
+        return handle;
+    }
     
     @Test
     public void testTotalGcGenerations() throws VmUpdateException {
         final String MONITOR_NAME = "sun.gc.policy.generations";
         final Long GC_GENERATIONS = 99l;
+        LongCounterHandle handle = mockHandle(GC_GENERATIONS);
 
-        when(update.getPerformanceCounterLong(eq(MONITOR_NAME))).thenReturn(GC_GENERATIONS);
+        when(update.getLongCounterHandle(eq(MONITOR_NAME))).thenReturn(handle);
         
         Long returned = extractor.getTotalGcGenerations();
         assertEquals(GC_GENERATIONS, returned);
@@ -84,23 +104,23 @@ public class VmMemoryDataExtractorTest {
     @Test
     public void testGenerationCapacity() throws VmUpdateException {
         final String MONITOR_NAME = "sun.gc.generation.0.capacity";
-        final Long GENERATION_CAPACITY = 99l;
+        LongCounterHandle handle = mockHandle(99l);
 
-        when(update.getPerformanceCounterLong(eq(MONITOR_NAME))).thenReturn(GENERATION_CAPACITY);
+        when(update.getLongCounterHandle(eq(MONITOR_NAME))).thenReturn(handle);
 
-        Long returned = extractor.getGenerationCapacity(0);
-        assertEquals(GENERATION_CAPACITY, returned);
+        LongCounterHandle returned = extractor.getGenerationCapacity(0);
+        assertEquals(99l, returned.getValue());
     }
 
     @Test
     public void testGenerationMaxCapacity() throws VmUpdateException {
         final String MONITOR_NAME = "sun.gc.generation.0.maxCapacity";
-        final Long GENERATION_MAX_CAPACITY = 99l;
+        LongCounterHandle handle = mockHandle(99l);
 
-        when(update.getPerformanceCounterLong(eq(MONITOR_NAME))).thenReturn(GENERATION_MAX_CAPACITY);
+        when(update.getLongCounterHandle(eq(MONITOR_NAME))).thenReturn(handle);
 
-        Long returned = extractor.getGenerationMaxCapacity(0);
-        assertEquals(GENERATION_MAX_CAPACITY, returned);
+        LongCounterHandle returned = extractor.getGenerationMaxCapacity(0);
+        assertEquals(99l, returned.getValue());
     }
 
     @Test
@@ -128,8 +148,9 @@ public class VmMemoryDataExtractorTest {
     public void testTotalSpaces() throws VmUpdateException {
         final String MONITOR_NAME = "sun.gc.generation.0.spaces";
         final Long TOTAL_SPACES = 99l;
+        LongCounterHandle handle = mockHandle(TOTAL_SPACES);
 
-        when(update.getPerformanceCounterLong(eq(MONITOR_NAME))).thenReturn(TOTAL_SPACES);
+        when(update.getLongCounterHandle(eq(MONITOR_NAME))).thenReturn(handle);
 
         Long returned = extractor.getTotalSpaces(0);
         assertEquals(TOTAL_SPACES, returned);
@@ -150,35 +171,80 @@ public class VmMemoryDataExtractorTest {
     @Test
     public void testSpaceCapacity() throws VmUpdateException {
         final String MONITOR_NAME = "sun.gc.generation.0.space.0.capacity";
-        final Long SPACE_CAPACITY = 99l;
+        LongCounterHandle handle = mockHandle(99l);
 
-        when(update.getPerformanceCounterLong(eq(MONITOR_NAME))).thenReturn(SPACE_CAPACITY);
+        when(update.getLongCounterHandle(eq(MONITOR_NAME))).thenReturn(handle);
 
-        Long returned = extractor.getSpaceCapacity(0,0);
-        assertEquals(SPACE_CAPACITY, returned);
+        LongCounterHandle returned = extractor.getSpaceCapacity(0,0);
+        assertEquals(99l, returned.getValue());
     }
 
     @Test
     public void testSpaceMaxCapacity() throws VmUpdateException {
         final String MONITOR_NAME = "sun.gc.generation.0.space.0.maxCapacity";
-        final Long SPACE_MAX_CAPACITY = 99l;
+        LongCounterHandle handle = mockHandle(99l);
 
-        when(update.getPerformanceCounterLong(eq(MONITOR_NAME))).thenReturn(SPACE_MAX_CAPACITY);
+        when(update.getLongCounterHandle(eq(MONITOR_NAME))).thenReturn(handle);
 
-        Long returned = extractor.getSpaceMaxCapacity(0,0);
-        assertEquals(SPACE_MAX_CAPACITY, returned);
+        LongCounterHandle returned = extractor.getSpaceMaxCapacity(0,0);
+        assertEquals(99l, returned.getValue());
     }
 
     @Test
     public void testSpaceUsed() throws VmUpdateException {
         final String MONITOR_NAME = "sun.gc.generation.0.space.0.used";
-        final Long SPACE_USED = 99l;
+        LongCounterHandle handle = mockHandle(99l);
 
-        when(update.getPerformanceCounterLong(eq(MONITOR_NAME))).thenReturn(SPACE_USED);
+        when(update.getLongCounterHandle(eq(MONITOR_NAME))).thenReturn(handle);
 
-        Long returned = extractor.getSpaceUsed(0,0);
-        assertEquals(SPACE_USED, returned);
+        LongCounterHandle returned = extractor.getSpaceUsed(0,0);
+        assertEquals(99l, returned.getValue());
     }
 
-}
+    @Test
+    public void testNoTotalGcGenerations() throws VmUpdateException {
+        when(update.getLongCounterHandle(eq("sun.gc.policy.generations"))).thenReturn(null);
+
+        assertNull(extractor.getTotalGcGenerations());
+        assertNull(extractor.getGenerationName(0));
+        assertNull(extractor.getSpaceUsed(0, 0));
+    }
+
+    @Test
+    public void testMetaspaceUsed() throws VmUpdateException {
+        final String MONITOR_NAME = "sun.gc.metaspace.used";
+        LongCounterHandle handle = mockHandle(99l);
+
+        when(update.getLongCounterHandle(eq(MONITOR_NAME))).thenReturn(handle);
+
+        assertEquals(99l, extractor.getMetaspaceUsed(-1));
+    }
+
+    @Test
+    public void testMetaspaceUsedDefault() throws VmUpdateException {
+        assertEquals(-1l, extractor.getMetaspaceUsed(-1));
+    }
+
+    @Test
+    public void testMetaspaceUsedDefaultOnError() throws VmUpdateException {
+        when(update.getLongCounterHandle(anyString())).thenThrow(new VmUpdateException());
 
+        assertEquals(-1l, extractor.getMetaspaceUsed(-1));
+    }
+
+    @Test
+    public void testCountersAreResolvedOnce() throws VmUpdateException {
+        extractor.getTotalGcGenerations();
+        extractor.getSpaceUsed(0, 0);
+        extractor.getTlabTotalAllocations(-1);
+        extractor.getSpaceUsed(0, 0);
+        extractor.getGenerationName(0);
+
+        // 16 metaspace and tlab counters, the number of generations, 2 per
+        // generation plus its number of spaces and 3 per space
+        verify(update, times(16 + 1 + 3 + 3)).getLongCounterHandle(anyString());
+        // generation, collector and space names
+        verify(update, times(3)).getPerformanceCounterString(anyString());
+    }
+
+}
@@ -39,6 +39,7 @@ package com.redhat.thermostat.vm.memory.agent.internal;
 import static org.junit.Assert.assertEquals;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.isA;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
@@ -50,6 +51,7 @@ import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 
+import com.redhat.thermostat.backend.LongCounterHandle;
 import com.redhat.thermostat.backend.VmUpdate;
 import com.redhat.thermostat.backend.VmUpdateException;
 import com.redhat.thermostat.vm.memory.common.VmMemoryStatDAO;
@@ -121,6 +123,12 @@ public class VmMemoryVmListenerTest {
         mockTlab();
     }
 
+    private static LongCounterHandle mockHandle(long value) {
+        LongCounterHandle handle = mock(LongCounterHandle.class);
+        when(handle.getValue()).thenReturn(value);
+        return handle;
+    }
+
     private void mockTotalGenerations(long gens) throws VmUpdateException {
         when(extractor.getTotalGcGenerations()).thenReturn(gens);
     }
@@ -130,11 +138,13 @@ public class VmMemoryVmListenerTest {
     }
     
     private void mockGenerationCapacity(int gen) throws VmUpdateException {
-        when(extractor.getGenerationCapacity(gen)).thenReturn(GEN_CAPS[gen]);
+        LongCounterHandle handle = mockHandle(GEN_CAPS[gen]);
+        when(extractor.getGenerationCapacity(gen)).thenReturn(handle);
     }
 
     private void mockGenerationMaxCapacity(int gen) throws VmUpdateException {
-        when(extractor.getGenerationMaxCapacity(gen)).thenReturn(GEN_MAX_CAPS[gen]);
+        LongCounterHandle handle = mockHandle(GEN_MAX_CAPS[gen]);
+        when(extractor.getGenerationMaxCapacity(gen)).thenReturn(handle);
     }
     
     private void mockGenerationGC(int gen) throws VmUpdateException {
@@ -150,15 +160,18 @@ public class VmMemoryVmListenerTest {
     }
     
     private void mockSpaceCapacity(int gen, int space) throws VmUpdateException {
-        when(extractor.getSpaceCapacity(gen, space)).thenReturn(SPACE_CAPS[gen][space]);
+        LongCounterHandle handle = mockHandle(SPACE_CAPS[gen][space]);
+        when(extractor.getSpaceCapacity(gen, space)).thenReturn(handle);
     }
     
     private void mockSpaceMaxCapacity(int gen, int space) throws VmUpdateException {
-        when(extractor.getSpaceMaxCapacity(gen, space)).thenReturn(SPACE_MAX_CAPS[gen][space]);
+        LongCounterHandle handle = mockHandle(SPACE_MAX_CAPS[gen][space]);
+        when(extractor.getSpaceMaxCapacity(gen, space)).thenReturn(handle);
     }
     
     private void mockSpaceUsed(int gen, int space) throws VmUpdateException {
-        when(extractor.getSpaceUsed(gen, space)).thenReturn(SPACE_USED[gen][space]);
+        LongCounterHandle handle = mockHandle(SPACE_USED[gen][space]);
+        when(extractor.getSpaceUsed(gen, space)).thenReturn(handle);
     }
 
     private void mockMetaspace() {
@@ -175,6 +188,8 @@ public class VmMemoryVmListenerTest {
     @Test
     public void testMonitorsUpdated() throws VmUpdateException {
         VmUpdate update = mock(VmUpdate.class);
+        // counters of updates which can't resolve handles are read by name
+        when(update.getPerformanceCounterLong(anyString())).thenReturn(0l);
         vmListener.countersUpdated(update);
 
         verify(vmMemoryStatDAO).putVmMemoryStat(isA(VmMemoryStat.class));
@@ -85,6 +85,8 @@ public class MemoryStatsController implements InformationServiceController<VmRef
 
     private static final Translate<LocaleResources> translate = LocaleResources.createLocalizer();
     private static final Duration defaultDuration = new Duration(10, TimeUnit.MINUTES);
+    /* The number of memory stats to fetch for the whole visible duration */
+    private static final int DISPLAYED_POINTS = 1000;
 
     private final MemoryStatsView view;
     private final VmMemoryStatDAO vmDao;
@@ -122,7 +124,7 @@ public class MemoryStatsController implements InformationServiceController<VmRef
             TimeRangeController.StatsSupplier<VmMemoryStat, VmRef> statsSupplier = new TimeRangeController.StatsSupplier<VmMemoryStat, VmRef>() {
                 @Override
                 public List<VmMemoryStat> getStats(VmRef ref, long since, long to) {
-                    return vmDao.getVmMemoryStats(ref, since, to);
+                    return vmDao.getVmMemoryStats(ref, since, to, getResolution(since, to));
                 }
             };
 
@@ -136,6 +138,16 @@ public class MemoryStatsController implements InformationServiceController<VmRef
             memoryTimeRangeController.update(userDesiredDuration, newAvailableRange, statsSupplier, ref, runnable);
         }
 
+        /*
+         * Incremental updates cover only part of the visible duration, so
+         * ask for a proportional share of the displayed points.
+         */
+        private int getResolution(long since, long to) {
+            long duration = Math.max(1, userDesiredDuration.asMilliseconds());
+            long resolution = (to - since) * DISPLAYED_POINTS / duration;
+            return (int) Math.max(1, Math.min(Integer.MAX_VALUE, resolution));
+        }
+
         private void update(VmMemoryStat memoryStats) {
             Generation[] generations = memoryStats.getGenerations();
             for (Generation generation : generations) {
@@ -39,6 +39,7 @@ package com.redhat.thermostat.vm.memory.client.core.internal;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isA;
@@ -185,7 +186,7 @@ public class MemoryStatsControllerTest {
 
         VmMemoryStatDAO memoryStatDao = mock(VmMemoryStatDAO.class);
 
-        when(memoryStatDao.getVmMemoryStats(any(VmRef.class), anyLong(), anyLong())).thenReturn(vmInfo);
+        when(memoryStatDao.getVmMemoryStats(any(VmRef.class), anyLong(), anyLong(), anyInt())).thenReturn(vmInfo);
 
         when(memoryStatDao.getOldestMemoryStat(any(VmRef.class))).thenReturn(vmInfo.get(0));
         when(memoryStatDao.getNewestMemoryStat(any(VmRef.class))).thenReturn(vmInfo.get(4));
@@ -290,12 +291,12 @@ public class MemoryStatsControllerTest {
         stat.setTimeStamp(DATA_TIMESTAMP);
         stat.setGenerations(new Generation[] { gen });
 
-        when(memoryStatDao.getVmMemoryStats(any(VmRef.class), anyLong(), anyLong())).thenReturn(Arrays.asList(stat));
+        when(memoryStatDao.getVmMemoryStats(any(VmRef.class), anyLong(), anyLong(), anyInt())).thenReturn(Arrays.asList(stat));
         when(memoryStatDao.getNewestMemoryStat(any(VmRef.class))).thenReturn(stat);
 
         timerAction.run();
 
-        verify(memoryStatDao, times(2)).getVmMemoryStats(isA(VmRef.class), timeStampCaptor.capture(), timeStampCaptor.capture());
+        verify(memoryStatDao, times(2)).getVmMemoryStats(isA(VmRef.class), timeStampCaptor.capture(), timeStampCaptor.capture(), anyInt());
 
         List<Long> times = timeStampCaptor.getAllValues();
 
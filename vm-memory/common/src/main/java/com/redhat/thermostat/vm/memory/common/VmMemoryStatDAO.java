@@ -42,6 +42,7 @@ import java.util.List;
 import com.redhat.thermostat.annotations.Service;
 import com.redhat.thermostat.storage.core.AgentId;
 import com.redhat.thermostat.storage.core.Category;
+import com.redhat.thermostat.storage.core.DataRollup;
 import com.redhat.thermostat.storage.core.Key;
 import com.redhat.thermostat.storage.core.VmId;
 import com.redhat.thermostat.storage.core.VmRef;
@@ -61,7 +62,9 @@ public interface VmMemoryStatDAO {
             Arrays.<Key<?>>asList(Key.AGENT_ID, Key.VM_ID, Key.TIMESTAMP,
                     KEY_METASPACE_MAX_CAPACITY, KEY_METASPACE_MIN_CAPACITY, KEY_METASPACE_CAPACITY, KEY_METASPACE_USED,
                     generationsKey),
-            Arrays.<Key<?>>asList(Key.TIMESTAMP));
+            Arrays.<Key<?>>asList(Key.TIMESTAMP),
+            null,
+            DataRollup.of(Key.AGENT_ID, Key.VM_ID));
 
     public VmMemoryStat getNewestMemoryStat(VmRef ref);
 
@@ -74,6 +77,13 @@ public interface VmMemoryStatDAO {
 
     public List<VmMemoryStat> getVmMemoryStats(VmRef vm, long since, long to);
 
+    /**
+     * Like {@link #getVmMemoryStats(VmRef, long, long)}, but downsampled by
+     * storage to about <code>resolution</code> stats, the newest of equally
+     * long stretches of the interval.
+     */
+    public List<VmMemoryStat> getVmMemoryStats(VmRef vm, long since, long to, int resolution);
+
     public void putVmMemoryStat(VmMemoryStat stat);
 
 }
@@ -39,8 +39,11 @@ package com.redhat.thermostat.vm.memory.common.internal;
 import java.util.HashSet;
 import java.util.Set;
 
+import com.redhat.thermostat.storage.core.Category;
+import com.redhat.thermostat.storage.core.DataRollup;
 import com.redhat.thermostat.storage.core.auth.CategoryRegistration;
 import com.redhat.thermostat.vm.memory.common.VmMemoryStatDAO;
+import com.redhat.thermostat.vm.memory.common.model.VmMemoryStat;
 
 /**
  * Registers the category used by this maven module. The web storage
@@ -52,8 +55,12 @@ public class VmMemoryStatCategoryRegistration implements CategoryRegistration {
 
     @Override
     public Set<String> getCategoryNames() {
-        Set<String> categories = new HashSet<>(1);
-        categories.add(VmMemoryStatDAO.vmMemoryStatsCategory.getName());
+        Category<VmMemoryStat> category = VmMemoryStatDAO.vmMemoryStatsCategory;
+        Set<String> categories = new HashSet<>(1 + category.getRollup().getTiers().size());
+        categories.add(category.getName());
+        for (DataRollup.Tier tier : category.getRollup().getTiers()) {
+            categories.add(DataRollup.getTierCategoryName(category.getName(), tier));
+        }
         return categories;
     }
 
@@ -41,6 +41,7 @@ import java.util.logging.Logger;
 
 import com.redhat.thermostat.common.utils.LoggingUtils;
 import com.redhat.thermostat.storage.core.AgentId;
+import com.redhat.thermostat.storage.core.DataRollup;
 import com.redhat.thermostat.storage.core.Key;
 import com.redhat.thermostat.storage.core.PreparedStatement;
 import com.redhat.thermostat.storage.core.Storage;
@@ -49,6 +50,7 @@ import com.redhat.thermostat.storage.core.VmId;
 import com.redhat.thermostat.storage.core.VmLatestPojoListGetter;
 import com.redhat.thermostat.storage.core.VmRef;
 import com.redhat.thermostat.storage.core.VmTimeIntervalPojoListGetter;
+import com.redhat.thermostat.storage.core.WriteOnChange;
 import com.redhat.thermostat.storage.dao.AbstractDao;
 import com.redhat.thermostat.storage.dao.AbstractDaoStatement;
 import com.redhat.thermostat.vm.memory.common.VmMemoryStatDAO;
@@ -84,8 +86,13 @@ class VmMemoryStatDAOImpl extends AbstractDao implements VmMemoryStatDAO {
     VmMemoryStatDAOImpl(Storage storage) {
         this.storage = storage;
         storage.registerCategory(vmMemoryStatsCategory);
+        // read by intervalGetter
+        for (DataRollup.Tier tier : vmMemoryStatsCategory.getRollup().getTiers()) {
+            storage.registerCategory(vmMemoryStatsCategory.getRollupCategory(tier));
+        }
         latestGetter = new VmLatestPojoListGetter<>(storage, vmMemoryStatsCategory);
-        intervalGetter = new VmTimeIntervalPojoListGetter<>(storage, vmMemoryStatsCategory);
+        intervalGetter = new VmTimeIntervalPojoListGetter<>(storage, vmMemoryStatsCategory,
+                WriteOnChange.isEnabled(vmMemoryStatsCategory));
         boundaryGetter = new VmBoundaryPojoGetter<>(storage, vmMemoryStatsCategory);
     }
 
@@ -132,6 +139,12 @@ class VmMemoryStatDAOImpl extends AbstractDao implements VmMemoryStatDAO {
         return intervalGetter.getLatest(ref, since, to);
     }
 
+    @Override
+    public List<VmMemoryStat> getVmMemoryStats(VmRef ref, long since, long to, int resolution) {
+        return intervalGetter.getLatest(new AgentId(ref.getHostRef().getAgentId()), new VmId(ref.getVmId()),
+                since, to, resolution);
+    }
+
     @Override
     protected Logger getLogger() {
         return logger;
@@ -39,6 +39,7 @@ package com.redhat.thermostat.vm.memory.common.internal;
 import java.util.HashSet;
 import java.util.Set;
 
+import com.redhat.thermostat.storage.core.DataRollup;
 import com.redhat.thermostat.storage.core.VmBoundaryPojoGetter;
 import com.redhat.thermostat.storage.core.VmLatestPojoListGetter;
 import com.redhat.thermostat.storage.core.VmTimeIntervalPojoListGetter;
@@ -57,20 +58,32 @@ public class VmMemoryStatDAOImplStatementDescriptorRegistration implements
             VmMemoryStatDAO.vmMemoryStatsCategory.getName());
     static final String rangeDescriptor = String.format(VmTimeIntervalPojoListGetter.VM_INTERVAL_QUERY_FORMAT,
             VmMemoryStatDAO.vmMemoryStatsCategory.getName());
+    static final String bucketedRangeDescriptor = String.format(VmTimeIntervalPojoListGetter.VM_INTERVAL_BUCKETED_QUERY_FORMAT,
+            VmMemoryStatDAO.vmMemoryStatsCategory.getName());
     static final String latestStatDescriptor = String.format(VmBoundaryPojoGetter.DESC_NEWEST_VM_STAT,
             VmMemoryStatDAO.vmMemoryStatsCategory.getName());
     static final String oldestStatDescriptor = String.format(VmBoundaryPojoGetter.DESC_OLDEST_VM_STAT,
             VmMemoryStatDAO.vmMemoryStatsCategory.getName());
+    static final String newestStatUntilDescriptor = String.format(VmBoundaryPojoGetter.DESC_NEWEST_VM_STAT_UNTIL,
+            VmMemoryStatDAO.vmMemoryStatsCategory.getName());
     
     @Override
     public Set<String> getStatementDescriptors() {
-        Set<String> descs = new HashSet<>(5);
+        Set<String> descs = new HashSet<>(10);
         descs.add(latestStatDescriptor);
         descs.add(oldestStatDescriptor);
+        descs.add(newestStatUntilDescriptor);
         descs.add(VmMemoryStatDAOImpl.DESC_ADD_VM_MEMORY_STAT);
 
         descs.add(latestDescriptor);
         descs.add(rangeDescriptor);
+        descs.add(bucketedRangeDescriptor);
+        // downsampled reads of the rollup tiers
+        String name = VmMemoryStatDAO.vmMemoryStatsCategory.getName();
+        for (DataRollup.Tier tier : VmMemoryStatDAO.vmMemoryStatsCategory.getRollup().getTiers()) {
+            descs.add(String.format(VmTimeIntervalPojoListGetter.VM_INTERVAL_BUCKETED_QUERY_FORMAT,
+                    DataRollup.getTierCategoryName(name, tier)));
+        }
 
         return descs;
     }
@@ -49,6 +49,7 @@ import com.redhat.thermostat.storage.core.VmId;
 import com.redhat.thermostat.storage.core.VmLatestPojoListGetter;
 import com.redhat.thermostat.storage.core.VmRef;
 import com.redhat.thermostat.storage.core.VmTimeIntervalPojoListGetter;
+import com.redhat.thermostat.storage.core.WriteOnChange;
 import com.redhat.thermostat.storage.dao.AbstractDao;
 import com.redhat.thermostat.storage.dao.AbstractDaoStatement;
 import com.redhat.thermostat.vm.memory.common.VmTlabStatDAO;
@@ -84,7 +85,8 @@ class VmTlabStatDAOImpl extends AbstractDao implements VmTlabStatDAO {
         this.storage = storage;
         storage.registerCategory(vmTlabStatsCategory);
         latestGetter = new VmLatestPojoListGetter<>(storage, vmTlabStatsCategory);
-        intervalGetter = new VmTimeIntervalPojoListGetter<>(storage, vmTlabStatsCategory);
+        intervalGetter = new VmTimeIntervalPojoListGetter<>(storage, vmTlabStatsCategory,
+                WriteOnChange.isEnabled(vmTlabStatsCategory));
         boundaryGetter = new VmBoundaryPojoGetter<>(storage, vmTlabStatsCategory);
     }
 
@@ -56,12 +56,15 @@ public class VmTlabStatDAOImplStatementDescriptorRegistration implements
             VmTlabStatDAO.vmTlabStatsCategory.getName());
     static final String oldestStatDescriptor = String.format(VmBoundaryPojoGetter.DESC_OLDEST_VM_STAT,
             VmTlabStatDAO.vmTlabStatsCategory.getName());
+    static final String newestStatUntilDescriptor = String.format(VmBoundaryPojoGetter.DESC_NEWEST_VM_STAT_UNTIL,
+            VmTlabStatDAO.vmTlabStatsCategory.getName());
 
     @Override
     public Set<String> getStatementDescriptors() {
-        Set<String> descs = new HashSet<>(5);
+        Set<String> descs = new HashSet<>(6);
         descs.add(latestStatDescriptor);
         descs.add(oldestStatDescriptor);
+        descs.add(newestStatUntilDescriptor);
         descs.add(VmTlabStatDAOImpl.DESC_ADD_VM_TLAB_STAT);
 
         descs.add(latestDescriptor);
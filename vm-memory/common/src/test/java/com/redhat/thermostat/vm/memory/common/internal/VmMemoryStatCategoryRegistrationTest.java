@@ -58,9 +58,12 @@ public class VmMemoryStatCategoryRegistrationTest extends ServiceLoaderTest<Cate
     public void registersAllCategories() {
         VmMemoryStatCategoryRegistration reg = new VmMemoryStatCategoryRegistration();
         Set<String> categories = reg.getCategoryNames();
-        assertEquals(1, categories.size());
+        assertEquals(4, categories.size());
         assertFalse("null descriptor not allowed", categories.contains(null));
         assertTrue(categories.contains(VmMemoryStatDAO.vmMemoryStatsCategory.getName()));
+        assertTrue(categories.contains("vm-memory-stats-rollup-1m"));
+        assertTrue(categories.contains("vm-memory-stats-rollup-10m"));
+        assertTrue(categories.contains("vm-memory-stats-rollup-1h"));
     }
 
 }
@@ -56,7 +56,7 @@ public class VmMemoryStatDAOImplStatementDescriptorRegistrationTest extends Serv
     public void registersAllDescriptors() {
         VmMemoryStatDAOImplStatementDescriptorRegistration reg = new VmMemoryStatDAOImplStatementDescriptorRegistration();
         Set<String> descriptors = reg.getStatementDescriptors();
-        assertEquals(5, descriptors.size());
+        assertEquals(10, descriptors.size());
         assertFalse("null descriptor not allowed", descriptors.contains(null));
     }
 
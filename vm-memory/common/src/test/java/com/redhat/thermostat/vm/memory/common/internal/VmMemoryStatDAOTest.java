@@ -164,6 +164,25 @@ public class VmMemoryStatDAOTest {
         verifyNoMoreInteractions(stmt);
     }
 
+    @Test
+    public void testGetDownsampledStats() throws DescriptorParsingException, StatementExecutionException {
+        VmMemoryStatDAO impl = new VmMemoryStatDAOImpl(storage);
+        impl.getVmMemoryStats(vmRef, 0L, 1000L, 10);
+
+        @SuppressWarnings("rawtypes")
+        ArgumentCaptor<StatementDescriptor> captor = ArgumentCaptor.forClass(StatementDescriptor.class);
+        verify(storage).prepareStatement(captor.capture());
+        assertEquals(VmMemoryStatDAOImplStatementDescriptorRegistration.bucketedRangeDescriptor,
+                captor.getValue().getDescriptor());
+        verify(stmt).setString(0, AGENT_ID);
+        verify(stmt).setString(1, VM_ID);
+        verify(stmt).setLong(2, 0L);
+        verify(stmt).setLong(3, 1000L);
+        verify(stmt).setLong(4, 100L);
+        verify(stmt).executeQuery();
+        verifyNoMoreInteractions(stmt);
+    }
+
     @Test
     public void testGetLatestSince() throws DescriptorParsingException, StatementExecutionException {
         VmMemoryStatDAO impl = new VmMemoryStatDAOImpl(storage);
@@ -0,0 +1,248 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+
+package com.redhat.thermostat.vm.numa.agent.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import com.redhat.thermostat.vm.numa.agent.internal.VmNumaCollector.Category;
+
+/**
+ * Single pass parser of {@code /proc/<pid>/numa_maps} which works on bytes.
+ * It sums the page counts of the {@code N<node>=<pages>} tokens per
+ * {@link Category} into primitive arrays indexed by node id, without creating
+ * a String per line or token.
+ * <p>
+ * Like before, a mapping belongs to the category of its first token which
+ * starts with one of the category tokens. This is the same simple check the
+ * "numastat" command performs.
+ * <p>
+ * Instances reuse their buffer and counters across parses and are not
+ * thread-safe.
+ */
+class NumaMapsParser {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int INITIAL_NODES = 8;
+
+    private static final Category[] CATEGORIES = Category.values();
+    private static final byte[][] CATEGORY_TOKENS = new byte[CATEGORIES.length][];
+    static {
+        for (Category category : CATEGORIES) {
+            CATEGORY_TOKENS[category.ordinal()] = category.getToken().getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    // [category ordinal][node id]
+    private final long[][] pages = new long[CATEGORIES.length][];
+    private boolean[] nodeSeen = new boolean[INITIAL_NODES];
+    // one more than the highest node id seen
+    private int nodeLimit;
+
+    NumaMapsParser() {
+        for (int i = 0; i < pages.length; i++) {
+            pages[i] = new long[INITIAL_NODES];
+        }
+    }
+
+    /**
+     * Parses the complete stream, replacing the counts of the previous parse.
+     */
+    void parse(InputStream in) throws IOException {
+        reset();
+        int length = 0;
+        while (true) {
+            if (length == buffer.length) {
+                // a line longer than the buffer
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            int read = in.read(buffer, length, buffer.length - length);
+            if (read < 0) {
+                break;
+            }
+            length += read;
+            int consumed = parseLines(length);
+            // move the incomplete last line to the front
+            System.arraycopy(buffer, consumed, buffer, 0, length - consumed);
+            length -= consumed;
+        }
+        if (length > 0) {
+            parseLine(0, length);
+        }
+    }
+
+    /**
+     * @return one more than the highest node id seen by the last parse
+     */
+    int getNodeLimit() {
+        return nodeLimit;
+    }
+
+    boolean hasNode(int node) {
+        return node < nodeLimit && nodeSeen[node];
+    }
+
+    long getPages(Category category, int node) {
+        return node < nodeLimit ? pages[category.ordinal()][node] : 0;
+    }
+
+    private void reset() {
+        for (long[] categoryPages : pages) {
+            Arrays.fill(categoryPages, 0, nodeLimit, 0);
+        }
+        Arrays.fill(nodeSeen, 0, nodeLimit, false);
+        nodeLimit = 0;
+    }
+
+    /*
+     * Parses all complete lines in the buffer and returns the offset after
+     * the last one.
+     */
+    private int parseLines(int length) {
+        int lineStart = 0;
+        for (int i = 0; i < length; i++) {
+            if (buffer[i] == '\n') {
+                parseLine(lineStart, i);
+                lineStart = i + 1;
+            }
+        }
+        return lineStart;
+    }
+
+    private void parseLine(int from, int to) {
+        int category = -1;
+        int i = from;
+        while (i < to) {
+            while (i < to && isWhitespace(buffer[i])) {
+                i++;
+            }
+            int tokenStart = i;
+            while (i < to && !isWhitespace(buffer[i])) {
+                i++;
+            }
+            if (tokenStart == i) {
+                break;
+            }
+            if (category < 0) {
+                category = categoryOf(tokenStart, i);
+            }
+            if (buffer[tokenStart] == 'N') {
+                // a node token is itself a PRIVATE token, so category is set
+                countNodePages(tokenStart, i, category);
+            }
+        }
+    }
+
+    private int categoryOf(int tokenStart, int tokenEnd) {
+        for (int c = 0; c < CATEGORY_TOKENS.length; c++) {
+            if (startsWith(tokenStart, tokenEnd, CATEGORY_TOKENS[c])) {
+                return c;
+            }
+        }
+        return -1;
+    }
+
+    private boolean startsWith(int tokenStart, int tokenEnd, byte[] prefix) {
+        if (tokenEnd - tokenStart < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer[tokenStart + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * Counts tokens of the form N<node>=<pages>, ignores any other token
+     * starting with N.
+     */
+    private void countNodePages(int tokenStart, int tokenEnd, int category) {
+        int i = tokenStart + 1;
+        int node = 0;
+        int nodeDigitsStart = i;
+        while (i < tokenEnd && isDigit(buffer[i])) {
+            node = node * 10 + (buffer[i] - '0');
+            i++;
+        }
+        if (i == nodeDigitsStart || i == tokenEnd || buffer[i] != '=') {
+            return;
+        }
+        i++;
+        long count = 0;
+        int countDigitsStart = i;
+        while (i < tokenEnd && isDigit(buffer[i])) {
+            count = count * 10 + (buffer[i] - '0');
+            i++;
+        }
+        if (i == countDigitsStart || i != tokenEnd) {
+            return;
+        }
+
+        ensureNode(node);
+        pages[category][node] += count;
+        nodeSeen[node] = true;
+        nodeLimit = Math.max(nodeLimit, node + 1);
+    }
+
+    private void ensureNode(int node) {
+        if (node < nodeSeen.length) {
+            return;
+        }
+        int capacity = Math.max(node + 1, nodeSeen.length * 2);
+        nodeSeen = Arrays.copyOf(nodeSeen, capacity);
+        for (int i = 0; i < pages.length; i++) {
+            pages[i] = Arrays.copyOf(pages[i], capacity);
+        }
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    // same as \s in a regular expression
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == 0x0B || b == '\f' || b == '\r';
+    }
+
+}
+
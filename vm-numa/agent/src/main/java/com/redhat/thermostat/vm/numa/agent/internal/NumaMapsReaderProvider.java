@@ -36,10 +36,9 @@
 
 package com.redhat.thermostat.vm.numa.agent.internal;
 
-import java.io.BufferedReader;
-import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 
 interface NumaMapsReaderProvider {
-    BufferedReader createReader(int forPid) throws IOException;
+    InputStream createInputStream(int forPid) throws IOException;
 }
@@ -44,14 +44,10 @@ import com.redhat.thermostat.shared.config.OS;
 import com.redhat.thermostat.vm.numa.common.VmNumaNodeStat;
 import com.redhat.thermostat.vm.numa.common.VmNumaStat;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.util.Map;
-import java.util.TreeMap;
+import java.io.InputStream;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 // the "parsing" performed by this class is very rudimentary, but follows the same simple checks performed by the
 // "numastat" command
@@ -62,13 +58,11 @@ public class VmNumaCollector {
     private static final int KILOBYTE = 1024;
     private static final int MEGABYTE = 1024 * KILOBYTE;
 
-    private static final Pattern NODE_PATTERN = Pattern.compile("N([0-9]+)=([0-9]+)");
-    private static final Pattern WHITESPACE_PATTERN = Pattern.compile("[\\s]+");
-
     private final int pid;
     private final Clock clock;
     private final NumaMapsReaderProvider readerProvider;
     private final PageSizeProvider pageSizeProvider;
+    private final NumaMapsParser parser = new NumaMapsParser();
 
     public VmNumaCollector(int pid, Clock clock, NumaMapsReaderProvider readerProvider, PageSizeProvider pageSizeProvider) {
         this.pid = pid;
@@ -78,46 +72,10 @@ public class VmNumaCollector {
     }
 
     public VmNumaStat collect() throws IOException {
-        Map<Integer, VmNumaNodeStat> statsMap = new TreeMap<>(); // need sorted keys for converting values to array in order later
-        try (BufferedReader br = readerProvider.createReader(pid)) {
-            for (String line = br.readLine(); line != null; line = br.readLine()) {
-                processLine(statsMap, WHITESPACE_PATTERN.split(line));
-            }
-        }
-        return createVmNumaStat(statsMap);
-    }
-
-    private void processLine(Map<Integer, VmNumaNodeStat> map, String[] tokens) {
-        for (String tok : tokens) {
-            Matcher matcher = NODE_PATTERN.matcher(tok);
-            if (matcher.matches()) {
-                int nodeNumber = Integer.parseInt(matcher.group(1));
-                if (!map.containsKey(nodeNumber)) {
-                    VmNumaNodeStat stat = new VmNumaNodeStat();
-                    stat.setNode(nodeNumber);
-                    map.put(nodeNumber, stat);
-                }
-
-                Category category = selectCategory(tokens);
-                double value = Double.parseDouble(matcher.group(2));
-                value *= getMultiplier(category);
-                value /= (double) MEGABYTE;
-
-                VmNumaNodeStat stat = map.get(nodeNumber);
-                updateStat(stat, category, value);
-            }
-        }
-    }
-
-    private Category selectCategory(String[] tokens) {
-        for (String tok : tokens) {
-            for (Category c : Category.values()) {
-                if (tok.startsWith(c.getToken())) {
-                    return c;
-                }
-            }
+        try (InputStream in = readerProvider.createInputStream(pid)) {
+            parser.parse(in);
         }
-        return Category.PRIVATE;
+        return createVmNumaStat();
     }
 
     private long getMultiplier(Category category) {
@@ -129,29 +87,33 @@ public class VmNumaCollector {
         }
     }
 
-    private void updateStat(VmNumaNodeStat stat, Category category, double value) {
-        switch (category) {
-            case PRIVATE:
-                stat.setPrivateMemory(stat.getPrivateMemory() + value);
-                break;
-            case HEAP:
-                stat.setHeapMemory(stat.getHeapMemory() + value);
-                break;
-            case STACK:
-                stat.setStackMemory(stat.getStackMemory() + value);
-                break;
-            case HUGE:
-                stat.setHugeMemory(stat.getHugeMemory() + value);
-                break;
-            default:
-                throw new IllegalStateException("Invalid category: " + category);
-        }
+    private double toMegabytes(Category category, int node) {
+        return parser.getPages(category, node) * (double) getMultiplier(category) / (double) MEGABYTE;
     }
 
-    private VmNumaStat createVmNumaStat(Map<Integer, VmNumaNodeStat> map) {
+    private VmNumaStat createVmNumaStat() {
         VmNumaStat numaStat = new VmNumaStat();
         numaStat.setTimeStamp(clock.getRealTimeMillis());
-        VmNumaNodeStat[] vmNodeStats = map.values().toArray(new VmNumaNodeStat[map.size()]);
+        int nodeCount = 0;
+        for (int node = 0; node < parser.getNodeLimit(); node++) {
+            if (parser.hasNode(node)) {
+                nodeCount++;
+            }
+        }
+        // in order of node ids
+        VmNumaNodeStat[] vmNodeStats = new VmNumaNodeStat[nodeCount];
+        int index = 0;
+        for (int node = 0; node < parser.getNodeLimit(); node++) {
+            if (parser.hasNode(node)) {
+                VmNumaNodeStat stat = new VmNumaNodeStat();
+                stat.setNode(node);
+                stat.setPrivateMemory(toMegabytes(Category.PRIVATE, node));
+                stat.setHeapMemory(toMegabytes(Category.HEAP, node));
+                stat.setStackMemory(toMegabytes(Category.STACK, node));
+                stat.setHugeMemory(toMegabytes(Category.HUGE, node));
+                vmNodeStats[index++] = stat;
+            }
+        }
         numaStat.setVmNodeStats(vmNodeStats);
         verifyVmNodeStatsArray(vmNodeStats);
         return numaStat;
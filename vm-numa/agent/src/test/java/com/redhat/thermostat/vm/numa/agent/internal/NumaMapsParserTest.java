@@ -0,0 +1,158 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+
+package com.redhat.thermostat.vm.numa.agent.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.redhat.thermostat.common.utils.StringUtils;
+import com.redhat.thermostat.vm.numa.agent.internal.VmNumaCollector.Category;
+
+public class NumaMapsParserTest {
+
+    private NumaMapsParser parser;
+
+    @Before
+    public void setup() {
+        parser = new NumaMapsParser();
+    }
+
+    @Test
+    public void testCategories() throws IOException {
+        parser.parse(StringUtils.toInputStream(
+                "017ec000 default heap anon=1861 dirty=1796 N0=1861 kernelpagesize_kB=4\n" +
+                "e09ec000 default stack anon=1776 dirty=1776 N0=1776 kernelpagesize_kB=4\n" +
+                "d1200000 default anon=45680 dirty=45680 N0=45000 N1=680 kernelpagesize_kB=4\n" +
+                "d0800000 default huge anon=456 dirty=456 N1=456 kernelpagesize_kB=2048\n" +
+                "00400000 default file=/usr/lib/jvm/bin/java mapped=1 N0=1 kernelpagesize_kB=4"));
+
+        assertEquals(2, parser.getNodeLimit());
+        assertEquals(1861, parser.getPages(Category.HEAP, 0));
+        assertEquals(1776, parser.getPages(Category.STACK, 0));
+        assertEquals(45001, parser.getPages(Category.PRIVATE, 0));
+        assertEquals(680, parser.getPages(Category.PRIVATE, 1));
+        assertEquals(456, parser.getPages(Category.HUGE, 1));
+        assertEquals(0, parser.getPages(Category.HUGE, 0));
+    }
+
+    @Test
+    public void testIgnoresMalformedNodeTokens() throws IOException {
+        parser.parse(StringUtils.toInputStream(
+                "017ec000 default N=1 N0= N0=12x Nfoo=3 N1=2\n"));
+
+        assertFalse(parser.hasNode(0));
+        assertTrue(parser.hasNode(1));
+        assertEquals(2, parser.getPages(Category.PRIVATE, 1));
+    }
+
+    @Test
+    public void testSparseAndLargeNodeIds() throws IOException {
+        parser.parse(StringUtils.toInputStream(
+                "017ec000 default anon=3 N2=1 N31=2\n"));
+
+        assertEquals(32, parser.getNodeLimit());
+        assertFalse(parser.hasNode(0));
+        assertTrue(parser.hasNode(2));
+        assertTrue(parser.hasNode(31));
+        assertEquals(2, parser.getPages(Category.PRIVATE, 31));
+    }
+
+    @Test
+    public void testParseReplacesPreviousCounts() throws IOException {
+        parser.parse(StringUtils.toInputStream("017ec000 default heap N3=5\n"));
+        parser.parse(StringUtils.toInputStream("017ec000 default heap N0=7\n"));
+
+        assertEquals(1, parser.getNodeLimit());
+        assertEquals(7, parser.getPages(Category.HEAP, 0));
+        assertEquals(0, parser.getPages(Category.HEAP, 3));
+    }
+
+    @Test
+    public void testLinesSpanningReads() throws IOException {
+        StringBuilder contents = new StringBuilder();
+        int lines = 20000;
+        for (int i = 0; i < lines; i++) {
+            contents.append(String.format("%08x default anon=1 dirty=1 N0=1 N1=2 kernelpagesize_kB=4\n", i));
+        }
+        // one line longer than the buffer
+        contents.append("7f000000 default file=/");
+        for (int i = 0; i < 100000; i++) {
+            contents.append('x');
+        }
+        contents.append(" heap N1=3\n");
+
+        parser.parse(new TrickleInputStream(contents.toString().getBytes(StandardCharsets.US_ASCII)));
+
+        assertEquals(lines, parser.getPages(Category.PRIVATE, 0));
+        assertEquals(2 * lines, parser.getPages(Category.PRIVATE, 1));
+        assertEquals(3, parser.getPages(Category.HEAP, 1));
+    }
+
+    /*
+     * Returns fewer bytes per read than asked for, like a pipe or procfs may.
+     */
+    private static class TrickleInputStream extends InputStream {
+
+        private final ByteArrayInputStream in;
+
+        private TrickleInputStream(byte[] bytes) {
+            this.in = new ByteArrayInputStream(bytes);
+        }
+
+        @Override
+        public int read() throws IOException {
+            return in.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return in.read(b, off, Math.min(len, 4093));
+        }
+    }
+
+}
+
@@ -41,9 +41,8 @@ import com.redhat.thermostat.common.utils.StringUtils;
 import org.junit.Before;
 import org.junit.Test;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
@@ -62,16 +61,16 @@ public class NumaMapsReaderProviderImplTest {
     @Before
     public void setup() throws IOException {
         procDataSource = mock(ProcDataSource.class);
-        when(procDataSource.getNumaMapsReader(anyInt())).thenReturn(new InputStreamReader(StringUtils.toInputStream("")));
+        when(procDataSource.getNumaMapsInputStream(anyInt())).thenReturn(StringUtils.toInputStream(""));
 
         readerProvider = new NumaMapsReaderProviderImpl(procDataSource);
     }
 
     @Test
-    public void testProvidesReader() throws IOException {
-        BufferedReader reader = readerProvider.createReader(100);
-        verify(procDataSource).getNumaMapsReader(100);
-        assertThat(reader, is(not(equalTo(null))));
+    public void testProvidesInputStream() throws IOException {
+        InputStream in = readerProvider.createInputStream(100);
+        verify(procDataSource).getNumaMapsInputStream(100);
+        assertThat(in, is(not(equalTo(null))));
     }
 
 }
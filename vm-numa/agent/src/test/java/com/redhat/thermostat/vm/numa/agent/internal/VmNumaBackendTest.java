@@ -48,8 +48,8 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
-import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
@@ -83,7 +83,7 @@ public class VmNumaBackendTest {
         when(clock.getRealTimeMillis()).thenReturn(100L);
 
         readerProvider = mock(NumaMapsReaderProvider.class);
-        when(readerProvider.createReader(anyInt())).thenReturn(mock(BufferedReader.class));
+        when(readerProvider.createInputStream(anyInt())).thenReturn(mock(InputStream.class));
 
         pageSizeProvider = mock(PageSizeProvider.class);
         when(pageSizeProvider.getPageSize()).thenReturn(4L * 1024L);
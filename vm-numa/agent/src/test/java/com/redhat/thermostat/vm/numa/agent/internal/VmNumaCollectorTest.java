@@ -42,11 +42,10 @@ import static org.mockito.Matchers.anyInt;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.StringReader;
 
 import com.redhat.thermostat.common.Clock;
+import com.redhat.thermostat.common.utils.StringUtils;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -76,12 +75,12 @@ public class VmNumaCollectorTest {
     @Test
     public void testCollectSingleNodeStat() throws IOException {
         readerProvider = mock(NumaMapsReaderProvider.class);
-        when(readerProvider.createReader(anyInt())).thenReturn(new BufferedReader(new StringReader(
+        when(readerProvider.createInputStream(anyInt())).thenReturn(StringUtils.toInputStream(
                 "017ec000 default heap anon=1861 dirty=1796 swapcache=65 active=1667 N0=1861 kernelpagesize_kB=4\n" +
                 "e09ec000 default stack anon=1776 dirty=1776 swapcache=65 active=1667 N0=1776 kernelpagesize_kB=4\n" +
                 "d1200000 default anon=45680 dirty=45680 active=43669 N0=45680 kernelpagesize_kB=4\n" +
                 "d0800000 default huge anon=456 dirty=456 active=43669 N0=456 kernelpagesize_kB=4\n"
-        )));
+        ));
         collector = new VmNumaCollector(PID, clock, readerProvider, pageSizeProvider);
 
         VmNumaStat stat = collector.collect();
@@ -95,13 +94,32 @@ public class VmNumaCollectorTest {
         assertThat(nodeStat.getPrivateMemory(), is(178.4375d));
     }
 
+    @Test
+    public void testCollectReplacesPreviousCounts() throws IOException {
+        readerProvider = mock(NumaMapsReaderProvider.class);
+        when(readerProvider.createInputStream(anyInt())).thenReturn(StringUtils.toInputStream(
+                "d1200000 default anon=45680 dirty=45680 active=43669 N1=45680 kernelpagesize_kB=4\n"
+        )).thenReturn(StringUtils.toInputStream(
+                "017ec000 default heap anon=1861 dirty=1796 swapcache=65 active=1667 N0=1861 kernelpagesize_kB=4\n"
+        ));
+        collector = new VmNumaCollector(PID, clock, readerProvider, pageSizeProvider);
+
+        collector.collect();
+        VmNumaNodeStat[] stats = collector.collect().getVmNodeStats();
+
+        assertThat(stats.length, is(1));
+        assertThat(stats[0].getNode(), is(0));
+        assertThat(stats[0].getHeapMemory(), is(7.26953125d));
+        assertThat(stats[0].getPrivateMemory(), is(0.0d));
+    }
+
     @Test
     public void testCollectMultipleNodeStat() throws IOException {
         readerProvider = mock(NumaMapsReaderProvider.class);
-        when(readerProvider.createReader(anyInt())).thenReturn(new BufferedReader(new StringReader(
+        when(readerProvider.createInputStream(anyInt())).thenReturn(StringUtils.toInputStream(
                 "017ec000 default heap anon=1861 dirty=1796 swapcache=65 active=1667 N0=1861 kernelpagesize_kB=4\n" +
                 "d1200000 default anon=45680 dirty=45680 active=43669 N1=45680 kernelpagesize_kB=4\n"
-        )));
+        ));
         collector = new VmNumaCollector(PID, clock, readerProvider, pageSizeProvider);
 
         VmNumaStat stat = collector.collect();
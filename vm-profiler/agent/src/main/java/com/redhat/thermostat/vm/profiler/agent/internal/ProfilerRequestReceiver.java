@@ -67,7 +67,12 @@ public class ProfilerRequestReceiver implements RequestReceiver {
         try {
             switch (value) {
             case ProfileRequest.START_PROFILING:
-                return startProfiling(vmId);
+                if (ProfileRequest.MODE_SAMPLING.equals(request.getParameter(ProfileRequest.PROFILE_MODE))) {
+                    return startSampling(vmId, getSamplingInterval(request));
+                }
+                return startProfiling(vmId,
+                        getPackages(request, ProfileRequest.INCLUDE_PACKAGES),
+                        getPackages(request, ProfileRequest.EXCLUDE_PACKAGES));
             case ProfileRequest.STOP_PROFILING:
                 return stopProfiling(vmId);
             default:
@@ -80,10 +85,18 @@ public class ProfilerRequestReceiver implements RequestReceiver {
         }
     }
 
-    private Response startProfiling(String vmId) {
+    private String[] getPackages(Request request, String key) {
+        String packages = request.getParameter(key);
+        if (packages == null || packages.trim().isEmpty()) {
+            return new String[0];
+        }
+        return packages.split(ProfileRequest.PACKAGE_SEPARATOR);
+    }
+
+    private Response startProfiling(String vmId, String[] includedPackages, String[] excludedPackages) {
         logger.info("Starting profiling " + vmId);
         try {
-            profiler.startProfiling(vmId);
+            profiler.startProfiling(vmId, includedPackages, excludedPackages);
             return OK;
         } catch (Exception e) {
             logger.log(Level.INFO, "start profiling failed", e);
@@ -91,6 +104,25 @@ public class ProfilerRequestReceiver implements RequestReceiver {
         }
     }
 
+    private long getSamplingInterval(Request request) {
+        String interval = request.getParameter(ProfileRequest.SAMPLING_INTERVAL);
+        if (interval == null) {
+            return ProfileRequest.DEFAULT_SAMPLING_INTERVAL;
+        }
+        return Long.parseLong(interval);
+    }
+
+    private Response startSampling(String vmId, long intervalMillis) {
+        logger.info("Starting sampling " + vmId + " every " + intervalMillis + "ms");
+        try {
+            profiler.startSampling(vmId, intervalMillis);
+            return OK;
+        } catch (Exception e) {
+            logger.log(Level.INFO, "start sampling failed", e);
+            return ERROR;
+        }
+    }
+
     private Response stopProfiling(String vmId) {
         logger.info("Stopping profiling " + vmId);
         try {
@@ -130,6 +130,25 @@ public class VmProfiler {
     }
 
     public synchronized void startProfiling(String vmId) throws ProfilerException {
+        startProfiling(vmId, new String[0], new String[0]);
+    }
+
+    /**
+     * Like {@link #startProfiling(String)}, but only instruments classes in
+     * {@code includedPackages} (if not empty) and not in
+     * {@code excludedPackages}.
+     */
+    public synchronized void startProfiling(String vmId, String[] includedPackages, String[] excludedPackages) throws ProfilerException {
+        startProfiling(vmId, false, 0, includedPackages, excludedPackages);
+    }
+
+    /** Like {@link #startProfiling(String)}, but samples instead of instrumenting */
+    public synchronized void startSampling(String vmId, long intervalMillis) throws ProfilerException {
+        startProfiling(vmId, true, intervalMillis, null, null);
+    }
+
+    private void startProfiling(String vmId, boolean sampling, long intervalMillis,
+            String[] includedPackages, String[] excludedPackages) throws ProfilerException {
         int pid = vmIdToPid.getPid(vmId);
         if (pid == VmIdToPidMapper.UNKNOWN_VMID) {
             throw new ProfilerException("Unknown VmId " + vmId);
@@ -149,7 +168,13 @@ public class VmProfiler {
             vmsWithAgentLoaded.add(pid);
         }
 
-        remote.startProfiling(pid);
+        if (sampling) {
+            remote.startSampling(pid, intervalMillis);
+        } else if (includedPackages.length == 0 && excludedPackages.length == 0) {
+            remote.startProfiling(pid);
+        } else {
+            remote.startProfiling(pid, includedPackages, excludedPackages);
+        }
 
         long startTime = clock.getRealTimeMillis();
         currentlyProfiledVmPids.add(pid);
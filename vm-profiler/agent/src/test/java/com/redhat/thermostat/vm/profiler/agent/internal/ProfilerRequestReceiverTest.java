@@ -70,14 +70,58 @@ public class ProfilerRequestReceiverTest {
         Request request = ProfileRequest.create(null, VM_ID, ProfileRequest.START_PROFILING);
         Response result = requestReceiver.receive(request);
 
-        verify(profiler).startProfiling(VM_ID);
+        verify(profiler).startProfiling(VM_ID, new String[0], new String[0]);
 
         assertEquals(ResponseType.OK, result.getType());
     }
 
+    @Test
+    public void forwardsPackageFiltersToProfiler() throws Exception {
+        Request request = ProfileRequest.createInstrumenting(null, VM_ID, "com.example,org.example", "com.example.generated");
+        Response result = requestReceiver.receive(request);
+
+        verify(profiler).startProfiling(VM_ID,
+                new String[] { "com.example", "org.example" },
+                new String[] { "com.example.generated" });
+
+        assertEquals(ResponseType.OK, result.getType());
+    }
+
+    @Test
+    public void forwardsStartSamplingRequestToProfiler() throws Exception {
+        Request request = ProfileRequest.createSampling(null, VM_ID, 20);
+        Response result = requestReceiver.receive(request);
+
+        verify(profiler).startSampling(VM_ID, 20);
+
+        assertEquals(ResponseType.OK, result.getType());
+    }
+
+    @Test
+    public void samplingRequestWithoutIntervalUsesDefault() throws Exception {
+        Request request = ProfileRequest.create(null, VM_ID, ProfileRequest.START_PROFILING);
+        request.setParameter(ProfileRequest.PROFILE_MODE, ProfileRequest.MODE_SAMPLING);
+        Response result = requestReceiver.receive(request);
+
+        verify(profiler).startSampling(VM_ID, ProfileRequest.DEFAULT_SAMPLING_INTERVAL);
+
+        assertEquals(ResponseType.OK, result.getType());
+    }
+
+    @Test
+    public void malformedSamplingIntervalResultsInError() throws Exception {
+        Request request = ProfileRequest.createSampling(null, VM_ID, 20);
+        request.setParameter(ProfileRequest.SAMPLING_INTERVAL, "not-a-number");
+        Response result = requestReceiver.receive(request);
+
+        verifyNoMoreInteractions(profiler);
+
+        assertEquals(ResponseType.NOK, result.getType());
+    }
+
     @Test
     public void exceptionThrownFromProfilerResultsInStarError() throws Exception {
-        doThrow(ProfilerException.class).when(profiler).startProfiling(VM_ID);
+        doThrow(ProfilerException.class).when(profiler).startProfiling(VM_ID, new String[0], new String[0]);
         Request request = ProfileRequest.create(null, VM_ID, ProfileRequest.START_PROFILING);
         Response result = requestReceiver.receive(request);
 
@@ -111,6 +111,34 @@ public class RemoteProfilerCommunicatorTest {
         verify(pool).release(PID, connection);
     }
 
+    @Test
+    public void startProfilingWithPackageFiltersMakesAnRmiCall() throws Exception {
+        String[] included = new String[] { "com.example" };
+        String[] excluded = new String[] { "com.example.generated" };
+        communicator.startProfiling(PID, included, excluded);
+
+        verify(server).invoke(
+                new ObjectName(OBJECT_NAME),
+                "startProfiling",
+                new Object[] { included, excluded },
+                new String[] { String[].class.getName(), String[].class.getName() });
+        verifyNoMoreInteractions(server);
+        verify(pool).release(PID, connection);
+    }
+
+    @Test
+    public void startSamplingMakesAnRmiCall() throws Exception {
+        communicator.startSampling(PID, 10);
+
+        verify(server).invoke(
+                new ObjectName(OBJECT_NAME),
+                "startSampling",
+                new Object[] { 10l },
+                new String[] { "long" });
+        verifyNoMoreInteractions(server);
+        verify(pool).release(PID, connection);
+    }
+
     @Test
     public void stopProfilingMakesAnRmiCall() throws Exception {
         communicator.stopProfiling(PID);
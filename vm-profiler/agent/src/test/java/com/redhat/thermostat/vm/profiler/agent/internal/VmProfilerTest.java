@@ -131,6 +131,37 @@ public class VmProfilerTest {
         verifyNoMoreInteractions(remote);
     }
 
+    @Test
+    public void startingProfilingWithPackageFiltersPassesThemOn() throws Exception {
+        String[] included = new String[] { "com.example" };
+        String[] excluded = new String[0];
+
+        profiler.vmStarted(VM_ID, PID);
+        profiler.startProfiling(VM_ID, included, excluded);
+
+        verify(remote).loadAgentIntoPid(PID, AGENT_JAR, AGENT_OPTIONS);
+        verify(remote).startProfiling(PID, included, excluded);
+        verifyNoMoreInteractions(remote);
+    }
+
+    @Test
+    public void startingSamplingLoadsJvmAgentAndMakesAnRmiCall() throws Exception {
+        profiler.vmStarted(VM_ID, PID);
+        profiler.startSampling(VM_ID, 10);
+
+        verify(remote).loadAgentIntoPid(PID, AGENT_JAR, AGENT_OPTIONS);
+        verify(remote).startSampling(PID, 10);
+        verify(dao).addStatus(new ProfileStatusChange(AGENT_ID, VM_ID, TIMESTAMP, true));
+        verifyNoMoreInteractions(remote);
+    }
+
+    @Test (expected=ProfilerException.class)
+    public void doesNotStartSamplingWhileProfiling() throws Exception {
+        profiler.vmStarted(VM_ID, PID);
+        profiler.startProfiling(VM_ID);
+        profiler.startSampling(VM_ID, 10);
+    }
+
     @Test
     public void onlyLoadsAgentOnceForRepeatedProfiling() throws Exception {
         final String FILE = "foobar";
@@ -42,6 +42,7 @@ public enum LocaleResources {
 
     INTERRUPTED_WAITING_FOR_RESPONSE,
     AGENT_NOT_FOUND,
+    INVALID_SAMPLING_INTERVAL,
 
     STARTED_PROFILING,
     ALREADY_PROFILING,
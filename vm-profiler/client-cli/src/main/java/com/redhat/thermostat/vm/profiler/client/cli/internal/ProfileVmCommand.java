@@ -47,6 +47,7 @@ import java.util.concurrent.Semaphore;
 import com.redhat.thermostat.client.cli.VmArgument;
 import com.redhat.thermostat.client.command.RequestQueue;
 import com.redhat.thermostat.common.cli.AbstractCommand;
+import com.redhat.thermostat.common.cli.Arguments;
 import com.redhat.thermostat.common.cli.CommandContext;
 import com.redhat.thermostat.common.cli.CommandException;
 import com.redhat.thermostat.common.cli.Console;
@@ -78,6 +79,11 @@ public class ProfileVmCommand extends AbstractCommand {
     static final String STATUS_ARGUMENT = "status";
     static final String SHOW_ARGUMENT = "show";
 
+    static final String SAMPLE_OPTION = "sample";
+    static final String INTERVAL_OPTION = "interval";
+    static final String INCLUDE_OPTION = "include";
+    static final String EXCLUDE_OPTION = "exclude";
+
     private final DependencyServices myServices = new DependencyServices();
 
     @Override
@@ -103,7 +109,15 @@ public class ProfileVmCommand extends AbstractCommand {
         String command = ctx.getArguments().getSubcommand();
         switch (command) {
         case START_ARGUMENT:
-            sendStartProfilingRequest(ctx.getConsole(), requestQueue, target, vmId.get());
+            if (ctx.getArguments().hasArgument(SAMPLE_OPTION)) {
+                long interval = getSamplingInterval(ctx.getArguments());
+                sendStartSamplingRequest(ctx.getConsole(), requestQueue, target, vmId.get(), interval);
+            } else {
+                Arguments args = ctx.getArguments();
+                String included = args.hasArgument(INCLUDE_OPTION) ? args.getArgument(INCLUDE_OPTION) : null;
+                String excluded = args.hasArgument(EXCLUDE_OPTION) ? args.getArgument(EXCLUDE_OPTION) : null;
+                sendStartProfilingRequest(ctx.getConsole(), requestQueue, target, vmId.get(), included, excluded);
+            }
             break;
         case STOP_ARGUMENT:
             sendStopProfilingRequest(ctx.getConsole(), requestQueue, target, vmId.get());
@@ -117,10 +131,48 @@ public class ProfileVmCommand extends AbstractCommand {
         }
     }
 
+    private long getSamplingInterval(Arguments args) throws CommandException {
+        if (!args.hasArgument(INTERVAL_OPTION)) {
+            return ProfileRequest.DEFAULT_SAMPLING_INTERVAL;
+        }
+        String value = args.getArgument(INTERVAL_OPTION);
+        try {
+            long interval = Long.parseLong(value);
+            if (interval > 0) {
+                return interval;
+            }
+        } catch (NumberFormatException e) {
+            // handled below
+        }
+        throw new CommandException(translator.localize(LocaleResources.INVALID_SAMPLING_INTERVAL, value));
+    }
+
     public void sendStartProfilingRequest(Console console, RequestQueue queue, InetSocketAddress target, String vmId) throws CommandException {
         Response response = sendProfilingRequestAndGetResponse(
                 console, queue, target, ProfileRequest.START_PROFILING, vmId);
+        printStartResponse(console, response, vmId);
+    }
 
+    /**
+     * @param includedPackages comma-separated packages to instrument, or
+     *        {@code null} for all
+     * @param excludedPackages comma-separated packages not to instrument, or
+     *        {@code null}
+     */
+    public void sendStartProfilingRequest(Console console, RequestQueue queue, InetSocketAddress target, String vmId,
+            String includedPackages, String excludedPackages) throws CommandException {
+        Request request = ProfileRequest.createInstrumenting(target, vmId, includedPackages, excludedPackages);
+        Response response = sendRequestAndGetResponse(queue, request);
+        printStartResponse(console, response, vmId);
+    }
+
+    public void sendStartSamplingRequest(Console console, RequestQueue queue, InetSocketAddress target, String vmId, long intervalMillis) throws CommandException {
+        Request request = ProfileRequest.createSampling(target, vmId, intervalMillis);
+        Response response = sendRequestAndGetResponse(queue, request);
+        printStartResponse(console, response, vmId);
+    }
+
+    private void printStartResponse(Console console, Response response, String vmId) {
         if (response.getType() == ResponseType.OK) {
             console.getOutput().println(translator.localize(LocaleResources.STARTED_PROFILING, vmId).getContents());
         } else if (response.getType() == ResponseType.NOOP) {
@@ -148,9 +200,13 @@ public class ProfileVmCommand extends AbstractCommand {
     }
 
     public Response sendProfilingRequestAndGetResponse(Console console, RequestQueue queue, InetSocketAddress target, String action, String vmId) throws CommandException {
+        Request request = ProfileRequest.create(target, vmId, action);
+        return sendRequestAndGetResponse(queue, request);
+    }
+
+    private Response sendRequestAndGetResponse(RequestQueue queue, Request request) throws CommandException {
         final Response[] responses = new Response[1];
         final Semaphore responseReceived = new Semaphore(0);
-        Request request = ProfileRequest.create(target, vmId, action);
 
         request.addListener(new RequestResponseListener() {
             @Override
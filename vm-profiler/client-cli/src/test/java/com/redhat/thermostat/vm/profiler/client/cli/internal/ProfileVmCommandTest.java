@@ -37,7 +37,10 @@
 package com.redhat.thermostat.vm.profiler.client.cli.internal;
 
 import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.isA;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.ByteArrayInputStream;
@@ -45,6 +48,9 @@ import java.nio.charset.StandardCharsets;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import com.redhat.thermostat.client.cli.VmArgument;
 import com.redhat.thermostat.client.command.RequestQueue;
@@ -52,6 +58,10 @@ import com.redhat.thermostat.common.cli.Arguments;
 import com.redhat.thermostat.common.cli.CommandContext;
 import com.redhat.thermostat.common.cli.CommandException;
 import com.redhat.thermostat.common.cli.SimpleArguments;
+import com.redhat.thermostat.common.command.Request;
+import com.redhat.thermostat.common.command.RequestResponseListener;
+import com.redhat.thermostat.common.command.Response;
+import com.redhat.thermostat.common.command.Response.ResponseType;
 import com.redhat.thermostat.common.internal.test.TestCommandContextFactory;
 import com.redhat.thermostat.storage.core.AgentId;
 import com.redhat.thermostat.storage.core.VmId;
@@ -60,6 +70,7 @@ import com.redhat.thermostat.storage.dao.VmInfoDAO;
 import com.redhat.thermostat.storage.model.AgentInformation;
 import com.redhat.thermostat.storage.model.VmInfo;
 import com.redhat.thermostat.vm.profiler.common.ProfileDAO;
+import com.redhat.thermostat.vm.profiler.common.ProfileRequest;
 import com.redhat.thermostat.vm.profiler.common.ProfileStatusChange;
 
 public class ProfileVmCommandTest {
@@ -184,6 +195,93 @@ public class ProfileVmCommandTest {
                      "25.000000 1         void foo()\n", cmdCtxFactory.getOutput());
     }
 
+    @Test
+    public void startSubCommandWithSampleOptionRequestsSampling() throws Exception {
+        AgentInformation agentInfo = mock(AgentInformation.class);
+        when(agentsDao.getAgentInformation(agentId)).thenReturn(agentInfo);
+
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                Request request = (Request) invocation.getArguments()[0];
+                for (RequestResponseListener listener : request.getListeners()) {
+                    listener.fireComplete(request, new Response(ResponseType.OK));
+                }
+                return null;
+            }
+        }).when(queue).putRequest(isA(Request.class));
+
+        SimpleArguments args = new SimpleArguments();
+        args.addArgument(VmArgument.ARGUMENT_NAME, VM_ID);
+        args.addArgument(ProfileVmCommand.SAMPLE_OPTION, null);
+        args.addArgument(ProfileVmCommand.INTERVAL_OPTION, "5");
+        args.addNonOptionArgument("start");
+        addSubcommandsToArguments(args);
+        CommandContext ctx = cmdCtxFactory.createContext(args);
+
+        cmd.run(ctx);
+
+        ArgumentCaptor<Request> requestCaptor = ArgumentCaptor.forClass(Request.class);
+        verify(queue).putRequest(requestCaptor.capture());
+        Request request = requestCaptor.getValue();
+        assertEquals(ProfileRequest.START_PROFILING, request.getParameter(ProfileRequest.PROFILE_ACTION));
+        assertEquals(ProfileRequest.MODE_SAMPLING, request.getParameter(ProfileRequest.PROFILE_MODE));
+        assertEquals("5", request.getParameter(ProfileRequest.SAMPLING_INTERVAL));
+        assertEquals("Started profiling some-vm\n", cmdCtxFactory.getOutput());
+    }
+
+    @Test
+    public void startSubCommandPassesPackageFilters() throws Exception {
+        AgentInformation agentInfo = mock(AgentInformation.class);
+        when(agentsDao.getAgentInformation(agentId)).thenReturn(agentInfo);
+
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                Request request = (Request) invocation.getArguments()[0];
+                for (RequestResponseListener listener : request.getListeners()) {
+                    listener.fireComplete(request, new Response(ResponseType.OK));
+                }
+                return null;
+            }
+        }).when(queue).putRequest(isA(Request.class));
+
+        SimpleArguments args = new SimpleArguments();
+        args.addArgument(VmArgument.ARGUMENT_NAME, VM_ID);
+        args.addArgument(ProfileVmCommand.INCLUDE_OPTION, "com.example,org.example");
+        args.addArgument(ProfileVmCommand.EXCLUDE_OPTION, "com.example.generated");
+        args.addNonOptionArgument("start");
+        addSubcommandsToArguments(args);
+        CommandContext ctx = cmdCtxFactory.createContext(args);
+
+        cmd.run(ctx);
+
+        ArgumentCaptor<Request> requestCaptor = ArgumentCaptor.forClass(Request.class);
+        verify(queue).putRequest(requestCaptor.capture());
+        Request request = requestCaptor.getValue();
+        assertEquals(ProfileRequest.START_PROFILING, request.getParameter(ProfileRequest.PROFILE_ACTION));
+        assertEquals(ProfileRequest.MODE_INSTRUMENTING, request.getParameter(ProfileRequest.PROFILE_MODE));
+        assertEquals("com.example,org.example", request.getParameter(ProfileRequest.INCLUDE_PACKAGES));
+        assertEquals("com.example.generated", request.getParameter(ProfileRequest.EXCLUDE_PACKAGES));
+        assertEquals("Started profiling some-vm\n", cmdCtxFactory.getOutput());
+    }
+
+    @Test (expected=CommandException.class)
+    public void startSubCommandRejectsInvalidSamplingInterval() throws Exception {
+        AgentInformation agentInfo = mock(AgentInformation.class);
+        when(agentsDao.getAgentInformation(agentId)).thenReturn(agentInfo);
+
+        SimpleArguments args = new SimpleArguments();
+        args.addArgument(VmArgument.ARGUMENT_NAME, VM_ID);
+        args.addArgument(ProfileVmCommand.SAMPLE_OPTION, null);
+        args.addArgument(ProfileVmCommand.INTERVAL_OPTION, "0");
+        args.addNonOptionArgument("start");
+        addSubcommandsToArguments(args);
+        CommandContext ctx = cmdCtxFactory.createContext(args);
+
+        cmd.run(ctx);
+    }
+
     private void addSubcommandsToArguments(SimpleArguments args) {
         args.addSubcommand(ProfileVmCommand.START_ARGUMENT);
         args.addSubcommand(ProfileVmCommand.STOP_ARGUMENT);
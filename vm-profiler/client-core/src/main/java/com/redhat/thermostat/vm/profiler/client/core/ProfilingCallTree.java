@@ -0,0 +1,123 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.vm.profiler.client.core;
+
+/**
+ * A call tree of profiling results, suitable for drawing a flame graph.
+ * <p>
+ * Nodes are identified by their index, in depth-first pre-order: the root
+ * is node 0, the first child of a node immediately follows it and the
+ * subtree of node {@code n} consists of the nodes from {@code n} up to (but
+ * excluding) {@link #getSubtreeEnd(int) getSubtreeEnd(n)}. The root does not
+ * correspond to a method.
+ */
+public class ProfilingCallTree {
+
+    public static final int NO_NODE = -1;
+
+    private final String[] names;
+    private final int[] nameIndex;
+    private final int[] parent;
+    private final int[] depth;
+    private final int[] subtreeEnd;
+    private final long[] selfTime;
+    private final long[] totalTime;
+
+    /** All arrays are used as-is; times are in nanoseconds */
+    ProfilingCallTree(String[] names, int[] nameIndex, int[] parent, int[] depth,
+            int[] subtreeEnd, long[] selfTime, long[] totalTime) {
+        this.names = names;
+        this.nameIndex = nameIndex;
+        this.parent = parent;
+        this.depth = depth;
+        this.subtreeEnd = subtreeEnd;
+        this.selfTime = selfTime;
+        this.totalTime = totalTime;
+    }
+
+    public int getNodeCount() {
+        return nameIndex.length;
+    }
+
+    /**
+     * @return the method name and, for instrumented methods, the descriptor.
+     *         {@code null} for the root.
+     */
+    public String getMethodName(int node) {
+        int index = nameIndex[node];
+        return index == -1 ? null : names[index];
+    }
+
+    /** @return the parent node or {@link #NO_NODE} for the root */
+    public int getParent(int node) {
+        return parent[node];
+    }
+
+    /** @return the first child of the node or {@link #NO_NODE} */
+    public int getFirstChild(int node) {
+        return node + 1 < subtreeEnd[node] ? node + 1 : NO_NODE;
+    }
+
+    /** @return the next child of the parent of the node or {@link #NO_NODE} */
+    public int getNextSibling(int node) {
+        int next = subtreeEnd[node];
+        int parentNode = parent[node];
+        if (parentNode == NO_NODE || next >= subtreeEnd[parentNode]) {
+            return NO_NODE;
+        }
+        return next;
+    }
+
+    /** @return the distance from the root; 0 for the root */
+    public int getDepth(int node) {
+        return depth[node];
+    }
+
+    public int getSubtreeEnd(int node) {
+        return subtreeEnd[node];
+    }
+
+    /** @return the time spent in the node itself, in nanoseconds */
+    public long getSelfTimeNanos(int node) {
+        return selfTime[node];
+    }
+
+    /** @return the time spent in the node and its callees, in nanoseconds */
+    public long getTotalTimeNanos(int node) {
+        return totalTime[node];
+    }
+}
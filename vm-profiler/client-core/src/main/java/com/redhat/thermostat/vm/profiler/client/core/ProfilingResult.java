@@ -57,12 +57,26 @@ public class ProfilingResult {
     }
 
     private List<MethodInfo> info;
+    private ProfilingCallTree callTree;
 
     public ProfilingResult(List<MethodInfo> data) {
+        this(data, null);
+    }
+
+    public ProfilingResult(List<MethodInfo> data, ProfilingCallTree callTree) {
         this.info = Collections.unmodifiableList(data);
+        this.callTree = callTree;
     }
 
     public List<MethodInfo> getMethodInfo() {
         return info;
     }
+
+    /**
+     * @return the call tree, or {@code null} if the results were recorded in
+     *         the older, flat, format
+     */
+    public ProfilingCallTree getCallTree() {
+        return callTree;
+    }
 }
\ No newline at end of file
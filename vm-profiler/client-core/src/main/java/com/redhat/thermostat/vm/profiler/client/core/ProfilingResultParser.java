@@ -36,12 +36,16 @@
 
 package com.redhat.thermostat.vm.profiler.client.core;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -57,26 +61,154 @@ import com.redhat.thermostat.common.utils.MethodDescriptorConverter.MethodDeclar
 import com.redhat.thermostat.vm.profiler.client.core.ProfilingResult.MethodInfo;
 
 /**
- * Results are expected to be in this format, one result per line:
+ * Parses the results file written by the profiling agent.
+ * <p>
+ * Current agents, both the instrumenting and the sampling profiler, write a
+ * call tree in a binary format (see {@code CallTreeFormat} in vm-profiler
+ * jvm-agent, which must be kept in sync with {@link #MAGIC} and
+ * {@link #VERSION}). The tree is read in a single streaming pass into
+ * primitive arrays and exposed through {@link ProfilingResult#getCallTree()}.
+ * <p>
+ * Method names in the tree are the method name followed by the method
+ * descriptor, as defined by the <a href=
+ * "http://docs.oracle.com/javase/specs/jvms/se7/html/jvms-4.html#jvms-4.3.3">
+ * Java Language</a>. An example is {@code foo(I)I} to indicate
+ * {@code int foo(int)}. The sampling profiler writes method names without
+ * the descriptor, as it is not available in stack traces. Such names are
+ * used as they are.
+ * <p>
+ * Older agents wrote results without a call tree, one result per line:
  *
  * <pre>
  * [methodTime] [method]
  * </pre>
  *
  * Where {@code methodTime} is the total time, in nanoseconds, that the method
- * took. {@code method} is the method name followed by the method
- * descriptor, as defined by the <a href=
- * "http://docs.oracle.com/javase/specs/jvms/se7/html/jvms-4.html#jvms-4.3.3">
- * Java Language</a>. An example is {@code foo(I)I} to indicate
- * {@code int foo(int)}.
+ * took and {@code method} is named as above. Such results are still read,
+ * but have no call tree.
  */
 public class ProfilingResultParser {
 
+    static final int MAGIC = 0x54505246;
+    static final int VERSION = 1;
+
     private static final Logger logger = LoggingUtils.getLogger(ProfilingResultParser.class);
 
     public ProfilingResult parse(InputStream in) {
-        Map<String, Long> methodAndTimes = readData(in);
-        return convertToResult(methodAndTimes);
+        try (BufferedInputStream buffered = new BufferedInputStream(in)) {
+            buffered.mark(4);
+            DataInputStream data = new DataInputStream(buffered);
+            int magic;
+            try {
+                magic = data.readInt();
+            } catch (EOFException tooShortForMagic) {
+                magic = 0;
+            }
+            if (magic == MAGIC) {
+                return readCallTree(data);
+            }
+            buffered.reset();
+            Map<String, Long> methodAndTimes = readData(buffered);
+            return convertToResult(methodAndTimes, null);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Unable to parse profiling data: ", e);
+            return new ProfilingResult(new ArrayList<MethodInfo>());
+        }
+    }
+
+    private ProfilingResult readCallTree(DataInputStream in) throws IOException {
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported profiling data version: " + version);
+        }
+
+        int stringCount = readCount(in);
+        String[] names = new String[stringCount];
+        for (int i = 0; i < stringCount; i++) {
+            names[i] = in.readUTF();
+        }
+
+        int nodeCount = readCount(in);
+        if (nodeCount == 0) {
+            throw new IOException("Profiling data has no root");
+        }
+        int[] nameIndex = new int[nodeCount];
+        int[] parent = new int[nodeCount];
+        int[] depth = new int[nodeCount];
+        int[] subtreeEnd = new int[nodeCount];
+        long[] selfTime = new long[nodeCount];
+        long[] methodSelfTime = new long[stringCount];
+
+        // the nodes whose children are still being read, and how many are left
+        int[] open = new int[16];
+        int[] remainingChildren = new int[16];
+        int openCount = 0;
+
+        for (int node = 0; node < nodeCount; node++) {
+            int index = in.readInt();
+            int childCount = in.readInt();
+            long self = in.readLong();
+            if (index < -1 || index >= stringCount || childCount < 0) {
+                throw new IOException("Malformed profiling data at node " + node);
+            }
+
+            if (node == 0) {
+                parent[node] = ProfilingCallTree.NO_NODE;
+                depth[node] = 0;
+            } else {
+                if (openCount == 0) {
+                    throw new IOException("Profiling data has more than one root");
+                }
+                int parentNode = open[openCount - 1];
+                parent[node] = parentNode;
+                depth[node] = depth[parentNode] + 1;
+                remainingChildren[openCount - 1]--;
+            }
+            nameIndex[node] = index;
+            selfTime[node] = self;
+            if (index != -1) {
+                methodSelfTime[index] += self;
+            }
+
+            if (openCount == open.length) {
+                open = Arrays.copyOf(open, openCount * 2);
+                remainingChildren = Arrays.copyOf(remainingChildren, openCount * 2);
+            }
+            open[openCount] = node;
+            remainingChildren[openCount] = childCount;
+            openCount++;
+            while (openCount > 0 && remainingChildren[openCount - 1] == 0) {
+                subtreeEnd[open[openCount - 1]] = node + 1;
+                openCount--;
+            }
+        }
+        if (openCount != 0) {
+            throw new IOException("Profiling data is truncated");
+        }
+
+        // children always come after their parents
+        long[] totalTime = Arrays.copyOf(selfTime, nodeCount);
+        for (int node = nodeCount - 1; node > 0; node--) {
+            totalTime[parent[node]] += totalTime[node];
+        }
+
+        Map<String, Long> methodAndTimes = new HashMap<>();
+        for (int i = 0; i < stringCount; i++) {
+            if (methodSelfTime[i] != 0) {
+                methodAndTimes.put(names[i], TimeUnit.NANOSECONDS.toMillis(methodSelfTime[i]));
+            }
+        }
+
+        ProfilingCallTree tree = new ProfilingCallTree(names, nameIndex, parent, depth, subtreeEnd, selfTime, totalTime);
+        return convertToResult(methodAndTimes, tree);
+    }
+
+    private static int readCount(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("Malformed profiling data: negative count");
+        }
+        return count;
     }
 
     private Map<String, Long> readData(InputStream in) {
@@ -97,7 +229,7 @@ public class ProfilingResultParser {
         return result;
     }
 
-    private ProfilingResult convertToResult(Map<String, Long> results) {
+    private ProfilingResult convertToResult(Map<String, Long> results, ProfilingCallTree tree) {
         ArrayList<MethodInfo> info = new ArrayList<>();
         long totalTime = 0;
         for (Entry<String, Long> entry : results.entrySet()) {
@@ -118,7 +250,7 @@ public class ProfilingResultParser {
             }
         });
 
-        return new ProfilingResult(info);
+        return new ProfilingResult(info, tree);
     }
 
     private MethodDeclaration breakDownMethod(String name) {
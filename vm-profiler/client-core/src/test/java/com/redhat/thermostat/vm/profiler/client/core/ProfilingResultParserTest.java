@@ -37,8 +37,12 @@
 package com.redhat.thermostat.vm.profiler.client.core;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
 
@@ -64,5 +68,80 @@ public class ProfilingResultParserTest {
         MethodInfo method1 = methods.get(1);
         assertEquals("int bar()", method1.decl.toString());
         assertEquals(2, method1.totalTimeInMillis);
+
+        assertNull(result.getCallTree());
+    }
+
+    @Test
+    public void parsesCallTree() throws Exception {
+        // root -> main -> { work -> hash, idle -> hash }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(ProfilingResultParser.MAGIC);
+        out.writeInt(ProfilingResultParser.VERSION);
+        out.writeInt(4);
+        out.writeUTF("main()V");
+        out.writeUTF("work()V");
+        out.writeUTF("hash()I");
+        out.writeUTF("idle()V");
+        out.writeInt(6);
+        writeNode(out, -1, 1, 0);
+        writeNode(out, 0, 2, 1000000);
+        writeNode(out, 1, 1, 2000000);
+        writeNode(out, 2, 0, 3000000);
+        writeNode(out, 3, 1, 4000000);
+        writeNode(out, 2, 0, 5000000);
+
+        ProfilingResult result = new ProfilingResultParser().parse(new ByteArrayInputStream(bytes.toByteArray()));
+
+        List<MethodInfo> methods = result.getMethodInfo();
+        assertEquals(4, methods.size());
+        MethodInfo hash = methods.get(3);
+        assertEquals("int hash()", hash.decl.toString());
+        assertEquals(8, hash.totalTimeInMillis);
+
+        ProfilingCallTree tree = result.getCallTree();
+        assertEquals(6, tree.getNodeCount());
+        assertNull(tree.getMethodName(0));
+        assertEquals(15000000, tree.getTotalTimeNanos(0));
+
+        int main = tree.getFirstChild(0);
+        assertEquals("main()V", tree.getMethodName(main));
+        assertEquals(ProfilingCallTree.NO_NODE, tree.getNextSibling(main));
+
+        int work = tree.getFirstChild(main);
+        assertEquals("work()V", tree.getMethodName(work));
+        assertEquals(2, tree.getDepth(work));
+        assertEquals(2000000, tree.getSelfTimeNanos(work));
+        assertEquals(5000000, tree.getTotalTimeNanos(work));
+
+        int idle = tree.getNextSibling(work);
+        assertEquals("idle()V", tree.getMethodName(idle));
+        assertEquals(main, tree.getParent(idle));
+        assertEquals(9000000, tree.getTotalTimeNanos(idle));
+        assertEquals(ProfilingCallTree.NO_NODE, tree.getNextSibling(idle));
+        assertEquals(6, tree.getSubtreeEnd(main));
+    }
+
+    @Test
+    public void truncatedCallTreeIsRejected() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(ProfilingResultParser.MAGIC);
+        out.writeInt(ProfilingResultParser.VERSION);
+        out.writeInt(0);
+        out.writeInt(1);
+        writeNode(out, -1, 1, 0);
+
+        ProfilingResult result = new ProfilingResultParser().parse(new ByteArrayInputStream(bytes.toByteArray()));
+
+        assertEquals(0, result.getMethodInfo().size());
+        assertNull(result.getCallTree());
+    }
+
+    private static void writeNode(DataOutputStream out, int nameIndex, int childCount, long selfTime) throws IOException {
+        out.writeInt(nameIndex);
+        out.writeInt(childCount);
+        out.writeLong(selfTime);
     }
 }
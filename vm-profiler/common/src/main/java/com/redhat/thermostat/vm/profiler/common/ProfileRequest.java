@@ -52,6 +52,38 @@ public class ProfileRequest {
         return request;
     }
 
+    /**
+     * Creates a request to start profiling by sampling thread stacks instead
+     * of instrumenting code.
+     */
+    public static Request createSampling(InetSocketAddress address, String vmId, long samplingIntervalMillis) {
+        Request request = create(address, vmId, START_PROFILING);
+        request.setParameter(ProfileRequest.PROFILE_MODE, MODE_SAMPLING);
+        request.setParameter(ProfileRequest.SAMPLING_INTERVAL, String.valueOf(samplingIntervalMillis));
+        return request;
+    }
+
+    /**
+     * Creates a request to start instrumenting profiling, limited to some
+     * packages.
+     *
+     * @param includedPackages comma-separated packages to instrument, or
+     *        {@code null} to instrument all packages
+     * @param excludedPackages comma-separated packages not to instrument, or
+     *        {@code null}
+     */
+    public static Request createInstrumenting(InetSocketAddress address, String vmId, String includedPackages, String excludedPackages) {
+        Request request = create(address, vmId, START_PROFILING);
+        request.setParameter(ProfileRequest.PROFILE_MODE, MODE_INSTRUMENTING);
+        if (includedPackages != null) {
+            request.setParameter(ProfileRequest.INCLUDE_PACKAGES, includedPackages);
+        }
+        if (excludedPackages != null) {
+            request.setParameter(ProfileRequest.EXCLUDE_PACKAGES, excludedPackages);
+        }
+        return request;
+    }
+
     /** Value of Request.ACTION */
     public static final String NAME = "profile-vm";
 
@@ -67,4 +99,39 @@ public class ProfileRequest {
 
     /** Key that specifies the VM's id */
     public static final String VM_ID = "vm-id";
+
+    /**
+     * Key that specifies how to profile, used with {@link #START_PROFILING}.
+     * Optional; defaults to {@link #MODE_INSTRUMENTING}.
+     */
+    public static final String PROFILE_MODE = "profile-mode";
+
+    /** value for {@link #PROFILE_MODE} */
+    public static final String MODE_INSTRUMENTING = "instrumenting";
+    /** value for {@link #PROFILE_MODE} */
+    public static final String MODE_SAMPLING = "sampling";
+
+    /**
+     * Key that specifies the time, in milliseconds, between two samples when
+     * using {@link #MODE_SAMPLING}. Optional.
+     */
+    public static final String SAMPLING_INTERVAL = "sampling-interval";
+
+    public static final long DEFAULT_SAMPLING_INTERVAL = 10;
+
+    /**
+     * Key that specifies the packages (and their sub-packages) to instrument
+     * when using {@link #MODE_INSTRUMENTING}, separated by
+     * {@link #PACKAGE_SEPARATOR}. Optional; defaults to all packages.
+     */
+    public static final String INCLUDE_PACKAGES = "include-packages";
+
+    /**
+     * Key that specifies the packages (and their sub-packages) not to
+     * instrument when using {@link #MODE_INSTRUMENTING}, separated by
+     * {@link #PACKAGE_SEPARATOR}. Optional.
+     */
+    public static final String EXCLUDE_PACKAGES = "exclude-packages";
+
+    public static final String PACKAGE_SEPARATOR = ",";
 }
@@ -51,6 +51,17 @@ public class AsmBasedInstrumentor extends ProfilerInstrumentor {
     private static final String RECORDER_CLASS_NAME =
             ProfileRecorder.class.getCanonicalName().replace('.', '/');
 
+    private final ProfileRecorder recorder;
+
+    public AsmBasedInstrumentor() {
+        this(ProfileRecorder.getInstance());
+    }
+
+    /** for testing only */
+    AsmBasedInstrumentor(ProfileRecorder recorder) {
+        this.recorder = recorder;
+    }
+
     @Override
     public byte[] transform(ClassLoader cl, String className, byte[] classBytes) {
         try {
@@ -58,13 +69,15 @@ public class AsmBasedInstrumentor extends ProfilerInstrumentor {
             // pipe data: reader -> instrumentor -> writer
             ClassReader reader = new ClassReader(classBytes);
             ClassWriter writer = new ClassLoaderFriendlyClassWriter(reader, ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS, cl);
-            InstrumentingClassAdapter instrumentor = new InstrumentingClassAdapter(writer);
+            InstrumentingClassAdapter instrumentor = new InstrumentingClassAdapter(writer, recorder);
             reader.accept(instrumentor, ClassReader.SKIP_FRAMES);
             byte[] data = writer.toByteArray();
 
-            // check that the bytecode is valid
-            reader = new ClassReader(data);
-            reader.accept(new CheckClassAdapter(new ClassWriter(0)), 0);
+            if (Debug.getVerifyEnabled()) {
+                // check that the bytecode is valid
+                reader = new ClassReader(data);
+                reader.accept(new CheckClassAdapter(new ClassWriter(0)), 0);
+            }
 
             return data;
 
@@ -77,10 +90,12 @@ public class AsmBasedInstrumentor extends ProfilerInstrumentor {
 
     static class InstrumentingClassAdapter extends ClassVisitor {
 
+        private final ProfileRecorder recorder;
         private String className;
 
-        public InstrumentingClassAdapter(ClassVisitor visitor) {
+        public InstrumentingClassAdapter(ClassVisitor visitor, ProfileRecorder recorder) {
             super(Opcodes.ASM5, visitor);
+            this.recorder = recorder;
         }
 
         @Override
@@ -99,7 +114,8 @@ public class AsmBasedInstrumentor extends ProfilerInstrumentor {
 
             // FIXME instrument constructors
             if (mv != null && !(name.equals("<init>"))) {
-                MethodVisitor instrumentor = new InstrumentingMethodAdapter(mv, className, access, name, desc);
+                int methodId = recorder.registerMethod(className + "." + name + desc);
+                MethodVisitor instrumentor = new InstrumentingMethodAdapter(mv, methodId, access, name, desc);
                 mv = new JSRInlinerAdapter(instrumentor, access, name, desc, signature, exceptions);
             }
 
@@ -124,16 +140,20 @@ public class AsmBasedInstrumentor extends ProfilerInstrumentor {
      *
      * <pre>
      * public Object foo(int bar) {
-     *     ProfilerData.enterMethod(&quot;description&quot;);
+     *     ProfileRecorder.getInstance().enterMethod(methodId);
      *     try {
      *         // do something
      *         return object
      *     } finally {
-     *         profilerData.exitMethod(&quot;description&quot;);
+     *         ProfileRecorder.getInstance().exitMethod(methodId);
      *     }
      * }
      * </pre>
      *
+     * where {@code methodId} is a constant obtained from
+     * {@link ProfileRecorder#registerMethod(String)} when the method was
+     * instrumented.
+     * <p>
      * Java bytecode has no concept of {@code finally} in a {@code try}-
      * {@code catch}-{@code finally} block. The {@code finally} code needs to be
      * duplicated in a {@code catch} block as well as in the normal-return
@@ -145,17 +165,15 @@ public class AsmBasedInstrumentor extends ProfilerInstrumentor {
 
         private static final String EXIT_METHOD = "exitMethod";
 
-        private String className;
-        private String methodName;
+        private final int methodId;
 
         private Label startFinally = new Label();
         private Label endFinally = new Label();
 
-        protected InstrumentingMethodAdapter(MethodVisitor mv, String className, int access, String methodName, String desc) {
+        protected InstrumentingMethodAdapter(MethodVisitor mv, int methodId, int access, String methodName, String desc) {
             super(Opcodes.ASM5, mv, access, methodName, desc);
 
-            this.className = className;
-            this.methodName = methodName;
+            this.methodId = methodId;
         }
 
         @Override
@@ -197,8 +215,20 @@ public class AsmBasedInstrumentor extends ProfilerInstrumentor {
 
         private void callProfilerRecorder(String method) {
             mv.visitMethodInsn(Opcodes.INVOKESTATIC, RECORDER_CLASS_NAME, "getInstance", "()L" + RECORDER_CLASS_NAME + ";", false);
-            mv.visitLdcInsn(className + "." + methodName + methodDesc);
-            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, RECORDER_CLASS_NAME, method, "(Ljava/lang/String;)V", false);
+            pushMethodId();
+            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, RECORDER_CLASS_NAME, method, "(I)V", false);
+        }
+
+        private void pushMethodId() {
+            if (methodId <= 5) {
+                mv.visitInsn(Opcodes.ICONST_0 + methodId);
+            } else if (methodId <= Byte.MAX_VALUE) {
+                mv.visitIntInsn(Opcodes.BIPUSH, methodId);
+            } else if (methodId <= Short.MAX_VALUE) {
+                mv.visitIntInsn(Opcodes.SIPUSH, methodId);
+            } else {
+                mv.visitLdcInsn(Integer.valueOf(methodId));
+            }
         }
 
         // for debugging: insert opcodes to invoke System.exit()
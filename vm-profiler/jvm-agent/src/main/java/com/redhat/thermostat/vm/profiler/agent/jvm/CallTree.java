@@ -0,0 +1,232 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.vm.profiler.agent.jvm;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Aggregates sampled stack traces into a call tree.
+ * <p>
+ * Frames are interned: every distinct class and method name pair gets an
+ * {@code int} id once, and nodes only store these ids. The number of nodes is
+ * bounded. Once the budget is used up, samples which would need new nodes are
+ * attributed to the deepest node which already exists, so the self time of
+ * that method is overstated but the total is still correct.
+ * <p>
+ * Not thread safe.
+ */
+class CallTree {
+
+    private final int maxNodes;
+
+    private final FrameTable frames = new FrameTable();
+    private CallTreeNode root = new CallTreeNode(CallTreeNode.ROOT_FRAME);
+    private int nodeCount = 1;
+    private long samples = 0;
+    private long truncatedSamples = 0;
+
+    CallTree(int maxNodes) {
+        if (maxNodes < 1) {
+            throw new IllegalArgumentException("maxNodes must be positive");
+        }
+        this.maxNodes = maxNodes;
+    }
+
+    /**
+     * @param stack a stack trace, as returned by
+     *        {@link Thread#getStackTrace()}: the innermost frame comes first
+     */
+    void addSample(StackTraceElement[] stack) {
+        CallTreeNode node = root;
+        boolean truncated = false;
+        for (int i = stack.length - 1; i >= 0; i--) {
+            int frameId = frames.intern(stack[i].getClassName(), stack[i].getMethodName());
+            CallTreeNode child = node.getChild(frameId);
+            if (child == null) {
+                if (nodeCount >= maxNodes) {
+                    truncated = true;
+                    break;
+                }
+                child = node.addChild(frameId);
+                nodeCount++;
+            }
+            node = child;
+        }
+        node.self++;
+        samples++;
+        if (truncated) {
+            truncatedSamples++;
+        }
+    }
+
+    /** The self value of every node is the number of samples which ended there */
+    CallTreeNode getRoot() {
+        return root;
+    }
+
+    String getFrameName(int frameId) {
+        return frames.getName(frameId);
+    }
+
+    int getNodeCount() {
+        return nodeCount;
+    }
+
+    long getSampleCount() {
+        return samples;
+    }
+
+    /** @return the number of samples which did not fit in the node budget */
+    long getTruncatedSampleCount() {
+        return truncatedSamples;
+    }
+
+    /**
+     * @return the number of samples in which a method was the innermost frame,
+     *         summed over all call paths, keyed by method name
+     */
+    Map<String, Long> getSelfSamples() {
+        long[] selfSamples = new long[frames.size()];
+        List<CallTreeNode> toVisit = new ArrayList<CallTreeNode>();
+        toVisit.add(root);
+        while (!toVisit.isEmpty()) {
+            CallTreeNode node = toVisit.remove(toVisit.size() - 1);
+            if (node.getFrameId() != CallTreeNode.ROOT_FRAME) {
+                selfSamples[node.getFrameId()] += node.getSelf();
+            }
+            for (int i = 0; i < node.getChildCount(); i++) {
+                toVisit.add(node.getChildAt(i));
+            }
+        }
+
+        Map<String, Long> result = new HashMap<String, Long>();
+        for (int i = 0; i < selfSamples.length; i++) {
+            if (selfSamples[i] != 0) {
+                result.put(frames.getName(i), selfSamples[i]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Writes the tree using {@link CallTreeFormat}.
+     *
+     * @param nanosPerSample the time a single sample stands for
+     */
+    void write(OutputStream out, long nanosPerSample) throws IOException {
+        CallTreeFormat.write(out, root, frames.getNames(), nanosPerSample);
+    }
+
+    void clear() {
+        root = new CallTreeNode(CallTreeNode.ROOT_FRAME);
+        nodeCount = 1;
+        samples = 0;
+        truncatedSamples = 0;
+    }
+
+    /**
+     * Maps (class name, method name) pairs to ids. Looking up a known frame
+     * does not allocate.
+     */
+    static class FrameTable {
+
+        private static final class Frame {
+            String className;
+            String methodName;
+            int hash;
+
+            Frame(String className, String methodName) {
+                set(className, methodName);
+            }
+
+            void set(String className, String methodName) {
+                this.className = className;
+                this.methodName = methodName;
+                this.hash = 31 * className.hashCode() + methodName.hashCode();
+            }
+
+            @Override
+            public int hashCode() {
+                return hash;
+            }
+
+            @Override
+            public boolean equals(Object obj) {
+                if (!(obj instanceof Frame)) {
+                    return false;
+                }
+                Frame other = (Frame) obj;
+                return hash == other.hash
+                        && className.equals(other.className)
+                        && methodName.equals(other.methodName);
+            }
+        }
+
+        private final Map<Frame, Integer> ids = new HashMap<Frame, Integer>();
+        private final List<String> names = new ArrayList<String>();
+        private final Frame probe = new Frame("", "");
+
+        int intern(String className, String methodName) {
+            probe.set(className, methodName);
+            Integer id = ids.get(probe);
+            if (id == null) {
+                id = names.size();
+                // same format as the instrumenting profiler, minus the descriptor
+                names.add(className.replace('.', '/') + "." + methodName);
+                ids.put(new Frame(className, methodName), id);
+            }
+            return id;
+        }
+
+        String getName(int frameId) {
+            return names.get(frameId);
+        }
+
+        String[] getNames() {
+            return names.toArray(new String[names.size()]);
+        }
+
+        int size() {
+            return names.size();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.vm.profiler.agent.jvm;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes a call tree in the binary results format:
+ *
+ * <pre>
+ * int   magic (0x54505246, "TPRF")
+ * int   version (1)
+ * int   number of strings
+ *       each string, as written by {@link DataOutputStream#writeUTF(String)}
+ * int   number of nodes
+ *       each node, in depth-first pre-order, starting with the root:
+ *           int   index of the method name in the string table (-1 for the root)
+ *           int   number of children
+ *           long  self time, in nanoseconds
+ * </pre>
+ *
+ * Method names are the fully qualified class name (with {@code /} as the
+ * separator) followed by {@code .}, the method name and, if known, the
+ * method descriptor. Only names used by the tree end up in the string table.
+ * The total time of a node is not stored; it is the sum of the self times in
+ * its subtree.
+ * <p>
+ * This is read by {@code ProfilingResultParser} in vm-profiler client-core.
+ */
+class CallTreeFormat {
+
+    static final int MAGIC = 0x54505246;
+    static final int VERSION = 1;
+
+    private CallTreeFormat() {
+        // do not instantiate
+    }
+
+    /**
+     * @param names method names, indexed by frame id
+     * @param selfMultiplier the value every node's self value is multiplied
+     *        with to get nanoseconds
+     */
+    static void write(OutputStream stream, CallTreeNode root, String[] names, long selfMultiplier) throws IOException {
+        // snapshot the tree in pre-order first: the child counts are read
+        // exactly once, so children added concurrently are skipped consistently
+        int[] stringIndex = new int[names.length];
+        Arrays.fill(stringIndex, -1);
+        List<String> strings = new ArrayList<String>();
+        List<CallTreeNode> nodes = new ArrayList<CallTreeNode>();
+        int[] childCounts = new int[16];
+
+        List<CallTreeNode> toVisit = new ArrayList<CallTreeNode>();
+        toVisit.add(root);
+        while (!toVisit.isEmpty()) {
+            CallTreeNode node = toVisit.remove(toVisit.size() - 1);
+            int frameId = node.getFrameId();
+            if (frameId != CallTreeNode.ROOT_FRAME && stringIndex[frameId] == -1) {
+                stringIndex[frameId] = strings.size();
+                strings.add(names[frameId]);
+            }
+            int childCount = node.getChildCount();
+            if (nodes.size() == childCounts.length) {
+                childCounts = Arrays.copyOf(childCounts, childCounts.length * 2);
+            }
+            childCounts[nodes.size()] = childCount;
+            nodes.add(node);
+            for (int i = childCount - 1; i >= 0; i--) {
+                toVisit.add(node.getChildAt(i));
+            }
+        }
+
+        DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(strings.size());
+        for (String string : strings) {
+            out.writeUTF(string);
+        }
+        out.writeInt(nodes.size());
+        for (int i = 0; i < nodes.size(); i++) {
+            CallTreeNode node = nodes.get(i);
+            int frameId = node.getFrameId();
+            out.writeInt(frameId == CallTreeNode.ROOT_FRAME ? -1 : stringIndex[frameId]);
+            out.writeInt(childCounts[i]);
+            out.writeLong(node.getSelf() * selfMultiplier);
+        }
+        out.flush();
+    }
+}
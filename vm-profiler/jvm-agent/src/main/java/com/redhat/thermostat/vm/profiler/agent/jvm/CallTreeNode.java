@@ -0,0 +1,121 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.vm.profiler.agent.jvm;
+
+import java.util.Arrays;
+
+/**
+ * A node in a call tree. Children are identified by an {@code int} frame id;
+ * the meaning of the id (and the name it maps to) is up to the owner of the
+ * tree.
+ * <p>
+ * Only a single thread may modify a tree. Other threads may walk it
+ * concurrently: they see a consistent set of children, though the
+ * {@link #getSelf() self} values may be slightly out of date.
+ */
+public final class CallTreeNode {
+
+    /** frame id of the root of every tree */
+    public static final int ROOT_FRAME = -1;
+
+    private final int frameId;
+
+    /** time (or number of samples) spent in this node, excluding children */
+    long self;
+
+    private int[] childFrames;
+    private CallTreeNode[] children;
+    /** written last, so readers always see arrays with at least this many entries */
+    private volatile int childCount;
+
+    public CallTreeNode(int frameId) {
+        this.frameId = frameId;
+    }
+
+    public int getFrameId() {
+        return frameId;
+    }
+
+    public long getSelf() {
+        return self;
+    }
+
+    public int getChildCount() {
+        return childCount;
+    }
+
+    public CallTreeNode getChildAt(int index) {
+        return children[index];
+    }
+
+    /** @return the child with the given frame id or {@code null} */
+    public CallTreeNode getChild(int frameId) {
+        int count = childCount;
+        int[] frames = childFrames;
+        for (int i = 0; i < count; i++) {
+            if (frames[i] == frameId) {
+                return children[i];
+            }
+        }
+        return null;
+    }
+
+    /** Does not check whether a child with the same frame id exists */
+    public CallTreeNode addChild(int frameId) {
+        int count = childCount;
+        if (children == null) {
+            childFrames = new int[2];
+            children = new CallTreeNode[2];
+        } else if (count == children.length) {
+            childFrames = Arrays.copyOf(childFrames, count * 2);
+            children = Arrays.copyOf(children, count * 2);
+        }
+        CallTreeNode child = new CallTreeNode(frameId);
+        childFrames[count] = frameId;
+        children[count] = child;
+        childCount = count + 1;
+        return child;
+    }
+
+    public CallTreeNode getOrAddChild(int frameId) {
+        CallTreeNode child = getChild(frameId);
+        if (child == null) {
+            child = addChild(frameId);
+        }
+        return child;
+    }
+}
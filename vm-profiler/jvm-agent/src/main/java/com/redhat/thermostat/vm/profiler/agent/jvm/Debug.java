@@ -43,7 +43,11 @@ package com.redhat.thermostat.vm.profiler.agent.jvm;
  */
 public class Debug {
 
+    /** System property which enables verifying instrumented bytecode */
+    public static final String VERIFY_PROPERTY = "thermostat.profiler.verify";
+
     private static boolean printEnabled = false;
+    private static volatile boolean verifyEnabled = Boolean.getBoolean(VERIFY_PROPERTY);
 
     private Debug() {
         // do not instantiate
@@ -57,6 +61,18 @@ public class Debug {
         return printEnabled;
     }
 
+    /**
+     * Verifying instrumented bytecode catches bugs in the instrumentation but
+     * more than doubles the cost of transforming a class.
+     */
+    public static void setVerifyEnabled(boolean enabled) {
+        Debug.verifyEnabled = enabled;
+    }
+
+    public static boolean getVerifyEnabled() {
+        return verifyEnabled;
+    }
+
     public static void println(String message) {
         if (printEnabled) {
             System.out.println(message);
@@ -36,12 +36,12 @@
 
 package com.redhat.thermostat.vm.profiler.agent.jvm;
 
-import java.io.BufferedWriter;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.lang.instrument.Instrumentation;
 import java.lang.instrument.UnmodifiableClassException;
 import java.lang.management.ManagementFactory;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.OpenOption;
 import java.nio.file.Path;
@@ -51,33 +51,44 @@ import java.nio.file.attribute.PosixFilePermission;
 import java.nio.file.attribute.PosixFilePermissions;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicLong;
 
 public class InstrumentationControl implements InstrumentationControlMXBean {
 
+    /**
+     * Number of classes retransformed by one call. Every call stops the
+     * world, so fewer, larger, calls are cheaper, but a single class failing
+     * to transform fails the whole batch.
+     */
+    static final int RETRANSFORM_BATCH_SIZE = 500;
+
+    private static final String[] NO_PACKAGES = new String[0];
+
     private final Instrumentation instrumentation;
     private final ProfilerInstrumentor classInstrumentor;
     private final ProfileRecorder recorder;
+    private final SamplingProfiler sampler;
     private final ResultsFileCreator resultsFileCreator;
 
     private boolean profiling = false;
+    private boolean sampling = false;
 
     private boolean resultsWrittenToDisk = true;
     private String lastResults = null;
 
     public InstrumentationControl(Instrumentation instrumentation) {
-        this(instrumentation, new AsmBasedInstrumentor(), ProfileRecorder.getInstance(), new ResultsFileCreator());
+        this(instrumentation, new AsmBasedInstrumentor(), ProfileRecorder.getInstance(), new SamplingProfiler(), new ResultsFileCreator());
     }
 
     public InstrumentationControl(Instrumentation instrumentation,
             ProfilerInstrumentor instrumentor,
             ProfileRecorder recorder,
+            SamplingProfiler sampler,
             ResultsFileCreator resultsFileCreator) {
         this.instrumentation = instrumentation;
         this.classInstrumentor = instrumentor;
         this.recorder = recorder;
+        this.sampler = sampler;
         this.resultsFileCreator = resultsFileCreator;
 
         addShutdownHookToSaveData();
@@ -99,16 +110,33 @@ public class InstrumentationControl implements InstrumentationControlMXBean {
 
     @Override
     public void startProfiling() {
+        startProfiling(NO_PACKAGES, NO_PACKAGES);
+    }
+
+    @Override
+    public void startProfiling(String[] includedPackages, String[] excludedPackages) {
         if (profiling) {
             throw new IllegalStateException("Already started");
         }
         profiling = true;
         resultsWrittenToDisk = false;
 
+        classInstrumentor.setPackageFilters(includedPackages, excludedPackages);
         instrumentation.addTransformer(classInstrumentor, true);
         retransformAlreadyLoadedClasses(instrumentation, classInstrumentor);
     }
 
+    @Override
+    public void startSampling(long intervalMillis) {
+        if (profiling) {
+            throw new IllegalStateException("Already started");
+        }
+        sampler.start(intervalMillis);
+        profiling = true;
+        sampling = true;
+        resultsWrittenToDisk = false;
+    }
+
     @Override
     public void stopProfiling() {
         if (!profiling) {
@@ -116,11 +144,16 @@ public class InstrumentationControl implements InstrumentationControlMXBean {
         }
         profiling = false;
 
-        instrumentation.removeTransformer(classInstrumentor);
-        retransformAlreadyLoadedClasses(instrumentation, classInstrumentor);
+        if (sampling) {
+            sampler.stop();
+        } else {
+            instrumentation.removeTransformer(classInstrumentor);
+            retransformAlreadyLoadedClasses(instrumentation, classInstrumentor);
+        }
 
         writeProfilingResultsToDisk();
         clearProfileData();
+        sampling = false;
     }
 
     private void retransformAlreadyLoadedClasses(Instrumentation instrumentation, ProfilerInstrumentor profiler) {
@@ -146,15 +179,15 @@ public class InstrumentationControl implements InstrumentationControlMXBean {
 
         if (toTransform.size() > 0) {
             Debug.println("AGENT: Retransforming " + toTransform.size() + " classes");
-            for (Class<?> klass : toTransform) {
+            for (int from = 0; from < toTransform.size(); from += RETRANSFORM_BATCH_SIZE) {
+                List<Class<?>> batch = toTransform.subList(from, Math.min(from + RETRANSFORM_BATCH_SIZE, toTransform.size()));
                 try {
-                    instrumentation.retransformClasses(klass);
+                    instrumentation.retransformClasses(batch.toArray(new Class<?>[batch.size()]));
                 } catch (UnmodifiableClassException e) {
                     throw new AssertionError("Tried to modify an unmodifiable class", e);
                 } catch (Error e) {
-                    Debug.printlnError("Failed to transform: " + klass.getName());
-                    Debug.printlnError("Unable to retransform all classes. Some classes may not have been instrumented correctly!");
-                    Debug.printStackTrace(e);
+                    // find out which classes in the batch are at fault
+                    retransformOneByOne(instrumentation, batch);
                 }
             }
         }
@@ -162,6 +195,20 @@ public class InstrumentationControl implements InstrumentationControlMXBean {
         Debug.println("AGENT: Retansforming took: " + (end - start) + "ns");
     }
 
+    private void retransformOneByOne(Instrumentation instrumentation, List<Class<?>> classes) {
+        for (Class<?> klass : classes) {
+            try {
+                instrumentation.retransformClasses(klass);
+            } catch (UnmodifiableClassException e) {
+                throw new AssertionError("Tried to modify an unmodifiable class", e);
+            } catch (Error e) {
+                Debug.printlnError("Failed to transform: " + klass.getName());
+                Debug.printlnError("Unable to retransform all classes. Some classes may not have been instrumented correctly!");
+                Debug.printStackTrace(e);
+            }
+        }
+    }
+
     private void writeResultsToDiskIfNotWritten() {
         if (!resultsWrittenToDisk) {
             writeProfilingResultsToDisk();
@@ -172,13 +219,14 @@ public class InstrumentationControl implements InstrumentationControlMXBean {
         try {
             ResultsFile resultsFile = resultsFileCreator.get();
             String path = resultsFile.getPath();
-            BufferedWriter out = null;
+            OutputStream out = null;
             try {
-                out = resultsFile.getWriter();
-                Map<String, AtomicLong> data = recorder.getData();
-                Debug.println("AGENT: Writing " + data.size() + " results to: " + path);
-                for (Map.Entry<String, AtomicLong> entry : data.entrySet()) {
-                    out.write(entry.getValue().get() + "\t" + entry.getKey() + "\n");
+                out = resultsFile.getOutputStream();
+                Debug.println("AGENT: Writing results to: " + path);
+                if (sampling) {
+                    sampler.writeResults(out);
+                } else {
+                    recorder.writeResults(out);
                 }
                 resultsWrittenToDisk = true;
                 lastResults = path;
@@ -198,7 +246,11 @@ public class InstrumentationControl implements InstrumentationControlMXBean {
     }
 
     private void clearProfileData() {
-        recorder.clearData();
+        if (sampling) {
+            sampler.clearData();
+        } else {
+            recorder.clearData();
+        }
     }
 
     @Override
@@ -252,14 +304,14 @@ public class InstrumentationControl implements InstrumentationControlMXBean {
 
         String getPath() { return path.toString(); }
 
-        /** Caller must close the writer when done */
-        BufferedWriter getWriter() throws IOException {
+        /** Caller must close the stream when done */
+        OutputStream getOutputStream() throws IOException {
             OpenOption[] options = new OpenOption[] {
                     StandardOpenOption.WRITE,
                     StandardOpenOption.TRUNCATE_EXISTING
             };
 
-            return Files.newBufferedWriter(path, StandardCharsets.UTF_8, options);
+            return new BufferedOutputStream(Files.newOutputStream(path, options));
         }
     }
 }
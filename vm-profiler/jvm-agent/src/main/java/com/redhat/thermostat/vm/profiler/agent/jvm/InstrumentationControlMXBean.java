@@ -42,7 +42,25 @@ public interface InstrumentationControlMXBean {
     /** Enable profiling. */
     void startProfiling();
 
-    /** Disable profiling */
+    /**
+     * Enable profiling, but only instrument some classes.
+     *
+     * @param includedPackages if not empty, only classes in these packages
+     *        (and their sub-packages) are instrumented
+     * @param excludedPackages classes in these packages (and their
+     *        sub-packages) are not instrumented
+     */
+    void startProfiling(String[] includedPackages, String[] excludedPackages);
+
+    /**
+     * Enable profiling by sampling thread stacks instead of instrumenting
+     * code.
+     *
+     * @param intervalMillis the time between two samples
+     */
+    void startSampling(long intervalMillis);
+
+    /** Disable profiling, no matter how it was started */
     void stopProfiling();
 
     /** @return whether profiling is currently active or not */
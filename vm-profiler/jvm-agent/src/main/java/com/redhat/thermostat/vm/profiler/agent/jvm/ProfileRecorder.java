@@ -36,34 +36,82 @@
 
 package com.redhat.thermostat.vm.profiler.agent.jvm;
 
-import java.util.ArrayDeque;
-import java.util.Deque;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Records the time spent in instrumented methods, per call path.
+ * <p>
+ * Methods are identified by an {@code int} id which is assigned once, at
+ * instrumentation time, by {@link #registerMethod(String)}. Every thread
+ * keeps its own call stack and call tree (with method ids as frame ids) in a
+ * {@link ThreadLocal}, so {@link #enterMethod(int)} and
+ * {@link #exitMethod(int)} neither lock nor, once a call path has been seen,
+ * allocate. Per-thread trees are only merged when the results are requested.
+ * <p>
+ * The number of nodes in all threads' trees together is bounded by a budget
+ * which the threads share. Once the budget is used up, the time spent in
+ * callees on new call paths is attributed to the deepest node which already
+ * exists. {@link #clearData()} starts over with a full budget.
+ */
 public class ProfileRecorder {
 
+    /** Upper bound for the size of the call trees of all threads together */
+    static final int DEFAULT_MAX_NODES = 100000;
+
     private static final ProfileRecorder profileRecorder = new ProfileRecorder(new TimeSource());
 
-    /** shared between threads */
-    private ConcurrentHashMap<String, AtomicLong> profileData = new ConcurrentHashMap<String, AtomicLong>();
+    private static final int INITIAL_STACK_DEPTH = 64;
+    private static final int INITIAL_METHOD_COUNT = 256;
+
+    private final TimeSource timeSource;
+    private final int maxNodes;
+
+    /** guards methodIds, methodNames, threadData and remainingNodes */
+    private final Object lock = new Object();
+
+    private final Map<String, Integer> methodIds = new HashMap<String, Integer>();
+    private String[] methodNames = new String[INITIAL_METHOD_COUNT];
+
+    /** every ThreadData of the current generation, for merging */
+    private List<ThreadData> threadData = new ArrayList<ThreadData>();
 
-    // TODO deal with thread id wrap-around
+    /** the node budget of the current generation, shared by all threads */
+    private AtomicInteger remainingNodes;
 
     /**
-     * thread id -> info.
-     * <p>
-     * only the thread with the matching thread id is allowed to mutate 'info'
+     * Incremented by {@link #clearData()}. A thread notices the change on
+     * its next method enter/exit and starts a new tree.
      */
-    private Map<Long, Info> threads = new ConcurrentHashMap<Long, Info>();
+    private volatile int generation = 0;
 
-    private final TimeSource timeSource;
+    private final ThreadLocal<ThreadData> localData = new ThreadLocal<ThreadData>() {
+        @Override
+        protected ThreadData initialValue() {
+            return new ThreadData();
+        }
+    };
 
-    final static class Info {
-        public Deque<String> stackFrames = new ArrayDeque<String>();
-        public long timeStamp = Long.MIN_VALUE;
+    /**
+     * Only the owning thread is allowed to mutate this. Other threads only
+     * walk {@link #root} while holding {@link ProfileRecorder#lock}.
+     */
+    final static class ThreadData {
+        int[] stack = new int[INITIAL_STACK_DEPTH];
+        /** nodes[d] is the tree node for the first d methods on the stack */
+        CallTreeNode[] nodes = new CallTreeNode[INITIAL_STACK_DEPTH + 1];
+        int depth = 0;
+        long timeStamp = Long.MIN_VALUE;
+        volatile CallTreeNode root;
+        /** the node budget of this thread's generation */
+        AtomicInteger remainingNodes;
+        int generation = -1;
     }
 
     /** for testing */
@@ -75,75 +123,214 @@ public class ProfileRecorder {
 
     /** for testing only */
     ProfileRecorder(TimeSource timeSource) {
+        this(timeSource, DEFAULT_MAX_NODES);
+    }
+
+    /** for testing only */
+    ProfileRecorder(TimeSource timeSource, int maxNodes) {
+        if (maxNodes < 1) {
+            throw new IllegalArgumentException("maxNodes must be positive");
+        }
         this.timeSource = timeSource;
+        this.maxNodes = maxNodes;
+        this.remainingNodes = new AtomicInteger(maxNodes);
     }
 
     public static ProfileRecorder getInstance() {
         return profileRecorder;
     }
 
+    /**
+     * Called at instrumentation time. Registering the same method again
+     * (for example, when a class is re-instrumented) returns the same id.
+     *
+     * @return the id that instrumented code should pass to
+     *         {@link #enterMethod(int)} and {@link #exitMethod(int)}
+     */
+    public int registerMethod(String fullyQualifiedName) {
+        synchronized (lock) {
+            Integer id = methodIds.get(fullyQualifiedName);
+            if (id == null) {
+                id = methodIds.size();
+                if (id == methodNames.length) {
+                    methodNames = Arrays.copyOf(methodNames, methodNames.length * 2);
+                }
+                methodNames[id] = fullyQualifiedName;
+                methodIds.put(fullyQualifiedName, id);
+            }
+            return id;
+        }
+    }
+
     /** called by instrumented code on every method enter */
-    public void enterMethod(String fullyQualifiedName) {
+    public void enterMethod(int methodId) {
         long currentTime = timeSource.nanoTime();
-        long threadId = Thread.currentThread().getId();
-
-        Info info = threads.get(threadId);
-
-        if (info == null) {
-            info = new Info();
-            threads.put(threadId, info);
-        }
+        ThreadData info = getThreadData();
 
-        if (info.stackFrames.size() != 0) {
+        CallTreeNode caller = info.nodes[info.depth];
+        if (info.depth != 0) {
             // update time for previous method on the stack
-            Long oldTime = info.timeStamp;
-            long diff = currentTime - oldTime;
-            addData(info.stackFrames.peek(), diff);
+            caller.self += currentTime - info.timeStamp;
         }
 
+        if (info.depth == info.stack.length) {
+            info.stack = Arrays.copyOf(info.stack, info.stack.length * 2);
+            info.nodes = Arrays.copyOf(info.nodes, info.stack.length + 1);
+        }
+        info.stack[info.depth] = methodId;
+        info.depth++;
+        info.nodes[info.depth] = getCallee(info, caller, methodId);
         info.timeStamp = currentTime;
-        info.stackFrames.push(fullyQualifiedName);
     }
 
     /** called by instrumented code on every method exit */
-    public void exitMethod(String fullyQualifiedName) {
+    public void exitMethod(int methodId) {
         long currentTime = timeSource.nanoTime();
-        long threadId = Thread.currentThread().getId();
+        ThreadData info = getThreadData();
+
+        if (info.depth == 0 || info.stack[info.depth - 1] != methodId) {
+            throw new AssertionError("should not happen:\n"
+                    + "name: '" + getMethodName(methodId) + "'\n"
+                    + "stack top: '" + (info.depth == 0 ? null : getMethodName(info.stack[info.depth - 1])) + "'\n"
+                    + "stack depth: " + info.depth);
+        }
 
-        Info info = threads.get(threadId);
-        Queue<String> stack = info.stackFrames;
+        info.nodes[info.depth].self += currentTime - info.timeStamp;
+        info.nodes[info.depth] = null;
+        info.depth--;
+        info.timeStamp = currentTime;
+    }
 
-        Long oldTime = info.timeStamp;
-        long diff = currentTime - oldTime;
+    private CallTreeNode getCallee(ThreadData info, CallTreeNode caller, int methodId) {
+        CallTreeNode callee = caller.getChild(methodId);
+        if (callee == null) {
+            if (!takeNode(info.remainingNodes)) {
+                return caller;
+            }
+            callee = caller.addChild(methodId);
+        }
+        return callee;
+    }
 
-        if (!fullyQualifiedName.equals(stack.peek())) {
-            throw new AssertionError("should not happen:\n"
-                    + "name: '" + fullyQualifiedName + "'\n"
-                    + "stack top: '" + stack.peek() + "'\n"
-                    + "stack: " + stack);
+    private static boolean takeNode(AtomicInteger remaining) {
+        // check first, so threads stop writing to the shared counter once
+        // the budget is used up
+        return remaining.get() > 0 && remaining.getAndDecrement() > 0;
+    }
+
+    private ThreadData getThreadData() {
+        ThreadData info = localData.get();
+        int currentGeneration = generation;
+        if (info.generation != currentGeneration) {
+            synchronized (lock) {
+                info.generation = generation;
+                info.remainingNodes = remainingNodes;
+                resetTree(info);
+                threadData.add(info);
+            }
         }
+        return info;
+    }
 
-        addData(stack.poll(), diff);
+    /**
+     * Starts a new tree which contains the methods currently on the stack.
+     * Roots don't count against the node budget.
+     */
+    private void resetTree(ThreadData info) {
+        CallTreeNode root = new CallTreeNode(CallTreeNode.ROOT_FRAME);
+        info.nodes[0] = root;
+        for (int i = 0; i < info.depth; i++) {
+            info.nodes[i + 1] = getCallee(info, info.nodes[i], info.stack[i]);
+        }
+        info.root = root;
+    }
 
-        info.timeStamp = currentTime;
+    private String getMethodName(int methodId) {
+        synchronized (lock) {
+            if (methodId < 0 || methodId >= methodIds.size()) {
+                return "<unknown method " + methodId + ">";
+            }
+            return methodNames[methodId];
+        }
     }
 
-    private void addData(String dataName, long time) {
-        AtomicLong value = profileData.get(dataName);
-        if (value == null) {
-            value = profileData.putIfAbsent(dataName, new AtomicLong(time));
+    /**
+     * Merges the data recorded by all threads so far.
+     *
+     * @return a map of method names to the total time (in nanoseconds)
+     *         spent in them, excluding the time spent in callees.
+     */
+    public Map<String, Long> getData() {
+        synchronized (lock) {
+            long[] total = new long[methodIds.size()];
+            List<CallTreeNode> toVisit = new ArrayList<CallTreeNode>();
+            for (ThreadData info : threadData) {
+                toVisit.add(info.root);
+                while (!toVisit.isEmpty()) {
+                    CallTreeNode node = toVisit.remove(toVisit.size() - 1);
+                    if (node.getFrameId() != CallTreeNode.ROOT_FRAME) {
+                        total[node.getFrameId()] += node.getSelf();
+                    }
+                    for (int i = 0; i < node.getChildCount(); i++) {
+                        toVisit.add(node.getChildAt(i));
+                    }
+                }
+            }
+
+            Map<String, Long> result = new HashMap<String, Long>();
+            for (int i = 0; i < total.length; i++) {
+                if (total[i] != 0) {
+                    result.put(methodNames[i], total[i]);
+                }
+            }
+            return result;
         }
-        if (value != null) {
-            value.addAndGet(time);
+    }
+
+    /**
+     * Merges the call trees of all threads recorded so far and writes the
+     * result using {@link CallTreeFormat}.
+     */
+    public void writeResults(OutputStream out) throws IOException {
+        CallTreeNode merged;
+        String[] names;
+        synchronized (lock) {
+            merged = mergeThreadTrees();
+            names = Arrays.copyOf(methodNames, methodIds.size());
         }
+        CallTreeFormat.write(out, merged, names, 1);
     }
 
-    public Map<String, AtomicLong> getData() {
-        return profileData;
+    /** package private for testing */
+    CallTreeNode mergeThreadTrees() {
+        synchronized (lock) {
+            CallTreeNode merged = new CallTreeNode(CallTreeNode.ROOT_FRAME);
+            // pairs of (source, target) nodes
+            List<CallTreeNode> toVisit = new ArrayList<CallTreeNode>();
+            for (ThreadData info : threadData) {
+                toVisit.add(info.root);
+                toVisit.add(merged);
+                while (!toVisit.isEmpty()) {
+                    CallTreeNode target = toVisit.remove(toVisit.size() - 1);
+                    CallTreeNode source = toVisit.remove(toVisit.size() - 1);
+                    target.self += source.getSelf();
+                    for (int i = 0; i < source.getChildCount(); i++) {
+                        CallTreeNode child = source.getChildAt(i);
+                        toVisit.add(child);
+                        toVisit.add(target.getOrAddChild(child.getFrameId()));
+                    }
+                }
+            }
+            return merged;
+        }
     }
 
     public void clearData() {
-        profileData.clear();
+        synchronized (lock) {
+            threadData = new ArrayList<ThreadData>();
+            remainingNodes = new AtomicInteger(maxNodes);
+            generation++;
+        }
     }
 
 }
@@ -41,24 +41,55 @@ import java.lang.instrument.IllegalClassFormatException;
 import java.security.ProtectionDomain;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Pattern;
 
 public abstract class ProfilerInstrumentor implements ClassFileTransformer {
 
-    private static List<Pattern> ignorePackageRegexps = new ArrayList<Pattern>();
-
-    static {
+    /** Classes in these packages are never instrumented */
+    private static final String[] IGNORED_PACKAGES = new String[] {
         // jdk packages
-        ignorePackageRegexps.add(Pattern.compile("java\\..*"));
-        ignorePackageRegexps.add(Pattern.compile("javax\\..*"));
-        ignorePackageRegexps.add(Pattern.compile("com\\.sun\\..*"));
-        ignorePackageRegexps.add(Pattern.compile("sun\\..*"));
-        ignorePackageRegexps.add(Pattern.compile("jdk\\..*"));
+        "java.",
+        "javax.",
+        "com.sun.",
+        "sun.",
+        "jdk.",
 
         // this class
-        ignorePackageRegexps.add(Pattern.compile("com\\.redhat\\.thermostat\\.vm\\.profiler\\.agent\\.jvm\\..*"));
+        "com.redhat.thermostat.vm.profiler.agent.jvm.",
         // our dependencies: shaded asm
-        ignorePackageRegexps.add(Pattern.compile("com\\.redhat\\.thermostat\\.vm\\.profiler\\.agent\\.asm\\..*"));
+        "com.redhat.thermostat.vm.profiler.agent.asm.",
+    };
+
+    private static final String[] NO_PACKAGES = new String[0];
+
+    /** if not empty, only classes in these packages are instrumented */
+    private volatile String[] includedPackages = NO_PACKAGES;
+    private volatile String[] excludedPackages = NO_PACKAGES;
+
+    /**
+     * Limits instrumentation to some packages. Sub-packages are included.
+     * Packages which are never instrumented (like the JDK's) can not be
+     * included.
+     *
+     * @param includedPackages if not empty, only classes in these packages
+     *        (and not in {@code excludedPackages}) are instrumented
+     * @param excludedPackages classes in these packages are not instrumented
+     */
+    public void setPackageFilters(String[] includedPackages, String[] excludedPackages) {
+        this.includedPackages = toPrefixes(includedPackages);
+        this.excludedPackages = toPrefixes(excludedPackages);
+    }
+
+    private static String[] toPrefixes(String[] packages) {
+        List<String> prefixes = new ArrayList<String>();
+        if (packages != null) {
+            for (String packageName : packages) {
+                String trimmed = packageName.trim();
+                if (trimmed.length() > 0) {
+                    prefixes.add(trimmed.endsWith(".") ? trimmed : trimmed + ".");
+                }
+            }
+        }
+        return prefixes.toArray(new String[prefixes.size()]);
     }
 
     @Override
@@ -67,17 +98,18 @@ public abstract class ProfilerInstrumentor implements ClassFileTransformer {
             ProtectionDomain protectionDomain, byte[] classfileBuffer)
             throws IllegalClassFormatException {
 
-        if (!loader.equals(classBeingRedefined.getClassLoader())) {
-            String message = "ERROR: classloader " + loader + " didn't load " + className;
-            Debug.println(message);
-            throw new AssertionError(message);
-        }
-
+        // check the (cheap) filters first: most classes are not instrumented
         className = className.replace('/', '.');
         if (!shouldInstrument(className)) {
             return null;
         }
 
+        if (classBeingRedefined != null && classBeingRedefined.getClassLoader() != loader) {
+            String message = "ERROR: classloader " + loader + " didn't load " + className;
+            Debug.println(message);
+            throw new AssertionError(message);
+        }
+
         // System.out.println("transforming '" + className + "'");
 
         return transform(loader, className, classfileBuffer);
@@ -97,20 +129,30 @@ public abstract class ProfilerInstrumentor implements ClassFileTransformer {
         if (className == null) {
             return true;
         }
-        for (Pattern packagePattern : ignorePackageRegexps) {
-            if (packagePattern.matcher(className).matches()) {
-                return false;
-            }
+        if (startsWithAny(className, IGNORED_PACKAGES)) {
+            return false;
         }
 
         if (className.startsWith(ProfilerInstrumentor.class.getName())) {
             return false;
         }
 
-        return true;
+        String[] included = includedPackages;
+        if (included.length > 0 && !startsWithAny(className, included)) {
+            return false;
+        }
+        return !startsWithAny(className, excludedPackages);
+    }
+
+    private static boolean startsWithAny(String className, String[] prefixes) {
+        for (String prefix : prefixes) {
+            if (className.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     public abstract byte[] transform(ClassLoader cl, String className, byte[] classBytes);
 
 }
-
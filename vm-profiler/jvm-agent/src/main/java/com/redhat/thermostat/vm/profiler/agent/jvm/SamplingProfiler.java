@@ -0,0 +1,176 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.vm.profiler.agent.jvm;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A profiler that periodically captures the stacks of all runnable threads
+ * instead of instrumenting code. Much cheaper than the instrumenting profiler,
+ * but the results are statistical: the time reported for a method is the
+ * number of samples in which it was executing multiplied by the sampling
+ * interval.
+ */
+public class SamplingProfiler {
+
+    /** Upper bound for the size of the call tree; a few MB of memory */
+    static final int DEFAULT_MAX_NODES = 100000;
+
+    private static final String THREAD_NAME = "thermostat-profiler-sampler";
+
+    /** for testing */
+    static class StackSource {
+        Map<Thread, StackTraceElement[]> getAllStackTraces() {
+            return Thread.getAllStackTraces();
+        }
+    }
+
+    private final StackSource stackSource;
+    private final CallTree callTree;
+
+    private Thread samplerThread;
+    private long intervalNanos;
+
+    public SamplingProfiler() {
+        this(new StackSource(), DEFAULT_MAX_NODES);
+    }
+
+    /** for testing only */
+    SamplingProfiler(StackSource stackSource, int maxNodes) {
+        this.stackSource = stackSource;
+        this.callTree = new CallTree(maxNodes);
+    }
+
+    public synchronized void start(long intervalMillis) {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("sampling interval must be positive");
+        }
+        if (samplerThread != null) {
+            throw new IllegalStateException("Already sampling");
+        }
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        final long interval = intervalMillis;
+        samplerThread = new Thread(THREAD_NAME) {
+            @Override
+            public void run() {
+                sampleUntilInterrupted(this, interval);
+            }
+        };
+        samplerThread.setDaemon(true);
+        samplerThread.start();
+    }
+
+    public void stop() {
+        Thread toStop;
+        synchronized (this) {
+            if (samplerThread == null) {
+                throw new IllegalStateException("Not sampling");
+            }
+            toStop = samplerThread;
+            samplerThread = null;
+        }
+        toStop.interrupt();
+        try {
+            toStop.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void sampleUntilInterrupted(Thread self, long intervalMillis) {
+        while (!self.isInterrupted()) {
+            sample(stackSource.getAllStackTraces(), self);
+            try {
+                Thread.sleep(intervalMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /** package private for testing */
+    synchronized void sample(Map<Thread, StackTraceElement[]> stacks, Thread self) {
+        for (Map.Entry<Thread, StackTraceElement[]> entry : stacks.entrySet()) {
+            Thread thread = entry.getKey();
+            StackTraceElement[] stack = entry.getValue();
+            // only threads using the CPU are interesting
+            if (thread == self || stack.length == 0 || thread.getState() != Thread.State.RUNNABLE) {
+                continue;
+            }
+            callTree.addSample(stack);
+        }
+    }
+
+    /**
+     * @return a map of method names to the estimated time (in nanoseconds)
+     *         spent in them. Method names do not include the descriptor, as
+     *         stack traces do not contain it.
+     */
+    public synchronized Map<String, Long> getData() {
+        Map<String, Long> selfSamples = callTree.getSelfSamples();
+        Map<String, Long> result = new HashMap<String, Long>();
+        for (Map.Entry<String, Long> entry : selfSamples.entrySet()) {
+            result.put(entry.getKey(), entry.getValue() * intervalNanos);
+        }
+        if (callTree.getTruncatedSampleCount() > 0) {
+            Debug.println("AGENT: " + callTree.getTruncatedSampleCount() + " of "
+                    + callTree.getSampleCount() + " samples exceeded the call tree size limit");
+        }
+        return result;
+    }
+
+    /**
+     * Writes the sampled call tree using {@link CallTreeFormat}. The time of
+     * every node is the number of samples multiplied by the sampling interval.
+     */
+    public synchronized void writeResults(OutputStream out) throws IOException {
+        callTree.write(out, intervalNanos);
+    }
+
+    public synchronized void clearData() {
+        callTree.clear();
+    }
+
+    /** package private for testing */
+    synchronized CallTree getCallTree() {
+        return callTree;
+    }
+}
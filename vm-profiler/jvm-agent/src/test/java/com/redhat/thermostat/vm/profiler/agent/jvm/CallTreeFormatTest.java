@@ -0,0 +1,100 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.vm.profiler.agent.jvm;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class CallTreeFormatTest {
+
+    @Test
+    public void treeIsWrittenInPreOrderWithOnlyUsedNames() throws IOException {
+        String[] names = new String[] { "unused", "main", "work", "idle" };
+        CallTreeNode root = new CallTreeNode(CallTreeNode.ROOT_FRAME);
+        CallTreeNode main = root.addChild(1);
+        main.self = 1;
+        CallTreeNode work = main.addChild(2);
+        work.self = 3;
+        CallTreeNode idle = main.addChild(3);
+        idle.self = 5;
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CallTreeFormat.write(bytes, root, names, 10);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(CallTreeFormat.MAGIC, in.readInt());
+        assertEquals(CallTreeFormat.VERSION, in.readInt());
+
+        assertEquals(3, in.readInt());
+        assertEquals("main", in.readUTF());
+        assertEquals("work", in.readUTF());
+        assertEquals("idle", in.readUTF());
+
+        assertEquals(4, in.readInt());
+        assertNode(in, -1, 1, 0);
+        assertNode(in, 0, 2, 10);
+        assertNode(in, 1, 0, 30);
+        assertNode(in, 2, 0, 50);
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    public void emptyTreeOnlyHasRoot() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CallTreeFormat.write(bytes, new CallTreeNode(CallTreeNode.ROOT_FRAME), new String[0], 1);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        in.readInt();
+        in.readInt();
+        assertEquals(0, in.readInt());
+        assertEquals(1, in.readInt());
+        assertNode(in, -1, 0, 0);
+        assertEquals(-1, in.read());
+    }
+
+    private static void assertNode(DataInputStream in, int nameIndex, int childCount, long self) throws IOException {
+        assertEquals(nameIndex, in.readInt());
+        assertEquals(childCount, in.readInt());
+        assertEquals(self, in.readLong());
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.vm.profiler.agent.jvm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+public class CallTreeTest {
+
+    private static StackTraceElement[] stack(String... methods) {
+        // innermost frame first, like Thread.getStackTrace()
+        StackTraceElement[] result = new StackTraceElement[methods.length];
+        for (int i = 0; i < methods.length; i++) {
+            int dot = methods[i].lastIndexOf('.');
+            result[methods.length - 1 - i] = new StackTraceElement(
+                    methods[i].substring(0, dot), methods[i].substring(dot + 1), null, i);
+        }
+        return result;
+    }
+
+    private static long total(CallTreeNode node) {
+        long total = node.getSelf();
+        for (int i = 0; i < node.getChildCount(); i++) {
+            total += total(node.getChildAt(i));
+        }
+        return total;
+    }
+
+    @Test
+    public void samplesAreMergedIntoATree() {
+        CallTree tree = new CallTree(100);
+
+        tree.addSample(stack("a.Main.main", "a.Main.work", "a.Main.compute"));
+        tree.addSample(stack("a.Main.main", "a.Main.work", "a.Main.compute"));
+        tree.addSample(stack("a.Main.main", "a.Main.work"));
+        tree.addSample(stack("a.Main.main", "a.Main.idle"));
+
+        assertEquals(4, tree.getSampleCount());
+        // root, main, work, compute, idle
+        assertEquals(5, tree.getNodeCount());
+
+        CallTreeNode root = tree.getRoot();
+        assertEquals(4, total(root));
+        assertEquals(1, root.getChildCount());
+
+        CallTreeNode main = root.getChildAt(0);
+        assertEquals("a/Main.main", tree.getFrameName(main.getFrameId()));
+        assertEquals(4, total(main));
+        assertEquals(0, main.getSelf());
+        assertEquals(2, main.getChildCount());
+
+        CallTreeNode work = main.getChildAt(0);
+        assertEquals("a/Main.work", tree.getFrameName(work.getFrameId()));
+        assertEquals(3, total(work));
+        assertEquals(1, work.getSelf());
+    }
+
+    @Test
+    public void selfSamplesAreSummedOverCallPaths() {
+        CallTree tree = new CallTree(100);
+
+        tree.addSample(stack("a.Main.main", "a.Main.first", "a.Util.hash"));
+        tree.addSample(stack("a.Main.main", "a.Main.second", "a.Util.hash"));
+        tree.addSample(stack("a.Main.main", "a.Main.second"));
+
+        Map<String, Long> selfSamples = tree.getSelfSamples();
+
+        assertEquals(2, selfSamples.size());
+        assertEquals(2l, (long) selfSamples.get("a/Util.hash"));
+        assertEquals(1l, (long) selfSamples.get("a/Main.second"));
+        assertNull(selfSamples.get("a/Main.main"));
+    }
+
+    @Test
+    public void samplesBeyondNodeBudgetAreAttributedToDeepestKnownNode() {
+        // root, main and work fit, compute does not
+        CallTree tree = new CallTree(3);
+
+        tree.addSample(stack("a.Main.main", "a.Main.work"));
+        tree.addSample(stack("a.Main.main", "a.Main.work", "a.Main.compute"));
+
+        assertEquals(3, tree.getNodeCount());
+        assertEquals(1, tree.getTruncatedSampleCount());
+        assertEquals(2l, (long) tree.getSelfSamples().get("a/Main.work"));
+    }
+
+    @Test
+    public void clearDiscardsSamples() {
+        CallTree tree = new CallTree(100);
+        tree.addSample(stack("a.Main.main"));
+        CallTreeNode oldRoot = tree.getRoot();
+
+        tree.clear();
+
+        assertEquals(0, tree.getSampleCount());
+        assertEquals(1, tree.getNodeCount());
+        assertEquals(0, tree.getSelfSamples().size());
+        assertEquals(0, total(tree.getRoot()));
+        assertEquals(1, total(oldRoot));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nodeBudgetMustBePositive() {
+        new CallTree(0);
+    }
+}
@@ -39,20 +39,22 @@ package com.redhat.thermostat.vm.profiler.agent.jvm;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
-import java.io.BufferedWriter;
-import java.io.StringWriter;
+import java.io.ByteArrayOutputStream;
 import java.lang.instrument.Instrumentation;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.Arrays;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.InOrder;
 
 import com.redhat.thermostat.vm.profiler.agent.jvm.InstrumentationControl.ResultsFile;
 import com.redhat.thermostat.vm.profiler.agent.jvm.InstrumentationControl.ResultsFileCreator;
@@ -62,11 +64,12 @@ public class InstrumentationControlTest {
     private Instrumentation instrumentation;
     private ProfilerInstrumentor instrumentor;
     private ProfileRecorder recorder;
+    private SamplingProfiler sampler;
     private ResultsFileCreator resultsFileCreator;
     private ResultsFile resultsFile;
 
     private InstrumentationControl control;
-    private StringWriter dataWriter;
+    private ByteArrayOutputStream dataStream;
 
     @Before
     public void setUp() throws Exception {
@@ -78,15 +81,16 @@ public class InstrumentationControlTest {
         when(instrumentor.shouldInstrument(Object.class)).thenReturn(true);
 
         recorder = mock(ProfileRecorder.class);
+        sampler = mock(SamplingProfiler.class);
 
-        dataWriter = new StringWriter();
+        dataStream = new ByteArrayOutputStream();
         resultsFile = mock(ResultsFile.class);
-        when(resultsFile.getWriter()).thenReturn(new BufferedWriter(dataWriter));
+        when(resultsFile.getOutputStream()).thenReturn(dataStream);
 
         resultsFileCreator = mock(ResultsFileCreator.class);
         when(resultsFileCreator.get()).thenReturn(resultsFile);
 
-        control = new InstrumentationControl(instrumentation, instrumentor, recorder, resultsFileCreator);
+        control = new InstrumentationControl(instrumentation, instrumentor, recorder, sampler, resultsFileCreator);
     }
 
     @Test
@@ -119,6 +123,43 @@ public class InstrumentationControlTest {
         verify(instrumentation).retransformClasses(new Class[] { Object.class });
     }
 
+    @Test
+    public void startProfilingSetsPackageFiltersBeforeInstrumenting() throws Exception {
+        String[] included = new String[] { "com.example" };
+        String[] excluded = new String[] { "com.example.generated" };
+
+        control.startProfiling(included, excluded);
+
+        InOrder inOrder = inOrder(instrumentor, instrumentation);
+        inOrder.verify(instrumentor).setPackageFilters(included, excluded);
+        inOrder.verify(instrumentation).addTransformer(instrumentor, true);
+    }
+
+    @Test
+    public void classesAreRetransformedInBatches() throws Exception {
+        Class<?>[] loaded = new Class<?>[InstrumentationControl.RETRANSFORM_BATCH_SIZE + 1];
+        Arrays.fill(loaded, Object.class);
+        when(instrumentation.getAllLoadedClasses()).thenReturn(loaded);
+
+        control.startProfiling();
+
+        verify(instrumentation).retransformClasses(Arrays.copyOf(loaded, InstrumentationControl.RETRANSFORM_BATCH_SIZE));
+        verify(instrumentation).retransformClasses(new Class[] { Object.class });
+    }
+
+    @Test
+    public void failedBatchIsRetransformedOneByOne() throws Exception {
+        when(instrumentation.isModifiableClass(String.class)).thenReturn(true);
+        when(instrumentor.shouldInstrument(String.class)).thenReturn(true);
+        when(instrumentation.getAllLoadedClasses()).thenReturn(new Class[] { Object.class, String.class });
+        doThrow(new VerifyError()).when(instrumentation).retransformClasses(new Class[] { Object.class, String.class });
+
+        control.startProfiling();
+
+        verify(instrumentation).retransformClasses(new Class[] { Object.class });
+        verify(instrumentation).retransformClasses(new Class[] { String.class });
+    }
+
     @Test
     public void stopProfilingInstrumentsAllCode() throws Exception {
         control.startProfiling();
@@ -133,17 +174,13 @@ public class InstrumentationControlTest {
     public void stopProfilingSavesProfilingResultsToDisk() throws Exception {
         final String DATA_LOCATION = "foobar";
 
-        Map<String, AtomicLong> profileData = new HashMap<String, AtomicLong>();
-        profileData.put("foo", new AtomicLong(1));
-        when(recorder.getData()).thenReturn(profileData);
-
         when(resultsFile.getPath()).thenReturn(DATA_LOCATION);
         control.startProfiling();
 
         control.stopProfiling();
 
-        verify(resultsFile).getWriter();
-        assertEquals("1\tfoo\n", dataWriter.toString());
+        verify(resultsFile).getOutputStream();
+        verify(recorder).writeResults(dataStream);
         assertEquals(DATA_LOCATION, control.getProfilingDataFile());
     }
 
@@ -159,10 +196,6 @@ public class InstrumentationControlTest {
     public void vmShutdownSaveDataToDisk() throws Exception {
         final String DATA_LOCATION = "foobar";
 
-        Map<String, AtomicLong> profileData = new HashMap<String, AtomicLong>();
-        profileData.put("foo", new AtomicLong(1));
-        when(recorder.getData()).thenReturn(profileData);
-
         when(resultsFile.getPath()).thenReturn(DATA_LOCATION);
 
         control.startProfiling();
@@ -170,8 +203,41 @@ public class InstrumentationControlTest {
         // simulate vm shutdown:
         control.onVmShutdown();
 
-        verify(resultsFile).getWriter();
-        assertEquals("1\tfoo\n", dataWriter.toString());
+        verify(resultsFile).getOutputStream();
+        verify(recorder).writeResults(dataStream);
+        assertEquals(DATA_LOCATION, control.getProfilingDataFile());
+    }
+
+    @Test
+    public void startSamplingDoesNotInstrumentCode() throws Exception {
+        control.startSampling(10);
+
+        assertTrue(control.isProfiling());
+        verify(sampler).start(10);
+        verifyZeroInteractions(instrumentation);
+    }
+
+    @Test (expected=IllegalStateException.class)
+    public void startingSamplingWhileProfilingThrowsException() throws Exception {
+        control.startProfiling();
+        control.startSampling(10);
+    }
+
+    @Test
+    public void stopSamplingSavesSampledResultsToDisk() throws Exception {
+        final String DATA_LOCATION = "foobar";
+
+        when(resultsFile.getPath()).thenReturn(DATA_LOCATION);
+        control.startSampling(10);
+
+        control.stopProfiling();
+
+        assertFalse(control.isProfiling());
+        verify(sampler).stop();
+        verify(sampler).clearData();
+        verify(sampler).writeResults(dataStream);
+        verify(recorder, never()).writeResults(dataStream);
+        verifyZeroInteractions(instrumentation);
         assertEquals(DATA_LOCATION, control.getProfilingDataFile());
     }
 }
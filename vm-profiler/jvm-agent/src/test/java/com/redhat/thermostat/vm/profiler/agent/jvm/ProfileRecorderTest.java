@@ -37,11 +37,13 @@
 package com.redhat.thermostat.vm.profiler.agent.jvm;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import java.util.Map;
 import java.util.Map.Entry;
-import java.util.concurrent.atomic.AtomicLong;
 
 import org.junit.Test;
 
@@ -63,17 +65,258 @@ public class ProfileRecorderTest {
                                .thenReturn(EXIT_2);
 
         ProfileRecorder recorder = new ProfileRecorder(source);
+        int methodId = recorder.registerMethod(METHOD_NAME);
 
-        recorder.enterMethod(METHOD_NAME);
-        recorder.exitMethod(METHOD_NAME);
-        recorder.enterMethod(METHOD_NAME);
-        recorder.exitMethod(METHOD_NAME);
+        recorder.enterMethod(methodId);
+        recorder.exitMethod(methodId);
+        recorder.enterMethod(methodId);
+        recorder.exitMethod(methodId);
 
         assertEquals(1, recorder.getData().size());
-        Entry<String, AtomicLong> result = recorder.getData().entrySet().iterator().next();
+        Entry<String, Long> result = recorder.getData().entrySet().iterator().next();
         String methodName = result.getKey();
         assertEquals(METHOD_NAME, methodName);
-        AtomicLong methodTimeInNanos = result.getValue();
-        assertEquals((EXIT_1 - ENTER_1) + (EXIT_2 - ENTER_2), methodTimeInNanos.get());
+        long methodTimeInNanos = result.getValue();
+        assertEquals((EXIT_1 - ENTER_1) + (EXIT_2 - ENTER_2), methodTimeInNanos);
+    }
+
+    @Test
+    public void registeringSameMethodTwiceReturnsSameId() {
+        ProfileRecorder recorder = new ProfileRecorder(new TimeSource());
+
+        int foo = recorder.registerMethod("foo");
+        int bar = recorder.registerMethod("bar");
+
+        assertTrue(foo != bar);
+        assertEquals(foo, recorder.registerMethod("foo"));
+        assertEquals(bar, recorder.registerMethod("bar"));
+    }
+
+    @Test
+    public void nestedCallsOnlyCountSelfTime() {
+        TimeSource source = mock(TimeSource.class);
+        when(source.nanoTime()).thenReturn(100l)
+                               .thenReturn(150l)
+                               .thenReturn(180l)
+                               .thenReturn(200l);
+
+        ProfileRecorder recorder = new ProfileRecorder(source);
+        int outer = recorder.registerMethod("outer");
+        int inner = recorder.registerMethod("inner");
+
+        recorder.enterMethod(outer);
+        recorder.enterMethod(inner);
+        recorder.exitMethod(inner);
+        recorder.exitMethod(outer);
+
+        Map<String, Long> data = recorder.getData();
+        assertEquals(2, data.size());
+        assertEquals(50l + 20l, (long) data.get("outer"));
+        assertEquals(30l, (long) data.get("inner"));
+    }
+
+    @Test
+    public void deepCallStacksAreSupported() {
+        ProfileRecorder recorder = new ProfileRecorder(new TimeSource());
+        final int DEPTH = 1000;
+        int[] ids = new int[DEPTH];
+        for (int i = 0; i < DEPTH; i++) {
+            ids[i] = recorder.registerMethod("method" + i);
+        }
+
+        for (int i = 0; i < DEPTH; i++) {
+            recorder.enterMethod(ids[i]);
+        }
+        for (int i = DEPTH - 1; i >= 0; i--) {
+            recorder.exitMethod(ids[i]);
+        }
+    }
+
+    @Test(expected = AssertionError.class)
+    public void exitingWrongMethodFails() {
+        ProfileRecorder recorder = new ProfileRecorder(new TimeSource());
+        int foo = recorder.registerMethod("foo");
+        int bar = recorder.registerMethod("bar");
+
+        recorder.enterMethod(foo);
+        recorder.exitMethod(bar);
+    }
+
+    @Test
+    public void dataFromAllThreadsIsMerged() throws Exception {
+        TimeSource source = mock(TimeSource.class);
+        when(source.nanoTime()).thenReturn(100l)
+                               .thenReturn(110l)
+                               .thenReturn(200l)
+                               .thenReturn(205l);
+
+        final ProfileRecorder recorder = new ProfileRecorder(source);
+        final int methodId = recorder.registerMethod("foo");
+
+        recorder.enterMethod(methodId);
+        recorder.exitMethod(methodId);
+
+        Thread other = new Thread() {
+            @Override
+            public void run() {
+                recorder.enterMethod(methodId);
+                recorder.exitMethod(methodId);
+            }
+        };
+        other.start();
+        other.join();
+
+        assertEquals(15l, (long) recorder.getData().get("foo"));
+    }
+
+    @Test
+    public void clearDataDiscardsRecordedTimes() {
+        TimeSource source = mock(TimeSource.class);
+        when(source.nanoTime()).thenReturn(100l)
+                               .thenReturn(200l)
+                               .thenReturn(300l)
+                               .thenReturn(305l);
+
+        ProfileRecorder recorder = new ProfileRecorder(source);
+        int methodId = recorder.registerMethod("foo");
+
+        recorder.enterMethod(methodId);
+        recorder.exitMethod(methodId);
+
+        recorder.clearData();
+        assertTrue(recorder.getData().isEmpty());
+
+        recorder.enterMethod(methodId);
+        recorder.exitMethod(methodId);
+
+        assertEquals(5l, (long) recorder.getData().get("foo"));
+    }
+
+    @Test
+    public void callPathsAreKeptApart() {
+        TimeSource source = mock(TimeSource.class);
+        when(source.nanoTime()).thenReturn(0l, 10l, 20l, 30l, 40l, 50l, 60l, 70l);
+
+        ProfileRecorder recorder = new ProfileRecorder(source);
+        int first = recorder.registerMethod("first");
+        int second = recorder.registerMethod("second");
+        int helper = recorder.registerMethod("helper");
+
+        recorder.enterMethod(first);
+        recorder.enterMethod(helper);
+        recorder.exitMethod(helper);
+        recorder.exitMethod(first);
+        recorder.enterMethod(second);
+        recorder.enterMethod(helper);
+        recorder.exitMethod(helper);
+        recorder.exitMethod(second);
+
+        CallTreeNode root = recorder.mergeThreadTrees();
+        assertEquals(2, root.getChildCount());
+        CallTreeNode firstNode = root.getChild(first);
+        assertEquals(20l, firstNode.getSelf());
+        assertEquals(10l, firstNode.getChild(helper).getSelf());
+        CallTreeNode secondNode = root.getChild(second);
+        assertEquals(20l, secondNode.getSelf());
+        assertEquals(10l, secondNode.getChild(helper).getSelf());
+
+        assertEquals(20l, (long) recorder.getData().get("helper"));
+    }
+
+    @Test
+    public void callPathsBeyondNodeBudgetAreAttributedToCaller() {
+        TimeSource source = mock(TimeSource.class);
+        when(source.nanoTime()).thenReturn(0l, 10l, 30l, 40l);
+
+        // outer fits, inner does not
+        ProfileRecorder recorder = new ProfileRecorder(source, 1);
+        int outer = recorder.registerMethod("outer");
+        int inner = recorder.registerMethod("inner");
+
+        recorder.enterMethod(outer);
+        recorder.enterMethod(inner);
+        recorder.exitMethod(inner);
+        recorder.exitMethod(outer);
+
+        Map<String, Long> data = recorder.getData();
+        assertEquals(1, data.size());
+        assertEquals(40l, (long) data.get("outer"));
+    }
+
+    @Test
+    public void nodeBudgetIsSharedByAllThreads() throws Exception {
+        TimeSource source = mock(TimeSource.class);
+        when(source.nanoTime()).thenReturn(100l)
+                               .thenReturn(110l)
+                               .thenReturn(200l)
+                               .thenReturn(205l);
+
+        final ProfileRecorder recorder = new ProfileRecorder(source, 1);
+        final int foo = recorder.registerMethod("foo");
+        final int bar = recorder.registerMethod("bar");
+
+        recorder.enterMethod(foo);
+        recorder.exitMethod(foo);
+
+        Thread other = new Thread() {
+            @Override
+            public void run() {
+                recorder.enterMethod(bar);
+                recorder.exitMethod(bar);
+            }
+        };
+        other.start();
+        other.join();
+
+        Map<String, Long> data = recorder.getData();
+        assertEquals(1, data.size());
+        assertEquals(10l, (long) data.get("foo"));
+        // the other thread's time ends up in its root
+        CallTreeNode root = recorder.mergeThreadTrees();
+        assertEquals(1, root.getChildCount());
+        assertEquals(5l, root.getSelf());
+    }
+
+    @Test
+    public void clearDataRestoresNodeBudget() {
+        TimeSource source = mock(TimeSource.class);
+        when(source.nanoTime()).thenReturn(0l, 10l, 20l, 30l, 40l, 45l);
+
+        ProfileRecorder recorder = new ProfileRecorder(source, 1);
+        int foo = recorder.registerMethod("foo");
+        int bar = recorder.registerMethod("bar");
+
+        recorder.enterMethod(foo);
+        recorder.exitMethod(foo);
+        recorder.enterMethod(bar);
+        recorder.exitMethod(bar);
+        assertNull(recorder.getData().get("bar"));
+
+        recorder.clearData();
+        recorder.enterMethod(bar);
+        recorder.exitMethod(bar);
+
+        assertEquals(5l, (long) recorder.getData().get("bar"));
+    }
+
+    @Test
+    public void clearDataWhileInsideMethodsKeepsCallPath() {
+        TimeSource source = mock(TimeSource.class);
+        when(source.nanoTime()).thenReturn(0l, 10l, 20l, 25l);
+
+        ProfileRecorder recorder = new ProfileRecorder(source);
+        int outer = recorder.registerMethod("outer");
+        int inner = recorder.registerMethod("inner");
+
+        recorder.enterMethod(outer);
+        recorder.enterMethod(inner);
+        recorder.clearData();
+        recorder.exitMethod(inner);
+        recorder.exitMethod(outer);
+
+        CallTreeNode root = recorder.mergeThreadTrees();
+        CallTreeNode outerNode = root.getChild(outer);
+        assertEquals(5l, outerNode.getSelf());
+        assertEquals(10l, outerNode.getChild(inner).getSelf());
     }
 }
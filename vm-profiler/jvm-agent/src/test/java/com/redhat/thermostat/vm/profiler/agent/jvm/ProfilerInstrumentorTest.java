@@ -0,0 +1,104 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.vm.profiler.agent.jvm;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ProfilerInstrumentorTest {
+
+    private ProfilerInstrumentor instrumentor;
+
+    @Before
+    public void setUp() {
+        instrumentor = new ProfilerInstrumentor() {
+            @Override
+            public byte[] transform(ClassLoader cl, String className, byte[] classBytes) {
+                return classBytes;
+            }
+        };
+    }
+
+    @Test
+    public void jdkAndAgentClassesAreNeverInstrumented() {
+        assertFalse(instrumentor.shouldInstrument("java.lang.Object"));
+        assertFalse(instrumentor.shouldInstrument("sun.misc.Unsafe"));
+        assertFalse(instrumentor.shouldInstrument(ProfileRecorder.class.getName()));
+        assertFalse(instrumentor.shouldInstrument(int[].class));
+
+        instrumentor.setPackageFilters(new String[] { "java" }, new String[0]);
+
+        assertFalse(instrumentor.shouldInstrument("java.lang.Object"));
+    }
+
+    @Test
+    public void allOtherClassesAreInstrumentedByDefault() {
+        assertTrue(instrumentor.shouldInstrument("com.example.Foo"));
+        assertTrue(instrumentor.shouldInstrument("Foo"));
+    }
+
+    @Test
+    public void onlyIncludedPackagesAreInstrumented() {
+        instrumentor.setPackageFilters(new String[] { "com.example", " org.example. " }, new String[0]);
+
+        assertTrue(instrumentor.shouldInstrument("com.example.Foo"));
+        assertTrue(instrumentor.shouldInstrument("com.example.sub.Foo"));
+        assertTrue(instrumentor.shouldInstrument("org.example.Foo"));
+        assertFalse(instrumentor.shouldInstrument("com.examples.Foo"));
+        assertFalse(instrumentor.shouldInstrument("org.other.Foo"));
+    }
+
+    @Test
+    public void excludedPackagesAreNotInstrumented() {
+        instrumentor.setPackageFilters(new String[] { "com.example" }, new String[] { "com.example.generated" });
+
+        assertTrue(instrumentor.shouldInstrument("com.example.Foo"));
+        assertFalse(instrumentor.shouldInstrument("com.example.generated.Foo"));
+    }
+
+    @Test
+    public void settingFiltersReplacesPreviousFilters() {
+        instrumentor.setPackageFilters(new String[] { "com.example" }, new String[0]);
+        instrumentor.setPackageFilters(new String[0], new String[] { "org.example" });
+
+        assertTrue(instrumentor.shouldInstrument("com.other.Foo"));
+        assertFalse(instrumentor.shouldInstrument("org.example.Foo"));
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.vm.profiler.agent.jvm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import com.redhat.thermostat.vm.profiler.agent.jvm.SamplingProfiler.StackSource;
+
+public class SamplingProfilerTest {
+
+    private static final StackTraceElement[] STACK = new StackTraceElement[] {
+        new StackTraceElement("a.Main", "work", null, 2),
+        new StackTraceElement("a.Main", "main", null, 1),
+    };
+
+    @Test
+    public void onlyRunnableThreadsAreSampled() throws Exception {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        Thread waiting = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    // done
+                }
+            }
+        };
+        waiting.start();
+        while (waiting.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+        }
+
+        Map<Thread, StackTraceElement[]> stacks = new HashMap<Thread, StackTraceElement[]>();
+        stacks.put(Thread.currentThread(), STACK);
+        stacks.put(waiting, STACK);
+
+        SamplingProfiler profiler = new SamplingProfiler(new StackSource(), 100);
+        profiler.sample(stacks, null);
+
+        blocked.countDown();
+        waiting.join();
+
+        assertEquals(1, profiler.getCallTree().getSampleCount());
+    }
+
+    @Test
+    public void samplerThreadIsNotSampled() {
+        Map<Thread, StackTraceElement[]> stacks = new HashMap<Thread, StackTraceElement[]>();
+        stacks.put(Thread.currentThread(), STACK);
+
+        SamplingProfiler profiler = new SamplingProfiler(new StackSource(), 100);
+        profiler.sample(stacks, Thread.currentThread());
+
+        assertEquals(0, profiler.getCallTree().getSampleCount());
+    }
+
+    @Test
+    public void dataIsReportedAsSamplesTimesInterval() throws Exception {
+        final AtomicBoolean done = new AtomicBoolean(false);
+        final Thread busy = new Thread() {
+            @Override
+            public void run() {
+                while (!done.get()) {
+                    // keep RUNNABLE
+                }
+            }
+        };
+        busy.start();
+
+        final CountDownLatch sampled = new CountDownLatch(3);
+        StackSource source = new StackSource() {
+            @Override
+            Map<Thread, StackTraceElement[]> getAllStackTraces() {
+                Map<Thread, StackTraceElement[]> stacks = new HashMap<Thread, StackTraceElement[]>();
+                if (sampled.getCount() > 0) {
+                    stacks.put(busy, STACK);
+                    // the sampler thread itself must be skipped
+                    stacks.put(Thread.currentThread(), STACK);
+                    sampled.countDown();
+                }
+                return stacks;
+            }
+        };
+
+        SamplingProfiler profiler = new SamplingProfiler(source, 100);
+        profiler.start(1);
+        assertTrue(sampled.await(10, TimeUnit.SECONDS));
+        profiler.stop();
+        done.set(true);
+        busy.join();
+
+        Map<String, Long> data = profiler.getData();
+        assertEquals(1, data.size());
+        assertEquals(3 * TimeUnit.MILLISECONDS.toNanos(1), (long) data.get("a/Main.work"));
+
+        profiler.clearData();
+        assertTrue(profiler.getData().isEmpty());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void stoppingWithoutStartingFails() {
+        new SamplingProfiler().stop();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void intervalMustBePositive() {
+        new SamplingProfiler().start(0);
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.web.client.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.redhat.thermostat.common.utils.LoggingUtils;
+import com.redhat.thermostat.storage.core.StatementExecutionException;
+import com.redhat.thermostat.web.common.PreparedStatementResponseCode;
+import com.redhat.thermostat.web.common.WebPreparedStatement;
+
+/**
+ * Coalesces concurrently executed prepared writes into batches so that they
+ * can be sent to the web endpoint in a single request.
+ * <p>
+ * Callers of {@link #execute(WebPreparedStatement)} block until the batch
+ * containing their statement has been sent, just as they would for a single
+ * write. A dedicated thread sends batches one at a time. Statements submitted
+ * while a batch is in flight make up the next batch. Thus, no artificial
+ * delay is added and batches grow with contention only.
+ */
+class CoalescingWriteQueue {
+    
+    private static final Logger logger = LoggingUtils.getLogger(CoalescingWriteQueue.class);
+    
+    /**
+     * Sends one batch of writes to the endpoint.
+     */
+    interface BatchSender {
+        
+        /**
+         * @return The response codes of the individual statements, in
+         *         order.
+         */
+        int[] send(List<WebPreparedStatement<?>> batch) throws StatementExecutionException;
+    }
+    
+    private static class PendingWrite {
+        
+        private final WebPreparedStatement<?> stmt;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private int response;
+        private StatementExecutionException failure;
+        
+        private PendingWrite(WebPreparedStatement<?> stmt) {
+            this.stmt = stmt;
+        }
+        
+        // Happens-before via CountDownLatch
+        private void complete(int response, StatementExecutionException failure) {
+            this.response = response;
+            this.failure = failure;
+            done.countDown();
+        }
+    }
+    
+    private final BlockingQueue<PendingWrite> queue = new LinkedBlockingQueue<>();
+    private final BatchSender sender;
+    private final int maxBatchSize;
+    private final Thread flusher;
+    
+    CoalescingWriteQueue(BatchSender sender, int maxBatchSize) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("maxBatchSize must be > 0, was " + maxBatchSize);
+        }
+        this.sender = sender;
+        this.maxBatchSize = maxBatchSize;
+        this.flusher = new Thread(new Runnable() {
+            
+            @Override
+            public void run() {
+                flushLoop();
+            }
+        }, "WebStorage write coalescer");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+    
+    /**
+     * Queues a statement for execution and waits for its batch to be sent.
+     * 
+     * @return The response code of the executed statement.
+     * @throws StatementExecutionException
+     *             If sending the batch failed or the calling thread got
+     *             interrupted while waiting.
+     */
+    int execute(WebPreparedStatement<?> stmt) throws StatementExecutionException {
+        PendingWrite write = new PendingWrite(stmt);
+        queue.add(write);
+        try {
+            write.done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StatementExecutionException(e);
+        }
+        if (write.failure != null) {
+            throw write.failure;
+        }
+        return write.response;
+    }
+    
+    /**
+     * Stops the sender thread. Statements still queued fail.
+     */
+    void shutdown() {
+        flusher.interrupt();
+    }
+    
+    private void flushLoop() {
+        List<PendingWrite> batch = new ArrayList<>(maxBatchSize);
+        try {
+            while (true) {
+                batch.add(queue.take());
+                queue.drainTo(batch, maxBatchSize - 1);
+                send(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            // shut down
+        }
+        queue.drainTo(batch);
+        StatementExecutionException failure = new StatementExecutionException(
+                new IllegalStateException("Write queue was shut down"));
+        for (PendingWrite write : batch) {
+            write.complete(PreparedStatementResponseCode.WRITE_GENERIC_FAILURE, failure);
+        }
+    }
+    
+    private void send(List<PendingWrite> batch) {
+        List<WebPreparedStatement<?>> stmts = new ArrayList<>(batch.size());
+        for (PendingWrite write : batch) {
+            stmts.add(write.stmt);
+        }
+        StatementExecutionException failure = null;
+        int[] responses = null;
+        try {
+            responses = sender.send(stmts);
+            if (responses == null || responses.length != stmts.size()) {
+                String msg = "Expected " + stmts.size() + " responses for write batch, got "
+                        + (responses == null ? "none" : responses.length);
+                failure = new StatementExecutionException(new IllegalStateException(msg));
+            }
+        } catch (StatementExecutionException e) {
+            failure = e;
+        } catch (RuntimeException e) {
+            failure = new StatementExecutionException(e);
+        }
+        if (failure != null) {
+            logger.log(Level.FINE, "Write batch of size " + batch.size() + " failed", failure);
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            PendingWrite write = batch.get(i);
+            if (failure != null) {
+                write.complete(PreparedStatementResponseCode.WRITE_GENERIC_FAILURE, failure);
+            } else {
+                write.complete(responses[i], null);
+            }
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.web.client.internal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.NoSuchElementException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.redhat.thermostat.common.utils.LoggingUtils;
+import com.redhat.thermostat.storage.core.BasicBatchCursor;
+import com.redhat.thermostat.storage.core.StorageException;
+import com.redhat.thermostat.storage.model.Pojo;
+import com.redhat.thermostat.web.common.binary.BinaryResultStreamReader;
+
+/**
+ * Cursor over results streamed by the web endpoint's query-stream handler.
+ * Results are decoded from the response body as they are requested. The
+ * endpoint writes no faster than results get consumed here.
+ * <p>
+ * One result is read ahead, so that the response gets closed, and its
+ * connection released, as soon as the last result has been returned. A
+ * failure to read ahead is reported by the {@link #next()} call which
+ * would have returned that result.
+ * <p>
+ * Callers which stop before all results have been read should
+ * {@link #close()} the cursor, which aborts the response rather than
+ * reading it to the end. Cursors which are abandoned without being closed
+ * get closed by {@link WebStorage} once they have been idle for too long.
+ * Reading from such a cursor fails.
+ * <p>
+ * Cursors are meant to be used by one thread at a time, but may be closed
+ * from any thread.
+ */
+class StreamingWebCursor<T extends Pojo> extends BasicBatchCursor<T> implements Closeable {
+
+    private static final Logger logger = LoggingUtils.getLogger(StreamingWebCursor.class);
+
+    /**
+     * The response results are read from.
+     */
+    interface StreamedResponse extends Closeable {
+
+        /**
+         * Drops a response which has not been read to the end, together with
+         * its connection. {@link #close()} is used once the end has been
+         * read, which keeps the connection for reuse.
+         */
+        void abort();
+    }
+
+    private final StreamedResponse response;
+    private final BinaryResultStreamReader<T> reader;
+    private T next;
+    // Set if reading ahead failed
+    private IOException failure;
+    // Set once the response has been closed or aborted
+    private boolean released;
+    // System.nanoTime() of the last time results were requested
+    private long lastAccess;
+
+    StreamingWebCursor(StreamedResponse response, BinaryResultStreamReader<T> reader) {
+        this.response = response;
+        this.reader = reader;
+        this.lastAccess = System.nanoTime();
+        advance();
+    }
+
+    @Override
+    public synchronized boolean hasNext() {
+        return next != null || failure != null;
+    }
+
+    @Override
+    public synchronized T next() {
+        lastAccess = System.nanoTime();
+        if (failure != null) {
+            IOException e = failure;
+            failure = null;
+            throw new StorageException(e);
+        }
+        if (next == null) {
+            throw new NoSuchElementException();
+        }
+        T result = next;
+        advance();
+        return result;
+    }
+
+    private void advance() {
+        try {
+            next = reader.read();
+        } catch (IOException e) {
+            next = null;
+            failure = e;
+        }
+        if (next == null) {
+            release();
+        }
+    }
+
+    private void release() {
+        if (released) {
+            return;
+        }
+        released = true;
+        try {
+            response.close();
+        } catch (IOException | StorageException e) {
+            logger.log(Level.FINE, "Failed to close query stream", e);
+        }
+    }
+
+    /**
+     * Stops reading results. Any results which have not been read yet are
+     * dropped. Does nothing if all results have been read already.
+     */
+    @Override
+    public synchronized void close() {
+        if (released) {
+            return;
+        }
+        abort();
+        next = null;
+        failure = null;
+    }
+
+    /**
+     * Closes this cursor if no results have been requested for the given
+     * time. Unlike after {@link #close()}, the next call to {@link #next()}
+     * fails rather than the cursor appearing to be exhausted.
+     * 
+     * @param now
+     *            The current {@link System#nanoTime()}.
+     * @param timeoutNanos
+     *            The time the cursor may be idle.
+     * @return Whether the cursor got closed.
+     */
+    synchronized boolean closeIfIdle(long now, long timeoutNanos) {
+        if (released || now - lastAccess < timeoutNanos) {
+            return false;
+        }
+        abort();
+        next = null;
+        failure = new IOException("Query stream was closed after being idle for too long");
+        return true;
+    }
+
+    private void abort() {
+        released = true;
+        try {
+            response.abort();
+        } catch (StorageException e) {
+            logger.log(Level.FINE, "Failed to abort query stream", e);
+        }
+    }
+}
@@ -41,16 +41,22 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
+import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.security.SecureRandom;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -70,6 +76,7 @@ import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.config.AuthSchemes;
 import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.entity.GzipCompressingEntity;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.protocol.HttpClientContext;
@@ -79,6 +86,8 @@ import org.apache.http.config.RegistryBuilder;
 import org.apache.http.conn.socket.ConnectionSocketFactory;
 import org.apache.http.conn.socket.PlainConnectionSocketFactory;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.entity.ContentProducer;
+import org.apache.http.entity.EntityTemplate;
 import org.apache.http.entity.mime.MultipartEntityBuilder;
 import org.apache.http.entity.mime.content.InputStreamBody;
 import org.apache.http.impl.auth.BasicSchemeFactory;
@@ -91,6 +100,7 @@ import org.apache.http.util.EntityUtils;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonWriter;
 import com.redhat.thermostat.common.ssl.SSLContextFactory;
 import com.redhat.thermostat.common.ssl.SslInitException;
 import com.redhat.thermostat.common.utils.LoggingUtils;
@@ -119,6 +129,9 @@ import com.redhat.thermostat.web.common.SharedStateId;
 import com.redhat.thermostat.web.common.WebPreparedStatement;
 import com.redhat.thermostat.web.common.WebPreparedStatementResponse;
 import com.redhat.thermostat.web.common.WebQueryResponse;
+import com.redhat.thermostat.web.common.WireFormat;
+import com.redhat.thermostat.web.common.binary.BinaryResultStreamReader;
+import com.redhat.thermostat.web.common.binary.BinaryWebQueryResponseCodec;
 import com.redhat.thermostat.web.common.typeadapters.PojoTypeAdapterFactory;
 import com.redhat.thermostat.web.common.typeadapters.PreparedParameterTypeAdapterFactory;
 import com.redhat.thermostat.web.common.typeadapters.PreparedParametersTypeAdapterFactory;
@@ -135,6 +148,48 @@ public class WebStorage implements Storage, SecureStorage {
     private static final String HTTP_PREFIX = "http";
     private static final String HTTPS_PREFIX = "https";
     
+    /**
+     * System property for the maximum number of prepared writes sent in one
+     * write-execute-batch request. Coalescing of writes is disabled unless
+     * this is set to a value greater than one. Only enable it for endpoints
+     * which support batched writes.
+     */
+    static final String WRITE_BATCH_SIZE = "com.redhat.thermostat.web.client.writeBatchSize";
+    
+    /**
+     * System property which, if set to {@code false}, makes this client ask
+     * for query responses in JSON rather than in the binary encoding.
+     * Endpoints which don't know about the binary encoding answer in JSON
+     * regardless.
+     */
+    static final String BINARY_QUERY_RESPONSES = "com.redhat.thermostat.web.client.binaryQueryResponses";
+    
+    /**
+     * System property which, if set to {@code true}, makes queries stream
+     * all their results in a single query-stream request rather than
+     * fetching them batch by batch via get-more requests. Only enable it for
+     * endpoints which support streamed queries. Has no effect if binary
+     * query responses are disabled.
+     */
+    static final String STREAM_QUERIES = "com.redhat.thermostat.web.client.streamQueries";
+    
+    /**
+     * System property for the number of seconds a streaming cursor may go
+     * without results being requested before it gets closed, so that
+     * cursors which have been abandoned hand back their connection. Defaults
+     * to {@link #DEFAULT_STREAM_IDLE_TIMEOUT}.
+     */
+    static final String STREAM_IDLE_TIMEOUT = "com.redhat.thermostat.web.client.streamIdleTimeout";
+    static final long DEFAULT_STREAM_IDLE_TIMEOUT = 60;
+    
+    // Size of the connection pool. All requests go to the one endpoint, so
+    // this is the limit per route as well.
+    static final int MAX_CONNECTIONS = 20;
+    // Streamed queries hold on to their connection until their cursor is
+    // read to the end or closed. Queries are batched rather than streamed
+    // once this many are open, so that they can't starve other requests.
+    static final int MAX_STREAMED_QUERIES = MAX_CONNECTIONS / 2;
+    
     // Transition cache is valid for 30 seconds starting from the current time.
     private static final long TRANSITION_CACHE_OFFSET = TimeUnit.NANOSECONDS.convert(30, TimeUnit.SECONDS);
     
@@ -144,10 +199,12 @@ public class WebStorage implements Storage, SecureStorage {
 
         private HttpEntity entity;
         private int responseCode;
+        private HttpPost request;
 
-        CloseableHttpEntity(HttpEntity entity, int responseCode) {
+        CloseableHttpEntity(HttpEntity entity, int responseCode, HttpPost request) {
             this.entity = entity;
             this.responseCode = responseCode;
+            this.request = request;
         }
 
         @Override
@@ -208,6 +265,14 @@ public class WebStorage implements Storage, SecureStorage {
         int getResponseCode() {
             return responseCode;
         }
+
+        /*
+         * Drops the connection without reading the rest of the response,
+         * unlike close().
+         */
+        void abort() {
+            request.abort();
+        }
     }
 
     private final class WebConnection extends Connection {
@@ -345,6 +410,9 @@ public class WebStorage implements Storage, SecureStorage {
         
         @Override
         public int execute() throws StatementExecutionException {
+            if (writeQueue != null) {
+                return doWriteExecuteCoalesced(this);
+            }
             return doWriteExecute(this, 0);
         }
 
@@ -360,6 +428,15 @@ public class WebStorage implements Storage, SecureStorage {
 
     private Map<Category<?>, SharedStateId> categoryIds;
     private Gson gson;
+    private BinaryWebQueryResponseCodec binaryCodec;
+    // Value of the Accept header sent with every request.
+    private String acceptedContentTypes;
+    private boolean streamQueries;
+    // Limits the number of streamed queries which are open at once
+    private Semaphore streamPermits;
+    // Streamed queries which are open. Guarded by itself.
+    private final Set<PermittedStream> openStreams = new HashSet<>();
+    private long streamIdleTimeoutNanos;
     // The shared http client we use for execution (uses the context below)
     private HttpClient httpClient;
     private Object httpClientContextLock = new Object();
@@ -372,6 +449,8 @@ public class WebStorage implements Storage, SecureStorage {
     // Temporary cache used for recovering after a server endpoint re-deployment.
     // Will only be valid for 30 seconds for any server endpoint re-deployment.
     private ExpirableWebPreparedStatementCache transitionStmtCache;
+    // Null if write coalescing is disabled.
+    private CoalescingWriteQueue writeQueue;
     
     // for testing
     WebStorage(String url, StorageCredentials creds, HttpClient client) {
@@ -414,6 +493,13 @@ public class WebStorage implements Storage, SecureStorage {
                 .registerTypeAdapterFactory(new WebPreparedStatementTypeAdapterFactory())
                 .registerTypeAdapterFactory(new PreparedParametersTypeAdapterFactory())
                 .create();
+        binaryCodec = new BinaryWebQueryResponseCodec(gson);
+        boolean binaryQueryResponses = Boolean.parseBoolean(System.getProperty(BINARY_QUERY_RESPONSES, "true"));
+        acceptedContentTypes = binaryQueryResponses ? WireFormat.ACCEPT_BINARY_OR_JSON : "application/json";
+        streamQueries = binaryQueryResponses && Boolean.getBoolean(STREAM_QUERIES);
+        streamPermits = new Semaphore(MAX_STREAMED_QUERIES);
+        long idleTimeout = Long.getLong(STREAM_IDLE_TIMEOUT, DEFAULT_STREAM_IDLE_TIMEOUT);
+        streamIdleTimeoutNanos = TimeUnit.SECONDS.toNanos(idleTimeout);
         httpClient = client;
         synchronized (httpClientContextLock) {
             httpClientContext = HttpClientContext.create();
@@ -424,6 +510,21 @@ public class WebStorage implements Storage, SecureStorage {
         this.endpoint = url;
         this.creds = creds;
         this.stmtCache = new WebPreparedStatementCache();
+        Integer batchSize = Integer.getInteger(WRITE_BATCH_SIZE);
+        if (batchSize != null && batchSize > 1) {
+            this.writeQueue = createWriteQueue(batchSize);
+        }
+    }
+    
+    // package private for testing
+    CoalescingWriteQueue createWriteQueue(int batchSize) {
+        return new CoalescingWriteQueue(new CoalescingWriteQueue.BatchSender() {
+            
+            @Override
+            public int[] send(List<WebPreparedStatement<?>> batch) throws StatementExecutionException {
+                return doWriteExecuteBatch(batch);
+            }
+        }, batchSize);
     }
 
     // package private for testing
@@ -443,7 +544,10 @@ public class WebStorage implements Storage, SecureStorage {
             throw new StorageException(e);
         }
         Registry<ConnectionSocketFactory> r = regBuilder.build();
-        return new PoolingHttpClientConnectionManager(r);
+        PoolingHttpClientConnectionManager connManager = new PoolingHttpClientConnectionManager(r);
+        connManager.setMaxTotal(MAX_CONNECTIONS);
+        connManager.setDefaultMaxPerRoute(MAX_CONNECTIONS);
+        return connManager;
     }
 
     private void ping() throws StorageException {
@@ -491,6 +595,7 @@ public class WebStorage implements Storage, SecureStorage {
     private CloseableHttpEntity postImpl(String url, HttpEntity entity, RequestConfig config)
             throws IOException {
         HttpPost httpPost = new HttpPost(url);
+        httpPost.setHeader("Accept", acceptedContentTypes);
         if (entity != null) {
             httpPost.setEntity(entity);
         }
@@ -530,7 +635,7 @@ public class WebStorage implements Storage, SecureStorage {
                     "Server returned status: " + status);
         }
         
-        return new CloseableHttpEntity(response.getEntity(), responseCode);
+        return new CloseableHttpEntity(response.getEntity(), responseCode, httpPost);
     }
 
     private CloseableHttpEntity postImpl(String url, HttpEntity entity)
@@ -554,6 +659,26 @@ public class WebStorage implements Storage, SecureStorage {
         InputStream in = getContent(entity);
         return new InputStreamReader(in);
     }
+    
+    /*
+     * Query responses are either JSON or in the binary encoding, depending
+     * on what the endpoint chose to send.
+     */
+    private <T extends Pojo> WebQueryResponse<T> readQueryResponse(HttpEntity entity, Type parametrizedTypeToken) throws IOException {
+        Header contentType = entity.getContentType();
+        if (contentType != null && WireFormat.isBinary(contentType.getValue())) {
+            Class<T> dataClass = getDataClass(parametrizedTypeToken);
+            return binaryCodec.read(getContent(entity), dataClass);
+        }
+        Reader reader = getContentAsReader(entity);
+        return gson.fromJson(reader, parametrizedTypeToken);
+    }
+    
+    // The type token is WebQueryResponse<T>
+    @SuppressWarnings("unchecked")
+    private static <T extends Pojo> Class<T> getDataClass(Type parametrizedTypeToken) {
+        return (Class<T>) ((ParameterizedType) parametrizedTypeToken).getActualTypeArguments()[0];
+    }
 
     @Override
     public void registerCategory(Category<?> category) throws StorageException {
@@ -595,12 +720,17 @@ public class WebStorage implements Storage, SecureStorage {
      */
     <T extends Pojo> Cursor<T> doExecuteQuery(final WebPreparedStatement<T> stmt, Type parametrizedTypeToken, final int invocationCount) throws StatementExecutionException {
         checkRecursiveInvocationCount(invocationCount);
+        if (streamQueries) {
+            closeIdleStreams();
+            if (streamPermits.tryAcquire()) {
+                return doExecuteStreamingQuery(stmt, parametrizedTypeToken, invocationCount);
+            }
+        }
         NameValuePair queryParam = new BasicNameValuePair("prepared-stmt", gson.toJson(stmt, WebPreparedStatement.class));
         List<NameValuePair> formparams = Arrays.asList(queryParam);
         WebQueryResponse<T> qResp = null;
         try (CloseableHttpEntity entity = post(endpoint + "/query-execute", formparams)) {
-            Reader reader = getContentAsReader(entity);
-            qResp = gson.fromJson(reader, parametrizedTypeToken);
+            qResp = readQueryResponse(entity, parametrizedTypeToken);
         } catch (Exception e) {
             throw new StatementExecutionException(e);
         }
@@ -609,13 +739,63 @@ public class WebStorage implements Storage, SecureStorage {
             return new WebCursor<T>(this, qResp.getResultList(),
                     qResp.hasMoreBatches(),
                     qResp.getCursorId(), parametrizedTypeToken, stmt);
-        case PreparedStatementResponseCode.ILLEGAL_PATCH: {
-            String msg = "Illegal statement argument. See server logs for details.";
-            IllegalArgumentException iae = new IllegalArgumentException(msg);
-            IllegalPatchException e = new IllegalPatchException(iae);
+        case PreparedStatementResponseCode.PREP_STMT_BAD_STOKEN: {
+            // Try to recover from this situation. If this path is
+            // entered more than once than we'll fail on method entry.
+            try {
+                WebPreparedStatement<T> newStmt = handlePreparedStmtStateOutOfSync(stmt);
+                return doExecuteQuery(newStmt, parametrizedTypeToken, invocationCount + 1);
+            } catch (DescriptorParsingException e) {
+                throw new StatementExecutionException(e);
+            }
+        }
+        default:
+            throw getQueryFailure("query-execute", qResp.getResponseCode());
+        }
+    }
+    
+    /**
+     * Executes a prepared query via the query-stream endpoint. The returned
+     * cursor reads results from the response as they are requested. The
+     * caller must have acquired a stream permit, which gets released along
+     * with the response.
+     * 
+     * @see #doExecuteQuery(WebPreparedStatement, Type, int)
+     */
+    private <T extends Pojo> Cursor<T> doExecuteStreamingQuery(final WebPreparedStatement<T> stmt, Type parametrizedTypeToken, final int invocationCount) throws StatementExecutionException {
+        NameValuePair queryParam = new BasicNameValuePair("prepared-stmt", gson.toJson(stmt, WebPreparedStatement.class));
+        List<NameValuePair> formparams = Arrays.asList(queryParam);
+        Class<T> dataClass = getDataClass(parametrizedTypeToken);
+        CloseableHttpEntity entity = null;
+        BinaryResultStreamReader<T> reader = null;
+        try {
+            entity = post(endpoint + "/query-stream", formparams);
+            reader = new BinaryResultStreamReader<>(getContent(entity), gson, dataClass);
+        } catch (Exception e) {
+            if (entity != null) {
+                closeStream(entity);
+            } else {
+                streamPermits.release();
+            }
             throw new StatementExecutionException(e);
         }
-        case PreparedStatementResponseCode.PREP_STMT_BAD_STOKEN: {
+        int responseCode = reader.getResponseCode();
+        if (responseCode == PreparedStatementResponseCode.QUERY_SUCCESS) {
+            PermittedStream stream = new PermittedStream(entity);
+            synchronized (openStreams) {
+                openStreams.add(stream);
+            }
+            try {
+                StreamingWebCursor<T> cursor = new StreamingWebCursor<>(stream, reader);
+                stream.cursor = cursor;
+                return cursor;
+            } catch (StorageException e) {
+                stream.abort();
+                throw new StatementExecutionException(e);
+            }
+        }
+        closeStream(entity);
+        if (responseCode == PreparedStatementResponseCode.PREP_STMT_BAD_STOKEN) {
             // Try to recover from this situation. If this path is
             // entered more than once than we'll fail on method entry.
             try {
@@ -625,12 +805,88 @@ public class WebStorage implements Storage, SecureStorage {
                 throw new StatementExecutionException(e);
             }
         }
-        default: {
-            String msg = "[query-execute] Unknown response from storage endpoint!";
-            IllegalStateException ise = new IllegalStateException(msg);
-            throw new StatementExecutionException(ise);
+        throw getQueryFailure("query-stream", responseCode);
+    }
+    
+    private void closeStream(CloseableHttpEntity entity) {
+        try {
+            entity.close();
+        } finally {
+            streamPermits.release();
         }
+    }
+    
+    /*
+     * Closes streaming cursors which have been idle for longer than the
+     * timeout, presumably because they have been abandoned.
+     */
+    private void closeIdleStreams() {
+        closeStreams(System.nanoTime(), streamIdleTimeoutNanos);
+    }
+    
+    private void closeStreams(long now, long timeoutNanos) {
+        List<PermittedStream> streams;
+        synchronized (openStreams) {
+            streams = new ArrayList<>(openStreams);
+        }
+        for (PermittedStream stream : streams) {
+            StreamingWebCursor<?> cursor = stream.cursor;
+            if (cursor != null && cursor.closeIfIdle(now, timeoutNanos)) {
+                logger.log(Level.FINE, "Closed idle streaming cursor");
+            }
+        }
+    }
+    
+    /*
+     * Response of a streamed query, which hands its stream permit back once
+     * it has been closed or aborted.
+     */
+    private final class PermittedStream implements StreamingWebCursor.StreamedResponse {
+        
+        private final CloseableHttpEntity entity;
+        // Set once the cursor reading this response has been created
+        private volatile StreamingWebCursor<?> cursor;
+        
+        PermittedStream(CloseableHttpEntity entity) {
+            this.entity = entity;
+        }
+        
+        @Override
+        public void close() {
+            try {
+                closeStream(entity);
+            } finally {
+                forget();
+            }
+        }
+        
+        @Override
+        public void abort() {
+            try {
+                entity.abort();
+            } finally {
+                streamPermits.release();
+                forget();
+            }
+        }
+        
+        private void forget() {
+            synchronized (openStreams) {
+                openStreams.remove(this);
+            }
+        }
+    }
+    
+    private StatementExecutionException getQueryFailure(String path, int responseCode) {
+        if (responseCode == PreparedStatementResponseCode.ILLEGAL_PATCH) {
+            String msg = "Illegal statement argument. See server logs for details.";
+            IllegalArgumentException iae = new IllegalArgumentException(msg);
+            IllegalPatchException e = new IllegalPatchException(iae);
+            return new StatementExecutionException(e);
         }
+        String msg = "[" + path + "] Unknown response from storage endpoint!";
+        IllegalStateException ise = new IllegalStateException(msg);
+        return new StatementExecutionException(ise);
     }
     
     private void checkRecursiveInvocationCount(int invocationCount) throws StatementExecutionException {
@@ -668,8 +924,7 @@ public class WebStorage implements Storage, SecureStorage {
                                                        batchSizeParam);
         WebQueryResponse<T> qResp = null;
         try (CloseableHttpEntity entity = post(endpoint + "/get-more", formparams)) {
-            Reader reader = getContentAsReader(entity);
-            qResp = gson.fromJson(reader, parametrizedTypeToken);
+            qResp = readQueryResponse(entity, parametrizedTypeToken);
         } catch (Exception e) {
             throw new StorageException(e);
         }
@@ -721,6 +976,65 @@ public class WebStorage implements Storage, SecureStorage {
         return responseCode;
     }
 
+    /**
+     * Executes a prepared write via the write coalescing queue. Failures
+     * which need special handling are dealt with here, individually for each
+     * statement.
+     */
+    <T extends Pojo> int doWriteExecuteCoalesced(final WebPreparedStatement<T> stmt)
+            throws StatementExecutionException {
+        int responseCode = writeQueue.execute(stmt);
+        if (responseCode == PreparedStatementResponseCode.ILLEGAL_PATCH) {
+            String msg = "Illegal statement argument. See server logs for details.";
+            IllegalArgumentException iae = new IllegalArgumentException(msg);
+            IllegalPatchException e = new IllegalPatchException(iae);
+            throw new StatementExecutionException(e);
+        } else if (responseCode == PreparedStatementResponseCode.PREP_STMT_BAD_STOKEN) {
+            // Recover as we would for a single write and retry that way.
+            try {
+                WebPreparedStatement<T> newStmt = handlePreparedStmtStateOutOfSync(stmt);
+                return doWriteExecute(newStmt, 1);
+            } catch (DescriptorParsingException e) {
+                throw new StatementExecutionException(e);
+            }
+        }
+        return responseCode;
+    }
+    
+    /**
+     * Sends the given prepared writes in a single write-execute-batch
+     * request. The request body is a gzip compressed JSON array of the
+     * statements which gets streamed to the endpoint.
+     * 
+     * @return The response codes of the individual statements.
+     */
+    int[] doWriteExecuteBatch(final List<WebPreparedStatement<?>> stmts)
+            throws StatementExecutionException {
+        EntityTemplate batchEntity = new EntityTemplate(new ContentProducer() {
+            
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                JsonWriter writer = new JsonWriter(new OutputStreamWriter(out, "UTF-8"));
+                writer.beginArray();
+                for (WebPreparedStatement<?> stmt : stmts) {
+                    gson.toJson(stmt, WebPreparedStatement.class, writer);
+                }
+                writer.endArray();
+                writer.flush();
+            }
+        });
+        batchEntity.setContentType(WireFormat.JSON_CONTENT_TYPE);
+        batchEntity.setChunked(true);
+        // Sets the Content-Encoding header
+        HttpEntity compressedEntity = new GzipCompressingEntity(batchEntity);
+        try (CloseableHttpEntity entity = post(endpoint + "/write-execute-batch", compressedEntity)) {
+            Reader reader = getContentAsReader(entity);
+            return gson.fromJson(reader, int[].class);
+        } catch (Exception e) {
+            throw new StatementExecutionException(e);
+        }
+    }
+
     @Override
     public Connection getConnection() {
         return conn;
@@ -826,7 +1140,11 @@ public class WebStorage implements Storage, SecureStorage {
 
     @Override
     public void shutdown() {
-        // Nothing to do here.
+        if (writeQueue != null) {
+            writeQueue.shutdown();
+        }
+        // Close all streaming cursors regardless of how long they have been idle
+        closeStreams(System.nanoTime(), 0);
     }
 
     SharedStateId getCategoryId(Category<?> category) {
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.web.client.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.redhat.thermostat.storage.core.StatementExecutionException;
+import com.redhat.thermostat.web.common.SharedStateId;
+import com.redhat.thermostat.web.common.WebPreparedStatement;
+
+public class CoalescingWriteQueueTest {
+    
+    private static final UUID SERVER_TOKEN = UUID.randomUUID();
+    
+    private ExecutorService executor;
+    private CoalescingWriteQueue queue;
+    
+    @Before
+    public void setup() {
+        executor = Executors.newCachedThreadPool();
+    }
+    
+    @After
+    public void tearDown() {
+        if (queue != null) {
+            queue.shutdown();
+        }
+        executor.shutdownNow();
+    }
+    
+    @Test
+    public void testSingleWrite() throws StatementExecutionException {
+        RecordingSender sender = new RecordingSender(null);
+        queue = new CoalescingWriteQueue(sender, 10);
+        WebPreparedStatement<?> stmt = newStatement(3);
+        assertEquals(3, queue.execute(stmt));
+        assertEquals(1, sender.batches.size());
+        assertEquals(1, sender.batches.get(0).size());
+        assertSame(stmt, sender.batches.get(0).get(0));
+    }
+    
+    @Test
+    public void testWritesQueuedDuringSendAreCoalesced() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingSender sender = new RecordingSender(release);
+        queue = new CoalescingWriteQueue(sender, 2);
+        
+        // first write blocks the sender
+        Future<Integer> first = submit(newStatement(0));
+        assertTrue(sender.sending.await(5, TimeUnit.SECONDS));
+        List<Future<Integer>> others = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            others.add(submit(newStatement(i)));
+        }
+        // Writes are queued right after they get submitted. There is no
+        // hook for this, so give the submitting threads some time.
+        Thread.sleep(200);
+        release.countDown();
+        
+        assertEquals(0, (int)first.get(5, TimeUnit.SECONDS));
+        for (int i = 0; i < others.size(); i++) {
+            assertEquals(i + 1, (int)others.get(i).get(5, TimeUnit.SECONDS));
+        }
+        // 1 + max batch size (2) + 1
+        assertEquals(3, sender.batches.size());
+        assertEquals(1, sender.batches.get(0).size());
+        assertEquals(2, sender.batches.get(1).size());
+        assertEquals(1, sender.batches.get(2).size());
+    }
+    
+    @Test
+    public void testSendFailureFailsAllWritesOfBatch() {
+        queue = new CoalescingWriteQueue(new CoalescingWriteQueue.BatchSender() {
+            
+            @Override
+            public int[] send(List<WebPreparedStatement<?>> batch) throws StatementExecutionException {
+                throw new StatementExecutionException(new RuntimeException("testing"));
+            }
+        }, 10);
+        try {
+            queue.execute(newStatement(1));
+            fail("expected failure");
+        } catch (StatementExecutionException e) {
+            assertEquals("testing", e.getCause().getMessage());
+        }
+    }
+    
+    @Test
+    public void testMismatchingResponseCountFails() {
+        queue = new CoalescingWriteQueue(new CoalescingWriteQueue.BatchSender() {
+            
+            @Override
+            public int[] send(List<WebPreparedStatement<?>> batch) throws StatementExecutionException {
+                return new int[0];
+            }
+        }, 10);
+        try {
+            queue.execute(newStatement(1));
+            fail("expected failure");
+        } catch (StatementExecutionException e) {
+            assertEquals(IllegalStateException.class, e.getCause().getClass());
+        }
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidBatchSize() {
+        new CoalescingWriteQueue(new RecordingSender(null), 0);
+    }
+    
+    private Future<Integer> submit(final WebPreparedStatement<?> stmt) {
+        return executor.submit(new Callable<Integer>() {
+            
+            @Override
+            public Integer call() throws Exception {
+                return queue.execute(stmt);
+            }
+        });
+    }
+    
+    /*
+     * The statement id doubles as expected response code.
+     */
+    private static WebPreparedStatement<?> newStatement(int id) {
+        return new WebPreparedStatement<>(0, new SharedStateId(id, SERVER_TOKEN));
+    }
+    
+    private static class RecordingSender implements CoalescingWriteQueue.BatchSender {
+        
+        private final List<List<WebPreparedStatement<?>>> batches = new ArrayList<>();
+        private final CountDownLatch sending = new CountDownLatch(1);
+        private final CountDownLatch release;
+        
+        private RecordingSender(CountDownLatch release) {
+            this.release = release;
+        }
+        
+        @Override
+        public int[] send(List<WebPreparedStatement<?>> batch) throws StatementExecutionException {
+            synchronized (batches) {
+                batches.add(new ArrayList<>(batch));
+            }
+            sending.countDown();
+            if (release != null) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new StatementExecutionException(e);
+                }
+            }
+            int[] responses = new int[batch.size()];
+            for (int i = 0; i < responses.length; i++) {
+                responses[i] = batch.get(i).getStatementId().getId();
+            }
+            return responses;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.web.client.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.redhat.thermostat.storage.core.StorageException;
+import com.redhat.thermostat.web.common.PreparedStatementResponseCode;
+import com.redhat.thermostat.web.common.binary.BinaryResultStreamReader;
+import com.redhat.thermostat.web.common.binary.BinaryResultStreamWriter;
+import com.redhat.thermostat.web.common.typeadapters.PojoTypeAdapterFactory;
+
+public class StreamingWebCursorTest {
+
+    private Gson gson;
+    private StreamingWebCursor.StreamedResponse response;
+    
+    @Before
+    public void setup() {
+        gson = new GsonBuilder()
+                .registerTypeAdapterFactory(new PojoTypeAdapterFactory())
+                .create();
+        response = mock(StreamingWebCursor.StreamedResponse.class);
+    }
+    
+    @Test
+    public void testIterateAllResults() throws IOException {
+        StreamingWebCursor<TestObj> cursor = newCursor(false, "one", "two", "three");
+        
+        assertTrue(cursor.hasNext());
+        assertEquals("one", cursor.next().getProperty1());
+        assertEquals("two", cursor.next().getProperty1());
+        verify(response, never()).close();
+        assertEquals("three", cursor.next().getProperty1());
+        // the end of the stream has been read ahead
+        verify(response).close();
+        assertFalse(cursor.hasNext());
+        try {
+            cursor.next();
+            fail("Expected NoSuchElementException");
+        } catch (NoSuchElementException e) {
+            // pass
+        }
+    }
+    
+    @Test
+    public void testEmptyResultsClosesResponse() throws IOException {
+        StreamingWebCursor<TestObj> cursor = newCursor(false);
+        
+        assertFalse(cursor.hasNext());
+        verify(response).close();
+    }
+    
+    @Test
+    public void testCloseAbortsUnreadResponse() throws IOException {
+        StreamingWebCursor<TestObj> cursor = newCursor(false, "one", "two", "three");
+        
+        assertEquals("one", cursor.next().getProperty1());
+        cursor.close();
+        verify(response).abort();
+        verify(response, never()).close();
+        assertFalse(cursor.hasNext());
+        // closing twice is harmless
+        cursor.close();
+        verify(response).abort();
+    }
+    
+    @Test
+    public void testCloseAfterLastResultDoesNotAbort() throws IOException {
+        StreamingWebCursor<TestObj> cursor = newCursor(false, "one");
+        
+        assertEquals("one", cursor.next().getProperty1());
+        cursor.close();
+        verify(response).close();
+        verify(response, never()).abort();
+    }
+    
+    @Test
+    public void testCloseIfIdle() throws IOException {
+        StreamingWebCursor<TestObj> cursor = newCursor(false, "one", "two", "three");
+        long timeout = TimeUnit.MINUTES.toNanos(1);
+        
+        assertEquals("one", cursor.next().getProperty1());
+        assertFalse(cursor.closeIfIdle(System.nanoTime(), timeout));
+        verify(response, never()).abort();
+        
+        assertTrue(cursor.closeIfIdle(System.nanoTime() + timeout, timeout));
+        verify(response).abort();
+        verify(response, never()).close();
+        // unlike closed cursors, idle ones fail rather than appear exhausted
+        assertTrue(cursor.hasNext());
+        try {
+            cursor.next();
+            fail("Expected StorageException since the cursor was closed while idle");
+        } catch (StorageException e) {
+            // pass
+        }
+        assertFalse(cursor.hasNext());
+        assertFalse(cursor.closeIfIdle(System.nanoTime() + timeout, timeout));
+    }
+    
+    @Test
+    public void testCloseIfIdleAfterLastResult() throws IOException {
+        StreamingWebCursor<TestObj> cursor = newCursor(false, "one");
+        
+        assertFalse(cursor.closeIfIdle(System.nanoTime(), 0));
+        verify(response).close();
+        verify(response, never()).abort();
+        assertEquals("one", cursor.next().getProperty1());
+    }
+    
+    @Test
+    public void testServerFailure() throws IOException {
+        StreamingWebCursor<TestObj> cursor = newCursor(true, "one", "two");
+        
+        assertEquals("one", cursor.next().getProperty1());
+        assertEquals("two", cursor.next().getProperty1());
+        verify(response).close();
+        assertTrue(cursor.hasNext());
+        try {
+            cursor.next();
+            fail("Expected StorageException since the server failed to send all results");
+        } catch (StorageException e) {
+            // pass
+        }
+        assertFalse(cursor.hasNext());
+    }
+    
+    private StreamingWebCursor<TestObj> newCursor(boolean fail, String... values) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryResultStreamWriter writer = new BinaryResultStreamWriter(out, gson, PreparedStatementResponseCode.QUERY_SUCCESS);
+        for (String value : values) {
+            TestObj obj = new TestObj();
+            obj.setProperty1(value);
+            writer.write(obj);
+        }
+        if (fail) {
+            writer.fail();
+        } else {
+            writer.finish();
+        }
+        BinaryResultStreamReader<TestObj> reader = new BinaryResultStreamReader<>(
+                new ByteArrayInputStream(out.toByteArray()), gson, TestObj.class);
+        return new StreamingWebCursor<>(response, reader);
+    }
+}
@@ -53,6 +53,7 @@ import static org.mockito.Mockito.when;
 
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
@@ -121,6 +122,9 @@ import com.redhat.thermostat.web.common.SharedStateId;
 import com.redhat.thermostat.web.common.WebPreparedStatement;
 import com.redhat.thermostat.web.common.WebPreparedStatementResponse;
 import com.redhat.thermostat.web.common.WebQueryResponse;
+import com.redhat.thermostat.web.common.WireFormat;
+import com.redhat.thermostat.web.common.binary.BinaryResultStreamWriter;
+import com.redhat.thermostat.web.common.binary.BinaryWebQueryResponseCodec;
 import com.redhat.thermostat.web.common.typeadapters.PojoTypeAdapterFactory;
 import com.redhat.thermostat.web.common.typeadapters.PreparedParameterTypeAdapterFactory;
 import com.redhat.thermostat.web.common.typeadapters.SharedStateIdTypeAdapterFactory;
@@ -137,6 +141,9 @@ public class WebStorageTest {
     // Set these in prepareServer() to determine server behaviour
     private int responseStatus = HttpServletResponse.SC_OK;
     private String responseBody;
+    // If set, takes precedence over responseBody
+    private byte[] binaryResponseBody;
+    private String binaryResponseContentType;
 
     // These get set by test server handler (anonymous class in startServer())
     // Check them after WebStorage method call that should interact with server.
@@ -212,7 +219,10 @@ public class WebStorageTest {
                 requestBody = body.toString();
                 // Send response body.
                 response.setStatus(responseStatus);
-                if (responseBody != null) {
+                if (binaryResponseBody != null) {
+                    response.setContentType(binaryResponseContentType);
+                    response.getOutputStream().write(binaryResponseBody);
+                } else if (responseBody != null) {
                     response.getWriter().write(responseBody);
                 }
                 baseRequest.setHandled(true);
@@ -225,6 +235,7 @@ public class WebStorageTest {
     private void prepareServer(int responseStatus, String responseBody) {
         this.responseStatus = responseStatus;
         this.responseBody = responseBody;
+        this.binaryResponseBody = null;
 
         requestBody = null;
         requestURI = null;
@@ -232,6 +243,13 @@ public class WebStorageTest {
         headers.clear();
     }
 
+    // OK status and specified response body in the binary encoding.
+    private void prepareBinaryServer(byte[] responseBody, String contentType) {
+        prepareServer(HttpServletResponse.SC_OK);
+        this.binaryResponseBody = responseBody;
+        this.binaryResponseContentType = contentType;
+    }
+
     // Specified status and null response body.
     private void prepareServer(int responseStatus) {
         prepareServer(responseStatus, null);
@@ -484,6 +502,7 @@ public class WebStorageTest {
         // current result list is exhausted.
         fakeQueryResponse.setHasMoreBatches(false);
         Cursor<TestObj> results = doBasicPrepareAndExecuteQueryTest(fakeQueryResponse);
+        assertEquals(WireFormat.ACCEPT_BINARY_OR_JSON, headers.get("Accept"));
         assertFalse(results.hasNext());
         try {
             results.next();
@@ -493,6 +512,186 @@ public class WebStorageTest {
         }
     }
     
+    @Test
+    public void canPrepareAndExecuteQueryWithBinaryResponse() {
+        WebQueryResponse<TestObj> fakeQueryResponse = new WebQueryResponse<>();
+        fakeQueryResponse.setResponseCode(PreparedStatementResponseCode.QUERY_SUCCESS);
+        fakeQueryResponse.setResultList(getTwoTestObjects());
+        fakeQueryResponse.setCursorId(444);
+        fakeQueryResponse.setHasMoreBatches(false);
+        Cursor<TestObj> results = doBasicPrepareAndExecuteQueryTest(fakeQueryResponse, true);
+        assertFalse(results.hasNext());
+    }
+    
+    @Test
+    public void canPrepareAndExecuteStreamingQuery() throws IOException {
+        System.setProperty(WebStorage.STREAM_QUERIES, "true");
+        try {
+            SSLConfiguration sslConf = mock(SSLConfiguration.class);
+            storage = new WebStorage("http://localhost:" + port + "/",
+                    new TrivialStorageCredentials(null, null), sslConf);
+        } finally {
+            System.clearProperty(WebStorage.STREAM_QUERIES);
+        }
+        registerCategory();
+        Gson gson = getQueryGson();
+        PreparedStatement<TestObj> stmt = prepareTestQuery(gson);
+        
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BinaryResultStreamWriter writer = new BinaryResultStreamWriter(bytes, gson, PreparedStatementResponseCode.QUERY_SUCCESS);
+        for (TestObj obj : getTwoTestObjects()) {
+            writer.write(obj);
+        }
+        writer.finish();
+        prepareBinaryServer(bytes.toByteArray(), WireFormat.BINARY_STREAM_CONTENT_TYPE);
+        
+        Cursor<TestObj> results = null;
+        try {
+            results = stmt.executeQuery();
+        } catch (StatementExecutionException e) {
+            // should execute fine
+            fail(e.getMessage());
+        }
+        assertTrue(requestURI.endsWith("/query-stream"));
+        assertTrue(results instanceof StreamingWebCursor);
+        assertEquals("fluffor1", results.next().getProperty1());
+        assertEquals("fluffor2", results.next().getProperty1());
+        assertFalse(results.hasNext());
+    }
+    
+    @Test(timeout=10000)
+    public void canQueryAfterClosingStreamingCursors() throws Exception {
+        Gson gson = setUpStreamingStorage();
+        PreparedStatement<TestObj> stmt = prepareTestQuery(gson);
+        byte[] body = getStreamedTwoTestObjects(gson);
+        
+        // more than the pool has connections
+        for (int i = 0; i < WebStorage.MAX_CONNECTIONS * 2; i++) {
+            prepareBinaryServer(body, WireFormat.BINARY_STREAM_CONTENT_TYPE);
+            Cursor<TestObj> results = stmt.executeQuery();
+            assertTrue(results instanceof StreamingWebCursor);
+            assertEquals("fluffor1", results.next().getProperty1());
+            // abandon the second result
+            ((StreamingWebCursor<TestObj>) results).close();
+        }
+    }
+    
+    @Test(timeout=10000)
+    public void abandonedStreamingCursorsDoNotStarveQueries() throws Exception {
+        Gson gson = setUpStreamingStorage();
+        PreparedStatement<TestObj> stmt = prepareTestQuery(gson);
+        byte[] body = getStreamedTwoTestObjects(gson);
+        
+        List<Cursor<TestObj>> abandoned = new ArrayList<>();
+        for (int i = 0; i < WebStorage.MAX_STREAMED_QUERIES; i++) {
+            prepareBinaryServer(body, WireFormat.BINARY_STREAM_CONTENT_TYPE);
+            Cursor<TestObj> results = stmt.executeQuery();
+            assertTrue(results instanceof StreamingWebCursor);
+            assertEquals("fluffor1", results.next().getProperty1());
+            abandoned.add(results);
+        }
+        
+        // the abandoned cursors still hold their connections, so this one
+        // gets batched
+        WebQueryResponse<TestObj> fakeQueryResponse = new WebQueryResponse<>();
+        fakeQueryResponse.setResponseCode(PreparedStatementResponseCode.QUERY_SUCCESS);
+        fakeQueryResponse.setResultList(getTwoTestObjects());
+        fakeQueryResponse.setCursorId(444);
+        fakeQueryResponse.setHasMoreBatches(false);
+        prepareServer(gson.toJson(fakeQueryResponse));
+        Cursor<TestObj> results = stmt.executeQuery();
+        assertTrue(requestURI.endsWith("/query-execute"));
+        assertTrue(results instanceof WebCursor);
+        assertEquals("fluffor1", results.next().getProperty1());
+        
+        for (Cursor<TestObj> cursor : abandoned) {
+            ((StreamingWebCursor<TestObj>) cursor).close();
+        }
+        prepareBinaryServer(body, WireFormat.BINARY_STREAM_CONTENT_TYPE);
+        results = stmt.executeQuery();
+        assertTrue(requestURI.endsWith("/query-stream"));
+        assertTrue(results instanceof StreamingWebCursor);
+    }
+    
+    @Test(timeout=10000)
+    public void idleStreamingCursorsGetClosed() throws Exception {
+        System.setProperty(WebStorage.STREAM_IDLE_TIMEOUT, "0");
+        Gson gson;
+        try {
+            gson = setUpStreamingStorage();
+        } finally {
+            System.clearProperty(WebStorage.STREAM_IDLE_TIMEOUT);
+        }
+        PreparedStatement<TestObj> stmt = prepareTestQuery(gson);
+        byte[] body = getStreamedTwoTestObjects(gson);
+        
+        List<Cursor<TestObj>> abandoned = new ArrayList<>();
+        for (int i = 0; i < WebStorage.MAX_STREAMED_QUERIES; i++) {
+            prepareBinaryServer(body, WireFormat.BINARY_STREAM_CONTENT_TYPE);
+            Cursor<TestObj> results = stmt.executeQuery();
+            assertTrue(results instanceof StreamingWebCursor);
+            assertEquals("fluffor1", results.next().getProperty1());
+            abandoned.add(results);
+        }
+        
+        // the abandoned cursors got closed, so this one gets streamed too
+        prepareBinaryServer(body, WireFormat.BINARY_STREAM_CONTENT_TYPE);
+        Cursor<TestObj> results = stmt.executeQuery();
+        assertTrue(requestURI.endsWith("/query-stream"));
+        assertTrue(results instanceof StreamingWebCursor);
+        
+        for (Cursor<TestObj> cursor : abandoned) {
+            try {
+                cursor.next();
+                fail("Expected StorageException since the cursor was closed while idle");
+            } catch (StorageException e) {
+                // pass
+            }
+        }
+    }
+    
+    @Test(timeout=10000)
+    public void shutdownClosesStreamingCursors() throws Exception {
+        Gson gson = setUpStreamingStorage();
+        PreparedStatement<TestObj> stmt = prepareTestQuery(gson);
+        byte[] body = getStreamedTwoTestObjects(gson);
+        prepareBinaryServer(body, WireFormat.BINARY_STREAM_CONTENT_TYPE);
+        Cursor<TestObj> results = stmt.executeQuery();
+        assertEquals("fluffor1", results.next().getProperty1());
+        
+        storage.shutdown();
+        
+        try {
+            results.next();
+            fail("Expected StorageException since the cursor was closed");
+        } catch (StorageException e) {
+            // pass
+        }
+    }
+    
+    private Gson setUpStreamingStorage() {
+        System.setProperty(WebStorage.STREAM_QUERIES, "true");
+        try {
+            SSLConfiguration sslConf = mock(SSLConfiguration.class);
+            storage = new WebStorage("http://localhost:" + port + "/",
+                    new TrivialStorageCredentials(null, null), sslConf);
+        } finally {
+            System.clearProperty(WebStorage.STREAM_QUERIES);
+        }
+        registerCategory();
+        return getQueryGson();
+    }
+    
+    private byte[] getStreamedTwoTestObjects(Gson gson) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BinaryResultStreamWriter writer = new BinaryResultStreamWriter(bytes, gson, PreparedStatementResponseCode.QUERY_SUCCESS);
+        for (TestObj obj : getTwoTestObjects()) {
+            writer.write(obj);
+        }
+        writer.finish();
+        return bytes.toByteArray();
+    }
+    
     /**
      * Tests a query which returns results in multiple batches. The get-more
      * call is successful in this test.
@@ -624,8 +823,42 @@ public class WebStorageTest {
     }
 
     private Cursor<TestObj> doBasicPrepareAndExecuteQueryTest(WebQueryResponse<TestObj> fakeQueryResponse) {
+        return doBasicPrepareAndExecuteQueryTest(fakeQueryResponse, false);
+    }
+    
+    private Cursor<TestObj> doBasicPrepareAndExecuteQueryTest(WebQueryResponse<TestObj> fakeQueryResponse, boolean binaryResponse) {
         Gson gson = getQueryGson();
-
+        PreparedStatement<TestObj> stmt = prepareTestQuery(gson);
+        
+        if (binaryResponse) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try {
+                new BinaryWebQueryResponseCodec(gson).write(fakeQueryResponse, bytes);
+            } catch (IOException e) {
+                fail(e.getMessage());
+            }
+            prepareBinaryServer(bytes.toByteArray(), WireFormat.BINARY_CONTENT_TYPE);
+        } else {
+            prepareServer(gson.toJson(fakeQueryResponse));
+        }
+        Cursor<TestObj> results = null;
+        try {
+            results = stmt.executeQuery();
+        } catch (StatementExecutionException e) {
+            // should execute fine
+            e.printStackTrace();
+            fail(e.getMessage());
+        }
+        assertNotNull(results);
+        assertTrue(results instanceof WebCursor);
+        assertTrue(results.hasNext());
+        assertEquals("fluffor1", results.next().getProperty1());
+        assertTrue(results.hasNext());
+        assertEquals("fluffor2", results.next().getProperty1());
+        return results;
+    }
+    
+    private PreparedStatement<TestObj> prepareTestQuery(Gson gson) {
         String strDesc = "QUERY test WHERE 'property1' = ?s";
         StatementDescriptor<TestObj> desc = new StatementDescriptor<>(category, strDesc);
         PreparedStatement<TestObj> stmt = null;
@@ -653,23 +886,7 @@ public class WebStorageTest {
         stmt.setString(0, "fluff");
         assertEquals("fluff", params.getParams()[0].getValue());
         assertEquals(String.class, params.getParams()[0].getType());
-        
-        prepareServer(gson.toJson(fakeQueryResponse));
-        Cursor<TestObj> results = null;
-        try {
-            results = stmt.executeQuery();
-        } catch (StatementExecutionException e) {
-            // should execute fine
-            e.printStackTrace();
-            fail(e.getMessage());
-        }
-        assertNotNull(results);
-        assertTrue(results instanceof WebCursor);
-        assertTrue(results.hasNext());
-        assertEquals("fluffor1", results.next().getProperty1());
-        assertTrue(results.hasNext());
-        assertEquals("fluffor2", results.next().getProperty1());
-        return results;
+        return stmt;
     }
     
     private Gson getQueryGson() {
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.web.common;
+
+/**
+ * Content types and encodings which {@code WebStorage} and
+ * {@code WebStorageEndPoint} may negotiate via the standard HTTP
+ * {@code Accept} and {@code Accept-Encoding} headers. JSON is always
+ * supported and is the fallback if a peer does not ask for anything else.
+ * 
+ * @see com.redhat.thermostat.web.common.binary.BinaryWebQueryResponseCodec
+ */
+public final class WireFormat {
+
+    public static final String JSON_CONTENT_TYPE = "application/json; charset=UTF-8";
+    
+    /**
+     * Content type of query responses in the binary encoding.
+     */
+    public static final String BINARY_CONTENT_TYPE = "application/x-thermostat-binary";
+    
+    /**
+     * Content type of streamed query results in the binary encoding.
+     * 
+     * @see com.redhat.thermostat.web.common.binary.BinaryResultStreamWriter
+     */
+    public static final String BINARY_STREAM_CONTENT_TYPE = "application/x-thermostat-binary-stream";
+    
+    /**
+     * Value for the {@code Accept} header of clients which prefer the binary
+     * encoding, but can handle JSON.
+     */
+    public static final String ACCEPT_BINARY_OR_JSON = BINARY_CONTENT_TYPE + ", application/json;q=0.9";
+    
+    public static final String GZIP_ENCODING = "gzip";
+    
+    private WireFormat() {
+        // constants and static helpers only
+    }
+    
+    /**
+     * @param acceptHeader
+     *            The value of the {@code Accept} header of a request. May be
+     *            {@code null}.
+     * @return {@code true} if the binary encoding is acceptable.
+     */
+    public static boolean acceptsBinary(String acceptHeader) {
+        return containsToken(acceptHeader, BINARY_CONTENT_TYPE);
+    }
+    
+    /**
+     * @param acceptEncodingHeader
+     *            The value of the {@code Accept-Encoding} header of a request.
+     *            May be {@code null}.
+     * @return {@code true} if gzip compressed content is acceptable.
+     */
+    public static boolean acceptsGzip(String acceptEncodingHeader) {
+        return containsToken(acceptEncodingHeader, GZIP_ENCODING);
+    }
+    
+    /**
+     * @param contentType
+     *            The value of a {@code Content-Type} header. May be
+     *            {@code null}.
+     * @return {@code true} if the content is in the binary encoding.
+     */
+    public static boolean isBinary(String contentType) {
+        return containsToken(contentType, BINARY_CONTENT_TYPE);
+    }
+    
+    /**
+     * @param contentEncoding
+     *            The value of a {@code Content-Encoding} header. May be
+     *            {@code null}.
+     * @return {@code true} if the content is gzip compressed.
+     */
+    public static boolean isGzip(String contentEncoding) {
+        return containsToken(contentEncoding, GZIP_ENCODING);
+    }
+    
+    /*
+     * Matches comma separated header values, ignoring parameters. Values
+     * with a quality of zero are not considered a match.
+     */
+    private static boolean containsToken(String headerValue, String token) {
+        if (headerValue == null) {
+            return false;
+        }
+        for (String value : headerValue.split(",")) {
+            String[] parts = value.split(";");
+            if (!parts[0].trim().equalsIgnoreCase(token)) {
+                continue;
+            }
+            boolean rejected = false;
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim().replace(" ", "");
+                if (param.equals("q=0") || param.matches("q=0\\.0*")) {
+                    rejected = true;
+                }
+            }
+            if (!rejected) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,317 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.web.common.binary;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Array;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gson.Gson;
+import com.redhat.thermostat.storage.core.PojoProperties;
+import com.redhat.thermostat.storage.core.PojoProperties.Property;
+import com.redhat.thermostat.storage.core.StorageException;
+import com.redhat.thermostat.storage.model.Pojo;
+
+/**
+ * Reads pojos written by {@link BinaryPojoOutput}. Properties are matched by
+ * name against the persisted setters of the expected class. Properties
+ * which the expected class does not know about are skipped.
+ */
+final class BinaryPojoInput {
+    
+    private final DataInputStream in;
+    private final Gson gson;
+    private final List<String[]> classProperties = new ArrayList<>();
+    private final List<String> stringRefs = new ArrayList<>();
+    
+    BinaryPojoInput(InputStream in, Gson gson) {
+        this.in = new DataInputStream(new BufferedInputStream(in));
+        this.gson = gson;
+    }
+    
+    /**
+     * @param type
+     *            The expected pojo class, or {@code null} if the value should
+     *            be skipped.
+     */
+    <T extends Pojo> T readNullablePojo(Class<T> type) throws IOException {
+        byte tag = in.readByte();
+        if (tag == BinaryTag.NULL) {
+            return null;
+        }
+        checkTag(BinaryTag.POJO, tag);
+        return type.cast(readPojo(type));
+    }
+    
+    private Object readPojo(Class<?> type) throws IOException {
+        int id = readVarInt();
+        String[] names;
+        if (id == classProperties.size()) {
+            int count = readVarInt();
+            names = new String[count];
+            for (int i = 0; i < count; i++) {
+                names[i] = readString();
+            }
+            classProperties.add(names);
+        } else if (id >= 0 && id < classProperties.size()) {
+            names = classProperties.get(id);
+        } else {
+            throw new IOException("Invalid class reference: " + id);
+        }
+        Object pojo = null;
+        PojoProperties properties = null;
+        if (type != null) {
+            properties = PojoProperties.forClass(type);
+            pojo = newInstance(properties, type);
+        }
+        for (String name : names) {
+            Property property = properties == null ? null : properties.getProperty(name);
+            Type expected = property != null && property.isWritable() ? property.getGenericType() : null;
+            Object value = readValue(expected);
+            if (expected != null) {
+                property.set(pojo, coerce(value, expected));
+            }
+        }
+        return pojo;
+    }
+    
+    private Object readValue(Type expected) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+        case BinaryTag.NULL:
+            return null;
+        case BinaryTag.TRUE:
+            return Boolean.TRUE;
+        case BinaryTag.FALSE:
+            return Boolean.FALSE;
+        case BinaryTag.INT:
+            return readVarInt();
+        case BinaryTag.LONG:
+            return readVarLong();
+        case BinaryTag.DOUBLE:
+            return in.readDouble();
+        case BinaryTag.STRING:
+            return readStringValue();
+        case BinaryTag.POJO:
+            return readPojo(expected instanceof Class ? (Class<?>) expected : null);
+        case BinaryTag.INT_ARRAY: {
+            int[] array = new int[readLength()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = readVarInt();
+            }
+            return array;
+        }
+        case BinaryTag.LONG_ARRAY: {
+            long[] array = new long[readLength()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = readVarLong();
+            }
+            return array;
+        }
+        case BinaryTag.DOUBLE_ARRAY: {
+            double[] array = new double[readLength()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = in.readDouble();
+            }
+            return array;
+        }
+        case BinaryTag.BOOLEAN_ARRAY: {
+            boolean[] array = new boolean[readLength()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = in.readBoolean();
+            }
+            return array;
+        }
+        case BinaryTag.STRING_ARRAY: {
+            String[] array = new String[readLength()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = readNullableString();
+            }
+            return array;
+        }
+        case BinaryTag.POJO_ARRAY:
+            return readPojoArray(componentClass(expected));
+        case BinaryTag.JSON: {
+            String json = readString();
+            return expected == null ? null : gson.fromJson(json, expected);
+        }
+        default:
+            throw new IOException("Unknown type tag: " + tag);
+        }
+    }
+    
+    private Object readPojoArray(Class<?> componentType) throws IOException {
+        int length = readLength();
+        Object array = componentType == null ? null : Array.newInstance(componentType, length);
+        for (int i = 0; i < length; i++) {
+            byte tag = in.readByte();
+            if (tag == BinaryTag.NULL) {
+                continue;
+            }
+            checkTag(BinaryTag.POJO, tag);
+            Object element = readPojo(componentType);
+            if (array != null) {
+                Array.set(array, i, element);
+            }
+        }
+        return array;
+    }
+    
+    private static Class<?> componentClass(Type arrayType) {
+        if (arrayType instanceof Class && ((Class<?>) arrayType).isArray()) {
+            return ((Class<?>) arrayType).getComponentType();
+        }
+        if (arrayType instanceof GenericArrayType) {
+            Type component = ((GenericArrayType) arrayType).getGenericComponentType();
+            if (component instanceof Class) {
+                return (Class<?>) component;
+            }
+        }
+        return null;
+    }
+    
+    /*
+     * Integral values are written based on their runtime type. Widen them
+     * if the setter declares a wider primitive type.
+     */
+    private static Object coerce(Object value, Type target) {
+        if (!(value instanceof Number)) {
+            return value;
+        }
+        Number number = (Number) value;
+        if (target == long.class || target == Long.class) {
+            return number.longValue();
+        } else if (target == int.class || target == Integer.class) {
+            return number.intValue();
+        } else if (target == double.class || target == Double.class) {
+            return number.doubleValue();
+        }
+        return value;
+    }
+    
+    private static Object newInstance(PojoProperties properties, Class<?> type) throws IOException {
+        try {
+            return properties.newInstance();
+        } catch (StorageException e) {
+            throw new IOException("Unable to instantiate " + type.getName(), e);
+        }
+    }
+    
+    private static void checkTag(byte expected, byte actual) throws IOException {
+        if (expected != actual) {
+            throw new IOException("Expected type tag " + expected + " but got " + actual);
+        }
+    }
+    
+    private int readLength() throws IOException {
+        int length = readVarInt();
+        if (length < 0) {
+            throw new IOException("Negative length: " + length);
+        }
+        return length;
+    }
+    
+    private String readStringValue() throws IOException {
+        int ref = readVarInt();
+        if (ref == 0) {
+            String value = readString();
+            if (stringRefs.size() < BinaryPojoOutput.MAX_STRING_REFS) {
+                stringRefs.add(value);
+            }
+            return value;
+        }
+        if (ref < 0 || ref > stringRefs.size()) {
+            throw new IOException("Invalid string reference: " + ref);
+        }
+        return stringRefs.get(ref - 1);
+    }
+    
+    private String readNullableString() throws IOException {
+        int length = readVarInt();
+        if (length == -1) {
+            return null;
+        }
+        return readString(length);
+    }
+    
+    private String readString() throws IOException {
+        return readString(readVarInt());
+    }
+    
+    private String readString(int length) throws IOException {
+        if (length < 0) {
+            throw new IOException("Negative length: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, BinaryPojoOutput.UTF_8);
+    }
+    
+    int readVarInt() throws IOException {
+        return (int) readVarLong();
+    }
+    
+    long readVarLong() throws IOException {
+        long zigZag = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            zigZag |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (zigZag >>> 1) ^ -(zigZag & 1);
+            }
+        }
+        throw new IOException("Malformed variable length integer");
+    }
+    
+    boolean readBoolean() throws IOException {
+        return in.readBoolean();
+    }
+    
+    byte readByte() throws IOException {
+        return in.readByte();
+    }
+}
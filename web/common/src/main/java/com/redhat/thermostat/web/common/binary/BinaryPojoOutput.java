@@ -0,0 +1,240 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.web.common.binary;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.Gson;
+import com.redhat.thermostat.storage.core.Entity;
+import com.redhat.thermostat.storage.core.PojoProperties;
+import com.redhat.thermostat.storage.core.PojoProperties.Property;
+import com.redhat.thermostat.storage.model.Pojo;
+
+/**
+ * Writes pojos in the binary encoding. The property names of a pojo class
+ * are written once per stream, the first time an instance of that class is
+ * written. Subsequent instances only refer to it by index.
+ * <p>
+ * Integral values are written as zig-zag encoded variable length integers.
+ * String values are written once and referred to by index on repetition,
+ * which is common for ids such as the agent or VM id of query results.
+ */
+final class BinaryPojoOutput {
+    
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+    /*
+     * Upper bound of distinct string values kept for back-references. Both
+     * sides stop adding strings once this is reached.
+     */
+    static final int MAX_STRING_REFS = 4096;
+    
+    private final DataOutputStream out;
+    private final Gson gson;
+    private final Map<Class<?>, Integer> classIds = new HashMap<>();
+    private final Map<String, Integer> stringRefs = new HashMap<>();
+    
+    BinaryPojoOutput(OutputStream out, Gson gson) {
+        this.out = new DataOutputStream(new BufferedOutputStream(out));
+        this.gson = gson;
+    }
+    
+    void writeNullablePojo(Pojo pojo) throws IOException {
+        if (pojo == null) {
+            out.writeByte(BinaryTag.NULL);
+        } else {
+            out.writeByte(BinaryTag.POJO);
+            writePojo(pojo);
+        }
+    }
+    
+    private void writePojo(Pojo pojo) throws IOException {
+        Class<?> cls = pojo.getClass();
+        if (! cls.isAnnotationPresent(Entity.class)) {
+            throw new IllegalArgumentException("attempt to serialize non-Entity class: " + cls.getName());
+        }
+        List<Property> properties = PojoProperties.forClass(cls).getReadableProperties();
+        Integer id = classIds.get(cls);
+        if (id == null) {
+            // first occurrence: define the class' property names
+            id = classIds.size();
+            classIds.put(cls, id);
+            writeVarInt(id);
+            writeVarInt(properties.size());
+            for (Property property : properties) {
+                writeString(property.getName());
+            }
+        } else {
+            writeVarInt(id);
+        }
+        for (Property property : properties) {
+            writeValue(property.get(pojo));
+        }
+    }
+    
+    private void writeValue(Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(BinaryTag.NULL);
+        } else if (value instanceof Boolean) {
+            out.writeByte((Boolean) value ? BinaryTag.TRUE : BinaryTag.FALSE);
+        } else if (value instanceof Integer) {
+            out.writeByte(BinaryTag.INT);
+            writeVarInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(BinaryTag.LONG);
+            writeVarLong((Long) value);
+        } else if (value instanceof Double) {
+            out.writeByte(BinaryTag.DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof String) {
+            out.writeByte(BinaryTag.STRING);
+            writeStringValue((String) value);
+        } else if (value instanceof Pojo) {
+            out.writeByte(BinaryTag.POJO);
+            writePojo((Pojo) value);
+        } else if (value instanceof int[]) {
+            int[] array = (int[]) value;
+            out.writeByte(BinaryTag.INT_ARRAY);
+            writeVarInt(array.length);
+            for (int i : array) {
+                writeVarInt(i);
+            }
+        } else if (value instanceof long[]) {
+            long[] array = (long[]) value;
+            out.writeByte(BinaryTag.LONG_ARRAY);
+            writeVarInt(array.length);
+            for (long l : array) {
+                writeVarLong(l);
+            }
+        } else if (value instanceof double[]) {
+            double[] array = (double[]) value;
+            out.writeByte(BinaryTag.DOUBLE_ARRAY);
+            writeVarInt(array.length);
+            for (double d : array) {
+                out.writeDouble(d);
+            }
+        } else if (value instanceof boolean[]) {
+            boolean[] array = (boolean[]) value;
+            out.writeByte(BinaryTag.BOOLEAN_ARRAY);
+            writeVarInt(array.length);
+            for (boolean b : array) {
+                out.writeBoolean(b);
+            }
+        } else if (value instanceof String[]) {
+            String[] array = (String[]) value;
+            out.writeByte(BinaryTag.STRING_ARRAY);
+            writeVarInt(array.length);
+            for (String s : array) {
+                writeNullableString(s);
+            }
+        } else if (value instanceof Pojo[]) {
+            Pojo[] array = (Pojo[]) value;
+            out.writeByte(BinaryTag.POJO_ARRAY);
+            writeVarInt(array.length);
+            for (Pojo p : array) {
+                writeNullablePojo(p);
+            }
+        } else {
+            // rarely used types, e.g. maps
+            out.writeByte(BinaryTag.JSON);
+            writeString(gson.toJson(value));
+        }
+    }
+    
+    /*
+     * Writes 0 followed by the string on first occurrence, the string's
+     * reference index plus one otherwise.
+     */
+    private void writeStringValue(String value) throws IOException {
+        Integer ref = stringRefs.get(value);
+        if (ref != null) {
+            writeVarInt(ref + 1);
+            return;
+        }
+        if (stringRefs.size() < MAX_STRING_REFS) {
+            stringRefs.put(value, stringRefs.size());
+        }
+        writeVarInt(0);
+        writeString(value);
+    }
+    
+    private void writeNullableString(String value) throws IOException {
+        if (value == null) {
+            writeVarInt(-1);
+        } else {
+            writeString(value);
+        }
+    }
+    
+    private void writeString(String value) throws IOException {
+        byte[] bytes = value.getBytes(UTF_8);
+        writeVarInt(bytes.length);
+        out.write(bytes);
+    }
+    
+    void writeVarInt(int value) throws IOException {
+        writeVarLong(value);
+    }
+    
+    void writeVarLong(long value) throws IOException {
+        // zig-zag encoding keeps small negative values short
+        long zigZag = (value << 1) ^ (value >> 63);
+        while ((zigZag & ~0x7FL) != 0) {
+            out.writeByte((int) ((zigZag & 0x7F) | 0x80));
+            zigZag >>>= 7;
+        }
+        out.writeByte((int) zigZag);
+    }
+    
+    void writeBoolean(boolean value) throws IOException {
+        out.writeBoolean(value);
+    }
+    
+    void writeByte(int value) throws IOException {
+        out.writeByte(value);
+    }
+    
+    void flush() throws IOException {
+        out.flush();
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.web.common.binary;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.google.gson.Gson;
+import com.redhat.thermostat.storage.model.Pojo;
+
+/**
+ * Reads query results written by {@link BinaryResultStreamWriter}. Results
+ * are decoded lazily, one per call to {@link #read()}, so a slow reader
+ * keeps the writer from getting ahead by more than what fits into the
+ * network buffers.
+ * <p>
+ * Instances are not thread safe.
+ */
+public class BinaryResultStreamReader<T extends Pojo> {
+    
+    private final BinaryPojoInput input;
+    private final Class<T> dataClass;
+    private final int responseCode;
+    private boolean finished;
+    
+    /**
+     * Reads the stream header.
+     * 
+     * @param in
+     *            The stream to read from. Not closed by this reader.
+     * @param gson
+     *            Used for property values which have no binary encoding.
+     * @param dataClass
+     *            The type of the results.
+     */
+    public BinaryResultStreamReader(InputStream in, Gson gson, Class<T> dataClass) throws IOException {
+        this.input = new BinaryPojoInput(in, gson);
+        this.dataClass = dataClass;
+        int version = input.readByte();
+        if (version != BinaryResultStreamWriter.VERSION) {
+            throw new IOException("Unsupported binary stream version: " + version);
+        }
+        this.responseCode = input.readVarInt();
+    }
+    
+    public int getResponseCode() {
+        return responseCode;
+    }
+    
+    /**
+     * @return The next result or {@code null} if there are no more results.
+     * @throws IOException
+     *             If the writer signalled a failure or the stream ended
+     *             prematurely.
+     */
+    public T read() throws IOException {
+        if (finished) {
+            return null;
+        }
+        byte marker = input.readByte();
+        switch (marker) {
+        case BinaryResultStreamWriter.MARKER_RESULT:
+            return input.readNullablePojo(dataClass);
+        case BinaryResultStreamWriter.MARKER_END:
+            finished = true;
+            return null;
+        case BinaryResultStreamWriter.MARKER_FAILURE:
+            finished = true;
+            throw new IOException("Server failed to produce all results. See server logs for details.");
+        default:
+            throw new IOException("Unknown stream marker: " + marker);
+        }
+    }
+}
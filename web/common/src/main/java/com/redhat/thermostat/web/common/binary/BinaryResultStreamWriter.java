@@ -0,0 +1,119 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.web.common.binary;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Objects;
+
+import com.google.gson.Gson;
+import com.redhat.thermostat.storage.model.Pojo;
+import com.redhat.thermostat.web.common.WireFormat;
+
+/**
+ * Writes query results one at a time, as they get read from a cursor. The
+ * stream is announced as {@link WireFormat#BINARY_STREAM_CONTENT_TYPE} and
+ * read via {@link BinaryResultStreamReader}.
+ * <p>
+ * The stream starts with the response code of the query. Every result is
+ * preceded by a marker byte. The stream ends with an end marker if all
+ * results have been written, or with a failure marker if reading results
+ * failed part way through.
+ * <p>
+ * Instances are not thread safe.
+ */
+public class BinaryResultStreamWriter {
+    
+    static final int VERSION = 1;
+    
+    static final byte MARKER_END = 0;
+    static final byte MARKER_RESULT = 1;
+    static final byte MARKER_FAILURE = 2;
+    
+    private final BinaryPojoOutput output;
+    
+    /**
+     * Writes the stream header.
+     * 
+     * @param out
+     *            The stream to write to. Not closed by this writer.
+     * @param gson
+     *            Used for property values which have no binary encoding.
+     * @param responseCode
+     *            The response code of the query. See
+     *            {@link com.redhat.thermostat.web.common.PreparedStatementResponseCode}.
+     */
+    public BinaryResultStreamWriter(OutputStream out, Gson gson, int responseCode) throws IOException {
+        this.output = new BinaryPojoOutput(out, gson);
+        output.writeByte(VERSION);
+        output.writeVarInt(responseCode);
+    }
+    
+    /**
+     * @param result
+     *            A query result. Must not be {@code null}.
+     */
+    public void write(Pojo result) throws IOException {
+        Objects.requireNonNull(result);
+        output.writeByte(MARKER_RESULT);
+        output.writeNullablePojo(result);
+    }
+    
+    /**
+     * Pushes results written so far to the underlying stream.
+     */
+    public void flush() throws IOException {
+        output.flush();
+    }
+    
+    /**
+     * Marks the end of the results and flushes.
+     */
+    public void finish() throws IOException {
+        output.writeByte(MARKER_END);
+        output.flush();
+    }
+    
+    /**
+     * Tells the reader that no more results will follow since producing them
+     * failed. Flushes.
+     */
+    public void fail() throws IOException {
+        output.writeByte(MARKER_FAILURE);
+        output.flush();
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.web.common.binary;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+
+import com.google.gson.Gson;
+import com.redhat.thermostat.storage.model.Pojo;
+import com.redhat.thermostat.web.common.WebQueryResponse;
+import com.redhat.thermostat.web.common.WireFormat;
+
+/**
+ * Encodes {@link WebQueryResponse}s in the compact binary format announced
+ * as {@link WireFormat#BINARY_CONTENT_TYPE}.
+ * <p>
+ * Rather than repeating property names for every result as JSON does, the
+ * names of the persisted properties of a pojo class are written once per
+ * response. Numbers are written as variable length integers or raw
+ * doubles. Property types without a dedicated encoding (e.g. maps) are
+ * embedded as JSON using the supplied {@link Gson} instance.
+ * <p>
+ * Instances are thread safe.
+ */
+public class BinaryWebQueryResponseCodec {
+    
+    private static final int VERSION = 1;
+    
+    private final Gson gson;
+    
+    /**
+     * @param gson
+     *            Used for property values which have no binary encoding.
+     */
+    public BinaryWebQueryResponseCodec(Gson gson) {
+        this.gson = gson;
+    }
+    
+    public <T extends Pojo> void write(WebQueryResponse<T> response, OutputStream out) throws IOException {
+        BinaryPojoOutput output = new BinaryPojoOutput(out, gson);
+        output.writeByte(VERSION);
+        output.writeVarInt(response.getResponseCode());
+        output.writeVarInt(response.getCursorId());
+        output.writeBoolean(response.hasMoreBatches());
+        T[] results = response.getResultList();
+        if (results == null) {
+            output.writeVarInt(0);
+        } else {
+            output.writeVarInt(results.length + 1);
+            for (T result : results) {
+                output.writeNullablePojo(result);
+            }
+        }
+        output.flush();
+    }
+    
+    public <T extends Pojo> WebQueryResponse<T> read(InputStream in, Class<T> dataClass) throws IOException {
+        BinaryPojoInput input = new BinaryPojoInput(in, gson);
+        int version = input.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported binary format version: " + version);
+        }
+        WebQueryResponse<T> response = new WebQueryResponse<>();
+        response.setResponseCode(input.readVarInt());
+        response.setCursorId(input.readVarInt());
+        response.setHasMoreBatches(input.readBoolean());
+        int lengthPlusOne = input.readVarInt();
+        if (lengthPlusOne < 0) {
+            throw new IOException("Negative length: " + (lengthPlusOne - 1));
+        }
+        if (lengthPlusOne > 0) {
+            @SuppressWarnings("unchecked")
+            T[] results = (T[]) Array.newInstance(dataClass, lengthPlusOne - 1);
+            for (int i = 0; i < results.length; i++) {
+                results[i] = input.readNullablePojo(dataClass);
+            }
+            response.setResultList(results);
+        }
+        return response;
+    }
+}
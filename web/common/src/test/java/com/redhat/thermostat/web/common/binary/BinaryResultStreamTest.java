@@ -0,0 +1,164 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.web.common.binary;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.redhat.thermostat.web.common.PreparedStatementResponseCode;
+import com.redhat.thermostat.web.common.binary.BinaryWebQueryResponseCodecTest.BarPojo;
+import com.redhat.thermostat.web.common.typeadapters.PojoTypeAdapterFactory;
+
+public class BinaryResultStreamTest {
+
+    private Gson gson;
+    
+    @Before
+    public void setup() {
+        gson = new GsonBuilder()
+                .registerTypeAdapterFactory(new PojoTypeAdapterFactory())
+                .create();
+    }
+    
+    @Test
+    public void canStreamResults() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryResultStreamWriter writer = new BinaryResultStreamWriter(out, gson, PreparedStatementResponseCode.QUERY_SUCCESS);
+        writer.write(bar("one"));
+        writer.flush();
+        writer.write(bar("two"));
+        writer.finish();
+        
+        BinaryResultStreamReader<BarPojo> reader = newReader(out.toByteArray());
+        assertEquals(PreparedStatementResponseCode.QUERY_SUCCESS, reader.getResponseCode());
+        assertEquals("one", reader.read().getName());
+        assertEquals("two", reader.read().getName());
+        assertNull(reader.read());
+        // stays at the end
+        assertNull(reader.read());
+    }
+    
+    @Test
+    public void canStreamResponseCodeOnly() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryResultStreamWriter writer = new BinaryResultStreamWriter(out, gson, PreparedStatementResponseCode.ILLEGAL_PATCH);
+        writer.finish();
+        
+        BinaryResultStreamReader<BarPojo> reader = newReader(out.toByteArray());
+        assertEquals(PreparedStatementResponseCode.ILLEGAL_PATCH, reader.getResponseCode());
+        assertNull(reader.read());
+    }
+    
+    @Test
+    public void flushedResultsAreReadable() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryResultStreamWriter writer = new BinaryResultStreamWriter(out, gson, PreparedStatementResponseCode.QUERY_SUCCESS);
+        writer.write(bar("one"));
+        writer.flush();
+        
+        // the end of the stream has not been written yet
+        BinaryResultStreamReader<BarPojo> reader = newReader(out.toByteArray());
+        assertEquals("one", reader.read().getName());
+        try {
+            reader.read();
+            fail("Expected IOException due to missing end marker");
+        } catch (IOException e) {
+            // pass
+        }
+    }
+    
+    @Test
+    public void failureMarkerIsReported() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryResultStreamWriter writer = new BinaryResultStreamWriter(out, gson, PreparedStatementResponseCode.QUERY_SUCCESS);
+        writer.write(bar("one"));
+        writer.fail();
+        
+        BinaryResultStreamReader<BarPojo> reader = newReader(out.toByteArray());
+        assertEquals("one", reader.read().getName());
+        try {
+            reader.read();
+            fail("Expected IOException due to failure marker");
+        } catch (IOException e) {
+            // pass
+        }
+    }
+    
+    @Test
+    public void truncatedStreamFails() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryResultStreamWriter writer = new BinaryResultStreamWriter(out, gson, PreparedStatementResponseCode.QUERY_SUCCESS);
+        writer.write(bar("some name"));
+        writer.finish();
+        byte[] bytes = out.toByteArray();
+        
+        BinaryResultStreamReader<BarPojo> reader = newReader(Arrays.copyOf(bytes, bytes.length - 4));
+        try {
+            reader.read();
+            fail("Expected IOException due to truncated stream");
+        } catch (IOException e) {
+            // pass
+        }
+    }
+    
+    @Test(expected = NullPointerException.class)
+    public void writingNullFails() throws IOException {
+        BinaryResultStreamWriter writer = new BinaryResultStreamWriter(new ByteArrayOutputStream(), gson, PreparedStatementResponseCode.QUERY_SUCCESS);
+        writer.write(null);
+    }
+    
+    private BinaryResultStreamReader<BarPojo> newReader(byte[] bytes) throws IOException {
+        return new BinaryResultStreamReader<>(new ByteArrayInputStream(bytes), gson, BarPojo.class);
+    }
+    
+    private static BarPojo bar(String name) {
+        BarPojo bar = new BarPojo();
+        bar.setName(name);
+        return bar;
+    }
+}
@@ -0,0 +1,457 @@
+/*
+ * Copyright 2012-2017 Red Hat, Inc.
+ *
+ * This file is part of Thermostat.
+ *
+ * Thermostat is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2, or (at your
+ * option) any later version.
+ *
+ * Thermostat is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Thermostat; see the file COPYING.  If not see
+ * <http://www.gnu.org/licenses/>.
+ *
+ * Linking this code with other modules is making a combined work
+ * based on this code.  Thus, the terms and conditions of the GNU
+ * General Public License cover the whole combination.
+ *
+ * As a special exception, the copyright holders of this code give
+ * you permission to link this code with independent modules to
+ * produce an executable, regardless of the license terms of these
+ * independent modules, and to copy and distribute the resulting
+ * executable under terms of your choice, provided that you also
+ * meet, for each linked independent module, the terms and conditions
+ * of the license of that module.  An independent module is a module
+ * which is not derived from or based on this code.  If you modify
+ * this code, you may extend this exception to your version of the
+ * library, but you are not obligated to do so.  If you do not wish
+ * to do so, delete this exception statement from your version.
+ */
+
+package com.redhat.thermostat.web.common.binary;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.redhat.thermostat.storage.core.Entity;
+import com.redhat.thermostat.storage.core.Persist;
+import com.redhat.thermostat.storage.model.Pojo;
+import com.redhat.thermostat.web.common.WebQueryResponse;
+import com.redhat.thermostat.web.common.typeadapters.PojoTypeAdapterFactory;
+
+public class BinaryWebQueryResponseCodecTest {
+
+    private BinaryWebQueryResponseCodec codec;
+    
+    @Before
+    public void setup() {
+        Gson gson = new GsonBuilder()
+                .registerTypeAdapterFactory(new PojoTypeAdapterFactory())
+                .create();
+        codec = new BinaryWebQueryResponseCodec(gson);
+    }
+    
+    @Test
+    public void canRoundTripResponseFields() throws IOException {
+        WebQueryResponse<FooPojo> response = new WebQueryResponse<>();
+        response.setResponseCode(-1);
+        response.setCursorId(300);
+        response.setHasMoreBatches(true);
+        response.setResultList(new FooPojo[0]);
+        
+        WebQueryResponse<FooPojo> actual = roundTrip(response, FooPojo.class);
+        assertEquals(-1, actual.getResponseCode());
+        assertEquals(300, actual.getCursorId());
+        assertTrue(actual.hasMoreBatches());
+        assertEquals(0, actual.getResultList().length);
+    }
+    
+    @Test
+    public void canRoundTripNullResultList() throws IOException {
+        WebQueryResponse<FooPojo> response = new WebQueryResponse<>();
+        
+        WebQueryResponse<FooPojo> actual = roundTrip(response, FooPojo.class);
+        assertNull(actual.getResultList());
+        assertFalse(actual.hasMoreBatches());
+    }
+    
+    @Test
+    public void canRoundTripPrimitivesAndArrays() throws IOException {
+        FooPojo foo = new FooPojo();
+        foo.setAInt(-42);
+        foo.setALong(Long.MIN_VALUE);
+        foo.setADouble(3.5);
+        foo.setABoolean(true);
+        foo.setFooString("b\u00e4r");
+        foo.setIntArray(new int[] { 0, -1, Integer.MAX_VALUE });
+        foo.setLongArray(new long[] { Long.MAX_VALUE, 7 });
+        foo.setDoubleArray(new double[] { -0.5 });
+        foo.setBoolArray(new boolean[] { true, false });
+        foo.setStringArray(new String[] { "a", null, "" });
+        
+        FooPojo actual = roundTripSingle(foo);
+        assertEquals(-42, actual.getAInt());
+        assertEquals(Long.MIN_VALUE, actual.getALong());
+        assertEquals(3.5, actual.getADouble(), 0);
+        assertTrue(actual.getABoolean());
+        assertEquals("b\u00e4r", actual.getFooString());
+        assertArrayEquals(new int[] { 0, -1, Integer.MAX_VALUE }, actual.getIntArray());
+        assertArrayEquals(new long[] { Long.MAX_VALUE, 7 }, actual.getLongArray());
+        assertArrayEquals(new double[] { -0.5 }, actual.getDoubleArray(), 0);
+        assertTrue(actual.getBoolArray()[0]);
+        assertFalse(actual.getBoolArray()[1]);
+        assertArrayEquals(new String[] { "a", null, "" }, actual.getStringArray());
+    }
+    
+    @Test
+    public void canRoundTripNullMembers() throws IOException {
+        FooPojo foo = new FooPojo();
+        
+        FooPojo actual = roundTripSingle(foo);
+        assertNull(actual.getFooString());
+        assertNull(actual.getIntArray());
+        assertNull(actual.getStringArray());
+        assertNull(actual.getNested());
+        assertNull(actual.getMap());
+    }
+    
+    @Test
+    public void canRoundTripNestedPojos() throws IOException {
+        BarPojo bar1 = new BarPojo();
+        bar1.setName("one");
+        BarPojo bar2 = new BarPojo();
+        bar2.setName("two");
+        FooPojo foo = new FooPojo();
+        foo.setNested(bar1);
+        foo.setNestedArray(new BarPojo[] { bar2, null });
+        
+        FooPojo actual = roundTripSingle(foo);
+        assertEquals("one", actual.getNested().getName());
+        assertEquals(2, actual.getNestedArray().length);
+        assertEquals("two", actual.getNestedArray()[0].getName());
+        assertNull(actual.getNestedArray()[1]);
+    }
+    
+    @Test
+    public void canRoundTripOtherTypesViaJson() throws IOException {
+        Map<String, String> map = new HashMap<>();
+        map.put("key", "value");
+        FooPojo foo = new FooPojo();
+        foo.setMap(map);
+        
+        FooPojo actual = roundTripSingle(foo);
+        assertEquals(map, actual.getMap());
+    }
+    
+    @Test
+    public void canRoundTripNullAndRepeatedResults() throws IOException {
+        FooPojo foo1 = new FooPojo();
+        foo1.setAInt(1);
+        foo1.setFooString("same");
+        FooPojo foo2 = new FooPojo();
+        foo2.setAInt(2);
+        foo2.setFooString("same");
+        WebQueryResponse<FooPojo> response = new WebQueryResponse<>();
+        response.setResultList(new FooPojo[] { foo1, null, foo2 });
+        
+        FooPojo[] actual = roundTrip(response, FooPojo.class).getResultList();
+        assertEquals(3, actual.length);
+        assertEquals(1, actual[0].getAInt());
+        assertEquals("same", actual[0].getFooString());
+        assertNull(actual[1]);
+        assertEquals(2, actual[2].getAInt());
+        assertEquals("same", actual[2].getFooString());
+    }
+    
+    @Test
+    public void unknownPropertiesAreSkipped() throws IOException {
+        FooPojo foo = new FooPojo();
+        foo.setAInt(5);
+        foo.setFooString("bar");
+        BarPojo bar = new BarPojo();
+        bar.setName("nested");
+        foo.setNested(bar);
+        foo.setNestedArray(new BarPojo[] { bar });
+        foo.setStringArray(new String[] { "x" });
+        WebQueryResponse<FooPojo> response = new WebQueryResponse<>();
+        response.setResultList(new FooPojo[] { foo, foo });
+        
+        SmallFooPojo[] actual = roundTrip(response, SmallFooPojo.class).getResultList();
+        assertEquals(2, actual.length);
+        assertEquals(5, actual[0].getAInt());
+        assertEquals(5, actual[1].getAInt());
+    }
+    
+    @Test
+    public void binaryIsSmallerThanJson() throws IOException {
+        Gson gson = new GsonBuilder()
+                .registerTypeAdapterFactory(new PojoTypeAdapterFactory())
+                .create();
+        FooPojo[] results = new FooPojo[100];
+        for (int i = 0; i < results.length; i++) {
+            results[i] = new FooPojo();
+            results[i].setALong(System.currentTimeMillis());
+            results[i].setAInt(i);
+            results[i].setFooString("foo");
+        }
+        WebQueryResponse<FooPojo> response = new WebQueryResponse<>();
+        response.setResultList(results);
+        
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        codec.write(response, out);
+        String json = gson.toJson(results);
+        assertTrue(out.size() < json.length());
+    }
+    
+    @Test
+    public void writingNonEntityFails() throws IOException {
+        WebQueryResponse<NonEntityPojo> response = new WebQueryResponse<>();
+        response.setResultList(new NonEntityPojo[] { new NonEntityPojo() });
+        try {
+            codec.write(response, new ByteArrayOutputStream());
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // pass
+        }
+    }
+    
+    @Test
+    public void readingUnknownVersionFails() {
+        try {
+            codec.read(new ByteArrayInputStream(new byte[] { 99 }), FooPojo.class);
+            fail("Expected IOException");
+        } catch (IOException e) {
+            // pass
+        }
+    }
+    
+    private FooPojo roundTripSingle(FooPojo foo) throws IOException {
+        WebQueryResponse<FooPojo> response = new WebQueryResponse<>();
+        response.setResultList(new FooPojo[] { foo });
+        FooPojo[] results = roundTrip(response, FooPojo.class).getResultList();
+        assertEquals(1, results.length);
+        return results[0];
+    }
+    
+    private <S extends Pojo, T extends Pojo> WebQueryResponse<T> roundTrip(WebQueryResponse<S> response, Class<T> type) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        codec.write(response, out);
+        return codec.read(new ByteArrayInputStream(out.toByteArray()), type);
+    }
+    
+    @Entity
+    public static class FooPojo implements Pojo {
+        
+        private int aInt;
+        private long aLong;
+        private double aDouble;
+        private boolean aBoolean;
+        private String fooString;
+        private int[] intArray;
+        private long[] longArray;
+        private double[] doubleArray;
+        private boolean[] boolArray;
+        private String[] stringArray;
+        private BarPojo nested;
+        private BarPojo[] nestedArray;
+        private Map<String, String> map;
+        
+        @Persist
+        public int getAInt() {
+            return aInt;
+        }
+        
+        @Persist
+        public void setAInt(int aInt) {
+            this.aInt = aInt;
+        }
+        
+        @Persist
+        public long getALong() {
+            return aLong;
+        }
+        
+        @Persist
+        public void setALong(long aLong) {
+            this.aLong = aLong;
+        }
+        
+        @Persist
+        public double getADouble() {
+            return aDouble;
+        }
+        
+        @Persist
+        public void setADouble(double aDouble) {
+            this.aDouble = aDouble;
+        }
+        
+        @Persist
+        public boolean getABoolean() {
+            return aBoolean;
+        }
+        
+        @Persist
+        public void setABoolean(boolean aBoolean) {
+            this.aBoolean = aBoolean;
+        }
+        
+        @Persist
+        public String getFooString() {
+            return fooString;
+        }
+        
+        @Persist
+        public void setFooString(String fooString) {
+            this.fooString = fooString;
+        }
+        
+        @Persist
+        public int[] getIntArray() {
+            return intArray;
+        }
+        
+        @Persist
+        public void setIntArray(int[] intArray) {
+            this.intArray = intArray;
+        }
+        
+        @Persist
+        public long[] getLongArray() {
+            return longArray;
+        }
+        
+        @Persist
+        public void setLongArray(long[] longArray) {
+            this.longArray = longArray;
+        }
+        
+        @Persist
+        public double[] getDoubleArray() {
+            return doubleArray;
+        }
+        
+        @Persist
+        public void setDoubleArray(double[] doubleArray) {
+            this.doubleArray = doubleArray;
+        }
+        
+        @Persist
+        public boolean[] getBoolArray() {
+            return boolArray;
+        }
+        
+        @Persist
+        public void setBoolArray(boolean[] boolArray) {
+            this.boolArray = boolArray;
+        }
+        
+        @Persist
+        public String[] getStringArray() {
+            return stringArray;
+        }
+        
+        @Persist
+        public void setStringArray(String[] stringArray) {
+            this.stringArray = stringArray;
+        }
+        
+        @Persist
+        public BarPojo getNested() {
+            return nested;
+        }
+        
+        @Persist
+        public void setNested(BarPojo nested) {
+            this.nested = nested;
+        }
+        
+        @Persist
+        public BarPojo[] getNestedArray() {
+            return nestedArray;
+        }
+        
+        @Persist
+        public void setNestedArray(BarPojo[] nestedArray) {
+            this.nestedArray = nestedArray;
+        }
+        
+        @Persist
+        public Map<String, String> getMap() {
+            return map;
+        }
+        
+        @Persist
+        public void setMap(Map<String, String> map) {
+            this.map = map;
+        }
+    }
+    
+    @Entity
+    public static class SmallFooPojo implements Pojo {
+        
+        private int aInt;
+        
+        @Persist
+        public int getAInt() {
+            return aInt;
+        }
+        
+        @Persist
+        public void setAInt(int aInt) {
+            this.aInt = aInt;
+        }
+    }
+    
+    @Entity
+    public static class BarPojo implements Pojo {
+        
+        private String name;
+        
+        @Persist
+        public String getName() {
+            return name;
+        }
+        
+        @Persist
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+    
+    public static class NonEntityPojo implements Pojo {
+        
+        private int value;
+        
+        @Persist
+        public int getValue() {
+            return value;
+        }
+        
+        @Persist
+        public void setValue(int value) {
+            this.value = value;
+        }
+    }
+}
@@ -36,18 +36,19 @@
 
 package com.redhat.thermostat.web.server;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
+import java.util.Iterator;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.redhat.thermostat.storage.core.Cursor;
 
 /**
- * Manages (query) cursors for a single user.
+ * Manages (query) cursors for a single user. Cursors are kept in a
+ * concurrent map, so that concurrent get-more requests of a user don't
+ * contend on a single lock.
  * 
  */
 final class CursorManager {
@@ -55,7 +56,7 @@ final class CursorManager {
     public static final int CURSOR_NOT_STORED = -1;
     private final Map<Integer, CursorHolder> cursors;
     private final TimerRegistry registry;
-    private int cursorIdCounter;
+    private final AtomicInteger cursorIdCounter = new AtomicInteger();
     
     // test-only
     CursorManager(TimerRegistry registry, Map<Integer, CursorHolder> cursors) {
@@ -64,14 +65,14 @@ final class CursorManager {
     }
     
     CursorManager(TimerRegistry registry) {
-        this.cursors = new HashMap<>();
+        this.cursors = new ConcurrentHashMap<>();
         this.registry = registry;
     }
     
     // test-only
     CursorManager(int cursorIdCounter) {
         this(null);
-        this.cursorIdCounter = cursorIdCounter;
+        this.cursorIdCounter.set(cursorIdCounter);
     }
     
     /**
@@ -82,25 +83,31 @@ final class CursorManager {
      * @return The cursor ID or {@link CursorManager#CURSOR_NOT_STORED} if the
      *         passed in cursor has no more elements.
      */
-    synchronized int put(final Cursor<?> cursor) {
+    int put(final Cursor<?> cursor) {
         int cursorId = CURSOR_NOT_STORED;
         if (cursor.hasNext()) {
+            cursorId = nextCursorId();
+            cursors.put(cursorId, new CursorHolder(cursor, System.currentTimeMillis()));
+        }
+        return cursorId;
+    }
+    
+    private int nextCursorId() {
+        while (true) {
+            int current = cursorIdCounter.get();
             // Be sure we don't overflow. For a long running web storage we
             // could potentially run out of id's for a single user. However,
             // the time between 0 and Integer.MAX_VALUE should be sufficiently
             // large so that any given cursor expires before the id will get
             // reused.
-            if (cursorIdCounter == Integer.MAX_VALUE) {
-                cursorIdCounter = 0; // start again from 0
+            int cursorId = (current == Integer.MAX_VALUE) ? 0 : current;
+            if (cursorIdCounter.compareAndSet(current, cursorId + 1)) {
+                return cursorId;
             }
-            cursorId = cursorIdCounter;
-            cursors.put(cursorId, new CursorHolder(cursor, System.currentTimeMillis()));
-            cursorIdCounter++;
         }
-        return cursorId;
     }
     
-    synchronized Cursor<?> get(int cursorId) {
+    Cursor<?> get(int cursorId) {
         CursorHolder holder = cursors.get(cursorId);
         if (holder == null) {
             return null;
@@ -108,7 +115,7 @@ final class CursorManager {
         return holder.getCursor();
     }
     
-    synchronized void updateCursorTimeStamp(int cursorId) {
+    void updateCursorTimeStamp(int cursorId) {
         CursorHolder holder = cursors.get(cursorId);
         if (holder == null) {
             return;
@@ -116,22 +123,18 @@ final class CursorManager {
         holder.updateTimestamp();
     }
     
-    synchronized void removeCursor(int cursorId) {
+    void removeCursor(int cursorId) {
         cursors.remove(cursorId);
     }
     
-    synchronized void expireCursors() {
+    void expireCursors() {
         final long currentTime = System.currentTimeMillis();
-        List<Integer> expiredCursors = new ArrayList<>();
-        for (Entry<Integer, CursorHolder> entry: cursors.entrySet()) {
-            CursorHolder holder = entry.getValue();
-            if (holder.isCursorExpired(currentTime)) {
-                expiredCursors.add(entry.getKey());
+        Iterator<CursorHolder> holders = cursors.values().iterator();
+        while (holders.hasNext()) {
+            if (holders.next().isCursorExpired(currentTime)) {
+                holders.remove();
             }
         }
-        for (Integer expiredKey: expiredCursors) {
-            cursors.remove(expiredKey);
-        }
     }
     
     void startSweeperTimer() {
@@ -153,7 +156,7 @@ final class CursorManager {
         static final int TIMEOUT = 3 * MINUTES;
         
         private final Cursor<?> cursor;
-        private long lastUpdated;
+        private volatile long lastUpdated;
         
         CursorHolder(Cursor<?> cursor, long lastUpdated) {
             this.cursor = cursor;
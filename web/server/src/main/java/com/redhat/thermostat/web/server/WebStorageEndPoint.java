@@ -36,11 +36,14 @@
 
 package com.redhat.thermostat.web.server;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.io.Reader;
 import java.lang.reflect.Array;
 import java.net.URLDecoder;
 import java.security.Principal;
@@ -52,6 +55,8 @@ import java.util.Set;
 import java.util.UUID;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletContext;
@@ -70,6 +75,9 @@ import org.apache.commons.fileupload.servlet.ServletFileUpload;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.MalformedJsonException;
 import com.redhat.thermostat.common.utils.LoggingUtils;
 import com.redhat.thermostat.shared.config.CommonPaths;
 import com.redhat.thermostat.shared.config.InvalidConfigurationException;
@@ -105,6 +113,9 @@ import com.redhat.thermostat.web.common.SharedStateId;
 import com.redhat.thermostat.web.common.WebPreparedStatement;
 import com.redhat.thermostat.web.common.WebPreparedStatementResponse;
 import com.redhat.thermostat.web.common.WebQueryResponse;
+import com.redhat.thermostat.web.common.WireFormat;
+import com.redhat.thermostat.web.common.binary.BinaryResultStreamWriter;
+import com.redhat.thermostat.web.common.binary.BinaryWebQueryResponseCodec;
 import com.redhat.thermostat.web.common.typeadapters.PojoTypeAdapterFactory;
 import com.redhat.thermostat.web.common.typeadapters.PreparedParameterTypeAdapterFactory;
 import com.redhat.thermostat.web.common.typeadapters.PreparedParametersTypeAdapterFactory;
@@ -149,6 +160,7 @@ public class WebStorageEndPoint extends HttpServlet {
     private StorageFactoryProvider storageFactoryProvider;
     private Storage storage;
     private Gson gson;
+    private BinaryWebQueryResponseCodec binaryCodec;
     private CommonPaths paths;
     private ConfigurationFinder finder;
 
@@ -207,6 +219,7 @@ public class WebStorageEndPoint extends HttpServlet {
                 .registerTypeAdapterFactory(new WebPreparedStatementTypeAdapterFactory())
                 .registerTypeAdapterFactory(new PreparedParametersTypeAdapterFactory())
                 .create();
+        binaryCodec = new BinaryWebQueryResponseCodec(gson);
         
         // Set the set of statement descriptors which we trust
         KnownDescriptorRegistry descRegistry = KnownDescriptorRegistryFactory.getInstance();
@@ -290,8 +303,12 @@ public class WebStorageEndPoint extends HttpServlet {
             prepareStatement(req, resp);
         } else if (cmd.equals("query-execute")) {
             queryExecute(req, resp);
+        } else if (cmd.equals("query-stream")) {
+            queryStream(req, resp);
         } else if (cmd.equals("write-execute")) {
             writeExecute(req, resp);
+        } else if (cmd.equals("write-execute-batch")) {
+            writeExecuteBatch(req, resp);
         } else if (cmd.equals("register-category")) {
             registerCategory(req, resp);
         } else if (cmd.equals("save-file")) {
@@ -666,6 +683,49 @@ public class WebStorageEndPoint extends HttpServlet {
         @SuppressWarnings("unchecked")
         WebPreparedStatement<T> stmt = gson.fromJson(queryParam, WebPreparedStatement.class);
         
+        WebQueryResponse<T> response = new WebQueryResponse<>();
+        Query<T> targetQuery = getExecutableQuery(req, stmt, response);
+        if (targetQuery == null) {
+            writeResponse(resp, response, WebQueryResponse.class);
+            return;
+        }
+        PreparedStatementHolder<T> targetStmtHolder = getPreparedStmtManager().getStatementHolder(stmt.getStatementId());
+        Cursor<T> cursor = targetQuery.execute();
+        List<T> resultsList = null;
+        resultsList = getBatchFromCursor(cursor, DEFAULT_QUERY_BATCH_SIZE);
+        assert(resultsList.size() <= DEFAULT_QUERY_BATCH_SIZE);
+        CursorManager cursorManager = null;
+        HttpSession userSession = req.getSession();
+        synchronized(userSession) {
+            cursorManager = (CursorManager)userSession.getAttribute(CURSOR_MANAGER_KEY);
+            if (cursorManager == null) {
+                // Not yet set for this user, create a new cursor manager
+                // and start the sweeper timer so as to prevent memory
+                // leaks due to cursors kept as a reference in cursor manager
+                cursorManager = new CursorManager(timerRegistry);
+                cursorManager.startSweeperTimer();
+                userSession.setAttribute(CURSOR_MANAGER_KEY, cursorManager);
+            }
+        }
+        // Only record cursor if there are more results to return than the
+        // first batch size.
+        int cursorId = cursorManager.put(cursor);
+        response.setCursorId(cursorId);
+        response.setHasMoreBatches(cursor.hasNext());
+        writeQueryResponse(req, resp, response, resultsList, targetStmtHolder);
+    }
+    
+    /*
+     * Looks up the prepared query of the given statement, patches in the
+     * statement's parameters and restricts it to what the user is allowed
+     * to see.
+     * 
+     * Returns null if that failed and sets the response code of the given
+     * response accordingly. Otherwise the response code is set to
+     * QUERY_SUCCESS.
+     */
+    @SuppressWarnings("unchecked")
+    private <T extends Pojo> Query<T> getExecutableQuery(HttpServletRequest req, WebPreparedStatement<T> stmt, WebQueryResponse<T> response) {
         // Check if the server token the client knows about still matches.
         // Bail out early otherwise.
         SharedStateId stmtId = stmt.getStatementId();
@@ -674,10 +734,8 @@ public class WebStorageEndPoint extends HttpServlet {
             logger.log(Level.INFO, "Server token: '" + serverToken +
                                    "' and client token '" + stmtId.getServerToken() +
                                    "' out of sync.");
-            WebQueryResponse<T> response = new WebQueryResponse<>();
             response.setResponseCode(PreparedStatementResponseCode.PREP_STMT_BAD_STOKEN);
-            writeResponse(resp, response, WebQueryResponse.class);
-            return;
+            return null;
         }
         PreparedParameters p = stmt.getParams();
         PreparedParameter[] params = p.getParams();
@@ -686,44 +744,89 @@ public class WebStorageEndPoint extends HttpServlet {
         PreparedStatement<T> targetStmt = targetStmtHolder.getStmt();
         ParsedStatement<T> parsed = targetStmt.getParsedStatement();
         Query<T> targetQuery = null;
-        WebQueryResponse<T> response = new WebQueryResponse<>();
         try {
             targetQuery = (Query<T>)parsed.patchStatement(params);
             response.setResponseCode(PreparedStatementResponseCode.QUERY_SUCCESS);
         } catch (IllegalPatchException e) {
             logger.log(Level.INFO, "Failed to execute query", e);
             response.setResponseCode(PreparedStatementResponseCode.ILLEGAL_PATCH);
-            writeResponse(resp, response, WebQueryResponse.class);
-            return;
+            return null;
         }
         
         StatementDescriptor<T> desc = targetStmtHolder.getStatementDescriptor();
         
         UserPrincipal userPrincipal = getUserPrincipal(req);
-        targetQuery = getQueryForPrincipal(userPrincipal, targetQuery, desc);
-        Cursor<T> cursor = targetQuery.execute();
-        List<T> resultsList = null;
-        resultsList = getBatchFromCursor(cursor, DEFAULT_QUERY_BATCH_SIZE);
-        assert(resultsList.size() <= DEFAULT_QUERY_BATCH_SIZE);
-        CursorManager cursorManager = null;
-        HttpSession userSession = req.getSession();
-        synchronized(userSession) {
-            cursorManager = (CursorManager)userSession.getAttribute(CURSOR_MANAGER_KEY);
-            if (cursorManager == null) {
-                // Not yet set for this user, create a new cursor manager
-                // and start the sweeper timer so as to prevent memory
-                // leaks due to cursors kept as a reference in cursor manager
-                cursorManager = new CursorManager(timerRegistry);
-                cursorManager.startSweeperTimer();
-                userSession.setAttribute(CURSOR_MANAGER_KEY, cursorManager);
+        return getQueryForPrincipal(userPrincipal, targetQuery, desc);
+    }
+    
+    /**
+     * Handler for streamed query executions. Rather than returning the first
+     * batch of results and keeping the cursor around for subsequent
+     * {@link #getMore(HttpServletRequest, HttpServletResponse)} requests, all
+     * results get written while they are read from the backing storage
+     * cursor. Results are sent in the binary stream encoding, see
+     * {@link BinaryResultStreamWriter}.
+     * <p>
+     * Results are flushed to the client every
+     * {@link #DEFAULT_QUERY_BATCH_SIZE} results. A client which reads slowly
+     * thus stalls this handler and, in turn, reading from the backing
+     * storage cursor.
+     * 
+     * @param req
+     * @param resp
+     * @throws IOException
+     */
+    @WebStoragePathHandler( path = "query-stream" )
+    private <T extends Pojo> void queryStream(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        if (! isAuthorized(req, resp, Roles.READ)) {
+            return;
+        }
+        String queryParam = req.getParameter("prepared-stmt");
+        @SuppressWarnings("unchecked")
+        WebPreparedStatement<T> stmt = gson.fromJson(queryParam, WebPreparedStatement.class);
+        
+        WebQueryResponse<T> response = new WebQueryResponse<>();
+        Query<T> targetQuery = getExecutableQuery(req, stmt, response);
+        Cursor<T> cursor = null;
+        if (targetQuery != null) {
+            cursor = targetQuery.execute();
+        }
+        
+        resp.setStatus(HttpServletResponse.SC_OK);
+        resp.setContentType(WireFormat.BINARY_STREAM_CONTENT_TYPE);
+        OutputStream out;
+        if (WireFormat.acceptsGzip(req.getHeader("Accept-Encoding"))) {
+            resp.setHeader("Content-Encoding", WireFormat.GZIP_ENCODING);
+            // sync flush so that flushed results reach the client
+            out = new GZIPOutputStream(resp.getOutputStream(), true);
+        } else {
+            out = resp.getOutputStream();
+        }
+        int count = 0;
+        try (OutputStream stream = out) {
+            BinaryResultStreamWriter writer = new BinaryResultStreamWriter(stream, gson, response.getResponseCode());
+            if (cursor == null) {
+                writer.finish();
+                return;
+            }
+            try {
+                while (cursor.hasNext()) {
+                    writer.write(cursor.next());
+                    count++;
+                    if (count % DEFAULT_QUERY_BATCH_SIZE == 0) {
+                        writer.flush();
+                    }
+                }
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Failed to stream results after " + count + " results. Stmt id was: " + stmt.getStatementId(), e);
+                writer.fail();
+                return;
             }
+            writer.finish();
+        } catch (IOException e) {
+            // Most likely the client went away before reading all results.
+            logger.log(Level.FINE, "Aborted streaming results after " + count + " results for user '" + req.getRemoteUser() + "'", e);
         }
-        // Only record cursor if there are more results to return than the
-        // first batch size.
-        int cursorId = cursorManager.put(cursor);
-        response.setCursorId(cursorId);
-        response.setHasMoreBatches(cursor.hasNext());
-        writeQueryResponse(resp, response, resultsList, targetStmtHolder);
     }
     
     // package-private for testing
@@ -750,14 +853,46 @@ public class WebStorageEndPoint extends HttpServlet {
         return getServletContextAttribute(PREPARED_STMT_MANAGER_KEY);
     }
     
-    private <T extends Pojo> void writeQueryResponse(HttpServletResponse resp, WebQueryResponse<T> response, List<T> resultsList, PreparedStatementHolder<T> targetStmtHolder) throws IOException {
+    /*
+     * Writes query results in the binary encoding if the client asked for it
+     * via the Accept header. JSON otherwise. Either encoding is gzip
+     * compressed if the client accepts that.
+     */
+    private <T extends Pojo> void writeQueryResponse(HttpServletRequest req, HttpServletResponse resp, WebQueryResponse<T> response, List<T> resultsList, PreparedStatementHolder<T> targetStmtHolder) throws IOException {
         @SuppressWarnings("unchecked")
         T[] results = (T[])Array.newInstance(targetStmtHolder.getDataClass(), resultsList.size());
         for (int i = 0; i < resultsList.size(); i++) {
             results[i] = resultsList.get(i);
         }
         response.setResultList(results);
-        writeResponse(resp, response, WebQueryResponse.class);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        String contentType;
+        try {
+            if (WireFormat.acceptsBinary(req.getHeader("Accept"))) {
+                binaryCodec.write(response, bytes);
+                contentType = WireFormat.BINARY_CONTENT_TYPE;
+            } else {
+                bytes.write(gson.toJson(response, WebQueryResponse.class).getBytes("UTF-8"));
+                contentType = RESPONSE_JSON_CONTENT_TYPE;
+            }
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "Serialization failed for query response of " + targetStmtHolder.getDataClass(), e);
+            resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            return;
+        }
+        resp.setStatus(HttpServletResponse.SC_OK);
+        resp.setContentType(contentType);
+        if (WireFormat.acceptsGzip(req.getHeader("Accept-Encoding"))) {
+            resp.setHeader("Content-Encoding", WireFormat.GZIP_ENCODING);
+            try (GZIPOutputStream out = new GZIPOutputStream(resp.getOutputStream())) {
+                bytes.writeTo(out);
+            }
+        } else {
+            try (OutputStream out = resp.getOutputStream()) {
+                bytes.writeTo(out);
+            }
+        }
+        resp.flushBuffer();
     }
     
     /**
@@ -822,7 +957,7 @@ public class WebStorageEndPoint extends HttpServlet {
             response.setHasMoreBatches(false);
             response.setCursorId(cursorId);
             List<T> empty = Collections.emptyList();
-            writeQueryResponse(resp, response, empty, targetStmtHolder);
+            writeQueryResponse(req, resp, response, empty, targetStmtHolder);
             return;
         }
         // Update backing storage cursor with (possibly) changed params.
@@ -844,7 +979,7 @@ public class WebStorageEndPoint extends HttpServlet {
         response.setResponseCode(PreparedStatementResponseCode.QUERY_SUCCESS);
         response.setHasMoreBatches(stillMoreResults);
         response.setCursorId(cursorId);
-        writeQueryResponse(resp, response, nextBatch, targetStmtHolder);
+        writeQueryResponse(req, resp, response, nextBatch, targetStmtHolder);
     }
     
     // Fetches the first batch of results. Number of results are determined
@@ -865,7 +1000,66 @@ public class WebStorageEndPoint extends HttpServlet {
         }
         String queryParam = req.getParameter("prepared-stmt");
         WebPreparedStatement<T> stmt = gson.fromJson(queryParam, WebPreparedStatement.class);
-        
+        int response = executeWrite(stmt);
+        writeResponse(resp, response, int.class);
+    }
+    
+    /*
+     * Executes a JSON array of prepared writes, streamed in the request body.
+     * The body may be gzip compressed, as indicated by the Content-Encoding
+     * header. Statements are executed in order as they get read. The response is
+     * an array of the individual statements' response codes in the same
+     * order.
+     */
+    @SuppressWarnings("unchecked")
+    @WebStoragePathHandler( path = "write-execute-batch" )
+    private <T extends Pojo> void writeExecuteBatch(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        if (! isAuthorized(req, resp, Roles.WRITE)) {
+            return;
+        }
+        List<Integer> responses = new ArrayList<>();
+        try (JsonReader reader = new JsonReader(getRequestBodyReader(req))) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                WebPreparedStatement<T> stmt = gson.fromJson(reader, WebPreparedStatement.class);
+                int response;
+                try {
+                    response = executeWrite(stmt);
+                } catch (RuntimeException e) {
+                    // Don't let one statement fail the remainder of the batch.
+                    logger.log(Level.WARNING, "Failed to execute write. Stmt id was: " + stmt.getStatementId(), e);
+                    response = PreparedStatementResponseCode.WRITE_GENERIC_FAILURE;
+                }
+                responses.add(response);
+            }
+            reader.endArray();
+        } catch (JsonParseException | IllegalStateException | MalformedJsonException e) {
+            logger.log(Level.WARNING, "Malformed write batch. Executed " + responses.size() + " statements.", e);
+            resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+        int[] result = new int[responses.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = responses.get(i);
+        }
+        writeResponse(resp, result, int[].class);
+    }
+    
+    private Reader getRequestBodyReader(HttpServletRequest req) throws IOException {
+        if (WireFormat.isGzip(req.getHeader("Content-Encoding"))) {
+            return new InputStreamReader(new GZIPInputStream(req.getInputStream()), "UTF-8");
+        }
+        return req.getReader();
+    }
+    
+    /*
+     * Patches and applies a single prepared write.
+     * 
+     * @return The result of applying the statement or one of the negative
+     *         PreparedStatementResponseCode error codes.
+     */
+    @SuppressWarnings("unchecked")
+    private <T extends Pojo> int executeWrite(WebPreparedStatement<T> stmt) {
         // Check if the server token the client knows about still matches.
         // Bail out early otherwise.
         SharedStateId stmtId = stmt.getStatementId();
@@ -874,8 +1068,7 @@ public class WebStorageEndPoint extends HttpServlet {
             logger.log(Level.INFO, "Server token: '" + serverToken +
                                    "' and client token '" + stmtId.getServerToken() +
                                    "' out of sync.");
-            writeResponse(resp, PreparedStatementResponseCode.PREP_STMT_BAD_STOKEN, int.class);
-            return;
+            return PreparedStatementResponseCode.PREP_STMT_BAD_STOKEN;
         }
         PreparedParameters p = stmt.getParams();
         PreparedParameter[] params = p.getParams();
@@ -890,13 +1083,11 @@ public class WebStorageEndPoint extends HttpServlet {
             targetStatement = (DataModifyingStatement<T>)parsed.patchStatement(params);
         } catch (IllegalPatchException e) {
             logger.log(Level.INFO, "Failed to execute write. Stmt id was: " + stmtId, e);
-            writeResponse(resp, PreparedStatementResponseCode.ILLEGAL_PATCH, int.class);
-            return;
+            return PreparedStatementResponseCode.ILLEGAL_PATCH;
         }
         
         // executes statement
-        int response = targetStatement.apply();
-        writeResponse(resp, response, int.class);
+        return targetStatement.apply();
     }
     
     private UserPrincipal getUserPrincipal(HttpServletRequest req) {
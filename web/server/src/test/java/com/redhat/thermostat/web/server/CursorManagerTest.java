@@ -46,10 +46,13 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
@@ -98,6 +101,37 @@ public class CursorManagerTest {
         assertTrue("Expected id to start again from 0", rollOver);
     }
     
+    /**
+     * Cursors put concurrently must get distinct IDs.
+     */
+    @Test
+    public void testConcurrentPutUniqueIds() throws InterruptedException {
+        final CursorManager manager = new CursorManager(mock(TimerRegistry.class));
+        final Cursor<?> cursor = getHasMoreBatchCursor();
+        final int perThread = 500;
+        final Set<Integer> ids = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                
+                @Override
+                public void run() {
+                    for (int j = 0; j < perThread; j++) {
+                        ids.add(manager.put(cursor));
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertEquals(threads.length * perThread, ids.size());
+        for (int id : ids) {
+            assertSame(cursor, manager.get(id));
+        }
+    }
+    
     /**
      * Test putting a cursor which returns false on hasNext().
      * CursorManager should not add such cursors and should
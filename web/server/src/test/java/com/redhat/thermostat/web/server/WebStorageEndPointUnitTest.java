@@ -117,7 +117,7 @@ public class WebStorageEndPointUnitTest {
         // manually maintained list of path handlers which should include
         // authorization checks
         final String[] authPaths = new String[] {
-                "prepare-statement", "query-execute", "write-execute", "register-category",
+                "prepare-statement", "query-execute", "query-stream", "write-execute", "write-execute-batch", "register-category",
                 "save-file", "load-file", "purge", "ping", "generate-token", "verify-token",
                 "get-more"
         };
@@ -73,6 +73,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.zip.GZIPInputStream;
 
 import javax.security.auth.Subject;
 import javax.security.auth.callback.CallbackHandler;
@@ -116,6 +117,7 @@ import com.redhat.thermostat.storage.core.CategoryAdapter;
 import com.redhat.thermostat.storage.core.CloseOnSave;
 import com.redhat.thermostat.storage.core.Cursor;
 import com.redhat.thermostat.storage.core.Entity;
+import com.redhat.thermostat.storage.core.IllegalPatchException;
 import com.redhat.thermostat.storage.core.Key;
 import com.redhat.thermostat.storage.core.ParsedStatement;
 import com.redhat.thermostat.storage.core.Persist;
@@ -137,6 +139,9 @@ import com.redhat.thermostat.web.common.SharedStateId;
 import com.redhat.thermostat.web.common.WebPreparedStatement;
 import com.redhat.thermostat.web.common.WebPreparedStatementResponse;
 import com.redhat.thermostat.web.common.WebQueryResponse;
+import com.redhat.thermostat.web.common.WireFormat;
+import com.redhat.thermostat.web.common.binary.BinaryResultStreamReader;
+import com.redhat.thermostat.web.common.binary.BinaryWebQueryResponseCodec;
 import com.redhat.thermostat.web.common.typeadapters.PojoTypeAdapterFactory;
 import com.redhat.thermostat.web.common.typeadapters.PreparedParameterTypeAdapterFactory;
 import com.redhat.thermostat.web.common.typeadapters.PreparedParametersTypeAdapterFactory;
@@ -794,9 +799,29 @@ public class WebStorageEndpointTest {
         }
     }
     
-    @SuppressWarnings({ "unchecked", "rawtypes" })
     @Test
     public void authorizedPreparedAggregateQuery() throws Exception {
+        doAuthorizedPreparedAggregateQuery(QueryResponseMode.JSON);
+    }
+    
+    @Test
+    public void authorizedPreparedAggregateQueryBinaryGzip() throws Exception {
+        doAuthorizedPreparedAggregateQuery(QueryResponseMode.BINARY_GZIP);
+    }
+    
+    @Test
+    public void authorizedPreparedAggregateQueryStream() throws Exception {
+        doAuthorizedPreparedAggregateQuery(QueryResponseMode.STREAM);
+    }
+    
+    private enum QueryResponseMode {
+        JSON,
+        BINARY_GZIP,
+        STREAM,
+    }
+    
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private void doAuthorizedPreparedAggregateQuery(QueryResponseMode mode) throws Exception {
         String strDescriptor = "QUERY-COUNT " + category.getName();
         setupTrustedStatementRegistry(strDescriptor);
         
@@ -875,11 +900,15 @@ public class WebStorageEndpointTest {
         // now execute the query we've just prepared
         WebPreparedStatement<AggregateCount> stmt = new WebPreparedStatement<>(0, response.getStatementId());
         
-        url = new URL(endpoint + "/query-execute");
+        url = new URL(endpoint + (mode == QueryResponseMode.STREAM ? "/query-stream" : "/query-execute"));
         HttpURLConnection conn2 = (HttpURLConnection) url.openConnection();
         conn2.setRequestMethod("POST");
         sendAuthentication(conn2, "no-matter", "no-matter");
         conn2.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+        if (mode != QueryResponseMode.JSON) {
+            conn2.setRequestProperty("Accept", WireFormat.ACCEPT_BINARY_OR_JSON);
+            conn2.setRequestProperty("Accept-Encoding", "gzip");
+        }
         conn2.setDoInput(true);
         conn2.setDoOutput(true);
         
@@ -888,14 +917,30 @@ public class WebStorageEndpointTest {
         out.write(body + "\n");
         out.flush();
 
-        in = new InputStreamReader(conn2.getInputStream());
-        Type typeToken = new TypeToken<WebQueryResponse<AggregateCount>>(){}.getType();
-        WebQueryResponse<AggregateCount> result = gson.fromJson(in, typeToken);
-        AggregateCount[] results = result.getResultList();
+        AggregateCount[] results;
+        if (mode == QueryResponseMode.STREAM) {
+            assertEquals(WireFormat.BINARY_STREAM_CONTENT_TYPE, conn2.getContentType());
+            assertEquals("gzip", conn2.getContentEncoding());
+            InputStream binIn = new GZIPInputStream(conn2.getInputStream());
+            BinaryResultStreamReader<AggregateCount> reader = new BinaryResultStreamReader<>(binIn, gson, AggregateCount.class);
+            assertEquals(PreparedStatementResponseCode.QUERY_SUCCESS, reader.getResponseCode());
+            results = new AggregateCount[] { reader.read() };
+            assertNull(reader.read());
+        } else if (mode == QueryResponseMode.BINARY_GZIP) {
+            assertEquals(WireFormat.BINARY_CONTENT_TYPE, conn2.getContentType());
+            assertEquals("gzip", conn2.getContentEncoding());
+            InputStream binIn = new GZIPInputStream(conn2.getInputStream());
+            results = new BinaryWebQueryResponseCodec(gson).read(binIn, AggregateCount.class).getResultList();
+        } else {
+            in = new InputStreamReader(conn2.getInputStream());
+            Type typeToken = new TypeToken<WebQueryResponse<AggregateCount>>(){}.getType();
+            WebQueryResponse<AggregateCount> result = gson.fromJson(in, typeToken);
+            results = result.getResultList();
+            assertEquals("application/json; charset=UTF-8", conn2.getContentType());
+        }
         assertEquals(1, results.length);
         assertEquals(500, results[0].getCount());
 
-        assertEquals("application/json; charset=UTF-8", conn2.getContentType());
         verify(mockMongoQuery).execute();
         verify(mockMongoQuery).getWhereExpression();
         verifyNoMoreInteractions(mockMongoQuery);
@@ -1029,6 +1074,121 @@ public class WebStorageEndpointTest {
         }
     }
     
+    @SuppressWarnings("unchecked")
+    @Test
+    public void authorizedPreparedWriteBatch() throws Exception {
+        Category<TestClass> oldCategory = category;
+        String categoryName = "test-authorizedPreparedWriteBatch";
+        // redefine category to include the agentId key in the category.
+        // undone via a the try-finally block.
+        category = new Category<>(categoryName, TestClass.class, key1, key2, Key.AGENT_ID);
+        try {
+            String strDescriptor = "ADD " + category.getName() + " SET '" +
+                    key1.getName() + "' = ?s , '" + key2.getName() + "' = ?s";
+            setupTrustedStatementRegistry(strDescriptor);
+            
+            Set<BasicRole> roles = new HashSet<>();
+            roles.add(new RolePrincipal(Roles.REGISTER_CATEGORY));
+            roles.add(new RolePrincipal(Roles.PREPARE_STATEMENT));
+            roles.add(new RolePrincipal(Roles.WRITE));
+            roles.add(new RolePrincipal(Roles.ACCESS_REALM));
+            UserPrincipal testUser = new UserPrincipal("ignored1");
+            testUser.setRoles(roles);
+            
+            final JAASLoginService loginService = getConfiguredLoginService(testUser, roles);
+            port = FreePortFinder.findFreePort(new TryPort() {
+                
+                @Override
+                public void tryPort(int port) throws Exception {
+                    startServer(port, loginService);
+                }
+            });
+            // This makes register category work for the "test" category.
+            // Undone via @After
+            setupTrustedCategory(categoryName);
+            SharedStateId catId = registerCategoryAndGetId(category, "ignored1", "ignored2");
+            
+            // prepare-statement does this under the hood
+            Add<TestClass> mockMongoAdd = mock(Add.class);
+            
+            when(mockStorage.createAdd(eq(category))).thenReturn(mockMongoAdd);
+    
+            PreparedStatement<TestClass> mockPreparedQuery = mock(PreparedStatement.class);
+            when(mockStorage.prepareStatement(any(StatementDescriptor.class))).thenReturn(mockPreparedQuery);
+            
+            ParsedStatement<TestClass> mockParsedStatement = mock(ParsedStatement.class);
+            when(mockParsedStatement.getNumParams()).thenReturn(2);
+            when(mockParsedStatement.patchStatement(any(PreparedParameter[].class))).thenReturn(mockMongoAdd);
+            when(mockPreparedQuery.getParsedStatement()).thenReturn(mockParsedStatement);
+            
+            // The web layer
+            when(mockPreparedQuery.execute()).thenReturn(PreparedStatementResponseCode.WRITE_GENERIC_FAILURE);
+            // And the mongo layer
+            when(mockMongoAdd.apply()).thenReturn(PreparedStatementResponseCode.WRITE_GENERIC_FAILURE);
+    
+            String endpoint = getEndpoint();
+            URL url = new URL(endpoint + "/prepare-statement");
+            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+            conn.setRequestMethod("POST");
+            sendAuthentication(conn, "ignored1", "ignored2");
+            conn.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+            conn.setDoInput(true);
+            conn.setDoOutput(true);
+            Gson gson = new GsonBuilder()
+                .registerTypeAdapterFactory(new PojoTypeAdapterFactory())
+                .registerTypeAdapterFactory(new SharedStateIdTypeAdapterFactory())
+                .registerTypeAdapterFactory(new PreparedParameterTypeAdapterFactory())
+                .registerTypeAdapterFactory(new WebPreparedStatementTypeAdapterFactory())
+                .registerTypeAdapterFactory(new WebPreparedStatementResponseTypeAdapterFactory())
+                .registerTypeAdapterFactory(new PreparedParametersTypeAdapterFactory())
+                .create();
+            OutputStreamWriter out = new OutputStreamWriter(conn.getOutputStream());
+            String body = "query-descriptor=" + URLEncoder.encode(strDescriptor, "UTF-8") + "&category-id=" + getURLEncodedCategoryIdJson(gson, catId);
+            out.write(body + "\n");
+            out.flush();
+    
+            Reader in = new InputStreamReader(conn.getInputStream());
+            WebPreparedStatementResponse response = gson.fromJson(in, WebPreparedStatementResponse.class);
+            assertEquals(2, response.getNumFreeVariables());
+            assertEquals(0, response.getStatementId().getId());
+            assertEquals("application/json; charset=UTF-8", conn.getContentType());
+            
+            
+            
+            // now execute the ADD we've just prepared, twice in one batch
+            WebPreparedStatement<TestClass> stmt = new WebPreparedStatement<>(2, response.getStatementId());
+            stmt.setString(0, "fluff");
+            stmt.setString(1, "test2");
+            WebPreparedStatement<TestClass> stmt2 = new WebPreparedStatement<>(2, response.getStatementId());
+            stmt2.setString(0, "fluff2");
+            // second param missing => illegal patch
+            when(mockParsedStatement.patchStatement(any(PreparedParameter[].class)))
+                .thenReturn(mockMongoAdd)
+                .thenThrow(new IllegalPatchException(null));
+            
+            url = new URL(endpoint + "/write-execute-batch");
+            HttpURLConnection conn2 = (HttpURLConnection) url.openConnection();
+            conn2.setRequestMethod("POST");
+            sendAuthentication(conn2, "ignored1", "ignored2");
+            conn2.setRequestProperty("Content-Type", "application/json; charset=UTF-8");
+            conn2.setDoInput(true);
+            conn2.setDoOutput(true);
+            
+            out = new OutputStreamWriter(conn2.getOutputStream());
+            out.write("[" + gson.toJson(stmt, WebPreparedStatement.class) + ","
+                    + gson.toJson(stmt2, WebPreparedStatement.class) + "]");
+            out.flush();
+    
+            in = new InputStreamReader(conn2.getInputStream());
+            int[] result = gson.fromJson(in, int[].class);
+            assertEquals(2, result.length);
+            assertEquals(PreparedStatementResponseCode.WRITE_GENERIC_FAILURE, result[0]);
+            assertEquals(PreparedStatementResponseCode.ILLEGAL_PATCH, result[1]);
+        } finally {
+            category = oldCategory; 
+        }
+    }
+    
     private String getURLEncodedCategoryIdJson(Gson gson, SharedStateId catId) throws UnsupportedEncodingException {
         return URLEncoder.encode(gson.toJson(catId), "UTF-8");
     }